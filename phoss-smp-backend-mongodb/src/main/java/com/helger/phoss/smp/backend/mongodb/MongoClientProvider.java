@@ -17,8 +17,10 @@
 package com.helger.phoss.smp.backend.mongodb;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bson.Document;
 import org.slf4j.Logger;
@@ -113,17 +115,40 @@ public class MongoClientProvider implements AutoCloseable
 
   public MongoClientProvider (@Nonnull @Nonempty final String sConnectionString,
                               @Nonnull @Nonempty final String sDBName)
+  {
+    this (sConnectionString, sDBName, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param sConnectionString
+   *        The connection string to use. May neither be <code>null</code> nor
+   *        empty.
+   * @param sDBName
+   *        The database name to use. May neither be <code>null</code> nor
+   *        empty.
+   * @param aSettingsCustomizer
+   *        An optional customizer for the client settings, that is invoked
+   *        after the connection string was applied. May be <code>null</code>.
+   * @since 7.1.4
+   */
+  public MongoClientProvider (@Nonnull @Nonempty final String sConnectionString,
+                              @Nonnull @Nonempty final String sDBName,
+                              @Nullable final Consumer <? super MongoClientSettings.Builder> aSettingsCustomizer)
   {
     ValueEnforcer.notEmpty (sConnectionString, "ConnectionString");
     ValueEnforcer.notEmpty (sDBName, "DBName");
 
-    final MongoClientSettings aClientSettings = MongoClientSettings.builder ()
+    final MongoClientSettings.Builder aBuilder = MongoClientSettings.builder ()
                                                                    .applicationName ("phoss SMP")
                                                                    .applyConnectionString (new ConnectionString (sConnectionString))
                                                                    .addCommandListener (new LoggingCommandListener ())
-                                                                   .applyToClusterSettings (x -> x.addClusterListener (m_aClusterListener))
-                                                                   .build ();
-    m_aMongoClient = MongoClients.create (aClientSettings);
+                                                                   .addCommandListener (new MongoOperationListener ())
+                                                                   .applyToClusterSettings (x -> x.addClusterListener (m_aClusterListener));
+    if (aSettingsCustomizer != null)
+      aSettingsCustomizer.accept (aBuilder);
+    m_aMongoClient = MongoClients.create (aBuilder.build ());
     m_aDatabase = m_aMongoClient.getDatabase (sDBName);
   }
 
@@ -137,6 +162,17 @@ public class MongoClientProvider implements AutoCloseable
     return m_aClusterListener.isWritable ();
   }
 
+  /**
+   * @return The database provided in the constructor, e.g. to run
+   *         administrative commands. Never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public MongoDatabase getDatabase ()
+  {
+    return m_aDatabase;
+  }
+
   /**
    * Get the accessor to the MongoDB collection with the specified name
    *
@@ -16,7 +16,11 @@
  */
 package com.helger.phoss.smp.backend.mongodb;
 
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bson.Document;
 import org.slf4j.Logger;
@@ -28,6 +32,11 @@ import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.string.StringHelper;
 import com.helger.scope.IScope;
 import com.helger.web.scope.singleton.AbstractGlobalWebSingleton;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadConcernLevel;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoCollection;
 
 public class MongoClientSingleton extends AbstractGlobalWebSingleton
@@ -35,6 +44,7 @@ public class MongoClientSingleton extends AbstractGlobalWebSingleton
   private static final Logger LOGGER = LoggerFactory.getLogger (MongoClientSingleton.class);
 
   private MongoClientProvider m_aProvider;
+  private ReadPreference m_aReadPreference;
 
   /**
    * @deprecated Only called via reflection
@@ -62,7 +72,51 @@ public class MongoClientSingleton extends AbstractGlobalWebSingleton
 
     LOGGER.info ("Using Mongo DB database name '" + sDBName + "'");
 
-    m_aProvider = new MongoClientProvider (sConnectionString, sDBName);
+    final String sReadPreference = SMPMongoConfiguration.getMongoReadPreference ();
+    if (StringHelper.hasText (sReadPreference))
+    {
+      final long nMaxStalenessSecs = SMPMongoConfiguration.getMongoReadPreferenceMaxStalenessSeconds ();
+      m_aReadPreference = nMaxStalenessSecs > 0 ? ReadPreference.valueOf (sReadPreference,
+                                                                          Collections.emptyList (),
+                                                                          nMaxStalenessSecs,
+                                                                          TimeUnit.SECONDS)
+                                                : ReadPreference.valueOf (sReadPreference);
+      LOGGER.info ("Using MongoDB read preference " + m_aReadPreference + " for lookups");
+    }
+
+    m_aProvider = new MongoClientProvider (sConnectionString, sDBName, MongoClientSingleton::_customizeSettings);
+  }
+
+  private static void _customizeSettings (@Nonnull final MongoClientSettings.Builder aBuilder)
+  {
+    final String sReadConcern = SMPMongoConfiguration.getMongoReadConcern ();
+    if (StringHelper.hasText (sReadConcern))
+      aBuilder.readConcern (new ReadConcern (ReadConcernLevel.fromString (sReadConcern)));
+
+    final String sWriteConcern = SMPMongoConfiguration.getMongoWriteConcern ();
+    if (StringHelper.hasText (sWriteConcern))
+    {
+      final WriteConcern aWriteConcern = WriteConcern.valueOf (sWriteConcern);
+      if (aWriteConcern == null)
+        throw new IllegalStateException ("The MongoDB write concern '" +
+                                         sWriteConcern +
+                                         "' is invalid. See property '" +
+                                         SMPMongoConfiguration.CONFIG_MONGODB_WRITE_CONCERN +
+                                         "'");
+      aBuilder.writeConcern (aWriteConcern);
+    }
+
+    final int nPoolMaxSize = SMPMongoConfiguration.getMongoPoolMaxSize ();
+    final int nPoolMinSize = SMPMongoConfiguration.getMongoPoolMinSize ();
+    final long nPoolMaxWaitMS = SMPMongoConfiguration.getMongoPoolMaxWaitTimeMilliseconds ();
+    aBuilder.applyToConnectionPoolSettings (x -> {
+      if (nPoolMaxSize > 0)
+        x.maxSize (nPoolMaxSize);
+      if (nPoolMinSize >= 0)
+        x.minSize (nPoolMinSize);
+      if (nPoolMaxWaitMS >= 0)
+        x.maxWaitTime (nPoolMaxWaitMS, TimeUnit.MILLISECONDS);
+    });
   }
 
   @Override
@@ -96,6 +150,17 @@ public class MongoClientSingleton extends AbstractGlobalWebSingleton
     }
   }
 
+  /**
+   * @return The read preference to be used for the frequently used lookups.
+   *         May be <code>null</code> to use the default of the client.
+   * @since 7.1.4
+   */
+  @Nullable
+  public final ReadPreference getReadPreference ()
+  {
+    return m_aReadPreference;
+  }
+
   @Nonnull
   public final MongoCollection <Document> getCollection (@Nonnull @Nonempty final String sCollectionName)
   {
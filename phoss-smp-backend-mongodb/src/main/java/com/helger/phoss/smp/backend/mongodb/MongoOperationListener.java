@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.statistics.IMutableStatisticsHandlerKeyedCounter;
+import com.helger.commons.statistics.IMutableStatisticsHandlerKeyedTimer;
+import com.helger.commons.statistics.StatisticsManager;
+import com.helger.phoss.smp.backend.SMPPrimaryPinning;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * A {@link CommandListener} that records the latency of each operation per
+ * collection and remembers write operations of the current client, so that
+ * it reads from the primary afterwards (see {@link SMPPrimaryPinning}). The
+ * statistics use the key "collection:command" and are available
+ * via {@link StatisticsManager}. This relies on the synchronous driver, that
+ * invokes the listener in the thread that executes the operation.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public final class MongoOperationListener implements CommandListener
+{
+  private static final IMutableStatisticsHandlerKeyedTimer STATS_LATENCY = StatisticsManager.getKeyedTimerHandler (MongoOperationListener.class.getName () +
+                                                                                                                    "$latency");
+  private static final IMutableStatisticsHandlerKeyedCounter STATS_FAILED = StatisticsManager.getKeyedCounterHandler (MongoOperationListener.class.getName () +
+                                                                                                                      "$failed");
+  private static final ICommonsSet <String> WRITE_COMMANDS = new CommonsHashSet <> ("insert",
+                                                                                    "update",
+                                                                                    "delete",
+                                                                                    "findAndModify");
+  private static final SMPPrimaryPinning PRIMARY_PINNING = new SMPPrimaryPinning ("mongodb",
+                                                                                 SMPMongoConfiguration.getMongoReadPreferencePrimaryPinningMillis ());
+
+  // Request ID to statistics key
+  private final Map <Integer, String> m_aRunning = new ConcurrentHashMap <> ();
+
+  @Nullable
+  private static String _getCollectionName (@Nonnull final String sCommandName, @Nonnull final BsonDocument aCommand)
+  {
+    // For "getMore" the first value is the cursor ID
+    final BsonValue aValue = "getMore".equals (sCommandName) ? aCommand.get ("collection")
+                                                             : aCommand.get (sCommandName);
+    return aValue != null && aValue.isString () ? aValue.asString ().getValue () : null;
+  }
+
+  @Override
+  public void commandStarted (@Nonnull final CommandStartedEvent aEvent)
+  {
+    final String sCommandName = aEvent.getCommandName ();
+    final String sCollectionName = _getCollectionName (sCommandName, aEvent.getCommand ());
+    if (sCollectionName != null)
+      m_aRunning.put (Integer.valueOf (aEvent.getRequestId ()), sCollectionName + ":" + sCommandName);
+
+    if (WRITE_COMMANDS.contains (sCommandName))
+      PRIMARY_PINNING.onWrite ();
+  }
+
+  @Override
+  public void commandSucceeded (@Nonnull final CommandSucceededEvent aEvent)
+  {
+    final String sKey = m_aRunning.remove (Integer.valueOf (aEvent.getRequestId ()));
+    if (sKey != null)
+      STATS_LATENCY.addTime (sKey, aEvent.getElapsedTime (TimeUnit.MILLISECONDS));
+  }
+
+  @Override
+  public void commandFailed (@Nonnull final CommandFailedEvent aEvent)
+  {
+    final String sKey = m_aRunning.remove (Integer.valueOf (aEvent.getRequestId ()));
+    if (sKey != null)
+      STATS_FAILED.increment (sKey);
+  }
+
+  /**
+   * @return <code>true</code> if the current request or a recent request of the
+   *         same client performed a write operation on MongoDB, so that reads
+   *         must use the primary. <code>false</code> if not or if there is no
+   *         current request.
+   */
+  public static boolean isPrimaryRequired ()
+  {
+    return PRIMARY_PINNING.isPrimaryRequired ();
+  }
+}
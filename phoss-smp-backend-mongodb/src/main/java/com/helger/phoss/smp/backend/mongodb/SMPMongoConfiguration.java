@@ -20,6 +20,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
+import com.helger.commons.annotation.Since;
 import com.helger.config.IConfig;
 import com.helger.phoss.smp.config.SMPConfigProvider;
 
@@ -28,6 +29,24 @@ public final class SMPMongoConfiguration
 {
   public static final String CONFIG_MONGODB_CONNECTION_STRING = "mongodb.connectionstring";
   public static final String CONFIG_MONGODB_DB_NAME = "mongodb.dbname";
+  @Since ("7.1.4")
+  public static final String CONFIG_MONGODB_READ_PREFERENCE = "mongodb.read-preference";
+  @Since ("7.1.4")
+  public static final String CONFIG_MONGODB_READ_PREFERENCE_MAX_STALENESS_SECONDS = "mongodb.read-preference.max-staleness.seconds";
+  @Since ("7.1.4")
+  public static final String CONFIG_MONGODB_READ_PREFERENCE_PRIMARY_PINNING_MS = "mongodb.read-preference.primary-pinning.ms";
+  @Since ("7.1.4")
+  public static final long DEFAULT_MONGODB_READ_PREFERENCE_PRIMARY_PINNING_MS = 30_000;
+  @Since ("7.1.4")
+  public static final String CONFIG_MONGODB_READ_CONCERN = "mongodb.read-concern";
+  @Since ("7.1.4")
+  public static final String CONFIG_MONGODB_WRITE_CONCERN = "mongodb.write-concern";
+  @Since ("7.1.4")
+  public static final String CONFIG_MONGODB_POOL_MAX_SIZE = "mongodb.pool.max-size";
+  @Since ("7.1.4")
+  public static final String CONFIG_MONGODB_POOL_MIN_SIZE = "mongodb.pool.min-size";
+  @Since ("7.1.4")
+  public static final String CONFIG_MONGODB_POOL_MAX_WAIT_TIME_MS = "mongodb.pool.max-wait-time.ms";
 
   private SMPMongoConfiguration ()
   {}
@@ -49,4 +68,91 @@ public final class SMPMongoConfiguration
   {
     return _getConfig ().getAsString (CONFIG_MONGODB_DB_NAME);
   }
+
+  /**
+   * @return The read preference name to be used for the frequently used
+   *         lookups (e.g. "secondaryPreferred" or "nearest"). May be
+   *         <code>null</code> to use the one of the connection string.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static String getMongoReadPreference ()
+  {
+    return _getConfig ().getAsString (CONFIG_MONGODB_READ_PREFERENCE);
+  }
+
+  /**
+   * @return The maximum staleness of secondaries in seconds, or a value &le; 0
+   *         for no limit. MongoDB requires at least 90 seconds.
+   * @since 7.1.4
+   */
+  public static long getMongoReadPreferenceMaxStalenessSeconds ()
+  {
+    return _getConfig ().getAsLong (CONFIG_MONGODB_READ_PREFERENCE_MAX_STALENESS_SECONDS, -1);
+  }
+
+  /**
+   * @return The number of milliseconds a client reads from the primary after
+   *         it wrote something, so that subsequent requests see their own
+   *         writes. Only relevant if a read preference is configured.
+   * @since 7.1.4
+   */
+  public static long getMongoReadPreferencePrimaryPinningMillis ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsLong (CONFIG_MONGODB_READ_PREFERENCE_PRIMARY_PINNING_MS,
+                                              DEFAULT_MONGODB_READ_PREFERENCE_PRIMARY_PINNING_MS));
+  }
+
+  /**
+   * @return The read concern level (e.g. "local" or "majority"). May be
+   *         <code>null</code> to use the one of the connection string.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static String getMongoReadConcern ()
+  {
+    return _getConfig ().getAsString (CONFIG_MONGODB_READ_CONCERN);
+  }
+
+  /**
+   * @return The write concern (e.g. "majority" or "w1"). May be
+   *         <code>null</code> to use the one of the connection string.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static String getMongoWriteConcern ()
+  {
+    return _getConfig ().getAsString (CONFIG_MONGODB_WRITE_CONCERN);
+  }
+
+  /**
+   * @return The maximum number of connections per server, or a value &le; 0 to
+   *         use the driver default.
+   * @since 7.1.4
+   */
+  public static int getMongoPoolMaxSize ()
+  {
+    return _getConfig ().getAsInt (CONFIG_MONGODB_POOL_MAX_SIZE, -1);
+  }
+
+  /**
+   * @return The minimum number of connections per server, or a value &lt; 0 to
+   *         use the driver default.
+   * @since 7.1.4
+   */
+  public static int getMongoPoolMinSize ()
+  {
+    return _getConfig ().getAsInt (CONFIG_MONGODB_POOL_MIN_SIZE, -1);
+  }
+
+  /**
+   * @return The maximum milliseconds to wait for a free connection, or a value
+   *         &lt; 0 to use the driver default.
+   * @since 7.1.4
+   */
+  public static long getMongoPoolMaxWaitTimeMilliseconds ()
+  {
+    return _getConfig ().getAsLong (CONFIG_MONGODB_POOL_MAX_WAIT_TIME_MS, -1);
+  }
 }
@@ -17,6 +17,7 @@
 package com.helger.phoss.smp.backend.mongodb.audit;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -24,6 +25,9 @@ import javax.annotation.Nullable;
 
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.phoss.smp.audit.ISMPAuditStore;
+import com.helger.phoss.smp.audit.SMPAuditRetentionJob;
+import com.helger.phoss.smp.audit.SMPBatchingAuditor;
 import com.helger.photon.audit.IAuditItem;
 import com.helger.photon.audit.IAuditManager;
 import com.helger.photon.audit.IAuditor;
@@ -34,13 +38,19 @@ import com.helger.photon.security.login.LoggedInUserManager;
  *
  * @author Philip Helger
  */
-public class AuditManagerMongoDB implements IAuditManager
+public class AuditManagerMongoDB implements IAuditManager, ISMPAuditStore
 {
   private final AuditorMongoDB m_aAuditor;
+  private final SMPBatchingAuditor m_aBatchingAuditor;
+  private final SMPAuditRetentionJob m_aRetentionJob;
 
   public AuditManagerMongoDB ()
   {
     m_aAuditor = new AuditorMongoDB (LoggedInUserManager.getInstance ());
+    // Writing is done in batches
+    m_aBatchingAuditor = SMPBatchingAuditor.createFromConfiguration (LoggedInUserManager.getInstance (),
+                                                                     m_aAuditor::writeAuditItems);
+    m_aRetentionJob = SMPAuditRetentionJob.createFromConfigurationOrNull (this);
   }
 
   public boolean isInMemory ()
@@ -58,7 +68,7 @@ public class AuditManagerMongoDB implements IAuditManager
   @Nonnull
   public IAuditor getAuditor ()
   {
-    return m_aAuditor;
+    return m_aBatchingAuditor;
   }
 
   @Nonnull
@@ -68,9 +78,27 @@ public class AuditManagerMongoDB implements IAuditManager
     return m_aAuditor.getLastAuditItems (nMaxItems);
   }
 
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IAuditItem> getAllAuditItemsInRange (@Nullable final LocalDateTime aFrom,
+                                                            @Nullable final LocalDateTime aTo,
+                                                            @Nonnegative final int nMaxItems)
+  {
+    return m_aAuditor.getAllAuditItemsInRange (aFrom, aTo, nMaxItems);
+  }
+
+  @Nonnegative
+  public long deleteAllAuditItemsBefore (@Nonnull final LocalDateTime aDT)
+  {
+    return m_aAuditor.deleteAllAuditItemsBefore (aDT);
+  }
+
   public void stop ()
   {
-    // Nothing to do
+    if (m_aRetentionJob != null)
+      m_aRetentionJob.close ();
+    // Write all pending items
+    m_aBatchingAuditor.stop ();
   }
 
   @Nullable
@@ -26,6 +26,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +49,10 @@ import com.helger.photon.audit.IAuditor;
 import com.helger.security.authentication.subject.user.CUserID;
 import com.helger.security.authentication.subject.user.ICurrentUserIDProvider;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
 
 /**
  * A special implementation of {@link IAuditor} writing data to a MongoDB
@@ -57,6 +62,7 @@ import com.mongodb.client.MongoCollection;
  */
 public class AuditorMongoDB implements IAuditor
 {
+  private static final String BSON_ID = "_id";
   private static final String BSON_DT = "dt";
   private static final String BSON_USERID = "userid";
   private static final String BSON_TYPE = "type";
@@ -68,6 +74,14 @@ public class AuditorMongoDB implements IAuditor
   /** The default collection name if none is provided */
   public static final String DEFAULT_COLLECTION_NAME = "smp-audit";
 
+  /**
+   * The maximum number of audit items deleted at once, to avoid long running
+   * operations and a large replication oplog burst.
+   *
+   * @since 7.1.4
+   */
+  public static final int DELETE_CHUNK_SIZE = 10_000;
+
   private final MongoCollection <Document> m_aCollection;
   private final ICurrentUserIDProvider m_aCurrentUserIDProvider;
 
@@ -97,6 +111,8 @@ public class AuditorMongoDB implements IAuditor
     ValueEnforcer.notEmpty (sCollectionName, "CollectionName");
     m_aCollection = MongoClientSingleton.getInstance ().getCollection (sCollectionName);
     m_aCurrentUserIDProvider = ValueEnforcer.notNull (aCurrentUserIDProvider, "UserIDProvider");
+    // Used for sorting and range queries
+    m_aCollection.createIndex (Indexes.ascending (BSON_DT));
   }
 
   @Nonnull
@@ -161,6 +177,31 @@ public class AuditorMongoDB implements IAuditor
       LOGGER.warn ("Dropping audit item, because MongoDB is in non-writable state");
   }
 
+  /**
+   * Write multiple audit items with a single unordered bulk insert.
+   *
+   * @param aItems
+   *        The audit items to write. May neither be <code>null</code> nor
+   *        empty.
+   * @return {@link ESuccess#SUCCESS} if all items were written.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public ESuccess writeAuditItems (@Nonnull @Nonempty final List <IAuditItem> aItems)
+  {
+    ValueEnforcer.notEmpty (aItems, "Items");
+
+    if (!MongoClientSingleton.isDBWritable ())
+    {
+      LOGGER.warn ("Not writing " + aItems.size () + " audit item(s), because MongoDB is in non-writable state");
+      return ESuccess.FAILURE;
+    }
+
+    final ICommonsList <Document> aDocs = new CommonsArrayList <> (aItems, AuditorMongoDB::toBson);
+    return ESuccess.valueOf (m_aCollection.insertMany (aDocs, new InsertManyOptions ().ordered (false))
+                                          .wasAcknowledged ());
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <IAuditItem> getLastAuditItems (@Nonnegative final int nMaxItems)
@@ -175,6 +216,88 @@ public class AuditorMongoDB implements IAuditor
     return ret;
   }
 
+  /**
+   * Get all audit items in the provided time range, newest first.
+   *
+   * @param aFrom
+   *        The inclusive start of the range. May be <code>null</code>.
+   * @param aTo
+   *        The exclusive end of the range. May be <code>null</code>.
+   * @param nMaxItems
+   *        The maximum number of items to return. Must be &gt; 0.
+   * @return The matching audit items and never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IAuditItem> getAllAuditItemsInRange (@Nullable final LocalDateTime aFrom,
+                                                            @Nullable final LocalDateTime aTo,
+                                                            @Nonnegative final int nMaxItems)
+  {
+    ValueEnforcer.isGT0 (nMaxItems, "MaxItems");
+
+    final ICommonsList <Bson> aFilters = new CommonsArrayList <> ();
+    if (aFrom != null)
+      aFilters.add (Filters.gte (BSON_DT, TypeConverter.convert (aFrom, Date.class)));
+    if (aTo != null)
+      aFilters.add (Filters.lt (BSON_DT, TypeConverter.convert (aTo, Date.class)));
+
+    final ICommonsList <IAuditItem> ret = new CommonsArrayList <> ();
+    m_aCollection.find (aFilters.isEmpty () ? new Document () : Filters.and (aFilters))
+                 .sort (new Document (BSON_DT, MongoClientProvider.SORT_DESCENDING))
+                 .limit (nMaxItems)
+                 .forEach (x -> ret.add (toDomain (x)));
+    return ret;
+  }
+
+  @Nonnegative
+  final long deleteAllAuditItemsBefore (@Nonnull final LocalDateTime aDT, @Nonnegative final int nChunkSize)
+  {
+    ValueEnforcer.notNull (aDT, "DT");
+    ValueEnforcer.isGT0 (nChunkSize, "ChunkSize");
+
+    if (!MongoClientSingleton.isDBWritable ())
+    {
+      LOGGER.warn ("Not deleting old audit items, because MongoDB is in non-writable state");
+      return 0;
+    }
+
+    final Bson aFilter = Filters.lt (BSON_DT, TypeConverter.convert (aDT, Date.class));
+    long nDeleted = 0;
+    while (true)
+    {
+      // Select the IDs of the oldest items via the index on dt
+      final ICommonsList <Object> aIDs = new CommonsArrayList <> ();
+      m_aCollection.find (aFilter)
+                   .projection (Projections.include (BSON_ID))
+                   .sort (new Document (BSON_DT, MongoClientProvider.SORT_ASCENDING))
+                   .limit (nChunkSize)
+                   .forEach (x -> aIDs.add (x.get (BSON_ID)));
+      if (aIDs.isEmpty ())
+        break;
+
+      nDeleted += m_aCollection.deleteMany (Filters.and (Filters.in (BSON_ID, aIDs), aFilter)).getDeletedCount ();
+      if (aIDs.size () < nChunkSize)
+        break;
+    }
+    return nDeleted;
+  }
+
+  /**
+   * Delete all audit items older than the provided date time. The items are
+   * deleted in chunks of {@link #DELETE_CHUNK_SIZE}.
+   *
+   * @param aDT
+   *        The exclusive upper bound. May not be <code>null</code>.
+   * @return The number of deleted items. Always &ge; 0.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public long deleteAllAuditItemsBefore (@Nonnull final LocalDateTime aDT)
+  {
+    return deleteAllAuditItemsBefore (aDT, DELETE_CHUNK_SIZE);
+  }
+
   @Nullable
   public LocalDate getEarliestAuditDate ()
   {
@@ -32,7 +32,9 @@ import com.helger.peppolid.IIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
 import com.helger.phoss.smp.backend.mongodb.MongoClientSingleton;
+import com.helger.phoss.smp.backend.mongodb.MongoOperationListener;
 import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.MongoCollection;
 
 /**
@@ -44,17 +46,35 @@ public abstract class AbstractManagerMongoDB implements AutoCloseable
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (AbstractManagerMongoDB.class);
 
-  private static final String BSON_SCHEME = "scheme";
-  private static final String BSON_VALUE = "value";
+  protected static final String BSON_SCHEME = "scheme";
+  protected static final String BSON_VALUE = "value";
 
   private final String m_sCollectionName;
   private final MongoCollection <Document> m_aCollection;
+  private final MongoCollection <Document> m_aReadCollection;
 
   public AbstractManagerMongoDB (@Nonnull @Nonempty final String sCollectionName)
+  {
+    this (sCollectionName, MongoClientSingleton.getInstance ().getReadPreference ());
+  }
+
+  /**
+   * Constructor with an explicit read preference for lookups.
+   *
+   * @param sCollectionName
+   *        The collection name. May neither be <code>null</code> nor empty.
+   * @param aReadPreference
+   *        The read preference for {@link #getReadCollection()}. May be
+   *        <code>null</code> to always use the default read preference.
+   * @since 7.1.4
+   */
+  protected AbstractManagerMongoDB (@Nonnull @Nonempty final String sCollectionName,
+                                    @Nullable final ReadPreference aReadPreference)
   {
     ValueEnforcer.notNull (sCollectionName, "CollectionName");
     m_sCollectionName = sCollectionName;
     m_aCollection = MongoClientSingleton.getInstance ().getCollection (sCollectionName);
+    m_aReadCollection = aReadPreference == null ? m_aCollection : m_aCollection.withReadPreference (aReadPreference);
   }
 
   @OverridingMethodsMustInvokeSuper
@@ -78,6 +98,23 @@ public abstract class AbstractManagerMongoDB implements AutoCloseable
     return m_aCollection;
   }
 
+  /**
+   * Get the collection to be used for pure lookups. It uses the configured
+   * read preference, unless the current request or a recent request of the
+   * same client performed a write operation. In that case the default read
+   * preference is used, so that the client sees its own writes.
+   *
+   * @return The collection for read-only access. Never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  protected final MongoCollection <Document> getReadCollection ()
+  {
+    if (m_aReadCollection == m_aCollection || MongoOperationListener.isPrimaryRequired ())
+      return m_aCollection;
+    return m_aReadCollection;
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public static Document toBson (@Nonnull final IIdentifier aValue)
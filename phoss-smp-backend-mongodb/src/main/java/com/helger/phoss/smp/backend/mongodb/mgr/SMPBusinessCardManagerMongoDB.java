@@ -43,6 +43,7 @@ import com.helger.commons.state.EChange;
 import com.helger.commons.typeconvert.TypeConverter;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
@@ -51,6 +52,7 @@ import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
 import com.helger.photon.audit.AuditHelper;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.result.DeleteResult;
@@ -85,12 +87,17 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
 
   private final IIdentifierFactory m_aIdentifierFactory;
   private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+  private final SMPBusinessCardSearchIndex m_aSearchIndex;
 
   public SMPBusinessCardManagerMongoDB (@Nonnull final IIdentifierFactory aIdentifierFactory)
   {
     super ("smp-businesscard");
     m_aIdentifierFactory = aIdentifierFactory;
     getCollection ().createIndex (Indexes.ascending (BSON_ID));
+    m_aSearchIndex = SMPServerConfiguration.isBusinessCardSearchIndexEnabled () ? new SMPBusinessCardSearchIndex (this)
+                                                                                : null;
+    if (m_aSearchIndex != null)
+      m_aCBs.add (m_aSearchIndex);
   }
 
   @Nonnull
@@ -377,7 +384,7 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
     if (aID == null)
       return null;
 
-    return getCollection ().find (new Document (BSON_ID, aID.getURIEncoded ())).map (this::toDomain).first ();
+    return getReadCollection ().find (new Document (BSON_ID, aID.getURIEncoded ())).map (this::toDomain).first ();
   }
 
   @Nonnegative
@@ -385,4 +392,10 @@ public final class SMPBusinessCardManagerMongoDB extends AbstractManagerMongoDB
   {
     return getCollection ().countDocuments ();
   }
+
+  @Nullable
+  public SMPBusinessCardSearchIndex getSearchIndex ()
+  {
+    return m_aSearchIndex;
+  }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb.mgr;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.typeconvert.TypeConverter;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterChangeType;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventStore;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.result.DeleteResult;
+
+/**
+ * Implementation of {@link ISMPClusterEventStore} for MongoDB. The collection
+ * is polled, because change streams are only available on replica sets.
+ * Events are always read from the primary.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public final class SMPClusterEventStoreMongoDB extends AbstractManagerMongoDB implements ISMPClusterEventStore
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPClusterEventStoreMongoDB.class);
+
+  private static final String BSON_ID = "id";
+  private static final String BSON_DT = "dt";
+  private static final String BSON_NODE_ID = "nodeid";
+  private static final String BSON_OBJECT_TYPE = "objtype";
+  private static final String BSON_CHANGE_TYPE = "changetype";
+  private static final String BSON_SERVICE_GROUP_ID = "sgid";
+  private static final String BSON_OBJECT_ID = "objid";
+
+  public SMPClusterEventStoreMongoDB ()
+  {
+    super ("smp-cluster-event");
+    getCollection ().createIndex (Indexes.ascending (BSON_DT));
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public static Document toBson (@Nonnull final SMPClusterEvent aValue)
+  {
+    final Document ret = new Document ().append (BSON_ID, aValue.getID ())
+                                        .append (BSON_DT, TypeConverter.convert (aValue.getDateTime (), Date.class))
+                                        .append (BSON_NODE_ID, aValue.getNodeID ())
+                                        .append (BSON_OBJECT_TYPE, aValue.getObjectType ().getID ())
+                                        .append (BSON_CHANGE_TYPE, aValue.getChangeType ().getID ())
+                                        .append (BSON_SERVICE_GROUP_ID, aValue.getServiceGroupID ());
+    if (aValue.hasObjectID ())
+      ret.append (BSON_OBJECT_ID, aValue.getObjectID ());
+    return ret;
+  }
+
+  @Nullable
+  public static SMPClusterEvent toDomain (@Nonnull final Document aDoc)
+  {
+    final ESMPClusterObjectType eObjectType = ESMPClusterObjectType.getFromIDOrNull (aDoc.getString (BSON_OBJECT_TYPE));
+    final ESMPClusterChangeType eChangeType = ESMPClusterChangeType.getFromIDOrNull (aDoc.getString (BSON_CHANGE_TYPE));
+    if (eObjectType == null || eChangeType == null)
+    {
+      // Created by a newer version
+      LOGGER.warn ("Ignoring cluster event '" + aDoc.getString (BSON_ID) + "' with unknown type");
+      return null;
+    }
+    return new SMPClusterEvent (aDoc.getString (BSON_ID),
+                                TypeConverter.convert (aDoc.getDate (BSON_DT), LocalDateTime.class),
+                                aDoc.getString (BSON_NODE_ID),
+                                eObjectType,
+                                eChangeType,
+                                aDoc.getString (BSON_SERVICE_GROUP_ID),
+                                aDoc.getString (BSON_OBJECT_ID));
+  }
+
+  @Nonnull
+  public ESuccess appendEvent (@Nonnull final SMPClusterEvent aEvent)
+  {
+    ValueEnforcer.notNull (aEvent, "Event");
+    return ESuccess.valueOf (getCollection ().insertOne (toBson (aEvent)).wasAcknowledged ());
+  }
+
+  @Nullable
+  @ReturnsMutableCopy
+  public ICommonsList <SMPClusterEvent> getAllEventsSince (@Nonnull final LocalDateTime aSince)
+  {
+    ValueEnforcer.notNull (aSince, "Since");
+
+    final ICommonsList <SMPClusterEvent> ret = new CommonsArrayList <> ();
+    getCollection ().find (Filters.gte (BSON_DT, TypeConverter.convert (aSince, Date.class)))
+                    .sort (Sorts.ascending (BSON_DT))
+                    .forEach (x -> {
+                      final SMPClusterEvent aEvent = toDomain (x);
+                      if (aEvent != null)
+                        ret.add (aEvent);
+                    });
+    return ret;
+  }
+
+  @Nonnegative
+  public long deleteAllEventsBefore (@Nonnull final LocalDateTime aBefore)
+  {
+    ValueEnforcer.notNull (aBefore, "Before");
+
+    final DeleteResult aDR = getCollection ().deleteMany (Filters.lt (BSON_DT,
+                                                                      TypeConverter.convert (aBefore, Date.class)));
+    return aDR.wasAcknowledged () ? aDR.getDeletedCount () : 0;
+  }
+}
@@ -19,12 +19,16 @@ package com.helger.phoss.smp.backend.mongodb.mgr;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.helger.commons.state.ETriState;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.phoss.smp.backend.mongodb.PhotonSecurityManagerFactoryMongoDB;
 import com.helger.phoss.smp.domain.ISMPManagerProvider;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventStore;
 import com.helger.phoss.smp.domain.pmigration.ISMPParticipantMigrationManager;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
@@ -32,6 +36,7 @@ import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.domain.sml.ISMLInfoManager;
 import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
 import com.helger.phoss.smp.settings.ISMPSettingsManager;
+import com.helger.photon.core.mgr.PhotonBasicManager;
 import com.helger.photon.security.mgr.PhotonSecurityManager;
 
 /**
@@ -41,6 +46,10 @@ import com.helger.photon.security.mgr.PhotonSecurityManager;
  */
 public final class SMPManagerProviderMongoDB implements ISMPManagerProvider
 {
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPManagerProviderMongoDB.class);
+
+  private SMPServiceInformationManagerMongoDB m_aServiceInformationMgr;
+
   @Override
   public void beforeInitManagers ()
   {
@@ -49,6 +58,21 @@ public final class SMPManagerProviderMongoDB implements ISMPManagerProvider
     PhotonSecurityManager.getInstance ();
   }
 
+  @Override
+  public void afterInitManagers ()
+  {
+    final SMPServiceInformationManagerMongoDB aServiceInformationMgr = m_aServiceInformationMgr;
+    if (aServiceInformationMgr != null)
+    {
+      // Since 7.1.4 endpoint certificates are stored only once
+      PhotonBasicManager.getSystemMigrationMgr ().performMigrationIfNecessary ("mongodb-endpoint-certificate-store", () -> {
+        LOGGER.info ("Started moving endpoint certificates to the certificate store");
+        final int nCount = aServiceInformationMgr.migrateEndpointCertificatesToStore ();
+        LOGGER.info ("Finished moving endpoint certificates of " + nCount + " service information objects");
+      });
+    }
+  }
+
   @Nonnull
   public ETriState getBackendConnectionEstablishedDefaultState ()
   {
@@ -90,7 +114,8 @@ public final class SMPManagerProviderMongoDB implements ISMPManagerProvider
   public ISMPServiceInformationManager createServiceInformationMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
                                                                     @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
   {
-    return new SMPServiceInformationManagerMongoDB (aIdentifierFactory, aServiceGroupMgr);
+    m_aServiceInformationMgr = new SMPServiceInformationManagerMongoDB (aIdentifierFactory, aServiceGroupMgr);
+    return m_aServiceInformationMgr;
   }
 
   @Nonnull
@@ -106,6 +131,13 @@ public final class SMPManagerProviderMongoDB implements ISMPManagerProvider
     return new SMPBusinessCardManagerMongoDB (aIdentifierFactory);
   }
 
+  @Override
+  @Nonnull
+  public ISMPClusterEventStore createClusterEventStore ()
+  {
+    return new SMPClusterEventStoreMongoDB ();
+  }
+
   @Override
   public String toString ()
   {
@@ -308,10 +308,10 @@ public final class SMPRedirectManagerMongoDB extends AbstractManagerMongoDB impl
     if (aDocTypeID == null)
       return null;
 
-    final Document aMatch = getCollection ().find (Filters.and (new Document (BSON_SERVICE_GROUP_ID,
-                                                                              aServiceGroup.getID ()),
-                                                                new Document (BSON_DOCTYPE_ID, toBson (aDocTypeID))))
-                                            .first ();
+    final Document aMatch = getReadCollection ().find (Filters.and (new Document (BSON_SERVICE_GROUP_ID,
+                                                                                  aServiceGroup.getID ()),
+                                                                    new Document (BSON_DOCTYPE_ID, toBson (aDocTypeID))))
+                                                .first ();
     if (aMatch == null)
       return null;
     return toDomain (aMatch);
@@ -16,11 +16,15 @@
  */
 package com.helger.phoss.smp.backend.mongodb.mgr;
 
+import java.time.LocalDateTime;
+import java.util.Date;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,13 +39,18 @@ import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.state.EChange;
 import com.helger.commons.string.StringHelper;
+import com.helger.commons.typeconvert.TypeConverter;
 import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPage;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.exception.SMPNotFoundException;
 import com.helger.phoss.smp.exception.SMPSMLException;
@@ -50,7 +59,9 @@ import com.helger.phoss.smp.smlhook.IRegistrationHook;
 import com.helger.phoss.smp.smlhook.RegistrationHookException;
 import com.helger.phoss.smp.smlhook.RegistrationHookFactory;
 import com.helger.photon.audit.AuditHelper;
+import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.DeleteResult;
 
@@ -66,6 +77,7 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
   private static final String BSON_OWNER_ID = "ownerid";
   private static final String BSON_PARTICIPANT_ID = "participantid";
   private static final String BSON_EXTENSION = "extension";
+  private static final String BSON_LAST_MOD_DT = "lastmoddt";
 
   private final CallbackList <ISMPServiceGroupCallback> m_aCBs = new CallbackList <> ();
 
@@ -73,6 +85,9 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
   {
     super ("smp-servicegroup");
     getCollection ().createIndex (Indexes.ascending (BSON_ID));
+    // For paging
+    getCollection ().createIndex (Indexes.ascending (BSON_OWNER_ID, BSON_ID));
+    getCollection ().createIndex (Indexes.ascending (BSON_PARTICIPANT_ID + "." + BSON_VALUE));
   }
 
   @Nonnull
@@ -91,6 +106,8 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
                                         .append (BSON_PARTICIPANT_ID, toBson (aValue.getParticipantIdentifier ()));
     if (aValue.getExtensions ().extensions ().isNotEmpty ())
       ret.append (BSON_EXTENSION, aValue.getExtensions ().getExtensionsAsJsonString ());
+    if (aValue.hasLastModificationDateTime ())
+      ret.append (BSON_LAST_MOD_DT, TypeConverter.convert (aValue.getLastModificationDateTime (), Date.class));
     return ret;
   }
 
@@ -102,7 +119,10 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
     final IParticipantIdentifier aParticipantIdentifier = toParticipantID (aDoc.get (BSON_PARTICIPANT_ID,
                                                                                      Document.class));
     final String sExtension = aDoc.getString (BSON_EXTENSION);
-    return new SMPServiceGroup (sOwnerID, aParticipantIdentifier, sExtension);
+    final SMPServiceGroup ret = new SMPServiceGroup (sOwnerID, aParticipantIdentifier, sExtension);
+    // May be null for documents stored by older versions
+    ret.setLastModificationDateTime (TypeConverter.convert (aDoc.getDate (BSON_LAST_MOD_DT), LocalDateTime.class));
+    return ret;
   }
 
   @Nonnull
@@ -196,7 +216,10 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
                                                                 Updates.combine (Updates.set (BSON_OWNER_ID,
                                                                                               sNewOwnerID),
                                                                                  Updates.set (BSON_EXTENSION,
-                                                                                              sExtension)));
+                                                                                              sExtension),
+                                                                                 Updates.set (BSON_LAST_MOD_DT,
+                                                                                              TypeConverter.convert (ISMPHasLastModification.getNextLastModificationDateTime (null),
+                                                                                                                     Date.class))));
     if (aOldDoc == null)
     {
       AuditHelper.onAuditModifyFailure (SMPServiceGroup.OT, "set-all", sServiceGroupID, "no-such-id");
@@ -299,6 +322,56 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
     return ret;
   }
 
+  @Nonnull
+  static String getRegExQuoted (@Nonnull final String s)
+  {
+    // Don't use Pattern.quote, so that the index can be used for prefixes
+    final StringBuilder aSB = new StringBuilder (s.length () * 2);
+    for (final char c : s.toCharArray ())
+    {
+      if ("\\^$.|?*+()[]{}".indexOf (c) >= 0)
+        aSB.append ('\\');
+      aSB.append (c);
+    }
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  public SMPServiceGroupPage getSMPServiceGroupPage (@Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    ValueEnforcer.notNull (aRequest, "Request");
+
+    final ICommonsList <Bson> aFilters = new CommonsArrayList <> ();
+    if (aRequest.getFilterScheme () != null)
+      aFilters.add (Filters.eq (BSON_PARTICIPANT_ID + "." + BSON_SCHEME, aRequest.getFilterScheme ()));
+    if (aRequest.getFilterValuePrefix () != null)
+      aFilters.add (Filters.regex (BSON_PARTICIPANT_ID + "." + BSON_VALUE,
+                                   "^" + getRegExQuoted (aRequest.getFilterValuePrefix ())));
+    final Bson aFilter = aFilters.isEmpty () ? new Document () : Filters.and (aFilters);
+    final long nFilteredCount = getReadCollection ().countDocuments (aFilter);
+
+    final IParticipantIdentifier aAfterPI = aRequest.getAfterParticipantID ();
+    if (aAfterPI != null)
+    {
+      // Keyset paging
+      final String sAfterID = SMPServiceGroup.createSMPServiceGroupID (aAfterPI);
+      aFilters.add (aRequest.isAscending () ? Filters.gt (BSON_ID, sAfterID) : Filters.lt (BSON_ID, sAfterID));
+    }
+
+    final ICommonsList <String> aSortFields = new CommonsArrayList <> ();
+    if (aRequest.getSortColumn () == ESMPServiceGroupSortColumn.OWNER_ID)
+      aSortFields.add (BSON_OWNER_ID);
+    aSortFields.add (BSON_ID);
+
+    final ICommonsList <ISMPServiceGroup> ret = new CommonsArrayList <> ();
+    getReadCollection ().find (aFilters.isEmpty () ? new Document () : Filters.and (aFilters))
+                        .sort (aRequest.isAscending () ? Sorts.ascending (aSortFields) : Sorts.descending (aSortFields))
+                        .skip (aRequest.getOffset ())
+                        .limit (aRequest.getMaxCount ())
+                        .forEach (x -> ret.add (toDomain (x)));
+    return new SMPServiceGroupPage (ret, nFilteredCount);
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPServiceGroup> getAllSMPServiceGroupsOfOwner (@Nonnull final String sOwnerID)
@@ -320,7 +393,7 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
       return null;
 
     final String sID = SMPServiceGroup.createSMPServiceGroupID (aParticipantID);
-    return getCollection ().find (new Document (BSON_ID, sID)).map (SMPServiceGroupManagerMongoDB::toDomain).first ();
+    return getReadCollection ().find (new Document (BSON_ID, sID)).map (SMPServiceGroupManagerMongoDB::toDomain).first ();
   }
 
   public boolean containsSMPServiceGroupWithID (@Nullable final IParticipantIdentifier aParticipantID)
@@ -329,7 +402,7 @@ public final class SMPServiceGroupManagerMongoDB extends AbstractManagerMongoDB
       return false;
 
     final String sID = SMPServiceGroup.createSMPServiceGroupID (aParticipantID);
-    return getCollection ().find (new Document (BSON_ID, sID)).first () != null;
+    return getReadCollection ().find (new Document (BSON_ID, sID)).first () != null;
   }
 
   @Nonnegative
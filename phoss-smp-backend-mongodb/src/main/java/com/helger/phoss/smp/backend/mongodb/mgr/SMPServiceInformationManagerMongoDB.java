@@ -16,47 +16,90 @@
  */
 package com.helger.phoss.smp.backend.mongodb.mgr;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
 import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.CommonsTreeSet;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.collection.impl.ICommonsSortedSet;
 import com.helger.commons.datetime.XMLOffsetDateTime;
 import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.functional.ITriConsumer;
+import com.helger.commons.mutable.MutableInt;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
+import com.helger.commons.timing.StopWatch;
 import com.helger.commons.typeconvert.TypeConverter;
+import com.helger.commons.wrapper.Wrapper;
 import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppolid.CIdentifier;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.backend.mongodb.MongoClientSingleton;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPCertificateCache;
 import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeHelper;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeResult;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointPage;
 import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
 import com.helger.photon.audit.AuditHelper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
 
 /**
  * Manager for all {@link SMPServiceInformation} objects.
@@ -75,6 +118,7 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
   private static final String BSON_PROCESS_ID = "processid";
   private static final String BSON_ENDPOINTS = "endpoints";
   private static final String BSON_EXTENSIONS = "extensions";
+  private static final String BSON_LAST_MOD_DT = "lastmoddt";
   private static final String BSON_TRANSPORT_PROFILE = "transportprofile";
   private static final String BSON_ENDPOINT_REFERENCE = "endpointreference";
   private static final String BSON_BUSINESSLEVELSIG = "businesslevelsig";
@@ -82,12 +126,20 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
   private static final String BSON_SERVICEACTIVATION = "serviceactivation";
   private static final String BSON_SERVICEEXPIRATION = "serviceexpiration";
   private static final String BSON_CERTIFICATE = "certificate";
+  private static final String BSON_CERTIFICATE_HASH = "certhash";
   private static final String BSON_SERVICE_DESCRIPTION = "servicedesc";
   private static final String BSON_TECHCONTACTURL = "techcontacturl";
   private static final String BSON_TECHINFOURL = "techinfourl";
+  private static final String BSON_COUNT = "count";
+
+  /** The collection name of the content addressed certificate store */
+  private static final String CERTIFICATE_COLLECTION_NAME = "smp-certificate";
+  /** The number of documents fetched per round trip when iterating */
+  private static final int ITERATION_BATCH_SIZE = 500;
 
   private final IIdentifierFactory m_aIdentifierFactory;
   private final ISMPServiceGroupManager m_aServiceGroupMgr;
+  private final MongoCollection <Document> m_aCertCollection;
   private final CallbackList <ISMPServiceInformationCallback> m_aCBs = new CallbackList <> ();
 
   public SMPServiceInformationManagerMongoDB (@Nonnull final IIdentifierFactory aIdentifierFactory,
@@ -96,6 +148,13 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     super ("smp-serviceinfo");
     m_aIdentifierFactory = aIdentifierFactory;
     m_aServiceGroupMgr = aServiceGroupMgr;
+    // Used for the lookup by service group and the ordered iteration
+    getCollection ().createIndex (Indexes.ascending (BSON_SERVICE_GROUP_ID));
+    // Used for the bulk change of endpoints
+    getCollection ().createIndex (Indexes.ascending (BSON_PROCESSES + "." + BSON_ENDPOINTS + "." + BSON_ENDPOINT_REFERENCE));
+    getCollection ().createIndex (Indexes.ascending (BSON_PROCESSES + "." + BSON_ENDPOINTS + "." + BSON_CERTIFICATE_HASH));
+    // The ID is the hash of the certificate
+    m_aCertCollection = MongoClientSingleton.getInstance ().getCollection (CERTIFICATE_COLLECTION_NAME);
   }
 
   @Nonnull
@@ -120,7 +179,10 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     if (aValue.hasServiceExpirationDateTime ())
       ret.append (BSON_SERVICEEXPIRATION, TypeConverter.convert (aValue.getServiceExpirationDateTime (), Date.class));
     if (aValue.hasCertificate ())
-      ret.append (BSON_CERTIFICATE, aValue.getCertificate ());
+    {
+      // Only the reference - see _ensureCertificatesStored
+      ret.append (BSON_CERTIFICATE_HASH, SMPCertificateCache.getHash (aValue.getCertificate ()));
+    }
     if (aValue.hasServiceDescription ())
       ret.append (BSON_SERVICE_DESCRIPTION, aValue.getServiceDescription ());
     if (aValue.hasTechnicalContactUrl ())
@@ -132,9 +194,65 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     return ret;
   }
 
+  /**
+   * Ensure that all endpoint certificates of the provided service information
+   * are contained in the certificate collection. The documents are shared
+   * with other endpoints and never deleted.
+   *
+   * @param aSMPServiceInformation
+   *        The service information to check. May not be <code>null</code>.
+   */
+  private void _ensureCertificatesStored (@Nonnull final ISMPServiceInformation aSMPServiceInformation)
+  {
+    final ICommonsSet <String> aHandledHashes = new CommonsHashSet <> ();
+    for (final ISMPProcess aProcess : aSMPServiceInformation.getAllProcesses ())
+      for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+      {
+        final String sCertHash = SMPCertificateCache.getHash (aEndpoint.getCertificate ());
+        if (sCertHash != null && aHandledHashes.add (sCertHash))
+          _ensureCertificateStored (sCertHash, aEndpoint.getCertificate ());
+      }
+  }
+
+  private void _ensureCertificateStored (@Nonnull @Nonempty final String sCertHash,
+                                         @Nonnull @Nonempty final String sCertificate)
+  {
+    // Atomic and idempotent
+    m_aCertCollection.updateOne (Filters.eq (BSON_ID, sCertHash),
+                                 Updates.setOnInsert (BSON_CERTIFICATE, sCertificate),
+                                 new UpdateOptions ().upsert (true));
+  }
+
+  /**
+   * Resolve the certificate with the provided hash. Each distinct certificate
+   * is only read once from the DB and shared afterwards.
+   *
+   * @param sCertHash
+   *        The certificate hash of the endpoint. May not be <code>null</code>.
+   * @return The certificate string. Never <code>null</code>.
+   * @throws IllegalStateException
+   *         If the referenced certificate is not present in the database
+   */
+  @Nonnull
+  private String _getCertificateOfHash (@Nonnull final String sCertHash)
+  {
+    final String ret = SMPCertificateCache.getCertificateOfHash (sCertHash);
+    if (ret != null)
+      return ret;
+
+    final Document aDoc = m_aCertCollection.find (Filters.eq (BSON_ID, sCertHash)).first ();
+    if (aDoc == null)
+    {
+      // Returning the endpoint without certificate would be wrong
+      LOGGER.error ("Failed to resolve endpoint certificate with hash '" + sCertHash + "'");
+      throw new IllegalStateException ("Failed to resolve endpoint certificate with hash '" + sCertHash + "'");
+    }
+    return SMPCertificateCache.intern (aDoc.getString (BSON_CERTIFICATE));
+  }
+
   @Nonnull
   @ReturnsMutableCopy
-  public static SMPEndpoint toEndpoint (@Nonnull final Document aDoc)
+  public SMPEndpoint toEndpoint (@Nonnull final Document aDoc)
   {
     final String sTransportProfile = aDoc.getString (BSON_TRANSPORT_PROFILE);
     final String sEndpointReference = aDoc.getString (BSON_ENDPOINT_REFERENCE);
@@ -145,7 +263,10 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
                                                                           XMLOffsetDateTime.class);
     final XMLOffsetDateTime aServiceExpirationDT = TypeConverter.convert (aDoc.getDate (BSON_SERVICEEXPIRATION),
                                                                           XMLOffsetDateTime.class);
-    final String sCertificate = aDoc.getString (BSON_CERTIFICATE);
+    final String sCertHash = aDoc.getString (BSON_CERTIFICATE_HASH);
+    // Documents that were not yet migrated contain the certificate itself
+    final String sCertificate = sCertHash != null ? _getCertificateOfHash (sCertHash)
+                                                  : aDoc.getString (BSON_CERTIFICATE);
     final String sServiceDescription = aDoc.getString (BSON_SERVICE_DESCRIPTION);
     final String sTechnicalContactUrl = aDoc.getString (BSON_TECHCONTACTURL);
     final String sTechnicalInformationUrl = aDoc.getString (BSON_TECHINFOURL);
@@ -179,7 +300,7 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
 
   @Nullable
   @ReturnsMutableCopy
-  public static SMPProcess toProcess (@Nonnull final Document aDoc)
+  public SMPProcess toProcess (@Nonnull final Document aDoc)
   {
     final IProcessIdentifier aProcessID = toProcessID ((Document) aDoc.get (BSON_PROCESS_ID));
     final List <Document> aEndpointDocs = aDoc.getList (BSON_ENDPOINTS, Document.class);
@@ -206,6 +327,8 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
       ret.append (BSON_PROCESSES, aProcs);
     if (aValue.getExtensions ().extensions ().isNotEmpty ())
       ret.append (BSON_EXTENSIONS, aValue.getExtensions ().getExtensionsAsJsonString ());
+    if (aValue.hasLastModificationDateTime ())
+      ret.append (BSON_LAST_MOD_DT, TypeConverter.convert (aValue.getLastModificationDateTime (), Date.class));
     return ret;
   }
 
@@ -214,6 +337,14 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
   public SMPServiceInformation toServiceInformation (@Nonnull final Document aDoc, final boolean bNeedProcesses)
   {
     final ISMPServiceGroup aServiceGroup = m_aServiceGroupMgr.getSMPServiceGroupOfID (m_aIdentifierFactory.parseParticipantIdentifier (aDoc.getString (BSON_SERVICE_GROUP_ID)));
+    return _toServiceInformation (aServiceGroup, aDoc, bNeedProcesses);
+  }
+
+  @Nonnull
+  private SMPServiceInformation _toServiceInformation (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                       @Nonnull final Document aDoc,
+                                                       final boolean bNeedProcesses)
+  {
     final IDocumentTypeIdentifier aDocTypeID = toDocumentTypeID (aDoc.get (BSON_DOCTYPE_ID, Document.class));
     final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
     if (bNeedProcesses)
@@ -226,7 +357,10 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     final String sExtension = aDoc.getString (BSON_EXTENSIONS);
 
     // The ID itself is derived from ServiceGroupID and DocTypeID
-    return new SMPServiceInformation (aServiceGroup, aDocTypeID, aProcesses, sExtension);
+    final SMPServiceInformation ret = new SMPServiceInformation (aServiceGroup, aDocTypeID, aProcesses, sExtension);
+    // May be null for documents stored by older versions
+    ret.setLastModificationDateTime (TypeConverter.convert (aDoc.getDate (BSON_LAST_MOD_DT), LocalDateTime.class));
+    return ret;
   }
 
   @Nullable
@@ -250,6 +384,114 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     return null;
   }
 
+  /**
+   * Add the update for a single field, if its value changed.
+   *
+   * @param sField
+   *        The path of the field to update. May neither be <code>null</code>
+   *        nor empty.
+   * @param aOldValue
+   *        The stored value. May be <code>null</code>.
+   * @param aNewValue
+   *        The new value. May be <code>null</code> to remove the field.
+   * @param aUpdates
+   *        The list to add the update to. May not be <code>null</code>.
+   */
+  private static void _addFieldUpdate (@Nonnull @Nonempty final String sField,
+                                       @Nullable final Object aOldValue,
+                                       @Nullable final Object aNewValue,
+                                       @Nonnull final ICommonsList <Bson> aUpdates)
+  {
+    if (!EqualsHelper.equals (aOldValue, aNewValue))
+      aUpdates.add (aNewValue == null ? Updates.unset (sField) : Updates.set (sField, aNewValue));
+  }
+
+  /**
+   * Add the updates for the elements of an array of documents. Only the
+   * changed elements are written, unless the number of elements changed.
+   *
+   * @param sField
+   *        The path of the array field. May neither be <code>null</code> nor
+   *        empty.
+   * @param aOldList
+   *        The stored elements. May not be <code>null</code>.
+   * @param aNewList
+   *        The new elements. May not be <code>null</code>.
+   * @param aElementUpdater
+   *        The callback that adds the updates of a single changed element,
+   *        taking the path of the element, the old and the new element. May
+   *        not be <code>null</code>.
+   * @param aUpdates
+   *        The list to add the updates to. May not be <code>null</code>.
+   */
+  private static void _addArrayUpdates (@Nonnull @Nonempty final String sField,
+                                        @Nonnull final List <Document> aOldList,
+                                        @Nonnull final List <Document> aNewList,
+                                        @Nonnull final ITriConsumer <String, Document, Document> aElementUpdater,
+                                        @Nonnull final ICommonsList <Bson> aUpdates)
+  {
+    if (aOldList.size () != aNewList.size ())
+    {
+      // toBson does not write empty arrays
+      aUpdates.add (aNewList.isEmpty () ? Updates.unset (sField) : Updates.set (sField, aNewList));
+    }
+    else
+      for (int i = 0; i < aNewList.size (); ++i)
+      {
+        final Document aOld = aOldList.get (i);
+        final Document aNew = aNewList.get (i);
+        if (!aOld.equals (aNew))
+          aElementUpdater.accept (sField + "." + i, aOld, aNew);
+      }
+  }
+
+  /**
+   * Determine the updates needed to turn the stored document of a service
+   * information into the new one. Only the changed processes and endpoints are
+   * written, so that a small change of a large service information does not
+   * transfer the whole document.
+   *
+   * @param aOldDoc
+   *        The stored document. May not be <code>null</code>.
+   * @param aNewDoc
+   *        The new document of the same service information. May not be
+   *        <code>null</code>.
+   * @return The updates to apply. Never <code>null</code> and never empty,
+   *         because the last modification is always updated.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  static ICommonsList <Bson> getUpdates (@Nonnull final Document aOldDoc, @Nonnull final Document aNewDoc)
+  {
+    final ICommonsList <Bson> ret = new CommonsArrayList <> ();
+    _addArrayUpdates (BSON_PROCESSES,
+                      aOldDoc.getList (BSON_PROCESSES, Document.class, Collections.emptyList ()),
+                      aNewDoc.getList (BSON_PROCESSES, Document.class, Collections.emptyList ()),
+                      (sPath, aOldP, aNewP) -> {
+                        if (!aOldP.get (BSON_PROCESS_ID).equals (aNewP.get (BSON_PROCESS_ID)))
+                        {
+                          // Different process at this position
+                          ret.add (Updates.set (sPath, aNewP));
+                        }
+                        else
+                        {
+                          _addArrayUpdates (sPath + "." + BSON_ENDPOINTS,
+                                            aOldP.getList (BSON_ENDPOINTS, Document.class, Collections.emptyList ()),
+                                            aNewP.getList (BSON_ENDPOINTS, Document.class, Collections.emptyList ()),
+                                            (sPathE, aOldE, aNewE) -> ret.add (Updates.set (sPathE, aNewE)),
+                                            ret);
+                          _addFieldUpdate (sPath + "." + BSON_EXTENSIONS,
+                                           aOldP.get (BSON_EXTENSIONS),
+                                           aNewP.get (BSON_EXTENSIONS),
+                                           ret);
+                        }
+                      },
+                      ret);
+    _addFieldUpdate (BSON_EXTENSIONS, aOldDoc.get (BSON_EXTENSIONS), aNewDoc.get (BSON_EXTENSIONS), ret);
+    ret.add (Updates.set (BSON_LAST_MOD_DT, aNewDoc.get (BSON_LAST_MOD_DT)));
+    return ret;
+  }
+
   @Nonnull
   public ESuccess mergeSMPServiceInformation (@Nonnull final ISMPServiceInformation aSMPServiceInformationObj)
   {
@@ -259,31 +501,44 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("mergeSMPServiceInformation (" + aSMPServiceInformationObj + ")");
 
-    // Check for an update
-    boolean bChangedExisting = false;
-    final ISMPServiceInformation aOldInformation = getSMPServiceInformationOfServiceGroupAndDocumentType (aSMPServiceInformation.getServiceGroup (),
-                                                                                                          aSMPServiceInformation.getDocumentTypeIdentifier ());
-    if (aOldInformation != null)
-    {
-      // If a service information is present, it must be the provided object!
-      // This is not true for the REST API
-      if (EqualsHelper.identityEqual (aOldInformation, aSMPServiceInformation))
-        bChangedExisting = true;
-    }
+    // The stored document is only needed to determine the changes
+    final String sID = aSMPServiceInformation.getID ();
+    final Document aOldDoc = getCollection ().find (Filters.eq (BSON_ID, sID)).first ();
 
-    if (bChangedExisting)
+    // Must be after the last modification of the replaced object
+    final Date aPrevLastModDT = aOldDoc == null ? null : aOldDoc.getDate (BSON_LAST_MOD_DT);
+    aSMPServiceInformation.setLastModificationDateTime (ISMPHasLastModification.getNextLastModificationDateTime (TypeConverter.convert (aPrevLastModDT,
+                                                                                                                                        LocalDateTime.class)));
+
+    _ensureCertificatesStored (aSMPServiceInformation);
+
+    final Document aNewDoc = toBson (aSMPServiceInformation);
+    if (aOldDoc != null)
     {
-      // Edit existing
-      getCollection ().replaceOne (new Document (BSON_ID, aOldInformation.getID ()), toBson (aSMPServiceInformation));
+      // Edit existing - only if it was not modified in the meantime
+      final UpdateResult aUR = getCollection ().updateOne (Filters.and (Filters.eq (BSON_ID, sID),
+                                                                        Filters.eq (BSON_LAST_MOD_DT, aPrevLastModDT)),
+                                                           Updates.combine (getUpdates (aOldDoc, aNewDoc)));
+      if (aUR.getMatchedCount () == 0)
+      {
+        // Concurrently modified - write the whole document, but do not
+        // recreate it if it was deleted in the meantime
+        if (getCollection ().replaceOne (Filters.eq (BSON_ID, sID), aNewDoc).getMatchedCount () == 0)
+        {
+          AuditHelper.onAuditModifyFailure (SMPServiceInformation.OT, "set-all", sID, "no-such-id");
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug ("mergeSMPServiceInformation - failure - concurrently deleted");
+          return ESuccess.FAILURE;
+        }
+      }
 
       AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
                                         "set-all",
-                                        aOldInformation.getID (),
-                                        aOldInformation.getServiceGroupID (),
-                                        aOldInformation.getDocumentTypeIdentifier ().getURIEncoded (),
-                                        aOldInformation.getAllProcesses (),
-                                        aOldInformation.getExtensions ().getExtensionsAsJsonString ());
-
+                                        sID,
+                                        aSMPServiceInformation.getServiceGroupID (),
+                                        aSMPServiceInformation.getDocumentTypeIdentifier ().getURIEncoded (),
+                                        aSMPServiceInformation.getAllProcesses (),
+                                        aSMPServiceInformation.getExtensions ().getExtensionsAsJsonString ());
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("mergeSMPServiceInformation - success - updated");
 
@@ -291,36 +546,12 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     }
     else
     {
-      // (Optionally delete the old one and) create the new one
-      boolean bRemovedOld = false;
-      if (aOldInformation != null)
-      {
-        // Delete only if present
-        final DeleteResult aDR = getCollection ().deleteOne (new Document (BSON_ID, aOldInformation.getID ()));
-        bRemovedOld = aDR.wasAcknowledged () && aDR.getDeletedCount () > 0;
-      }
-
-      if (!getCollection ().insertOne (toBson (aSMPServiceInformation)).wasAcknowledged ())
+      // Create new
+      if (!getCollection ().insertOne (aNewDoc).wasAcknowledged ())
         throw new IllegalStateException ("Failed to insert into MongoDB Collection");
 
-      if (bRemovedOld)
-      {
-        AuditHelper.onAuditDeleteSuccess (SMPServiceInformation.OT,
-                                          aOldInformation.getID (),
-                                          aOldInformation.getServiceGroupID (),
-                                          aOldInformation.getDocumentTypeIdentifier ().getURIEncoded ());
-      }
-      else
-        if (aOldInformation != null)
-        {
-          AuditHelper.onAuditDeleteFailure (SMPServiceInformation.OT,
-                                            aOldInformation.getID (),
-                                            aOldInformation.getServiceGroupID (),
-                                            aOldInformation.getDocumentTypeIdentifier ().getURIEncoded ());
-        }
-
       AuditHelper.onAuditCreateSuccess (SMPServiceInformation.OT,
-                                        aSMPServiceInformation.getID (),
+                                        sID,
                                         aSMPServiceInformation.getServiceGroupID (),
                                         aSMPServiceInformation.getDocumentTypeIdentifier ().getURIEncoded (),
                                         aSMPServiceInformation.getAllProcesses (),
@@ -328,14 +559,223 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("mergeSMPServiceInformation - success - created");
 
-      if (bChangedExisting)
-        m_aCBs.forEach (x -> x.onSMPServiceInformationUpdated (aSMPServiceInformation));
-      else
-        m_aCBs.forEach (x -> x.onSMPServiceInformationCreated (aSMPServiceInformation));
+      m_aCBs.forEach (x -> x.onSMPServiceInformationCreated (aSMPServiceInformation));
     }
     return ESuccess.SUCCESS;
   }
 
+  /**
+   * Merge a chunk of service information objects with a constant number of
+   * round trips: one to find the existing documents, one to store all
+   * certificates and one unordered bulk write for all documents. Existing
+   * documents are only replaced if they were not modified in the meantime.
+   * Only if that happened, another round trip is needed to find the affected
+   * documents.
+   *
+   * @param aChunk
+   *        The service information objects with distinct IDs. May not be
+   *        <code>null</code>.
+   * @return The IDs of all successfully stored service information objects.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  private ICommonsSet <String> _mergeChunk (@Nonnull final ICommonsList <SMPServiceInformation> aChunk)
+  {
+    // The last modification of all existing documents
+    final ICommonsMap <String, Date> aExisting = new CommonsHashMap <> ();
+    getCollection ().find (Filters.in (BSON_ID, aChunk.getAllMapped (ISMPServiceInformation::getID)))
+                    .projection (Projections.include (BSON_ID, BSON_LAST_MOD_DT))
+                    .forEach ((Consumer <Document>) x -> aExisting.put (x.getString (BSON_ID),
+                                                                        x.getDate (BSON_LAST_MOD_DT)));
+
+    // All distinct certificates at once
+    final ICommonsSet <String> aHandledHashes = new CommonsHashSet <> ();
+    final ICommonsList <UpdateOneModel <Document>> aCertModels = new CommonsArrayList <> ();
+    for (final SMPServiceInformation aSI : aChunk)
+      for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+        for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+        {
+          final String sCertHash = SMPCertificateCache.getHash (aEndpoint.getCertificate ());
+          if (sCertHash != null && aHandledHashes.add (sCertHash))
+            aCertModels.add (new UpdateOneModel <> (Filters.eq (BSON_ID, sCertHash),
+                                                    Updates.setOnInsert (BSON_CERTIFICATE, aEndpoint.getCertificate ()),
+                                                    new UpdateOptions ().upsert (true)));
+        }
+    if (aCertModels.isNotEmpty ())
+      m_aCertCollection.bulkWrite (aCertModels, new BulkWriteOptions ().ordered (false));
+
+    // Exactly one model per service information, so that the index of a write
+    // error is also the index in the chunk
+    final ICommonsList <ReplaceOneModel <Document>> aModels = new CommonsArrayList <> (aChunk.size ());
+    final ICommonsMap <String, Date> aNewLastModDTs = new CommonsHashMap <> ();
+    for (final SMPServiceInformation aSI : aChunk)
+    {
+      final String sID = aSI.getID ();
+      aSI.setLastModificationDateTime (ISMPHasLastModification.getNextLastModificationDateTime (TypeConverter.convert (aExisting.get (sID),
+                                                                                                                       LocalDateTime.class)));
+      final Document aNewDoc = toBson (aSI);
+      if (aExisting.containsKey (sID))
+      {
+        // Edit existing - only if it was not modified or deleted in the
+        // meantime
+        aNewLastModDTs.put (sID, aNewDoc.getDate (BSON_LAST_MOD_DT));
+        aModels.add (new ReplaceOneModel <> (Filters.and (Filters.eq (BSON_ID, sID),
+                                                          Filters.eq (BSON_LAST_MOD_DT, aExisting.get (sID))),
+                                             aNewDoc,
+                                             new ReplaceOptions ().upsert (false)));
+      }
+      else
+      {
+        // Create new
+        aModels.add (new ReplaceOneModel <> (Filters.eq (BSON_ID, sID), aNewDoc, new ReplaceOptions ().upsert (true)));
+      }
+    }
+
+    // Unordered, so that a failing document does not prevent the others
+    final ICommonsSet <Integer> aFailedIndices = new CommonsHashSet <> ();
+    BulkWriteResult aResult;
+    try
+    {
+      aResult = getCollection ().bulkWrite (aModels, new BulkWriteOptions ().ordered (false));
+    }
+    catch (final MongoBulkWriteException ex)
+    {
+      if (ex.getWriteConcernError () != null)
+        throw ex;
+      for (final BulkWriteError aError : ex.getWriteErrors ())
+      {
+        LOGGER.error ("Failed to merge service information '" +
+                      aChunk.get (aError.getIndex ()).getID () +
+                      "': " +
+                      aError.getMessage ());
+        aFailedIndices.add (Integer.valueOf (aError.getIndex ()));
+      }
+      aResult = ex.getWriteResult ();
+    }
+
+    int nExpectedMatches = 0;
+    int nExpectedUpserts = 0;
+    for (int i = 0; i < aChunk.size (); ++i)
+      if (!aFailedIndices.contains (Integer.valueOf (i)))
+      {
+        if (aNewLastModDTs.containsKey (aChunk.get (i).getID ()))
+          nExpectedMatches++;
+        else
+          nExpectedUpserts++;
+      }
+
+    // The bulk write result only contains the total numbers. If not all
+    // updates matched, the documents that don't have the new last modification
+    // were concurrently modified or deleted
+    final ICommonsSet <String> aNotMatchedIDs = new CommonsHashSet <> ();
+    if (aResult.getMatchedCount () != nExpectedMatches || aResult.getUpserts ().size () != nExpectedUpserts)
+    {
+      aNotMatchedIDs.addAll (aNewLastModDTs.keySet ());
+      getCollection ().find (Filters.in (BSON_ID, aNewLastModDTs.keySet ()))
+                      .projection (Projections.include (BSON_ID, BSON_LAST_MOD_DT))
+                      .forEach ((Consumer <Document>) x -> {
+                        final String sID = x.getString (BSON_ID);
+                        if (EqualsHelper.equals (aNewLastModDTs.get (sID), x.getDate (BSON_LAST_MOD_DT)))
+                          aNotMatchedIDs.remove (sID);
+                      });
+    }
+
+    final ICommonsSet <String> ret = new CommonsHashSet <> ();
+    for (int i = 0; i < aChunk.size (); ++i)
+    {
+      final SMPServiceInformation aSI = aChunk.get (i);
+      if (aFailedIndices.contains (Integer.valueOf (i)))
+        continue;
+
+      if (aNotMatchedIDs.contains (aSI.getID ()))
+      {
+        LOGGER.error ("Failed to merge service information '" +
+                      aSI.getID () +
+                      "' because it was concurrently modified or deleted");
+        AuditHelper.onAuditModifyFailure (SMPServiceInformation.OT, "set-all", aSI.getID (), "concurrent-modification");
+      }
+      else
+      {
+        ret.add (aSI.getID ());
+        if (aExisting.containsKey (aSI.getID ()))
+        {
+          AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
+                                            "set-all",
+                                            aSI.getID (),
+                                            aSI.getServiceGroupID (),
+                                            aSI.getDocumentTypeIdentifier ().getURIEncoded (),
+                                            aSI.getAllProcesses (),
+                                            aSI.getExtensions ().getExtensionsAsJsonString ());
+          m_aCBs.forEach (x -> x.onSMPServiceInformationUpdated (aSI));
+        }
+        else
+        {
+          AuditHelper.onAuditCreateSuccess (SMPServiceInformation.OT,
+                                            aSI.getID (),
+                                            aSI.getServiceGroupID (),
+                                            aSI.getDocumentTypeIdentifier ().getURIEncoded (),
+                                            aSI.getAllProcesses (),
+                                            aSI.getExtensions ().getExtensionsAsJsonString ());
+          m_aCBs.forEach (x -> x.onSMPServiceInformationCreated (aSI));
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * {@inheritDoc} Each chunk of {@link SMPEndpointBulkChangeHelper#CHUNK_SIZE}
+   * service information objects is written with a single unordered
+   * <code>bulkWrite</code>, instead of multiple round trips per service
+   * information.
+   */
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ESuccess> mergeAllSMPServiceInformation (@Nonnull final Collection <? extends ISMPServiceInformation> aServiceInformations)
+  {
+    ValueEnforcer.notNull (aServiceInformations, "ServiceInformations");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("mergeAllSMPServiceInformation (" + aServiceInformations.size () + " objects)");
+
+    // If an ID is contained more than once, the last one wins - as if they
+    // were merged one after the other
+    final ICommonsOrderedMap <String, SMPServiceInformation> aUnique = new CommonsLinkedHashMap <> ();
+    for (final ISMPServiceInformation aSI : aServiceInformations)
+    {
+      ValueEnforcer.notNull (aSI, "ServiceInformation");
+      aUnique.put (aSI.getID (), (SMPServiceInformation) aSI);
+    }
+
+    final ICommonsSet <String> aSuccessIDs = new CommonsHashSet <> ();
+    for (final ICommonsList <SMPServiceInformation> aChunk : SMPEndpointBulkChangeHelper.getChunks (aUnique.copyOfValues (),
+                                                                                                   SMPEndpointBulkChangeHelper.CHUNK_SIZE))
+    {
+      try
+      {
+        aSuccessIDs.addAll (_mergeChunk (aChunk));
+      }
+      catch (final MongoException ex)
+      {
+        LOGGER.error ("Failed to merge " + aChunk.size () + " service information objects", ex);
+      }
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("mergeAllSMPServiceInformation - " +
+                    aSuccessIDs.size () +
+                    " of " +
+                    aUnique.size () +
+                    " stored");
+
+    final ICommonsList <ESuccess> ret = new CommonsArrayList <> (aServiceInformations.size ());
+    for (final ISMPServiceInformation aSI : aServiceInformations)
+      ret.add (ESuccess.valueOf (aSuccessIDs.contains (aSI.getID ())));
+    return ret;
+  }
+
   @Nonnull
   public EChange deleteSMPServiceInformation (@Nullable final ISMPServiceInformation aSMPServiceInformation)
   {
@@ -390,12 +830,10 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
       return EChange.UNCHANGED;
     }
 
-    // Find implementation object
-    final SMPServiceInformation aRealServiceInformation = getCollection ().find (new Document (BSON_ID,
-                                                                                               aSMPServiceInformation.getID ()))
-                                                                          .map (x -> toServiceInformation (x, true))
-                                                                          .first ();
-    if (aRealServiceInformation == null)
+    final Document aPrevDoc = getCollection ().find (Filters.eq (BSON_ID, aSMPServiceInformation.getID ()))
+                                              .projection (Projections.include (BSON_LAST_MOD_DT))
+                                              .first ();
+    if (aPrevDoc == null)
     {
       AuditHelper.onAuditDeleteFailure (SMPServiceInformation.OT, aSMPServiceInformation.getID (), "no-such-id");
       if (LOGGER.isDebugEnabled ())
@@ -403,8 +841,22 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
       return EChange.UNCHANGED;
     }
 
-    // Main deletion in write lock
-    if (aRealServiceInformation.deleteProcess (aProcess).isUnchanged ())
+    // Only remove the process element instead of writing the whole document
+    final Document aProcessIDDoc = toBson (aProcess.getProcessIdentifier ());
+    // Must be after the last modification of the modified object. $max
+    // ensures that it never goes back if it was modified in the meantime.
+    final Date aLastModDT = TypeConverter.convert (ISMPHasLastModification.getNextLastModificationDateTime (TypeConverter.convert (aPrevDoc.getDate (BSON_LAST_MOD_DT),
+                                                                                                                                   LocalDateTime.class)),
+                                                   Date.class);
+    final UpdateResult aUR = getCollection ().updateOne (Filters.and (Filters.eq (BSON_ID,
+                                                                                  aSMPServiceInformation.getID ()),
+                                                                      Filters.eq (BSON_PROCESSES + "." + BSON_PROCESS_ID,
+                                                                                  aProcessIDDoc)),
+                                                         Updates.combine (Updates.pull (BSON_PROCESSES,
+                                                                                        new Document (BSON_PROCESS_ID,
+                                                                                                      aProcessIDDoc)),
+                                                                          Updates.max (BSON_LAST_MOD_DT, aLastModDT)));
+    if (aUR.getMatchedCount () == 0)
     {
       AuditHelper.onAuditDeleteFailure (SMPServiceInformation.OT,
                                         aSMPServiceInformation.getID (),
@@ -415,10 +867,6 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
       return EChange.UNCHANGED;
     }
 
-    // Save new one
-    getCollection ().replaceOne (new Document (BSON_ID, aSMPServiceInformation.getID ()),
-                                 toBson (aRealServiceInformation));
-
     AuditHelper.onAuditDeleteSuccess (SMPServiceInformation.OT,
                                       aSMPServiceInformation.getID (),
                                       aProcess.getProcessIdentifier ().getURIEncoded ());
@@ -436,12 +884,120 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     return ret;
   }
 
+  public void forEachSMPServiceInformation (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+
+    // Sorted by service group, so that the service group needs to be resolved
+    // only once per participant
+    final Wrapper <String> aLastSGID = new Wrapper <> ();
+    final Wrapper <ISMPServiceGroup> aLastSG = new Wrapper <> ();
+    getCollection ().find ()
+                    .sort (Sorts.ascending (BSON_SERVICE_GROUP_ID))
+                    .batchSize (ITERATION_BATCH_SIZE)
+                    .forEach ((Consumer <Document>) x -> {
+                      final String sSGID = x.getString (BSON_SERVICE_GROUP_ID);
+                      if (!sSGID.equals (aLastSGID.get ()))
+                      {
+                        aLastSGID.set (sSGID);
+                        aLastSG.set (m_aServiceGroupMgr.getSMPServiceGroupOfID (m_aIdentifierFactory.parseParticipantIdentifier (sSGID)));
+                      }
+                      aConsumer.accept (_toServiceInformation (aLastSG.get (), x, true));
+                    });
+  }
+
+  /**
+   * Move the certificates of all endpoints that were stored by previous
+   * versions into the certificate collection and only reference them by hash.
+   *
+   * @return The number of migrated service information objects. Always &ge;
+   *         0.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public int migrateEndpointCertificatesToStore ()
+  {
+    final MutableInt aCount = new MutableInt (0);
+    getCollection ().find (Filters.exists (BSON_PROCESSES + "." + BSON_ENDPOINTS + "." + BSON_CERTIFICATE))
+                    .batchSize (ITERATION_BATCH_SIZE)
+                    .forEach ((Consumer <Document>) x -> {
+                      final SMPServiceInformation aSI = toServiceInformation (x, true);
+                      _ensureCertificatesStored (aSI);
+                      // Keeps the last modification date time
+                      getCollection ().replaceOne (new Document (BSON_ID, aSI.getID ()), toBson (aSI));
+                      aCount.inc ();
+                    });
+    return aCount.intValue ();
+  }
+
   @Nonnegative
   public long getSMPServiceInformationCount ()
   {
     return getCollection ().countDocuments ();
   }
 
+  @Nonnull
+  public SMPEndpointPage getSMPEndpointPage (@Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    SMPEndpointPage.checkRequest (aRequest);
+
+    // One document per endpoint
+    final ICommonsList <Bson> aPipeline = new CommonsArrayList <> ();
+    if (aRequest.hasFilter ())
+    {
+      // The service group ID is the URI encoded participant ID
+      final String sSchemeRegEx = aRequest.getFilterScheme () == null ? ".*?"
+                                                                      : SMPServiceGroupManagerMongoDB.getRegExQuoted (aRequest.getFilterScheme ());
+      final String sValueRegEx = aRequest.getFilterValuePrefix () == null ? ""
+                                                                          : SMPServiceGroupManagerMongoDB.getRegExQuoted (aRequest.getFilterValuePrefix ());
+      final String sRegEx = "^" + sSchemeRegEx + CIdentifier.URL_SCHEME_VALUE_SEPARATOR + sValueRegEx;
+      aPipeline.add (Aggregates.match (Filters.regex (BSON_SERVICE_GROUP_ID, sRegEx)));
+    }
+    aPipeline.add (Aggregates.unwind ("$" + BSON_PROCESSES));
+    aPipeline.add (Aggregates.unwind ("$" + BSON_PROCESSES + "." + BSON_ENDPOINTS));
+
+    final ICommonsList <Bson> aCountPipeline = aPipeline.getClone ();
+    aCountPipeline.add (Aggregates.count (BSON_COUNT));
+    final Document aCountDoc = getReadCollection ().aggregate (aCountPipeline).first ();
+    final long nFilteredCount = aCountDoc == null ? 0 : aCountDoc.get (BSON_COUNT, Number.class).longValue ();
+
+    final String sProcessID = BSON_PROCESSES + "." + BSON_PROCESS_ID + ".";
+    final String sEndpoint = BSON_PROCESSES + "." + BSON_ENDPOINTS + ".";
+    final ICommonsList <String> aSortFields = new CommonsArrayList <> (BSON_SERVICE_GROUP_ID,
+                                                                       BSON_DOCTYPE_ID + "." + BSON_SCHEME,
+                                                                       BSON_DOCTYPE_ID + "." + BSON_VALUE,
+                                                                       sProcessID + BSON_SCHEME,
+                                                                       sProcessID + BSON_VALUE,
+                                                                       sEndpoint + BSON_TRANSPORT_PROFILE);
+    aPipeline.add (Aggregates.sort (aRequest.isAscending () ? Sorts.ascending (aSortFields)
+                                                            : Sorts.descending (aSortFields)));
+    aPipeline.add (Aggregates.skip (aRequest.getOffset ()));
+    aPipeline.add (Aggregates.limit (aRequest.getMaxCount ()));
+
+    final ICommonsList <SMPEndpointPage.Entry> ret = new CommonsArrayList <> ();
+    final Wrapper <String> aLastSGID = new Wrapper <> ();
+    final Wrapper <ISMPServiceGroup> aLastSG = new Wrapper <> ();
+    getReadCollection ().aggregate (aPipeline).allowDiskUse (Boolean.TRUE).forEach ((Consumer <Document>) x -> {
+      final String sSGID = x.getString (BSON_SERVICE_GROUP_ID);
+      if (!sSGID.equals (aLastSGID.get ()))
+      {
+        aLastSGID.set (sSGID);
+        aLastSG.set (m_aServiceGroupMgr.getSMPServiceGroupOfID (m_aIdentifierFactory.parseParticipantIdentifier (sSGID)));
+      }
+
+      // After unwinding, processes and endpoints are single documents
+      final Document aProcessDoc = x.get (BSON_PROCESSES, Document.class);
+      final SMPEndpoint aEndpoint = toEndpoint (aProcessDoc.get (BSON_ENDPOINTS, Document.class));
+      final SMPProcess aProcess = new SMPProcess (toProcessID (aProcessDoc.get (BSON_PROCESS_ID, Document.class)),
+                                                  new CommonsArrayList <> (aEndpoint),
+                                                  aProcessDoc.getString (BSON_EXTENSIONS));
+      final SMPServiceInformation aSI = _toServiceInformation (aLastSG.get (), x, false);
+      aSI.addProcess (aProcess);
+      ret.add (new SMPEndpointPage.Entry (aSI, aProcess, aEndpoint));
+    });
+    return new SMPEndpointPage (ret, nFilteredCount);
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPServiceInformation> getAllSMPServiceInformationOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
@@ -460,9 +1016,9 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     final ICommonsList <IDocumentTypeIdentifier> ret = new CommonsArrayList <> ();
     if (aServiceGroup != null)
     {
-      getCollection ().find (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()))
-                      .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (x,
-                                                                                          false).getDocumentTypeIdentifier ()));
+      getReadCollection ().find (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()))
+                          .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (x,
+                                                                                              false).getDocumentTypeIdentifier ()));
     }
     return ret;
   }
@@ -477,9 +1033,9 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
       return null;
 
     final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
-    getCollection ().find (Filters.and (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()),
-                                        new Document (BSON_DOCTYPE_ID, toBson (aDocumentTypeIdentifier))))
-                    .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (x, true)));
+    getReadCollection ().find (Filters.and (new Document (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()),
+                                            new Document (BSON_DOCTYPE_ID, toBson (aDocumentTypeIdentifier))))
+                        .forEach ((Consumer <Document>) x -> ret.add (toServiceInformation (x, true)));
 
     if (ret.isEmpty ())
       return null;
@@ -492,6 +1048,195 @@ public final class SMPServiceInformationManagerMongoDB extends AbstractManagerMo
     return ret.getFirstOrNull ();
   }
 
+  /**
+   * Change all endpoints matching the provided filter. Each chunk of
+   * {@link SMPEndpointBulkChangeHelper#CHUNK_SIZE} documents is modified with a
+   * single <code>updateMany</code> that only touches the matching array
+   * elements. The callbacks are invoked in parallel afterwards.
+   *
+   * @param aDocFilter
+   *        The filter on the service information documents. May not be
+   *        <code>null</code>.
+   * @param sField
+   *        The endpoint field to modify. May neither be <code>null</code> nor
+   *        empty.
+   * @param aValueFilter
+   *        The filter on the old values of the endpoint field, used to count
+   *        the modified endpoints. May not be <code>null</code>.
+   * @param aArrayFilter
+   *        The array filter on the old values of the endpoint field, using the
+   *        identifier <code>ep</code>. Must match the same endpoints as
+   *        <code>aValueFilter</code>. May not be <code>null</code>.
+   * @param aNewValue
+   *        The new value of the endpoint field. May not be <code>null</code>.
+   * @return The result of the change and never <code>null</code>.
+   */
+  @Nonnull
+  private SMPEndpointBulkChangeResult _changeAllEndpoints (@Nonnull final Bson aDocFilter,
+                                                           @Nonnull @Nonempty final String sField,
+                                                           @Nonnull final Predicate <Object> aValueFilter,
+                                                           @Nonnull final Bson aArrayFilter,
+                                                           @Nonnull final Object aNewValue)
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+
+    // Only read what is needed to count the endpoints
+    final ICommonsOrderedMap <String, Integer> aAffected = new CommonsLinkedHashMap <> ();
+    final ICommonsMap <String, String> aServiceGroupIDs = new CommonsHashMap <> ();
+    getCollection ().find (aDocFilter)
+                    .projection (Projections.include (BSON_ID,
+                                                      BSON_SERVICE_GROUP_ID,
+                                                      BSON_PROCESSES + "." + BSON_ENDPOINTS + "." + sField))
+                    .batchSize (ITERATION_BATCH_SIZE)
+                    .forEach ((Consumer <Document>) x -> {
+                      int nCount = 0;
+                      for (final Document aDocP : x.getList (BSON_PROCESSES, Document.class, new CommonsArrayList <> ()))
+                        for (final Document aDocE : aDocP.getList (BSON_ENDPOINTS,
+                                                                   Document.class,
+                                                                   new CommonsArrayList <> ()))
+                          if (aValueFilter.test (aDocE.get (sField)))
+                            nCount++;
+                      aAffected.put (x.getString (BSON_ID), Integer.valueOf (nCount));
+                      aServiceGroupIDs.put (x.getString (BSON_ID), x.getString (BSON_SERVICE_GROUP_ID));
+                    });
+
+    if (!MongoClientSingleton.isDBWritable ())
+    {
+      LOGGER.warn ("Not changing the endpoints of " +
+                   aAffected.size () +
+                   " service information objects, because MongoDB is in non-writable state");
+      return new SMPEndpointBulkChangeResult (0,
+                                              aAffected.size (),
+                                              new CommonsTreeSet <> (),
+                                              Duration.ofMillis (aSW.stopAndGetMillis ()));
+    }
+
+    final Date aLastModDT = TypeConverter.convert (ISMPHasLastModification.getNextLastModificationDateTime (null),
+                                                   Date.class);
+    final Bson aUpdate = Updates.combine (Updates.set (BSON_PROCESSES + ".$[p]." + BSON_ENDPOINTS + ".$[ep]." + sField,
+                                                       aNewValue),
+                                          // Never go back in time
+                                          Updates.max (BSON_LAST_MOD_DT, aLastModDT));
+    // Processes without endpoints must be skipped explicitly
+    final UpdateOptions aUpdateOptions = new UpdateOptions ().arrayFilters (new CommonsArrayList <> (Filters.exists ("p." +
+                                                                                                                    BSON_ENDPOINTS),
+                                                                                                     aArrayFilter));
+    final ICommonsList <String> aChangedIDs = new CommonsArrayList <> ();
+    final ICommonsSortedSet <String> aChangedServiceGroupIDs = new CommonsTreeSet <> ();
+    long nChangedEndpoints = 0;
+    int nErrors = 0;
+    for (final ICommonsList <String> aChunk : SMPEndpointBulkChangeHelper.getChunks (aAffected.copyOfKeySet ()
+                                                                                              .getCopyAsList (),
+                                                                                    SMPEndpointBulkChangeHelper.CHUNK_SIZE))
+    {
+      try
+      {
+        getCollection ().updateMany (Filters.and (Filters.in (BSON_ID, aChunk), aDocFilter), aUpdate, aUpdateOptions);
+        aChangedIDs.addAll (aChunk);
+        for (final String sID : aChunk)
+        {
+          nChangedEndpoints += aAffected.get (sID).intValue ();
+          aChangedServiceGroupIDs.add (aServiceGroupIDs.get (sID));
+        }
+      }
+      catch (final MongoException ex)
+      {
+        LOGGER.error ("Failed to change the endpoints of " + aChunk.size () + " service information objects", ex);
+        nErrors += aChunk.size ();
+      }
+      LOGGER.info ("Bulk endpoint change: " +
+                   (aChangedIDs.size () + nErrors) +
+                   "/" +
+                   aAffected.size () +
+                   " service information objects handled after " +
+                   aSW.getMillis () +
+                   " ms");
+    }
+
+    // Reload the changed objects
+    nErrors += SMPEndpointBulkChangeHelper.forEachParallel ("Service information callbacks", aChangedIDs, sID -> {
+      final Document aDoc = getCollection ().find (Filters.eq (BSON_ID, sID)).first ();
+      if (aDoc != null)
+      {
+        final ISMPServiceInformation aSI = toServiceInformation (aDoc, true);
+        m_aCBs.forEach (x -> x.onSMPServiceInformationUpdated (aSI));
+      }
+    });
+
+    return new SMPEndpointBulkChangeResult (nChangedEndpoints,
+                                            nErrors,
+                                            aChangedServiceGroupIDs,
+                                            Duration.ofMillis (aSW.stopAndGetMillis ()));
+  }
+
+  @Override
+  @Nonnull
+  public SMPEndpointBulkChangeResult changeAllEndpointURLs (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                            @Nonnull @Nonempty final String sOldURL,
+                                                            @Nonnull @Nonempty final String sNewURL)
+  {
+    ValueEnforcer.notEmpty (sOldURL, "OldURL");
+    ValueEnforcer.notEmpty (sNewURL, "NewURL");
+
+    Bson aDocFilter = Filters.eq (BSON_PROCESSES + "." + BSON_ENDPOINTS + "." + BSON_ENDPOINT_REFERENCE, sOldURL);
+    if (aServiceGroup != null)
+      aDocFilter = Filters.and (Filters.eq (BSON_SERVICE_GROUP_ID, aServiceGroup.getID ()), aDocFilter);
+
+    final SMPEndpointBulkChangeResult ret = _changeAllEndpoints (aDocFilter,
+                                                                 BSON_ENDPOINT_REFERENCE,
+                                                                 sOldURL::equals,
+                                                                 Filters.eq ("ep." + BSON_ENDPOINT_REFERENCE, sOldURL),
+                                                                 sNewURL);
+    AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
+                                      "bulk-change-endpoint-url",
+                                      aServiceGroup == null ? null : aServiceGroup.getID (),
+                                      sOldURL,
+                                      sNewURL,
+                                      Long.valueOf (ret.getChangedEndpointCount ()));
+    return ret;
+  }
+
+  @Override
+  @Nonnull
+  public SMPEndpointBulkChangeResult changeAllEndpointCertificates (@Nonnull final Predicate <String> aOldCertificateMatcher,
+                                                                    @Nonnull @Nonempty final String sNewCertificate)
+  {
+    ValueEnforcer.notNull (aOldCertificateMatcher, "OldCertificateMatcher");
+    ValueEnforcer.notEmpty (sNewCertificate, "NewCertificate");
+
+    // The certificates are stored only once, so the matching is done on the
+    // (small) certificate collection and not on the endpoints
+    final String sNewCertHash = SMPCertificateCache.getHash (sNewCertificate);
+    final ICommonsSet <String> aOldCertHashes = new CommonsHashSet <> ();
+    m_aCertCollection.find ().forEach ((Consumer <Document>) x -> {
+      final String sCertHash = x.getString (BSON_ID);
+      final String sCert = x.getString (BSON_CERTIFICATE);
+      if (!sCertHash.equals (sNewCertHash) && StringHelper.hasText (sCert) && aOldCertificateMatcher.test (sCert))
+        aOldCertHashes.add (sCertHash);
+    });
+
+    final SMPEndpointBulkChangeResult ret;
+    if (aOldCertHashes.isEmpty ())
+      ret = new SMPEndpointBulkChangeResult (0, 0, new CommonsTreeSet <> (), Duration.ZERO);
+    else
+    {
+      // Otherwise the change is rejected as a whole
+      if (MongoClientSingleton.isDBWritable ())
+        _ensureCertificateStored (sNewCertHash, sNewCertificate);
+      ret = _changeAllEndpoints (Filters.in (BSON_PROCESSES + "." + BSON_ENDPOINTS + "." + BSON_CERTIFICATE_HASH,
+                                             aOldCertHashes),
+                                 BSON_CERTIFICATE_HASH,
+                                 aOldCertHashes::contains,
+                                 Filters.in ("ep." + BSON_CERTIFICATE_HASH, aOldCertHashes),
+                                 sNewCertHash);
+    }
+    AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
+                                      "bulk-change-endpoint-certificate",
+                                      sNewCertHash,
+                                      Long.valueOf (ret.getChangedEndpointCount ()));
+    return ret;
+  }
+
   public boolean containsAnyEndpointWithTransportProfile (@Nullable final String sTransportProfileID)
   {
     if (StringHelper.hasNoText (sTransportProfileID))
@@ -21,6 +21,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
@@ -31,31 +33,64 @@ import com.helger.commons.string.StringHelper;
 import com.helger.peppol.smp.ESMPTransportProfileState;
 import com.helger.peppol.smp.ISMPTransportProfile;
 import com.helger.peppol.smp.SMPTransportProfile;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.redirect.SMPRedirect;
 import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
+import com.helger.phoss.smp.domain.transportprofile.SMPTransportProfileRegistry;
 import com.helger.photon.audit.AuditHelper;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.DeleteResult;
 
 /**
- * Implementation of {@link ISMPTransportProfileManager} for MongoDB
+ * Implementation of {@link ISMPTransportProfileManager} for MongoDB. All
+ * transport profiles are kept in a {@link SMPTransportProfileRegistry}, so that
+ * reading them does not require a database query.
  *
  * @author Philip Helger
  */
 public final class SMPTransportProfileManagerMongoDB extends AbstractManagerMongoDB implements
                                                      ISMPTransportProfileManager
 {
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPTransportProfileManagerMongoDB.class);
+
   private static final String BSON_ID = "id";
   private static final String BSON_NAME = "name";
   @Deprecated
   private static final String BSON_DEPRECATED = "deprecated";
   private static final String BSON_STATE = "state";
 
+  private final SMPTransportProfileRegistry m_aRegistry;
+
   public SMPTransportProfileManagerMongoDB ()
+  {
+    this (SMPServerConfiguration.getTransportProfileReloadIntervalMilliseconds ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nReloadIntervalMillis
+   *        The number of milliseconds after which the transport profiles are
+   *        read again from the database. Values &le; 0 disable the reload.
+   * @since 7.1.4
+   */
+  public SMPTransportProfileManagerMongoDB (final long nReloadIntervalMillis)
   {
     super ("smp-transportprofile");
     getCollection ().createIndex (Indexes.ascending (BSON_ID));
+    m_aRegistry = new SMPTransportProfileRegistry (this::getAllSMPTransportProfilesFromDB, nReloadIntervalMillis);
+  }
+
+  /**
+   * @return The in-memory registry of all transport profiles. Never
+   *         <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public SMPTransportProfileRegistry getRegistry ()
+  {
+    return m_aRegistry;
   }
 
   @Nonnull
@@ -101,6 +136,7 @@ public final class SMPTransportProfileManagerMongoDB extends AbstractManagerMong
     if (!getCollection ().insertOne (toBson (aSMPTransportProfile)).wasAcknowledged ())
       throw new IllegalStateException ("Failed to insert into MongoDB Collection");
 
+    m_aRegistry.put (aSMPTransportProfile);
     AuditHelper.onAuditCreateSuccess (SMPTransportProfile.OT, sID, sName, Boolean.valueOf (bIsDeprecated));
     return aSMPTransportProfile;
   }
@@ -110,13 +146,17 @@ public final class SMPTransportProfileManagerMongoDB extends AbstractManagerMong
                                             @Nonnull @Nonempty final String sName,
                                             final boolean bIsDeprecated)
   {
+    final ESMPTransportProfileState eState = bIsDeprecated ? ESMPTransportProfileState.DEPRECATED
+                                                           : ESMPTransportProfileState.ACTIVE;
     final Document aOldDoc = getCollection ().findOneAndUpdate (new Document (BSON_ID, sSMPTransportProfileID),
                                                                 Updates.combine (Updates.set (BSON_NAME, sName),
-                                                                                 Updates.set (BSON_DEPRECATED,
-                                                                                              Boolean.valueOf (bIsDeprecated))));
+                                                                                 Updates.set (BSON_STATE,
+                                                                                              eState.getID ())));
     if (aOldDoc == null)
       return EChange.UNCHANGED;
 
+    m_aRegistry.put (new SMPTransportProfile (sSMPTransportProfileID, sName, eState));
+
     AuditHelper.onAuditModifySuccess (SMPTransportProfile.OT,
                                       "set-all",
                                       sSMPTransportProfileID,
@@ -137,35 +177,57 @@ public final class SMPTransportProfileManagerMongoDB extends AbstractManagerMong
       AuditHelper.onAuditDeleteFailure (SMPRedirect.OT, sSMPTransportProfileID, "no-such-id");
       return EChange.UNCHANGED;
     }
+    m_aRegistry.remove (sSMPTransportProfileID);
     AuditHelper.onAuditDeleteSuccess (SMPRedirect.OT, sSMPTransportProfileID);
     return EChange.CHANGED;
   }
 
+  /**
+   * Read all transport profiles from the database. This is only invoked by the
+   * registry.
+   *
+   * @return All transport profiles. May be <code>null</code> if reading
+   *         failed, so that the registry keeps the known profiles.
+   * @since 7.1.4
+   */
+  @Nullable
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPTransportProfile> getAllSMPTransportProfilesFromDB ()
+  {
+    try
+    {
+      final ICommonsList <ISMPTransportProfile> ret = new CommonsArrayList <> ();
+      getCollection ().find ().forEach (x -> ret.add (toDomain (x)));
+      return ret;
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error ("Failed to read all transport profiles from MongoDB", ex);
+      return null;
+    }
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPTransportProfile> getAllSMPTransportProfiles ()
   {
-    final ICommonsList <ISMPTransportProfile> ret = new CommonsArrayList <> ();
-    getCollection ().find ().forEach (x -> ret.add (toDomain (x)));
-    return ret;
+    return m_aRegistry.getAll ();
   }
 
   @Nullable
   public ISMPTransportProfile getSMPTransportProfileOfID (@Nullable final String sID)
   {
-    return getCollection ().find (new Document (BSON_ID, sID))
-                           .map (SMPTransportProfileManagerMongoDB::toDomain)
-                           .first ();
+    return m_aRegistry.get (sID);
   }
 
   public boolean containsSMPTransportProfileWithID (@Nullable final String sID)
   {
-    return getCollection ().find (new Document (BSON_ID, sID)).first () != null;
+    return m_aRegistry.contains (sID);
   }
 
   @Nonnegative
   public long getSMPTransportProfileCount ()
   {
-    return getCollection ().countDocuments ();
+    return m_aRegistry.size ();
   }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.phoss.smp.backend.mongodb.MongoClientSingleton;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.audit.AuditItem;
+import com.helger.photon.audit.EAuditActionType;
+import com.helger.photon.audit.IAuditItem;
+
+/**
+ * Test class for class {@link AuditorMongoDB}.
+ *
+ * @author Philip Helger
+ */
+public final class AuditorMongoDBTest
+{
+  private static final String COLLECTION_NAME = "smp-audit-test";
+
+  @Rule
+  public final SMPServerTestRule m_aRule = new SMPServerTestRule ();
+
+  @Test
+  public void testDeleteChunked ()
+  {
+    final LocalDateTime aCutoff = LocalDateTime.of (2024, 1, 1, 0, 0);
+    final AuditorMongoDB aAuditor = new AuditorMongoDB (COLLECTION_NAME, () -> "user");
+    try
+    {
+      final ICommonsList <IAuditItem> aItems = new CommonsArrayList <> ();
+      for (int i = 0; i < 25; ++i)
+        aItems.add (new AuditItem (aCutoff.minusMinutes (i + 1L),
+                                   "user",
+                                   EAuditActionType.CREATE,
+                                   ESuccess.SUCCESS,
+                                   "old" + i));
+      for (int i = 0; i < 3; ++i)
+        aItems.add (new AuditItem (aCutoff.plusMinutes (i),
+                                   "user",
+                                   EAuditActionType.CREATE,
+                                   ESuccess.SUCCESS,
+                                   "new" + i));
+      assertTrue (aAuditor.writeAuditItems (aItems).isSuccess ());
+
+      // Three chunks, the last one is not full
+      assertEquals (25, aAuditor.deleteAllAuditItemsBefore (aCutoff, 10));
+
+      // The cutoff itself is kept
+      final ICommonsList <IAuditItem> aLeft = aAuditor.getAllAuditItemsInRange (null, null, 100);
+      assertEquals (3, aLeft.size ());
+      assertTrue (aLeft.containsNone (x -> x.getDateTime ().isBefore (aCutoff)));
+
+      // Nothing left to delete
+      assertEquals (0, aAuditor.deleteAllAuditItemsBefore (aCutoff, 10));
+      // Exactly one full chunk
+      assertEquals (3, aAuditor.deleteAllAuditItemsBefore (aCutoff.plusDays (1), 3));
+    }
+    finally
+    {
+      MongoClientSingleton.getInstance ().getCollection (COLLECTION_NAME).drop ();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb.mgr;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.bson.Document;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.servlet.mock.MockHttpServletRequest;
+import com.helger.web.scope.mgr.WebScopeManager;
+import com.helger.web.scope.mgr.WebScoped;
+import com.mongodb.ReadPreference;
+
+/**
+ * Test class for the read routing of class {@link AbstractManagerMongoDB}.
+ *
+ * @author Philip Helger
+ */
+public final class AbstractManagerMongoDBTest
+{
+  private static final class MockManager extends AbstractManagerMongoDB
+  {
+    MockManager ()
+    {
+      super ("smp-routing-test", ReadPreference.secondaryPreferred ());
+    }
+  }
+
+  @Rule
+  public final SMPServerTestRule m_aRule = new SMPServerTestRule ();
+
+  @Test
+  public void testReadYourWrites ()
+  {
+    try (final MockManager aMgr = new MockManager ())
+    {
+      // Lookups use the configured read preference
+      assertNotSame (aMgr.getCollection (), aMgr.getReadCollection ());
+
+      aMgr.getCollection ().insertOne (new Document ("x", "y"));
+      try
+      {
+        // The same request reads from the primary
+        assertSame (aMgr.getCollection (), aMgr.getReadCollection ());
+
+        // So does the next request of the same client
+        WebScopeManager.onRequestEnd ();
+        try (final WebScoped aWS = new WebScoped (new MockHttpServletRequest ()))
+        {
+          assertSame (aMgr.getCollection (), aMgr.getReadCollection ());
+        }
+
+        // Other clients are not affected
+        try (final WebScoped aWS = new WebScoped (new MockHttpServletRequest ().setRemoteAddr ("192.0.2.1")))
+        {
+          assertNotSame (aMgr.getCollection (), aMgr.getReadCollection ());
+        }
+      }
+      finally
+      {
+        aMgr.getCollection ().drop ();
+      }
+    }
+  }
+}
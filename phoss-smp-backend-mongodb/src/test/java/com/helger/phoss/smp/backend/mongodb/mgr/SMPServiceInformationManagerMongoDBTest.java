@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.mongodb.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.conversions.Bson;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.commons.statistics.IStatisticsHandlerKeyedTimer;
+import com.helger.commons.statistics.StatisticsManager;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.typeconvert.TypeConverter;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.phoss.smp.backend.mongodb.MongoClientSingleton;
+import com.helger.phoss.smp.backend.mongodb.MongoOperationListener;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
+import com.helger.phoss.smp.domain.serviceinfo.SMPCertificateCache;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeHelper;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeResult;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.phoss.smp.exception.SMPServerException;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.security.CSecurity;
+import com.helger.photon.security.mgr.PhotonSecurityManager;
+import com.helger.photon.security.user.IUser;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+/**
+ * Test class for class {@link SMPServiceInformationManagerMongoDB}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPServiceInformationManagerMongoDBTest
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPServiceInformationManagerMongoDBTest.class);
+  private static final String CERT = StringHelper.getRepeated ("MIIFTzCCAzegAwIBAgIQ", 60);
+
+  @Rule
+  public final SMPServerTestRule m_aTestRule = new SMPServerTestRule ();
+
+  @Nonnull
+  private static SMPServiceInformation _createSI (@Nonnull final ISMPServiceGroup aSG,
+                                                  final int nDocType,
+                                                  final int nProcesses,
+                                                  @Nullable final String sFirstURL)
+  {
+    final IIdentifierFactory aIF = SMPMetaManager.getIdentifierFactory ();
+    final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
+    for (int p = 0; p < nProcesses; ++p)
+    {
+      final ICommonsList <SMPEndpoint> aEndpoints = new CommonsArrayList <> ();
+      for (final ESMPTransportProfile eTP : new ESMPTransportProfile [] { ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2,
+                                                                          ESMPTransportProfile.TRANSPORT_PROFILE_BDXR_AS4 })
+      {
+        final String sURL = p == 0 && sFirstURL != null ? sFirstURL : "https://ap.example.org/as4/" + p;
+        aEndpoints.add (new SMPEndpoint (eTP.getID (),
+                                         sURL,
+                                         false,
+                                         null,
+                                         null,
+                                         null,
+                                         CERT,
+                                         "Test endpoint " + p,
+                                         "mailto:support@example.org",
+                                         "https://www.example.org/info",
+                                         null));
+      }
+      aProcesses.add (new SMPProcess (aIF.createProcessIdentifier (PeppolIdentifierHelper.DEFAULT_PROCESS_SCHEME,
+                                                                   "urn:fdc:peppol.eu:2017:poacc:billing:" + p),
+                                      aEndpoints,
+                                      null));
+    }
+    return new SMPServiceInformation (aSG,
+                                      aIF.createDocumentTypeIdentifier (PeppolIdentifierHelper.DOCUMENT_TYPE_SCHEME_BUSDOX_DOCID_QNS,
+                                                                        "xml::xml##doctype" + nDocType + "::1"),
+                                      aProcesses,
+                                      null);
+  }
+
+  private static long _getRoundTrips ()
+  {
+    final IStatisticsHandlerKeyedTimer aStats = StatisticsManager.getKeyedTimerHandler (MongoOperationListener.class.getName () +
+                                                                                        "$latency");
+    long ret = 0;
+    for (final String sKey : aStats.getAllKeys ())
+      ret += aStats.getInvocationCount (sKey);
+    return ret;
+  }
+
+  private static int _getBsonSize (@Nonnull final Bson aBson)
+  {
+    return new RawBsonDocument (aBson.toBsonDocument (), new BsonDocumentCodec ()).getByteBuffer ().remaining ();
+  }
+
+  @Nonnull
+  private static ISMPServiceGroup _createSG (@Nonnull final String sValue) throws SMPServerException
+  {
+    // Ensure the user is present
+    final IUser aTestUser = PhotonSecurityManager.getUserMgr ().getUserOfID (CSecurity.USER_ADMINISTRATOR_ID);
+    assertNotNull (aTestUser);
+
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final IParticipantIdentifier aPI = SMPMetaManager.getIdentifierFactory ()
+                                                     .createParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME,
+                                                                                   sValue);
+    // Delete existing service group
+    aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI, true);
+
+    final ISMPServiceGroup aSG = aServiceGroupMgr.createSMPServiceGroup (aTestUser.getID (), aPI, null, true);
+    assertNotNull (aSG);
+    return aSG;
+  }
+
+  @Test
+  public void testGetUpdates ()
+  {
+    final ISMPServiceGroup aSG = new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID,
+                                                      SMPMetaManager.getIdentifierFactory ()
+                                                                    .createParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME,
+                                                                                                  "0088:unused"),
+                                                      null);
+    final SMPServiceInformation aSI = _createSI (aSG, 1, 10, null);
+    final Document aOldDoc = SMPServiceInformationManagerMongoDB.toBson (aSI);
+
+    // Only the last modification
+    assertEquals (1, SMPServiceInformationManagerMongoDB.getUpdates (aOldDoc, aOldDoc).size ());
+
+    // One endpoint of one process
+    final Document aNewDoc = SMPServiceInformationManagerMongoDB.toBson (_createSI (aSG, 1, 10, "https://new.example.org"));
+    assertEquals (3, SMPServiceInformationManagerMongoDB.getUpdates (aOldDoc, aNewDoc).size ());
+
+    // Different number of processes
+    assertEquals (2,
+                  SMPServiceInformationManagerMongoDB.getUpdates (aOldDoc,
+                                                                  SMPServiceInformationManagerMongoDB.toBson (_createSI (aSG,
+                                                                                                                         1,
+                                                                                                                         9,
+                                                                                                                         null)))
+                                                     .size ());
+  }
+
+  @Test
+  public void testMergeAllRoundTrips () throws SMPServerException
+  {
+    final int nServiceInfos = 200;
+    final int nProcesses = 5;
+
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final SMPServiceInformationManagerMongoDB aServiceInfoMgr = (SMPServiceInformationManagerMongoDB) SMPMetaManager.getServiceInformationMgr ();
+
+    final ISMPServiceGroup aSG1 = _createSG ("0088:single");
+    final ISMPServiceGroup aSG2 = _createSG ("0088:bulk");
+    try
+    {
+      // One after the other
+      long nRoundTrips = _getRoundTrips ();
+      for (int i = 0; i < nServiceInfos; ++i)
+        assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (_createSI (aSG1, i, nProcesses, null)).isSuccess ());
+      final long nSingleRoundTrips = _getRoundTrips () - nRoundTrips;
+
+      // All at once
+      final ICommonsList <ISMPServiceInformation> aSIs = new CommonsArrayList <> ();
+      for (int i = 0; i < nServiceInfos; ++i)
+        aSIs.add (_createSI (aSG2, i, nProcesses, null));
+      nRoundTrips = _getRoundTrips ();
+      final ICommonsList <ESuccess> aResults = aServiceInfoMgr.mergeAllSMPServiceInformation (aSIs);
+      final long nBulkRoundTrips = _getRoundTrips () - nRoundTrips;
+
+      assertEquals (nServiceInfos, aResults.size ());
+      assertTrue (aResults.containsOnly (ESuccess::isSuccess));
+      assertEquals (nServiceInfos, aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aSG2).size ());
+      assertEquals (aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG1,
+                                                                                           aSIs.getLastOrNull ()
+                                                                                               .getDocumentTypeIdentifier ())
+                                   .getAllProcesses (),
+                    aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG2,
+                                                                                           aSIs.getLastOrNull ()
+                                                                                               .getDocumentTypeIdentifier ())
+                                   .getAllProcesses ());
+
+      // At least find, certificate and insert per service information
+      assertTrue (nSingleRoundTrips >= 3L * nServiceInfos);
+      assertTrue (nBulkRoundTrips * 10 < nSingleRoundTrips);
+      LOGGER.info ("Merging " +
+                   nServiceInfos +
+                   " service information objects: one by one " +
+                   nSingleRoundTrips +
+                   " round trips; bulk " +
+                   nBulkRoundTrips +
+                   " round trips");
+
+      // Merging again updates the existing ones
+      assertTrue (aServiceInfoMgr.mergeAllSMPServiceInformation (aSIs).containsOnly (ESuccess::isSuccess));
+      assertEquals (nServiceInfos, aServiceInfoMgr.getCollection ().countDocuments (Filters.eq ("sgid", aSG2.getID ())));
+    }
+    finally
+    {
+      aServiceGroupMgr.deleteSMPServiceGroup (aSG1.getParticipantIdentifier (), true);
+      aServiceGroupMgr.deleteSMPServiceGroup (aSG2.getParticipantIdentifier (), true);
+    }
+  }
+
+  @Test
+  public void testTargetedUpdate () throws SMPServerException
+  {
+    final int nProcesses = 50;
+
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final SMPServiceInformationManagerMongoDB aServiceInfoMgr = (SMPServiceInformationManagerMongoDB) SMPMetaManager.getServiceInformationMgr ();
+
+    final ISMPServiceGroup aSG = _createSG ("0088:targeted");
+    try
+    {
+      final SMPServiceInformation aSI = _createSI (aSG, 1, nProcesses, null);
+      assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (aSI).isSuccess ());
+
+      final Document aOldDoc = aServiceInfoMgr.getCollection ().find (Filters.eq ("id", aSI.getID ())).first ();
+      assertNotNull (aOldDoc);
+      final SMPServiceInformation aChanged = _createSI (aSG, 1, nProcesses, "https://new.example.org/as4");
+      aChanged.setLastModificationDateTime (aSI.getLastModificationDateTime ());
+      final Document aNewDoc = SMPServiceInformationManagerMongoDB.toBson (aChanged);
+
+      // Writing the whole document, as previous versions did
+      final int nReplaceBytes = _getBsonSize (aNewDoc);
+      // Only writing the changed endpoints
+      final int nUpdateBytes = _getBsonSize (Updates.combine (SMPServiceInformationManagerMongoDB.getUpdates (aOldDoc,
+                                                                                                            aNewDoc)));
+      assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (aChanged).isSuccess ());
+
+      final ISMPServiceInformation aRead = aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG,
+                                                                                                                   aSI.getDocumentTypeIdentifier ());
+      assertNotNull (aRead);
+      assertEquals (aChanged.getAllProcesses (), aRead.getAllProcesses ());
+      assertEquals (aChanged.getLastModificationDateTime (), aRead.getLastModificationDateTime ());
+
+      assertTrue (nUpdateBytes * 5 < nReplaceBytes);
+      LOGGER.info ("Changing one process of " +
+                   nProcesses +
+                   ": full replace " +
+                   nReplaceBytes +
+                   " bytes; targeted update " +
+                   nUpdateBytes +
+                   " bytes");
+
+      // Simulate a previous modification with a clock that is ahead
+      final LocalDateTime aFutureDT = aRead.getLastModificationDateTime ().plusHours (1);
+      aServiceInfoMgr.getCollection ()
+                     .updateOne (Filters.eq ("id", aSI.getID ()),
+                                 Updates.set ("lastmoddt", TypeConverter.convert (aFutureDT, Date.class)));
+
+      // Only removes the process element
+      assertTrue (aServiceInfoMgr.deleteSMPProcess (aRead, aRead.getAllProcesses ().get (1)).isChanged ());
+      assertTrue (aServiceInfoMgr.deleteSMPProcess (aRead, aRead.getAllProcesses ().get (1)).isUnchanged ());
+      final ISMPServiceInformation aRead2 = aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG,
+                                                                                                                    aSI.getDocumentTypeIdentifier ());
+      assertEquals (nProcesses - 1, aRead2.getProcessCount ());
+      // The last modification never goes back
+      assertTrue (aRead2.getLastModificationDateTime ().isAfter (aFutureDT));
+    }
+    finally
+    {
+      aServiceGroupMgr.deleteSMPServiceGroup (aSG.getParticipantIdentifier (), true);
+    }
+  }
+
+  @Test
+  public void testCertificateStore () throws SMPServerException
+  {
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final SMPServiceInformationManagerMongoDB aServiceInfoMgr = (SMPServiceInformationManagerMongoDB) SMPMetaManager.getServiceInformationMgr ();
+    final MongoCollection <Document> aCertCollection = MongoClientSingleton.getInstance ().getCollection ("smp-certificate");
+    final String sCertHash = SMPCertificateCache.getHash (CERT);
+
+    final ISMPServiceGroup aSG = _createSG ("0088:certstore");
+    try
+    {
+      final SMPServiceInformation aSI = _createSI (aSG, 1, 3, null);
+      assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (aSI).isSuccess ());
+
+      // Stored once, referenced by hash
+      assertEquals (1, aCertCollection.countDocuments (Filters.eq ("id", sCertHash)));
+      final Document aStored = aServiceInfoMgr.getCollection ().find (Filters.eq ("id", aSI.getID ())).first ();
+      assertNotNull (aStored);
+      for (final Document aProcess : aStored.getList ("processes", Document.class))
+        for (final Document aEndpoint : aProcess.getList ("endpoints", Document.class))
+        {
+          assertEquals (sCertHash, aEndpoint.getString ("certhash"));
+          assertNull (aEndpoint.getString ("certificate"));
+        }
+
+      // Documents of previous versions contain the certificate itself
+      for (final Document aProcess : aStored.getList ("processes", Document.class))
+        for (final Document aEndpoint : aProcess.getList ("endpoints", Document.class))
+        {
+          aEndpoint.remove ("certhash");
+          aEndpoint.append ("certificate", CERT);
+        }
+      aServiceInfoMgr.getCollection ().replaceOne (Filters.eq ("id", aSI.getID ()), aStored);
+      aCertCollection.deleteMany (Filters.eq ("id", sCertHash));
+      SMPCertificateCache.clear ();
+      assertEquals (aSI.getAllProcesses (),
+                    aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG,
+                                                                                           aSI.getDocumentTypeIdentifier ())
+                                   .getAllProcesses ());
+
+      assertTrue (aServiceInfoMgr.migrateEndpointCertificatesToStore () >= 1);
+      assertEquals (1, aCertCollection.countDocuments (Filters.eq ("id", sCertHash)));
+      assertEquals (0,
+                    aServiceInfoMgr.getCollection ()
+                                   .countDocuments (Filters.and (Filters.eq ("id", aSI.getID ()),
+                                                                 Filters.exists ("processes.endpoints.certificate"))));
+      assertEquals (aSI.getAllProcesses (),
+                    aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG,
+                                                                                           aSI.getDocumentTypeIdentifier ())
+                                   .getAllProcesses ());
+
+      // A dangling reference must not silently drop the certificate
+      aCertCollection.deleteMany (Filters.eq ("id", sCertHash));
+      SMPCertificateCache.clear ();
+      try
+      {
+        aServiceInfoMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG, aSI.getDocumentTypeIdentifier ());
+        fail ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        // expected
+      }
+    }
+    finally
+    {
+      // Restore the shared certificate, so that the service group can be
+      // deleted
+      aCertCollection.updateOne (Filters.eq ("id", sCertHash),
+                                 Updates.setOnInsert ("certificate", CERT),
+                                 new UpdateOptions ().upsert (true));
+      aServiceGroupMgr.deleteSMPServiceGroup (aSG.getParticipantIdentifier (), true);
+    }
+  }
+
+  @Test
+  public void testBulkChange () throws SMPServerException
+  {
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final SMPServiceInformationManagerMongoDB aServiceInfoMgr = (SMPServiceInformationManagerMongoDB) SMPMetaManager.getServiceInformationMgr ();
+    final String sOldURL = "https://old.example.org/as4";
+    final String sNewURL = "https://new.example.org/as4";
+    final String sNewCert = StringHelper.getRepeated ("MIIFTzCCAzegAwIBAgIR", 60);
+
+    final ISMPServiceGroup aSG = _createSG ("0088:bulkchange");
+    final AtomicInteger aCallbacks = new AtomicInteger (0);
+    final ISMPServiceInformationCallback aCB = new ISMPServiceInformationCallback ()
+    {
+      @Override
+      public void onSMPServiceInformationUpdated (@Nonnull final ISMPServiceInformation aServiceInformation)
+      {
+        aCallbacks.incrementAndGet ();
+      }
+    };
+    aServiceInfoMgr.serviceInformationCallbacks ().add (aCB);
+    try
+    {
+      final int nSICount = SMPEndpointBulkChangeHelper.CHUNK_SIZE + 1;
+      for (int i = 0; i < nSICount; ++i)
+      {
+        final SMPServiceInformation aSI = _createSI (aSG, i, 2, sOldURL);
+        // A process without endpoints must not break the array filters
+        aSI.addProcess (new SMPProcess (SMPMetaManager.getIdentifierFactory ()
+                                                      .createProcessIdentifier (PeppolIdentifierHelper.DEFAULT_PROCESS_SCHEME,
+                                                                                "urn:fdc:peppol.eu:2017:poacc:empty"),
+                                        null,
+                                        null));
+        assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (aSI).isSuccess ());
+      }
+      aCallbacks.set (0);
+
+      // Two endpoints of the first process per service information
+      SMPEndpointBulkChangeResult aResult = aServiceInfoMgr.changeAllEndpointURLs (aSG, sOldURL, sNewURL);
+      assertEquals (nSICount * 2L, aResult.getChangedEndpointCount ());
+      assertEquals (0, aResult.getErrorCount ());
+      assertEquals (1, aResult.getAllChangedServiceGroupIDs ().size ());
+      assertEquals (nSICount, aCallbacks.get ());
+      assertEquals (0,
+                    aServiceInfoMgr.getCollection ()
+                                   .countDocuments (Filters.eq ("processes.endpoints.endpointreference", sOldURL)));
+      assertEquals (nSICount,
+                    aServiceInfoMgr.getCollection ()
+                                   .countDocuments (Filters.eq ("processes.endpoints.endpointreference", sNewURL)));
+      // The other endpoints are untouched
+      for (final ISMPServiceInformation aSI : aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aSG))
+        for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+          for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+            assertTrue (aEndpoint.getEndpointReference ().equals (sNewURL) ||
+                        aEndpoint.getEndpointReference ().startsWith ("https://ap.example.org/as4/"));
+
+      // All endpoints of all service information objects
+      aCallbacks.set (0);
+      aResult = aServiceInfoMgr.changeAllEndpointCertificates (CERT::equals, sNewCert);
+      assertTrue (aResult.getChangedEndpointCount () >= nSICount * 4L);
+      assertEquals (0, aResult.getErrorCount ());
+      assertTrue (aCallbacks.get () >= nSICount);
+      for (final ISMPServiceInformation aSI : aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aSG))
+        for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+          for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+            assertEquals (sNewCert, aEndpoint.getCertificate ());
+    }
+    finally
+    {
+      aServiceInfoMgr.serviceInformationCallbacks ().removeObject (aCB);
+      aServiceGroupMgr.deleteSMPServiceGroup (aSG.getParticipantIdentifier (), true);
+    }
+  }
+}
@@ -18,11 +18,20 @@ package com.helger.phoss.smp.backend.sql;
 
 import java.util.function.Function;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.helger.commons.callback.exception.IExceptionCallback;
 import com.helger.commons.regex.RegExHelper;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
+import com.helger.db.jdbc.IHasDataSource;
+import com.helger.db.jdbc.callback.IGeneratedKeysCallback;
+import com.helger.db.jdbc.callback.IPreparedStatementDataProvider;
+import com.helger.db.jdbc.callback.IUpdatedRowCountCallback;
 import com.helger.db.jdbc.executor.DBExecutor;
 
 /**
@@ -71,4 +80,70 @@ public final class SMPDBExecutor extends DBExecutor
       setExecutionDurationWarnMS (0);
     }
   }
+
+  /**
+   * Create a new executor for read-only queries. If a read replica may be used,
+   * the executor works on the replica.
+   *
+   * @return <code>null</code> if the primary database must be used.
+   * @see SMPReadReplicaRouter
+   * @since 7.1.4
+   */
+  @Nullable
+  public static SMPReadReplicaDBExecutor createReadReplicaExecutorOrNull ()
+  {
+    final SMPReadReplicaRouter aRouter = SMPDataSourceSingleton.getInstance ().getReadReplicaRouter ();
+    final IHasDataSource aDSP = aRouter.getReadDataSourceProviderOrNull ();
+    return aDSP == null ? null : new SMPReadReplicaDBExecutor (aDSP, aRouter, SMPDBExecutor::new);
+  }
+
+  // All other modifying methods delegate to the ones below
+
+  @Override
+  public ESuccess executeStatement (@Nonnull final String sSQL,
+                                    @Nullable final IGeneratedKeysCallback aGeneratedKeysCB,
+                                    @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    SMPReadReplicaRouter.onWrite ();
+    return super.executeStatement (sSQL, aGeneratedKeysCB, aExtraExCB);
+  }
+
+  @Override
+  public ESuccess executePreparedStatement (@Nonnull final String sSQL,
+                                            @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                            @Nullable final IUpdatedRowCountCallback aURWCC,
+                                            @Nullable final IGeneratedKeysCallback aGeneratedKeysCB,
+                                            @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    SMPReadReplicaRouter.onWrite ();
+    return super.executePreparedStatement (sSQL, aPSDP, aURWCC, aGeneratedKeysCB, aExtraExCB);
+  }
+
+  @Override
+  public Object executePreparedStatementAndGetGeneratedKey (@Nonnull final String sSQL,
+                                                            @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                                            @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    SMPReadReplicaRouter.onWrite ();
+    return super.executePreparedStatementAndGetGeneratedKey (sSQL, aPSDP, aExtraExCB);
+  }
+
+  @Override
+  public long insertOrUpdateOrDelete (@Nonnull final String sSQL,
+                                      @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                      @Nullable final IGeneratedKeysCallback aGeneratedKeysCB,
+                                      @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    SMPReadReplicaRouter.onWrite ();
+    return super.insertOrUpdateOrDelete (sSQL, aPSDP, aGeneratedKeysCB, aExtraExCB);
+  }
+
+  @Override
+  public CountAndKey insertOrUpdateAndGetGeneratedKey (@Nonnull final String sSQL,
+                                                       @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                                       @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    SMPReadReplicaRouter.onWrite ();
+    return super.insertOrUpdateAndGetGeneratedKey (sSQL, aPSDP, aExtraExCB);
+  }
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.slf4j.Logger;
@@ -40,25 +41,50 @@ public final class SMPDataSourceProvider implements IHasDataSource, Closeable
   private final BasicDataSource m_aDataSource;
 
   SMPDataSourceProvider ()
+  {
+    this (SMPJDBCConfiguration.getJdbcUrl (),
+          SMPJDBCConfiguration.getJdbcUser (),
+          SMPJDBCConfiguration.getJdbcPassword (),
+          false);
+  }
+
+  /**
+   * Constructor for an arbitrary database, using the configured JDBC driver.
+   *
+   * @param sUrl
+   *        The JDBC URL to use. May be <code>null</code>.
+   * @param sUserName
+   *        The user name to use. May be <code>null</code>.
+   * @param sPassword
+   *        The password to use. May be <code>null</code>.
+   * @param bReadOnly
+   *        <code>true</code> for read-only connections as used for read
+   *        replicas.
+   * @since 7.1.4
+   */
+  SMPDataSourceProvider (@Nullable final String sUrl,
+                         @Nullable final String sUserName,
+                         @Nullable final String sPassword,
+                         final boolean bReadOnly)
   {
     // build data source
     // This is usually only called once on startup and than the same
     // DataSource is reused during the entire lifetime
     m_aDataSource = new BasicDataSource ();
     m_aDataSource.setDriverClassName (SMPJDBCConfiguration.getJdbcDriver ());
-    final String sUserName = SMPJDBCConfiguration.getJdbcUser ();
     if (sUserName != null)
       m_aDataSource.setUsername (sUserName);
-    final String sPassword = SMPJDBCConfiguration.getJdbcPassword ();
     if (sPassword != null)
       m_aDataSource.setPassword (sPassword);
-    m_aDataSource.setUrl (SMPJDBCConfiguration.getJdbcUrl ());
+    m_aDataSource.setUrl (sUrl);
 
     // settings
     m_aDataSource.setDefaultAutoCommit (Boolean.FALSE);
     m_aDataSource.setPoolPreparedStatements (true);
+    if (bReadOnly)
+      m_aDataSource.setDefaultReadOnly (Boolean.TRUE);
 
-    LOGGER.info ("Created new DataSource " + m_aDataSource);
+    LOGGER.info ("Created new " + (bReadOnly ? "read-only " : "") + "DataSource " + m_aDataSource);
   }
 
   @Nonnull
@@ -61,6 +61,7 @@ public final class SMPDataSourceSingleton extends AbstractGlobalSingleton
   }
 
   private final SMPDataSourceProvider m_aDSP = new SMPDataSourceProvider ();
+  private final SMPReadReplicaRouter m_aReadReplicaRouter = new SMPReadReplicaRouter (m_aDSP);
 
   /**
    * @deprecated Only called via reflection
@@ -81,6 +82,7 @@ public final class SMPDataSourceSingleton extends AbstractGlobalSingleton
   {
     // Close the DataSource provider
     StreamHelper.close (m_aDSP);
+    StreamHelper.close (m_aReadReplicaRouter);
   }
 
   /**
@@ -92,4 +94,14 @@ public final class SMPDataSourceSingleton extends AbstractGlobalSingleton
   {
     return m_aDSP;
   }
+
+  /**
+   * @return The read replica router. Never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public SMPReadReplicaRouter getReadReplicaRouter ()
+  {
+    return m_aReadReplicaRouter;
+  }
 }
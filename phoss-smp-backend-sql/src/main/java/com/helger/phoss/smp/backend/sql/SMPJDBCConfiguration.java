@@ -16,12 +16,17 @@
  */
 package com.helger.phoss.smp.backend.sql;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 import com.helger.commons.annotation.PresentForCodeCoverage;
+import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.Since;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.StringHelper;
 import com.helger.config.IConfig;
 import com.helger.db.jdbc.executor.DBExecutor;
 import com.helger.phoss.smp.config.SMPConfigProvider;
@@ -56,6 +61,9 @@ public final class SMPJDBCConfiguration
   @Since ("5.3.0")
   private static final String CONFIG_JDBC_CACHE_SG_ENABLED = "jdbc.cache.sg.enabled";
   private static final boolean DEFAULT_JDBC_CACHE_SG_ENABLED = true;
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_CACHE_SG_TTL_SECONDS = "jdbc.cache.sg.ttl.seconds";
+  public static final long DEFAULT_JDBC_CACHE_SG_TTL_SECONDS = 60;
   @Since ("5.3.0")
   private static final String CONFIG_JDBC_DEBUG_CONNECTIONS = "jdbc.debug.connections";
   private static final boolean DEFAULT_JDBC_DEBUG_CONNECTIONS = false;
@@ -66,6 +74,30 @@ public final class SMPJDBCConfiguration
   private static final String CONFIG_JDBC_DEBUG_SQL = "jdbc.debug.sql";
   private static final boolean DEFAULT_JDBC_DEBUG_SQL = false;
 
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_QUERY_PLAN_CHECK_ENABLED = "jdbc.query-plan-check.enabled";
+  private static final boolean DEFAULT_JDBC_QUERY_PLAN_CHECK_ENABLED = true;
+
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_REPLICA_URLS = "jdbc.replica.urls";
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_REPLICA_USER = "jdbc.replica.user";
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_REPLICA_PASSWORD = "jdbc.replica.password";
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_REPLICA_STALENESS_TOLERANCE_MS = "jdbc.replica.staleness-tolerance.ms";
+  public static final long DEFAULT_JDBC_REPLICA_STALENESS_TOLERANCE_MS = 5_000;
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_REPLICA_HEALTH_CHECK_INTERVAL_MS = "jdbc.replica.health-check-interval.ms";
+  public static final long DEFAULT_JDBC_REPLICA_HEALTH_CHECK_INTERVAL_MS = 10_000;
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_REPLICA_PRIMARY_PINNING_MS = "jdbc.replica.primary-pinning.ms";
+  public static final long DEFAULT_JDBC_REPLICA_PRIMARY_PINNING_MS = 30_000;
+
+  @Since ("7.1.4")
+  private static final String CONFIG_JDBC_SETTINGS_POLL_INTERVAL_MS = "jdbc.settings.poll-interval.ms";
+  public static final long DEFAULT_JDBC_SETTINGS_POLL_INTERVAL_MS = 10_000;
+
   private static final String CONFIG_SMP_STATUS_SQL_ENABLED = "smp.status.sql.enabled";
   private static final boolean DEFAULT_SMP_STATUS_SQL_ENABLED = true;
 
@@ -139,6 +171,20 @@ public final class SMPJDBCConfiguration
     return _getConfig ().getAsBoolean (CONFIG_JDBC_CACHE_SG_ENABLED, DEFAULT_JDBC_CACHE_SG_ENABLED);
   }
 
+  /**
+   * @return The number of seconds a service group stays in the cache. If
+   *         clustering is enabled, changes of other nodes are propagated, so
+   *         that a much longer duration may be used. Defaults to
+   *         {@link #DEFAULT_JDBC_CACHE_SG_TTL_SECONDS}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static long getJdbcServiceGroupCacheTTLSeconds ()
+  {
+    final long ret = _getConfig ().getAsLong (CONFIG_JDBC_CACHE_SG_TTL_SECONDS, DEFAULT_JDBC_CACHE_SG_TTL_SECONDS);
+    return ret > 0 ? ret : DEFAULT_JDBC_CACHE_SG_TTL_SECONDS;
+  }
+
   public static boolean isJdbcDebugConnections ()
   {
     return _getConfig ().getAsBoolean (CONFIG_JDBC_DEBUG_CONNECTIONS, DEFAULT_JDBC_DEBUG_CONNECTIONS);
@@ -154,6 +200,97 @@ public final class SMPJDBCConfiguration
     return _getConfig ().getAsBoolean (CONFIG_JDBC_DEBUG_SQL, DEFAULT_JDBC_DEBUG_SQL);
   }
 
+  public static boolean isJdbcQueryPlanCheckEnabled ()
+  {
+    return _getConfig ().getAsBoolean (CONFIG_JDBC_QUERY_PLAN_CHECK_ENABLED, DEFAULT_JDBC_QUERY_PLAN_CHECK_ENABLED);
+  }
+
+  /**
+   * @return The JDBC URLs of the read replicas. Never <code>null</code> but
+   *         maybe empty if no read replica is configured.
+   * @since 7.1.4
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <String> getAllJdbcReplicaUrls ()
+  {
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    final String sUrls = _getConfig ().getAsString (CONFIG_JDBC_REPLICA_URLS);
+    if (StringHelper.hasText (sUrls))
+      for (final String sUrl : StringHelper.getExploded (',', sUrls))
+        if (StringHelper.hasText (sUrl.trim ()))
+          ret.add (sUrl.trim ());
+    return ret;
+  }
+
+  /**
+   * @return The user name for the read replicas. Defaults to the user name of
+   *         the primary database.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static String getJdbcReplicaUser ()
+  {
+    return _getConfig ().getAsString (CONFIG_JDBC_REPLICA_USER, getJdbcUser ());
+  }
+
+  /**
+   * @return The password for the read replicas. Defaults to the password of
+   *         the primary database.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static String getJdbcReplicaPassword ()
+  {
+    return _getConfig ().getAsString (CONFIG_JDBC_REPLICA_PASSWORD, getJdbcPassword ());
+  }
+
+  /**
+   * @return The maximum replication lag in milliseconds, up to which a read
+   *         replica is used.
+   * @since 7.1.4
+   */
+  public static long getJdbcReplicaStalenessToleranceMilliseconds ()
+  {
+    return _getConfig ().getAsLong (CONFIG_JDBC_REPLICA_STALENESS_TOLERANCE_MS,
+                                    DEFAULT_JDBC_REPLICA_STALENESS_TOLERANCE_MS);
+  }
+
+  /**
+   * @return The maximum number of milliseconds between two health checks of
+   *         the read replicas. The checks run at least twice per staleness
+   *         tolerance.
+   * @since 7.1.4
+   */
+  public static long getJdbcReplicaHealthCheckIntervalMilliseconds ()
+  {
+    return _getConfig ().getAsLong (CONFIG_JDBC_REPLICA_HEALTH_CHECK_INTERVAL_MS,
+                                    DEFAULT_JDBC_REPLICA_HEALTH_CHECK_INTERVAL_MS);
+  }
+
+  /**
+   * @return The number of milliseconds a client reads from the primary
+   *         database after it wrote something, so that subsequent requests
+   *         see their own writes.
+   * @since 7.1.4
+   */
+  public static long getJdbcReplicaPrimaryPinningMilliseconds ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsLong (CONFIG_JDBC_REPLICA_PRIMARY_PINNING_MS,
+                                              DEFAULT_JDBC_REPLICA_PRIMARY_PINNING_MS));
+  }
+
+  /**
+   * @return The number of milliseconds between two checks, if the SMP settings
+   *         were changed by another node. Values &le; 0 disable the check.
+   * @since 7.1.4
+   */
+  public static long getJdbcSettingsPollIntervalMilliseconds ()
+  {
+    return _getConfig ().getAsLong (CONFIG_JDBC_SETTINGS_POLL_INTERVAL_MS, DEFAULT_JDBC_SETTINGS_POLL_INTERVAL_MS);
+  }
+
   public static boolean isStatusEnabled ()
   {
     return _getConfig ().getAsBoolean (CONFIG_SMP_STATUS_SQL_ENABLED, DEFAULT_SMP_STATUS_SQL_ENABLED);
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.string.StringHelper;
+
+/**
+ * Runs EXPLAIN on the frequently used queries and checks if they are executed
+ * with a full table scan. This is meant as a startup self-check to find
+ * missing indexes. The check is only supported for MySQL, PostgreSQL and
+ * Oracle. DB2 requires the explain tables to be created manually, so it is
+ * reported as unsupported.<br>
+ * The optimizer of MySQL and Oracle prefers a full table scan on small or
+ * empty tables, even if a matching index exists. Therefore full scans of
+ * tables with less than {@link #FULL_SCAN_MIN_ROWS} rows are only reported as
+ * {@link EQueryPlanState#SMALL_TABLE} and no warning is emitted.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPQueryPlanChecker
+{
+  /**
+   * The result of a single query plan check.
+   *
+   * @author Philip Helger
+   */
+  public enum EQueryPlanState implements IHasID <String>
+  {
+    INDEX ("index"),
+    FULL_SCAN ("full-scan"),
+    SMALL_TABLE ("small-table"),
+    UNSUPPORTED ("unsupported"),
+    ERROR ("error");
+
+    private final String m_sID;
+
+    EQueryPlanState (@Nonnull @Nonempty final String sID)
+    {
+      m_sID = sID;
+    }
+
+    @Nonnull
+    @Nonempty
+    public String getID ()
+    {
+      return m_sID;
+    }
+  }
+
+  /**
+   * The minimum number of estimated rows for which a full table scan is
+   * reported as {@link EQueryPlanState#FULL_SCAN}.
+   */
+  public static final long FULL_SCAN_MIN_ROWS = 1_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPQueryPlanChecker.class);
+
+  // Name to query - constant values are used, because not all databases
+  // support parameters in EXPLAIN
+  private static final ICommonsOrderedMap <String, String> HOT_QUERIES = new CommonsLinkedHashMap <> ();
+  static
+  {
+    HOT_QUERIES.put ("endpoint-transport-profile",
+                     "SELECT COUNT(*) FROM smp_endpoint WHERE transportProfile='x'");
+    HOT_QUERIES.put ("endpoint-reference",
+                     "SELECT businessIdentifierScheme, businessIdentifier FROM smp_endpoint WHERE endpointReference='x'");
+    HOT_QUERIES.put ("ownership-username",
+                     "SELECT businessIdentifierScheme, businessIdentifier FROM smp_ownership WHERE username='x'");
+    HOT_QUERIES.put ("bce-pid", "SELECT id FROM smp_bce WHERE pid='x'");
+    HOT_QUERIES.put ("pmigration-direction-state",
+                     "SELECT id FROM smp_pmigration WHERE direction='x' AND state='x'");
+    HOT_QUERIES.put ("audit-dt", "SELECT id FROM smp_audit WHERE dt>=CURRENT_TIMESTAMP");
+  }
+
+  private static volatile ICommonsOrderedMap <String, EQueryPlanState> s_aLastResult;
+
+  private SMPQueryPlanChecker ()
+  {}
+
+  @Nonnull
+  private static EQueryPlanState _checkMySQL (@Nonnull final Statement aStatement, @Nonnull final String sSQL) throws SQLException
+  {
+    EQueryPlanState ret = EQueryPlanState.INDEX;
+    try (final ResultSet aRS = aStatement.executeQuery ("EXPLAIN " + sSQL))
+    {
+      while (aRS.next ())
+      {
+        // Join type "ALL" means full table scan. If an index could be used,
+        // the optimizer decided that the scan is cheaper
+        if ("ALL".equalsIgnoreCase (aRS.getString ("type")) && StringHelper.hasNoText (aRS.getString ("possible_keys")))
+        {
+          // "rows" is the estimated number of rows to examine
+          if (aRS.getLong ("rows") >= FULL_SCAN_MIN_ROWS)
+            return EQueryPlanState.FULL_SCAN;
+          ret = EQueryPlanState.SMALL_TABLE;
+        }
+      }
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static EQueryPlanState _checkPostgreSQL (@Nonnull final Statement aStatement, @Nonnull final String sSQL) throws SQLException
+  {
+    // Small tables are always scanned sequentially by default, so only a
+    // missing index should result in a sequential scan
+    aStatement.execute ("SET LOCAL enable_seqscan = off");
+    try (final ResultSet aRS = aStatement.executeQuery ("EXPLAIN " + sSQL))
+    {
+      while (aRS.next ())
+        if (aRS.getString (1).contains ("Seq Scan on "))
+          return EQueryPlanState.FULL_SCAN;
+    }
+    return EQueryPlanState.INDEX;
+  }
+
+  @Nonnull
+  private static EQueryPlanState _checkOracle (@Nonnull final Statement aStatement, @Nonnull final String sSQL) throws SQLException
+  {
+    // The plan table entries are removed by the rollback
+    aStatement.execute ("EXPLAIN PLAN SET STATEMENT_ID='phoss-smp' FOR " + sSQL);
+    final ICommonsList <String> aFullScanTables = new CommonsArrayList <> ();
+    try (final ResultSet aRS = aStatement.executeQuery ("SELECT operation, options, object_name FROM plan_table WHERE statement_id='phoss-smp'"))
+    {
+      while (aRS.next ())
+        if ("TABLE ACCESS".equals (aRS.getString (1)) && "FULL".equals (aRS.getString (2)))
+          aFullScanTables.add (aRS.getString (3));
+    }
+    if (aFullScanTables.isEmpty ())
+      return EQueryPlanState.INDEX;
+
+    for (final String sTable : aFullScanTables)
+    {
+      // Without statistics the table size is unknown
+      try (final ResultSet aRS = aStatement.executeQuery ("SELECT num_rows FROM user_tables WHERE table_name='" +
+                                                          sTable +
+                                                          "'"))
+      {
+        if (!aRS.next ())
+          return EQueryPlanState.FULL_SCAN;
+        final long nRows = aRS.getLong (1);
+        if (aRS.wasNull () || nRows >= FULL_SCAN_MIN_ROWS)
+          return EQueryPlanState.FULL_SCAN;
+      }
+    }
+    return EQueryPlanState.SMALL_TABLE;
+  }
+
+  /**
+   * Check the query plan of a single query. All changes are rolled back
+   * afterwards.
+   *
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @param eDBType
+   *        The database type to use. May not be <code>null</code>.
+   * @param sSQL
+   *        The query to check. May not be <code>null</code>.
+   * @return The check result. Never <code>null</code>.
+   */
+  @Nonnull
+  static EQueryPlanState checkQuery (@Nonnull final Connection aConnection,
+                                     @Nonnull final EDatabaseType eDBType,
+                                     @Nonnull final String sSQL)
+  {
+    try (final Statement aStatement = aConnection.createStatement ())
+    {
+      switch (eDBType)
+      {
+        case MYSQL:
+          return _checkMySQL (aStatement, sSQL);
+        case POSTGRESQL:
+          return _checkPostgreSQL (aStatement, sSQL);
+        case ORACLE:
+          return _checkOracle (aStatement, sSQL);
+        default:
+          return EQueryPlanState.UNSUPPORTED;
+      }
+    }
+    catch (final SQLException ex)
+    {
+      LOGGER.warn ("Failed to explain query '" + sSQL + "': " + ex.getMessage ());
+      return EQueryPlanState.ERROR;
+    }
+    finally
+    {
+      try
+      {
+        aConnection.rollback ();
+      }
+      catch (final SQLException ex)
+      {
+        // Ignore
+      }
+    }
+  }
+
+  /**
+   * Run the query plan check for all frequently used queries and remember the
+   * result. For each query doing a full table scan a warning is logged.
+   *
+   * @param eDBType
+   *        The database type to use. May not be <code>null</code>.
+   * @return The map from query name to check result. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsOrderedMap <String, EQueryPlanState> runCheck (@Nonnull final EDatabaseType eDBType)
+  {
+    final ICommonsOrderedMap <String, EQueryPlanState> ret = new CommonsLinkedHashMap <> ();
+    if (eDBType == EDatabaseType.DB2)
+    {
+      HOT_QUERIES.forEach ( (k, v) -> ret.put (k, EQueryPlanState.UNSUPPORTED));
+      LOGGER.info ("The query plan check is not supported for " + eDBType.getDisplayName ());
+    }
+    else
+    {
+      try (final Connection aConnection = SMPDataSourceSingleton.getInstance ()
+                                                                .getDataSourceProvider ()
+                                                                .getDataSource ()
+                                                                .getConnection ())
+      {
+        // Everything must be rolled back
+        aConnection.setAutoCommit (false);
+        for (final Map.Entry <String, String> aEntry : HOT_QUERIES.entrySet ())
+        {
+          final EQueryPlanState eState = checkQuery (aConnection, eDBType, aEntry.getValue ());
+          ret.put (aEntry.getKey (), eState);
+          if (eState == EQueryPlanState.FULL_SCAN)
+            LOGGER.warn ("The query '" +
+                         aEntry.getKey () +
+                         "' does a full table scan - please check that all database migrations were applied: " +
+                         aEntry.getValue ());
+          else
+            if (eState == EQueryPlanState.SMALL_TABLE)
+              LOGGER.info ("The query '" +
+                           aEntry.getKey () +
+                           "' does a full table scan on a small table - the query plan may change with more data: " +
+                           aEntry.getValue ());
+        }
+      }
+      catch (final SQLException ex)
+      {
+        LOGGER.error ("Failed to run the query plan check", ex);
+        HOT_QUERIES.forEach ( (k, v) -> ret.putIfAbsent (k, EQueryPlanState.ERROR));
+      }
+    }
+    s_aLastResult = ret;
+    return ret.getClone ();
+  }
+
+  /**
+   * @return The result of the last {@link #runCheck(EDatabaseType)} call or
+   *         <code>null</code> if the check was not yet run.
+   */
+  @Nullable
+  @ReturnsMutableCopy
+  public static ICommonsOrderedMap <String, EQueryPlanState> getLastResult ()
+  {
+    final ICommonsOrderedMap <String, EQueryPlanState> ret = s_aLastResult;
+    return ret == null ? null : ret.getClone ();
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.callback.exception.IExceptionCallback;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.db.jdbc.IHasDataSource;
+import com.helger.db.jdbc.callback.IGeneratedKeysCallback;
+import com.helger.db.jdbc.callback.IPreparedStatementDataProvider;
+import com.helger.db.jdbc.callback.IResultSetRowCallback;
+import com.helger.db.jdbc.callback.IUpdatedRowCountCallback;
+import com.helger.db.jdbc.executor.DBExecutor;
+import com.helger.db.jdbc.executor.DBResultRow;
+
+/**
+ * A read-only DB executor that runs queries on a read replica. The replica is
+ * accessed with plain JDBC, so that a failing replica never changes the
+ * connection status of the primary database, that is shared by all
+ * {@link DBExecutor} instances. If a query on the replica fails, the replica
+ * is marked as unusable and the query is executed on the primary database
+ * instead.<br>
+ * Only queries are supported - all modifying methods throw an
+ * {@link UnsupportedOperationException}. All query methods of
+ * {@link DBExecutor} delegate to the two overridden <code>queryAll</code>
+ * methods.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public final class SMPReadReplicaDBExecutor extends DBExecutor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPReadReplicaDBExecutor.class);
+
+  private final IHasDataSource m_aReplicaDSP;
+  private final SMPReadReplicaRouter m_aRouter;
+  private final Supplier <? extends DBExecutor> m_aPrimaryExecutorSupplier;
+
+  /**
+   * Constructor
+   *
+   * @param aReplicaDSP
+   *        The data source provider of the replica to use. May not be
+   *        <code>null</code>.
+   * @param aRouter
+   *        The router to report failures to. May not be <code>null</code>.
+   * @param aPrimaryExecutorSupplier
+   *        The supplier for the primary executor, that is used if the replica
+   *        fails. May not be <code>null</code>.
+   */
+  public SMPReadReplicaDBExecutor (@Nonnull final IHasDataSource aReplicaDSP,
+                                   @Nonnull final SMPReadReplicaRouter aRouter,
+                                   @Nonnull final Supplier <? extends DBExecutor> aPrimaryExecutorSupplier)
+  {
+    super (aReplicaDSP);
+    ValueEnforcer.notNull (aRouter, "Router");
+    ValueEnforcer.notNull (aPrimaryExecutorSupplier, "PrimaryExecutorSupplier");
+    m_aReplicaDSP = aReplicaDSP;
+    m_aRouter = aRouter;
+    m_aPrimaryExecutorSupplier = aPrimaryExecutorSupplier;
+  }
+
+  /**
+   * Run the query on the replica. All rows are read before the callback is
+   * invoked, so that a failure in the middle can be retried on the primary
+   * database without duplicate rows.
+   *
+   * @return <code>null</code> if the query failed on the replica.
+   */
+  @Nullable
+  private ICommonsList <DBResultRow> _queryReplica (@Nonnull final String sSQL,
+                                                    @Nullable final IPreparedStatementDataProvider aPSDP)
+  {
+    final ICommonsList <DBResultRow> ret = new CommonsArrayList <> ();
+    try (final Connection aConnection = m_aReplicaDSP.getDataSource ().getConnection ())
+    {
+      try (final PreparedStatement aPS = aConnection.prepareStatement (sSQL))
+      {
+        if (aPSDP != null)
+        {
+          int nIndex = 1;
+          for (final Object aValue : aPSDP.getObjectValues ())
+            aPS.setObject (nIndex++, aValue);
+        }
+        try (final ResultSet aRS = aPS.executeQuery ())
+        {
+          // The same row object is reused for all rows
+          iterateResultSet (aRS, x -> ret.add (x.getClone ()));
+        }
+      }
+      finally
+      {
+        // Nothing to commit
+        aConnection.rollback ();
+      }
+      return ret;
+    }
+    catch (final SQLException | RuntimeException ex)
+    {
+      LOGGER.warn ("Failed to execute query on read replica - using the primary database instead: " +
+                   ex.getMessage ());
+      m_aRouter.onReplicaFailure (m_aReplicaDSP, ex);
+      return null;
+    }
+  }
+
+  @Override
+  public ESuccess queryAll (@Nonnull final String sSQL, @Nonnull final IResultSetRowCallback aResultItemCallback)
+  {
+    ValueEnforcer.notEmpty (sSQL, "SQL");
+    ValueEnforcer.notNull (aResultItemCallback, "ResultItemCallback");
+
+    final ICommonsList <DBResultRow> aRows = _queryReplica (sSQL, null);
+    if (aRows == null)
+      return m_aPrimaryExecutorSupplier.get ().queryAll (sSQL, aResultItemCallback);
+    aRows.forEach (aResultItemCallback);
+    return ESuccess.SUCCESS;
+  }
+
+  @Override
+  public ESuccess queryAll (@Nonnull final String sSQL,
+                            @Nonnull final IPreparedStatementDataProvider aPSDP,
+                            @Nonnull final IResultSetRowCallback aResultItemCallback)
+  {
+    ValueEnforcer.notEmpty (sSQL, "SQL");
+    ValueEnforcer.notNull (aPSDP, "PreparedStatementDataProvider");
+    ValueEnforcer.notNull (aResultItemCallback, "ResultItemCallback");
+
+    final ICommonsList <DBResultRow> aRows = _queryReplica (sSQL, aPSDP);
+    if (aRows == null)
+      return m_aPrimaryExecutorSupplier.get ().queryAll (sSQL, aPSDP, aResultItemCallback);
+    aRows.forEach (aResultItemCallback);
+    return ESuccess.SUCCESS;
+  }
+
+  // All other modifying methods delegate to the ones below
+
+  @Override
+  public ESuccess executeStatement (@Nonnull final String sSQL,
+                                    @Nullable final IGeneratedKeysCallback aGeneratedKeysCB,
+                                    @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    throw new UnsupportedOperationException ("Read replicas are read-only");
+  }
+
+  @Override
+  public ESuccess executePreparedStatement (@Nonnull final String sSQL,
+                                            @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                            @Nullable final IUpdatedRowCountCallback aURWCC,
+                                            @Nullable final IGeneratedKeysCallback aGeneratedKeysCB,
+                                            @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    throw new UnsupportedOperationException ("Read replicas are read-only");
+  }
+
+  @Override
+  public Object executePreparedStatementAndGetGeneratedKey (@Nonnull final String sSQL,
+                                                            @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                                            @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    throw new UnsupportedOperationException ("Read replicas are read-only");
+  }
+
+  @Override
+  public long insertOrUpdateOrDelete (@Nonnull final String sSQL,
+                                      @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                      @Nullable final IGeneratedKeysCallback aGeneratedKeysCB,
+                                      @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    throw new UnsupportedOperationException ("Read replicas are read-only");
+  }
+
+  @Override
+  public CountAndKey insertOrUpdateAndGetGeneratedKey (@Nonnull final String sSQL,
+                                                       @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                                       @Nullable final IExceptionCallback <? super Exception> aExtraExCB)
+  {
+    throw new UnsupportedOperationException ("Read replicas are read-only");
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.db.jdbc.IHasDataSource;
+import com.helger.phoss.smp.backend.SMPPrimaryPinning;
+
+/**
+ * Decides whether a read-only query may be executed on a read replica or must
+ * be executed on the primary database. A replica is only used if
+ * <ul>
+ * <li>it was reachable at its last health check,</li>
+ * <li>its replication lag at the last health check was not larger than the
+ * configured staleness tolerance and</li>
+ * <li>neither the current request nor a recent request of the same client
+ * wrote anything (read your writes, see {@link SMPPrimaryPinning}).</li>
+ * </ul>
+ * The replication lag is measured with a heartbeat row, that is updated with
+ * the current time of the primary database and read back from each replica.
+ * As both values origin from the clock of the primary database, the clocks of
+ * the SMP servers don't matter. The health checks run in a background thread,
+ * so that requests never wait for them. The replicas are used in a round robin
+ * manner.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPReadReplicaRouter implements Closeable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPReadReplicaRouter.class);
+  private static final SMPPrimaryPinning PRIMARY_PINNING = new SMPPrimaryPinning ("jdbc",
+                                                                                 SMPJDBCConfiguration.getJdbcReplicaPrimaryPinningMilliseconds ());
+  private static final int HEALTH_CHECK_TIMEOUT_SECONDS = 1;
+
+  /**
+   * A single read replica with the result of the last health check.
+   *
+   * @author Philip Helger
+   */
+  static final class Replica
+  {
+    private final String m_sUrl;
+    private final IHasDataSource m_aDSP;
+    // Unknown until the first check
+    private final AtomicBoolean m_aUsable = new AtomicBoolean (false);
+    private final AtomicLong m_aLagMillis = new AtomicLong (-1);
+
+    Replica (@Nonnull @Nonempty final String sUrl, @Nonnull final IHasDataSource aDSP)
+    {
+      m_sUrl = sUrl;
+      m_aDSP = aDSP;
+    }
+
+    @Nonnull
+    @Nonempty
+    String getUrl ()
+    {
+      return m_sUrl;
+    }
+
+    @Nonnull
+    IHasDataSource getDataSourceProvider ()
+    {
+      return m_aDSP;
+    }
+
+    boolean isUsable ()
+    {
+      return m_aUsable.get ();
+    }
+
+    /**
+     * @return The replication lag in milliseconds measured at the last check,
+     *         or -1 if it is unknown.
+     */
+    long getLagMillis ()
+    {
+      return m_aLagMillis.get ();
+    }
+
+    void setState (final boolean bUsable, final long nLagMillis, @Nonnull final String sReason)
+    {
+      m_aLagMillis.set (nLagMillis);
+      if (m_aUsable.getAndSet (bUsable) != bUsable)
+      {
+        if (bUsable)
+          LOGGER.info ("Read replica '" + m_sUrl + "' is used again with a replication lag of " + nLagMillis + " ms");
+        else
+          LOGGER.warn ("Read replica '" + m_sUrl + "' is not used - " + sReason);
+      }
+    }
+  }
+
+  private final IHasDataSource m_aPrimaryDSP;
+  private final ICommonsList <Replica> m_aReplicas = new CommonsArrayList <> ();
+  private final AtomicInteger m_aNextIndex = new AtomicInteger (0);
+  private final long m_nStalenessToleranceMillis;
+  private final ScheduledExecutorService m_aExecutor;
+
+  /**
+   * Constructor that creates one data source per configured replica URL and
+   * starts the background health checks.
+   *
+   * @param aPrimaryDSP
+   *        The data source provider of the primary database, that is used to
+   *        write the heartbeat. May not be <code>null</code>.
+   */
+  SMPReadReplicaRouter (@Nonnull final IHasDataSource aPrimaryDSP)
+  {
+    this (aPrimaryDSP,
+          _createReplicas (),
+          SMPJDBCConfiguration.getJdbcReplicaStalenessToleranceMilliseconds (),
+          SMPJDBCConfiguration.getJdbcReplicaHealthCheckIntervalMilliseconds (),
+          true);
+  }
+
+  SMPReadReplicaRouter (@Nonnull final IHasDataSource aPrimaryDSP,
+                        @Nonnull final ICommonsList <Replica> aReplicas,
+                        final long nStalenessToleranceMillis,
+                        final long nHealthCheckIntervalMillis,
+                        final boolean bStartHealthChecks)
+  {
+    ValueEnforcer.notNull (aPrimaryDSP, "PrimaryDSP");
+    ValueEnforcer.notNull (aReplicas, "Replicas");
+    m_aPrimaryDSP = aPrimaryDSP;
+    m_aReplicas.addAll (aReplicas);
+    m_nStalenessToleranceMillis = nStalenessToleranceMillis;
+
+    if (m_aReplicas.isNotEmpty () && bStartHealthChecks)
+    {
+      // A replica that is in sync may still show the heartbeat of the previous
+      // check, so the checks must run more often than the tolerance
+      final long nDelayMillis = Math.max (100, Math.min (nHealthCheckIntervalMillis, nStalenessToleranceMillis / 2));
+      final BasicThreadFactory aThreadFactory = new BasicThreadFactory.Builder ().namingPattern ("smp-read-replica-check-%d")
+                                                                                 .daemon (true)
+                                                                                 .build ();
+      m_aExecutor = Executors.newSingleThreadScheduledExecutor (aThreadFactory);
+      m_aExecutor.scheduleWithFixedDelay ( () -> {
+        try
+        {
+          checkReplicas ();
+        }
+        catch (final RuntimeException ex)
+        {
+          LOGGER.error ("Failed to check the read replicas", ex);
+        }
+      }, 0, nDelayMillis, TimeUnit.MILLISECONDS);
+      LOGGER.info ("Using " + m_aReplicas.size () + " read replica(s), checked every " + nDelayMillis + " ms");
+    }
+    else
+      m_aExecutor = null;
+  }
+
+  @Nonnull
+  private static ICommonsList <Replica> _createReplicas ()
+  {
+    final ICommonsList <Replica> ret = new CommonsArrayList <> ();
+    final String sUserName = SMPJDBCConfiguration.getJdbcReplicaUser ();
+    final String sPassword = SMPJDBCConfiguration.getJdbcReplicaPassword ();
+    for (final String sUrl : SMPJDBCConfiguration.getAllJdbcReplicaUrls ())
+      ret.add (new Replica (sUrl, new SMPDataSourceProvider (sUrl, sUserName, sPassword, true)));
+    return ret;
+  }
+
+  @Nonnull
+  @Nonempty
+  private static String _getHeartbeatTableName ()
+  {
+    return SMPDBExecutor.TABLE_NAME_CUSTOMIZER.apply ("heartbeat");
+  }
+
+  /**
+   * @param eDBType
+   *        Database type. May not be <code>null</code>.
+   * @return The SQL statement to update the heartbeat with the current time of
+   *         the database.
+   */
+  @Nonnull
+  @Nonempty
+  static String getUpdateHeartbeatSQL (@Nonnull final EDatabaseType eDBType)
+  {
+    // Milliseconds are required
+    final String sNow = eDBType == EDatabaseType.MYSQL ? "CURRENT_TIMESTAMP(3)" : "CURRENT_TIMESTAMP";
+    return "UPDATE " + _getHeartbeatTableName () + " SET hbtime=" + sNow + " WHERE id=1";
+  }
+
+  @Nullable
+  private static Timestamp _readHeartbeat (@Nonnull final Connection aConnection) throws SQLException
+  {
+    try (final PreparedStatement aPS = aConnection.prepareStatement ("SELECT hbtime FROM " +
+                                                                     _getHeartbeatTableName () +
+                                                                     " WHERE id=1");
+         final ResultSet aRS = aPS.executeQuery ())
+    {
+      return aRS.next () ? aRS.getTimestamp (1) : null;
+    }
+  }
+
+  /**
+   * Write a new heartbeat to the primary database and read it back.
+   *
+   * @return The new heartbeat or <code>null</code> if writing failed.
+   */
+  @Nullable
+  private Timestamp _writeHeartbeat ()
+  {
+    try (final Connection aConnection = m_aPrimaryDSP.getDataSource ().getConnection ())
+    {
+      try
+      {
+        try (final PreparedStatement aPS = aConnection.prepareStatement (getUpdateHeartbeatSQL (SMPDataSourceSingleton.getDatabaseType ())))
+        {
+          aPS.executeUpdate ();
+        }
+        aConnection.commit ();
+        final Timestamp ret = _readHeartbeat (aConnection);
+        aConnection.commit ();
+        return ret;
+      }
+      catch (final SQLException ex)
+      {
+        aConnection.rollback ();
+        throw ex;
+      }
+    }
+    catch (final SQLException ex)
+    {
+      LOGGER.warn ("Failed to write the read replica heartbeat to the primary database: " + ex.getMessage ());
+      return null;
+    }
+  }
+
+  /**
+   * Check all replicas for availability and replication lag. This is called
+   * periodically from a background thread.
+   */
+  void checkReplicas ()
+  {
+    final Timestamp aPrimaryHeartbeat = _writeHeartbeat ();
+    final long nPrimaryHeartbeatNanos = System.nanoTime ();
+    for (final Replica aReplica : m_aReplicas)
+    {
+      try (final Connection aConnection = aReplica.getDataSourceProvider ().getDataSource ().getConnection ())
+      {
+        if (!aConnection.isValid (HEALTH_CHECK_TIMEOUT_SECONDS))
+          aReplica.setState (false, -1, "the connection is not valid");
+        else
+          if (aPrimaryHeartbeat == null)
+            aReplica.setState (false, -1, "the replication lag cannot be determined");
+          else
+          {
+            final Timestamp aReplicaHeartbeat = _readHeartbeat (aConnection);
+            aConnection.rollback ();
+            if (aReplicaHeartbeat == null)
+              aReplica.setState (false, -1, "the heartbeat was not yet replicated");
+            else
+            {
+              // Everything written after the replicated heartbeat may be
+              // missing
+              final long nLagMillis = Math.max (0,
+                                                aPrimaryHeartbeat.getTime () -
+                                                   aReplicaHeartbeat.getTime () +
+                                                   TimeUnit.NANOSECONDS.toMillis (System.nanoTime () -
+                                                                                  nPrimaryHeartbeatNanos));
+              if (nLagMillis > m_nStalenessToleranceMillis)
+                aReplica.setState (false,
+                                   nLagMillis,
+                                   "the replication lag of " +
+                                               nLagMillis +
+                                               " ms exceeds the tolerance of " +
+                                               m_nStalenessToleranceMillis +
+                                               " ms");
+              else
+                aReplica.setState (true, nLagMillis, "");
+            }
+          }
+      }
+      catch (final SQLException ex)
+      {
+        aReplica.setState (false, -1, "the database is not reachable: " + ex.getMessage ());
+      }
+    }
+  }
+
+  /**
+   * Remember that a query on the provided replica failed. The replica is not
+   * used until the next successful health check.
+   *
+   * @param aDSP
+   *        The data source provider of the failed replica. May not be
+   *        <code>null</code>.
+   * @param ex
+   *        The exception that occurred. May not be <code>null</code>.
+   */
+  void onReplicaFailure (@Nonnull final IHasDataSource aDSP, @Nonnull final Exception ex)
+  {
+    for (final Replica aReplica : m_aReplicas)
+      if (aReplica.getDataSourceProvider () == aDSP)
+        aReplica.setState (false, aReplica.getLagMillis (), "a query failed: " + ex.getMessage ());
+  }
+
+  /**
+   * @return The number of configured read replicas, independent of their
+   *         health. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getReplicaCount ()
+  {
+    return m_aReplicas.size ();
+  }
+
+  /**
+   * @return The number of read replicas that were healthy and within the
+   *         staleness tolerance at their last check. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getHealthyReplicaCount ()
+  {
+    return (int) m_aReplicas.getCount (Replica::isUsable);
+  }
+
+  /**
+   * @return The maximum replication lag in milliseconds of all replicas at
+   *         their last check, or -1 if it is unknown for all replicas.
+   */
+  public long getMaxReplicationLagMillis ()
+  {
+    long ret = -1;
+    for (final Replica aReplica : m_aReplicas)
+      ret = Math.max (ret, aReplica.getLagMillis ());
+    return ret;
+  }
+
+  /**
+   * Remember that a write operation was performed on the primary database.
+   * This is called automatically by {@link SMPDBExecutor}.
+   */
+  public static void onWrite ()
+  {
+    PRIMARY_PINNING.onWrite ();
+  }
+
+  /**
+   * Get the data source provider of a read replica that may be used for the
+   * next read-only query. This never accesses the database.
+   *
+   * @return <code>null</code> if the primary database must be used.
+   */
+  @Nullable
+  public IHasDataSource getReadDataSourceProviderOrNull ()
+  {
+    final int nCount = m_aReplicas.size ();
+    if (nCount == 0 || PRIMARY_PINNING.isPrimaryRequired ())
+      return null;
+
+    final int nStart = Math.floorMod (m_aNextIndex.getAndIncrement (), nCount);
+    for (int i = 0; i < nCount; ++i)
+    {
+      final Replica aReplica = m_aReplicas.get ((nStart + i) % nCount);
+      if (aReplica.isUsable ())
+        return aReplica.getDataSourceProvider ();
+    }
+    // No usable replica
+    return null;
+  }
+
+  public void close ()
+  {
+    if (m_aExecutor != null)
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (m_aExecutor);
+    for (final Replica aReplica : m_aReplicas)
+      if (aReplica.getDataSourceProvider () instanceof Closeable)
+        StreamHelper.close ((Closeable) aReplica.getDataSourceProvider ());
+  }
+}
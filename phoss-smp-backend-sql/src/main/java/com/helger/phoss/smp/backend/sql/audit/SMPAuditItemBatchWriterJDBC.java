@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.audit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.state.ESuccess;
+import com.helger.db.api.helper.DBValueHelper;
+import com.helger.phoss.smp.audit.ISMPAuditItemBatchWriter;
+import com.helger.phoss.smp.backend.sql.SMPDBExecutor;
+import com.helger.phoss.smp.backend.sql.SMPDataSourceSingleton;
+import com.helger.photon.audit.IAuditItem;
+
+/**
+ * Writes multiple audit items into the <code>smp_audit</code> table, using a
+ * single JDBC batch inside one transaction. For MySQL the JDBC URL parameter
+ * <code>rewriteBatchedStatements=true</code> lets the driver combine the batch
+ * into a single multi-row INSERT.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPAuditItemBatchWriterJDBC implements ISMPAuditItemBatchWriter
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPAuditItemBatchWriterJDBC.class);
+
+  // Same limits as in AuditorJDBC
+  private static final int MAX_USERID_LENGTH = 20;
+  private static final int MAX_ACTIONTYPE_LENGTH = 10;
+
+  private final String m_sSQL;
+
+  public SMPAuditItemBatchWriterJDBC ()
+  {
+    m_sSQL = "INSERT INTO " +
+             SMPDBExecutor.TABLE_NAME_CUSTOMIZER.apply ("audit") +
+             " (dt, userid, actiontype, success, action) VALUES (?, ?, ?, ?, ?)";
+  }
+
+  @Nonnull
+  public ESuccess writeAuditItems (@Nonnull @Nonempty final List <IAuditItem> aItems)
+  {
+    try (final Connection aConnection = SMPDataSourceSingleton.getInstance ()
+                                                              .getDataSourceProvider ()
+                                                              .getDataSource ()
+                                                              .getConnection ())
+    {
+      // The connection is returned to the pool, so restore the previous state
+      final boolean bOldAutoCommit = aConnection.getAutoCommit ();
+      try
+      {
+        aConnection.setAutoCommit (false);
+        try (final PreparedStatement aPS = aConnection.prepareStatement (m_sSQL))
+        {
+          for (final IAuditItem aItem : aItems)
+          {
+            aPS.setTimestamp (1, DBValueHelper.toTimestamp (aItem.getDateTime ()));
+            aPS.setString (2, DBValueHelper.getTrimmedToLength (aItem.getUserID (), MAX_USERID_LENGTH));
+            aPS.setString (3, DBValueHelper.getTrimmedToLength (aItem.getTypeID (), MAX_ACTIONTYPE_LENGTH));
+            aPS.setBoolean (4, aItem.isSuccess ());
+            aPS.setString (5, aItem.getAction ());
+            aPS.addBatch ();
+          }
+          aPS.executeBatch ();
+          aConnection.commit ();
+          return ESuccess.SUCCESS;
+        }
+        catch (final SQLException ex)
+        {
+          aConnection.rollback ();
+          throw ex;
+        }
+      }
+      finally
+      {
+        aConnection.setAutoCommit (bOldAutoCommit);
+      }
+    }
+    catch (final SQLException ex)
+    {
+      LOGGER.error ("Failed to write " + aItems.size () + " audit item(s) to the database", ex);
+      return ESuccess.FAILURE;
+    }
+  }
+}
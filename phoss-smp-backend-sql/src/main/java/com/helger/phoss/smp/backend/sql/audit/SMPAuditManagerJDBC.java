@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.audit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.db.api.helper.DBValueHelper;
+import com.helger.phoss.smp.audit.ISMPAuditStore;
+import com.helger.phoss.smp.audit.SMPAuditRetentionJob;
+import com.helger.phoss.smp.audit.SMPBatchingAuditor;
+import com.helger.phoss.smp.backend.sql.SMPDBExecutor;
+import com.helger.phoss.smp.backend.sql.SMPDataSourceSingleton;
+import com.helger.photon.audit.AuditItem;
+import com.helger.photon.audit.EAuditActionType;
+import com.helger.photon.audit.IAuditItem;
+import com.helger.photon.audit.IAuditor;
+import com.helger.photon.jdbc.audit.AuditManagerJDBC;
+import com.helger.photon.security.login.LoggedInUserManager;
+
+/**
+ * A special {@link AuditManagerJDBC} that reads from the database like the
+ * base class, but writes the audit items in batches via a
+ * {@link SMPBatchingAuditor}. Additionally it supports range queries and the
+ * deletion of old audit items.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public class SMPAuditManagerJDBC extends AuditManagerJDBC implements ISMPAuditStore
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPAuditManagerJDBC.class);
+
+  /**
+   * The maximum number of IDs covered by a single DELETE statement, to avoid
+   * long running transactions and large undo logs.
+   */
+  public static final int DELETE_CHUNK_SIZE = 10_000;
+
+  private final String m_sTableName;
+  private final SMPBatchingAuditor m_aBatchingAuditor;
+  private final SMPAuditRetentionJob m_aRetentionJob;
+
+  public SMPAuditManagerJDBC ()
+  {
+    super (SMPDBExecutor::new, SMPDBExecutor.TABLE_NAME_CUSTOMIZER, LoggedInUserManager.getInstance ());
+    m_sTableName = SMPDBExecutor.TABLE_NAME_CUSTOMIZER.apply ("audit");
+    m_aBatchingAuditor = SMPBatchingAuditor.createFromConfiguration (LoggedInUserManager.getInstance (),
+                                                                     new SMPAuditItemBatchWriterJDBC ());
+    m_aRetentionJob = SMPAuditRetentionJob.createFromConfigurationOrNull (this);
+  }
+
+  @Override
+  @Nonnull
+  public IAuditor getAuditor ()
+  {
+    return m_aBatchingAuditor;
+  }
+
+  @Nonnull
+  private static Connection _getConnection () throws SQLException
+  {
+    return SMPDataSourceSingleton.getInstance ().getDataSourceProvider ().getDataSource ().getConnection ();
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IAuditItem> getAllAuditItemsInRange (@Nullable final LocalDateTime aFrom,
+                                                            @Nullable final LocalDateTime aTo,
+                                                            @Nonnegative final int nMaxItems)
+  {
+    ValueEnforcer.isGT0 (nMaxItems, "MaxItems");
+
+    final StringBuilder aSQL = new StringBuilder ("SELECT dt, userid, actiontype, success, action FROM ").append (m_sTableName)
+                                                                                                       .append (" WHERE 1=1");
+    if (aFrom != null)
+      aSQL.append (" AND dt >= ?");
+    if (aTo != null)
+      aSQL.append (" AND dt < ?");
+    aSQL.append (" ORDER BY dt DESC");
+
+    final ICommonsList <IAuditItem> ret = new CommonsArrayList <> ();
+    try (final Connection aConnection = _getConnection ();
+         final PreparedStatement aPS = aConnection.prepareStatement (aSQL.toString ()))
+    {
+      // Portable alternative to LIMIT
+      aPS.setMaxRows (nMaxItems);
+      int nIndex = 1;
+      if (aFrom != null)
+        aPS.setTimestamp (nIndex++, DBValueHelper.toTimestamp (aFrom));
+      if (aTo != null)
+        aPS.setTimestamp (nIndex++, DBValueHelper.toTimestamp (aTo));
+      try (final ResultSet aRS = aPS.executeQuery ())
+      {
+        while (aRS.next ())
+        {
+          final Timestamp aDT = aRS.getTimestamp (1);
+          ret.add (new AuditItem (aDT == null ? null : aDT.toLocalDateTime (),
+                                  aRS.getString (2),
+                                  EAuditActionType.getFromIDOrNull (aRS.getString (3)),
+                                  ESuccess.valueOf (aRS.getBoolean (4)),
+                                  aRS.getString (5)));
+        }
+      }
+    }
+    catch (final SQLException ex)
+    {
+      LOGGER.error ("Failed to read audit items from the database", ex);
+    }
+    return ret;
+  }
+
+  /**
+   * Delete all audit items older than the provided date time in chunks of
+   * primary keys. Each chunk is committed separately, to avoid long running
+   * transactions and large undo logs.
+   *
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @param sTableName
+   *        The name of the audit table. May not be <code>null</code>.
+   * @param aDT
+   *        The exclusive upper bound of the items to delete. May not be
+   *        <code>null</code>.
+   * @param nChunkSize
+   *        The number of IDs covered by a single DELETE statement. Must be &gt;
+   *        0.
+   * @return The number of deleted audit items. Always &ge; 0.
+   * @throws SQLException
+   *         On database error. Chunks that were already committed stay
+   *         deleted.
+   */
+  @Nonnegative
+  static long deleteAllAuditItemsBefore (@Nonnull final Connection aConnection,
+                                         @Nonnull final String sTableName,
+                                         @Nonnull final LocalDateTime aDT,
+                                         @Nonnegative final int nChunkSize) throws SQLException
+  {
+    final Timestamp aTS = DBValueHelper.toTimestamp (aDT);
+    // The pooled connections don't auto commit
+    aConnection.setAutoCommit (false);
+    try
+    {
+      // Determine the ID range via the index on dt
+      long nMinID;
+      long nMaxID;
+      try (final PreparedStatement aPS = aConnection.prepareStatement ("SELECT MIN(id), MAX(id) FROM " +
+                                                                       sTableName +
+                                                                       " WHERE dt < ?"))
+      {
+        aPS.setTimestamp (1, aTS);
+        try (final ResultSet aRS = aPS.executeQuery ())
+        {
+          if (!aRS.next ())
+            return 0;
+          nMinID = aRS.getLong (1);
+          if (aRS.wasNull ())
+            return 0;
+          nMaxID = aRS.getLong (2);
+        }
+      }
+
+      long nDeleted = 0;
+      try (final PreparedStatement aPS = aConnection.prepareStatement ("DELETE FROM " +
+                                                                       sTableName +
+                                                                       " WHERE id >= ? AND id < ? AND dt < ?"))
+      {
+        for (long nStart = nMinID; nStart <= nMaxID; nStart += nChunkSize)
+        {
+          aPS.setLong (1, nStart);
+          aPS.setLong (2, nStart + nChunkSize);
+          aPS.setTimestamp (3, aTS);
+          nDeleted += aPS.executeUpdate ();
+          aConnection.commit ();
+        }
+      }
+      return nDeleted;
+    }
+    finally
+    {
+      // Ends the read transaction or discards an uncommitted chunk
+      aConnection.rollback ();
+    }
+  }
+
+  @Nonnegative
+  public long deleteAllAuditItemsBefore (@Nonnull final LocalDateTime aDT)
+  {
+    ValueEnforcer.notNull (aDT, "DT");
+
+    try (final Connection aConnection = _getConnection ())
+    {
+      return deleteAllAuditItemsBefore (aConnection, m_sTableName, aDT, DELETE_CHUNK_SIZE);
+    }
+    catch (final SQLException ex)
+    {
+      LOGGER.error ("Failed to delete audit items before " + aDT + " from the database", ex);
+      return 0;
+    }
+  }
+
+  @Override
+  public void stop ()
+  {
+    if (m_aRetentionJob != null)
+      m_aRetentionJob.close ();
+    // Write all pending items
+    m_aBatchingAuditor.stop ();
+    super.stop ();
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.audit;
+
+import javax.annotation.Nonnull;
+
+import com.helger.phoss.smp.backend.sql.SMPDBExecutor;
+import com.helger.photon.audit.IAuditManager;
+import com.helger.photon.jdbc.PhotonSecurityManagerFactoryJDBC;
+
+/**
+ * A special {@link PhotonSecurityManagerFactoryJDBC} that uses the
+ * {@link SMPAuditManagerJDBC} for batched audit writing.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public class SMPPhotonSecurityManagerFactoryJDBC extends PhotonSecurityManagerFactoryJDBC
+{
+  public SMPPhotonSecurityManagerFactoryJDBC ()
+  {
+    super (SMPDBExecutor::new, SMPDBExecutor.TABLE_NAME_CUSTOMIZER);
+  }
+
+  @Override
+  @Nonnull
+  public IAuditManager createAuditManager ()
+  {
+    return new SMPAuditManagerJDBC ();
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.mgr;
+
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import com.helger.db.jdbc.executor.DBExecutor;
+import com.helger.db.jdbc.mgr.AbstractJDBCEnabledManager;
+import com.helger.phoss.smp.backend.sql.SMPDBExecutor;
+import com.helger.phoss.smp.backend.sql.SMPReadReplicaRouter;
+
+/**
+ * Abstract base class for JDBC managers that serve frequently used read-only
+ * queries, which may be executed on a read replica.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public abstract class AbstractSMPJDBCEnabledManager extends AbstractJDBCEnabledManager
+{
+  protected AbstractSMPJDBCEnabledManager (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier)
+  {
+    super (aDBExecSupplier);
+  }
+
+  /**
+   * Create a new executor for a pure read-only query. Must not be used for
+   * queries that are part of a modification.
+   *
+   * @return A read replica executor if one may be used, the primary executor
+   *         otherwise. Never <code>null</code>.
+   * @see SMPReadReplicaRouter
+   */
+  @Nonnull
+  protected final DBExecutor newReadExecutor ()
+  {
+    final DBExecutor ret = SMPDBExecutor.createReadReplicaExecutorOrNull ();
+    return ret != null ? ret : newExecutor ();
+  }
+}
@@ -44,6 +44,7 @@ import com.helger.phoss.smp.backend.sql.migration.V12__MigrateUserGroupsToDB;
 import com.helger.phoss.smp.backend.sql.migration.V14__MigrateSettingsToDB;
 import com.helger.phoss.smp.backend.sql.migration.V15__MigrateDBUsersToPhotonUsers;
 import com.helger.phoss.smp.backend.sql.migration.V21__MigrateUserTokensToDB;
+import com.helger.phoss.smp.backend.sql.migration.V24__MigrateEndpointCertificatesToStore;
 import com.helger.phoss.smp.backend.sql.migration.V2__MigrateDBUsersToPhotonUsers;
 import com.helger.phoss.smp.backend.sql.migration.V5__MigrateTransportProfilesToDB;
 import com.helger.photon.audit.AuditHelper;
@@ -148,7 +149,8 @@ final class FlywayMigrator
                                   new V12__MigrateUserGroupsToDB (),
                                   new V14__MigrateSettingsToDB (),
                                   new V15__MigrateDBUsersToPhotonUsers (),
-                                  new V21__MigrateUserTokensToDB ());
+                                  new V21__MigrateUserTokensToDB (),
+                                  new V24__MigrateEndpointCertificatesToStore ());
 
     // Callbacks
     aFlywayConfig.callbacks (aCallbackLogging, aCallbackAudit);
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.mgr;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.json.JsonArray;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
+
+/**
+ * The difference between the stored business card entities of a single
+ * participant and the new ones. Entities are matched by ID first. New entities
+ * with an unknown ID are matched against the remaining stored entities by
+ * content (ignoring all IDs), because the REST API creates new IDs for every
+ * upload. Only the rows that really changed are written, using one JDBC batch
+ * per statement type.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+final class SMPBusinessCardEntityDiff
+{
+  /**
+   * A single entity with all columns serialized as they are stored in the
+   * <code>smp_bce</code> table.
+   */
+  private static final class Row
+  {
+    private final SMPBusinessCardEntity m_aEntity;
+    private final String m_sName;
+    private final String m_sNames;
+    private final String m_sIdentifiers;
+    private final String m_sWebsites;
+    private final String m_sContacts;
+
+    Row (@Nonnull final SMPBusinessCardEntity aEntity)
+    {
+      m_aEntity = aEntity;
+      // Single name only
+      if (aEntity.isSingleNameWithoutLanguage ())
+      {
+        m_sName = aEntity.names ().getFirstOrNull ().getName ();
+        m_sNames = null;
+      }
+      else
+      {
+        m_sName = null;
+        m_sNames = aEntity.getNamesAsJson ().getAsJsonString ();
+      }
+      m_sIdentifiers = SMPBusinessCardManagerJDBC.getBCIAsJson (aEntity.identifiers ())
+                                                 .getAsJsonString (SMPBusinessCardManagerJDBC.JWS);
+      m_sWebsites = SMPBusinessCardManagerJDBC.getStringAsJson (aEntity.websiteURIs ())
+                                              .getAsJsonString (SMPBusinessCardManagerJDBC.JWS);
+      m_sContacts = SMPBusinessCardManagerJDBC.getBCCAsJson (aEntity.contacts ())
+                                              .getAsJsonString (SMPBusinessCardManagerJDBC.JWS);
+    }
+
+    @Nonnull
+    String getID ()
+    {
+      return m_aEntity.getID ();
+    }
+
+    boolean isEqualColumns (@Nonnull final Row rhs)
+    {
+      return EqualsHelper.equals (m_sName, rhs.m_sName) &&
+             EqualsHelper.equals (m_sNames, rhs.m_sNames) &&
+             EqualsHelper.equals (m_aEntity.getCountryCode (), rhs.m_aEntity.getCountryCode ()) &&
+             EqualsHelper.equals (m_aEntity.getGeographicalInformation (),
+                                  rhs.m_aEntity.getGeographicalInformation ()) &&
+             m_sIdentifiers.equals (rhs.m_sIdentifiers) &&
+             m_sWebsites.equals (rhs.m_sWebsites) &&
+             m_sContacts.equals (rhs.m_sContacts) &&
+             EqualsHelper.equals (m_aEntity.getAdditionalInformation (), rhs.m_aEntity.getAdditionalInformation ()) &&
+             EqualsHelper.equals (m_aEntity.getRegistrationDate (), rhs.m_aEntity.getRegistrationDate ());
+    }
+
+    /**
+     * @return A key of the content, ignoring the IDs of the entity and of the
+     *         contained identifiers and contacts.
+     */
+    @Nonnull
+    String getContentKey ()
+    {
+      final JsonArray aIdentifiers = new JsonArray ();
+      for (final SMPBusinessCardIdentifier aItem : m_aEntity.identifiers ())
+        aIdentifiers.add (new JsonArray ().add (aItem.getScheme ()).add (aItem.getValue ()));
+      final JsonArray aContacts = new JsonArray ();
+      for (final SMPBusinessCardContact aItem : m_aEntity.contacts ())
+        aContacts.add (new JsonArray ().add (aItem.getType ())
+                                       .add (aItem.getName ())
+                                       .add (aItem.getPhoneNumber ())
+                                       .add (aItem.getEmail ()));
+      return new JsonArray ().add (m_sName)
+                             .add (m_sNames)
+                             .add (m_aEntity.getCountryCode ())
+                             .add (m_aEntity.getGeographicalInformation ())
+                             .add (aIdentifiers)
+                             .add (m_sWebsites)
+                             .add (aContacts)
+                             .add (m_aEntity.getAdditionalInformation ())
+                             .add (String.valueOf (m_aEntity.getRegistrationDate ()))
+                             .getAsJsonString (SMPBusinessCardManagerJDBC.JWS);
+    }
+
+    void setColumnValues (@Nonnull final PreparedStatement aPS, final int nStartIndex) throws SQLException
+    {
+      int nIndex = nStartIndex;
+      aPS.setObject (nIndex++, m_sName);
+      aPS.setObject (nIndex++, m_sNames);
+      aPS.setObject (nIndex++, m_aEntity.getCountryCode ());
+      aPS.setObject (nIndex++, m_aEntity.getGeographicalInformation ());
+      aPS.setObject (nIndex++, m_sIdentifiers);
+      aPS.setObject (nIndex++, m_sWebsites);
+      aPS.setObject (nIndex++, m_sContacts);
+      aPS.setObject (nIndex++, m_aEntity.getAdditionalInformation ());
+      aPS.setObject (nIndex, m_aEntity.getRegistrationDate ());
+    }
+  }
+
+  private final ICommonsList <Row> m_aInserts;
+  private final ICommonsList <Row> m_aUpdates;
+  private final ICommonsList <String> m_aDeleteIDs;
+  private final ICommonsList <SMPBusinessCardEntity> m_aResultEntities;
+
+  private SMPBusinessCardEntityDiff (@Nonnull final ICommonsList <Row> aInserts,
+                                     @Nonnull final ICommonsList <Row> aUpdates,
+                                     @Nonnull final ICommonsList <String> aDeleteIDs,
+                                     @Nonnull final ICommonsList <SMPBusinessCardEntity> aResultEntities)
+  {
+    m_aInserts = aInserts;
+    m_aUpdates = aUpdates;
+    m_aDeleteIDs = aDeleteIDs;
+    m_aResultEntities = aResultEntities;
+  }
+
+  /**
+   * @return <code>true</code> if at least one row must be inserted, updated or
+   *         deleted.
+   */
+  public boolean hasChanges ()
+  {
+    return m_aInserts.isNotEmpty () || m_aUpdates.isNotEmpty () || m_aDeleteIDs.isNotEmpty ();
+  }
+
+  @Nonnegative
+  public int getInsertCount ()
+  {
+    return m_aInserts.size ();
+  }
+
+  @Nonnegative
+  public int getUpdateCount ()
+  {
+    return m_aUpdates.size ();
+  }
+
+  @Nonnegative
+  public int getDeleteCount ()
+  {
+    return m_aDeleteIDs.size ();
+  }
+
+  /**
+   * @return The entities as they are stored after {@link #write(Connection, String)}
+   *         in the order of the new entities. Entities that were matched by
+   *         content keep their stored IDs.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <SMPBusinessCardEntity> getAllResultEntities ()
+  {
+    return m_aResultEntities.getClone ();
+  }
+
+  /**
+   * Write all changes with one JDBC batch per statement type. Transaction
+   * handling is up to the caller.
+   *
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @param sPID
+   *        The URI encoded participant ID. May not be <code>null</code>.
+   * @return The number of executed batches. Always &ge; 0.
+   * @throws SQLException
+   *         On DB error
+   */
+  @Nonnegative
+  public int write (@Nonnull final Connection aConnection, @Nonnull final String sPID) throws SQLException
+  {
+    int nBatches = 0;
+    if (m_aDeleteIDs.isNotEmpty ())
+    {
+      try (final PreparedStatement aPS = aConnection.prepareStatement ("DELETE FROM smp_bce WHERE id=? AND pid=?"))
+      {
+        for (final String sID : m_aDeleteIDs)
+        {
+          aPS.setObject (1, sID);
+          aPS.setObject (2, sPID);
+          aPS.addBatch ();
+        }
+        aPS.executeBatch ();
+        nBatches++;
+      }
+    }
+    if (m_aUpdates.isNotEmpty ())
+    {
+      try (final PreparedStatement aPS = aConnection.prepareStatement ("UPDATE smp_bce" +
+                                                                       " SET name=?, names=?, country=?, geoinfo=?, identifiers=?, websites=?, contacts=?, addon=?, regdate=?" +
+                                                                       " WHERE id=? AND pid=?"))
+      {
+        for (final Row aRow : m_aUpdates)
+        {
+          aRow.setColumnValues (aPS, 1);
+          aPS.setObject (10, aRow.getID ());
+          aPS.setObject (11, sPID);
+          aPS.addBatch ();
+        }
+        aPS.executeBatch ();
+        nBatches++;
+      }
+    }
+    if (m_aInserts.isNotEmpty ())
+    {
+      try (final PreparedStatement aPS = aConnection.prepareStatement ("INSERT INTO smp_bce (id, pid, name, names, country, geoinfo, identifiers, websites, contacts, addon, regdate)" +
+                                                                       " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"))
+      {
+        for (final Row aRow : m_aInserts)
+        {
+          aPS.setObject (1, aRow.getID ());
+          aPS.setObject (2, sPID);
+          aRow.setColumnValues (aPS, 3);
+          aPS.addBatch ();
+        }
+        aPS.executeBatch ();
+        nBatches++;
+      }
+    }
+    return nBatches;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Inserts", m_aInserts.size ())
+                                       .append ("Updates", m_aUpdates.size ())
+                                       .append ("Deletes", m_aDeleteIDs.size ())
+                                       .getToString ();
+  }
+
+  /**
+   * Determine the difference between the stored and the new entities of a
+   * single participant.
+   *
+   * @param aStoredEntities
+   *        The entities currently stored. May not be <code>null</code>.
+   * @param aNewEntities
+   *        The new entities. May not be <code>null</code>.
+   * @return The difference and never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPBusinessCardEntityDiff create (@Nonnull final Collection <SMPBusinessCardEntity> aStoredEntities,
+                                                  @Nonnull final Collection <SMPBusinessCardEntity> aNewEntities)
+  {
+    final ICommonsOrderedMap <String, Row> aStoredByID = new CommonsLinkedHashMap <> ();
+    for (final SMPBusinessCardEntity aEntity : aStoredEntities)
+      aStoredByID.put (aEntity.getID (), new Row (aEntity));
+
+    final ICommonsList <Row> aInserts = new CommonsArrayList <> ();
+    final ICommonsList <Row> aUpdates = new CommonsArrayList <> ();
+    final ICommonsList <SMPBusinessCardEntity> aResultEntities = new CommonsArrayList <> (aNewEntities);
+
+    // Match by ID first
+    final ICommonsList <Row> aUnmatched = new CommonsArrayList <> ();
+    final ICommonsList <Integer> aUnmatchedIndices = new CommonsArrayList <> ();
+    int nIndex = 0;
+    for (final SMPBusinessCardEntity aEntity : aNewEntities)
+    {
+      final Row aNewRow = new Row (aEntity);
+      final Row aStoredRow = aStoredByID.remove (aEntity.getID ());
+      if (aStoredRow == null)
+      {
+        aUnmatched.add (aNewRow);
+        aUnmatchedIndices.add (Integer.valueOf (nIndex));
+      }
+      else
+        if (!aNewRow.isEqualColumns (aStoredRow))
+          aUpdates.add (aNewRow);
+      nIndex++;
+    }
+
+    // Match the rest by content
+    if (aUnmatched.isNotEmpty ())
+    {
+      final ICommonsMap <String, ICommonsList <Row>> aStoredByContent = new CommonsHashMap <> ();
+      for (final Row aStoredRow : aStoredByID.values ())
+        aStoredByContent.computeIfAbsent (aStoredRow.getContentKey (), k -> new CommonsArrayList <> ())
+                        .add (aStoredRow);
+
+      for (int i = 0; i < aUnmatched.size (); ++i)
+      {
+        final Row aNewRow = aUnmatched.get (i);
+        final ICommonsList <Row> aCandidates = aStoredByContent.isEmpty () ? null
+                                                                            : aStoredByContent.get (aNewRow.getContentKey ());
+        if (aCandidates != null && aCandidates.isNotEmpty ())
+        {
+          // Keep the stored row and its IDs
+          final Row aStoredRow = aCandidates.remove (0);
+          aStoredByID.remove (aStoredRow.getID ());
+          aResultEntities.set (aUnmatchedIndices.get (i).intValue (), aStoredRow.m_aEntity);
+        }
+        else
+          aInserts.add (aNewRow);
+      }
+    }
+
+    return new SMPBusinessCardEntityDiff (aInserts,
+                                          aUpdates,
+                                          new CommonsArrayList <> (aStoredByID.keySet ()),
+                                          aResultEntities);
+  }
+}
@@ -16,6 +16,12 @@
  */
 package com.helger.phoss.smp.backend.sql.mgr;
 
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -38,15 +44,14 @@ import com.helger.commons.collection.impl.CommonsHashSet;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.collection.impl.ICommonsSet;
-import com.helger.commons.mutable.MutableBoolean;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.EContinue;
-import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
+import com.helger.db.jdbc.IHasConnection;
 import com.helger.db.jdbc.callback.ConstantPreparedStatementDataProvider;
 import com.helger.db.jdbc.executor.DBExecutor;
+import com.helger.db.jdbc.executor.DBNoConnectionException;
 import com.helger.db.jdbc.executor.DBResultRow;
-import com.helger.db.jdbc.mgr.AbstractJDBCEnabledManager;
 import com.helger.json.IJson;
 import com.helger.json.IJsonArray;
 import com.helger.json.IJsonObject;
@@ -57,6 +62,8 @@ import com.helger.json.serialize.JsonReader;
 import com.helger.json.serialize.JsonWriterSettings;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.backend.sql.SMPReadReplicaRouter;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
@@ -66,6 +73,7 @@ import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
 import com.helger.photon.audit.AuditHelper;
 
 /**
@@ -74,14 +82,15 @@ import com.helger.photon.audit.AuditHelper;
  * @author Philip Helger
  * @since 9.2.4
  */
-public final class SMPBusinessCardManagerJDBC extends AbstractJDBCEnabledManager implements ISMPBusinessCardManager
+public final class SMPBusinessCardManagerJDBC extends AbstractSMPJDBCEnabledManager implements ISMPBusinessCardManager
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (SMPBusinessCardManagerJDBC.class);
 
   // Create with as minimal output as possible
-  private static final IJsonWriterSettings JWS = JsonWriterSettings.DEFAULT_SETTINGS;
+  static final IJsonWriterSettings JWS = JsonWriterSettings.DEFAULT_SETTINGS;
 
   private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+  private final SMPBusinessCardSearchIndex m_aSearchIndex;
 
   /**
    * Constructor
@@ -93,6 +102,10 @@ public final class SMPBusinessCardManagerJDBC extends AbstractJDBCEnabledManager
   public SMPBusinessCardManagerJDBC (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier)
   {
     super (aDBExecSupplier);
+    m_aSearchIndex = SMPServerConfiguration.isBusinessCardSearchIndexEnabled () ? new SMPBusinessCardSearchIndex (this)
+                                                                                : null;
+    if (m_aSearchIndex != null)
+      m_aCBs.add (m_aSearchIndex);
   }
 
   @Nonnull
@@ -199,77 +212,102 @@ public final class SMPBusinessCardManagerJDBC extends AbstractJDBCEnabledManager
                     " entities" +
                     ")");
 
-    final MutableBoolean aUpdated = new MutableBoolean (false);
-    final DBExecutor aExecutor = newExecutor ();
-    final ESuccess eSucces = aExecutor.performInTransaction ( () -> {
-      // Delete all existing entities
-      final String sPID = aParticipantID.getURIEncoded ();
-      final long nDeleted = aExecutor.insertOrUpdateOrDelete ("DELETE FROM smp_bce" + " WHERE pid=?",
-                                                              new ConstantPreparedStatementDataProvider (sPID));
-      if (nDeleted > 0)
-      {
-        aUpdated.set (true);
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.info ("Deleted " + nDeleted + " existing DBBusinessCardEntity rows");
-      }
-
-      for (final SMPBusinessCardEntity aEntity : aEntities)
+    final String sPID = aParticipantID.getURIEncoded ();
+    final ICommonsList <SMPBusinessCardEntity> aStoredEntities = new CommonsArrayList <> ();
+    SMPBusinessCardEntityDiff aDiff = null;
+    int nBatches = 0;
+    try
+    {
+      final IHasConnection aConnectionProvider = newExecutor ().getConnectionProvider ();
+      final Connection aConnection = aConnectionProvider.getConnection ();
+      final boolean bOldAutoCommit = aConnection.getAutoCommit ();
+      try
       {
-        // Single name only
-        final String sName;
-        final String sNames;
-        if (aEntity.isSingleNameWithoutLanguage ())
+        aConnection.setAutoCommit (false);
+        try
         {
-          sName = aEntity.names ().getFirstOrNull ().getName ();
-          sNames = null;
+          // Read the existing rows in the same transaction
+          try (final PreparedStatement aPS = aConnection.prepareStatement ("SELECT id, name, names, country, geoinfo, identifiers, websites, contacts, addon, regdate" +
+                                                                           " FROM smp_bce" +
+                                                                           " WHERE pid=?"))
+          {
+            aPS.setObject (1, sPID);
+            try (final ResultSet aRS = aPS.executeQuery ())
+            {
+              while (aRS.next ())
+              {
+                final Date aRegDate = aRS.getDate (10);
+                aStoredEntities.add (_createEntity (aRS.getString (1),
+                                                    aRS.getString (2),
+                                                    aRS.getString (3),
+                                                    aRS.getString (4),
+                                                    aRS.getString (5),
+                                                    aRS.getString (6),
+                                                    aRS.getString (7),
+                                                    aRS.getString (8),
+                                                    aRS.getString (9),
+                                                    aRegDate == null ? null : aRegDate.toLocalDate ()));
+              }
+            }
+          }
+
+          // Write only the changed rows
+          aDiff = SMPBusinessCardEntityDiff.create (aStoredEntities, aEntities);
+          if (aDiff.hasChanges ())
+          {
+            SMPReadReplicaRouter.onWrite ();
+            nBatches = aDiff.write (aConnection, sPID);
+          }
+          aConnection.commit ();
         }
-        else
+        catch (final SQLException ex)
         {
-          sName = null;
-          sNames = aEntity.getNamesAsJson ().getAsJsonString ();
+          aConnection.rollback ();
+          throw ex;
         }
-        aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_bce (id, pid, name, names, country, geoinfo, identifiers, websites, contacts, addon, regdate)" +
-                                          " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-                                          new ConstantPreparedStatementDataProvider (aEntity.getID (),
-                                                                                     sPID,
-                                                                                     sName,
-                                                                                     sNames,
-                                                                                     aEntity.getCountryCode (),
-                                                                                     aEntity.getGeographicalInformation (),
-                                                                                     getBCIAsJson (aEntity.identifiers ()).getAsJsonString (JWS),
-                                                                                     getStringAsJson (aEntity.websiteURIs ()).getAsJsonString (JWS),
-                                                                                     getBCCAsJson (aEntity.contacts ()).getAsJsonString (JWS),
-                                                                                     aEntity.getAdditionalInformation (),
-                                                                                     aEntity.getRegistrationDate ()));
       }
-    });
-    if (eSucces.isFailure ())
+      finally
+      {
+        if (aConnectionProvider.shouldCloseConnection ())
+          aConnection.close ();
+        else
+          aConnection.setAutoCommit (bOldAutoCommit);
+      }
+    }
+    catch (final SQLException | DBNoConnectionException ex)
     {
-      if (aUpdated.booleanValue ())
-        AuditHelper.onAuditModifyFailure (SMPBusinessCard.OT, "set-all", aParticipantID.getURIEncoded ());
+      LOGGER.error ("Failed to write the Business Card of '" + sPID + "' to the database", ex);
+      if (aStoredEntities.isNotEmpty ())
+        AuditHelper.onAuditModifyFailure (SMPBusinessCard.OT, "set-all", sPID);
       else
-        AuditHelper.onAuditCreateFailure (SMPBusinessCard.OT, aParticipantID.getURIEncoded ());
+        AuditHelper.onAuditCreateFailure (SMPBusinessCard.OT, sPID);
 
       return null;
     }
 
-    final SMPBusinessCard aNewBusinessCard = new SMPBusinessCard (aParticipantID, aEntities);
+    final SMPBusinessCard aNewBusinessCard = new SMPBusinessCard (aParticipantID, aDiff.getAllResultEntities ());
+
+    if (!aDiff.hasChanges ())
+    {
+      // Nothing was written - no audit and no callbacks
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Finished createOrUpdateSMPBusinessCard - no changes");
+      return aNewBusinessCard;
+    }
 
     if (LOGGER.isDebugEnabled ())
-      LOGGER.debug ("Finished createOrUpdateSMPBusinessCard");
+      LOGGER.debug ("Finished createOrUpdateSMPBusinessCard - " + aDiff + " in " + nBatches + " batch(es)");
 
-    if (aUpdated.booleanValue ())
+    if (aStoredEntities.isNotEmpty ())
     {
       AuditHelper.onAuditModifySuccess (SMPBusinessCard.OT,
                                         "set-all",
-                                        aParticipantID.getURIEncoded (),
+                                        sPID,
                                         Integer.valueOf (aEntities.size ()));
     }
     else
     {
-      AuditHelper.onAuditCreateSuccess (SMPBusinessCard.OT,
-                                        aParticipantID.getURIEncoded (),
-                                        Integer.valueOf (aEntities.size ()));
+      AuditHelper.onAuditCreateSuccess (SMPBusinessCard.OT, sPID, Integer.valueOf (aEntities.size ()));
     }
 
     // Invoke generic callbacks
@@ -344,6 +382,31 @@ public final class SMPBusinessCardManagerJDBC extends AbstractJDBCEnabledManager
     return EContinue.CONTINUE;
   }
 
+  @Nonnull
+  private static SMPBusinessCardEntity _createEntity (@Nonnull final String sID,
+                                                      @Nullable final String sName,
+                                                      @Nullable final String sNames,
+                                                      @Nullable final String sCountryCode,
+                                                      @Nullable final String sGeoInfo,
+                                                      @Nullable final String sIdentifiers,
+                                                      @Nullable final String sWebsites,
+                                                      @Nullable final String sContacts,
+                                                      @Nullable final String sAdditionalInfo,
+                                                      @Nullable final LocalDate aRegDate)
+  {
+    final SMPBusinessCardEntity aEntity = new SMPBusinessCardEntity (sID);
+    // Single name or multiple names?
+    _addNames (aEntity, sName, sNames);
+    aEntity.setCountryCode (sCountryCode);
+    aEntity.setGeographicalInformation (sGeoInfo);
+    aEntity.identifiers ().setAll (getJsonAsBCI (sIdentifiers));
+    aEntity.websiteURIs ().setAll (getJsonAsString (sWebsites));
+    aEntity.contacts ().setAll (getJsonAsBCC (sContacts));
+    aEntity.setAdditionalInformation (sAdditionalInfo);
+    aEntity.setRegistrationDate (aRegDate);
+    return aEntity;
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPBusinessCard> getAllSMPBusinessCards ()
@@ -359,7 +422,6 @@ public final class SMPBusinessCardManagerJDBC extends AbstractJDBCEnabledManager
       final ICommonsMap <IParticipantIdentifier, ICommonsList <SMPBusinessCardEntity>> aEntityMap = new CommonsHashMap <> ();
       for (final DBResultRow aRow : aDBResult)
       {
-        final SMPBusinessCardEntity aEntity = new SMPBusinessCardEntity (aRow.getAsString (0));
         final String sPID = aRow.getAsString (1);
         final IParticipantIdentifier aPID = aIF.parseParticipantIdentifier (sPID);
         if (aPID == null)
@@ -370,17 +432,16 @@ public final class SMPBusinessCardManagerJDBC extends AbstractJDBCEnabledManager
           continue;
         }
 
-        // Single name or multiple names?
-        final String sName = aRow.getAsString (2);
-        final String sNames = aRow.getAsString (3);
-        _addNames (aEntity, sName, sNames);
-        aEntity.setCountryCode (aRow.getAsString (4));
-        aEntity.setGeographicalInformation (aRow.getAsString (5));
-        aEntity.identifiers ().setAll (getJsonAsBCI (aRow.getAsString (6)));
-        aEntity.websiteURIs ().setAll (getJsonAsString (aRow.getAsString (7)));
-        aEntity.contacts ().setAll (getJsonAsBCC (aRow.getAsString (8)));
-        aEntity.setAdditionalInformation (aRow.getAsString (9));
-        aEntity.setRegistrationDate (aRow.get (10).getAsLocalDate ());
+        final SMPBusinessCardEntity aEntity = _createEntity (aRow.getAsString (0),
+                                                             aRow.getAsString (2),
+                                                             aRow.getAsString (3),
+                                                             aRow.getAsString (4),
+                                                             aRow.getAsString (5),
+                                                             aRow.getAsString (6),
+                                                             aRow.getAsString (7),
+                                                             aRow.getAsString (8),
+                                                             aRow.getAsString (9),
+                                                             aRow.get (10).getAsLocalDate ());
         aEntityMap.computeIfAbsent (aPID, k -> new CommonsArrayList <> ()).add (aEntity);
       }
 
@@ -407,15 +468,16 @@ public final class SMPBusinessCardManagerJDBC extends AbstractJDBCEnabledManager
   }
 
   @Nullable
-  public ISMPBusinessCard getSMPBusinessCardOfID (@Nullable final IParticipantIdentifier aID)
+  private static ISMPBusinessCard _getSMPBusinessCardOfID (@Nonnull final DBExecutor aExecutor,
+                                                           @Nullable final IParticipantIdentifier aID)
   {
     if (aID == null)
       return null;
 
-    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT id, name, names, country, geoinfo, identifiers, websites, contacts, addon, regdate" +
-                                                                          " FROM smp_bce" +
-                                                                          " WHERE pid=?",
-                                                                          new ConstantPreparedStatementDataProvider (aID.getURIEncoded ()));
+    final ICommonsList <DBResultRow> aDBResult = aExecutor.queryAll ("SELECT id, name, names, country, geoinfo, identifiers, websites, contacts, addon, regdate" +
+                                                                     " FROM smp_bce" +
+                                                                     " WHERE pid=?",
+                                                                     new ConstantPreparedStatementDataProvider (aID.getURIEncoded ()));
     if (aDBResult == null)
       return null;
 
@@ -425,25 +487,43 @@ public final class SMPBusinessCardManagerJDBC extends AbstractJDBCEnabledManager
     final ICommonsList <SMPBusinessCardEntity> aEntities = new CommonsArrayList <> ();
     for (final DBResultRow aRow : aDBResult)
     {
-      final SMPBusinessCardEntity aEntity = new SMPBusinessCardEntity (aRow.getAsString (0));
-      final String sName = aRow.getAsString (1);
-      final String sNames = aRow.getAsString (2);
-      _addNames (aEntity, sName, sNames);
-      aEntity.setCountryCode (aRow.getAsString (3));
-      aEntity.setGeographicalInformation (aRow.getAsString (4));
-      aEntity.identifiers ().setAll (getJsonAsBCI (aRow.getAsString (5)));
-      aEntity.websiteURIs ().setAll (getJsonAsString (aRow.getAsString (6)));
-      aEntity.contacts ().setAll (getJsonAsBCC (aRow.getAsString (7)));
-      aEntity.setAdditionalInformation (aRow.getAsString (8));
-      aEntity.setRegistrationDate (aRow.get (9).getAsLocalDate ());
-      aEntities.add (aEntity);
+      aEntities.add (_createEntity (aRow.getAsString (0),
+                                    aRow.getAsString (1),
+                                    aRow.getAsString (2),
+                                    aRow.getAsString (3),
+                                    aRow.getAsString (4),
+                                    aRow.getAsString (5),
+                                    aRow.getAsString (6),
+                                    aRow.getAsString (7),
+                                    aRow.getAsString (8),
+                                    aRow.get (9).getAsLocalDate ()));
     }
     return new SMPBusinessCard (aID, aEntities);
   }
 
+  @Nullable
+  public ISMPBusinessCard getSMPBusinessCardOfID (@Nullable final IParticipantIdentifier aID)
+  {
+    return _getSMPBusinessCardOfID (newReadExecutor (), aID);
+  }
+
+  @Override
+  @Nullable
+  public ISMPBusinessCard getLatestSMPBusinessCardOfID (@Nullable final IParticipantIdentifier aID)
+  {
+    // Never from a read replica
+    return _getSMPBusinessCardOfID (newExecutor (), aID);
+  }
+
   @Nonnegative
   public long getSMPBusinessCardCount ()
   {
     return newExecutor ().queryCount ("SELECT COUNT (DISTINCT pid) FROM smp_bce");
   }
+
+  @Nullable
+  public SMPBusinessCardSearchIndex getSearchIndex ()
+  {
+    return m_aSearchIndex;
+  }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.mgr;
+
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+import com.helger.db.api.helper.DBValueHelper;
+import com.helger.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.helger.db.jdbc.executor.DBExecutor;
+import com.helger.db.jdbc.executor.DBResultRow;
+import com.helger.db.jdbc.mgr.AbstractJDBCEnabledManager;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterChangeType;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventStore;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+
+/**
+ * A JDBC based implementation of the {@link ISMPClusterEventStore} interface.
+ * Reads are always performed on the primary database, because events from
+ * read replicas may be outdated.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public final class SMPClusterEventStoreJDBC extends AbstractJDBCEnabledManager implements ISMPClusterEventStore
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPClusterEventStoreJDBC.class);
+
+  /**
+   * Constructor
+   *
+   * @param aDBExecSupplier
+   *        The supplier for {@link DBExecutor} objects. May not be
+   *        <code>null</code>.
+   */
+  public SMPClusterEventStoreJDBC (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier)
+  {
+    super (aDBExecSupplier);
+  }
+
+  @Nonnull
+  public ESuccess appendEvent (@Nonnull final SMPClusterEvent aEvent)
+  {
+    ValueEnforcer.notNull (aEvent, "Event");
+
+    final long nCreated = newExecutor ().insertOrUpdateOrDelete ("INSERT INTO smp_cluster_event (id, dt, nodeid, objtype, changetype, sgid, objid)" +
+                                                                 " VALUES (?, ?, ?, ?, ?, ?, ?)",
+                                                                 new ConstantPreparedStatementDataProvider (aEvent.getID (),
+                                                                                                            DBValueHelper.toTimestamp (aEvent.getDateTime ()),
+                                                                                                            aEvent.getNodeID (),
+                                                                                                            aEvent.getObjectType ()
+                                                                                                                  .getID (),
+                                                                                                            aEvent.getChangeType ()
+                                                                                                                  .getID (),
+                                                                                                            aEvent.getServiceGroupID (),
+                                                                                                            aEvent.getObjectID ()));
+    return ESuccess.valueOf (nCreated == 1);
+  }
+
+  @Nullable
+  @ReturnsMutableCopy
+  public ICommonsList <SMPClusterEvent> getAllEventsSince (@Nonnull final LocalDateTime aSince)
+  {
+    ValueEnforcer.notNull (aSince, "Since");
+
+    final ICommonsList <SMPClusterEvent> ret = new CommonsArrayList <> ();
+    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT id, dt, nodeid, objtype, changetype, sgid, objid" +
+                                                                          " FROM smp_cluster_event WHERE dt>=? ORDER BY dt",
+                                                                          new ConstantPreparedStatementDataProvider (DBValueHelper.toTimestamp (aSince)));
+    if (aDBResult == null)
+      return null;
+
+    for (final DBResultRow aRow : aDBResult)
+    {
+      final ESMPClusterObjectType eObjectType = ESMPClusterObjectType.getFromIDOrNull (aRow.getAsString (3));
+      final ESMPClusterChangeType eChangeType = ESMPClusterChangeType.getFromIDOrNull (aRow.getAsString (4));
+      if (eObjectType == null || eChangeType == null)
+      {
+        // Created by a newer version
+        LOGGER.warn ("Ignoring cluster event '" + aRow.getAsString (0) + "' with unknown type");
+        continue;
+      }
+      ret.add (new SMPClusterEvent (aRow.getAsString (0),
+                                    aRow.getAsLocalDateTime (1),
+                                    aRow.getAsString (2),
+                                    eObjectType,
+                                    eChangeType,
+                                    aRow.getAsString (5),
+                                    aRow.getAsString (6)));
+    }
+    return ret;
+  }
+
+  @Nonnegative
+  public long deleteAllEventsBefore (@Nonnull final LocalDateTime aBefore)
+  {
+    ValueEnforcer.notNull (aBefore, "Before");
+
+    final long nDeleted = newExecutor ().insertOrUpdateOrDelete ("DELETE FROM smp_cluster_event WHERE dt<?",
+                                                                 new ConstantPreparedStatementDataProvider (DBValueHelper.toTimestamp (aBefore)));
+    return Math.max (0, nDeleted);
+  }
+}
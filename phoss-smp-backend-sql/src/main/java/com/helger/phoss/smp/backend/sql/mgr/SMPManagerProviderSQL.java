@@ -32,9 +32,12 @@ import com.helger.phoss.smp.backend.sql.SMPDBExecutor;
 import com.helger.phoss.smp.backend.sql.SMPDataSourceSingleton;
 import com.helger.phoss.smp.backend.sql.SMPFlywayConfiguration;
 import com.helger.phoss.smp.backend.sql.SMPJDBCConfiguration;
+import com.helger.phoss.smp.backend.sql.SMPQueryPlanChecker;
+import com.helger.phoss.smp.backend.sql.audit.SMPPhotonSecurityManagerFactoryJDBC;
 import com.helger.phoss.smp.domain.ISMPManagerProvider;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventStore;
 import com.helger.phoss.smp.domain.pmigration.ISMPParticipantMigrationManager;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
@@ -43,7 +46,7 @@ import com.helger.phoss.smp.domain.sml.ISMLInfoManager;
 import com.helger.phoss.smp.domain.sml.SMLInfoManagerXML;
 import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
 import com.helger.phoss.smp.settings.ISMPSettingsManager;
-import com.helger.photon.jdbc.PhotonSecurityManagerFactoryJDBC;
+import com.helger.photon.security.mgr.PhotonSecurityManager;
 
 /**
  * A JDBC based implementation of the {@link ISMPManagerProvider} interface.
@@ -69,7 +72,8 @@ public final class SMPManagerProviderSQL implements ISMPManagerProvider
   {
     // Set the special PhotonSecurityManager factory
     // Must be before Flyway, so that auditing of Flyway actions (may) work
-    PhotonSecurityManagerFactoryJDBC.install (SMPDBExecutor::new, SMPDBExecutor.TABLE_NAME_CUSTOMIZER);
+    PhotonSecurityManager.setFactory (new SMPPhotonSecurityManagerFactoryJDBC ());
+    PhotonSecurityManager.getInstance ();
 
     // Flyway migration is enabled by default
     if (SMPFlywayConfiguration.isFlywayEnabled ())
@@ -88,6 +92,14 @@ public final class SMPManagerProviderSQL implements ISMPManagerProvider
                   .setBackendConnectionStateChangeCallback (eNew -> DBExecutor.resetConnectionEstablished ());
   }
 
+  @Override
+  public void afterInitManagers ()
+  {
+    // Check that the indexes of the frequently used queries are present
+    if (SMPJDBCConfiguration.isJdbcQueryPlanCheckEnabled ())
+      SMPQueryPlanChecker.runCheck (m_eDBType);
+  }
+
   @Nonnull
   public ETriState getBackendConnectionEstablishedDefaultState ()
   {
@@ -125,7 +137,8 @@ public final class SMPManagerProviderSQL implements ISMPManagerProvider
   {
     final SMPServiceGroupManagerJDBC ret = new SMPServiceGroupManagerJDBC (SMPDBExecutor::new);
     // Enable cache by default
-    ret.setCacheEnabled (SMPJDBCConfiguration.isJdbcServiceGroupCacheEnabled ());
+    ret.setCacheEnabled (SMPJDBCConfiguration.isJdbcServiceGroupCacheEnabled (),
+                         SMPJDBCConfiguration.getJdbcServiceGroupCacheTTLSeconds ());
     return ret;
   }
 
@@ -156,6 +169,13 @@ public final class SMPManagerProviderSQL implements ISMPManagerProvider
     return new SMPBusinessCardManagerJDBC (SMPDBExecutor::new);
   }
 
+  @Override
+  @Nonnull
+  public ISMPClusterEventStore createClusterEventStore ()
+  {
+    return new SMPClusterEventStoreJDBC (SMPDBExecutor::new);
+  }
+
   @Override
   public String toString ()
   {
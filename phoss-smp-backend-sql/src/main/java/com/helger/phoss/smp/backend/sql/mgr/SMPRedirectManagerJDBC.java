@@ -40,7 +40,6 @@ import com.helger.commons.wrapper.Wrapper;
 import com.helger.db.jdbc.callback.ConstantPreparedStatementDataProvider;
 import com.helger.db.jdbc.executor.DBExecutor;
 import com.helger.db.jdbc.executor.DBResultRow;
-import com.helger.db.jdbc.mgr.AbstractJDBCEnabledManager;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
@@ -60,7 +59,7 @@ import com.helger.security.certificate.CertificateHelper;
  * @author Philip Helger
  * @since 9.2.4
  */
-public final class SMPRedirectManagerJDBC extends AbstractJDBCEnabledManager implements ISMPRedirectManager
+public final class SMPRedirectManagerJDBC extends AbstractSMPJDBCEnabledManager implements ISMPRedirectManager
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (SMPRedirectManagerJDBC.class);
 
@@ -327,14 +326,14 @@ public final class SMPRedirectManagerJDBC extends AbstractJDBCEnabledManager imp
 
     final IParticipantIdentifier aParticipantID = aServiceGroup.getParticipantIdentifier ();
     final Wrapper <DBResultRow> aDBResult = new Wrapper <> ();
-    newExecutor ().querySingle ("SELECT redirectionUrl, certificateUID, certificate, extension" +
-                                " FROM smp_service_metadata_red" +
-                                " WHERE businessIdentifierScheme=? AND businessIdentifier=? AND documentIdentifierScheme=? and documentIdentifier=?",
-                                new ConstantPreparedStatementDataProvider (aParticipantID.getScheme (),
-                                                                           aParticipantID.getValue (),
-                                                                           aDocTypeID.getScheme (),
-                                                                           aDocTypeID.getValue ()),
-                                aDBResult::set);
+    newReadExecutor ().querySingle ("SELECT redirectionUrl, certificateUID, certificate, extension" +
+                                    " FROM smp_service_metadata_red" +
+                                    " WHERE businessIdentifierScheme=? AND businessIdentifier=? AND documentIdentifierScheme=? and documentIdentifier=?",
+                                    new ConstantPreparedStatementDataProvider (aParticipantID.getScheme (),
+                                                                               aParticipantID.getValue (),
+                                                                               aDocTypeID.getScheme (),
+                                                                               aDocTypeID.getValue ()),
+                                    aDBResult::set);
     if (aDBResult.isNotSet ())
       return null;
 
@@ -16,6 +16,7 @@
  */
 package com.helger.phoss.smp.backend.sql.mgr;
 
+import java.time.LocalDateTime;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -42,17 +43,27 @@ import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.wrapper.Wrapper;
+import com.helger.db.api.helper.DBValueHelper;
 import com.helger.db.jdbc.callback.ConstantPreparedStatementDataProvider;
 import com.helger.db.jdbc.executor.DBExecutor;
 import com.helger.db.jdbc.executor.DBResultRow;
-import com.helger.db.jdbc.mgr.AbstractJDBCEnabledManager;
 import com.helger.peppolid.CIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.phoss.smp.backend.sql.EDatabaseType;
+import com.helger.phoss.smp.backend.sql.SMPDataSourceSingleton;
+import com.helger.phoss.smp.backend.sql.SMPJDBCConfiguration;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventCallback;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPage;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 import com.helger.phoss.smp.exception.SMPInternalErrorException;
 import com.helger.phoss.smp.exception.SMPNotFoundException;
 import com.helger.phoss.smp.exception.SMPSMLException;
@@ -71,13 +82,15 @@ import net.jodah.expiringmap.ExpiringMap;
  * @author Philip Helger
  * @since 5.3.0
  */
-public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager implements ISMPServiceGroupManager
+public final class SMPServiceGroupManagerJDBC extends AbstractSMPJDBCEnabledManager implements
+                                              ISMPServiceGroupManager,
+                                              ISMPClusterEventCallback
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (SMPServiceGroupManagerJDBC.class);
 
   private final CallbackList <ISMPServiceGroupCallback> m_aCBs = new CallbackList <> ();
 
-  private ExpiringMap <String, SMPServiceGroup> m_aCache;
+  private volatile ExpiringMap <String, SMPServiceGroup> m_aCache;
 
   /**
    * Constructor
@@ -98,15 +111,40 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
 
   public void setCacheEnabled (final boolean bEnabled)
   {
+    setCacheEnabled (bEnabled, SMPJDBCConfiguration.DEFAULT_JDBC_CACHE_SG_TTL_SECONDS);
+  }
+
+  /**
+   * Enable or disable the service group cache.
+   *
+   * @param bEnabled
+   *        <code>true</code> to enable the cache, <code>false</code> to
+   *        disable it.
+   * @param nTTLSeconds
+   *        The number of seconds after which a cached service group is read
+   *        again from the database. Must be &gt; 0.
+   * @since 7.1.4
+   */
+  public void setCacheEnabled (final boolean bEnabled, @Nonnegative final long nTTLSeconds)
+  {
+    ValueEnforcer.isGT0 (nTTLSeconds, "TTLSeconds");
     if (bEnabled)
       m_aCache = ExpiringMap.builder ()
-                            .expiration (60, TimeUnit.SECONDS)
+                            .expiration (nTTLSeconds, TimeUnit.SECONDS)
                             .expirationPolicy (ExpirationPolicy.CREATED)
                             .build ();
     else
       m_aCache = null;
   }
 
+  public void onSMPClusterEvent (@Nonnull final SMPClusterEvent aEvent)
+  {
+    // Only the service groups are cached
+    final ExpiringMap <String, SMPServiceGroup> aCache = m_aCache;
+    if (aCache != null && aEvent.getObjectType () == ESMPClusterObjectType.SERVICE_GROUP)
+      aCache.remove (aEvent.getServiceGroupID ());
+  }
+
   @Nonnull
   @ReturnsMutableObject
   public CallbackList <ISMPServiceGroupCallback> serviceGroupCallbacks ()
@@ -137,6 +175,7 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
     final MutableBoolean aCreatedSGDB = new MutableBoolean (false);
     final IRegistrationHook aHook = RegistrationHookFactory.getInstance ();
     final Wrapper <Exception> aCaughtException = new Wrapper <> ();
+    final LocalDateTime aLastModDT = ISMPHasLastModification.getNextLastModificationDateTime (null);
 
     final DBExecutor aExecutor = newExecutor ();
     final ESuccess eSuccess = aExecutor.performInTransaction ( () -> {
@@ -156,10 +195,11 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
       }
 
       // Did not exist. Create it.
-      if (aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_service_group (businessIdentifierScheme, businessIdentifier, extension) VALUES (?, ?, ?)",
+      if (aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_service_group (businessIdentifierScheme, businessIdentifier, extension, lastmoddt) VALUES (?, ?, ?, ?)",
                                             new ConstantPreparedStatementDataProvider (aParticipantID.getScheme (),
                                                                                        aParticipantID.getValue (),
-                                                                                       sExtension)) > 0)
+                                                                                       sExtension,
+                                                                                       DBValueHelper.toTimestamp (aLastModDT))) > 0)
       {
         aCreatedSGDB.set (true);
         aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_ownership (businessIdentifierScheme, businessIdentifier, username) VALUES (?, ?, ?)",
@@ -210,6 +250,7 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
                                       Boolean.valueOf (bCreateInSML));
 
     final SMPServiceGroup aServiceGroup = new SMPServiceGroup (sOwnerID, aParticipantID, sExtension);
+    aServiceGroup.setLastModificationDateTime (aLastModDT);
     if (m_aCache != null)
       m_aCache.put (aParticipantID.getURIEncoded (), aServiceGroup);
 
@@ -272,6 +313,18 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
           throw new IllegalStateException ("Failed to update the service_group extension to '" + sNewExtension + "'");
         aWrappedChange.set (EChange.CHANGED);
       }
+
+      if (aWrappedChange.get ().isChanged ())
+      {
+        // Update last modification
+        final LocalDateTime aLastModDT = ISMPHasLastModification.getNextLastModificationDateTime (aDBServiceGroup.getLastModificationDateTime ());
+        aExecutor.insertOrUpdateOrDelete ("UPDATE smp_service_group SET lastmoddt=? WHERE businessIdentifierScheme=? AND businessIdentifier=?",
+                                          new ConstantPreparedStatementDataProvider (DBValueHelper.toTimestamp (aLastModDT),
+                                                                                     aDBServiceGroup.getParticipantIdentifier ()
+                                                                                                    .getScheme (),
+                                                                                     aDBServiceGroup.getParticipantIdentifier ()
+                                                                                                    .getValue ()));
+      }
     }, aCaughtException::set);
 
     if (eSuccess.isFailure () || aCaughtException.isSet ())
@@ -301,7 +354,12 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
 
     // Callback only if something changed
     if (eChange.isChanged ())
+    {
+      // Reload on next access
+      if (m_aCache != null)
+        m_aCache.remove (aParticipantID.getURIEncoded ());
       m_aCBs.forEach (x -> x.onSMPServiceGroupUpdated (aParticipantID));
+    }
 
     return eChange;
   }
@@ -398,16 +456,21 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("getAllSMPServiceGroups()");
 
-    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT sg.businessIdentifierScheme, sg.businessIdentifier, sg.extension, so.username" +
+    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT sg.businessIdentifierScheme, sg.businessIdentifier, sg.extension, so.username, sg.lastmoddt" +
                                                                           " FROM smp_service_group sg, smp_ownership so" +
                                                                           " WHERE so.businessIdentifierScheme=sg.businessIdentifierScheme AND so.businessIdentifier=sg.businessIdentifier");
 
     final ICommonsList <ISMPServiceGroup> ret = new CommonsArrayList <> ();
     if (aDBResult != null)
       for (final DBResultRow aRow : aDBResult)
-        ret.add (new SMPServiceGroup (aRow.getAsString (3),
-                                      new SimpleParticipantIdentifier (aRow.getAsString (0), aRow.getAsString (1)),
-                                      aRow.getAsString (2)));
+      {
+        final SMPServiceGroup aServiceGroup = new SMPServiceGroup (aRow.getAsString (3),
+                                                                   new SimpleParticipantIdentifier (aRow.getAsString (0),
+                                                                                                    aRow.getAsString (1)),
+                                                                   aRow.getAsString (2));
+        aServiceGroup.setLastModificationDateTime (aRow.getAsLocalDateTime (4));
+        ret.add (aServiceGroup);
+      }
     return ret;
   }
 
@@ -428,6 +491,92 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
     return ret;
   }
 
+  @Nonnull
+  static String getEscapedLikePrefix (@Nonnull final String sPrefix)
+  {
+    // '!' is used as the escape character
+    return new String (StringHelper.replaceMultiple (sPrefix,
+                                                     new char [] { '!', '%', '_' },
+                                                     new char [] [] { "!!".toCharArray (),
+                                                                      "!%".toCharArray (),
+                                                                      "!_".toCharArray () })) +
+           "%";
+  }
+
+  @Nonnull
+  public SMPServiceGroupPage getSMPServiceGroupPage (@Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    ValueEnforcer.notNull (aRequest, "Request");
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("getSMPServiceGroupPage(" + aRequest + ")");
+
+    // Filter - uses the primary key index
+    final StringBuilder aFilter = new StringBuilder ();
+    final ConstantPreparedStatementDataProvider aFilterValues = new ConstantPreparedStatementDataProvider ();
+    if (aRequest.getFilterScheme () != null)
+    {
+      aFilter.append (" AND sg.businessIdentifierScheme=?");
+      aFilterValues.addValue (aRequest.getFilterScheme ());
+    }
+    if (aRequest.getFilterValuePrefix () != null)
+    {
+      aFilter.append (" AND sg.businessIdentifier LIKE ? ESCAPE '!'");
+      aFilterValues.addValue (getEscapedLikePrefix (aRequest.getFilterValuePrefix ()));
+    }
+
+    final DBExecutor aExecutor = newReadExecutor ();
+    final long nFilteredCount = aExecutor.queryCount ("SELECT COUNT(*) FROM smp_service_group sg WHERE 1=1" + aFilter,
+                                                      aFilterValues.getClone ());
+
+    final String sDir = aRequest.isAscending () ? " ASC" : " DESC";
+    final StringBuilder aSQL = new StringBuilder ("SELECT sg.businessIdentifierScheme, sg.businessIdentifier, sg.extension, so.username, sg.lastmoddt" +
+                                                  " FROM smp_service_group sg, smp_ownership so" +
+                                                  " WHERE so.businessIdentifierScheme=sg.businessIdentifierScheme AND so.businessIdentifier=sg.businessIdentifier").append (aFilter);
+    final IParticipantIdentifier aAfterPI = aRequest.getAfterParticipantID ();
+    if (aAfterPI != null)
+    {
+      // Keyset paging
+      final String sCmp = aRequest.isAscending () ? ">" : "<";
+      aSQL.append (" AND (sg.businessIdentifierScheme" +
+                   sCmp +
+                   "? OR (sg.businessIdentifierScheme=? AND sg.businessIdentifier" +
+                   sCmp +
+                   "?))");
+      aFilterValues.addValue (aAfterPI.getScheme ());
+      aFilterValues.addValue (aAfterPI.getScheme ());
+      aFilterValues.addValue (aAfterPI.getValue ());
+    }
+    aSQL.append (" ORDER BY ");
+    if (aRequest.getSortColumn () == ESMPServiceGroupSortColumn.OWNER_ID)
+      aSQL.append ("so.username").append (sDir).append (", ");
+    aSQL.append ("sg.businessIdentifierScheme").append (sDir).append (", sg.businessIdentifier").append (sDir);
+
+    // The values are numbers - no need for parameters
+    if (SMPDataSourceSingleton.getDatabaseType () == EDatabaseType.MYSQL)
+      aSQL.append (" LIMIT ").append (aRequest.getMaxCount ()).append (" OFFSET ").append (aRequest.getOffset ());
+    else
+      aSQL.append (" OFFSET ")
+          .append (aRequest.getOffset ())
+          .append (" ROWS FETCH NEXT ")
+          .append (aRequest.getMaxCount ())
+          .append (" ROWS ONLY");
+
+    final ICommonsList <DBResultRow> aDBResult = aExecutor.queryAll (aSQL.toString (), aFilterValues);
+
+    final ICommonsList <ISMPServiceGroup> ret = new CommonsArrayList <> ();
+    if (aDBResult != null)
+      for (final DBResultRow aRow : aDBResult)
+      {
+        final SMPServiceGroup aServiceGroup = new SMPServiceGroup (aRow.getAsString (3),
+                                                                   new SimpleParticipantIdentifier (aRow.getAsString (0),
+                                                                                                    aRow.getAsString (1)),
+                                                                   aRow.getAsString (2));
+        aServiceGroup.setLastModificationDateTime (aRow.getAsLocalDateTime (4));
+        ret.add (aServiceGroup);
+      }
+    return new SMPServiceGroupPage (ret, nFilteredCount);
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPServiceGroup> getAllSMPServiceGroupsOfOwner (@Nonnull final String sOwnerID)
@@ -435,7 +584,7 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("getAllSMPServiceGroupsOfOwner(" + sOwnerID + ")");
 
-    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT sg.businessIdentifierScheme, sg.businessIdentifier, sg.extension" +
+    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT sg.businessIdentifierScheme, sg.businessIdentifier, sg.extension, sg.lastmoddt" +
                                                                           " FROM smp_service_group sg, smp_ownership so" +
                                                                           " WHERE so.username=?" +
                                                                           " AND so.businessIdentifierScheme=sg.businessIdentifierScheme AND so.businessIdentifier=sg.businessIdentifier",
@@ -444,9 +593,14 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
     final ICommonsList <ISMPServiceGroup> ret = new CommonsArrayList <> ();
     if (aDBResult != null)
       for (final DBResultRow aRow : aDBResult)
-        ret.add (new SMPServiceGroup (sOwnerID,
-                                      new SimpleParticipantIdentifier (aRow.getAsString (0), aRow.getAsString (1)),
-                                      aRow.getAsString (2)));
+      {
+        final SMPServiceGroup aServiceGroup = new SMPServiceGroup (sOwnerID,
+                                                                   new SimpleParticipantIdentifier (aRow.getAsString (0),
+                                                                                                    aRow.getAsString (1)),
+                                                                   aRow.getAsString (2));
+        aServiceGroup.setLastModificationDateTime (aRow.getAsLocalDateTime (3));
+        ret.add (aServiceGroup);
+      }
     return ret;
   }
 
@@ -481,17 +635,18 @@ public final class SMPServiceGroupManagerJDBC extends AbstractJDBCEnabledManager
 
     // Not in cache
     final Wrapper <DBResultRow> aResult = new Wrapper <> ();
-    newExecutor ().querySingle ("SELECT sg.extension, so.username" +
-                                " FROM smp_service_group sg, smp_ownership so" +
-                                " WHERE sg.businessIdentifierScheme=? AND sg.businessIdentifier=?" +
-                                " AND so.businessIdentifierScheme=sg.businessIdentifierScheme AND so.businessIdentifier=sg.businessIdentifier",
-                                new ConstantPreparedStatementDataProvider (aParticipantID.getScheme (),
-                                                                           aParticipantID.getValue ()),
-                                aResult::set);
+    newReadExecutor ().querySingle ("SELECT sg.extension, so.username, sg.lastmoddt" +
+                                    " FROM smp_service_group sg, smp_ownership so" +
+                                    " WHERE sg.businessIdentifierScheme=? AND sg.businessIdentifier=?" +
+                                    " AND so.businessIdentifierScheme=sg.businessIdentifierScheme AND so.businessIdentifier=sg.businessIdentifier",
+                                    new ConstantPreparedStatementDataProvider (aParticipantID.getScheme (),
+                                                                               aParticipantID.getValue ()),
+                                    aResult::set);
     if (aResult.isNotSet ())
       return null;
 
     ret = new SMPServiceGroup (aResult.get ().getAsString (1), aParticipantID, aResult.get ().getAsString (0));
+    ret.setLastModificationDateTime (aResult.get ().getAsLocalDateTime (2));
     if (m_aCache != null)
       m_aCache.put (aParticipantID.getURIEncoded (), ret);
     return ret;
@@ -16,49 +16,74 @@
  */
 package com.helger.phoss.smp.backend.sql.mgr;
 
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.MustImplementEqualsAndHashcode;
+import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
 import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.CommonsTreeSet;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.collection.impl.ICommonsSortedSet;
 import com.helger.commons.equals.EqualsHelper;
 import com.helger.commons.hashcode.HashCodeGenerator;
 import com.helger.commons.mutable.MutableBoolean;
+import com.helger.commons.mutable.MutableLong;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
+import com.helger.commons.timing.StopWatch;
 import com.helger.commons.wrapper.Wrapper;
 import com.helger.db.api.helper.DBValueHelper;
 import com.helger.db.jdbc.callback.ConstantPreparedStatementDataProvider;
 import com.helger.db.jdbc.executor.DBExecutor;
 import com.helger.db.jdbc.executor.DBResultRow;
-import com.helger.db.jdbc.mgr.AbstractJDBCEnabledManager;
 import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppolid.CIdentifier;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
 import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
 import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
 import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
+import com.helger.phoss.smp.backend.sql.EDatabaseType;
+import com.helger.phoss.smp.backend.sql.SMPDataSourceSingleton;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPCertificateCache;
 import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeHelper;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeResult;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointPage;
 import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
 import com.helger.photon.audit.AuditHelper;
@@ -70,7 +95,7 @@ import com.helger.photon.audit.AuditHelper;
  * @author Philip Helger
  * @since 5.3.0
  */
-public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledManager implements
+public class SMPServiceInformationManagerJDBC extends AbstractSMPJDBCEnabledManager implements
                                                     ISMPServiceInformationManager
 {
   @MustImplementEqualsAndHashcode
@@ -78,11 +103,15 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
   {
     final IDocumentTypeIdentifier m_aDocTypeID;
     final String m_sExt;
+    final LocalDateTime m_aLastModDT;
 
-    public DocTypeAndExtension (@Nonnull final IDocumentTypeIdentifier aDocTypeID, final String sExt)
+    public DocTypeAndExtension (@Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                final String sExt,
+                                final LocalDateTime aLastModDT)
     {
       m_aDocTypeID = aDocTypeID;
       m_sExt = sExt;
+      m_aLastModDT = aLastModDT;
     }
 
     @Override
@@ -93,16 +122,185 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
       if (o == null || !getClass ().equals (o.getClass ()))
         return false;
       final DocTypeAndExtension rhs = (DocTypeAndExtension) o;
-      return m_aDocTypeID.equals (rhs.m_aDocTypeID) && EqualsHelper.equals (m_sExt, rhs.m_sExt);
+      return m_aDocTypeID.equals (rhs.m_aDocTypeID) &&
+             EqualsHelper.equals (m_sExt, rhs.m_sExt) &&
+             EqualsHelper.equals (m_aLastModDT, rhs.m_aLastModDT);
     }
 
     @Override
     public int hashCode ()
     {
-      return new HashCodeGenerator (this).append (m_aDocTypeID).append (m_sExt).getHashCode ();
+      return new HashCodeGenerator (this).append (m_aDocTypeID)
+                                         .append (m_sExt)
+                                         .append (m_aLastModDT)
+                                         .getHashCode ();
+    }
+  }
+
+  /**
+   * One part of a bulk endpoint change: the query of the affected service
+   * information keys and the UPDATE statement for their endpoints.
+   *
+   * @author Philip Helger
+   */
+  private static final class EndpointChange
+  {
+    private final String m_sKeySQL;
+    private final ICommonsList <Object> m_aKeyParams;
+    private final String m_sUpdateSQL;
+    private final ICommonsList <Object> m_aUpdateParams;
+
+    /**
+     * @param sKeySQL
+     *        The query that selects the distinct service information keys
+     *        (participant scheme and value, document type scheme and value)
+     *        that are affected. May neither be <code>null</code> nor empty.
+     * @param aKeyParams
+     *        The parameters for the key query. May not be <code>null</code>.
+     * @param sUpdateSQL
+     *        The UPDATE statement for the endpoints of a single service
+     *        information. The 4 key columns are appended as additional
+     *        parameters. May neither be <code>null</code> nor empty.
+     * @param aUpdateParams
+     *        The parameters for the update statement, without the key
+     *        parameters. May not be <code>null</code>.
+     */
+    EndpointChange (@Nonnull @Nonempty final String sKeySQL,
+                    @Nonnull final ICommonsList <Object> aKeyParams,
+                    @Nonnull @Nonempty final String sUpdateSQL,
+                    @Nonnull final ICommonsList <Object> aUpdateParams)
+    {
+      m_sKeySQL = sKeySQL;
+      m_aKeyParams = aKeyParams;
+      m_sUpdateSQL = sUpdateSQL;
+      m_aUpdateParams = aUpdateParams;
     }
   }
 
+  /**
+   * Helper class to build service information objects from the rows of a
+   * result set that is ordered by participant and document type. A service
+   * information object is emitted as soon as the next row belongs to a
+   * different one, so only the rows of a single service information object are
+   * kept in memory.
+   *
+   * @author Philip Helger
+   */
+  private final class ServiceInformationStreamer
+  {
+    private final Consumer <? super ISMPServiceInformation> m_aConsumer;
+    private IParticipantIdentifier m_aParticipantID;
+    private ISMPServiceGroup m_aServiceGroup;
+    private DocTypeAndExtension m_aDE;
+    private final ICommonsOrderedMap <SMPProcess, ICommonsList <SMPEndpoint>> m_aProcesses = new CommonsLinkedHashMap <> ();
+
+    ServiceInformationStreamer (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer)
+    {
+      m_aConsumer = aConsumer;
+    }
+
+    void onRow (@Nonnull final DBResultRow aDBRow)
+    {
+      // Participant ID
+      final IParticipantIdentifier aParticipantID = new SimpleParticipantIdentifier (aDBRow.getAsString (0),
+                                                                                     aDBRow.getAsString (1));
+      // Document type ID and extension
+      final IDocumentTypeIdentifier aDocTypeID = new SimpleDocumentTypeIdentifier (aDBRow.getAsString (2),
+                                                                                   aDBRow.getAsString (3));
+      final DocTypeAndExtension aDE = new DocTypeAndExtension (aDocTypeID,
+                                                               aDBRow.getAsString (4),
+                                                               aDBRow.getAsLocalDateTime (19));
+      // Process without endpoints
+      final SMPProcess aProcess = new SMPProcess (new SimpleProcessIdentifier (aDBRow.getAsString (5),
+                                                                               aDBRow.getAsString (6)),
+                                                  null,
+                                                  aDBRow.getAsString (7));
+      // Don't add endpoint to process, because that impacts
+      // SMPProcess.equals/hashcode
+      final SMPEndpoint aEndpoint = new SMPEndpoint (aDBRow.getAsString (8),
+                                                     aDBRow.getAsString (9),
+                                                     aDBRow.getAsBoolean (10,
+                                                                          SMPEndpoint.DEFAULT_REQUIRES_BUSINESS_LEVEL_SIGNATURE),
+                                                     aDBRow.getAsString (11),
+                                                     aDBRow.getAsXMLOffsetDateTime (12),
+                                                     aDBRow.getAsXMLOffsetDateTime (13),
+                                                     _getCertificateOfHash (aDBRow.getAsString (14)),
+                                                     aDBRow.getAsString (15),
+                                                     aDBRow.getAsString (16),
+                                                     aDBRow.getAsString (17),
+                                                     aDBRow.getAsString (18));
+
+      final boolean bSameParticipant = aParticipantID.equals (m_aParticipantID);
+      if (!bSameParticipant || !aDE.equals (m_aDE))
+      {
+        // A new service information starts
+        flush ();
+        if (!bSameParticipant)
+        {
+          // Resolve the service group only once per participant
+          m_aServiceGroup = m_aServiceGroupMgr.getSMPServiceGroupOfID (aParticipantID);
+          if (m_aServiceGroup == null)
+            throw new IllegalStateException ("Failed to resolve service group for participant ID '" +
+                                             aParticipantID.getURIEncoded () +
+                                             "'");
+          m_aParticipantID = aParticipantID;
+        }
+        m_aDE = aDE;
+      }
+      m_aProcesses.computeIfAbsent (aProcess, k -> new CommonsArrayList <> ()).add (aEndpoint);
+    }
+
+    void flush ()
+    {
+      if (m_aDE != null)
+      {
+        // Flatten list
+        final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> (m_aProcesses.size ());
+        for (final Map.Entry <SMPProcess, ICommonsList <SMPEndpoint>> aEntry : m_aProcesses.entrySet ())
+        {
+          final SMPProcess aProcess = aEntry.getKey ();
+          aProcess.addEndpoints (aEntry.getValue ());
+          aProcesses.add (aProcess);
+        }
+
+        final SMPServiceInformation aServiceInfo = new SMPServiceInformation (m_aServiceGroup,
+                                                                              m_aDE.m_aDocTypeID,
+                                                                              aProcesses,
+                                                                              m_aDE.m_sExt);
+        aServiceInfo.setLastModificationDateTime (m_aDE.m_aLastModDT);
+        m_aProcesses.clear ();
+        m_aDE = null;
+        m_aConsumer.accept (aServiceInfo);
+      }
+    }
+  }
+
+  /** The default number of service information read at once */
+  public static final int DEFAULT_FOR_EACH_BATCH_SIZE = 500;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPServiceInformationManagerJDBC.class);
+  private static final String [] SERVICE_METADATA_KEY_COLUMNS = { "businessIdentifierScheme",
+                                                                  "businessIdentifier",
+                                                                  "documentIdentifierScheme",
+                                                                  "documentIdentifier" };
+
+  // All columns of service information rows, as expected by
+  // ServiceInformationStreamer
+  private static final String SERVICE_INFORMATION_ROWS_SQL = "SELECT sm.businessIdentifierScheme, sm.businessIdentifier, sm.documentIdentifierScheme, sm.documentIdentifier, sm.extension," +
+                                                             "   sp.processIdentifierType, sp.processIdentifier, sp.extension," +
+                                                             "   se.transportProfile, se.endpointReference, se.requireBusinessLevelSignature, se.minimumAuthenticationLevel," +
+                                                             "     se.serviceActivationDate, se.serviceExpirationDate, se.certhash, se.serviceDescription," +
+                                                             "     se.technicalContactUrl, se.technicalInformationUrl, se.extension," +
+                                                             "   sm.lastmoddt" +
+                                                             " FROM smp_service_metadata sm" +
+                                                             " INNER JOIN smp_process sp" +
+                                                             "   ON sm.businessIdentifierScheme=sp.businessIdentifierScheme AND sm.businessIdentifier=sp.businessIdentifier" +
+                                                             "   AND sm.documentIdentifierScheme=sp.documentIdentifierScheme AND sm.documentIdentifier=sp.documentIdentifier" +
+                                                             " INNER JOIN smp_endpoint se" +
+                                                             "   ON sp.businessIdentifierScheme=se.businessIdentifierScheme AND sp.businessIdentifier=se.businessIdentifier" +
+                                                             "   AND sp.documentIdentifierScheme=se.documentIdentifierScheme AND sp.documentIdentifier=se.documentIdentifier" +
+                                                             "   AND sp.processIdentifierType=se.processIdentifierType AND sp.processIdentifier=se.processIdentifier";
+
   private final ISMPServiceGroupManager m_aServiceGroupMgr;
   private final CallbackList <ISMPServiceInformationCallback> m_aCBs = new CallbackList <> ();
 
@@ -129,15 +327,118 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
     return m_aCBs;
   }
 
+  /**
+   * Get the SQL statement that inserts a certificate only if no certificate
+   * with the same hash is present. The parameters are the hash and the
+   * certificate.
+   *
+   * @param eDBType
+   *        The database type to use. May not be <code>null</code>.
+   * @return The SQL statement. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  static String getInsertCertificateIfAbsentSQL (@Nonnull final EDatabaseType eDBType)
+  {
+    switch (eDBType)
+    {
+      case MYSQL:
+        return "INSERT INTO smp_certificate (certhash, certificate) VALUES (?, ?) ON DUPLICATE KEY UPDATE certhash=certhash";
+      case POSTGRESQL:
+        return "INSERT INTO smp_certificate (certhash, certificate) VALUES (?, ?) ON CONFLICT (certhash) DO NOTHING";
+      case ORACLE:
+        return "MERGE INTO smp_certificate t USING (SELECT ? AS certhash, TO_CLOB(?) AS certificate FROM DUAL) s" +
+               " ON (t.certhash=s.certhash)" +
+               " WHEN NOT MATCHED THEN INSERT (certhash, certificate) VALUES (s.certhash, s.certificate)";
+      case DB2:
+        return "MERGE INTO smp_certificate t USING (VALUES (CAST(? AS VARCHAR(64)), CAST(? AS CLOB))) AS s (certhash, certificate)" +
+               " ON t.certhash=s.certhash" +
+               " WHEN NOT MATCHED THEN INSERT (certhash, certificate) VALUES (s.certhash, s.certificate)";
+      default:
+        throw new IllegalStateException ("Unsupported database type " + eDBType);
+    }
+  }
+
+  /**
+   * Ensure that all endpoint certificates of the provided service information
+   * are contained in the certificate table. The rows are shared with other
+   * endpoints and never deleted.
+   *
+   * @param aExecutor
+   *        The executor of the current transaction. May not be
+   *        <code>null</code>.
+   * @param aSMPServiceInformation
+   *        The service information to check. May not be <code>null</code>.
+   */
+  private static void _ensureCertificatesStored (@Nonnull final DBExecutor aExecutor,
+                                                 @Nonnull final ISMPServiceInformation aSMPServiceInformation)
+  {
+    final ICommonsSet <String> aHandledHashes = new CommonsHashSet <> ();
+    for (final ISMPProcess aProcess : aSMPServiceInformation.getAllProcesses ())
+      for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+      {
+        final String sCertHash = SMPCertificateCache.getHash (aEndpoint.getCertificate ());
+        if (sCertHash != null && aHandledHashes.add (sCertHash))
+          _ensureCertificateStored (aExecutor, sCertHash, aEndpoint.getCertificate ());
+      }
+  }
+
+  private static void _ensureCertificateStored (@Nonnull final DBExecutor aExecutor,
+                                                @Nonnull @Nonempty final String sCertHash,
+                                                @Nonnull @Nonempty final String sCertificate)
+  {
+    // Idempotent, so concurrent inserts of the same certificate don't fail
+    aExecutor.insertOrUpdateOrDelete (getInsertCertificateIfAbsentSQL (SMPDataSourceSingleton.getDatabaseType ()),
+                                      new ConstantPreparedStatementDataProvider (sCertHash, sCertificate));
+  }
+
+  /**
+   * Resolve the certificate with the provided hash. Each distinct certificate
+   * is only read once from the DB and shared afterwards.
+   *
+   * @param sCertHash
+   *        The certificate hash from the endpoint table. May be
+   *        <code>null</code>.
+   * @return <code>null</code> if no certificate is referenced.
+   * @throws IllegalStateException
+   *         If the referenced certificate is not present in the database
+   */
+  @Nullable
+  private String _getCertificateOfHash (@Nullable final String sCertHash)
+  {
+    if (StringHelper.hasNoText (sCertHash))
+      return null;
+
+    final String ret = SMPCertificateCache.getCertificateOfHash (sCertHash);
+    if (ret != null)
+      return ret;
+
+    final Wrapper <DBResultRow> aDBResult = new Wrapper <> ();
+    newExecutor ().querySingle ("SELECT certificate FROM smp_certificate WHERE certhash=?",
+                                new ConstantPreparedStatementDataProvider (sCertHash),
+                                aDBResult::set);
+    if (aDBResult.isNotSet ())
+    {
+      // Returning the endpoint without certificate would be wrong
+      LOGGER.error ("Failed to resolve endpoint certificate with hash '" + sCertHash + "'");
+      throw new IllegalStateException ("Failed to resolve endpoint certificate with hash '" + sCertHash + "'");
+    }
+    return SMPCertificateCache.intern (aDBResult.get ().getAsString (0));
+  }
+
   @Nonnull
   public ESuccess mergeSMPServiceInformation (@Nonnull final ISMPServiceInformation aSMPServiceInformation)
   {
     ValueEnforcer.notNull (aSMPServiceInformation, "ServiceInformation");
 
     final MutableBoolean aUpdated = new MutableBoolean (false);
+    final LocalDateTime aLastModDT = ISMPHasLastModification.getNextLastModificationDateTime (aSMPServiceInformation.getLastModificationDateTime ());
 
     final DBExecutor aExecutor = newExecutor ();
     final ESuccess eSuccess = aExecutor.performInTransaction ( () -> {
+      // Before the endpoints referencing them
+      _ensureCertificatesStored (aExecutor, aSMPServiceInformation);
+
       // Simply delete the old one
       final EChange eDeleted = _deleteSMPServiceInformationNoCallback (aSMPServiceInformation);
       aUpdated.set (eDeleted.isChanged ());
@@ -146,13 +447,14 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
       final IParticipantIdentifier aPID = aSMPServiceInformation.getServiceGroup ().getParticipantIdentifier ();
       final IDocumentTypeIdentifier aDocTypeID = aSMPServiceInformation.getDocumentTypeIdentifier ();
 
-      aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_service_metadata (businessIdentifierScheme, businessIdentifier, documentIdentifierScheme, documentIdentifier, extension) VALUES (?, ?, ?, ?, ?)",
+      aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_service_metadata (businessIdentifierScheme, businessIdentifier, documentIdentifierScheme, documentIdentifier, extension, lastmoddt) VALUES (?, ?, ?, ?, ?, ?)",
                                         new ConstantPreparedStatementDataProvider (aPID.getScheme (),
                                                                                    aPID.getValue (),
                                                                                    aDocTypeID.getScheme (),
                                                                                    aDocTypeID.getValue (),
                                                                                    aSMPServiceInformation.getExtensions ()
-                                                                                                         .getExtensionsAsJsonString ()));
+                                                                                                         .getExtensionsAsJsonString (),
+                                                                                   DBValueHelper.toTimestamp (aLastModDT)));
 
       for (final ISMPProcess aProcess : aSMPServiceInformation.getAllProcesses ())
       {
@@ -170,7 +472,7 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
         for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
         {
           aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_endpoint (businessIdentifierScheme, businessIdentifier, documentIdentifierScheme, documentIdentifier, processIdentifierType, processIdentifier," +
-                                            " certificate, endpointReference, minimumAuthenticationLevel, requireBusinessLevelSignature, serviceActivationDate, serviceDescription, serviceExpirationDate, technicalContactUrl, technicalInformationUrl, transportProfile," +
+                                            " certhash, endpointReference, minimumAuthenticationLevel, requireBusinessLevelSignature, serviceActivationDate, serviceDescription, serviceExpirationDate, technicalContactUrl, technicalInformationUrl, transportProfile," +
                                             " extension) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
                                             new ConstantPreparedStatementDataProvider (aPID.getScheme (),
                                                                                        aPID.getValue (),
@@ -178,7 +480,7 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
                                                                                        aDocTypeID.getValue (),
                                                                                        aProcessID.getScheme (),
                                                                                        aProcessID.getValue (),
-                                                                                       aEndpoint.getCertificate (),
+                                                                                       SMPCertificateCache.getHash (aEndpoint.getCertificate ()),
                                                                                        aEndpoint.getEndpointReference (),
                                                                                        aEndpoint.getMinimumAuthenticationLevel (),
                                                                                        Boolean.valueOf (aEndpoint.isRequireBusinessLevelSignature ()),
@@ -196,6 +498,9 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
     if (eSuccess.isFailure ())
       return ESuccess.FAILURE;
 
+    if (aSMPServiceInformation instanceof SMPServiceInformation)
+      ((SMPServiceInformation) aSMPServiceInformation).setLastModificationDateTime (aLastModDT);
+
     // Callback outside of transaction
     if (aUpdated.booleanValue ())
     {
@@ -309,7 +614,7 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
     final DBExecutor aExecutor = newExecutor ();
     final ESuccess eSuccess = aExecutor.performInTransaction ( () -> {
       // get the old ones first
-      aAllDeleted.set (getAllSMPServiceInformationOfServiceGroup (aServiceGroup));
+      aAllDeleted.set (_getAllSMPServiceInformationOfServiceGroup (aExecutor, aServiceGroup));
 
       final IParticipantIdentifier aPID = aServiceGroup.getParticipantIdentifier ();
       final long nCountEP = aExecutor.insertOrUpdateOrDelete ("DELETE FROM smp_endpoint" +
@@ -372,6 +677,18 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
                                                                                                            aDocTypeID.getValue (),
                                                                                                            aProcessID.getScheme (),
                                                                                                            aProcessID.getValue ()));
+      if (nCountEP + nCountProc > 0)
+      {
+        // Update last modification of the service information
+        final LocalDateTime aLastModDT = ISMPHasLastModification.getNextLastModificationDateTime (aSMPServiceInformation.getLastModificationDateTime ());
+        aExecutor.insertOrUpdateOrDelete ("UPDATE smp_service_metadata SET lastmoddt=?" +
+                                          " WHERE businessIdentifierScheme=? AND businessIdentifier=? AND documentIdentifierScheme=? AND documentIdentifier=?",
+                                          new ConstantPreparedStatementDataProvider (DBValueHelper.toTimestamp (aLastModDT),
+                                                                                     aPID.getScheme (),
+                                                                                     aPID.getValue (),
+                                                                                     aDocTypeID.getScheme (),
+                                                                                     aDocTypeID.getValue ()));
+      }
       ret.set (Long.valueOf (nCountEP + nCountProc));
     });
     if (eSuccess.isFailure ())
@@ -380,89 +697,174 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
     return EChange.valueOf (ret.get ().longValue () > 0);
   }
 
-  @Nonnull
-  @ReturnsMutableCopy
-  public ICommonsList <ISMPServiceInformation> getAllSMPServiceInformation ()
+  /**
+   * Append a keyset condition on the primary key of the service metadata
+   * table. The key columns are compared in the same order they are sorted.
+   *
+   * @param aSQL
+   *        The SQL to append to. May not be <code>null</code>.
+   * @param aValues
+   *        The statement values to append to. May not be <code>null</code>.
+   * @param aKey
+   *        The 4 key values. May not be <code>null</code>.
+   * @param sCmp
+   *        The comparison operator, either "&gt;" or "&lt;"
+   * @param bInclusive
+   *        <code>true</code> if the key itself matches as well
+   */
+  private static void _appendKeyCondition (@Nonnull final StringBuilder aSQL,
+                                           @Nonnull final ConstantPreparedStatementDataProvider aValues,
+                                           @Nonnull final String [] aKey,
+                                           @Nonnull final String sCmp,
+                                           final boolean bInclusive)
   {
-    final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
-    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT sm.businessIdentifierScheme, sm.businessIdentifier, sm.documentIdentifierScheme, sm.documentIdentifier, sm.extension," +
-                                                                          "   sp.processIdentifierType, sp.processIdentifier, sp.extension," +
-                                                                          "   se.transportProfile, se.endpointReference, se.requireBusinessLevelSignature, se.minimumAuthenticationLevel," +
-                                                                          "     se.serviceActivationDate, se.serviceExpirationDate, se.certificate, se.serviceDescription," +
-                                                                          "     se.technicalContactUrl, se.technicalInformationUrl, se.extension" +
-                                                                          " FROM smp_service_metadata sm" +
-                                                                          " INNER JOIN smp_process sp" +
-                                                                          "   ON sm.businessIdentifierScheme=sp.businessIdentifierScheme AND sm.businessIdentifier=sp.businessIdentifier" +
-                                                                          "   AND sm.documentIdentifierScheme=sp.documentIdentifierScheme AND sm.documentIdentifier=sp.documentIdentifier" +
-                                                                          " INNER JOIN smp_endpoint se" +
-                                                                          "   ON sp.businessIdentifierScheme=se.businessIdentifierScheme AND sp.businessIdentifier=se.businessIdentifier" +
-                                                                          "   AND sp.documentIdentifierScheme=se.documentIdentifierScheme AND sp.documentIdentifier=se.documentIdentifier" +
-                                                                          "   AND sp.processIdentifierType=se.processIdentifierType AND sp.processIdentifier=se.processIdentifier");
-
-    final ICommonsMap <IParticipantIdentifier, ICommonsMap <DocTypeAndExtension, ICommonsMap <SMPProcess, ICommonsList <SMPEndpoint>>>> aGrouping = new CommonsHashMap <> ();
-    if (aDBResult != null)
-      for (final DBResultRow aDBRow : aDBResult)
-      {
-        // Participant ID
-        final IParticipantIdentifier aParticipantID = new SimpleParticipantIdentifier (aDBRow.getAsString (0),
-                                                                                       aDBRow.getAsString (1));
-        // Document type ID and extension
-        final IDocumentTypeIdentifier aDocTypeID = new SimpleDocumentTypeIdentifier (aDBRow.getAsString (2),
-                                                                                     aDBRow.getAsString (3));
-        final String sServiceInformationExtension = aDBRow.getAsString (4);
-        // Process without endpoints
-        final SMPProcess aProcess = new SMPProcess (new SimpleProcessIdentifier (aDBRow.getAsString (5),
-                                                                                 aDBRow.getAsString (6)),
-                                                    null,
-                                                    aDBRow.getAsString (7));
-        // Don't add endpoint to process, because that impacts
-        // SMPProcess.equals/hashcode
-        final SMPEndpoint aEndpoint = new SMPEndpoint (aDBRow.getAsString (8),
-                                                       aDBRow.getAsString (9),
-                                                       aDBRow.getAsBoolean (10,
-                                                                            SMPEndpoint.DEFAULT_REQUIRES_BUSINESS_LEVEL_SIGNATURE),
-                                                       aDBRow.getAsString (11),
-                                                       aDBRow.getAsXMLOffsetDateTime (12),
-                                                       aDBRow.getAsXMLOffsetDateTime (13),
-                                                       aDBRow.getAsString (14),
-                                                       aDBRow.getAsString (15),
-                                                       aDBRow.getAsString (16),
-                                                       aDBRow.getAsString (17),
-                                                       aDBRow.getAsString (18));
-        aGrouping.computeIfAbsent (aParticipantID, k -> new CommonsHashMap <> ())
-                 .computeIfAbsent (new DocTypeAndExtension (aDocTypeID, sServiceInformationExtension),
-                                   k -> new CommonsHashMap <> ())
-                 .computeIfAbsent (aProcess, k -> new CommonsArrayList <> ())
-                 .add (aEndpoint);
-      }
+    final int nLast = SERVICE_METADATA_KEY_COLUMNS.length - 1;
+    for (int i = 0; i < nLast; ++i)
+    {
+      aSQL.append ("(sm.")
+          .append (SERVICE_METADATA_KEY_COLUMNS[i])
+          .append (sCmp)
+          .append ("? OR (sm.")
+          .append (SERVICE_METADATA_KEY_COLUMNS[i])
+          .append ("=? AND ");
+      aValues.addValue (aKey[i]);
+      aValues.addValue (aKey[i]);
+    }
+    aSQL.append ("sm.").append (SERVICE_METADATA_KEY_COLUMNS[nLast]).append (sCmp);
+    if (bInclusive)
+      aSQL.append ('=');
+    aSQL.append ('?');
+    aValues.addValue (aKey[nLast]);
+    for (int i = 0; i < nLast; ++i)
+      aSQL.append ("))");
+  }
+
+  /**
+   * Read the keys of the next batch of service metadata entries.
+   *
+   * @param aAfterKey
+   *        The last key of the previous batch. May be <code>null</code> for
+   *        the first batch.
+   * @param nMaxCount
+   *        The maximum number of keys to read. Must be &gt; 0.
+   * @return <code>null</code> in case of an error. Each row contains the 4 key
+   *         columns.
+   */
+  @Nullable
+  ICommonsList <DBResultRow> queryServiceMetadataKeys (@Nullable final String [] aAfterKey,
+                                                        @Nonnegative final int nMaxCount)
+  {
+    final StringBuilder aSQL = new StringBuilder ("SELECT sm.businessIdentifierScheme, sm.businessIdentifier, sm.documentIdentifierScheme, sm.documentIdentifier" +
+                                                  " FROM smp_service_metadata sm");
+    final ConstantPreparedStatementDataProvider aValues = new ConstantPreparedStatementDataProvider ();
+    if (aAfterKey != null)
+    {
+      aSQL.append (" WHERE ");
+      _appendKeyCondition (aSQL, aValues, aAfterKey, ">", false);
+    }
+    aSQL.append (" ORDER BY sm.businessIdentifierScheme, sm.businessIdentifier, sm.documentIdentifierScheme, sm.documentIdentifier");
+    // The value is a number - no need for parameters
+    if (SMPDataSourceSingleton.getDatabaseType () == EDatabaseType.MYSQL)
+      aSQL.append (" LIMIT ").append (nMaxCount);
+    else
+      aSQL.append (" OFFSET 0 ROWS FETCH NEXT ").append (nMaxCount).append (" ROWS ONLY");
+    return newExecutor ().queryAll (aSQL.toString (), aValues);
+  }
+
+  /**
+   * Read all rows of the service information in the provided key range.
+   *
+   * @param aAfterKey
+   *        The exclusive lower bound. May be <code>null</code> for the first
+   *        batch.
+   * @param aLastKey
+   *        The inclusive upper bound. May not be <code>null</code>.
+   * @return <code>null</code> in case of an error. The rows are sorted by the
+   *         service metadata key.
+   */
+  @Nullable
+  ICommonsList <DBResultRow> queryServiceInformationRows (@Nullable final String [] aAfterKey,
+                                                           @Nonnull final String [] aLastKey)
+  {
+    final StringBuilder aSQL = new StringBuilder (SERVICE_INFORMATION_ROWS_SQL).append (" WHERE ");
+    final ConstantPreparedStatementDataProvider aValues = new ConstantPreparedStatementDataProvider ();
+    if (aAfterKey != null)
+    {
+      _appendKeyCondition (aSQL, aValues, aAfterKey, ">", false);
+      aSQL.append (" AND ");
+    }
+    _appendKeyCondition (aSQL, aValues, aLastKey, "<", true);
+    aSQL.append (" ORDER BY sm.businessIdentifierScheme, sm.businessIdentifier, sm.documentIdentifierScheme, sm.documentIdentifier");
+    return newExecutor ().queryAll (aSQL.toString (), aValues);
+  }
+
+  public void forEachSMPServiceInformation (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer)
+  {
+    forEachSMPServiceInformation (aConsumer, DEFAULT_FOR_EACH_BATCH_SIZE);
+  }
+
+  /**
+   * Iterate all service information in batches. Each batch is read completely
+   * (keyset paging on the service metadata key) before the consumer is
+   * invoked, so no cursor or transaction is open while the consumer runs and
+   * the consumer may freely use the database itself.
+   *
+   * @param aConsumer
+   *        The consumer to invoke. May not be <code>null</code>.
+   * @param nBatchSize
+   *        The maximum number of service information per batch. Must be &gt;
+   *        0.
+   */
+  void forEachSMPServiceInformation (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer,
+                                     @Nonnegative final int nBatchSize)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    ValueEnforcer.isGT0 (nBatchSize, "BatchSize");
 
-    // Per participant ID
-    for (final Map.Entry <IParticipantIdentifier, ICommonsMap <DocTypeAndExtension, ICommonsMap <SMPProcess, ICommonsList <SMPEndpoint>>>> aEntry : aGrouping.entrySet ())
+    final ServiceInformationStreamer aStreamer = new ServiceInformationStreamer (aConsumer);
+    String [] aAfterKey = null;
+    while (true)
     {
-      final ISMPServiceGroup aServiceGroup = m_aServiceGroupMgr.getSMPServiceGroupOfID (aEntry.getKey ());
-      if (aServiceGroup == null)
-        throw new IllegalStateException ("Failed to resolve service group for participant ID '" +
-                                         aEntry.getKey ().getURIEncoded () +
-                                         "'");
-
-      // Per document type ID
-      for (final Map.Entry <DocTypeAndExtension, ICommonsMap <SMPProcess, ICommonsList <SMPEndpoint>>> aEntry2 : aEntry.getValue ()
-                                                                                                                       .entrySet ())
+      // Determine the key range of the next batch
+      final ICommonsList <DBResultRow> aKeys = queryServiceMetadataKeys (aAfterKey, nBatchSize);
+      if (aKeys == null)
       {
-        // Flatten list
-        final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
-        for (final Map.Entry <SMPProcess, ICommonsList <SMPEndpoint>> aEntry3 : aEntry2.getValue ().entrySet ())
-        {
-          final SMPProcess aProcess = aEntry3.getKey ();
-          aProcess.addEndpoints (aEntry3.getValue ());
-          aProcesses.add (aProcess);
-        }
+        LOGGER.error ("Failed to read the next batch of service information keys - stopping iteration");
+        return;
+      }
+      if (aKeys.isEmpty ())
+        break;
 
-        final DocTypeAndExtension aDE = aEntry2.getKey ();
-        ret.add (new SMPServiceInformation (aServiceGroup, aDE.m_aDocTypeID, aProcesses, aDE.m_sExt));
+      final DBResultRow aLastRow = aKeys.getLastOrNull ();
+      final String [] aLastKey = { aLastRow.getAsString (0),
+                                   aLastRow.getAsString (1),
+                                   aLastRow.getAsString (2),
+                                   aLastRow.getAsString (3) };
+      final ICommonsList <DBResultRow> aRows = queryServiceInformationRows (aAfterKey, aLastKey);
+      if (aRows == null)
+      {
+        LOGGER.error ("Failed to read the next batch of service information - stopping iteration");
+        return;
       }
+
+      // The result set is closed, so the consumer may access the DB
+      for (final DBResultRow aRow : aRows)
+        aStreamer.onRow (aRow);
+      // Batches always end at a service information boundary
+      aStreamer.flush ();
+
+      if (aKeys.size () < nBatchSize)
+        break;
+      aAfterKey = aLastKey;
     }
+  }
 
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceInformation> getAllSMPServiceInformation ()
+  {
+    final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
+    forEachSMPServiceInformation (ret::add);
     return ret;
   }
 
@@ -472,30 +874,118 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
     return newExecutor ().queryCount ("SELECT COUNT(*) FROM smp_service_metadata");
   }
 
+  /**
+   * Append the participant filter of the provided request.
+   *
+   * @param aSQL
+   *        The SQL to append to. May not be <code>null</code>.
+   * @param aValues
+   *        The prepared statement values to append to. May not be
+   *        <code>null</code>.
+   * @param sTableAlias
+   *        The alias of the table containing the participant columns.
+   * @param aRequest
+   *        The page request. May not be <code>null</code>.
+   */
+  private static void _appendParticipantFilter (@Nonnull final StringBuilder aSQL,
+                                                @Nonnull final ConstantPreparedStatementDataProvider aValues,
+                                                @Nonnull @Nonempty final String sTableAlias,
+                                                @Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    // Uses the primary key indexes
+    if (aRequest.getFilterScheme () != null)
+    {
+      aSQL.append (" AND ").append (sTableAlias).append (".businessIdentifierScheme=?");
+      aValues.addValue (aRequest.getFilterScheme ());
+    }
+    if (aRequest.getFilterValuePrefix () != null)
+    {
+      aSQL.append (" AND ").append (sTableAlias).append (".businessIdentifier LIKE ? ESCAPE '!'");
+      aValues.addValue (SMPServiceGroupManagerJDBC.getEscapedLikePrefix (aRequest.getFilterValuePrefix ()));
+    }
+  }
+
+  @Nonnull
+  public SMPEndpointPage getSMPEndpointPage (@Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    SMPEndpointPage.checkRequest (aRequest);
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("getSMPEndpointPage(" + aRequest + ")");
+
+    final DBExecutor aExecutor = newReadExecutor ();
+    final StringBuilder aCountSQL = new StringBuilder ("SELECT COUNT(*) FROM smp_endpoint se WHERE 1=1");
+    final ConstantPreparedStatementDataProvider aCountValues = new ConstantPreparedStatementDataProvider ();
+    _appendParticipantFilter (aCountSQL, aCountValues, "se", aRequest);
+    final long nFilteredCount = aExecutor.queryCount (aCountSQL.toString (), aCountValues);
+
+    final String sDir = aRequest.isAscending () ? " ASC" : " DESC";
+    final StringBuilder aSQL = new StringBuilder (SERVICE_INFORMATION_ROWS_SQL).append (" WHERE 1=1");
+    final ConstantPreparedStatementDataProvider aValues = new ConstantPreparedStatementDataProvider ();
+    _appendParticipantFilter (aSQL, aValues, "sm", aRequest);
+    aSQL.append (" ORDER BY ");
+    for (final String sColumn : new String [] { "sm.businessIdentifierScheme",
+                                                "sm.businessIdentifier",
+                                                "sm.documentIdentifierScheme",
+                                                "sm.documentIdentifier",
+                                                "sp.processIdentifierType",
+                                                "sp.processIdentifier" })
+      aSQL.append (sColumn).append (sDir).append (", ");
+    aSQL.append ("se.transportProfile").append (sDir);
+
+    // The values are numbers - no need for parameters
+    if (SMPDataSourceSingleton.getDatabaseType () == EDatabaseType.MYSQL)
+      aSQL.append (" LIMIT ").append (aRequest.getMaxCount ()).append (" OFFSET ").append (aRequest.getOffset ());
+    else
+      aSQL.append (" OFFSET ")
+          .append (aRequest.getOffset ())
+          .append (" ROWS FETCH NEXT ")
+          .append (aRequest.getMaxCount ())
+          .append (" ROWS ONLY");
+
+    final ICommonsList <DBResultRow> aDBResult = aExecutor.queryAll (aSQL.toString (), aValues);
+
+    // The rows of a service information are adjacent in both directions
+    final ICommonsList <SMPEndpointPage.Entry> ret = new CommonsArrayList <> ();
+    if (aDBResult != null)
+    {
+      final ServiceInformationStreamer aStreamer = new ServiceInformationStreamer (aSI -> {
+        for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+          for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+            ret.add (new SMPEndpointPage.Entry (aSI, aProcess, aEndpoint));
+      });
+      for (final DBResultRow aRow : aDBResult)
+        aStreamer.onRow (aRow);
+      aStreamer.flush ();
+    }
+    return new SMPEndpointPage (ret, nFilteredCount);
+  }
+
   @Nonnull
   @ReturnsMutableCopy
-  public ICommonsList <ISMPServiceInformation> getAllSMPServiceInformationOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
+  private ICommonsList <ISMPServiceInformation> _getAllSMPServiceInformationOfServiceGroup (@Nonnull final DBExecutor aExecutor,
+                                                                                            @Nullable final ISMPServiceGroup aServiceGroup)
   {
     final ICommonsList <ISMPServiceInformation> ret = new CommonsArrayList <> ();
     if (aServiceGroup != null)
     {
       final IParticipantIdentifier aPID = aServiceGroup.getParticipantIdentifier ();
-      final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT sm.documentIdentifierScheme, sm.documentIdentifier, sm.extension," +
-                                                                            "   sp.processIdentifierType, sp.processIdentifier, sp.extension," +
-                                                                            "   se.transportProfile, se.endpointReference, se.requireBusinessLevelSignature, se.minimumAuthenticationLevel," +
-                                                                            "     se.serviceActivationDate, se.serviceExpirationDate, se.certificate, se.serviceDescription," +
-                                                                            "     se.technicalContactUrl, se.technicalInformationUrl, se.extension" +
-                                                                            " FROM smp_service_metadata sm" +
-                                                                            " INNER JOIN smp_process sp" +
-                                                                            "   ON sm.businessIdentifierScheme=sp.businessIdentifierScheme AND sm.businessIdentifier=sp.businessIdentifier" +
-                                                                            "   AND sm.documentIdentifierScheme=sp.documentIdentifierScheme AND sm.documentIdentifier=sp.documentIdentifier" +
-                                                                            " INNER JOIN smp_endpoint se" +
-                                                                            "   ON sp.businessIdentifierScheme=se.businessIdentifierScheme AND sp.businessIdentifier=se.businessIdentifier" +
-                                                                            "   AND sp.documentIdentifierScheme=se.documentIdentifierScheme AND sp.documentIdentifier=se.documentIdentifier" +
-                                                                            "   AND sp.processIdentifierType=se.processIdentifierType AND sp.processIdentifier=se.processIdentifier" +
-                                                                            " WHERE sm.businessIdentifierScheme=? AND sm.businessIdentifier=?",
-                                                                            new ConstantPreparedStatementDataProvider (aPID.getScheme (),
-                                                                                                                       aPID.getValue ()));
+      final ICommonsList <DBResultRow> aDBResult = aExecutor.queryAll ("SELECT sm.documentIdentifierScheme, sm.documentIdentifier, sm.extension," +
+                                                                       "   sp.processIdentifierType, sp.processIdentifier, sp.extension," +
+                                                                       "   se.transportProfile, se.endpointReference, se.requireBusinessLevelSignature, se.minimumAuthenticationLevel," +
+                                                                       "     se.serviceActivationDate, se.serviceExpirationDate, se.certhash, se.serviceDescription," +
+                                                                       "     se.technicalContactUrl, se.technicalInformationUrl, se.extension," +
+                                                                       "   sm.lastmoddt" +
+                                                                       " FROM smp_service_metadata sm" +
+                                                                       " INNER JOIN smp_process sp" +
+                                                                       "   ON sm.businessIdentifierScheme=sp.businessIdentifierScheme AND sm.businessIdentifier=sp.businessIdentifier" +
+                                                                       "   AND sm.documentIdentifierScheme=sp.documentIdentifierScheme AND sm.documentIdentifier=sp.documentIdentifier" +
+                                                                       " INNER JOIN smp_endpoint se" +
+                                                                       "   ON sp.businessIdentifierScheme=se.businessIdentifierScheme AND sp.businessIdentifier=se.businessIdentifier" +
+                                                                       "   AND sp.documentIdentifierScheme=se.documentIdentifierScheme AND sp.documentIdentifier=se.documentIdentifier" +
+                                                                       "   AND sp.processIdentifierType=se.processIdentifierType AND sp.processIdentifier=se.processIdentifier" +
+                                                                       " WHERE sm.businessIdentifierScheme=? AND sm.businessIdentifier=?",
+                                                                       new ConstantPreparedStatementDataProvider (aPID.getScheme (),
+                                                                                                                  aPID.getValue ()));
       if (aDBResult != null)
       {
         final ICommonsMap <DocTypeAndExtension, ICommonsMap <SMPProcess, ICommonsList <SMPEndpoint>>> aGrouping = new CommonsHashMap <> ();
@@ -519,12 +1009,14 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
                                                          aDBRow.getAsString (9),
                                                          aDBRow.getAsXMLOffsetDateTime (10),
                                                          aDBRow.getAsXMLOffsetDateTime (11),
-                                                         aDBRow.getAsString (12),
+                                                         _getCertificateOfHash (aDBRow.getAsString (12)),
                                                          aDBRow.getAsString (13),
                                                          aDBRow.getAsString (14),
                                                          aDBRow.getAsString (15),
                                                          aDBRow.getAsString (16));
-          aGrouping.computeIfAbsent (new DocTypeAndExtension (aDocTypeID, sServiceInformationExtension),
+          aGrouping.computeIfAbsent (new DocTypeAndExtension (aDocTypeID,
+                                                              sServiceInformationExtension,
+                                                              aDBRow.getAsLocalDateTime (17)),
                                      k -> new CommonsHashMap <> ())
                    .computeIfAbsent (aProcess, k -> new CommonsArrayList <> ())
                    .add (aEndpoint);
@@ -542,13 +1034,25 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
           }
 
           final DocTypeAndExtension aDE = aEntry.getKey ();
-          ret.add (new SMPServiceInformation (aServiceGroup, aDE.m_aDocTypeID, aProcesses, aDE.m_sExt));
+          final SMPServiceInformation aServiceInfo = new SMPServiceInformation (aServiceGroup,
+                                                                                aDE.m_aDocTypeID,
+                                                                                aProcesses,
+                                                                                aDE.m_sExt);
+          aServiceInfo.setLastModificationDateTime (aDE.m_aLastModDT);
+          ret.add (aServiceInfo);
         }
       }
     }
     return ret;
   }
 
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceInformation> getAllSMPServiceInformationOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
+  {
+    return _getAllSMPServiceInformationOfServiceGroup (newReadExecutor (), aServiceGroup);
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <IDocumentTypeIdentifier> getAllSMPDocumentTypesOfServiceGroup (@Nullable final ISMPServiceGroup aServiceGroup)
@@ -557,11 +1061,11 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
     if (aServiceGroup != null)
     {
       final IParticipantIdentifier aPID = aServiceGroup.getParticipantIdentifier ();
-      final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT sm.documentIdentifierScheme, sm.documentIdentifier" +
-                                                                            " FROM smp_service_metadata sm" +
-                                                                            " WHERE sm.businessIdentifierScheme=? AND sm.businessIdentifier=?",
-                                                                            new ConstantPreparedStatementDataProvider (aPID.getScheme (),
-                                                                                                                       aPID.getValue ()));
+      final ICommonsList <DBResultRow> aDBResult = newReadExecutor ().queryAll ("SELECT sm.documentIdentifierScheme, sm.documentIdentifier" +
+                                                                                " FROM smp_service_metadata sm" +
+                                                                                " WHERE sm.businessIdentifierScheme=? AND sm.businessIdentifier=?",
+                                                                                new ConstantPreparedStatementDataProvider (aPID.getScheme (),
+                                                                                                                           aPID.getValue ()));
       if (aDBResult != null)
         for (final DBResultRow aRow : aDBResult)
           ret.add (new SimpleDocumentTypeIdentifier (aRow.getAsString (0), aRow.getAsString (1)));
@@ -579,27 +1083,29 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
       return null;
 
     final IParticipantIdentifier aPID = aServiceGroup.getParticipantIdentifier ();
-    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT sm.extension," +
-                                                                          "   sp.processIdentifierType, sp.processIdentifier, sp.extension," +
-                                                                          "   se.transportProfile, se.endpointReference, se.requireBusinessLevelSignature, se.minimumAuthenticationLevel," +
-                                                                          "     se.serviceActivationDate, se.serviceExpirationDate, se.certificate, se.serviceDescription," +
-                                                                          "     se.technicalContactUrl, se.technicalInformationUrl, se.extension" +
-                                                                          " FROM smp_service_metadata sm" +
-                                                                          " INNER JOIN smp_process sp" +
-                                                                          "   ON sm.businessIdentifierScheme=sp.businessIdentifierScheme AND sm.businessIdentifier=sp.businessIdentifier" +
-                                                                          "   AND sm.documentIdentifierScheme=sp.documentIdentifierScheme AND sm.documentIdentifier=sp.documentIdentifier" +
-                                                                          " INNER JOIN smp_endpoint se" +
-                                                                          "   ON sp.businessIdentifierScheme=se.businessIdentifierScheme AND sp.businessIdentifier=se.businessIdentifier" +
-                                                                          "   AND sp.documentIdentifierScheme=se.documentIdentifierScheme AND sp.documentIdentifier=se.documentIdentifier" +
-                                                                          "   AND sp.processIdentifierType=se.processIdentifierType AND sp.processIdentifier=se.processIdentifier" +
-                                                                          " WHERE sm.businessIdentifierScheme=? AND sm.businessIdentifier=? AND sm.documentIdentifierScheme=? AND sm.documentIdentifier=?",
-                                                                          new ConstantPreparedStatementDataProvider (aPID.getScheme (),
-                                                                                                                     aPID.getValue (),
-                                                                                                                     aDocTypeID.getScheme (),
-                                                                                                                     aDocTypeID.getValue ()));
+    final ICommonsList <DBResultRow> aDBResult = newReadExecutor ().queryAll ("SELECT sm.extension," +
+                                                                              "   sp.processIdentifierType, sp.processIdentifier, sp.extension," +
+                                                                              "   se.transportProfile, se.endpointReference, se.requireBusinessLevelSignature, se.minimumAuthenticationLevel," +
+                                                                              "     se.serviceActivationDate, se.serviceExpirationDate, se.certhash, se.serviceDescription," +
+                                                                              "     se.technicalContactUrl, se.technicalInformationUrl, se.extension," +
+                                                                              "   sm.lastmoddt" +
+                                                                              " FROM smp_service_metadata sm" +
+                                                                              " INNER JOIN smp_process sp" +
+                                                                              "   ON sm.businessIdentifierScheme=sp.businessIdentifierScheme AND sm.businessIdentifier=sp.businessIdentifier" +
+                                                                              "   AND sm.documentIdentifierScheme=sp.documentIdentifierScheme AND sm.documentIdentifier=sp.documentIdentifier" +
+                                                                              " INNER JOIN smp_endpoint se" +
+                                                                              "   ON sp.businessIdentifierScheme=se.businessIdentifierScheme AND sp.businessIdentifier=se.businessIdentifier" +
+                                                                              "   AND sp.documentIdentifierScheme=se.documentIdentifierScheme AND sp.documentIdentifier=se.documentIdentifier" +
+                                                                              "   AND sp.processIdentifierType=se.processIdentifierType AND sp.processIdentifier=se.processIdentifier" +
+                                                                              " WHERE sm.businessIdentifierScheme=? AND sm.businessIdentifier=? AND sm.documentIdentifierScheme=? AND sm.documentIdentifier=?",
+                                                                              new ConstantPreparedStatementDataProvider (aPID.getScheme (),
+                                                                                                                         aPID.getValue (),
+                                                                                                                         aDocTypeID.getScheme (),
+                                                                                                                         aDocTypeID.getValue ()));
     if (aDBResult != null && aDBResult.isNotEmpty ())
     {
       final String sServiceInformationExtension = aDBResult.getFirstOrNull ().getAsString (0);
+      final LocalDateTime aLastModDT = aDBResult.getFirstOrNull ().getAsLocalDateTime (15);
 
       final ICommonsMap <SMPProcess, ICommonsList <SMPEndpoint>> aEndpoints = new CommonsHashMap <> ();
       for (final DBResultRow aDBRow : aDBResult)
@@ -616,7 +1122,7 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
                                                        aDBRow.getAsString (7),
                                                        aDBRow.getAsXMLOffsetDateTime (8),
                                                        aDBRow.getAsXMLOffsetDateTime (9),
-                                                       aDBRow.getAsString (10),
+                                                       _getCertificateOfHash (aDBRow.getAsString (10)),
                                                        aDBRow.getAsString (11),
                                                        aDBRow.getAsString (12),
                                                        aDBRow.getAsString (13),
@@ -632,11 +1138,205 @@ public final class SMPServiceInformationManagerJDBC extends AbstractJDBCEnabledM
         aProcess.addEndpoints (aEntry.getValue ());
         aProcesses.add (aProcess);
       }
-      return new SMPServiceInformation (aServiceGroup, aDocTypeID, aProcesses, sServiceInformationExtension);
+      final SMPServiceInformation ret = new SMPServiceInformation (aServiceGroup,
+                                                                   aDocTypeID,
+                                                                   aProcesses,
+                                                                   sServiceInformationExtension);
+      ret.setLastModificationDateTime (aLastModDT);
+      return ret;
     }
     return null;
   }
 
+  /**
+   * Change all endpoints selected by the provided changes. The modification is
+   * done with one UPDATE statement per service information, and the
+   * statements are committed in chunks of
+   * {@link SMPEndpointBulkChangeHelper#CHUNK_SIZE} service information
+   * objects. The callbacks are invoked in parallel afterwards, once per changed
+   * service information.
+   *
+   * @param aChanges
+   *        The changes to perform one after the other. May neither be
+   *        <code>null</code> nor empty.
+   * @return The result of the change and never <code>null</code>.
+   */
+  @Nonnull
+  private SMPEndpointBulkChangeResult _changeAllEndpoints (@Nonnull @Nonempty final ICommonsList <EndpointChange> aChanges)
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final DBExecutor aExecutor = newExecutor ();
+    // A service information may be affected by more than one change
+    final ICommonsOrderedMap <String, DBResultRow> aChangedKeys = new CommonsLinkedHashMap <> ();
+    final ICommonsSortedSet <String> aChangedServiceGroupIDs = new CommonsTreeSet <> ();
+    final MutableLong aChangedEndpoints = new MutableLong (0);
+    int nErrors = 0;
+    int nHandled = 0;
+
+    final Timestamp aLastModDT = DBValueHelper.toTimestamp (ISMPHasLastModification.getNextLastModificationDateTime (null));
+    for (final EndpointChange aChange : aChanges)
+    {
+      final ICommonsList <DBResultRow> aKeys = aExecutor.queryAll (aChange.m_sKeySQL,
+                                                                   new ConstantPreparedStatementDataProvider (aChange.m_aKeyParams));
+      if (aKeys == null)
+        continue;
+
+      for (final ICommonsList <DBResultRow> aChunk : SMPEndpointBulkChangeHelper.getChunks (aKeys,
+                                                                                           SMPEndpointBulkChangeHelper.CHUNK_SIZE))
+      {
+        final MutableLong aChunkChangedEndpoints = new MutableLong (0);
+        final ESuccess eSuccess = aExecutor.performInTransaction ( () -> {
+          for (final DBResultRow aKey : aChunk)
+          {
+            final ICommonsList <Object> aKeyValues = new CommonsArrayList <> (aKey.getAsString (0),
+                                                                              aKey.getAsString (1),
+                                                                              aKey.getAsString (2),
+                                                                              aKey.getAsString (3));
+            final ConstantPreparedStatementDataProvider aUpdateValues = new ConstantPreparedStatementDataProvider (aChange.m_aUpdateParams);
+            aKeyValues.forEach (aUpdateValues::addValue);
+            final long nUpdated = aExecutor.insertOrUpdateOrDelete (aChange.m_sUpdateSQL +
+                                                                    " AND businessIdentifierScheme=? AND businessIdentifier=? AND documentIdentifierScheme=? AND documentIdentifier=?",
+                                                                    aUpdateValues);
+            aChunkChangedEndpoints.inc (Math.max (nUpdated, 0));
+            aExecutor.insertOrUpdateOrDelete ("UPDATE smp_service_metadata SET lastmoddt=?" +
+                                              " WHERE businessIdentifierScheme=? AND businessIdentifier=? AND documentIdentifierScheme=? AND documentIdentifier=?",
+                                              new ConstantPreparedStatementDataProvider (aLastModDT,
+                                                                                         aKeyValues.get (0),
+                                                                                         aKeyValues.get (1),
+                                                                                         aKeyValues.get (2),
+                                                                                         aKeyValues.get (3)));
+          }
+        });
+        if (eSuccess.isSuccess ())
+        {
+          aChangedEndpoints.inc (aChunkChangedEndpoints.longValue ());
+          for (final DBResultRow aKey : aChunk)
+          {
+            // The stored identifiers are already unified
+            final String sServiceGroupID = CIdentifier.getURIEncoded (aKey.getAsString (0), aKey.getAsString (1));
+            aChangedKeys.put (sServiceGroupID + "::" + CIdentifier.getURIEncoded (aKey.getAsString (2),
+                                                                                   aKey.getAsString (3)),
+                              aKey);
+            aChangedServiceGroupIDs.add (sServiceGroupID);
+          }
+        }
+        else
+          nErrors += aChunk.size ();
+
+        nHandled += aChunk.size ();
+        LOGGER.info ("Bulk endpoint change: " +
+                     nHandled +
+                     " service information objects handled after " +
+                     aSW.getMillis () +
+                     " ms");
+      }
+    }
+
+    // Reload the changed objects outside of the transactions
+    nErrors += SMPEndpointBulkChangeHelper.forEachParallel ("Service information callbacks", aChangedKeys.copyOfValues (), aKey -> {
+      final ISMPServiceGroup aServiceGroup = m_aServiceGroupMgr.getSMPServiceGroupOfID (new SimpleParticipantIdentifier (aKey.getAsString (0),
+                                                                                                                         aKey.getAsString (1)));
+      final ISMPServiceInformation aSI = getSMPServiceInformationOfServiceGroupAndDocumentType (aServiceGroup,
+                                                                                               new SimpleDocumentTypeIdentifier (aKey.getAsString (2),
+                                                                                                                                 aKey.getAsString (3)));
+      if (aSI != null)
+        m_aCBs.forEach (x -> x.onSMPServiceInformationUpdated (aSI));
+    });
+
+    return new SMPEndpointBulkChangeResult (aChangedEndpoints.longValue (),
+                                            nErrors,
+                                            aChangedServiceGroupIDs,
+                                            Duration.ofMillis (aSW.stopAndGetMillis ()));
+  }
+
+  @Override
+  @Nonnull
+  public SMPEndpointBulkChangeResult changeAllEndpointURLs (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                            @Nonnull @Nonempty final String sOldURL,
+                                                            @Nonnull @Nonempty final String sNewURL)
+  {
+    ValueEnforcer.notEmpty (sOldURL, "OldURL");
+    ValueEnforcer.notEmpty (sNewURL, "NewURL");
+
+    String sKeySQL = "SELECT DISTINCT businessIdentifierScheme, businessIdentifier, documentIdentifierScheme, documentIdentifier" +
+                     " FROM smp_endpoint WHERE endpointReference=?";
+    final ICommonsList <Object> aKeyParams = new CommonsArrayList <> (sOldURL);
+    if (aServiceGroup != null)
+    {
+      final IParticipantIdentifier aPID = aServiceGroup.getParticipantIdentifier ();
+      sKeySQL += " AND businessIdentifierScheme=? AND businessIdentifier=?";
+      aKeyParams.add (aPID.getScheme ());
+      aKeyParams.add (aPID.getValue ());
+    }
+
+    final SMPEndpointBulkChangeResult ret = _changeAllEndpoints (new CommonsArrayList <> (new EndpointChange (sKeySQL,
+                                                                                                             aKeyParams,
+                                                                                                             "UPDATE smp_endpoint SET endpointReference=? WHERE endpointReference=?",
+                                                                                                             new CommonsArrayList <> (sNewURL,
+                                                                                                                                      sOldURL))));
+    AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
+                                      "bulk-change-endpoint-url",
+                                      aServiceGroup == null ? null : aServiceGroup.getID (),
+                                      sOldURL,
+                                      sNewURL,
+                                      Long.valueOf (ret.getChangedEndpointCount ()));
+    return ret;
+  }
+
+  @Override
+  @Nonnull
+  public SMPEndpointBulkChangeResult changeAllEndpointCertificates (@Nonnull final Predicate <String> aOldCertificateMatcher,
+                                                                    @Nonnull @Nonempty final String sNewCertificate)
+  {
+    ValueEnforcer.notNull (aOldCertificateMatcher, "OldCertificateMatcher");
+    ValueEnforcer.notEmpty (sNewCertificate, "NewCertificate");
+
+    // The certificates are stored only once, so the matching is done on the
+    // (small) certificate table and not on the endpoints
+    final String sNewCertHash = SMPCertificateCache.getHash (sNewCertificate);
+    final ICommonsList <Object> aOldCertHashes = new CommonsArrayList <> ();
+    final ICommonsList <DBResultRow> aCerts = newExecutor ().queryAll ("SELECT certhash, certificate FROM smp_certificate");
+    if (aCerts != null)
+      for (final DBResultRow aRow : aCerts)
+      {
+        final String sCertHash = aRow.getAsString (0);
+        final String sCert = aRow.getAsString (1);
+        if (!sCertHash.equals (sNewCertHash) && StringHelper.hasText (sCert) && aOldCertificateMatcher.test (sCert))
+          aOldCertHashes.add (sCertHash);
+      }
+
+    final SMPEndpointBulkChangeResult ret;
+    if (aOldCertHashes.isEmpty ())
+      ret = new SMPEndpointBulkChangeResult (0, 0, new CommonsTreeSet <> (), Duration.ZERO);
+    else
+    {
+      _ensureCertificateStored (newExecutor (), sNewCertHash, sNewCertificate);
+
+      // Keep the IN lists below the parameter limits of the databases
+      final ICommonsList <EndpointChange> aChanges = new CommonsArrayList <> ();
+      for (final ICommonsList <Object> aChunk : SMPEndpointBulkChangeHelper.getChunks (aOldCertHashes,
+                                                                                      SMPEndpointBulkChangeHelper.CHUNK_SIZE))
+      {
+        final String sPlaceholders = StringHelper.getRepeated ("?,", aChunk.size () - 1) + "?";
+        final ICommonsList <Object> aUpdateParams = new CommonsArrayList <> (sNewCertHash);
+        aUpdateParams.addAll (aChunk);
+        aChanges.add (new EndpointChange ("SELECT DISTINCT businessIdentifierScheme, businessIdentifier, documentIdentifierScheme, documentIdentifier" +
+                                          " FROM smp_endpoint WHERE certhash IN (" +
+                                          sPlaceholders +
+                                          ")",
+                                          aChunk,
+                                          "UPDATE smp_endpoint SET certhash=? WHERE certhash IN (" + sPlaceholders + ")",
+                                          aUpdateParams));
+      }
+      ret = _changeAllEndpoints (aChanges);
+    }
+    AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
+                                      "bulk-change-endpoint-certificate",
+                                      sNewCertHash,
+                                      Long.valueOf (ret.getChangedEndpointCount ()));
+    return ret;
+  }
+
   public boolean containsAnyEndpointWithTransportProfile (@Nullable final String sTransportProfileID)
   {
     if (StringHelper.hasNoText (sTransportProfileID))
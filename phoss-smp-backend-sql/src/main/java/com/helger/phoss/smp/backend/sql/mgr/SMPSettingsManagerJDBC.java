@@ -17,10 +17,14 @@
 package com.helger.phoss.smp.backend.sql.mgr;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +33,6 @@ import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
-import com.helger.commons.annotation.UsedViaReflection;
 import com.helger.commons.callback.CallbackList;
 import com.helger.commons.collection.attr.IStringMap;
 import com.helger.commons.collection.attr.StringMap;
@@ -46,14 +49,24 @@ import com.helger.db.jdbc.callback.ConstantPreparedStatementDataProvider;
 import com.helger.db.jdbc.executor.DBExecutor;
 import com.helger.db.jdbc.executor.DBResultRow;
 import com.helger.db.jdbc.mgr.AbstractJDBCEnabledManager;
+import com.helger.phoss.smp.backend.sql.SMPJDBCConfiguration;
 import com.helger.phoss.smp.settings.ISMPSettings;
 import com.helger.phoss.smp.settings.ISMPSettingsCallback;
 import com.helger.phoss.smp.settings.ISMPSettingsManager;
 import com.helger.phoss.smp.settings.SMPSettings;
-import com.helger.web.scope.singleton.AbstractRequestWebSingleton;
 
+/**
+ * The JDBC based settings manager. The settings are read once and kept as an
+ * immutable snapshot for the whole process. The snapshot is replaced after
+ * each update. Changes of other nodes are detected by regularly comparing the
+ * settings version in the database.
+ *
+ * @author Philip Helger
+ */
 public class SMPSettingsManagerJDBC extends AbstractJDBCEnabledManager implements ISMPSettingsManager
 {
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPSettingsManagerJDBC.class);
+
   private static final String SMP_REST_WRITABLE_API_DISABLED = "smp-rest-writable-api-disabled";
   private static final String DIRECTORY_INTEGRATION_REQUIRED = "directory-required";
   private static final String DIRECTORY_INTEGRATION_ENABLED = "directory-enabled";
@@ -62,8 +75,33 @@ public class SMPSettingsManagerJDBC extends AbstractJDBCEnabledManager implement
   private static final String SML_REQUIRED = "sml-required";
   private static final String SML_ENABLED = "sml-enabled";
   private static final String SML_INFO_ID = "smlinfo-id";
+  // The row that holds the current settings version
+  private static final String SETTINGS_VERSION = "settings-version";
+
+  /**
+   * The settings together with the version they were read with.
+   *
+   * @author Philip Helger
+   */
+  @Immutable
+  private static final class SettingsSnapshot
+  {
+    private final ISMPSettings m_aSettings;
+    // May be null if the version column is not available
+    private final Long m_aVersion;
+
+    SettingsSnapshot (@Nonnull final ISMPSettings aSettings, @Nullable final Long aVersion)
+    {
+      m_aSettings = aSettings;
+      m_aVersion = aVersion;
+    }
+  }
 
   private final CallbackList <ISMPSettingsCallback> m_aCallbacks = new CallbackList <> ();
+  private final long m_nPollIntervalMillis;
+  private final LongSupplier m_aClock;
+  private final AtomicReference <SettingsSnapshot> m_aSnapshot = new AtomicReference <> ();
+  private final AtomicLong m_aNextPollMillis = new AtomicLong (0);
 
   /**
    * Constructor
@@ -73,8 +111,35 @@ public class SMPSettingsManagerJDBC extends AbstractJDBCEnabledManager implement
    *        <code>null</code>.
    */
   public SMPSettingsManagerJDBC (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier)
+  {
+    this (aDBExecSupplier, SMPJDBCConfiguration.getJdbcSettingsPollIntervalMilliseconds ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aDBExecSupplier
+   *        The supplier for {@link DBExecutor} objects. May not be
+   *        <code>null</code>.
+   * @param nPollIntervalMillis
+   *        The number of milliseconds between two checks for changes of other
+   *        nodes. Values &le; 0 disable the check.
+   * @since 7.1.4
+   */
+  public SMPSettingsManagerJDBC (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier,
+                                 final long nPollIntervalMillis)
+  {
+    this (aDBExecSupplier, nPollIntervalMillis, System::currentTimeMillis);
+  }
+
+  SMPSettingsManagerJDBC (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier,
+                          final long nPollIntervalMillis,
+                          @Nonnull final LongSupplier aClock)
   {
     super (aDBExecSupplier);
+    ValueEnforcer.notNull (aClock, "Clock");
+    m_nPollIntervalMillis = nPollIntervalMillis;
+    m_aClock = aClock;
   }
 
   @Nonnull
@@ -87,29 +152,109 @@ public class SMPSettingsManagerJDBC extends AbstractJDBCEnabledManager implement
   static void setSettingsValueInDB (@Nonnull final DBExecutor aExecutor,
                                     @Nonnull @Nonempty final String sKey,
                                     @Nullable final String sValue)
+  {
+    _setSettingsValueInDB (aExecutor, sKey, sValue, -1);
+  }
+
+  private static void _setSettingsValueInDB (@Nonnull final DBExecutor aExecutor,
+                                             @Nonnull @Nonempty final String sKey,
+                                             @Nullable final String sValue,
+                                             final long nVersion)
   {
     ValueEnforcer.notNull (aExecutor, "Executor");
     ValueEnforcer.notEmpty (sKey, "Key");
 
+    final String sTrimmedKey = DBValueHelper.getTrimmedToLength (sKey, 45);
+    final String sTrimmedValue = DBValueHelper.getTrimmedToLength (sValue, 500);
+
     // update
-    final long nUpdated = aExecutor.insertOrUpdateOrDelete ("UPDATE smp_settings SET value=? WHERE id=?",
-                                                            new ConstantPreparedStatementDataProvider (DBValueHelper.getTrimmedToLength (sValue,
-                                                                                                                                         500),
-                                                                                                       DBValueHelper.getTrimmedToLength (sKey,
-                                                                                                                                         45)));
+    final long nUpdated;
+    if (nVersion < 0)
+      nUpdated = aExecutor.insertOrUpdateOrDelete ("UPDATE smp_settings SET value=? WHERE id=?",
+                                                   new ConstantPreparedStatementDataProvider (sTrimmedValue,
+                                                                                              sTrimmedKey));
+    else
+      nUpdated = aExecutor.insertOrUpdateOrDelete ("UPDATE smp_settings SET value=?, version=? WHERE id=?",
+                                                   new ConstantPreparedStatementDataProvider (sTrimmedValue,
+                                                                                              Long.valueOf (nVersion),
+                                                                                              sTrimmedKey));
     if (nUpdated == 0)
     {
       // Create
-      final long nCreated = aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_settings (id, value) VALUES (?, ?)",
-                                                              new ConstantPreparedStatementDataProvider (DBValueHelper.getTrimmedToLength (sKey,
-                                                                                                                                           45),
-                                                                                                         DBValueHelper.getTrimmedToLength (sValue,
-                                                                                                                                           500)));
+      final long nCreated;
+      if (nVersion < 0)
+        nCreated = aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_settings (id, value) VALUES (?, ?)",
+                                                     new ConstantPreparedStatementDataProvider (sTrimmedKey,
+                                                                                                sTrimmedValue));
+      else
+        nCreated = aExecutor.insertOrUpdateOrDelete ("INSERT INTO smp_settings (id, value, version) VALUES (?, ?, ?)",
+                                                     new ConstantPreparedStatementDataProvider (sTrimmedKey,
+                                                                                                sTrimmedValue,
+                                                                                                Long.valueOf (nVersion)));
       if (nCreated != 1)
         throw new IllegalStateException ("Failed to create new DB entry (" + nCreated + ")");
     }
   }
 
+  @Nullable
+  private static Long _getSettingsVersionFromDB (@Nonnull final DBExecutor aExecutor)
+  {
+    final Wrapper <DBResultRow> aDBResult = new Wrapper <> ();
+    if (aExecutor.querySingle ("SELECT MAX(version) FROM smp_settings", aDBResult::set).isFailure () ||
+        aDBResult.isNotSet ())
+      return null;
+    // NULL if the table is empty
+    final Long ret = aDBResult.get ().getAsLongObj (0);
+    return ret != null ? ret : Long.valueOf (0);
+  }
+
+  /**
+   * Increment the settings version. The update locks the version row until
+   * the end of the transaction, so concurrent changes of different nodes
+   * always get different versions.
+   *
+   * @return The new version or -1 if the version column is not available.
+   */
+  private static long _incrementSettingsVersionInDB (@Nonnull final DBExecutor aExecutor)
+  {
+    final long nUpdated = aExecutor.insertOrUpdateOrDelete ("UPDATE smp_settings SET version=version+1 WHERE id=?",
+                                                            new ConstantPreparedStatementDataProvider (SETTINGS_VERSION));
+    if (nUpdated < 0)
+      return -1;
+
+    if (nUpdated == 0)
+    {
+      // First change - continue after the versions written so far. A
+      // concurrent creation fails because of the primary key
+      final Long aOldVersion = _getSettingsVersionFromDB (aExecutor);
+      if (aOldVersion == null)
+        return -1;
+      final long nNewVersion = aOldVersion.longValue () + 1;
+      _setSettingsValueInDB (aExecutor, SETTINGS_VERSION, null, nNewVersion);
+      return nNewVersion;
+    }
+
+    final Wrapper <DBResultRow> aDBResult = new Wrapper <> ();
+    aExecutor.querySingle ("SELECT version FROM smp_settings WHERE id=?",
+                           new ConstantPreparedStatementDataProvider (SETTINGS_VERSION),
+                           aDBResult::set);
+    if (aDBResult.isNotSet ())
+      throw new IllegalStateException ("Failed to read the new settings version");
+    return aDBResult.get ().getAsLong (0);
+  }
+
+  /**
+   * @return The current version of the settings in the database or
+   *         <code>null</code> if the version could not be determined (e.g.
+   *         because the version column is not available).
+   * @since 7.1.4
+   */
+  @Nullable
+  public Long getSettingsVersionFromDB ()
+  {
+    return _getSettingsVersionFromDB (newExecutor ());
+  }
+
   @Nonnull
   public ESuccess setSettingsValuesInDB (@Nonnull @Nonempty final Map <String, String> aEntries)
   {
@@ -117,12 +262,15 @@ public class SMPSettingsManagerJDBC extends AbstractJDBCEnabledManager implement
 
     final DBExecutor aExecutor = newExecutor ();
     return aExecutor.performInTransaction ( () -> {
+      // Increment the version so that the other nodes notice the change
+      final long nNewVersion = _incrementSettingsVersionInDB (aExecutor);
+
       for (final Map.Entry <String, String> aEntry : aEntries.entrySet ())
       {
         final String sKey = aEntry.getKey ();
         final String sValue = aEntry.getValue ();
 
-        setSettingsValueInDB (aExecutor, sKey, sValue);
+        _setSettingsValueInDB (aExecutor, sKey, sValue, nNewVersion);
       }
     });
   }
@@ -132,7 +280,8 @@ public class SMPSettingsManagerJDBC extends AbstractJDBCEnabledManager implement
   public ICommonsMap <String, String> getAllSettingsValuesFromDB ()
   {
     final ICommonsMap <String, String> ret = new CommonsHashMap <> ();
-    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT id, value FROM smp_settings");
+    final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT id, value FROM smp_settings WHERE id<>?",
+                                                                          new ConstantPreparedStatementDataProvider (SETTINGS_VERSION));
     if (aDBResult != null)
       for (final DBResultRow aRow : aDBResult)
         ret.put (aRow.getAsString (0), aRow.getAsString (1));
@@ -164,68 +313,78 @@ public class SMPSettingsManagerJDBC extends AbstractJDBCEnabledManager implement
     return getSettingsValueFromDB (newExecutor (), sKey);
   }
 
-  public static class SettingsSingleton extends AbstractRequestWebSingleton
+  @Nonnull
+  private static ISMPSettings _createSettings (@Nonnull final Map <String, String> aValues)
   {
-    private static final Logger LOGGER = LoggerFactory.getLogger (SMPSettingsManagerJDBC.SettingsSingleton.class);
-    private ISMPSettings m_aSettings;
-
-    @Deprecated
-    @UsedViaReflection
-    public SettingsSingleton ()
-    {}
+    final SMPSettings ret = new SMPSettings (false);
+    ret.setRESTWritableAPIDisabled (StringParser.parseBool (aValues.get (SMP_REST_WRITABLE_API_DISABLED),
+                                                            SMPSettings.DEFAULT_SMP_REST_WRITABLE_API_DISABLED));
+    ret.setDirectoryIntegrationEnabled (StringParser.parseBool (aValues.get (DIRECTORY_INTEGRATION_ENABLED),
+                                                                SMPSettings.DEFAULT_SMP_DIRECTORY_INTEGRATION_ENABLED));
+    ret.setDirectoryIntegrationRequired (StringParser.parseBool (aValues.get (DIRECTORY_INTEGRATION_REQUIRED),
+                                                                 SMPSettings.DEFAULT_SMP_DIRECTORY_INTEGRATION_REQUIRED));
+    ret.setDirectoryIntegrationAutoUpdate (StringParser.parseBool (aValues.get (DIRECTORY_INTEGRATION_AUTO_UPDATE),
+                                                                   SMPSettings.DEFAULT_SMP_DIRECTORY_INTEGRATION_AUTO_UPDATE));
+    ret.setDirectoryHostName (aValues.get (DIRECTORY_HOSTNAME));
+    ret.setSMLEnabled (StringParser.parseBool (aValues.get (SML_ENABLED), SMPSettings.DEFAULT_SML_ENABLED));
+    ret.setSMLRequired (StringParser.parseBool (aValues.get (SML_REQUIRED), SMPSettings.DEFAULT_SML_REQUIRED));
+    ret.setSMLInfoID (aValues.get (SML_INFO_ID));
+    return ret;
+  }
 
-    @Nonnull
-    public static SettingsSingleton getInstance ()
-    {
-      return getRequestSingleton (SettingsSingleton.class);
-    }
+  private void _setSnapshot (@Nonnull final SettingsSnapshot aNewSnapshot, final boolean bInvokeCallbacks)
+  {
+    m_aSnapshot.set (aNewSnapshot);
+    m_aNextPollMillis.set (m_aClock.getAsLong () + m_nPollIntervalMillis);
+    if (bInvokeCallbacks)
+      m_aCallbacks.forEach (x -> x.onSMPSettingsChanged (aNewSnapshot.m_aSettings));
+  }
 
-    @Nonnull
-    private ISMPSettings _getSettingsFromDB (@Nonnull final SMPSettingsManagerJDBC aMgr)
-    {
-      // Queries DB
-      final ICommonsMap <String, String> aValues = aMgr.getAllSettingsValuesFromDB ();
-
-      final SMPSettings ret = new SMPSettings (false);
-      ret.setRESTWritableAPIDisabled (StringParser.parseBool (aValues.get (SMP_REST_WRITABLE_API_DISABLED),
-                                                              SMPSettings.DEFAULT_SMP_REST_WRITABLE_API_DISABLED));
-      ret.setDirectoryIntegrationEnabled (StringParser.parseBool (aValues.get (DIRECTORY_INTEGRATION_ENABLED),
-                                                                  SMPSettings.DEFAULT_SMP_DIRECTORY_INTEGRATION_ENABLED));
-      ret.setDirectoryIntegrationRequired (StringParser.parseBool (aValues.get (DIRECTORY_INTEGRATION_REQUIRED),
-                                                                   SMPSettings.DEFAULT_SMP_DIRECTORY_INTEGRATION_REQUIRED));
-      ret.setDirectoryIntegrationAutoUpdate (StringParser.parseBool (aValues.get (DIRECTORY_INTEGRATION_AUTO_UPDATE),
-                                                                     SMPSettings.DEFAULT_SMP_DIRECTORY_INTEGRATION_AUTO_UPDATE));
-      ret.setDirectoryHostName (aValues.get (DIRECTORY_HOSTNAME));
-      ret.setSMLEnabled (StringParser.parseBool (aValues.get (SML_ENABLED), SMPSettings.DEFAULT_SML_ENABLED));
-      ret.setSMLRequired (StringParser.parseBool (aValues.get (SML_REQUIRED), SMPSettings.DEFAULT_SML_REQUIRED));
-      ret.setSMLInfoID (aValues.get (SML_INFO_ID));
-      return ret;
-    }
+  @Nonnull
+  private SettingsSnapshot _loadSnapshot ()
+  {
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Loading SMP settings from DB");
 
-    @Nonnull
-    public ISMPSettings getSettings (@Nonnull final SMPSettingsManagerJDBC aMgr)
-    {
-      ISMPSettings ret = m_aSettings;
-      if (ret == null)
-      {
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.debug ("Loading SMP settings from DB");
-        ret = m_aSettings = _getSettingsFromDB (aMgr);
-      }
-      else
-      {
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.debug ("Reusing SMP settings of request");
-      }
-      return ret;
-    }
+    // Read the version first, so that a concurrent change is found with the
+    // next poll
+    final Long aVersion = getSettingsVersionFromDB ();
+    return new SettingsSnapshot (_createSettings (getAllSettingsValuesFromDB ()), aVersion);
   }
 
   @Nonnull
   public ISMPSettings getSettings ()
   {
-    // Construct to read the settings only once per request
-    return SettingsSingleton.getInstance ().getSettings (this);
+    SettingsSnapshot aSnapshot = m_aSnapshot.get ();
+    if (aSnapshot == null)
+    {
+      // First access
+      aSnapshot = _loadSnapshot ();
+      if (m_aSnapshot.compareAndSet (null, aSnapshot))
+        m_aNextPollMillis.set (m_aClock.getAsLong () + m_nPollIntervalMillis);
+      else
+        aSnapshot = m_aSnapshot.get ();
+    }
+    else
+      if (m_nPollIntervalMillis > 0)
+      {
+        // Check if another node changed the settings - only one thread performs
+        // the check
+        final long nNow = m_aClock.getAsLong ();
+        final long nNextPoll = m_aNextPollMillis.get ();
+        if (nNow >= nNextPoll && m_aNextPollMillis.compareAndSet (nNextPoll, nNow + m_nPollIntervalMillis))
+        {
+          final Long aVersion = getSettingsVersionFromDB ();
+          if (aVersion == null || !aVersion.equals (aSnapshot.m_aVersion))
+          {
+            if (aVersion != null)
+              LOGGER.info ("The SMP settings were changed to version " + aVersion + " - reloading them");
+            aSnapshot = _loadSnapshot ();
+            _setSnapshot (aSnapshot, aVersion != null);
+          }
+        }
+      }
+    return aSnapshot.m_aSettings;
   }
 
   @Nonnull
@@ -251,6 +410,9 @@ public class SMPSettingsManagerJDBC extends AbstractJDBCEnabledManager implement
     // Save
     if (setSettingsValuesInDB (aMap).isFailure ())
       return EChange.UNCHANGED;
+
+    // Swap the snapshot without reading the values again
+    _setSnapshot (new SettingsSnapshot (_createSettings (aMap), getSettingsVersionFromDB ()), true);
     return EChange.CHANGED;
   }
 }
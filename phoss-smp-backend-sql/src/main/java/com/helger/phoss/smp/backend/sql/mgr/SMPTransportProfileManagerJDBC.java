@@ -30,7 +30,6 @@ import com.helger.commons.mutable.MutableLong;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
-import com.helger.commons.wrapper.Wrapper;
 import com.helger.db.api.helper.DBValueHelper;
 import com.helger.db.jdbc.callback.ConstantPreparedStatementDataProvider;
 import com.helger.db.jdbc.executor.DBExecutor;
@@ -39,17 +38,23 @@ import com.helger.db.jdbc.mgr.AbstractJDBCEnabledManager;
 import com.helger.peppol.smp.ESMPTransportProfileState;
 import com.helger.peppol.smp.ISMPTransportProfile;
 import com.helger.peppol.smp.SMPTransportProfile;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
+import com.helger.phoss.smp.domain.transportprofile.SMPTransportProfileRegistry;
 import com.helger.photon.audit.AuditHelper;
 
 /**
- * Implementation of {@link ISMPTransportProfileManager} for SQL backends.
+ * Implementation of {@link ISMPTransportProfileManager} for SQL backends. All
+ * transport profiles are kept in a {@link SMPTransportProfileRegistry}, so that
+ * reading them does not require a database query.
  *
  * @author Philip Helger
  * @since 5.5.0
  */
 public class SMPTransportProfileManagerJDBC extends AbstractJDBCEnabledManager implements ISMPTransportProfileManager
 {
+  private final SMPTransportProfileRegistry m_aRegistry;
+
   /**
    * Constructor
    *
@@ -58,8 +63,37 @@ public class SMPTransportProfileManagerJDBC extends AbstractJDBCEnabledManager i
    *        <code>null</code>.
    */
   public SMPTransportProfileManagerJDBC (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier)
+  {
+    this (aDBExecSupplier, SMPServerConfiguration.getTransportProfileReloadIntervalMilliseconds ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aDBExecSupplier
+   *        The supplier for {@link DBExecutor} objects. May not be
+   *        <code>null</code>.
+   * @param nReloadIntervalMillis
+   *        The number of milliseconds after which the transport profiles are
+   *        read again from the database. Values &le; 0 disable the reload.
+   * @since 7.1.4
+   */
+  public SMPTransportProfileManagerJDBC (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier,
+                                         final long nReloadIntervalMillis)
   {
     super (aDBExecSupplier);
+    m_aRegistry = new SMPTransportProfileRegistry (this::getAllSMPTransportProfilesFromDB, nReloadIntervalMillis);
+  }
+
+  /**
+   * @return The in-memory registry of all transport profiles. Never
+   *         <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public final SMPTransportProfileRegistry getRegistry ()
+  {
+    return m_aRegistry;
   }
 
   @Nullable
@@ -93,6 +127,7 @@ public class SMPTransportProfileManagerJDBC extends AbstractJDBCEnabledManager i
       return null;
     }
 
+    m_aRegistry.put (ret);
     AuditHelper.onAuditCreateSuccess (SMPTransportProfile.OT, sID, sName, Boolean.valueOf (bIsDeprecated));
     return ret;
   }
@@ -127,6 +162,10 @@ public class SMPTransportProfileManagerJDBC extends AbstractJDBCEnabledManager i
       return EChange.UNCHANGED;
     }
 
+    m_aRegistry.put (new SMPTransportProfile (sSMPTransportProfileID,
+                                              sName,
+                                              bIsDeprecated ? ESMPTransportProfileState.DEPRECATED
+                                                            : ESMPTransportProfileState.ACTIVE));
     AuditHelper.onAuditModifySuccess (SMPTransportProfile.OT,
                                       "update",
                                       sSMPTransportProfileID,
@@ -149,59 +188,58 @@ public class SMPTransportProfileManagerJDBC extends AbstractJDBCEnabledManager i
       return EChange.UNCHANGED;
     }
 
+    m_aRegistry.remove (sSMPTransportProfileID);
     AuditHelper.onAuditDeleteSuccess (SMPTransportProfile.OT, sSMPTransportProfileID);
     return EChange.CHANGED;
   }
 
-  @Nonnull
+  /**
+   * Read all transport profiles from the database. This is only invoked by the
+   * registry.
+   *
+   * @return <code>null</code> in case of a database error.
+   * @since 7.1.4
+   */
+  @Nullable
   @ReturnsMutableCopy
-  public ICommonsList <ISMPTransportProfile> getAllSMPTransportProfiles ()
+  public ICommonsList <ISMPTransportProfile> getAllSMPTransportProfilesFromDB ()
   {
-    final ICommonsList <ISMPTransportProfile> ret = new CommonsArrayList <> ();
     final ICommonsList <DBResultRow> aDBResult = newExecutor ().queryAll ("SELECT id, name, deprecated FROM smp_tprofile");
-    if (aDBResult != null)
-      for (final DBResultRow aRow : aDBResult)
-      {
-        ret.add (new SMPTransportProfile (aRow.getAsString (0),
-                                          aRow.getAsString (1),
-                                          aRow.getAsBoolean (2, false) ? ESMPTransportProfileState.DEPRECATED
-                                                                       : ESMPTransportProfileState.ACTIVE));
-      }
+    if (aDBResult == null)
+      return null;
+
+    final ICommonsList <ISMPTransportProfile> ret = new CommonsArrayList <> (aDBResult.size ());
+    for (final DBResultRow aRow : aDBResult)
+    {
+      ret.add (new SMPTransportProfile (aRow.getAsString (0),
+                                        aRow.getAsString (1),
+                                        aRow.getAsBoolean (2, false) ? ESMPTransportProfileState.DEPRECATED
+                                                                     : ESMPTransportProfileState.ACTIVE));
+    }
     return ret;
   }
 
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPTransportProfile> getAllSMPTransportProfiles ()
+  {
+    return m_aRegistry.getAll ();
+  }
+
   @Nullable
   public ISMPTransportProfile getSMPTransportProfileOfID (@Nullable final String sID)
   {
-    if (StringHelper.hasNoText (sID))
-      return null;
-
-    final Wrapper <DBResultRow> aDBResult = new Wrapper <> ();
-    newExecutor ().querySingle ("SELECT name, deprecated FROM smp_tprofile WHERE id=?",
-                                new ConstantPreparedStatementDataProvider (sID),
-                                aDBResult::set);
-    if (aDBResult.isNotSet ())
-      return null;
-
-    final DBResultRow aRow = aDBResult.get ();
-    return new SMPTransportProfile (sID,
-                                    aRow.getAsString (0),
-                                    aRow.getAsBoolean (1, false) ? ESMPTransportProfileState.DEPRECATED
-                                                                 : ESMPTransportProfileState.ACTIVE);
+    return m_aRegistry.get (sID);
   }
 
   public boolean containsSMPTransportProfileWithID (@Nullable final String sID)
   {
-    if (StringHelper.hasNoText (sID))
-      return false;
-
-    return newExecutor ().queryCount ("SELECT COUNT(*) FROM smp_tprofile WHERE id=?",
-                                      new ConstantPreparedStatementDataProvider (sID)) > 0;
+    return m_aRegistry.contains (sID);
   }
 
   @Nonnegative
   public long getSMPTransportProfileCount ()
   {
-    return newExecutor ().queryCount ("SELECT COUNT(*) FROM smp_tprofile");
+    return m_aRegistry.size ();
   }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.string.StringHelper;
+import com.helger.phoss.smp.domain.serviceinfo.SMPCertificateCache;
+
+/**
+ * Store all endpoint certificates in the certificate table and reference them
+ * by hash from the endpoints. The certificate column of the endpoints is kept,
+ * so that an older version can still read it. All distinct certificates are
+ * stored with the text of the first endpoint using them. Uses the connection
+ * of Flyway, so that everything happens in the transaction of the migration.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public final class V24__MigrateEndpointCertificatesToStore extends BaseJavaMigration
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (V24__MigrateEndpointCertificatesToStore.class);
+  private static final int BATCH_SIZE = 500;
+
+  private static final class EndpointKey
+  {
+    private final String [] m_aKey;
+    private final String m_sCertHash;
+
+    EndpointKey (@Nonnull final String [] aKey, @Nonnull final String sCertHash)
+    {
+      m_aKey = aKey;
+      m_sCertHash = sCertHash;
+    }
+  }
+
+  public void migrate (@Nonnull final Context context) throws Exception
+  {
+    LOGGER.info ("Migrating all endpoint certificates to the certificate table");
+
+    final Connection aConnection = context.getConnection ();
+
+    // Read everything first, so that no update happens while the result set
+    // is open. Only the keys are kept per endpoint, and each distinct
+    // certificate only once.
+    final ICommonsOrderedMap <String, String> aCertificates = new CommonsLinkedHashMap <> ();
+    final ICommonsList <EndpointKey> aEndpoints = new CommonsArrayList <> ();
+    try (final Statement aSelect = aConnection.createStatement ())
+    {
+      // Only a hint - depends on the JDBC driver
+      aSelect.setFetchSize (BATCH_SIZE);
+      try (final ResultSet aRS = aSelect.executeQuery ("SELECT businessIdentifierScheme, businessIdentifier, documentIdentifierScheme, documentIdentifier," +
+                                                       " processIdentifierType, processIdentifier, transportProfile, certificate" +
+                                                       " FROM smp_endpoint WHERE certhash IS NULL"))
+      {
+        while (aRS.next ())
+        {
+          final String sCertificate = aRS.getString (8);
+          if (StringHelper.hasNoText (sCertificate))
+            continue;
+
+          final String sCertHash = SMPCertificateCache.createHash (sCertificate);
+          aCertificates.putIfAbsent (sCertHash, sCertificate);
+
+          final String [] aKey = new String [7];
+          for (int i = 0; i < aKey.length; ++i)
+            aKey[i] = aRS.getString (i + 1);
+          aEndpoints.add (new EndpointKey (aKey, sCertHash));
+        }
+      }
+    }
+
+    try (final PreparedStatement aInsertCert = aConnection.prepareStatement ("INSERT INTO smp_certificate (certhash, certificate) VALUES (?, ?)"))
+    {
+      int nCount = 0;
+      for (final Map.Entry <String, String> aEntry : aCertificates.entrySet ())
+      {
+        aInsertCert.setString (1, aEntry.getKey ());
+        aInsertCert.setString (2, aEntry.getValue ());
+        aInsertCert.addBatch ();
+        if ((++nCount % BATCH_SIZE) == 0)
+          aInsertCert.executeBatch ();
+      }
+      aInsertCert.executeBatch ();
+    }
+
+    try (final PreparedStatement aUpdateEndpoint = aConnection.prepareStatement ("UPDATE smp_endpoint SET certhash=?" +
+                                                                                " WHERE businessIdentifierScheme=? AND businessIdentifier=? AND documentIdentifierScheme=? AND documentIdentifier=?" +
+                                                                                " AND processIdentifierType=? AND processIdentifier=? AND transportProfile=?"))
+    {
+      int nCount = 0;
+      for (final EndpointKey aEndpoint : aEndpoints)
+      {
+        aUpdateEndpoint.setString (1, aEndpoint.m_sCertHash);
+        for (int i = 0; i < aEndpoint.m_aKey.length; ++i)
+          aUpdateEndpoint.setString (i + 2, aEndpoint.m_aKey[i]);
+        aUpdateEndpoint.addBatch ();
+        if ((++nCount % BATCH_SIZE) == 0)
+          aUpdateEndpoint.executeBatch ();
+      }
+      aUpdateEndpoint.executeBatch ();
+    }
+
+    LOGGER.info ("Finished migrating the certificates of " +
+                 aEndpoints.size () +
+                 " endpoints to " +
+                 aCertificates.size () +
+                 " distinct certificates");
+  }
+}
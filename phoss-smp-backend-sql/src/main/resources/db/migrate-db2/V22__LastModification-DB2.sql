@@ -0,0 +1,22 @@
+--
+-- Copyright (C) 2019-2024 Philip Helger and contributors
+-- philip[at]helger[dot]com
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--         http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Last modification of service groups and service metadata (UTC)
+ALTER TABLE smp_service_group ADD COLUMN lastmoddt timestamp DEFAULT NULL;
+ALTER TABLE smp_service_metadata ADD COLUMN lastmoddt timestamp DEFAULT NULL;
+UPDATE smp_service_group SET lastmoddt=CURRENT TIMESTAMP - CURRENT TIMEZONE;
+UPDATE smp_service_metadata SET lastmoddt=CURRENT TIMESTAMP - CURRENT TIMEZONE;
@@ -0,0 +1,32 @@
+--
+-- Copyright (C) 2019-2024 Philip Helger and contributors
+-- philip[at]helger[dot]com
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--         http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Content addressed store for endpoint certificates
+CREATE TABLE smp_certificate (
+    certhash    varchar(64) NOT NULL,
+    certificate clob        NOT NULL,
+    CONSTRAINT pk_smp_certificate PRIMARY KEY
+      (certhash)
+  );
+
+-- Endpoints reference the certificate by hash
+-- The certificate column is kept for older versions - the hashes are set by the following Java migration
+ALTER TABLE smp_endpoint ADD COLUMN certhash varchar(64) DEFAULT NULL;
+ALTER TABLE smp_endpoint ALTER COLUMN certificate DROP NOT NULL;
+-- Dropping NOT NULL leaves the table in reorg pending state
+CALL SYSPROC.ADMIN_CMD ('REORG TABLE smp_endpoint');
+CREATE INDEX smp_endpoint_certhash ON smp_endpoint (certhash);
@@ -0,0 +1,25 @@
+--
+-- Copyright (C) 2019-2024 Philip Helger and contributors
+-- philip[at]helger[dot]com
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--         http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Heartbeat to measure the replication lag of read replicas
+CREATE TABLE smp_heartbeat (
+    id     int       NOT NULL,
+    hbtime timestamp NOT NULL,
+    CONSTRAINT pk_smp_heartbeat PRIMARY KEY
+      (id)
+  );
+INSERT INTO smp_heartbeat (id, hbtime) VALUES (1, CURRENT_TIMESTAMP);
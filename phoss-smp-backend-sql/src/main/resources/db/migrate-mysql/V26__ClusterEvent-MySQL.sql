@@ -0,0 +1,29 @@
+--
+-- Copyright (C) 2019-2024 Philip Helger and contributors
+-- philip[at]helger[dot]com
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--         http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Change events to invalidate the caches of the other SMP nodes
+CREATE TABLE `smp_cluster_event` (
+  `id`         varchar(45)   NOT NULL COMMENT 'Event ID',
+  `dt`         datetime(3)   NOT NULL COMMENT 'The date and time when the event was created',
+  `nodeid`     varchar(45)   NOT NULL COMMENT 'The ID of the SMP node that created the event',
+  `objtype`    varchar(20)   NOT NULL COMMENT 'The type of the changed object',
+  `changetype` varchar(20)   NOT NULL COMMENT 'The kind of change',
+  `sgid`       varchar(255)  NOT NULL COMMENT 'The affected service group ID',
+  `objid`      varchar(1024) DEFAULT NULL COMMENT 'The changed object ID within the service group',
+  PRIMARY KEY (`id`),
+  KEY `smp_cluster_event_dt` (`dt`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='SMP cluster events';
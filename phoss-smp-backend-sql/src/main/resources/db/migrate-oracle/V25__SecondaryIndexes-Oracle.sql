@@ -0,0 +1,23 @@
+--
+-- Copyright (C) 2019-2024 Philip Helger and contributors
+-- philip[at]helger[dot]com
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--         http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Secondary indexes for the frequently used queries
+CREATE INDEX smp_endpoint_tp ON smp_endpoint (transportProfile) TABLESPACE USERS;
+CREATE INDEX smp_ownership_username ON smp_ownership (username) TABLESPACE USERS;
+CREATE INDEX smp_bce_pid ON smp_bce (pid) TABLESPACE USERS;
+CREATE INDEX smp_pmigration_dir_state ON smp_pmigration (direction, state, pid) TABLESPACE USERS;
+CREATE INDEX smp_audit_dt ON smp_audit (dt) TABLESPACE USERS;
@@ -0,0 +1,37 @@
+--
+-- Copyright (C) 2019-2024 Philip Helger and contributors
+-- philip[at]helger[dot]com
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--         http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Change events to invalidate the caches of the other SMP nodes
+CREATE TABLE smp_cluster_event (
+  id         varchar(45)   NOT NULL,
+  dt         timestamp     NOT NULL,
+  nodeid     varchar(45)   NOT NULL,
+  objtype    varchar(20)   NOT NULL,
+  changetype varchar(20)   NOT NULL,
+  sgid       varchar(255)  NOT NULL,
+  objid      varchar(1024),
+  CONSTRAINT smp_cluster_event_pk PRIMARY KEY (id) USING INDEX tablespace USERS
+) tablespace USERS;
+CREATE INDEX smp_cluster_event_dt ON smp_cluster_event (dt) TABLESPACE USERS;
+
+COMMENT ON COLUMN smp_cluster_event.id         IS 'Event ID';
+COMMENT ON COLUMN smp_cluster_event.dt         IS 'The date and time when the event was created';
+COMMENT ON COLUMN smp_cluster_event.nodeid     IS 'The ID of the SMP node that created the event';
+COMMENT ON COLUMN smp_cluster_event.objtype    IS 'The type of the changed object';
+COMMENT ON COLUMN smp_cluster_event.changetype IS 'The kind of change';
+COMMENT ON COLUMN smp_cluster_event.sgid       IS 'The affected service group ID';
+COMMENT ON COLUMN smp_cluster_event.objid      IS 'The changed object ID within the service group';
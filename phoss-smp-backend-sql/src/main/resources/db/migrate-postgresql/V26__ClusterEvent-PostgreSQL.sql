@@ -0,0 +1,29 @@
+--
+-- Copyright (C) 2019-2024 Philip Helger and contributors
+-- philip[at]helger[dot]com
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--         http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Change events to invalidate the caches of the other SMP nodes
+CREATE TABLE smp_cluster_event (
+  id         varchar(45)   NOT NULL,
+  dt         timestamp     NOT NULL,
+  nodeid     varchar(45)   NOT NULL,
+  objtype    varchar(20)   NOT NULL,
+  changetype varchar(20)   NOT NULL,
+  sgid       varchar(255)  NOT NULL,
+  objid      varchar(1024),
+  PRIMARY KEY (id)
+);
+CREATE INDEX smp_cluster_event_dt ON smp_cluster_event (dt);
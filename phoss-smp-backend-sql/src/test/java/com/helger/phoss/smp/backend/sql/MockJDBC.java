@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.CommonsVector;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.db.jdbc.IHasConnection;
+
+/**
+ * A minimal in-memory JDBC connection for tests without a database. All
+ * queries and modifications are forwarded to the provided handlers and all
+ * executed statements are recorded.
+ *
+ * @author Philip Helger
+ */
+public final class MockJDBC implements IHasConnection
+{
+  /** Marker for the commit of a transaction in the executed statements */
+  public static final String COMMIT = "COMMIT";
+  /** Marker for the rollback of a transaction in the executed statements */
+  public static final String ROLLBACK = "ROLLBACK";
+
+  private final BiFunction <String, ICommonsList <Object>, ICommonsList <Object []>> m_aQueryHandler;
+  private final BiFunction <String, ICommonsList <Object>, Integer> m_aUpdateHandler;
+  // Queries may be executed from multiple threads
+  private final ICommonsList <String> m_aExecuted = new CommonsVector <> ();
+  private final ICommonsList <String> m_aColumnNames = new CommonsArrayList <> ();
+  private final AtomicInteger m_aOpenResultSets = new AtomicInteger (0);
+
+  /**
+   * @param aQueryHandler
+   *        Gets the SQL and the parameters and returns the result rows. May
+   *        return <code>null</code> for no rows.
+   * @param aUpdateHandler
+   *        Gets the SQL and the parameters and returns the update count.
+   */
+  public MockJDBC (@Nonnull final BiFunction <String, ICommonsList <Object>, ICommonsList <Object []>> aQueryHandler,
+                   @Nonnull final BiFunction <String, ICommonsList <Object>, Integer> aUpdateHandler)
+  {
+    m_aQueryHandler = aQueryHandler;
+    m_aUpdateHandler = aUpdateHandler;
+  }
+
+  /**
+   * @return All executed SQL statements in the order of execution, including
+   *         {@link #COMMIT} and {@link #ROLLBACK} markers.
+   */
+  @Nonnull
+  public ICommonsList <String> getAllExecuted ()
+  {
+    return m_aExecuted;
+  }
+
+  /**
+   * @return The number of result sets that were created but not yet closed.
+   */
+  @Nonnegative
+  public int getOpenResultSetCount ()
+  {
+    return m_aOpenResultSets.get ();
+  }
+
+  /**
+   * Set the column names of all result rows, so that values can be accessed by
+   * name. By default the columns are named "col1", "col2" etc.
+   *
+   * @param aColumnNames
+   *        The column names in the order of the row values.
+   * @return this for chaining
+   */
+  @Nonnull
+  public MockJDBC setColumnNames (@Nonnull final String... aColumnNames)
+  {
+    m_aColumnNames.setAll (aColumnNames);
+    return this;
+  }
+
+  @Nonnull
+  private String _getColumnName (final int nIndex)
+  {
+    return nIndex <= m_aColumnNames.size () ? m_aColumnNames.get (nIndex - 1) : "col" + nIndex;
+  }
+
+  private int _getColumnIndex (@Nonnull final Object aColumn)
+  {
+    if (aColumn instanceof Integer)
+      return ((Integer) aColumn).intValue ();
+    final int nIndex = m_aColumnNames.findFirstIndex (x -> x.equalsIgnoreCase ((String) aColumn));
+    if (nIndex >= 0)
+      return nIndex + 1;
+    return Integer.parseInt (((String) aColumn).substring (3));
+  }
+
+  @Nullable
+  private static Object _getDefault (@Nonnull final Class <?> aClass)
+  {
+    if (aClass == boolean.class)
+      return Boolean.FALSE;
+    if (aClass == int.class)
+      return Integer.valueOf (0);
+    if (aClass == long.class)
+      return Long.valueOf (0);
+    return null;
+  }
+
+  @Nonnull
+  @SuppressWarnings ("unchecked")
+  private static <T> T _proxy (@Nonnull final Class <T> aClass, @Nonnull final InvocationHandler aHandler)
+  {
+    return (T) Proxy.newProxyInstance (MockJDBC.class.getClassLoader (), new Class <?> [] { aClass }, aHandler);
+  }
+
+  private static int _getSQLType (@Nullable final Object aValue)
+  {
+    if (aValue instanceof Boolean)
+      return Types.BOOLEAN;
+    if (aValue instanceof Integer)
+      return Types.INTEGER;
+    if (aValue instanceof Long)
+      return Types.BIGINT;
+    if (aValue instanceof Timestamp)
+      return Types.TIMESTAMP;
+    return Types.VARCHAR;
+  }
+
+  @Nonnull
+  private ResultSet _createResultSet (@Nullable final ICommonsList <Object []> aRows)
+  {
+    final ICommonsList <Object []> aRealRows = aRows != null ? aRows : new CommonsArrayList <> ();
+    final int nColumns = aRealRows.isEmpty () ? 0 : aRealRows.getFirstOrNull ().length;
+    final ResultSetMetaData aMetaData = _proxy (ResultSetMetaData.class, (aProxy, aMethod, aArgs) -> {
+      switch (aMethod.getName ())
+      {
+        case "getColumnCount":
+          return Integer.valueOf (nColumns);
+        case "getColumnName":
+        case "getColumnLabel":
+          return _getColumnName (((Integer) aArgs[0]).intValue ());
+        case "getColumnType":
+          return Integer.valueOf (_getSQLType (aRealRows.getFirstOrNull ()[((Integer) aArgs[0]).intValue () - 1]));
+        case "getColumnTypeName":
+          return "type";
+        default:
+          return _getDefault (aMethod.getReturnType ());
+      }
+    });
+    final int [] aIndex = { -1 };
+    final boolean [] aWasNull = { false };
+    final boolean [] aClosed = { false };
+    m_aOpenResultSets.incrementAndGet ();
+    return _proxy (ResultSet.class, (aProxy, aMethod, aArgs) -> {
+      switch (aMethod.getName ())
+      {
+        case "close":
+          if (!aClosed[0])
+          {
+            aClosed[0] = true;
+            m_aOpenResultSets.decrementAndGet ();
+          }
+          return null;
+        case "next":
+          return Boolean.valueOf (++aIndex[0] < aRealRows.size ());
+        case "getMetaData":
+          return aMetaData;
+        case "findColumn":
+          return Integer.valueOf (_getColumnIndex (aArgs[0]));
+        case "wasNull":
+          return Boolean.valueOf (aWasNull[0]);
+        case "getObject":
+        case "getString":
+        case "getLong":
+        case "getTimestamp":
+        {
+          final Object aValue = aRealRows.get (aIndex[0])[_getColumnIndex (aArgs[0]) - 1];
+          aWasNull[0] = aValue == null;
+          if (aMethod.getName ().equals ("getObject") || aMethod.getName ().equals ("getTimestamp"))
+            return aValue;
+          if (aMethod.getName ().equals ("getString"))
+            return aValue == null ? null : aValue.toString ();
+          return Long.valueOf (aValue == null ? 0 : ((Number) aValue).longValue ());
+        }
+        default:
+          return _getDefault (aMethod.getReturnType ());
+      }
+    });
+  }
+
+  @Nonnull
+  private Integer _update (@Nonnull final String sSQL, @Nonnull final ICommonsList <Object> aParams)
+  {
+    m_aExecuted.add (sSQL);
+    return m_aUpdateHandler.apply (sSQL, aParams);
+  }
+
+  @Nonnull
+  private ResultSet _query (@Nonnull final String sSQL, @Nonnull final ICommonsList <Object> aParams)
+  {
+    m_aExecuted.add (sSQL);
+    return _createResultSet (m_aQueryHandler.apply (sSQL, aParams));
+  }
+
+  @Nonnull
+  private PreparedStatement _createStatement (@Nullable final String sPreparedSQL)
+  {
+    final ICommonsSortedMap <Integer, Object> aParams = new CommonsTreeMap <> ();
+    final ICommonsList <Integer> aBatchCounts = new CommonsArrayList <> ();
+    final int [] aLastUpdateCount = { -1 };
+    return _proxy (PreparedStatement.class, (aProxy, aMethod, aArgs) -> {
+      final String sName = aMethod.getName ();
+      if (sName.startsWith ("set") && aArgs != null && aArgs.length >= 2 && aArgs[0] instanceof Integer)
+      {
+        aParams.put ((Integer) aArgs[0], sName.equals ("setNull") ? null : aArgs[1]);
+        return null;
+      }
+      // Plain statements pass the SQL as parameter
+      final String sSQL = aArgs != null && aArgs.length > 0 && aArgs[0] instanceof String ? (String) aArgs[0]
+                                                                                         : sPreparedSQL;
+      switch (sName)
+      {
+        case "executeQuery":
+          return _query (sSQL, aParams.copyOfValues ());
+        case "execute":
+          if (sSQL.trim ().toUpperCase ().startsWith ("SELECT"))
+          {
+            aLastUpdateCount[0] = -1;
+            return Boolean.TRUE;
+          }
+          aLastUpdateCount[0] = _update (sSQL, aParams.copyOfValues ()).intValue ();
+          return Boolean.FALSE;
+        case "executeUpdate":
+          return _update (sSQL, aParams.copyOfValues ());
+        case "executeLargeUpdate":
+          return Long.valueOf (_update (sSQL, aParams.copyOfValues ()).longValue ());
+        case "getUpdateCount":
+          return Integer.valueOf (aLastUpdateCount[0]);
+        case "getLargeUpdateCount":
+          return Long.valueOf (aLastUpdateCount[0]);
+        case "getResultSet":
+          return _query (sSQL, aParams.copyOfValues ());
+        case "getGeneratedKeys":
+          return _createResultSet (null);
+        case "addBatch":
+          aBatchCounts.add (_update (sSQL, aParams.copyOfValues ()));
+          return null;
+        case "executeBatch":
+        {
+          final int [] ret = new int [aBatchCounts.size ()];
+          for (int i = 0; i < ret.length; ++i)
+            ret[i] = aBatchCounts.get (i).intValue ();
+          aBatchCounts.clear ();
+          return ret;
+        }
+        case "clearParameters":
+          aParams.clear ();
+          return null;
+        default:
+          return _getDefault (aMethod.getReturnType ());
+      }
+    });
+  }
+
+  @Nonnull
+  public Connection getConnection ()
+  {
+    return _proxy (Connection.class, (aProxy, aMethod, aArgs) -> {
+      switch (aMethod.getName ())
+      {
+        case "prepareStatement":
+          return _createStatement ((String) aArgs[0]);
+        case "createStatement":
+          return (Statement) _createStatement (null);
+        case "commit":
+          m_aExecuted.add (COMMIT);
+          return null;
+        case "rollback":
+          m_aExecuted.add (ROLLBACK);
+          return null;
+        case "getAutoCommit":
+        case "isValid":
+          return Boolean.TRUE;
+        default:
+          return _getDefault (aMethod.getReturnType ());
+      }
+    });
+  }
+
+  public boolean shouldCloseConnection ()
+  {
+    return false;
+  }
+}
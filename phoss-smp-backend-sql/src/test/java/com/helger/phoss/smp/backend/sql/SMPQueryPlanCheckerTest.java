@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.phoss.smp.backend.sql.SMPQueryPlanChecker.EQueryPlanState;
+
+/**
+ * Test class for class {@link SMPQueryPlanChecker}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPQueryPlanCheckerTest
+{
+  private static final String SQL = "SELECT id FROM smp_bce WHERE pid='x'";
+
+  @Nonnull
+  private static EQueryPlanState _checkMySQL (@Nonnull final Object []... aRows)
+  {
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      assertEquals ("EXPLAIN " + SQL, sSQL);
+      return new CommonsArrayList <> (aRows);
+    }, (sSQL, aParams) -> Integer.valueOf (0)).setColumnNames ("type", "possible_keys", "rows");
+    final EQueryPlanState ret = SMPQueryPlanChecker.checkQuery (aJDBC.getConnection (), EDatabaseType.MYSQL, SQL);
+    // Always rolled back
+    assertEquals (MockJDBC.ROLLBACK, aJDBC.getAllExecuted ().getLastOrNull ());
+    return ret;
+  }
+
+  @Nonnull
+  private static Object [] _mysqlRow (@Nonnull final String sType, @Nullable final String sPossibleKeys, final long nRows)
+  {
+    return new Object [] { sType, sPossibleKeys, Long.valueOf (nRows) };
+  }
+
+  @Test
+  public void testMySQL ()
+  {
+    assertEquals (EQueryPlanState.INDEX, _checkMySQL (_mysqlRow ("ref", "idx_bce_pid", 1)));
+    assertEquals (EQueryPlanState.FULL_SCAN, _checkMySQL (_mysqlRow ("ALL", null, 100_000)));
+    assertEquals (EQueryPlanState.FULL_SCAN,
+                  _checkMySQL (_mysqlRow ("ALL", null, 0),
+                               _mysqlRow ("ALL", "", SMPQueryPlanChecker.FULL_SCAN_MIN_ROWS)));
+
+    // Small or empty tables are scanned even with an index
+    assertEquals (EQueryPlanState.SMALL_TABLE, _checkMySQL (_mysqlRow ("ALL", null, 0)));
+    assertEquals (EQueryPlanState.SMALL_TABLE,
+                  _checkMySQL (_mysqlRow ("ALL", null, SMPQueryPlanChecker.FULL_SCAN_MIN_ROWS - 1)));
+    assertEquals (EQueryPlanState.INDEX, _checkMySQL (_mysqlRow ("ALL", "idx_bce_pid", 100_000)));
+    assertEquals (EQueryPlanState.INDEX, _checkMySQL ());
+  }
+
+  @Test
+  public void testPostgreSQL ()
+  {
+    final ICommonsList <String> aPlan = new CommonsArrayList <> ();
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> aPlan.getAllMapped (x -> new Object [] { x }),
+                                          (sSQL, aParams) -> Integer.valueOf (0));
+    aPlan.add ("Index Scan using idx_bce_pid on smp_bce  (cost=0.14..8.16 rows=1 width=4)");
+    assertEquals (EQueryPlanState.INDEX,
+                  SMPQueryPlanChecker.checkQuery (aJDBC.getConnection (), EDatabaseType.POSTGRESQL, SQL));
+    // Sequential scans are disabled for the check
+    assertTrue (aJDBC.getAllExecuted ().contains ("SET LOCAL enable_seqscan = off"));
+
+    aPlan.setAll ("Seq Scan on smp_bce  (cost=10000000000.00..10000000001.01 rows=1 width=4)");
+    assertEquals (EQueryPlanState.FULL_SCAN,
+                  SMPQueryPlanChecker.checkQuery (aJDBC.getConnection (), EDatabaseType.POSTGRESQL, SQL));
+  }
+
+  @Test
+  public void testOracle ()
+  {
+    final ICommonsList <Object []> aPlan = new CommonsArrayList <> ();
+    final Long [] aTableRows = { null };
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      if (sSQL.contains ("plan_table"))
+        return aPlan;
+      assertEquals ("SELECT num_rows FROM user_tables WHERE table_name='SMP_BCE'", sSQL);
+      final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+      ret.add (new Object [] { aTableRows[0] });
+      return ret;
+    }, (sSQL, aParams) -> Integer.valueOf (0));
+
+    aPlan.add (new Object [] { "SELECT STATEMENT", null, null });
+    aPlan.add (new Object [] { "INDEX", "RANGE SCAN", "IDX_BCE_PID" });
+    assertEquals (EQueryPlanState.INDEX, SMPQueryPlanChecker.checkQuery (aJDBC.getConnection (), EDatabaseType.ORACLE, SQL));
+
+    aPlan.set (1, new Object [] { "TABLE ACCESS", "FULL", "SMP_BCE" });
+    // No statistics
+    assertEquals (EQueryPlanState.FULL_SCAN,
+                  SMPQueryPlanChecker.checkQuery (aJDBC.getConnection (), EDatabaseType.ORACLE, SQL));
+    aTableRows[0] = Long.valueOf (SMPQueryPlanChecker.FULL_SCAN_MIN_ROWS);
+    assertEquals (EQueryPlanState.FULL_SCAN,
+                  SMPQueryPlanChecker.checkQuery (aJDBC.getConnection (), EDatabaseType.ORACLE, SQL));
+    aTableRows[0] = Long.valueOf (10);
+    assertEquals (EQueryPlanState.SMALL_TABLE,
+                  SMPQueryPlanChecker.checkQuery (aJDBC.getConnection (), EDatabaseType.ORACLE, SQL));
+  }
+
+  @Test
+  public void testUnsupported ()
+  {
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> null, (sSQL, aParams) -> Integer.valueOf (0));
+    assertEquals (EQueryPlanState.UNSUPPORTED,
+                  SMPQueryPlanChecker.checkQuery (aJDBC.getConnection (), EDatabaseType.DB2, SQL));
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import javax.annotation.Nonnull;
+import javax.sql.DataSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ETriState;
+import com.helger.db.jdbc.IHasDataSource;
+import com.helger.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.helger.db.jdbc.executor.DBExecutor;
+import com.helger.db.jdbc.executor.DBResultRow;
+import com.helger.photon.core.mock.PhotonCoreTestRule;
+import com.helger.servlet.mock.MockHttpServletRequest;
+import com.helger.web.scope.mgr.WebScopeManager;
+import com.helger.web.scope.mgr.WebScoped;
+
+/**
+ * Test class for class {@link SMPReadReplicaRouter} and
+ * {@link SMPReadReplicaDBExecutor}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPReadReplicaRouterTest
+{
+  private static final long NOW = 1_700_000_000_000L;
+  private static final long TOLERANCE = 1_000;
+
+  /**
+   * A database with a heartbeat, that can be switched off.
+   */
+  private static final class TestDB implements IHasDataSource
+  {
+    private final MockJDBC m_aJDBC;
+    private Timestamp m_aHeartbeat = new Timestamp (NOW);
+    private boolean m_bDown;
+
+    TestDB (@Nonnull final String sValue)
+    {
+      m_aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+        final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+        ret.add (new Object [] { sSQL.contains ("heartbeat") ? m_aHeartbeat : sValue });
+        return ret;
+      }, (sSQL, aParams) -> Integer.valueOf (1));
+    }
+
+    @Nonnull
+    public DataSource getDataSource ()
+    {
+      return (DataSource) Proxy.newProxyInstance (TestDB.class.getClassLoader (),
+                                                  new Class <?> [] { DataSource.class },
+                                                  (aProxy, aMethod, aArgs) -> {
+                                                    if (!aMethod.getName ().equals ("getConnection"))
+                                                      throw new UnsupportedOperationException (aMethod.getName ());
+                                                    if (m_bDown)
+                                                      throw new SQLException ("Database is down");
+                                                    return m_aJDBC.getConnection ();
+                                                  });
+    }
+  }
+
+  @Rule
+  public final PhotonCoreTestRule m_aRule = new PhotonCoreTestRule ();
+
+  @Nonnull
+  private static WebScoped _request (@Nonnull final String sRemoteAddr)
+  {
+    return new WebScoped (new MockHttpServletRequest ().setRemoteAddr (sRemoteAddr));
+  }
+
+  @Nonnull
+  private static SMPReadReplicaRouter _createRouter (@Nonnull final TestDB aPrimary, @Nonnull final TestDB... aReplicas)
+  {
+    final ICommonsList <SMPReadReplicaRouter.Replica> aList = new CommonsArrayList <> ();
+    for (int i = 0; i < aReplicas.length; ++i)
+      aList.add (new SMPReadReplicaRouter.Replica ("replica" + i, aReplicas[i]));
+    // No background thread - checks are triggered manually
+    return new SMPReadReplicaRouter (aPrimary, aList, TOLERANCE, 100, false);
+  }
+
+  @Test
+  public void testHeartbeatSQL ()
+  {
+    assertEquals ("UPDATE smp_heartbeat SET hbtime=CURRENT_TIMESTAMP(3) WHERE id=1",
+                  SMPReadReplicaRouter.getUpdateHeartbeatSQL (EDatabaseType.MYSQL));
+    assertEquals ("UPDATE smp_heartbeat SET hbtime=CURRENT_TIMESTAMP WHERE id=1",
+                  SMPReadReplicaRouter.getUpdateHeartbeatSQL (EDatabaseType.POSTGRESQL));
+  }
+
+  @Test
+  public void testNoReplicas ()
+  {
+    try (final SMPReadReplicaRouter aRouter = _createRouter (new TestDB ("primary")))
+    {
+      aRouter.checkReplicas ();
+      assertEquals (0, aRouter.getReplicaCount ());
+      assertNull (aRouter.getReadDataSourceProviderOrNull ());
+    }
+  }
+
+  @Test
+  public void testStaleness ()
+  {
+    final TestDB aPrimary = new TestDB ("primary");
+    final TestDB aReplica = new TestDB ("replica");
+    try (final SMPReadReplicaRouter aRouter = _createRouter (aPrimary, aReplica))
+    {
+      // Not used before the first check
+      assertNull (aRouter.getReadDataSourceProviderOrNull ());
+
+      aReplica.m_aHeartbeat = new Timestamp (NOW - TOLERANCE / 2);
+      aRouter.checkReplicas ();
+      assertTrue (aPrimary.m_aJDBC.getAllExecuted ().contains (SMPReadReplicaRouter.getUpdateHeartbeatSQL (SMPDataSourceSingleton.getDatabaseType ())));
+      assertEquals (1, aRouter.getHealthyReplicaCount ());
+      assertTrue (aRouter.getMaxReplicationLagMillis () >= TOLERANCE / 2);
+      assertSame (aReplica, aRouter.getReadDataSourceProviderOrNull ());
+
+      // The lag is independent of the time of this server
+      aReplica.m_aHeartbeat = new Timestamp (NOW - TOLERANCE * 3);
+      aRouter.checkReplicas ();
+      assertEquals (0, aRouter.getHealthyReplicaCount ());
+      assertTrue (aRouter.getMaxReplicationLagMillis () >= TOLERANCE * 3);
+      assertNull (aRouter.getReadDataSourceProviderOrNull ());
+
+      // Caught up again
+      aPrimary.m_aHeartbeat = new Timestamp (NOW + 10);
+      aReplica.m_aHeartbeat = new Timestamp (NOW + 10);
+      aRouter.checkReplicas ();
+      assertSame (aReplica, aRouter.getReadDataSourceProviderOrNull ());
+
+      // If the lag cannot be determined, the replica is not used
+      aPrimary.m_bDown = true;
+      aRouter.checkReplicas ();
+      assertNull (aRouter.getReadDataSourceProviderOrNull ());
+    }
+  }
+
+  @Test
+  public void testReadYourWrites ()
+  {
+    final TestDB aReplica = new TestDB ("replica");
+    try (final SMPReadReplicaRouter aRouter = _createRouter (new TestDB ("primary"), aReplica))
+    {
+      aRouter.checkReplicas ();
+      // Each request of this test uses its own scope
+      WebScopeManager.onRequestEnd ();
+      try (final WebScoped aWS = _request ("192.0.2.1"))
+      {
+        assertSame (aReplica, aRouter.getReadDataSourceProviderOrNull ());
+        SMPReadReplicaRouter.onWrite ();
+        assertNull (aRouter.getReadDataSourceProviderOrNull ());
+      }
+
+      // The next request of the same client still reads from the primary
+      try (final WebScoped aWS = _request ("192.0.2.1"))
+      {
+        assertNull (aRouter.getReadDataSourceProviderOrNull ());
+      }
+
+      // Other clients are not affected
+      try (final WebScoped aWS = _request ("192.0.2.2"))
+      {
+        assertSame (aReplica, aRouter.getReadDataSourceProviderOrNull ());
+      }
+    }
+  }
+
+  @Test
+  public void testFailover ()
+  {
+    final TestDB aPrimary = new TestDB ("primary");
+    final TestDB aReplica1 = new TestDB ("replica1");
+    final TestDB aReplica2 = new TestDB ("replica2");
+    try (final SMPReadReplicaRouter aRouter = _createRouter (aPrimary, aReplica1, aReplica2))
+    {
+      aRouter.checkReplicas ();
+      assertEquals (2, aRouter.getHealthyReplicaCount ());
+      // Round robin
+      final IHasDataSource aFirst = aRouter.getReadDataSourceProviderOrNull ();
+      final IHasDataSource aSecond = aRouter.getReadDataSourceProviderOrNull ();
+      assertTrue (aFirst != aSecond);
+
+      aReplica1.m_bDown = true;
+      aRouter.checkReplicas ();
+      assertEquals (1, aRouter.getHealthyReplicaCount ());
+      for (int i = 0; i < 5; ++i)
+        assertSame (aReplica2, aRouter.getReadDataSourceProviderOrNull ());
+
+      // Fall back to the primary
+      aReplica2.m_bDown = true;
+      aRouter.checkReplicas ();
+      assertEquals (0, aRouter.getHealthyReplicaCount ());
+      assertNull (aRouter.getReadDataSourceProviderOrNull ());
+
+      aReplica1.m_bDown = false;
+      aRouter.checkReplicas ();
+      assertSame (aReplica1, aRouter.getReadDataSourceProviderOrNull ());
+    }
+  }
+
+  @Test
+  public void testExecutor ()
+  {
+    final TestDB aPrimary = new TestDB ("primary");
+    final TestDB aReplica = new TestDB ("replica");
+    try (final SMPReadReplicaRouter aRouter = _createRouter (aPrimary, aReplica))
+    {
+      aRouter.checkReplicas ();
+      final ETriState eConnectionEstablished = DBExecutor.getConnectionEstablished ();
+      final SMPReadReplicaDBExecutor aExecutor = new SMPReadReplicaDBExecutor (aReplica,
+                                                                               aRouter,
+                                                                               () -> new DBExecutor (aPrimary.m_aJDBC));
+
+      ICommonsList <DBResultRow> aRows = aExecutor.queryAll ("SELECT x FROM y");
+      assertEquals (1, aRows.size ());
+      assertEquals ("replica", aRows.getFirstOrNull ().getAsString (0));
+      assertSame (eConnectionEstablished, DBExecutor.getConnectionEstablished ());
+
+      try
+      {
+        aExecutor.insertOrUpdateOrDelete ("DELETE FROM y", new ConstantPreparedStatementDataProvider ());
+        fail ();
+      }
+      catch (final UnsupportedOperationException ex)
+      {
+        // expected
+      }
+
+      // The query is executed on the primary and the replica is not used
+      // anymore
+      aReplica.m_bDown = true;
+      aRows = aExecutor.queryAll ("SELECT x FROM y WHERE z=?", new ConstantPreparedStatementDataProvider ("z"));
+      assertEquals (1, aRows.size ());
+      assertEquals ("primary", aRows.getFirstOrNull ().getAsString (0));
+      assertEquals (0, aRouter.getHealthyReplicaCount ());
+      assertNull (aRouter.getReadDataSourceProviderOrNull ());
+
+      // The failed replica does not mark the primary as failed
+      assertFalse (DBExecutor.getConnectionEstablished ().isFalse ());
+    }
+  }
+}
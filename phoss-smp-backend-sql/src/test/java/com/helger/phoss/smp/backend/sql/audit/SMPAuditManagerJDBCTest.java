@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.audit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.phoss.smp.backend.sql.MockJDBC;
+
+/**
+ * Test class for class {@link SMPAuditManagerJDBC}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPAuditManagerJDBCTest
+{
+  private static final LocalDateTime DT = LocalDateTime.of (2024, 1, 1, 0, 0);
+  private static final String DELETE_SQL = "DELETE FROM smp_audit WHERE id >= ? AND id < ? AND dt < ?";
+
+  @Test
+  public void testDeleteChunked () throws SQLException
+  {
+    final ICommonsList <ICommonsList <Object>> aDeleteParams = new CommonsArrayList <> ();
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      assertEquals ("SELECT MIN(id), MAX(id) FROM smp_audit WHERE dt < ?", sSQL);
+      assertEquals (Timestamp.valueOf (DT), aParams.getFirstOrNull ());
+      final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+      ret.add (new Object [] { Long.valueOf (5), Long.valueOf (25) });
+      return ret;
+    }, (sSQL, aParams) -> {
+      assertEquals (DELETE_SQL, sSQL);
+      aDeleteParams.add (aParams);
+      return Integer.valueOf (3);
+    });
+
+    assertEquals (9, SMPAuditManagerJDBC.deleteAllAuditItemsBefore (aJDBC.getConnection (), "smp_audit", DT, 10));
+
+    // One ID range per chunk
+    assertEquals (3, aDeleteParams.size ());
+    assertEquals (new CommonsArrayList <> (Long.valueOf (5), Long.valueOf (15), Timestamp.valueOf (DT)),
+                  aDeleteParams.get (0));
+    assertEquals (new CommonsArrayList <> (Long.valueOf (15), Long.valueOf (25), Timestamp.valueOf (DT)),
+                  aDeleteParams.get (1));
+    assertEquals (new CommonsArrayList <> (Long.valueOf (25), Long.valueOf (35), Timestamp.valueOf (DT)),
+                  aDeleteParams.get (2));
+
+    // Each chunk is committed on its own
+    final ICommonsList <String> aExecuted = aJDBC.getAllExecuted ();
+    assertEquals (new CommonsArrayList <> ("SELECT MIN(id), MAX(id) FROM smp_audit WHERE dt < ?",
+                                           DELETE_SQL,
+                                           MockJDBC.COMMIT,
+                                           DELETE_SQL,
+                                           MockJDBC.COMMIT,
+                                           DELETE_SQL,
+                                           MockJDBC.COMMIT,
+                                           MockJDBC.ROLLBACK),
+                  aExecuted);
+  }
+
+  @Test
+  public void testDeleteNothing () throws SQLException
+  {
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+      // Aggregates on an empty set
+      ret.add (new Object [] { null, null });
+      return ret;
+    }, (sSQL, aParams) -> {
+      throw new IllegalStateException ("Nothing to delete");
+    });
+    assertEquals (0, SMPAuditManagerJDBC.deleteAllAuditItemsBefore (aJDBC.getConnection (), "smp_audit", DT, 10));
+  }
+}
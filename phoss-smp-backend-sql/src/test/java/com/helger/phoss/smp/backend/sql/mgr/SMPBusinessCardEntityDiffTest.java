@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.timing.StopWatch;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.photon.core.mock.PhotonCoreTestRule;
+
+/**
+ * Test class for class {@link SMPBusinessCardEntityDiff}. Instead of a real
+ * database a proxy connection is used, that counts the JDBC batches (= DB
+ * round trips) and the batched rows.
+ *
+ * @author Philip Helger
+ */
+public final class SMPBusinessCardEntityDiffTest
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPBusinessCardEntityDiffTest.class);
+  private static final String PID = "iso6523-actorid-upis::9915:test";
+  private static final int ENTITY_COUNT = 1_000;
+
+  @Rule
+  public final PhotonCoreTestRule m_aRule = new PhotonCoreTestRule ();
+
+  private static final class CountingConnection
+  {
+    private final AtomicInteger m_aBatches = new AtomicInteger ();
+    private final AtomicInteger m_aRows = new AtomicInteger ();
+
+    @Nonnull
+    Connection getConnection ()
+    {
+      return (Connection) Proxy.newProxyInstance (getClass ().getClassLoader (),
+                                                  new Class <?> [] { Connection.class },
+                                                  (aProxy, aMethod, aArgs) -> {
+                                                    if (aMethod.getName ().equals ("prepareStatement"))
+                                                      return _createPreparedStatement ();
+                                                    throw new UnsupportedOperationException (aMethod.getName ());
+                                                  });
+    }
+
+    @Nonnull
+    private PreparedStatement _createPreparedStatement ()
+    {
+      return (PreparedStatement) Proxy.newProxyInstance (getClass ().getClassLoader (),
+                                                         new Class <?> [] { PreparedStatement.class },
+                                                         (aProxy, aMethod, aArgs) -> {
+                                                           switch (aMethod.getName ())
+                                                           {
+                                                             case "setObject":
+                                                             case "close":
+                                                               return null;
+                                                             case "addBatch":
+                                                               m_aRows.incrementAndGet ();
+                                                               return null;
+                                                             case "executeBatch":
+                                                               m_aBatches.incrementAndGet ();
+                                                               return new int [0];
+                                                             default:
+                                                               throw new UnsupportedOperationException (aMethod.getName ());
+                                                           }
+                                                         });
+    }
+  }
+
+  @Nonnull
+  private static SMPBusinessCardEntity _createEntity (@Nullable final String sID, final int nIndex)
+  {
+    // Create new IDs if none is provided, like the REST API does it
+    final SMPBusinessCardEntity ret = sID == null ? new SMPBusinessCardEntity () : new SMPBusinessCardEntity (sID);
+    ret.names ().add (new SMPBusinessCardName ("Entity " + nIndex, null));
+    ret.setCountryCode ("AT");
+    ret.setGeographicalInformation ("Vienna " + nIndex);
+    ret.identifiers ().add (new SMPBusinessCardIdentifier ("VAT", "ATU" + nIndex));
+    ret.websiteURIs ().add ("https://www.example.org/" + nIndex);
+    ret.contacts ().add (new SMPBusinessCardContact ("Sales", "Name " + nIndex, "+43 1 " + nIndex, "x@example.org"));
+    ret.setRegistrationDate (LocalDate.of (2024, 1, 1));
+    return ret;
+  }
+
+  @Nonnull
+  private static ICommonsList <SMPBusinessCardEntity> _createEntities (final int nCount)
+  {
+    final ICommonsList <SMPBusinessCardEntity> ret = new CommonsArrayList <> (nCount);
+    for (int i = 0; i < nCount; ++i)
+      ret.add (_createEntity (null, i));
+    return ret;
+  }
+
+  private static int _write (@Nonnull final SMPBusinessCardEntityDiff aDiff,
+                             @Nonnull final CountingConnection aCC,
+                             @Nonnull final String sName) throws SQLException
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final int nBatches = aDiff.write (aCC.getConnection (), PID);
+    aSW.stop ();
+    LOGGER.info (sName +
+                 ": " +
+                 aDiff +
+                 " written in " +
+                 nBatches +
+                 " round trip(s) and " +
+                 aSW.getMillis () +
+                 " ms (previously " +
+                 (1 + ENTITY_COUNT) +
+                 " statements)");
+    return nBatches;
+  }
+
+  @Test
+  public void testInitialCreate () throws SQLException
+  {
+    final ICommonsList <SMPBusinessCardEntity> aNew = _createEntities (ENTITY_COUNT);
+    final SMPBusinessCardEntityDiff aDiff = SMPBusinessCardEntityDiff.create (new CommonsArrayList <> (), aNew);
+    assertTrue (aDiff.hasChanges ());
+    assertEquals (ENTITY_COUNT, aDiff.getInsertCount ());
+    assertEquals (0, aDiff.getUpdateCount ());
+    assertEquals (0, aDiff.getDeleteCount ());
+    assertEquals (aNew, aDiff.getAllResultEntities ());
+
+    final CountingConnection aCC = new CountingConnection ();
+    assertEquals (1, _write (aDiff, aCC, "Initial create"));
+    assertEquals (1, aCC.m_aBatches.get ());
+    assertEquals (ENTITY_COUNT, aCC.m_aRows.get ());
+  }
+
+  @Test
+  public void testUnchangedReupload () throws SQLException
+  {
+    final ICommonsList <SMPBusinessCardEntity> aStored = _createEntities (ENTITY_COUNT);
+    // Same content but new IDs everywhere
+    final ICommonsList <SMPBusinessCardEntity> aNew = _createEntities (ENTITY_COUNT);
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final SMPBusinessCardEntityDiff aDiff = SMPBusinessCardEntityDiff.create (aStored, aNew);
+    aSW.stop ();
+    LOGGER.info ("Diff of " + ENTITY_COUNT + " unchanged entities took " + aSW.getMillis () + " ms");
+
+    assertFalse (aDiff.hasChanges ());
+    // The stored entities are kept
+    final ICommonsList <SMPBusinessCardEntity> aResult = aDiff.getAllResultEntities ();
+    assertEquals (ENTITY_COUNT, aResult.size ());
+    for (int i = 0; i < ENTITY_COUNT; ++i)
+      assertSame (aStored.get (i), aResult.get (i));
+
+    final CountingConnection aCC = new CountingConnection ();
+    assertEquals (0, _write (aDiff, aCC, "Unchanged"));
+    assertEquals (0, aCC.m_aRows.get ());
+
+    // Same IDs
+    assertFalse (SMPBusinessCardEntityDiff.create (aStored, aStored).hasChanges ());
+  }
+
+  @Test
+  public void testModifyAndDelete () throws SQLException
+  {
+    final ICommonsList <SMPBusinessCardEntity> aStored = _createEntities (ENTITY_COUNT);
+
+    // Same IDs, one entity changed, the last 10 entities removed
+    final ICommonsList <SMPBusinessCardEntity> aNew = aStored.getClone ();
+    for (int i = 0; i < 10; ++i)
+      aNew.removeLastOrNull ();
+    final SMPBusinessCardEntity aModified = _createEntity (aNew.get (5).getID (), 5);
+    aModified.setCountryCode ("DE");
+    aNew.set (5, aModified);
+    // And one new entity
+    aNew.add (_createEntity (null, ENTITY_COUNT));
+
+    final SMPBusinessCardEntityDiff aDiff = SMPBusinessCardEntityDiff.create (aStored, aNew);
+    assertTrue (aDiff.hasChanges ());
+    assertEquals (1, aDiff.getInsertCount ());
+    assertEquals (1, aDiff.getUpdateCount ());
+    assertEquals (10, aDiff.getDeleteCount ());
+
+    final CountingConnection aCC = new CountingConnection ();
+    assertEquals (3, _write (aDiff, aCC, "Modify and delete"));
+    assertEquals (12, aCC.m_aRows.get ());
+  }
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.string.StringHelper;
+import com.helger.db.jdbc.executor.DBExecutor;
+import com.helger.db.jdbc.executor.DBResultField;
+import com.helger.db.jdbc.executor.DBResultRow;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
+import com.helger.phoss.smp.backend.sql.EDatabaseType;
+import com.helger.phoss.smp.backend.sql.MockJDBC;
+import com.helger.phoss.smp.backend.sql.SMPDataSourceSingleton;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
+import com.helger.phoss.smp.domain.serviceinfo.SMPCertificateCache;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeHelper;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeResult;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.photon.core.mock.PhotonCoreTestRule;
+import com.helger.scope.mgr.ScopeManager;
+import com.helger.smpclient.extension.SMPExtensionList;
+
+/**
+ * Test class for class {@link SMPServiceInformationManagerJDBC}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPServiceInformationManagerJDBCTest
+{
+  private static final Comparator <String []> KEY_CMP = Arrays::compare;
+
+  private static final class TestRow extends DBResultRow
+  {
+    TestRow (@Nonnull final Object... aValues)
+    {
+      super (aValues.length);
+      for (final Object aValue : aValues)
+        internalAdd (new DBResultField ("col", Types.VARCHAR, aValue));
+    }
+  }
+
+  private static final class TestServiceGroup implements ISMPServiceGroup
+  {
+    private final IParticipantIdentifier m_aParticipantID;
+    private final SMPExtensionList m_aExtensions = new SMPExtensionList ();
+
+    TestServiceGroup (@Nonnull final IParticipantIdentifier aParticipantID)
+    {
+      m_aParticipantID = aParticipantID;
+    }
+
+    public String getID ()
+    {
+      return m_aParticipantID.getURIEncoded ();
+    }
+
+    public String getOwnerID ()
+    {
+      return "owner";
+    }
+
+    public IParticipantIdentifier getParticipantIdentifier ()
+    {
+      return m_aParticipantID;
+    }
+
+    public SMPExtensionList getExtensions ()
+    {
+      return m_aExtensions;
+    }
+
+    public LocalDateTime getLastModificationDateTime ()
+    {
+      return null;
+    }
+
+    public com.helger.xsds.peppol.smp1.ServiceGroupType getAsJAXBObjectPeppol ()
+    {
+      throw new UnsupportedOperationException ();
+    }
+
+    public com.helger.xsds.bdxr.smp1.ServiceGroupType getAsJAXBObjectBDXR1 ()
+    {
+      throw new UnsupportedOperationException ();
+    }
+
+    public com.helger.xsds.bdxr.smp2.ServiceGroupType getAsJAXBObjectBDXR2 ()
+    {
+      throw new UnsupportedOperationException ();
+    }
+  }
+
+  @Nonnull
+  private static ISMPServiceGroupManager _createServiceGroupManager ()
+  {
+    // Only the service group resolution is needed
+    return (ISMPServiceGroupManager) Proxy.newProxyInstance (ISMPServiceGroupManager.class.getClassLoader (),
+                                                             new Class <?> [] { ISMPServiceGroupManager.class },
+                                                             (aProxy, aMethod, aArgs) -> {
+                                                               if (aMethod.getName ().equals ("getSMPServiceGroupOfID"))
+                                                                 return new TestServiceGroup ((IParticipantIdentifier) aArgs[0]);
+                                                               throw new UnsupportedOperationException (aMethod.getName ());
+                                                             });
+  }
+
+  /**
+   * Service information manager that simulates the database.
+   */
+  private static final class FakeServiceInformationManager extends SMPServiceInformationManagerJDBC
+  {
+    // All service metadata keys, sorted
+    private final ICommonsList <String []> m_aKeys = new CommonsArrayList <> ();
+    // All joined rows, sorted by key
+    private final ICommonsList <DBResultRow> m_aRows = new CommonsArrayList <> ();
+    private boolean m_bQueryOpen = false;
+    private int m_nKeyQueries = 0;
+
+    FakeServiceInformationManager ()
+    {
+      this ( () -> {
+        throw new IllegalStateException ("No DB access expected");
+      });
+    }
+
+    FakeServiceInformationManager (@Nonnull final Supplier <? extends DBExecutor> aDBExecSupplier)
+    {
+      super (aDBExecSupplier, _createServiceGroupManager ());
+    }
+
+    void addServiceMetadata (@Nonnull final String sPID, @Nonnull final String sDocTypeID, final int... aEndpointCounts)
+    {
+      addServiceMetadata (sPID, sDocTypeID, null, aEndpointCounts);
+    }
+
+    void addServiceMetadata (@Nonnull final String sPID,
+                             @Nonnull final String sDocTypeID,
+                             @Nullable final String sCertHash,
+                             final int... aEndpointCounts)
+    {
+      m_aKeys.add (new String [] { "iso6523-actorid-upis", sPID, "busdox-docid-qns", sDocTypeID });
+      for (int nProc = 0; nProc < aEndpointCounts.length; ++nProc)
+        for (int nEP = 0; nEP < aEndpointCounts[nProc]; ++nEP)
+          m_aRows.add (new TestRow ("iso6523-actorid-upis",
+                                    sPID,
+                                    "busdox-docid-qns",
+                                    sDocTypeID,
+                                    null,
+                                    "cenbii-procid-ubl",
+                                    "proc" + nProc,
+                                    null,
+                                    "tp" + nEP,
+                                    "http://localhost/as4",
+                                    Boolean.FALSE,
+                                    null,
+                                    null,
+                                    null,
+                                    sCertHash,
+                                    "desc",
+                                    "contact",
+                                    null,
+                                    null,
+                                    null));
+    }
+
+    @Nonnull
+    private static String [] _getKey (@Nonnull final DBResultRow aRow)
+    {
+      return new String [] { aRow.getAsString (0), aRow.getAsString (1), aRow.getAsString (2), aRow.getAsString (3) };
+    }
+
+    @Override
+    @Nullable
+    ICommonsList <DBResultRow> queryServiceMetadataKeys (@Nullable final String [] aAfterKey, final int nMaxCount)
+    {
+      m_bQueryOpen = true;
+      m_nKeyQueries++;
+      final ICommonsList <DBResultRow> ret = new CommonsArrayList <> ();
+      for (final String [] aKey : m_aKeys.getSorted (KEY_CMP))
+        if ((aAfterKey == null || KEY_CMP.compare (aKey, aAfterKey) > 0) && ret.size () < nMaxCount)
+          ret.add (new TestRow ((Object []) aKey));
+      m_bQueryOpen = false;
+      return ret;
+    }
+
+    @Override
+    @Nullable
+    ICommonsList <DBResultRow> queryServiceInformationRows (@Nullable final String [] aAfterKey,
+                                                           @Nonnull final String [] aLastKey)
+    {
+      m_bQueryOpen = true;
+      final ICommonsList <DBResultRow> ret = m_aRows.getAll (x -> {
+        final String [] aKey = _getKey (x);
+        return (aAfterKey == null || KEY_CMP.compare (aKey, aAfterKey) > 0) && KEY_CMP.compare (aKey, aLastKey) <= 0;
+      });
+      ret.sort ( (x, y) -> KEY_CMP.compare (_getKey (x), _getKey (y)));
+      m_bQueryOpen = false;
+      return ret;
+    }
+  }
+
+  @Rule
+  public final PhotonCoreTestRule m_aRule = new PhotonCoreTestRule ();
+
+  @Test
+  public void testForEachBatches ()
+  {
+    final FakeServiceInformationManager aMgr = new FakeServiceInformationManager ();
+    // Deliberately not sorted
+    aMgr.addServiceMetadata ("9915:b", "doc1", 2);
+    aMgr.addServiceMetadata ("9915:a", "doc2", 1, 3);
+    aMgr.addServiceMetadata ("9915:a", "doc1", 1);
+    // No processes - not contained in the join
+    aMgr.addServiceMetadata ("9915:a", "doc3");
+    aMgr.addServiceMetadata ("9915:c", "doc1", 2, 2, 1);
+    aMgr.addServiceMetadata ("9915:b", "doc2", 1);
+    aMgr.addServiceMetadata ("9915:b", "doc3", 4);
+
+    // Endpoint count per service information
+    final ICommonsMap <String, Integer> aExpected = new CommonsHashMap <> ();
+    aExpected.put ("9915:a/doc1", Integer.valueOf (1));
+    aExpected.put ("9915:a/doc2", Integer.valueOf (4));
+    aExpected.put ("9915:b/doc1", Integer.valueOf (2));
+    aExpected.put ("9915:b/doc2", Integer.valueOf (1));
+    aExpected.put ("9915:b/doc3", Integer.valueOf (4));
+    aExpected.put ("9915:c/doc1", Integer.valueOf (5));
+
+    for (int nBatchSize = 1; nBatchSize <= 8; ++nBatchSize)
+    {
+      aMgr.m_nKeyQueries = 0;
+      final ICommonsMap <String, Integer> aFound = new CommonsHashMap <> ();
+      aMgr.forEachSMPServiceInformation (aSI -> {
+        // The consumer may never be invoked while a query is open
+        assertFalse (aMgr.m_bQueryOpen);
+        assertNotNull (aSI.getServiceGroup ());
+        final String sKey = aSI.getServiceGroup ().getParticipantIdentifier ().getValue () +
+                            "/" +
+                            aSI.getDocumentTypeIdentifier ().getValue ();
+        // Each service information is only emitted once
+        assertFalse (sKey, aFound.containsKey (sKey));
+        int nEndpoints = 0;
+        for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+          nEndpoints += aProcess.getEndpointCount ();
+        assertEquals (nEndpoints, aSI.getTotalEndpointCount ());
+        aFound.put (sKey, Integer.valueOf (nEndpoints));
+      }, nBatchSize);
+      assertEquals ("Batch size " + nBatchSize, aExpected, aFound);
+      // 7 service metadata keys + the final empty or partial batch
+      assertEquals (7 / nBatchSize + 1, aMgr.m_nKeyQueries);
+    }
+  }
+
+  @Test
+  public void testForEachEmpty ()
+  {
+    final FakeServiceInformationManager aMgr = new FakeServiceInformationManager ();
+    final ICommonsList <ISMPServiceInformation> aFound = new CommonsArrayList <> ();
+    aMgr.forEachSMPServiceInformation (aFound::add);
+    assertTrue (aFound.isEmpty ());
+    assertEquals (1, aMgr.m_nKeyQueries);
+  }
+
+  @Test
+  public void testInsertCertificateIfAbsentSQL ()
+  {
+    for (final EDatabaseType e : EDatabaseType.values ())
+    {
+      final String sSQL = SMPServiceInformationManagerJDBC.getInsertCertificateIfAbsentSQL (e);
+      assertTrue (sSQL, sSQL.contains ("smp_certificate"));
+      // Hash and certificate
+      assertEquals (sSQL, 2, StringHelper.getCharCount (sSQL, '?'));
+    }
+  }
+
+  @Test
+  public void testResolveCertificate ()
+  {
+    SMPCertificateCache.clear ();
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      if (sSQL.startsWith ("SELECT certificate FROM smp_certificate") && "hash1".equals (aParams.getFirstOrNull ()))
+      {
+        final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+        ret.add (new Object [] { "cert1" });
+        return ret;
+      }
+      return null;
+    }, (sSQL, aParams) -> Integer.valueOf (0));
+    final FakeServiceInformationManager aMgr = new FakeServiceInformationManager ( () -> new DBExecutor (aJDBC));
+    aMgr.addServiceMetadata ("9915:a", "doc1", "hash1", 2);
+
+    final ICommonsList <ISMPServiceInformation> aFound = new CommonsArrayList <> ();
+    aMgr.forEachSMPServiceInformation (aFound::add);
+    assertEquals (1, aFound.size ());
+    for (final ISMPEndpoint aEndpoint : aFound.getFirstOrNull ().getAllProcesses ().getFirstOrNull ().getAllEndpoints ())
+      assertEquals ("cert1", aEndpoint.getCertificate ());
+    SMPCertificateCache.clear ();
+  }
+
+  @Test
+  public void testMissingCertificateFails ()
+  {
+    SMPCertificateCache.clear ();
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> null, (sSQL, aParams) -> Integer.valueOf (0));
+    final FakeServiceInformationManager aMgr = new FakeServiceInformationManager ( () -> new DBExecutor (aJDBC));
+    aMgr.addServiceMetadata ("9915:a", "doc1", "unknown", 1);
+    try
+    {
+      aMgr.forEachSMPServiceInformation (x -> fail ("Endpoint without certificate returned"));
+      fail ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMergeStoresCertificatesInTransaction ()
+  {
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> null, (sSQL, aParams) -> Integer.valueOf (1));
+    final FakeServiceInformationManager aMgr = new FakeServiceInformationManager ( () -> new DBExecutor (aJDBC));
+
+    final ICommonsList <SMPEndpoint> aEndpoints = new CommonsArrayList <> ();
+    for (final String sCert : new String [] { "cert1", "cert2", "cert1" })
+      aEndpoints.add (new SMPEndpoint ("tp" + aEndpoints.size (),
+                                       "http://localhost/as4",
+                                       false,
+                                       null,
+                                       null,
+                                       null,
+                                       sCert,
+                                       "desc",
+                                       "contact",
+                                       null,
+                                       null));
+    final SMPServiceInformation aSI = new SMPServiceInformation (new TestServiceGroup (new SimpleParticipantIdentifier ("iso6523-actorid-upis",
+                                                                                                                       "9915:a")),
+                                                                 new SimpleDocumentTypeIdentifier ("busdox-docid-qns",
+                                                                                                   "doc1"),
+                                                                 new CommonsArrayList <> (new SMPProcess (new SimpleProcessIdentifier ("cenbii-procid-ubl",
+                                                                                                                                       "proc"),
+                                                                                                          aEndpoints,
+                                                                                                          null)),
+                                                                 null);
+    assertTrue (aMgr.mergeSMPServiceInformation (aSI).isSuccess ());
+
+    final ICommonsList <String> aExecuted = aJDBC.getAllExecuted ();
+    final String sInsertCert = SMPServiceInformationManagerJDBC.getInsertCertificateIfAbsentSQL (SMPDataSourceSingleton.getDatabaseType ());
+    // Each distinct certificate once
+    assertEquals (2, aExecuted.getCount (sInsertCert::equals));
+    // Inside the transaction and before the referencing endpoints
+    final int nFirstEndpoint = aExecuted.findFirstIndex (x -> x.startsWith ("INSERT INTO smp_endpoint"));
+    assertTrue (nFirstEndpoint > 0);
+    assertTrue (aExecuted.lastIndexOf (sInsertCert) < nFirstEndpoint);
+    assertFalse (aExecuted.subList (0, aExecuted.lastIndexOf (sInsertCert)).contains (MockJDBC.COMMIT));
+    assertFalse (aExecuted.contains (MockJDBC.ROLLBACK));
+  }
+
+  @Test
+  public void testChangeAllEndpointURLsChunked ()
+  {
+    final int nKeys = SMPEndpointBulkChangeHelper.CHUNK_SIZE + 1;
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+      if (sSQL.startsWith ("SELECT DISTINCT"))
+      {
+        for (int i = 0; i < nKeys; ++i)
+          ret.add (new Object [] { "iso6523-actorid-upis", "9915:" + i, "busdox-docid-qns", "doc1" });
+      }
+      else
+        if (sSQL.startsWith ("SELECT sm.extension"))
+        {
+          // The reloaded service information
+          ret.add (new Object [] { null,
+                                   "cenbii-procid-ubl",
+                                   "proc",
+                                   null,
+                                   "tp",
+                                   "http://new/as4",
+                                   Boolean.FALSE,
+                                   null,
+                                   null,
+                                   null,
+                                   null,
+                                   "desc",
+                                   "contact",
+                                   null,
+                                   null,
+                                   null });
+        }
+      return ret;
+    }, (sSQL, aParams) -> Integer.valueOf (sSQL.startsWith ("UPDATE smp_endpoint") ? 2 : 1));
+    final FakeServiceInformationManager aMgr = new FakeServiceInformationManager ( () -> new DBExecutor (aJDBC));
+    final AtomicInteger aCallbacks = new AtomicInteger (0);
+    aMgr.serviceInformationCallbacks ().add (new ISMPServiceInformationCallback ()
+    {
+      @Override
+      public void onSMPServiceInformationUpdated (@Nonnull final ISMPServiceInformation aServiceInformation)
+      {
+        // Callbacks may use request scoped singletons
+        assertNotNull (ScopeManager.getRequestScopeOrNull ());
+        aCallbacks.incrementAndGet ();
+      }
+    });
+
+    final SMPEndpointBulkChangeResult aResult = aMgr.changeAllEndpointURLs (null,
+                                                                            "http://old/as4",
+                                                                            "http://new/as4");
+    assertEquals (nKeys * 2L, aResult.getChangedEndpointCount ());
+    assertEquals (0, aResult.getErrorCount ());
+    assertEquals (nKeys, aResult.getAllChangedServiceGroupIDs ().size ());
+    assertEquals (nKeys, aCallbacks.get ());
+
+    // One transaction per chunk, each updating the endpoints and the
+    // modification date of every service information
+    final ICommonsList <String> aExecuted = aJDBC.getAllExecuted ();
+    assertEquals (2, aExecuted.getCount (MockJDBC.COMMIT::equals));
+    assertFalse (aExecuted.contains (MockJDBC.ROLLBACK));
+    final int nFirstCommit = aExecuted.indexOf (MockJDBC.COMMIT);
+    final ICommonsList <String> aFirstChunk = new CommonsArrayList <> (aExecuted.subList (0, nFirstCommit));
+    assertEquals (SMPEndpointBulkChangeHelper.CHUNK_SIZE,
+                  aFirstChunk.getCount (x -> x.startsWith ("UPDATE smp_endpoint SET endpointReference=?")));
+    assertEquals (SMPEndpointBulkChangeHelper.CHUNK_SIZE,
+                  aFirstChunk.getCount (x -> x.startsWith ("UPDATE smp_service_metadata SET lastmoddt=?")));
+    assertEquals (nKeys, aExecuted.getCount (x -> x.startsWith ("UPDATE smp_endpoint SET endpointReference=?")));
+  }
+
+  @Test
+  public void testChangeAllEndpointCertificatesChunked ()
+  {
+    final int nOldCerts = SMPEndpointBulkChangeHelper.CHUNK_SIZE + 1;
+    final ICommonsList <Integer> aKeyParamCounts = new CommonsArrayList <> ();
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+      if (sSQL.startsWith ("SELECT certhash, certificate FROM smp_certificate"))
+      {
+        for (int i = 0; i < nOldCerts; ++i)
+          ret.add (new Object [] { "hash" + i, "old" + i });
+        ret.add (new Object [] { "other", "other" });
+      }
+      else
+        if (sSQL.startsWith ("SELECT DISTINCT"))
+        {
+          aKeyParamCounts.add (Integer.valueOf (aParams.size ()));
+          // The same service information uses certificates of both chunks
+          ret.add (new Object [] { "iso6523-actorid-upis", "9915:a", "busdox-docid-qns", "doc1" });
+        }
+        else
+          if (sSQL.startsWith ("SELECT sm.extension"))
+          {
+            // The reloaded service information
+            ret.add (new Object [] { null,
+                                     "cenbii-procid-ubl",
+                                     "proc",
+                                     null,
+                                     "tp",
+                                     "http://localhost/as4",
+                                     Boolean.FALSE,
+                                     null,
+                                     null,
+                                     null,
+                                     null,
+                                     "desc",
+                                     "contact",
+                                     null,
+                                     null,
+                                     null });
+          }
+      return ret;
+    }, (sSQL, aParams) -> Integer.valueOf (1));
+    final FakeServiceInformationManager aMgr = new FakeServiceInformationManager ( () -> new DBExecutor (aJDBC));
+    final AtomicInteger aCallbacks = new AtomicInteger (0);
+    aMgr.serviceInformationCallbacks ().add (new ISMPServiceInformationCallback ()
+    {
+      @Override
+      public void onSMPServiceInformationUpdated (@Nonnull final ISMPServiceInformation aServiceInformation)
+      {
+        aCallbacks.incrementAndGet ();
+      }
+    });
+
+    final SMPEndpointBulkChangeResult aResult = aMgr.changeAllEndpointCertificates (x -> x.startsWith ("old"), "new");
+    assertEquals (2, aResult.getChangedEndpointCount ());
+    assertEquals (0, aResult.getErrorCount ());
+    assertEquals (1, aResult.getAllChangedServiceGroupIDs ().size ());
+    // Only once per service information
+    assertEquals (1, aCallbacks.get ());
+
+    // The IN lists are chunked
+    assertEquals (new CommonsArrayList <> (Integer.valueOf (SMPEndpointBulkChangeHelper.CHUNK_SIZE), Integer.valueOf (1)),
+                  aKeyParamCounts);
+    final ICommonsList <String> aExecuted = aJDBC.getAllExecuted ();
+    assertEquals (2, aExecuted.getCount (x -> x.startsWith ("UPDATE smp_endpoint SET certhash=?")));
+    assertFalse (aExecuted.contains (MockJDBC.ROLLBACK));
+  }
+}
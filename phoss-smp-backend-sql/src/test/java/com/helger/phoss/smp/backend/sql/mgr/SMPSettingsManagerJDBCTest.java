@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.state.ESuccess;
+import com.helger.db.jdbc.executor.DBExecutor;
+import com.helger.phoss.smp.backend.sql.MockJDBC;
+import com.helger.phoss.smp.settings.ISMPSettings;
+
+/**
+ * Test class for class {@link SMPSettingsManagerJDBC}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPSettingsManagerJDBCTest
+{
+  /**
+   * Settings manager that simulates the database and counts the queries.
+   */
+  private static final class CountingSettingsManager extends SMPSettingsManagerJDBC
+  {
+    private final ICommonsMap <String, String> m_aDB = new CommonsHashMap <> ();
+    private final AtomicInteger m_aValueQueries = new AtomicInteger (0);
+    private final AtomicInteger m_aVersionQueries = new AtomicInteger (0);
+    private final AtomicLong m_aNow;
+    private long m_nVersion = 0;
+
+    CountingSettingsManager (final long nPollIntervalMillis)
+    {
+      this (nPollIntervalMillis, new AtomicLong (0));
+    }
+
+    private CountingSettingsManager (final long nPollIntervalMillis, @Nonnull final AtomicLong aNow)
+    {
+      super ( () -> {
+        throw new IllegalStateException ("No DB access expected");
+      }, nPollIntervalMillis, aNow::get);
+      m_aNow = aNow;
+    }
+
+    @Override
+    public ICommonsMap <String, String> getAllSettingsValuesFromDB ()
+    {
+      m_aValueQueries.incrementAndGet ();
+      return m_aDB.getClone ();
+    }
+
+    @Override
+    @Nullable
+    public Long getSettingsVersionFromDB ()
+    {
+      m_aVersionQueries.incrementAndGet ();
+      return Long.valueOf (m_nVersion);
+    }
+
+    @Override
+    @Nonnull
+    public ESuccess setSettingsValuesInDB (@Nonnull final Map <String, String> aEntries)
+    {
+      m_aDB.putAll (aEntries);
+      m_nVersion++;
+      return ESuccess.SUCCESS;
+    }
+  }
+
+  @Test
+  public void testNoQueriesForRepeatedReads ()
+  {
+    // Never poll
+    final CountingSettingsManager aMgr = new CountingSettingsManager (0);
+    final ISMPSettings aSettings = aMgr.getSettings ();
+    assertEquals (1, aMgr.m_aValueQueries.get ());
+    assertEquals (1, aMgr.m_aVersionQueries.get ());
+
+    for (int i = 0; i < 1000; ++i)
+      assertSame (aSettings, aMgr.getSettings ());
+    assertEquals (1, aMgr.m_aValueQueries.get ());
+    assertEquals (1, aMgr.m_aVersionQueries.get ());
+  }
+
+  @Test
+  public void testUpdate ()
+  {
+    final CountingSettingsManager aMgr = new CountingSettingsManager (0);
+    final AtomicInteger aCallbackCount = new AtomicInteger (0);
+    aMgr.callbacks ().add (x -> aCallbackCount.incrementAndGet ());
+
+    final ISMPSettings aSettings = aMgr.getSettings ();
+    assertFalse (aSettings.isSMLEnabled ());
+
+    aMgr.updateSettings (false, false, false, false, null, true, false, "sml");
+    assertEquals (1, aCallbackCount.get ());
+
+    // The new snapshot is used without reading the values again
+    final ISMPSettings aSettings2 = aMgr.getSettings ();
+    assertTrue (aSettings2.isSMLEnabled ());
+    assertEquals ("sml", aSettings2.getSMLInfoID ());
+    assertFalse (aSettings.isSMLEnabled ());
+    assertEquals (1, aMgr.m_aValueQueries.get ());
+  }
+
+  @Test
+  public void testPollChangesOfOtherNodes ()
+  {
+    final CountingSettingsManager aMgr = new CountingSettingsManager (50);
+    final AtomicInteger aCallbackCount = new AtomicInteger (0);
+    aMgr.callbacks ().add (x -> aCallbackCount.incrementAndGet ());
+
+    assertFalse (aMgr.getSettings ().isSMLEnabled ());
+    assertEquals (1, aMgr.m_aValueQueries.get ());
+
+    // Simulate a change of another node
+    aMgr.m_aDB.put ("sml-enabled", "true");
+    aMgr.m_nVersion++;
+
+    // Within the poll interval the old snapshot is used
+    assertFalse (aMgr.getSettings ().isSMLEnabled ());
+    assertEquals (1, aMgr.m_aValueQueries.get ());
+
+    aMgr.m_aNow.addAndGet (49);
+    assertFalse (aMgr.getSettings ().isSMLEnabled ());
+    assertEquals (1, aMgr.m_aVersionQueries.get ());
+
+    aMgr.m_aNow.addAndGet (1);
+    assertTrue (aMgr.getSettings ().isSMLEnabled ());
+    assertEquals (2, aMgr.m_aValueQueries.get ());
+    assertEquals (1, aCallbackCount.get ());
+
+    // Unchanged version - no reload
+    aMgr.m_aNow.addAndGet (50);
+    assertTrue (aMgr.getSettings ().isSMLEnabled ());
+    assertEquals (2, aMgr.m_aValueQueries.get ());
+    assertEquals (1, aCallbackCount.get ());
+  }
+
+  @Test
+  public void testVersionIsIncrementedAtomically ()
+  {
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      assertEquals ("SELECT version FROM smp_settings WHERE id=?", sSQL);
+      final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+      ret.add (new Object [] { Long.valueOf (8) });
+      return ret;
+    }, (sSQL, aParams) -> Integer.valueOf (1));
+    final SMPSettingsManagerJDBC aMgr = new SMPSettingsManagerJDBC ( () -> new DBExecutor (aJDBC), 0);
+
+    final ICommonsMap <String, String> aValues = new CommonsLinkedHashMap <> ();
+    aValues.put ("sml-enabled", "true");
+    aValues.put ("smlinfo-id", "sml");
+    assertTrue (aMgr.setSettingsValuesInDB (aValues).isSuccess ());
+
+    // The version row is locked by the update before anything else is written
+    assertEquals (new CommonsArrayList <> ("UPDATE smp_settings SET version=version+1 WHERE id=?",
+                                           "SELECT version FROM smp_settings WHERE id=?",
+                                           "UPDATE smp_settings SET value=?, version=? WHERE id=?",
+                                           "UPDATE smp_settings SET value=?, version=? WHERE id=?",
+                                           MockJDBC.COMMIT),
+                  aJDBC.getAllExecuted ());
+  }
+
+  @Test
+  public void testVersionRowIsCreated ()
+  {
+    final ICommonsList <ICommonsList <Object>> aInsertParams = new CommonsArrayList <> ();
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> {
+      assertEquals ("SELECT MAX(version) FROM smp_settings", sSQL);
+      final ICommonsList <Object []> ret = new CommonsArrayList <> ();
+      ret.add (new Object [] { Long.valueOf (5) });
+      return ret;
+    }, (sSQL, aParams) -> {
+      if (sSQL.startsWith ("INSERT"))
+      {
+        aInsertParams.add (aParams);
+        return Integer.valueOf (1);
+      }
+      // No rows yet
+      return Integer.valueOf (0);
+    });
+    final SMPSettingsManagerJDBC aMgr = new SMPSettingsManagerJDBC ( () -> new DBExecutor (aJDBC), 0);
+    final ICommonsMap <String, String> aValues = new CommonsHashMap <> ();
+    aValues.put ("sml-enabled", "true");
+    assertTrue (aMgr.setSettingsValuesInDB (aValues).isSuccess ());
+
+    // The version row continues after the versions written so far
+    assertEquals (2, aInsertParams.size ());
+    assertEquals (new CommonsArrayList <> ("settings-version", null, Long.valueOf (6)), aInsertParams.get (0));
+    assertEquals (new CommonsArrayList <> ("sml-enabled", "true", Long.valueOf (6)), aInsertParams.get (1));
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.mgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppol.smp.ESMPTransportProfileState;
+import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppol.smp.SMPTransportProfile;
+
+/**
+ * Test class for class {@link SMPTransportProfileManagerJDBC}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPTransportProfileManagerJDBCTest
+{
+  /**
+   * Transport profile manager that simulates the database and counts the
+   * queries.
+   */
+  private static final class CountingTransportProfileManager extends SMPTransportProfileManagerJDBC
+  {
+    private final ICommonsList <ISMPTransportProfile> m_aDB = new CommonsArrayList <> ();
+    private final AtomicInteger m_aQueries = new AtomicInteger (0);
+    private boolean m_bFailing = false;
+
+    CountingTransportProfileManager (final long nReloadIntervalMillis)
+    {
+      super ( () -> {
+        throw new IllegalStateException ("No DB access expected");
+      }, nReloadIntervalMillis);
+      for (final ESMPTransportProfile e : ESMPTransportProfile.values ())
+        m_aDB.add (new SMPTransportProfile (e.getID (), e.getName (), e.getState ()));
+    }
+
+    @Override
+    @Nullable
+    public ICommonsList <ISMPTransportProfile> getAllSMPTransportProfilesFromDB ()
+    {
+      m_aQueries.incrementAndGet ();
+      return m_bFailing ? null : m_aDB.getClone ();
+    }
+  }
+
+  @Test
+  public void testNoQueriesAfterWarmUp ()
+  {
+    // Never reload
+    final CountingTransportProfileManager aMgr = new CountingTransportProfileManager (0);
+    assertEquals (0, aMgr.m_aQueries.get ());
+
+    // Warm-up
+    assertEquals (ESMPTransportProfile.values ().length, aMgr.getSMPTransportProfileCount ());
+    assertEquals (1, aMgr.m_aQueries.get ());
+
+    // Look up the transport profiles of 10k endpoints
+    final ESMPTransportProfile [] aProfiles = ESMPTransportProfile.values ();
+    for (int i = 0; i < 10_000; ++i)
+    {
+      final String sTransportProfile = aProfiles[i % aProfiles.length].getID ();
+      assertTrue (aMgr.containsSMPTransportProfileWithID (sTransportProfile));
+      assertNotNull (aMgr.getSMPTransportProfileOfID (sTransportProfile));
+      assertFalse (aMgr.containsSMPTransportProfileWithID ("unknown-" + (i % 10)));
+    }
+    assertEquals (1, aMgr.m_aQueries.get ());
+    assertEquals (1, aMgr.getRegistry ().getLoadCount ());
+  }
+
+  @Test
+  public void testRegistryChanges ()
+  {
+    final CountingTransportProfileManager aMgr = new CountingTransportProfileManager (0);
+    assertFalse (aMgr.containsSMPTransportProfileWithID ("tp1"));
+
+    // Simulate successful create, update and delete
+    aMgr.getRegistry ().put (new SMPTransportProfile ("tp1", "Name", ESMPTransportProfileState.ACTIVE));
+    assertTrue (aMgr.containsSMPTransportProfileWithID ("tp1"));
+    assertEquals (ESMPTransportProfile.values ().length + 1, aMgr.getAllSMPTransportProfiles ().size ());
+
+    aMgr.getRegistry ().put (new SMPTransportProfile ("tp1", "Name2", ESMPTransportProfileState.DEPRECATED));
+    assertEquals ("Name2", aMgr.getSMPTransportProfileOfID ("tp1").getName ());
+    assertEquals (ESMPTransportProfile.values ().length + 1, aMgr.getSMPTransportProfileCount ());
+
+    aMgr.getRegistry ().remove ("tp1");
+    assertNull (aMgr.getSMPTransportProfileOfID ("tp1"));
+    assertEquals (ESMPTransportProfile.values ().length, aMgr.getSMPTransportProfileCount ());
+    assertEquals (1, aMgr.m_aQueries.get ());
+  }
+}
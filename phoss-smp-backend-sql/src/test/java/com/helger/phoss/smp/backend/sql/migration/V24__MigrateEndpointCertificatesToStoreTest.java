@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2019-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.backend.sql.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import javax.annotation.Nonnull;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.flywaydb.core.api.migration.Context;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.phoss.smp.backend.sql.MockJDBC;
+import com.helger.phoss.smp.domain.serviceinfo.SMPCertificateCache;
+import com.helger.security.certificate.CertificateHelper;
+
+/**
+ * Test class for class {@link V24__MigrateEndpointCertificatesToStore}.
+ *
+ * @author Philip Helger
+ */
+public final class V24__MigrateEndpointCertificatesToStoreTest
+{
+  @Nonnull
+  private static X509Certificate _createCertificate () throws Exception
+  {
+    final KeyPairGenerator aKPG = KeyPairGenerator.getInstance ("RSA");
+    aKPG.initialize (2048);
+    final KeyPair aKeyPair = aKPG.generateKeyPair ();
+    final X500Name aSubject = new X500Name ("CN=SMP Migration Test,O=phoss,C=AT");
+    final Date aNow = new Date ();
+    return new JcaX509CertificateConverter ().getCertificate (new JcaX509v3CertificateBuilder (aSubject,
+                                                                                               BigInteger.ONE,
+                                                                                               aNow,
+                                                                                               new Date (aNow.getTime () +
+                                                                                                         86_400_000L),
+                                                                                               aSubject,
+                                                                                               aKeyPair.getPublic ()).build (new JcaContentSignerBuilder ("SHA256withRSA").build (aKeyPair.getPrivate ())));
+  }
+
+  @Nonnull
+  private static Object [] _createEndpointRow (@Nonnull final String sTransportProfile, final String sCertificate)
+  {
+    return new Object [] { "iso6523-actorid-upis",
+                           "9915:test",
+                           "busdox-docid-qns",
+                           "doc1",
+                           "cenbii-procid-ubl",
+                           "proc1",
+                           sTransportProfile,
+                           sCertificate };
+  }
+
+  @Test
+  public void testMigrate () throws Exception
+  {
+    final X509Certificate aCert = _createCertificate ();
+    // Two representations of the same certificate
+    final String sPEM = CertificateHelper.getPEMEncodedCertificate (aCert);
+    final String sBase64 = CertificateHelper.getWithoutPEMHeader (sPEM).replace ("\r", "").replace ("\n", "");
+    final String sHash = SMPCertificateCache.createHash (sPEM);
+
+    final ICommonsList <Object []> aEndpoints = new CommonsArrayList <> ();
+    aEndpoints.add (_createEndpointRow ("tp1", sPEM));
+    aEndpoints.add (_createEndpointRow ("tp2", sBase64));
+    aEndpoints.add (_createEndpointRow ("tp3", null));
+    aEndpoints.add (_createEndpointRow ("tp4", "other"));
+
+    final ICommonsList <ICommonsList <Object>> aCertInserts = new CommonsArrayList <> ();
+    final ICommonsList <ICommonsList <Object>> aEndpointUpdates = new CommonsArrayList <> ();
+    final MockJDBC [] aJDBCHolder = new MockJDBC [1];
+    final MockJDBC aJDBC = new MockJDBC ( (sSQL, aParams) -> sSQL.contains ("FROM smp_endpoint") ? aEndpoints : null,
+                                         (sSQL, aParams) -> {
+                                           // Nothing is modified while reading
+                                           assertEquals (sSQL, 0, aJDBCHolder[0].getOpenResultSetCount ());
+                                           if (sSQL.startsWith ("INSERT INTO smp_certificate"))
+                                             aCertInserts.add (aParams);
+                                           else
+                                             if (sSQL.startsWith ("UPDATE smp_endpoint"))
+                                               aEndpointUpdates.add (aParams);
+                                           return Integer.valueOf (1);
+                                         });
+    aJDBCHolder[0] = aJDBC;
+    final Context aContext = (Context) Proxy.newProxyInstance (Context.class.getClassLoader (),
+                                                               new Class <?> [] { Context.class },
+                                                               (aProxy, aMethod, aArgs) -> {
+                                                                 if (aMethod.getName ().equals ("getConnection"))
+                                                                   return aJDBC.getConnection ();
+                                                                 throw new UnsupportedOperationException (aMethod.getName ());
+                                                               });
+
+    new V24__MigrateEndpointCertificatesToStore ().migrate (aContext);
+
+    // The same certificate is stored only once
+    assertEquals (2, aCertInserts.size ());
+    assertEquals (sHash, aCertInserts.get (0).get (0));
+    assertEquals (sPEM, aCertInserts.get (0).get (1));
+    assertEquals (SMPCertificateCache.createHash ("other"), aCertInserts.get (1).get (0));
+    assertNotEquals (sHash, aCertInserts.get (1).get (0));
+
+    // Endpoints without certificate are untouched
+    assertEquals (3, aEndpointUpdates.size ());
+    assertEquals (sHash, aEndpointUpdates.get (0).get (0));
+    assertEquals ("tp1", aEndpointUpdates.get (0).get (7));
+    assertEquals (sHash, aEndpointUpdates.get (1).get (0));
+    assertEquals ("tp2", aEndpointUpdates.get (1).get (7));
+    assertEquals (aCertInserts.get (1).get (0), aEndpointUpdates.get (2).get (0));
+    assertEquals ("tp4", aEndpointUpdates.get (2).get (7));
+    // The certificate column is kept for older versions
+    assertTrue (aJDBC.getAllExecuted ().containsNone (x -> x.contains ("certificate=NULL")));
+    assertEquals (0, aJDBC.getOpenResultSetCount ());
+  }
+}
@@ -37,11 +37,13 @@ import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.state.EChange;
 import com.helger.dao.DAOException;
 import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
 import com.helger.photon.audit.AuditHelper;
 import com.helger.photon.io.dao.AbstractPhotonMapBasedWALDAO;
 
@@ -57,10 +59,15 @@ public final class SMPBusinessCardManagerXML extends AbstractPhotonMapBasedWALDA
   private static final Logger LOGGER = LoggerFactory.getLogger (SMPBusinessCardManagerXML.class);
 
   private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+  private final SMPBusinessCardSearchIndex m_aSearchIndex;
 
   public SMPBusinessCardManagerXML (@Nonnull @Nonempty final String sFilename) throws DAOException
   {
     super (SMPBusinessCard.class, sFilename);
+    m_aSearchIndex = SMPServerConfiguration.isBusinessCardSearchIndexEnabled () ? new SMPBusinessCardSearchIndex (this)
+                                                                                : null;
+    if (m_aSearchIndex != null)
+      m_aCBs.add (m_aSearchIndex);
   }
 
   @Nonnull
@@ -201,4 +208,10 @@ public final class SMPBusinessCardManagerXML extends AbstractPhotonMapBasedWALDA
   {
     return size ();
   }
+
+  @Nullable
+  public SMPBusinessCardSearchIndex getSearchIndex ()
+  {
+    return m_aSearchIndex;
+  }
 }
@@ -41,6 +41,8 @@ import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPage;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.exception.SMPNotFoundException;
@@ -191,6 +193,7 @@ public final class SMPServiceGroupManagerXML extends AbstractPhotonMapBasedWALDA
           LOGGER.debug ("updateSMPServiceGroup - unchanged");
         return EChange.UNCHANGED;
       }
+      aSMPServiceGroup.updateLastModificationDateTime ();
       internalUpdateItem (aSMPServiceGroup);
     }
     finally
@@ -345,6 +348,16 @@ public final class SMPServiceGroupManagerXML extends AbstractPhotonMapBasedWALDA
     return getAllIDs ();
   }
 
+  @Nonnull
+  public SMPServiceGroupPage getSMPServiceGroupPage (@Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    ValueEnforcer.notNull (aRequest, "Request");
+
+    // Everything is in memory anyway
+    return SMPServiceGroupPage.createInMemory (aRequest.hasFilter () ? getAll (aRequest::matchesFilter) : getAll (),
+                                               aRequest);
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <ISMPServiceGroup> getAllSMPServiceGroupsOfOwner (@Nonnull final String sOwnerID)
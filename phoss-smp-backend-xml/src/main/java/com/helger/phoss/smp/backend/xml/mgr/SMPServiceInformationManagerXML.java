@@ -16,6 +16,11 @@
  */
 package com.helger.phoss.smp.backend.xml.mgr;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -29,21 +34,29 @@ import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
 import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeSet;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSortedSet;
 import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.mutable.MutableLong;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
+import com.helger.commons.timing.StopWatch;
 import com.helger.dao.DAOException;
 import com.helger.peppol.smp.ISMPTransportProfile;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeHelper;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeResult;
 import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
 import com.helger.photon.audit.AuditHelper;
 import com.helger.photon.io.dao.AbstractPhotonMapBasedWALDAO;
@@ -120,6 +133,7 @@ public final class SMPServiceInformationManagerXML extends
     {
       // Edit existing
       m_aRWLock.writeLocked ( () -> {
+        aOldInformation.updateLastModificationDateTime ();
         internalUpdateItem (aOldInformation);
       });
 
@@ -150,6 +164,10 @@ public final class SMPServiceInformationManagerXML extends
           bRemovedOld = EqualsHelper.identityEqual (aDeletedInformation, aOldInformation);
         }
 
+        // Must be after the last modification of the replaced object
+        final LocalDateTime aPrevLastModDT = aOldInformation == null ? null
+                                                                     : aOldInformation.getLastModificationDateTime ();
+        aSMPServiceInformation.setLastModificationDateTime (ISMPHasLastModification.getNextLastModificationDateTime (aPrevLastModDT));
         internalCreateItem (aSMPServiceInformation);
       }
       finally
@@ -279,6 +297,7 @@ public final class SMPServiceInformationManagerXML extends
       }
 
       // Save changes
+      aRealServiceInformation.updateLastModificationDateTime ();
       internalUpdateItem (aRealServiceInformation);
     }
     finally
@@ -302,6 +321,14 @@ public final class SMPServiceInformationManagerXML extends
     return getAll ();
   }
 
+  public void forEachSMPServiceInformation (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer)
+  {
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+    // Everything is in memory anyway - just ensure the ordering by service
+    // group
+    getAll ().getSortedInline (ISMPServiceInformation.comparator ()).forEach (aConsumer);
+  }
+
   @Nonnegative
   public long getSMPServiceInformationCount ()
   {
@@ -362,6 +389,83 @@ public final class SMPServiceInformationManagerXML extends
     return ret.getFirstOrNull ();
   }
 
+  @Nonnull
+  private SMPEndpointBulkChangeResult _changeAllEndpoints (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                           @Nonnull final Predicate <? super ISMPEndpoint> aFilter,
+                                                           @Nonnull final Consumer <? super SMPEndpoint> aModifier)
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final String sServiceGroupID = aServiceGroup == null ? null : aServiceGroup.getID ();
+    final ICommonsList <ISMPServiceInformation> aChangedSIs = new CommonsArrayList <> ();
+    final ICommonsSortedSet <String> aChangedServiceGroupIDs = new CommonsTreeSet <> ();
+    final MutableLong aChangedEndpoints = new MutableLong (0);
+
+    // Everything is in memory, so all modifications are done in a single lock
+    m_aRWLock.writeLocked ( () -> {
+      for (final SMPServiceInformation aSI : internalGetAll (x -> sServiceGroupID == null ||
+                                                                  sServiceGroupID.equals (x.getServiceGroupID ())))
+      {
+        final int nChanged = SMPEndpointBulkChangeHelper.modifyEndpoints (aSI, aFilter, aModifier);
+        if (nChanged > 0)
+        {
+          aSI.updateLastModificationDateTime ();
+          internalUpdateItem (aSI);
+          aChangedSIs.add (aSI);
+          aChangedServiceGroupIDs.add (aSI.getServiceGroupID ());
+          aChangedEndpoints.inc (nChanged);
+        }
+      }
+    });
+
+    final int nErrors = SMPEndpointBulkChangeHelper.forEachParallel ("Service information callbacks",
+                                                                     aChangedSIs,
+                                                                     aSI -> m_aCBs.forEach (x -> x.onSMPServiceInformationUpdated (aSI)));
+    return new SMPEndpointBulkChangeResult (aChangedEndpoints.longValue (),
+                                            nErrors,
+                                            aChangedServiceGroupIDs,
+                                            Duration.ofMillis (aSW.stopAndGetMillis ()));
+  }
+
+  @Override
+  @Nonnull
+  public SMPEndpointBulkChangeResult changeAllEndpointURLs (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                            @Nonnull @Nonempty final String sOldURL,
+                                                            @Nonnull @Nonempty final String sNewURL)
+  {
+    ValueEnforcer.notEmpty (sOldURL, "OldURL");
+    ValueEnforcer.notEmpty (sNewURL, "NewURL");
+
+    final SMPEndpointBulkChangeResult ret = _changeAllEndpoints (aServiceGroup,
+                                                                 x -> sOldURL.equals (x.getEndpointReference ()),
+                                                                 x -> x.setEndpointReference (sNewURL));
+    AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
+                                      "bulk-change-endpoint-url",
+                                      aServiceGroup == null ? null : aServiceGroup.getID (),
+                                      sOldURL,
+                                      sNewURL,
+                                      Long.valueOf (ret.getChangedEndpointCount ()));
+    return ret;
+  }
+
+  @Override
+  @Nonnull
+  public SMPEndpointBulkChangeResult changeAllEndpointCertificates (@Nonnull final Predicate <String> aOldCertificateMatcher,
+                                                                    @Nonnull @Nonempty final String sNewCertificate)
+  {
+    ValueEnforcer.notNull (aOldCertificateMatcher, "OldCertificateMatcher");
+    ValueEnforcer.notEmpty (sNewCertificate, "NewCertificate");
+
+    final SMPEndpointBulkChangeResult ret = _changeAllEndpoints (null,
+                                                                 x -> StringHelper.hasText (x.getCertificate ()) &&
+                                                                      aOldCertificateMatcher.test (x.getCertificate ()),
+                                                                 x -> x.setCertificate (sNewCertificate));
+    AuditHelper.onAuditModifySuccess (SMPServiceInformation.OT,
+                                      "bulk-change-endpoint-certificate",
+                                      sNewCertificate,
+                                      Long.valueOf (ret.getChangedEndpointCount ()));
+    return ret;
+  }
+
   public boolean containsAnyEndpointWithTransportProfile (@Nullable final String sTransportProfileID)
   {
     if (StringHelper.hasNoText (sTransportProfileID))
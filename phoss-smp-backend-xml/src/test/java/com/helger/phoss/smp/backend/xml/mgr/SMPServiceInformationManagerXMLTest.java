@@ -41,6 +41,7 @@ import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeResult;
 import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
 import com.helger.phoss.smp.exception.SMPServerException;
@@ -233,4 +234,91 @@ public final class SMPServiceInformationManagerXMLTest
       aServiceGroupMgr.deleteSMPServiceGroup (aPI, true);
     }
   }
+
+  @Test
+  public void testBulkChange () throws SMPServerException
+  {
+    final IIdentifierFactory aIdentifierFactory = SMPMetaManager.getIdentifierFactory ();
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceInformationManager aServiceInformationMgr = SMPMetaManager.getServiceInformationMgr ();
+
+    final IParticipantIdentifier aPI = aIdentifierFactory.createParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME,
+                                                                                       "0088:bulk");
+    aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI, true);
+
+    final ISMPServiceGroup aSG = aServiceGroupMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID,
+                                                                         aPI,
+                                                                         null,
+                                                                         true);
+    assertNotNull (aSG);
+    try
+    {
+      final IProcessIdentifier aProcessID = aIdentifierFactory.createProcessIdentifier (PeppolIdentifierHelper.DEFAULT_PROCESS_SCHEME,
+                                                                                        "testproc");
+      final IDocumentTypeIdentifier aDocTypeID = aIdentifierFactory.createDocumentTypeIdentifier (PeppolIdentifierHelper.DOCUMENT_TYPE_SCHEME_BUSDOX_DOCID_QNS,
+                                                                                                  "xml::xml##testdoctype::1");
+      final SMPEndpoint aEP1 = new SMPEndpoint ("tp",
+                                                "http://localhost/old",
+                                                false,
+                                                null,
+                                                null,
+                                                null,
+                                                "cert",
+                                                "sd",
+                                                "tc",
+                                                null,
+                                                null);
+      final SMPEndpoint aEP2 = new SMPEndpoint ("tp2",
+                                                "http://localhost/other",
+                                                false,
+                                                null,
+                                                null,
+                                                null,
+                                                "cert",
+                                                "sd",
+                                                "tc",
+                                                null,
+                                                null);
+      final SMPProcess aProcess = new SMPProcess (aProcessID, new CommonsArrayList <> (aEP1, aEP2), null);
+      assertTrue (aServiceInformationMgr.mergeSMPServiceInformation (new SMPServiceInformation (aSG,
+                                                                                                aDocTypeID,
+                                                                                                new CommonsArrayList <> (aProcess),
+                                                                                                null))
+                                        .isSuccess ());
+
+      // Change the URL
+      SMPEndpointBulkChangeResult aResult = aServiceInformationMgr.changeAllEndpointURLs (null,
+                                                                                          "http://localhost/old",
+                                                                                          "http://localhost/new");
+      assertEquals (1, aResult.getChangedEndpointCount ());
+      assertEquals (0, aResult.getErrorCount ());
+      assertEquals (new CommonsArrayList <> (aSG.getID ()), aResult.getAllChangedServiceGroupIDs ().getCopyAsList ());
+
+      ISMPProcess aStoredProcess = aServiceInformationMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG,
+                                                                                                                aDocTypeID)
+                                                         .getProcessOfID (aProcessID);
+      assertEquals ("http://localhost/new", aStoredProcess.getEndpointOfTransportProfile ("tp").getEndpointReference ());
+      assertEquals ("http://localhost/other",
+                    aStoredProcess.getEndpointOfTransportProfile ("tp2").getEndpointReference ());
+
+      // Nothing to change anymore
+      aResult = aServiceInformationMgr.changeAllEndpointURLs (aSG, "http://localhost/old", "http://localhost/new");
+      assertEquals (0, aResult.getChangedEndpointCount ());
+      assertTrue (aResult.getAllChangedServiceGroupIDs ().isEmpty ());
+
+      // Change the certificate
+      aResult = aServiceInformationMgr.changeAllEndpointCertificates ("cert"::equals, "cert2");
+      assertEquals (2, aResult.getChangedEndpointCount ());
+      assertEquals (0, aResult.getErrorCount ());
+
+      aStoredProcess = aServiceInformationMgr.getSMPServiceInformationOfServiceGroupAndDocumentType (aSG, aDocTypeID)
+                                             .getProcessOfID (aProcessID);
+      assertEquals ("cert2", aStoredProcess.getEndpointOfTransportProfile ("tp").getCertificate ());
+      assertEquals ("cert2", aStoredProcess.getEndpointOfTransportProfile ("tp2").getCertificate ());
+    }
+    finally
+    {
+      aServiceGroupMgr.deleteSMPServiceGroup (aPI, true);
+    }
+  }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.audit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * Defines how audit items are written to the backend.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public enum ESMPAuditDurability implements IHasID <String>
+{
+  /**
+   * Each audit item is written in the calling thread, before the action
+   * returns. This was the behaviour of all versions before 7.1.4.
+   */
+  SYNCHRONOUS ("sync"),
+  /**
+   * Audit items are queued and written in batches in the background. If the
+   * queue is full, the calling thread waits until there is space again, so no
+   * audit item is lost while the application is running.
+   */
+  ASYNCHRONOUS ("async"),
+  /**
+   * Audit items are queued and written in batches in the background. If the
+   * queue is full, new audit items are dropped and only logged.
+   */
+  BEST_EFFORT ("best-effort");
+
+  private final String m_sID;
+
+  ESMPAuditDurability (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  public boolean isSynchronous ()
+  {
+    return this == SYNCHRONOUS;
+  }
+
+  @Nullable
+  public static ESMPAuditDurability getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (ESMPAuditDurability.class, sID);
+  }
+
+  @Nullable
+  public static ESMPAuditDurability getFromIDOrDefault (@Nullable final String sID,
+                                                        @Nullable final ESMPAuditDurability eDefault)
+  {
+    return EnumHelper.getFromIDOrDefault (ESMPAuditDurability.class, sID, eDefault);
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.audit;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.state.ESuccess;
+import com.helger.photon.audit.IAuditItem;
+
+/**
+ * Backend specific writer for multiple audit items at once.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@FunctionalInterface
+public interface ISMPAuditItemBatchWriter
+{
+  /**
+   * Write all provided audit items in as few round trips as possible.
+   *
+   * @param aItems
+   *        The items to be written. May neither be <code>null</code> nor
+   *        empty.
+   * @return {@link ESuccess#SUCCESS} if all items were written,
+   *         {@link ESuccess#FAILURE} otherwise.
+   */
+  @Nonnull
+  ESuccess writeAuditItems (@Nonnull @Nonempty List <IAuditItem> aItems);
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.audit;
+
+import java.time.LocalDateTime;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.photon.audit.IAuditItem;
+
+/**
+ * Additional read and maintenance operations on the persisted audit items of
+ * the SQL and MongoDB backends. All operations use the index on the audit date
+ * time.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public interface ISMPAuditStore
+{
+  /**
+   * Get all audit items in the provided time range, newest first.
+   *
+   * @param aFrom
+   *        The inclusive start of the range. May be <code>null</code> for no
+   *        lower bound.
+   * @param aTo
+   *        The exclusive end of the range. May be <code>null</code> for no upper
+   *        bound.
+   * @param nMaxItems
+   *        The maximum number of items to return. Must be &gt; 0.
+   * @return The matching audit items and never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  ICommonsList <IAuditItem> getAllAuditItemsInRange (@Nullable LocalDateTime aFrom,
+                                                     @Nullable LocalDateTime aTo,
+                                                     @Nonnegative int nMaxItems);
+
+  /**
+   * Delete all audit items older than the provided date time.
+   *
+   * @param aDT
+   *        The exclusive upper bound of the items to delete. May not be
+   *        <code>null</code>.
+   * @return The number of deleted audit items. Always &ge; 0.
+   */
+  @Nonnegative
+  long deleteAllAuditItemsBefore (@Nonnull LocalDateTime aDT);
+}
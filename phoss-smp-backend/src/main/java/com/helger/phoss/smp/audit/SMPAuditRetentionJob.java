@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.audit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
+
+/**
+ * Periodically deletes all audit items that are older than the configured
+ * retention period from an {@link ISMPAuditStore}.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPAuditRetentionJob implements AutoCloseable
+{
+  /** The time after startup, until the first deletion is performed */
+  public static final Duration INITIAL_DELAY = Duration.ofMinutes (1);
+  /** The interval in which the deletion is performed */
+  public static final Duration RUN_INTERVAL = Duration.ofHours (1);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPAuditRetentionJob.class);
+
+  private final ISMPAuditStore m_aStore;
+  private final Duration m_aRetention;
+  private final ScheduledExecutorService m_aExecutor;
+  private final AtomicLong m_aDeletedCount = new AtomicLong (0);
+
+  /**
+   * Constructor. The job is started immediately.
+   *
+   * @param aStore
+   *        The audit store to clean. May not be <code>null</code>.
+   * @param aRetention
+   *        The duration for which audit items are kept. May not be
+   *        <code>null</code> and must be positive.
+   */
+  public SMPAuditRetentionJob (@Nonnull final ISMPAuditStore aStore, @Nonnull final Duration aRetention)
+  {
+    ValueEnforcer.notNull (aStore, "Store");
+    ValueEnforcer.notNull (aRetention, "Retention");
+    ValueEnforcer.isFalse (aRetention.isNegative () || aRetention.isZero (), "Retention must be positive");
+    m_aStore = aStore;
+    m_aRetention = aRetention;
+
+    final BasicThreadFactory aThreadFactory = new BasicThreadFactory.Builder ().namingPattern ("smp-audit-retention-%d")
+                                                                               .daemon (true)
+                                                                               .build ();
+    m_aExecutor = Executors.newSingleThreadScheduledExecutor (aThreadFactory);
+    m_aExecutor.scheduleWithFixedDelay ( () -> {
+      try
+      {
+        deleteExpiredAuditItems ();
+      }
+      catch (final RuntimeException ex)
+      {
+        // Try again next time
+        LOGGER.warn ("Error deleting expired audit items", ex);
+      }
+    }, INITIAL_DELAY.toMillis (), RUN_INTERVAL.toMillis (), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Create and start a new retention job, if a retention period is configured
+   * in {@link SMPServerConfiguration}.
+   *
+   * @param aStore
+   *        The audit store to clean. May not be <code>null</code>.
+   * @return <code>null</code> if audit items should be kept forever.
+   */
+  @Nullable
+  public static SMPAuditRetentionJob createFromConfigurationOrNull (@Nonnull final ISMPAuditStore aStore)
+  {
+    final Duration aRetention = SMPServerConfiguration.getAuditRetention ();
+    if (aRetention == null)
+      return null;
+    LOGGER.info ("Audit items are deleted after " + aRetention.toDays () + " day(s)");
+    return new SMPAuditRetentionJob (aStore, aRetention);
+  }
+
+  @Nonnull
+  public Duration getRetention ()
+  {
+    return m_aRetention;
+  }
+
+  /**
+   * @return The total number of audit items deleted by this job. Always &ge;
+   *         0.
+   */
+  @Nonnegative
+  public long getDeletedCount ()
+  {
+    return m_aDeletedCount.get ();
+  }
+
+  /**
+   * Delete all expired audit items now. This is called periodically in the
+   * background.
+   *
+   * @return The number of deleted audit items. Always &ge; 0.
+   */
+  @Nonnegative
+  public long deleteExpiredAuditItems ()
+  {
+    final LocalDateTime aCutOff = PDTFactory.getCurrentLocalDateTime ().minus (m_aRetention);
+    final long nDeleted = m_aStore.deleteAllAuditItemsBefore (aCutOff);
+    if (nDeleted > 0)
+    {
+      m_aDeletedCount.addAndGet (nDeleted);
+      LOGGER.info ("Deleted " + nDeleted + " audit item(s) older than " + aCutOff);
+    }
+    return nDeleted;
+  }
+
+  /**
+   * Stop the background job.
+   */
+  public void close ()
+  {
+    ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (m_aExecutor);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Store", m_aStore).append ("Retention", m_aRetention).getToString ();
+  }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.audit;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.state.EChange;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
+import com.helger.photon.audit.AbstractAuditor;
+import com.helger.photon.audit.IAuditItem;
+import com.helger.security.authentication.subject.user.ICurrentUserIDProvider;
+
+/**
+ * An auditor that collects audit items in a bounded in-memory queue and writes
+ * them in batches in a background thread using an
+ * {@link ISMPAuditItemBatchWriter}. This avoids one database round trip per
+ * audited action. The behaviour if the queue is full is defined by the
+ * {@link ESMPAuditDurability}.<br>
+ * Auditing threads never wait longer than the flush interval for space in the
+ * queue. If the queue is still full afterwards, e.g. because the background
+ * writer is stuck, the audit item is written synchronously instead.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public class SMPBatchingAuditor extends AbstractAuditor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPBatchingAuditor.class);
+
+  private final ISMPAuditItemBatchWriter m_aWriter;
+  private final ESMPAuditDurability m_eDurability;
+  private final int m_nQueueCapacity;
+  private final int m_nMaxBatchSize;
+  private final long m_nFlushIntervalMillis;
+  private final BlockingQueue <IAuditItem> m_aQueue;
+  private final ExecutorService m_aExecutor;
+  private final AtomicBoolean m_aStopped = new AtomicBoolean (false);
+
+  // Statistics
+  private final AtomicLong m_aWrittenCount = new AtomicLong (0);
+  private final AtomicLong m_aFailedCount = new AtomicLong (0);
+  private final AtomicLong m_aDroppedCount = new AtomicLong (0);
+  private final AtomicLong m_aBlockedCount = new AtomicLong (0);
+  private final AtomicLong m_aBatchCount = new AtomicLong (0);
+
+  /**
+   * Constructor
+   *
+   * @param aCurrentUserIDProvider
+   *        The current user ID provider. May not be <code>null</code>.
+   * @param aWriter
+   *        The backend specific writer. May not be <code>null</code>.
+   * @param eDurability
+   *        The durability mode to use. May not be <code>null</code>.
+   * @param nQueueCapacity
+   *        The maximum number of queued audit items. Must be &gt; 0.
+   * @param nMaxBatchSize
+   *        The maximum number of audit items written at once. Must be &gt; 0.
+   * @param aFlushInterval
+   *        The maximum time an audit item stays in the queue, before it is
+   *        written. May not be <code>null</code>.
+   */
+  public SMPBatchingAuditor (@Nonnull final ICurrentUserIDProvider aCurrentUserIDProvider,
+                             @Nonnull final ISMPAuditItemBatchWriter aWriter,
+                             @Nonnull final ESMPAuditDurability eDurability,
+                             @Nonnegative final int nQueueCapacity,
+                             @Nonnegative final int nMaxBatchSize,
+                             @Nonnull final Duration aFlushInterval)
+  {
+    super (aCurrentUserIDProvider);
+    ValueEnforcer.notNull (aWriter, "Writer");
+    ValueEnforcer.notNull (eDurability, "Durability");
+    ValueEnforcer.isGT0 (nQueueCapacity, "QueueCapacity");
+    ValueEnforcer.isGT0 (nMaxBatchSize, "MaxBatchSize");
+    ValueEnforcer.notNull (aFlushInterval, "FlushInterval");
+    m_aWriter = aWriter;
+    m_eDurability = eDurability;
+    m_nQueueCapacity = nQueueCapacity;
+    m_nMaxBatchSize = nMaxBatchSize;
+    m_nFlushIntervalMillis = Math.max (1, aFlushInterval.toMillis ());
+    if (eDurability.isSynchronous ())
+    {
+      m_aQueue = null;
+      m_aExecutor = null;
+    }
+    else
+    {
+      m_aQueue = new ArrayBlockingQueue <> (nQueueCapacity);
+      final BasicThreadFactory aThreadFactory = new BasicThreadFactory.Builder ().namingPattern ("smp-audit-writer-%d")
+                                                                                 .daemon (true)
+                                                                                 .build ();
+      m_aExecutor = Executors.newSingleThreadExecutor (aThreadFactory);
+      m_aExecutor.submit (this::_runWriter);
+    }
+  }
+
+  /**
+   * Create a new batching auditor using the settings from
+   * {@link SMPServerConfiguration}.
+   *
+   * @param aCurrentUserIDProvider
+   *        The current user ID provider. May not be <code>null</code>.
+   * @param aWriter
+   *        The backend specific writer. May not be <code>null</code>.
+   * @return The new auditor and never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPBatchingAuditor createFromConfiguration (@Nonnull final ICurrentUserIDProvider aCurrentUserIDProvider,
+                                                            @Nonnull final ISMPAuditItemBatchWriter aWriter)
+  {
+    final SMPBatchingAuditor ret = new SMPBatchingAuditor (aCurrentUserIDProvider,
+                                                           aWriter,
+                                                           SMPServerConfiguration.getAuditDurability (),
+                                                           SMPServerConfiguration.getAuditQueueSize (),
+                                                           SMPServerConfiguration.getAuditBatchSize (),
+                                                           SMPServerConfiguration.getAuditFlushInterval ());
+    LOGGER.info ("Using audit writer " + ret);
+    return ret;
+  }
+
+  @Nonnull
+  public final ESMPAuditDurability getDurability ()
+  {
+    return m_eDurability;
+  }
+
+  @Nonnegative
+  public final int getQueueCapacity ()
+  {
+    return m_nQueueCapacity;
+  }
+
+  @Nonnegative
+  public final int getMaxBatchSize ()
+  {
+    return m_nMaxBatchSize;
+  }
+
+  /**
+   * @return The number of audit items currently waiting to be written. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int getQueueLength ()
+  {
+    return m_aQueue == null ? 0 : m_aQueue.size ();
+  }
+
+  /**
+   * @return The number of audit items successfully written. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getWrittenCount ()
+  {
+    return m_aWrittenCount.get ();
+  }
+
+  /**
+   * @return The number of audit items that could not be written to the
+   *         backend and were only logged. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getFailedCount ()
+  {
+    return m_aFailedCount.get ();
+  }
+
+  /**
+   * @return The number of audit items that were dropped because the queue was
+   *         full. Only used in {@link ESMPAuditDurability#BEST_EFFORT} mode.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public long getDroppedCount ()
+  {
+    return m_aDroppedCount.get ();
+  }
+
+  /**
+   * @return The number of times an auditing thread had to wait, because the
+   *         queue was full. Only used in {@link ESMPAuditDurability#ASYNCHRONOUS}
+   *         mode. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getBlockedCount ()
+  {
+    return m_aBlockedCount.get ();
+  }
+
+  /**
+   * @return The number of batches written. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getBatchCount ()
+  {
+    return m_aBatchCount.get ();
+  }
+
+  private void _write (@Nonnull final ICommonsList <IAuditItem> aBatch)
+  {
+    boolean bSuccess;
+    try
+    {
+      bSuccess = m_aWriter.writeAuditItems (aBatch).isSuccess ();
+    }
+    catch (final Throwable t)
+    {
+      LOGGER.error ("Error writing " + aBatch.size () + " audit item(s)", t);
+      bSuccess = false;
+    }
+
+    m_aBatchCount.incrementAndGet ();
+    if (bSuccess)
+      m_aWrittenCount.addAndGet (aBatch.size ());
+    else
+    {
+      // Keep them at least in the log
+      m_aFailedCount.addAndGet (aBatch.size ());
+      for (final IAuditItem aItem : aBatch)
+        LOGGER.warn ("Failed to write audit item " + aItem);
+    }
+  }
+
+  private void _runWriter ()
+  {
+    final ICommonsList <IAuditItem> aBatch = new CommonsArrayList <> (m_nMaxBatchSize);
+    try
+    {
+      while (!m_aStopped.get ())
+      {
+        final IAuditItem aFirst = m_aQueue.poll (m_nFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (aFirst == null)
+          continue;
+
+        try
+        {
+          // Collect until the batch is full or the flush interval is over
+          aBatch.add (aFirst);
+          final long nDeadline = System.currentTimeMillis () + m_nFlushIntervalMillis;
+          while (aBatch.size () < m_nMaxBatchSize && !m_aStopped.get ())
+          {
+            m_aQueue.drainTo (aBatch, m_nMaxBatchSize - aBatch.size ());
+            final long nRemaining = nDeadline - System.currentTimeMillis ();
+            if (aBatch.size () >= m_nMaxBatchSize || nRemaining <= 0)
+              break;
+            final IAuditItem aNext = m_aQueue.poll (nRemaining, TimeUnit.MILLISECONDS);
+            if (aNext == null)
+              break;
+            aBatch.add (aNext);
+          }
+
+          _write (aBatch);
+        }
+        catch (final InterruptedException ex)
+        {
+          throw ex;
+        }
+        catch (final Throwable t)
+        {
+          // Keep the writer running
+          LOGGER.error ("Error in audit writer", t);
+        }
+        aBatch.clear ();
+      }
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    finally
+    {
+      // Write everything that is left
+      if (aBatch.isNotEmpty ())
+        _write (aBatch);
+      _writeAllQueued ();
+    }
+  }
+
+  private void _writeAllQueued ()
+  {
+    final ICommonsList <IAuditItem> aBatch = new CommonsArrayList <> (m_nMaxBatchSize);
+    while (m_aQueue.drainTo (aBatch, m_nMaxBatchSize) > 0)
+    {
+      _write (aBatch);
+      aBatch.clear ();
+    }
+  }
+
+  /**
+   * Put the audit item into the queue.
+   *
+   * @return <code>true</code> if the audit item was handled,
+   *         <code>false</code> if it must be written synchronously.
+   */
+  private boolean _enqueue (@Nonnull final IAuditItem aAuditItem)
+  {
+    if (m_aQueue.offer (aAuditItem))
+      return true;
+
+    if (m_eDurability == ESMPAuditDurability.BEST_EFFORT)
+    {
+      m_aDroppedCount.incrementAndGet ();
+      LOGGER.warn ("Audit queue is full - dropping audit item " + aAuditItem);
+      return true;
+    }
+
+    // Back pressure - wait a limited time until the writer made space
+    m_aBlockedCount.incrementAndGet ();
+    try
+    {
+      if (m_aQueue.offer (aAuditItem, m_nFlushIntervalMillis, TimeUnit.MILLISECONDS))
+        return true;
+      LOGGER.warn ("Audit queue is still full - writing audit item synchronously");
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    // Don't lose it
+    return false;
+  }
+
+  @Override
+  protected void handleAuditItem (@Nonnull final IAuditItem aAuditItem)
+  {
+    // Never queue after the writer was stopped - nobody would write it
+    if (!m_eDurability.isSynchronous () && !m_aStopped.get ())
+    {
+      if (_enqueue (aAuditItem))
+      {
+        // The writer may have been stopped while queueing, after the remaining
+        // items were written - so write them now
+        if (m_aStopped.get ())
+          _writeAllQueued ();
+        return;
+      }
+    }
+
+    _write (new CommonsArrayList <> (aAuditItem));
+  }
+
+  /**
+   * Stop the background writer after all queued audit items were written. Audit
+   * items created afterwards are written synchronously.
+   *
+   * @return {@link EChange#CHANGED} if the writer was stopped,
+   *         {@link EChange#UNCHANGED} if it was already stopped.
+   */
+  @Nonnull
+  public EChange stop ()
+  {
+    if (!m_aStopped.compareAndSet (false, true))
+      return EChange.UNCHANGED;
+
+    if (m_aExecutor != null)
+    {
+      final int nQueueLength = getQueueLength ();
+      if (nQueueLength > 0)
+        LOGGER.info ("Stopping audit writer with " + nQueueLength + " queued item(s)");
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (m_aExecutor);
+
+      // Write what the writer did not take. Items queued concurrently are
+      // written by the auditing thread itself
+      _writeAllQueued ();
+    }
+    return EChange.CHANGED;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Durability", m_eDurability)
+                                       .append ("QueueCapacity", m_nQueueCapacity)
+                                       .append ("MaxBatchSize", m_nMaxBatchSize)
+                                       .append ("FlushIntervalMillis", m_nFlushIntervalMillis)
+                                       .getToString ();
+  }
+}
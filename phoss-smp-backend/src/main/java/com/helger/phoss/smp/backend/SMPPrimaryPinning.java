@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.StringHelper;
+import com.helger.scope.IRequestScope;
+import com.helger.scope.mgr.ScopeManager;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * Read your writes for backends that read from replicas. After a write, the
+ * current request and all further requests of the same client read from the
+ * primary database for the configured duration. That covers the typical
+ * "write, then read it back" sequence of REST clients, that use separate HTTP
+ * requests for both steps.<br>
+ * A client is identified by its HTTP session if one exists, and by its remote
+ * address otherwise. Behind a reverse proxy without forwarded addresses all
+ * clients share one address, so a write pins all of them - that costs replica
+ * offloading but never returns stale data to the writer.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPPrimaryPinning
+{
+  /** Above this number of pinned clients, expired entries are removed */
+  static final int CLEANUP_THRESHOLD = 1_000;
+
+  private final String m_sRequestAttr;
+  private final long m_nPinMillis;
+  private final LongSupplier m_aClock;
+  // Client key to the time until the client is pinned
+  private final Map <String, Long> m_aPinnedUntil = new ConcurrentHashMap <> ();
+
+  /**
+   * Constructor
+   *
+   * @param sName
+   *        The name of the backend, used to distinguish the request
+   *        attributes. May neither be <code>null</code> nor empty.
+   * @param nPinMillis
+   *        The number of milliseconds a client is pinned to the primary
+   *        database after a write. Must be &ge; 0.
+   */
+  public SMPPrimaryPinning (@Nonnull @Nonempty final String sName, @Nonnegative final long nPinMillis)
+  {
+    this (sName, nPinMillis, System::currentTimeMillis);
+  }
+
+  SMPPrimaryPinning (@Nonnull @Nonempty final String sName,
+                     @Nonnegative final long nPinMillis,
+                     @Nonnull final LongSupplier aClock)
+  {
+    ValueEnforcer.notEmpty (sName, "Name");
+    ValueEnforcer.isGE0 (nPinMillis, "PinMillis");
+    ValueEnforcer.notNull (aClock, "Clock");
+    m_sRequestAttr = SMPPrimaryPinning.class.getName () + "." + sName;
+    m_nPinMillis = nPinMillis;
+    m_aClock = aClock;
+  }
+
+  /**
+   * @return The number of milliseconds a client is pinned to the primary
+   *         database after a write. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getPinMillis ()
+  {
+    return m_nPinMillis;
+  }
+
+  /**
+   * Get the key of the client of the provided request.
+   *
+   * @param aRequestScope
+   *        The request scope. May be <code>null</code>.
+   * @return <code>null</code> if the client cannot be determined.
+   */
+  @Nullable
+  static String getClientKey (@Nullable final IRequestScope aRequestScope)
+  {
+    if (aRequestScope == null)
+      return null;
+    final String sSessionID = aRequestScope.getSessionID (false);
+    if (StringHelper.hasText (sSessionID))
+      return "session:" + sSessionID;
+    if (aRequestScope instanceof IRequestWebScopeWithoutResponse)
+    {
+      final String sRemoteAddr = ((IRequestWebScopeWithoutResponse) aRequestScope).getRemoteAddr ();
+      if (StringHelper.hasText (sRemoteAddr))
+        return "addr:" + sRemoteAddr;
+    }
+    return null;
+  }
+
+  /**
+   * Remember that the client with the provided key wrote something.
+   *
+   * @param sClientKey
+   *        The client key. May be <code>null</code>.
+   */
+  void onWrite (@Nullable final String sClientKey)
+  {
+    if (sClientKey != null && m_nPinMillis > 0)
+    {
+      final long nNow = m_aClock.getAsLong ();
+      m_aPinnedUntil.put (sClientKey, Long.valueOf (nNow + m_nPinMillis));
+      if (m_aPinnedUntil.size () > CLEANUP_THRESHOLD)
+        m_aPinnedUntil.values ().removeIf (x -> x.longValue () <= nNow);
+    }
+  }
+
+  /**
+   * Remember that the current request wrote something to the primary
+   * database. Must be called for every write operation.
+   */
+  public void onWrite ()
+  {
+    final IRequestScope aRequestScope = ScopeManager.getRequestScopeOrNull ();
+    if (aRequestScope != null)
+    {
+      aRequestScope.attrs ().putIn (m_sRequestAttr, Boolean.TRUE);
+      onWrite (getClientKey (aRequestScope));
+    }
+  }
+
+  /**
+   * Check if the client with the provided key must read from the primary
+   * database.
+   *
+   * @param sClientKey
+   *        The client key. May be <code>null</code>.
+   * @return <code>true</code> if the client wrote something within the pin
+   *         duration.
+   */
+  boolean isPinned (@Nullable final String sClientKey)
+  {
+    if (sClientKey == null)
+      return false;
+    final Long aPinnedUntil = m_aPinnedUntil.get (sClientKey);
+    if (aPinnedUntil == null)
+      return false;
+    if (aPinnedUntil.longValue () > m_aClock.getAsLong ())
+      return true;
+    // Expired - only remove it, if no new write happened in the meantime
+    m_aPinnedUntil.remove (sClientKey, aPinnedUntil);
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> if the current request must read from the
+   *         primary database, because it or a previous request of the same
+   *         client wrote something. <code>false</code> if a replica may be
+   *         used or if there is no current request.
+   */
+  public boolean isPrimaryRequired ()
+  {
+    final IRequestScope aRequestScope = ScopeManager.getRequestScopeOrNull ();
+    if (aRequestScope == null)
+      return false;
+    return aRequestScope.attrs ().getAsBoolean (m_sRequestAttr) || isPinned (getClientKey (aRequestScope));
+  }
+
+  /**
+   * @return The number of currently remembered clients, including expired
+   *         ones that were not yet removed. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getPinnedClientCount ()
+  {
+    return m_aPinnedUntil.size ();
+  }
+}
@@ -10,6 +10,9 @@
  */
 package com.helger.phoss.smp.config;
 
+import java.time.Duration;
+
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
@@ -23,6 +26,7 @@ import com.helger.config.IConfig;
 import com.helger.peppolid.factory.ESMPIdentifierType;
 import com.helger.phoss.smp.CSMPServer;
 import com.helger.phoss.smp.ESMPRESTType;
+import com.helger.phoss.smp.audit.ESMPAuditDurability;
 import com.helger.security.keystore.EKeyStoreType;
 
 /**
@@ -41,6 +45,7 @@ public final class SMPServerConfiguration
   public static final String KEY_SMP_KEYSTORE_PASSWORD = "smp.keystore.password";
   public static final String KEY_SMP_KEYSTORE_KEY_ALIAS = "smp.keystore.key.alias";
   public static final String KEY_SMP_KEYSTORE_KEY_PASSWORD = "smp.keystore.key.password";
+  public static final String KEY_SMP_SIGNATURE_PROVIDER = "smp.signature.provider";
 
   public static final String KEY_SMP_TRUSTSTORE_TYPE = "smp.truststore.type";
   public static final String KEY_SMP_TRUSTSTORE_PATH = "smp.truststore.path";
@@ -55,6 +60,33 @@ public final class SMPServerConfiguration
   public static final String KEY_SMP_REST_LOG_EXCEPTIONS = "smp.rest.log.exceptions";
   public static final String KEY_SMP_REST_PAYLOAD_ON_ERROR = "smp.rest.payload.on.error";
   public static final String KEY_SMP_REST_REMOTE_QUERY_API_DISABLED = "smp.rest.remote.queryapi.disabled";
+  public static final String KEY_SMP_REST_REMOTE_QUERY_API_DNS_CACHE_TTL_SECONDS = "smp.rest.remote.queryapi.dnscache.ttl.seconds";
+  public static final String KEY_SMP_REST_REMOTE_QUERY_API_PARALLEL_MAX = "smp.rest.remote.queryapi.parallel.max";
+  public static final String KEY_SMP_REST_REMOTE_QUERY_API_TIMEOUT_MS = "smp.rest.remote.queryapi.timeout.ms";
+  public static final String KEY_SMP_REST_REMOTE_QUERY_API_THREADS_MAX = "smp.rest.remote.queryapi.threads.max";
+  public static final String KEY_SMP_REST_REMOTE_QUERY_API_QUEUE_SIZE = "smp.rest.remote.queryapi.queue.size";
+  public static final String KEY_SMP_REST_COMPRESSION_ENABLED = "smp.rest.compression.enabled";
+  public static final String KEY_SMP_REST_COMPRESSION_MIN_SIZE = "smp.rest.compression.minsize";
+  public static final String KEY_SMP_REST_SIGNED_RESPONSE_CACHE_SIZE = "smp.rest.signedresponse.cache.size";
+  public static final String KEY_SMP_REST_IDENTIFIER_CACHE_SIZE = "smp.rest.identifier.cache.size";
+  public static final String KEY_SMP_REST_BUSINESSCARD_CACHE_SIZE = "smp.rest.businesscard.cache.size";
+  public static final String KEY_SMP_REST_BUSINESSCARD_CACHE_TTL_MS = "smp.rest.businesscard.cache.ttl.ms";
+  public static final String KEY_SMP_REST_REDIRECT_CACHE_SIZE = "smp.rest.redirect.cache.size";
+  public static final String KEY_SMP_REST_REDIRECT_CACHE_TTL_MS = "smp.rest.redirect.cache.ttl.ms";
+
+  public static final String KEY_SMP_BUSINESSCARD_SEARCHINDEX_ENABLED = "smp.businesscard.searchindex.enabled";
+
+  public static final String KEY_SMP_CLUSTER_ENABLED = "smp.cluster.enabled";
+  public static final String KEY_SMP_CLUSTER_POLL_INTERVAL_MS = "smp.cluster.poll.interval.ms";
+  public static final String KEY_SMP_CLUSTER_EVENT_RETENTION_MINUTES = "smp.cluster.event.retention.minutes";
+
+  public static final String KEY_SMP_TRANSPORTPROFILE_RELOAD_INTERVAL_MS = "smp.transportprofile.reload.interval.ms";
+
+  public static final String KEY_SMP_AUDIT_DURABILITY = "smp.audit.durability";
+  public static final String KEY_SMP_AUDIT_QUEUE_SIZE = "smp.audit.queue.size";
+  public static final String KEY_SMP_AUDIT_BATCH_SIZE = "smp.audit.batch.size";
+  public static final String KEY_SMP_AUDIT_FLUSH_INTERVAL_MS = "smp.audit.flush.interval.ms";
+  public static final String KEY_SMP_AUDIT_RETENTION_DAYS = "smp.audit.retention.days";
 
   public static final String KEY_SMP_STATUS_ENABLED = "smp.status.enabled";
   public static final String KEY_SMP_STATUS_SHOW_CERTIFICATE_DATES = "smp.status.show.certificate.dates";
@@ -76,6 +108,33 @@ public final class SMPServerConfiguration
   public static final boolean DEFAULT_SMP_REST_LOG_EXCEPTIONS = false;
   public static final boolean DEFAULT_SMP_REST_PAYLOAD_ON_ERROR = true;
   public static final boolean DEFAULT_SMP_REST_REMOTE_QUERY_API_DISABLED = true;
+  public static final Duration DEFAULT_SMP_REST_REMOTE_QUERY_API_DNS_CACHE_TTL = Duration.ofMinutes (5);
+  public static final int DEFAULT_SMP_REST_REMOTE_QUERY_API_PARALLEL_MAX = 8;
+  public static final Timeout DEFAULT_SMP_REST_REMOTE_QUERY_API_TIMEOUT = Timeout.ofSeconds (20);
+  public static final int DEFAULT_SMP_REST_REMOTE_QUERY_API_THREADS_MAX = 32;
+  public static final int DEFAULT_SMP_REST_REMOTE_QUERY_API_QUEUE_SIZE = 256;
+  public static final boolean DEFAULT_SMP_REST_COMPRESSION_ENABLED = true;
+  public static final int DEFAULT_SMP_REST_COMPRESSION_MIN_SIZE = 1024;
+  public static final int DEFAULT_SMP_REST_SIGNED_RESPONSE_CACHE_SIZE = 500;
+  public static final int DEFAULT_SMP_REST_IDENTIFIER_CACHE_SIZE = 10_000;
+  public static final int DEFAULT_SMP_REST_BUSINESSCARD_CACHE_SIZE = 1_000;
+  public static final long DEFAULT_SMP_REST_BUSINESSCARD_CACHE_TTL_MS = 60_000;
+  public static final int DEFAULT_SMP_REST_REDIRECT_CACHE_SIZE = 10_000;
+  public static final long DEFAULT_SMP_REST_REDIRECT_CACHE_TTL_MS = 60_000;
+
+  public static final boolean DEFAULT_SMP_BUSINESSCARD_SEARCHINDEX_ENABLED = true;
+
+  public static final boolean DEFAULT_SMP_CLUSTER_ENABLED = false;
+  public static final long DEFAULT_SMP_CLUSTER_POLL_INTERVAL_MS = 2_000;
+  public static final long DEFAULT_SMP_CLUSTER_EVENT_RETENTION_MINUTES = 60;
+
+  public static final long DEFAULT_SMP_TRANSPORTPROFILE_RELOAD_INTERVAL_MS = 60_000;
+
+  public static final ESMPAuditDurability DEFAULT_SMP_AUDIT_DURABILITY = ESMPAuditDurability.ASYNCHRONOUS;
+  public static final int DEFAULT_SMP_AUDIT_QUEUE_SIZE = 10_000;
+  public static final int DEFAULT_SMP_AUDIT_BATCH_SIZE = 500;
+  public static final long DEFAULT_SMP_AUDIT_FLUSH_INTERVAL_MS = 1_000;
+  public static final int DEFAULT_SMP_AUDIT_RETENTION_DAYS = 0;
 
   public static final boolean DEFAULT_SMP_STATUS_ENABLED = true;
   public static final boolean DEFAULT_SMP_STATUS_SHOW_CERTIFICATE_DATES = false;
@@ -163,6 +222,20 @@ public final class SMPServerConfiguration
     return _getConfig ().getAsCharArray (KEY_SMP_KEYSTORE_KEY_PASSWORD);
   }
 
+  /**
+   * @return The name of the security provider to be used for creating the
+   *         XMLDSig signatures of the responses. This allows to plug e.g. a
+   *         native crypto provider. The provider must be installed in
+   *         {@link java.security.Security}. May be <code>null</code> to use the
+   *         default provider. Property <code>smp.signature.provider</code>.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static String getSignatureProviderName ()
+  {
+    return _getConfig ().getAsString (KEY_SMP_SIGNATURE_PROVIDER);
+  }
+
   /**
    * @return The type to the truststore. This is usually JKS. Property
    *         <code>smp.truststore.type</code>.
@@ -283,6 +356,321 @@ public final class SMPServerConfiguration
                                        DEFAULT_SMP_REST_REMOTE_QUERY_API_DISABLED);
   }
 
+  /**
+   * @return The duration for which the resolved SMP host of a participant is
+   *         cached by the remote query API. A duration of 0 disables the cache.
+   *         Defaults to {@link #DEFAULT_SMP_REST_REMOTE_QUERY_API_DNS_CACHE_TTL}.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static Duration getRESTRemoteQueryAPIDNSCacheTTL ()
+  {
+    final long nSeconds = _getConfig ().getAsLong (KEY_SMP_REST_REMOTE_QUERY_API_DNS_CACHE_TTL_SECONDS, -1L);
+    if (nSeconds >= 0)
+      return Duration.ofSeconds (nSeconds);
+    return DEFAULT_SMP_REST_REMOTE_QUERY_API_DNS_CACHE_TTL;
+  }
+
+  /**
+   * @return The maximum number of parallel requests the remote query API
+   *         performs for a single query. Always &gt; 0. Defaults to
+   *         {@link #DEFAULT_SMP_REST_REMOTE_QUERY_API_PARALLEL_MAX}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getRESTRemoteQueryAPIParallelMax ()
+  {
+    return Math.max (1,
+                     _getConfig ().getAsInt (KEY_SMP_REST_REMOTE_QUERY_API_PARALLEL_MAX,
+                                             DEFAULT_SMP_REST_REMOTE_QUERY_API_PARALLEL_MAX));
+  }
+
+  /**
+   * @return The overall time a parallel remote query may take. Requests not
+   *         finished by then are cancelled. Defaults to
+   *         {@link #DEFAULT_SMP_REST_REMOTE_QUERY_API_TIMEOUT}.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static Timeout getRESTRemoteQueryAPITimeout ()
+  {
+    final long ret = _getConfig ().getAsLong (KEY_SMP_REST_REMOTE_QUERY_API_TIMEOUT_MS, -1L);
+    if (ret > 0)
+      return Timeout.ofMilliseconds (ret);
+    return DEFAULT_SMP_REST_REMOTE_QUERY_API_TIMEOUT;
+  }
+
+  /**
+   * @return The maximum number of threads all remote queries share. Always
+   *         &gt; 0. Defaults to
+   *         {@link #DEFAULT_SMP_REST_REMOTE_QUERY_API_THREADS_MAX}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getRESTRemoteQueryAPIThreadsMax ()
+  {
+    return Math.max (1,
+                     _getConfig ().getAsInt (KEY_SMP_REST_REMOTE_QUERY_API_THREADS_MAX,
+                                             DEFAULT_SMP_REST_REMOTE_QUERY_API_THREADS_MAX));
+  }
+
+  /**
+   * @return The maximum number of remote query requests waiting for a free
+   *         thread. Additional requests are rejected. Always &ge; 0. Defaults
+   *         to {@link #DEFAULT_SMP_REST_REMOTE_QUERY_API_QUEUE_SIZE}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getRESTRemoteQueryAPIQueueSize ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsInt (KEY_SMP_REST_REMOTE_QUERY_API_QUEUE_SIZE,
+                                             DEFAULT_SMP_REST_REMOTE_QUERY_API_QUEUE_SIZE));
+  }
+
+  /**
+   * @return <code>true</code> if the responses of the REST API should be
+   *         compressed with gzip or deflate, if the client supports it. By
+   *         default it is enabled.
+   * @since 7.1.4
+   */
+  public static boolean isRESTCompressionEnabled ()
+  {
+    return _getConfig ().getAsBoolean (KEY_SMP_REST_COMPRESSION_ENABLED, DEFAULT_SMP_REST_COMPRESSION_ENABLED);
+  }
+
+  /**
+   * @return The minimum number of bytes a REST API response must have, to be
+   *         compressed. Smaller responses are always sent uncompressed.
+   *         Defaults to {@link #DEFAULT_SMP_REST_COMPRESSION_MIN_SIZE}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getRESTCompressionMinSize ()
+  {
+    return Math.max (0, _getConfig ().getAsInt (KEY_SMP_REST_COMPRESSION_MIN_SIZE, DEFAULT_SMP_REST_COMPRESSION_MIN_SIZE));
+  }
+
+  /**
+   * @return The maximum number of signed service metadata responses that are
+   *         kept in memory, including their compressed versions. A value of 0
+   *         disables the cache. Defaults to
+   *         {@link #DEFAULT_SMP_REST_SIGNED_RESPONSE_CACHE_SIZE}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getRESTSignedResponseCacheSize ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsInt (KEY_SMP_REST_SIGNED_RESPONSE_CACHE_SIZE,
+                                             DEFAULT_SMP_REST_SIGNED_RESPONSE_CACHE_SIZE));
+  }
+
+  /**
+   * @return The maximum number of parsed participant and document type
+   *         identifiers that are kept in memory each. A value of 0 disables
+   *         the cache. Defaults to
+   *         {@link #DEFAULT_SMP_REST_IDENTIFIER_CACHE_SIZE}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getRESTIdentifierCacheSize ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsInt (KEY_SMP_REST_IDENTIFIER_CACHE_SIZE,
+                                             DEFAULT_SMP_REST_IDENTIFIER_CACHE_SIZE));
+  }
+
+  /**
+   * @return The maximum number of business cards that are kept in memory,
+   *         including their XML representation. A value of 0 disables the
+   *         cache. Defaults to {@link #DEFAULT_SMP_REST_BUSINESSCARD_CACHE_SIZE}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getRESTBusinessCardCacheSize ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsInt (KEY_SMP_REST_BUSINESSCARD_CACHE_SIZE,
+                                             DEFAULT_SMP_REST_BUSINESSCARD_CACHE_SIZE));
+  }
+
+  /**
+   * @return The number of milliseconds after which cached business cards are
+   *         read again, to see the changes of other nodes sharing the same
+   *         database without {@link #isClusterEnabled()}. A value of 0 keeps
+   *         them until they are invalidated. Defaults to
+   *         {@link #DEFAULT_SMP_REST_BUSINESSCARD_CACHE_TTL_MS}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static long getRESTBusinessCardCacheTTLMilliseconds ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsLong (KEY_SMP_REST_BUSINESSCARD_CACHE_TTL_MS,
+                                              DEFAULT_SMP_REST_BUSINESSCARD_CACHE_TTL_MS));
+  }
+
+  /**
+   * @return The maximum number of service groups for which the redirects are
+   *         kept in memory, including the service groups without redirects. A
+   *         value of 0 disables the cache. Defaults to
+   *         {@link #DEFAULT_SMP_REST_REDIRECT_CACHE_SIZE}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getRESTRedirectCacheSize ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsInt (KEY_SMP_REST_REDIRECT_CACHE_SIZE, DEFAULT_SMP_REST_REDIRECT_CACHE_SIZE));
+  }
+
+  /**
+   * @return The number of milliseconds after which the cached redirects of a
+   *         service group are read again, to see the changes of other nodes
+   *         sharing the same database without {@link #isClusterEnabled()}. A
+   *         value of 0 keeps them until they are invalidated. Defaults to
+   *         {@link #DEFAULT_SMP_REST_REDIRECT_CACHE_TTL_MS}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static long getRESTRedirectCacheTTLMilliseconds ()
+  {
+    return Math.max (0,
+                     _getConfig ().getAsLong (KEY_SMP_REST_REDIRECT_CACHE_TTL_MS,
+                                              DEFAULT_SMP_REST_REDIRECT_CACHE_TTL_MS));
+  }
+
+  /**
+   * @return <code>true</code> if the business cards should be kept in an
+   *         in-memory search index, so that searching them does not need to
+   *         load all business cards. Disabling it saves the memory of the
+   *         index. By default it is enabled.
+   * @since 7.1.4
+   */
+  public static boolean isBusinessCardSearchIndexEnabled ()
+  {
+    return _getConfig ().getAsBoolean (KEY_SMP_BUSINESSCARD_SEARCHINDEX_ENABLED,
+                                       DEFAULT_SMP_BUSINESSCARD_SEARCHINDEX_ENABLED);
+  }
+
+  /**
+   * @return <code>true</code> if multiple SMP nodes share the same database and
+   *         changes should be propagated between them, so that cached objects
+   *         are invalidated on all nodes. Only supported by the SQL and MongoDB
+   *         backends. Defaults to {@link #DEFAULT_SMP_CLUSTER_ENABLED}.
+   * @since 7.1.4
+   */
+  public static boolean isClusterEnabled ()
+  {
+    return _getConfig ().getAsBoolean (KEY_SMP_CLUSTER_ENABLED, DEFAULT_SMP_CLUSTER_ENABLED);
+  }
+
+  /**
+   * @return The interval in which each node reads the changes of the other
+   *         nodes. This is the maximum time, a cached object may be outdated.
+   *         Defaults to {@link #DEFAULT_SMP_CLUSTER_POLL_INTERVAL_MS}
+   *         milliseconds.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static Duration getClusterPollInterval ()
+  {
+    final long nMillis = _getConfig ().getAsLong (KEY_SMP_CLUSTER_POLL_INTERVAL_MS,
+                                                  DEFAULT_SMP_CLUSTER_POLL_INTERVAL_MS);
+    return Duration.ofMillis (nMillis > 0 ? nMillis : DEFAULT_SMP_CLUSTER_POLL_INTERVAL_MS);
+  }
+
+  /**
+   * @return The duration after which change events are deleted from the
+   *         database. Defaults to
+   *         {@link #DEFAULT_SMP_CLUSTER_EVENT_RETENTION_MINUTES} minutes.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static Duration getClusterEventRetention ()
+  {
+    final long nMinutes = _getConfig ().getAsLong (KEY_SMP_CLUSTER_EVENT_RETENTION_MINUTES,
+                                                   DEFAULT_SMP_CLUSTER_EVENT_RETENTION_MINUTES);
+    return Duration.ofMinutes (nMinutes > 0 ? nMinutes : DEFAULT_SMP_CLUSTER_EVENT_RETENTION_MINUTES);
+  }
+
+  /**
+   * @return The number of milliseconds after which the transport profiles
+   *         kept in memory by the SQL and MongoDB backends are read again from
+   *         the database, to see the changes of other nodes. Values &le; 0
+   *         disable the reload. Defaults to
+   *         {@link #DEFAULT_SMP_TRANSPORTPROFILE_RELOAD_INTERVAL_MS}.
+   * @since 7.1.4
+   */
+  public static long getTransportProfileReloadIntervalMilliseconds ()
+  {
+    return _getConfig ().getAsLong (KEY_SMP_TRANSPORTPROFILE_RELOAD_INTERVAL_MS,
+                                    DEFAULT_SMP_TRANSPORTPROFILE_RELOAD_INTERVAL_MS);
+  }
+
+  /**
+   * @return The durability mode of the audit writer of the SQL and MongoDB
+   *         backends. Defaults to {@link #DEFAULT_SMP_AUDIT_DURABILITY}.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static ESMPAuditDurability getAuditDurability ()
+  {
+    final String sValue = _getConfig ().getAsString (KEY_SMP_AUDIT_DURABILITY);
+    return ESMPAuditDurability.getFromIDOrDefault (sValue, DEFAULT_SMP_AUDIT_DURABILITY);
+  }
+
+  /**
+   * @return The maximum number of audit items that may be queued for writing.
+   *         Defaults to {@link #DEFAULT_SMP_AUDIT_QUEUE_SIZE}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getAuditQueueSize ()
+  {
+    final int ret = _getConfig ().getAsInt (KEY_SMP_AUDIT_QUEUE_SIZE, DEFAULT_SMP_AUDIT_QUEUE_SIZE);
+    return ret > 0 ? ret : DEFAULT_SMP_AUDIT_QUEUE_SIZE;
+  }
+
+  /**
+   * @return The maximum number of audit items that are written at once.
+   *         Defaults to {@link #DEFAULT_SMP_AUDIT_BATCH_SIZE}.
+   * @since 7.1.4
+   */
+  @Nonnegative
+  public static int getAuditBatchSize ()
+  {
+    final int ret = _getConfig ().getAsInt (KEY_SMP_AUDIT_BATCH_SIZE, DEFAULT_SMP_AUDIT_BATCH_SIZE);
+    return ret > 0 ? ret : DEFAULT_SMP_AUDIT_BATCH_SIZE;
+  }
+
+  /**
+   * @return The maximum time a queued audit item waits before it is written.
+   *         Defaults to {@link #DEFAULT_SMP_AUDIT_FLUSH_INTERVAL_MS}
+   *         milliseconds.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static Duration getAuditFlushInterval ()
+  {
+    final long nMillis = _getConfig ().getAsLong (KEY_SMP_AUDIT_FLUSH_INTERVAL_MS, DEFAULT_SMP_AUDIT_FLUSH_INTERVAL_MS);
+    return Duration.ofMillis (nMillis > 0 ? nMillis : DEFAULT_SMP_AUDIT_FLUSH_INTERVAL_MS);
+  }
+
+  /**
+   * @return The duration after which audit items of the SQL and MongoDB
+   *         backends are deleted or <code>null</code> if they should be kept
+   *         forever. By default they are kept forever.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static Duration getAuditRetention ()
+  {
+    final int nDays = _getConfig ().getAsInt (KEY_SMP_AUDIT_RETENTION_DAYS, DEFAULT_SMP_AUDIT_RETENTION_DAYS);
+    return nDays > 0 ? Duration.ofDays (nDays) : null;
+  }
+
   /**
    * @return <code>true</code> if the status servlet at
    *         <code>/smp-status/</code> is enabled, <code>false</code> if it is
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain;
+
+import java.time.LocalDateTime;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.datetime.PDTFactory;
+
+/**
+ * Base interface for objects that keep track of their last modification (service
+ * group and service information). The last modification date time is used to
+ * answer conditional HTTP requests.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public interface ISMPHasLastModification
+{
+  /**
+   * @return The date and time in UTC when the object was last modified, with
+   *         millisecond precision. May be <code>null</code> for objects that
+   *         were stored before the last modification was tracked.
+   */
+  @Nullable
+  LocalDateTime getLastModificationDateTime ();
+
+  /**
+   * @return <code>true</code> if a last modification date time is present,
+   *         <code>false</code> if not.
+   */
+  default boolean hasLastModificationDateTime ()
+  {
+    return getLastModificationDateTime () != null;
+  }
+
+  /**
+   * Get the new last modification date time for an object that is modified
+   * now. The result is always after the previous last modification date time,
+   * so that two modifications within the same millisecond or a clock that goes
+   * backwards cannot result in the same value.
+   *
+   * @param aPreviousDT
+   *        The previous last modification date time. May be <code>null</code>.
+   * @return The current date time in UTC with millisecond precision. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  static LocalDateTime getNextLastModificationDateTime (@Nullable final LocalDateTime aPreviousDT)
+  {
+    final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTimeMillisOnlyUTC ();
+    if (aPreviousDT != null && !aNow.isAfter (aPreviousDT))
+      return aPreviousDT.plusNanos (1_000_000L);
+    return aNow;
+  }
+}
@@ -16,6 +16,7 @@ import javax.annotation.Nullable;
 import com.helger.commons.state.ETriState;
 import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventStore;
 import com.helger.phoss.smp.domain.pmigration.ISMPParticipantMigrationManager;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
@@ -123,4 +124,18 @@ public interface ISMPManagerProvider
   @Nullable
   ISMPBusinessCardManager createBusinessCardMgr (@Nonnull IIdentifierFactory aIdentifierFactory,
                                                  @Nonnull ISMPServiceGroupManager aServiceGroupMgr);
+
+  /**
+   * Create the shared store for the change events between multiple SMP nodes.
+   * This is only called if clustering is enabled in the configuration.
+   *
+   * @return A new cluster event store. May be <code>null</code> if the backend
+   *         cannot be shared between multiple SMP nodes.
+   * @since 7.1.4
+   */
+  @Nullable
+  default ISMPClusterEventStore createClusterEventStore ()
+  {
+    return null;
+  }
 }
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+
+/**
+ * A bounded cache from the raw identifier string (as used in the REST API
+ * paths) to the parsed and validated participant and document type
+ * identifier. Raw strings resulting in the same identifier usually share the
+ * same object, to save memory. This is not guaranteed (e.g. if two threads
+ * parse the same identifier at the same time), so identifiers must still be
+ * compared with <code>equals</code>. Invalid identifiers are not cached.<br>
+ * The cache uses two generations of concurrent maps, so that reading is lock
+ * free. If the current generation is full, it becomes the old generation and
+ * the previous old generation is dropped. Entries of the old generation that
+ * are used again are moved to the current generation. That keeps the
+ * frequently used identifiers in the cache.<br>
+ * The returned identifiers are shared between all callers and requests, and
+ * must therefore never be modified, e.g. by casting them to a mutable
+ * implementation type. Callers that need to modify an identifier must create
+ * a copy first.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPIdentifierCache
+{
+  private static final class Generations <T extends IIdentifier>
+  {
+    private final int m_nMaxSizePerGeneration;
+    private volatile ConcurrentHashMap <String, T> m_aCurrent = new ConcurrentHashMap <> ();
+    private volatile ConcurrentHashMap <String, T> m_aOld = new ConcurrentHashMap <> ();
+
+    Generations (@Nonnegative final int nMaxSize)
+    {
+      m_nMaxSizePerGeneration = Math.max (1, nMaxSize / 2);
+    }
+
+    @Nullable
+    private T _getAndPromote (@Nonnull final String sKey)
+    {
+      T ret = m_aCurrent.get (sKey);
+      if (ret == null)
+      {
+        ret = m_aOld.get (sKey);
+        if (ret != null)
+          _put (sKey, ret);
+      }
+      return ret;
+    }
+
+    private void _put (@Nonnull final String sKey, @Nonnull final T aValue)
+    {
+      if (m_aCurrent.size () >= m_nMaxSizePerGeneration)
+      {
+        synchronized (this)
+        {
+          // Check again inside the lock
+          if (m_aCurrent.size () >= m_nMaxSizePerGeneration)
+          {
+            m_aOld = m_aCurrent;
+            m_aCurrent = new ConcurrentHashMap <> ();
+          }
+        }
+      }
+      m_aCurrent.put (sKey, aValue);
+    }
+
+    @Nullable
+    T get (@Nonnull final String sRawID, @Nonnull final Function <String, T> aParser)
+    {
+      T ret = _getAndPromote (sRawID);
+      if (ret == null)
+      {
+        ret = aParser.apply (sRawID);
+        if (ret != null)
+        {
+          // Different raw strings may result in the same identifier (e.g.
+          // different case or URL encoding) - use the canonical object
+          final String sCanonical = ret.getURIEncoded ();
+          if (!sCanonical.equals (sRawID))
+          {
+            final T aCanonical = _getAndPromote (sCanonical);
+            if (aCanonical != null)
+              ret = aCanonical;
+            else
+              _put (sCanonical, ret);
+          }
+          _put (sRawID, ret);
+        }
+      }
+      return ret;
+    }
+
+    @Nonnegative
+    int size ()
+    {
+      return m_aCurrent.size () + m_aOld.size ();
+    }
+
+    synchronized void clear ()
+    {
+      m_aCurrent = new ConcurrentHashMap <> ();
+      m_aOld = new ConcurrentHashMap <> ();
+    }
+  }
+
+  private final IIdentifierFactory m_aIdentifierFactory;
+  private final int m_nMaxSize;
+  private final Generations <IParticipantIdentifier> m_aParticipantIDs;
+  private final Generations <IDocumentTypeIdentifier> m_aDocTypeIDs;
+
+  /**
+   * Constructor
+   *
+   * @param aIdentifierFactory
+   *        The identifier factory used for parsing. May not be
+   *        <code>null</code>.
+   * @param nMaxSize
+   *        The maximum number of raw identifier strings to cache per
+   *        identifier type. A value of 0 disables the cache.
+   */
+  public SMPIdentifierCache (@Nonnull final IIdentifierFactory aIdentifierFactory, @Nonnegative final int nMaxSize)
+  {
+    ValueEnforcer.notNull (aIdentifierFactory, "IdentifierFactory");
+    ValueEnforcer.isGE0 (nMaxSize, "MaxSize");
+    m_aIdentifierFactory = aIdentifierFactory;
+    m_nMaxSize = nMaxSize;
+    m_aParticipantIDs = new Generations <> (nMaxSize);
+    m_aDocTypeIDs = new Generations <> (nMaxSize);
+  }
+
+  /**
+   * @return The identifier factory used for parsing. Never <code>null</code>.
+   */
+  @Nonnull
+  public IIdentifierFactory getIdentifierFactory ()
+  {
+    return m_aIdentifierFactory;
+  }
+
+  /**
+   * @return <code>true</code> if caching is enabled, <code>false</code> if
+   *         each call is passed directly to the identifier factory.
+   */
+  public boolean isEnabled ()
+  {
+    return m_nMaxSize > 0;
+  }
+
+  /**
+   * Parse the provided participant identifier string in the form
+   * <code>scheme::value</code>.
+   *
+   * @param sRawID
+   *        The string to parse. May be <code>null</code>.
+   * @return <code>null</code> if the string cannot be parsed or is invalid
+   *         according to the identifier factory. The returned object may be
+   *         shared and must not be modified.
+   * @see IIdentifierFactory#parseParticipantIdentifier(String)
+   */
+  @Nullable
+  public IParticipantIdentifier parseParticipantIdentifier (@Nullable final String sRawID)
+  {
+    if (StringHelper.hasNoText (sRawID) || m_nMaxSize == 0)
+      return m_aIdentifierFactory.parseParticipantIdentifier (sRawID);
+    return m_aParticipantIDs.get (sRawID, m_aIdentifierFactory::parseParticipantIdentifier);
+  }
+
+  /**
+   * Parse the provided document type identifier string in the form
+   * <code>scheme::value</code>.
+   *
+   * @param sRawID
+   *        The string to parse. May be <code>null</code>.
+   * @return <code>null</code> if the string cannot be parsed or is invalid
+   *         according to the identifier factory. The returned object may be
+   *         shared and must not be modified.
+   * @see IIdentifierFactory#parseDocumentTypeIdentifier(String)
+   */
+  @Nullable
+  public IDocumentTypeIdentifier parseDocumentTypeIdentifier (@Nullable final String sRawID)
+  {
+    if (StringHelper.hasNoText (sRawID) || m_nMaxSize == 0)
+      return m_aIdentifierFactory.parseDocumentTypeIdentifier (sRawID);
+    return m_aDocTypeIDs.get (sRawID, m_aIdentifierFactory::parseDocumentTypeIdentifier);
+  }
+
+  /**
+   * @return The number of cached participant identifier strings. Always &ge;
+   *         0.
+   */
+  @Nonnegative
+  public int getParticipantIdentifierCount ()
+  {
+    return m_aParticipantIDs.size ();
+  }
+
+  /**
+   * @return The number of cached document type identifier strings. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int getDocumentTypeIdentifierCount ()
+  {
+    return m_aDocTypeIDs.size ();
+  }
+
+  /**
+   * Remove all cached identifiers.
+   */
+  public void clear ()
+  {
+    m_aParticipantIDs.clear ();
+    m_aDocTypeIDs.clear ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("IdentifierFactory", m_aIdentifierFactory)
+                                       .append ("MaxSize", m_nMaxSize)
+                                       .getToString ();
+  }
+}
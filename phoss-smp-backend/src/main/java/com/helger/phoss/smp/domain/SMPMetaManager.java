@@ -29,16 +29,22 @@ import com.helger.phoss.smp.backend.SMPBackendRegistry;
 import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
 import com.helger.phoss.smp.domain.businesscard.LoggingSMPBusinessCardCallback;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardCache;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventCallback;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventStore;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEventBus;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEventPublisher;
 import com.helger.phoss.smp.domain.pmigration.ISMPParticipantMigrationManager;
 import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
 import com.helger.phoss.smp.domain.redirect.LoggingSMPRedirectCallback;
+import com.helger.phoss.smp.domain.redirect.SMPRedirectCache;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.servicegroup.LoggingSMPServiceGroupCallback;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.domain.serviceinfo.LoggingSMPServiceInformationCallback;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointProblemIndex;
 import com.helger.phoss.smp.domain.sml.ISMLInfoManager;
 import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
 import com.helger.phoss.smp.security.SMPKeyManager;
@@ -65,15 +71,20 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
   private static ISMPManagerProvider s_aManagerProvider = null;
 
   private IIdentifierFactory m_aIdentifierFactory;
+  private SMPIdentifierCache m_aIdentifierCache;
   private ISMPURLProvider m_aSMPURLProvider;
   private ISMLInfoManager m_aSMLInfoMgr;
   private ISMPSettingsManager m_aSettingsMgr;
   private ISMPTransportProfileManager m_aTransportProfileMgr;
   private ISMPServiceGroupManager m_aServiceGroupMgr;
   private ISMPRedirectManager m_aRedirectMgr;
+  private SMPRedirectCache m_aRedirectCache;
   private ISMPServiceInformationManager m_aServiceInformationMgr;
   private ISMPBusinessCardManager m_aBusinessCardMgr;
+  private SMPBusinessCardCache m_aBusinessCardCache;
   private ISMPParticipantMigrationManager m_aParticipantMigrationMgr;
+  private SMPClusterEventBus m_aClusterEventBus;
+  private SMPEndpointProblemIndex m_aEndpointProblemIndex;
   private ETriState m_eBackendConnectionState = ETriState.UNDEFINED;
   private Consumer <ETriState> m_aBackendConnectionStateChangeCallback;
 
@@ -127,6 +138,20 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
     m_aRedirectMgr.redirectCallbacks ().add (new LoggingSMPRedirectCallback ());
     m_aServiceInformationMgr.serviceInformationCallbacks ().add (new LoggingSMPServiceInformationCallback ());
 
+    // Remove changed redirects from the cache
+    m_aRedirectCache = new SMPRedirectCache (m_aRedirectMgr,
+                                             SMPServerConfiguration.getRESTRedirectCacheSize (),
+                                             SMPServerConfiguration.getRESTRedirectCacheTTLMilliseconds ());
+    m_aRedirectMgr.redirectCallbacks ().add (m_aRedirectCache);
+    m_aServiceGroupMgr.serviceGroupCallbacks ().add (m_aRedirectCache);
+
+    // Keep the endpoint problems up to date
+    m_aEndpointProblemIndex = new SMPEndpointProblemIndex (m_aIdentifierFactory,
+                                                           m_aServiceGroupMgr,
+                                                           m_aServiceInformationMgr);
+    m_aServiceGroupMgr.serviceGroupCallbacks ().add (m_aEndpointProblemIndex);
+    m_aServiceInformationMgr.serviceInformationCallbacks ().add (m_aEndpointProblemIndex);
+
     if (m_aBusinessCardMgr != null)
     {
       // If service group is deleted, also delete respective business card
@@ -141,9 +166,54 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
 
       // Always log
       m_aBusinessCardMgr.bcCallbacks ().add (new LoggingSMPBusinessCardCallback ());
+
+      // Remove changed business cards from the cache
+      m_aBusinessCardCache = new SMPBusinessCardCache (m_aBusinessCardMgr,
+                                                       SMPServerConfiguration.getRESTBusinessCardCacheSize (),
+                                                       SMPServerConfiguration.getRESTBusinessCardCacheTTLMilliseconds ());
+      m_aBusinessCardMgr.bcCallbacks ().add (m_aBusinessCardCache);
     }
   }
 
+  private void _initClusterEventBus ()
+  {
+    if (!SMPServerConfiguration.isClusterEnabled ())
+      return;
+
+    final ISMPClusterEventStore aStore = s_aManagerProvider.createClusterEventStore ();
+    if (aStore == null)
+    {
+      LOGGER.warn ("Clustering is enabled in the configuration, but the backend does not support it");
+      return;
+    }
+
+    m_aClusterEventBus = new SMPClusterEventBus (aStore,
+                                                 SMPServerConfiguration.getClusterPollInterval (),
+                                                 SMPServerConfiguration.getClusterEventRetention (),
+                                                 SMPClusterEventBus.DEFAULT_OVERLAP);
+
+    // Publish all local changes
+    final SMPClusterEventPublisher aPublisher = new SMPClusterEventPublisher (m_aClusterEventBus);
+    m_aServiceGroupMgr.serviceGroupCallbacks ().add (aPublisher);
+    m_aRedirectMgr.redirectCallbacks ().add (aPublisher);
+    m_aServiceInformationMgr.serviceInformationCallbacks ().add (aPublisher);
+    if (m_aBusinessCardMgr != null)
+      m_aBusinessCardMgr.bcCallbacks ().add (aPublisher);
+
+    // Managers with a cache need to know about the changes of the other nodes
+    for (final Object aMgr : new Object [] { m_aServiceGroupMgr, m_aRedirectMgr, m_aServiceInformationMgr })
+      if (aMgr instanceof ISMPClusterEventCallback)
+        m_aClusterEventBus.clusterEventCallbacks ().add ((ISMPClusterEventCallback) aMgr);
+    m_aClusterEventBus.clusterEventCallbacks ().add (m_aEndpointProblemIndex);
+    m_aClusterEventBus.clusterEventCallbacks ().add (m_aRedirectCache);
+    if (m_aBusinessCardCache != null)
+      m_aClusterEventBus.clusterEventCallbacks ().add (m_aBusinessCardCache);
+    if (m_aBusinessCardMgr != null && m_aBusinessCardMgr.getSearchIndex () != null)
+      m_aClusterEventBus.clusterEventCallbacks ().add (m_aBusinessCardMgr.getSearchIndex ());
+
+    m_aClusterEventBus.start ();
+  }
+
   private void _performMigrations ()
   {
     // Required for SQL version
@@ -152,7 +222,8 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
       // See issue #128
       PhotonBasicManager.getSystemMigrationMgr ().performMigrationIfNecessary ("ensure-transport-profiles-128", () -> {
         LOGGER.info ("Started running migration to ensure all used transport profiles are automatically created");
-        for (final ISMPServiceInformation aSI : m_aServiceInformationMgr.getAllSMPServiceInformation ())
+        // Stream, so that not all service information objects are in memory
+        m_aServiceInformationMgr.forEachSMPServiceInformation (aSI -> {
           for (final ISMPProcess aProc : aSI.getAllProcesses ())
             for (final ISMPEndpoint aEP : aProc.getAllEndpoints ())
             {
@@ -165,6 +236,7 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
                 LOGGER.info ("Created missing transport profile '" + sTransportProfile + "'");
               }
             }
+        });
       });
     }
   }
@@ -182,6 +254,8 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
 
       final ESMPIdentifierType eIdentifierType = SMPServerConfiguration.getIdentifierType ();
       m_aIdentifierFactory = eIdentifierType.getIdentifierFactory ();
+      m_aIdentifierCache = new SMPIdentifierCache (m_aIdentifierFactory,
+                                                   SMPServerConfiguration.getRESTIdentifierCacheSize ());
 
       // Initialize first because the service group manager initializes the
       // RegistrationHookFactory
@@ -247,8 +321,15 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
 
       _initCallbacks ();
 
+      _initClusterEventBus ();
+
       _performMigrations ();
 
+      // After the migrations, because they may modify endpoints
+      m_aEndpointProblemIndex.startIndexAllInBackground ();
+      if (m_aBusinessCardMgr != null && m_aBusinessCardMgr.getSearchIndex () != null)
+        m_aBusinessCardMgr.getSearchIndex ().startIndexAllInBackground ();
+
       // After all
       s_aManagerProvider.afterInitManagers ();
 
@@ -260,6 +341,20 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
     }
   }
 
+  @Override
+  protected void onBeforeDestroy (@Nonnull final IScope aScopeToBeDestroyed)
+  {
+    if (m_aEndpointProblemIndex != null)
+      m_aEndpointProblemIndex.close ();
+    if (m_aBusinessCardMgr != null && m_aBusinessCardMgr.getSearchIndex () != null)
+      m_aBusinessCardMgr.getSearchIndex ().close ();
+    if (m_aClusterEventBus != null)
+    {
+      m_aClusterEventBus.close ();
+      m_aClusterEventBus = null;
+    }
+  }
+
   @Nonnull
   public static SMPMetaManager getInstance ()
   {
@@ -272,6 +367,18 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
     return getInstance ().m_aIdentifierFactory;
   }
 
+  /**
+   * @return The cache for parsed participant and document type identifiers,
+   *         using the {@link #getIdentifierFactory()}. Never
+   *         <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static SMPIdentifierCache getIdentifierCache ()
+  {
+    return getInstance ().m_aIdentifierCache;
+  }
+
   @Nonnull
   public static ISMPURLProvider getSMPURLProvider ()
   {
@@ -314,6 +421,17 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
     return getInstance ().m_aRedirectMgr;
   }
 
+  /**
+   * @return The cache for the redirects per service group, that reads from the
+   *         {@link #getRedirectMgr()}. Never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static SMPRedirectCache getRedirectCache ()
+  {
+    return getInstance ().m_aRedirectCache;
+  }
+
   @Nonnull
   public static ISMPServiceInformationManager getServiceInformationMgr ()
   {
@@ -332,6 +450,41 @@ public final class SMPMetaManager extends AbstractGlobalSingleton
     return getInstance ().m_aBusinessCardMgr;
   }
 
+  /**
+   * @return The cache for business cards and their XML representation, that
+   *         reads from the {@link #getBusinessCardMgr()}. May be
+   *         <code>null</code> if no business card manager is present.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static SMPBusinessCardCache getBusinessCardCache ()
+  {
+    return getInstance ().m_aBusinessCardCache;
+  }
+
+  /**
+   * @return The cluster event bus to register additional callbacks for changes
+   *         of other SMP nodes. May be <code>null</code> if clustering is not
+   *         enabled or not supported by the backend.
+   * @since 7.1.4
+   */
+  @Nullable
+  public static SMPClusterEventBus getClusterEventBus ()
+  {
+    return getInstance ().m_aClusterEventBus;
+  }
+
+  /**
+   * @return The index of all endpoint problems, that is maintained
+   *         automatically. Never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  public static SMPEndpointProblemIndex getEndpointProblemIndex ()
+  {
+    return getInstance ().m_aEndpointProblemIndex;
+  }
+
   /**
    * @return <code>true</code> if an {@link ISMPBusinessCardManager} is present,
    *         <code>false</code> if not.
@@ -11,15 +11,19 @@
 package com.helger.phoss.smp.domain.businesscard;
 
 import java.util.Collection;
+import java.util.Comparator;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
 import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.state.EChange;
 import com.helger.peppolid.IParticipantIdentifier;
@@ -129,9 +133,85 @@ public interface ISMPBusinessCardManager
   @Nullable
   ISMPBusinessCard getSMPBusinessCardOfID (@Nullable IParticipantIdentifier aID);
 
+  /**
+   * Get the business card of the passed ID (= Service group ID) in the latest
+   * version. In contrast to {@link #getSMPBusinessCardOfID(IParticipantIdentifier)}
+   * this never reads from a read replica that may lag behind. This is meant to
+   * be used when the result is kept in memory, e.g. in a cache.
+   *
+   * @param aID
+   *        The ID to use. May be <code>null</code>.
+   * @return The contained business card or <code>null</code> if none is
+   *         assigned.
+   * @since 7.1.4
+   */
+  @Nullable
+  default ISMPBusinessCard getLatestSMPBusinessCardOfID (@Nullable final IParticipantIdentifier aID)
+  {
+    return getSMPBusinessCardOfID (aID);
+  }
+
   /**
    * @return The count of all contained business cards. Always &ge; 0.
    */
   @Nonnegative
   long getSMPBusinessCardCount ();
+
+  /**
+   * @return The in-memory full-text search index over the business cards of
+   *         this manager. It must be registered as business card callback by
+   *         the implementation. May be <code>null</code> if the implementation
+   *         does not support it, or if it was disabled in the configuration.
+   * @since 7.1.4
+   */
+  @Nullable
+  default SMPBusinessCardSearchIndex getSearchIndex ()
+  {
+    return null;
+  }
+
+  /**
+   * Search the business cards by their entity names, country codes,
+   * identifiers and geographical information, and load a single page of the
+   * results. Each word of the query must be the prefix of a word of the
+   * business card. The search is answered from {@link #getSearchIndex()}, so
+   * the effort does not depend on the total number of business cards. Without
+   * a search index, all business cards are loaded and scanned.
+   *
+   * @param sQuery
+   *        The search query. May be <code>null</code> or empty to match all
+   *        business cards.
+   * @param nOffset
+   *        The 0-based index of the first result to return. Must be &ge; 0.
+   * @param nMaxCount
+   *        The maximum number of results to return. Must be &ge; 0.
+   * @return The search result, sorted by the business card ID. Never
+   *         <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  default SMPBusinessCardSearchResult searchSMPBusinessCards (@Nullable final String sQuery,
+                                                              @Nonnegative final int nOffset,
+                                                              @Nonnegative final int nMaxCount)
+  {
+    final SMPBusinessCardSearchIndex aSearchIndex = getSearchIndex ();
+    if (aSearchIndex != null)
+      return aSearchIndex.search (sQuery, nOffset, nMaxCount);
+
+    ValueEnforcer.isGE0 (nOffset, "Offset");
+    ValueEnforcer.isGE0 (nMaxCount, "MaxCount");
+
+    final ICommonsOrderedSet <String> aTerms = SMPBusinessCardSearchIndex.getAllQueryTerms (sQuery);
+    final ICommonsList <ISMPBusinessCard> aMatches = getAllSMPBusinessCards ().getAll (x -> {
+      final ICommonsSet <String> aTokens = SMPBusinessCardSearchIndex.getAllTokens (x);
+      // Each term must be the prefix of a word
+      return !aTerms.containsAny (sTerm -> !aTokens.containsAny (sToken -> sToken.startsWith (sTerm)));
+    });
+    aMatches.sort (Comparator.comparing (ISMPBusinessCard::getID));
+    final int nEnd = (int) Math.min ((long) nOffset + nMaxCount, aMatches.size ());
+    final ICommonsList <ISMPBusinessCard> aPage = new CommonsArrayList <> ();
+    for (int i = nOffset; i < nEnd; ++i)
+      aPage.add (aMatches.get (i));
+    return new SMPBusinessCardSearchResult (aPage, aMatches.size ());
+  }
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppol.businesscard.v3.PD3BusinessCardMarshaller;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventCallback;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+
+/**
+ * A bounded per participant cache of the business cards of an
+ * {@link ISMPBusinessCardManager}, together with their marshalled PD3 XML
+ * representation as served by the REST API. This avoids reading and parsing
+ * the business card from the backend and marshalling it again on every
+ * request.<br>
+ * The cache must be registered as {@link ISMPBusinessCardCallback} at the
+ * manager, so that changed and deleted business cards are removed. Changes on
+ * other nodes are received via {@link ISMPClusterEventCallback}. Business
+ * cards that are loaded while a change happens are not added to the cache, so
+ * that no outdated version remains in it. Missing business cards are loaded
+ * with {@link ISMPBusinessCardManager#getLatestSMPBusinessCardOfID(IParticipantIdentifier)},
+ * so that no outdated version is read from a read replica.<br>
+ * Like {@link com.helger.phoss.smp.domain.SMPIdentifierCache} the cache uses
+ * two generations of concurrent maps, so that reading is lock free. If the
+ * current generation is full, it becomes the old generation and the previous
+ * old generation is dropped. Entries of the old generation that are used again
+ * are moved to the current generation. The lock is only taken if an entry is
+ * added or removed.<br>
+ * If multiple SMP nodes share the same backend without exchanging change
+ * events, the cached business cards are read again after a configurable time
+ * to live, so that the changes of the other nodes become visible.<br>
+ * The returned objects are shared and must not be modified.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPBusinessCardCache implements ISMPBusinessCardCallback, ISMPClusterEventCallback
+{
+  private static final class Entry
+  {
+    private final ISMPBusinessCard m_aBusinessCard;
+    private final long m_nLoadedMillis;
+    // Created lazily - concurrent creation is harmless
+    private volatile byte [] m_aPD3Bytes;
+
+    Entry (@Nonnull final ISMPBusinessCard aBusinessCard, final long nLoadedMillis)
+    {
+      m_aBusinessCard = aBusinessCard;
+      m_nLoadedMillis = nLoadedMillis;
+    }
+
+    @Nullable
+    byte [] getPD3Bytes ()
+    {
+      byte [] ret = m_aPD3Bytes;
+      if (ret == null)
+      {
+        ret = new PD3BusinessCardMarshaller ().getAsBytes (m_aBusinessCard.getAsJAXBObject ());
+        m_aPD3Bytes = ret;
+      }
+      return ret;
+    }
+  }
+
+  private final ISMPBusinessCardManager m_aBusinessCardMgr;
+  private final int m_nMaxSize;
+  private final int m_nMaxSizePerGeneration;
+  private final long m_nTTLMillis;
+  private final LongSupplier m_aClock;
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  // Read without lock, modified only in the write lock
+  private volatile ConcurrentHashMap <String, Entry> m_aCurrent = new ConcurrentHashMap <> ();
+  private volatile ConcurrentHashMap <String, Entry> m_aOld = new ConcurrentHashMap <> ();
+  @GuardedBy ("m_aRWLock")
+  private long m_nInvalidationCount = 0;
+  private final AtomicLong m_aHitCount = new AtomicLong (0);
+  private final AtomicLong m_aMissCount = new AtomicLong (0);
+
+  /**
+   * Constructor
+   *
+   * @param aBusinessCardMgr
+   *        The business card manager to read from. May not be
+   *        <code>null</code>.
+   * @param nMaxSize
+   *        The maximum number of business cards to cache. A value of 0
+   *        disables the cache.
+   * @param nTTLMillis
+   *        The number of milliseconds after which cached business cards are
+   *        read again. A value of 0 keeps them until they are invalidated.
+   */
+  public SMPBusinessCardCache (@Nonnull final ISMPBusinessCardManager aBusinessCardMgr,
+                               @Nonnegative final int nMaxSize,
+                               @Nonnegative final long nTTLMillis)
+  {
+    this (aBusinessCardMgr, nMaxSize, nTTLMillis, System::currentTimeMillis);
+  }
+
+  SMPBusinessCardCache (@Nonnull final ISMPBusinessCardManager aBusinessCardMgr,
+                        @Nonnegative final int nMaxSize,
+                        @Nonnegative final long nTTLMillis,
+                        @Nonnull final LongSupplier aClock)
+  {
+    ValueEnforcer.notNull (aBusinessCardMgr, "BusinessCardMgr");
+    ValueEnforcer.isGE0 (nMaxSize, "MaxSize");
+    ValueEnforcer.isGE0 (nTTLMillis, "TTLMillis");
+    ValueEnforcer.notNull (aClock, "Clock");
+    m_aBusinessCardMgr = aBusinessCardMgr;
+    m_nMaxSize = nMaxSize;
+    m_nMaxSizePerGeneration = Math.max (1, nMaxSize / 2);
+    m_nTTLMillis = nTTLMillis;
+    m_aClock = aClock;
+  }
+
+  /**
+   * @return <code>true</code> if the cache is enabled, <code>false</code> if
+   *         each call is passed directly to the business card manager.
+   */
+  public boolean isEnabled ()
+  {
+    return m_nMaxSize > 0;
+  }
+
+  /**
+   * @return The maximum number of cached business cards. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getMaxSize ()
+  {
+    return m_nMaxSize;
+  }
+
+  /**
+   * @return The number of milliseconds after which cached business cards are
+   *         read again. 0 means they are kept until they are invalidated.
+   */
+  @Nonnegative
+  public long getTTLMillis ()
+  {
+    return m_nTTLMillis;
+  }
+
+  /**
+   * @return The number of cached business cards. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aCurrent.size () + m_aOld.size ();
+  }
+
+  /**
+   * @return The number of lookups that were answered from the cache. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public long getHitCount ()
+  {
+    return m_aHitCount.get ();
+  }
+
+  /**
+   * @return The number of lookups that needed to read from the business card
+   *         manager. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getMissCount ()
+  {
+    return m_aMissCount.get ();
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _put (@Nonnull final String sKey, @Nonnull final Entry aEntry)
+  {
+    if (m_aCurrent.size () >= m_nMaxSizePerGeneration)
+    {
+      m_aOld = m_aCurrent;
+      m_aCurrent = new ConcurrentHashMap <> ();
+    }
+    m_aCurrent.put (sKey, aEntry);
+  }
+
+  private boolean _isValid (@Nullable final Entry aEntry, final long nNow)
+  {
+    return aEntry != null && (m_nTTLMillis == 0 || nNow - aEntry.m_nLoadedMillis < m_nTTLMillis);
+  }
+
+  @Nullable
+  private Entry _getEntry (@Nullable final IParticipantIdentifier aParticipantID)
+  {
+    if (aParticipantID == null)
+      return null;
+
+    if (m_nMaxSize == 0)
+    {
+      // Cache is disabled
+      final ISMPBusinessCard aBusinessCard = m_aBusinessCardMgr.getSMPBusinessCardOfID (aParticipantID);
+      return aBusinessCard == null ? null : new Entry (aBusinessCard, 0);
+    }
+
+    final String sKey = SMPServiceGroup.createSMPServiceGroupID (aParticipantID);
+    final long nNow = m_aClock.getAsLong ();
+    final Entry aCached = m_aCurrent.get (sKey);
+    if (_isValid (aCached, nNow))
+    {
+      m_aHitCount.incrementAndGet ();
+      return aCached;
+    }
+
+    final Entry aOldCached = m_aOld.get (sKey);
+    if (_isValid (aOldCached, nNow))
+    {
+      m_aHitCount.incrementAndGet ();
+      m_aRWLock.writeLocked ( () -> {
+        // Only if it was not removed in the meantime
+        if (m_aOld.remove (sKey, aOldCached))
+          _put (sKey, aOldCached);
+      });
+      return aOldCached;
+    }
+
+    m_aMissCount.incrementAndGet ();
+    final long nInvalidationCount = m_aRWLock.readLockedLong ( () -> m_nInvalidationCount);
+    final ISMPBusinessCard aBusinessCard = m_aBusinessCardMgr.getLatestSMPBusinessCardOfID (aParticipantID);
+    if (aBusinessCard == null)
+    {
+      if (aCached != null || aOldCached != null)
+      {
+        // Expired and deleted on another node
+        m_aRWLock.writeLocked ( () -> {
+          if (m_nInvalidationCount == nInvalidationCount)
+          {
+            m_aCurrent.remove (sKey);
+            m_aOld.remove (sKey);
+          }
+        });
+      }
+      return null;
+    }
+
+    final Entry ret = new Entry (aBusinessCard, nNow);
+    m_aRWLock.writeLocked ( () -> {
+      // Only if nothing changed in the meantime; replaces an expired entry
+      if (m_nInvalidationCount == nInvalidationCount)
+      {
+        m_aOld.remove (sKey);
+        _put (sKey, ret);
+      }
+    });
+    return ret;
+  }
+
+  /**
+   * Get the business card of the passed participant.
+   *
+   * @param aParticipantID
+   *        The participant ID to use. May be <code>null</code>.
+   * @return <code>null</code> if no business card is assigned.
+   * @see ISMPBusinessCardManager#getSMPBusinessCardOfID(IParticipantIdentifier)
+   */
+  @Nullable
+  public ISMPBusinessCard getBusinessCard (@Nullable final IParticipantIdentifier aParticipantID)
+  {
+    final Entry aEntry = _getEntry (aParticipantID);
+    return aEntry == null ? null : aEntry.m_aBusinessCard;
+  }
+
+  /**
+   * Get the business card of the passed participant as PD3 XML.
+   *
+   * @param aParticipantID
+   *        The participant ID to use. May be <code>null</code>.
+   * @return <code>null</code> if no business card is assigned or if it could
+   *         not be marshalled. The returned array must not be modified.
+   */
+  @Nullable
+  public byte [] getBusinessCardPD3Bytes (@Nullable final IParticipantIdentifier aParticipantID)
+  {
+    final Entry aEntry = _getEntry (aParticipantID);
+    return aEntry == null ? null : aEntry.getPD3Bytes ();
+  }
+
+  /**
+   * Remove the business card of the passed service group from the cache.
+   *
+   * @param sServiceGroupID
+   *        The service group ID as created by
+   *        {@link SMPServiceGroup#createSMPServiceGroupID(IParticipantIdentifier)}.
+   *        May not be <code>null</code>.
+   */
+  public void remove (@Nonnull final String sServiceGroupID)
+  {
+    ValueEnforcer.notNull (sServiceGroupID, "ServiceGroupID");
+    if (m_nMaxSize > 0)
+      m_aRWLock.writeLocked ( () -> {
+        m_nInvalidationCount++;
+        m_aCurrent.remove (sServiceGroupID);
+        m_aOld.remove (sServiceGroupID);
+      });
+  }
+
+  /**
+   * Remove all cached business cards.
+   */
+  public void clear ()
+  {
+    if (m_nMaxSize > 0)
+      m_aRWLock.writeLocked ( () -> {
+        m_nInvalidationCount++;
+        m_aCurrent = new ConcurrentHashMap <> ();
+        m_aOld = new ConcurrentHashMap <> ();
+      });
+  }
+
+  public void onSMPBusinessCardCreatedOrUpdated (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    remove (aBusinessCard.getID ());
+  }
+
+  public void onSMPBusinessCardDeleted (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    remove (aBusinessCard.getID ());
+  }
+
+  public void onSMPClusterEvent (@Nonnull final SMPClusterEvent aEvent)
+  {
+    if (aEvent.getObjectType () == ESMPClusterObjectType.BUSINESS_CARD)
+      remove (aEvent.getServiceGroupID ());
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("MaxSize", m_nMaxSize)
+                                       .append ("TTLMillis", m_nTTLMillis)
+                                       .append ("HitCount", m_aHitCount.get ())
+                                       .append ("MissCount", m_aMissCount.get ())
+                                       .getToString ();
+  }
+}
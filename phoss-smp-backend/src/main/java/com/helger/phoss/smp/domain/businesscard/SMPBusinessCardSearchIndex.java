@@ -0,0 +1,514 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsNavigableMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.timing.StopWatch;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventCallback;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.helger.web.scope.mgr.WebScoped;
+
+/**
+ * An in-memory inverted index over the business cards of an
+ * {@link ISMPBusinessCardManager}, supporting full-text and prefix search. The
+ * entity names, country codes, identifier schemes and values, geographical
+ * information and the participant identifier value are split into lower case
+ * words. A query matches a business card if every word of the query is the
+ * prefix of at least one word of the business card.<br>
+ * The index is built once in the background on startup and afterwards
+ * maintained via the business card callbacks, as well as the cluster events of
+ * other SMP nodes. This avoids loading and scanning all business cards for
+ * each search.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPBusinessCardSearchIndex implements ISMPBusinessCardCallback, ISMPClusterEventCallback
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPBusinessCardSearchIndex.class);
+
+  private static final class Entry
+  {
+    private final IParticipantIdentifier m_aParticipantID;
+    private final ICommonsSet <String> m_aTokens;
+
+    Entry (@Nonnull final IParticipantIdentifier aParticipantID, @Nonnull final ICommonsSet <String> aTokens)
+    {
+      m_aParticipantID = aParticipantID;
+      m_aTokens = aTokens;
+    }
+  }
+
+  private final ISMPBusinessCardManager m_aBusinessCardMgr;
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  // Service group ID to indexed business card
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsMap <String, Entry> m_aEntries = new CommonsHashMap <> ();
+  // Word to service group IDs - sorted for prefix search
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsNavigableMap <String, ICommonsSet <String>> m_aPostings = new CommonsTreeMap <> ();
+  // The service group IDs of the business cards that were changed by
+  // callbacks while indexAll is running - null otherwise
+  @GuardedBy ("m_aRWLock")
+  private ICommonsSet <String> m_aChangedIDs;
+  private volatile boolean m_bInitialized = false;
+  private volatile boolean m_bClosed = false;
+
+  /**
+   * Constructor
+   *
+   * @param aBusinessCardMgr
+   *        The business card manager to index. May not be <code>null</code>.
+   */
+  public SMPBusinessCardSearchIndex (@Nonnull final ISMPBusinessCardManager aBusinessCardMgr)
+  {
+    ValueEnforcer.notNull (aBusinessCardMgr, "BusinessCardMgr");
+    m_aBusinessCardMgr = aBusinessCardMgr;
+  }
+
+  private static void _tokenize (@Nullable final String sText, @Nonnull final Consumer <String> aConsumer)
+  {
+    if (sText == null)
+      return;
+
+    final String sLC = sText.toLowerCase (Locale.ROOT);
+    final int nLen = sLC.length ();
+    int nStart = -1;
+    for (int i = 0; i <= nLen; ++i)
+    {
+      final boolean bWordChar = i < nLen && Character.isLetterOrDigit (sLC.charAt (i));
+      if (bWordChar)
+      {
+        if (nStart < 0)
+          nStart = i;
+      }
+      else
+        if (nStart >= 0)
+        {
+          aConsumer.accept (sLC.substring (nStart, i));
+          nStart = -1;
+        }
+    }
+  }
+
+  /**
+   * Get all words of a business card, that are used for searching.
+   *
+   * @param aBusinessCard
+   *        The business card to tokenize. May not be <code>null</code>.
+   * @return A set with all lower case words and never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsSet <String> getAllTokens (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    ValueEnforcer.notNull (aBusinessCard, "BusinessCard");
+
+    final ICommonsSet <String> ret = new CommonsHashSet <> ();
+    _tokenize (aBusinessCard.getParticipantIdentifier ().getValue (), ret::add);
+    for (final SMPBusinessCardEntity aEntity : aBusinessCard.getAllEntities ())
+    {
+      for (final SMPBusinessCardName aName : aEntity.names ())
+        _tokenize (aName.getName (), ret::add);
+      _tokenize (aEntity.getCountryCode (), ret::add);
+      _tokenize (aEntity.getGeographicalInformation (), ret::add);
+      for (final SMPBusinessCardIdentifier aIdentifier : aEntity.identifiers ())
+      {
+        _tokenize (aIdentifier.getScheme (), ret::add);
+        _tokenize (aIdentifier.getValue (), ret::add);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Split a search query into the words that must all match.
+   *
+   * @param sQuery
+   *        The query to split. May be <code>null</code>.
+   * @return The distinct lower case words of the query in their original order.
+   *         Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsOrderedSet <String> getAllQueryTerms (@Nullable final String sQuery)
+  {
+    final ICommonsOrderedSet <String> ret = new CommonsLinkedHashSet <> ();
+    _tokenize (sQuery, ret::add);
+    return ret;
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _removeEntry (@Nonnull final String sServiceGroupID)
+  {
+    final Entry aOld = m_aEntries.remove (sServiceGroupID);
+    if (aOld != null)
+      for (final String sToken : aOld.m_aTokens)
+      {
+        final ICommonsSet <String> aIDs = m_aPostings.get (sToken);
+        if (aIDs != null)
+        {
+          aIDs.remove (sServiceGroupID);
+          if (aIDs.isEmpty ())
+            m_aPostings.remove (sToken);
+        }
+      }
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _onChange (@Nonnull final String sServiceGroupID)
+  {
+    if (m_aChangedIDs != null)
+      m_aChangedIDs.add (sServiceGroupID);
+  }
+
+  private void _setBusinessCard (@Nonnull final ISMPBusinessCard aBusinessCard, final boolean bFromIndexAll)
+  {
+    // Tokenize outside of the lock
+    final String sServiceGroupID = aBusinessCard.getID ();
+    final Entry aEntry = new Entry (aBusinessCard.getParticipantIdentifier (), getAllTokens (aBusinessCard));
+    m_aRWLock.writeLocked ( () -> {
+      if (bFromIndexAll)
+      {
+        // A callback was faster and its state is newer than the snapshot
+        if (m_aChangedIDs.contains (sServiceGroupID))
+          return;
+      }
+      else
+        _onChange (sServiceGroupID);
+
+      _removeEntry (sServiceGroupID);
+      m_aEntries.put (sServiceGroupID, aEntry);
+      for (final String sToken : aEntry.m_aTokens)
+        m_aPostings.computeIfAbsent (sToken, k -> new CommonsHashSet <> ()).add (sServiceGroupID);
+    });
+  }
+
+  private void _removeBusinessCard (@Nonnull final String sServiceGroupID)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      _onChange (sServiceGroupID);
+      _removeEntry (sServiceGroupID);
+    });
+  }
+
+  /**
+   * Re-read the business card of a single service group from the backend and
+   * replace the existing index entry.
+   *
+   * @param sServiceGroupID
+   *        The ID of the service group to re-index. May not be
+   *        <code>null</code>.
+   */
+  public void reindexBusinessCard (@Nonnull final String sServiceGroupID)
+  {
+    ValueEnforcer.notNull (sServiceGroupID, "ServiceGroupID");
+
+    IParticipantIdentifier aParticipantID = getParticipantID (sServiceGroupID);
+    if (aParticipantID == null)
+      aParticipantID = SMPMetaManager.getIdentifierFactory ().parseParticipantIdentifier (sServiceGroupID);
+    // Must not read an outdated version from a read replica
+    final ISMPBusinessCard aBusinessCard = aParticipantID == null ? null
+                                                                  : m_aBusinessCardMgr.getLatestSMPBusinessCardOfID (aParticipantID);
+    if (aBusinessCard == null)
+      _removeBusinessCard (sServiceGroupID);
+    else
+      _setBusinessCard (aBusinessCard, false);
+  }
+
+  /**
+   * Index all existing business cards. This is meant to be called once on
+   * startup, while the callbacks are already active. The business cards read
+   * by this method may be older than the ones provided by concurrent
+   * callbacks. Therefore all business cards changed by callbacks while this
+   * method is running are remembered, and the (potentially outdated) versions
+   * read by this method are not indexed for them.
+   */
+  public void indexAll ()
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+    int nCount = 0;
+    m_aRWLock.writeLocked ( () -> m_aChangedIDs = new CommonsHashSet <> ());
+    try
+    {
+      for (final ISMPBusinessCard aBusinessCard : m_aBusinessCardMgr.getAllSMPBusinessCards ())
+      {
+        if (m_bClosed)
+          break;
+        _setBusinessCard (aBusinessCard, true);
+        nCount++;
+      }
+    }
+    finally
+    {
+      m_aRWLock.writeLocked ( () -> m_aChangedIDs = null);
+    }
+    m_bInitialized = true;
+    LOGGER.info ("Indexed " +
+                 nCount +
+                 " business cards with " +
+                 getTokenCount () +
+                 " distinct words for searching in " +
+                 aSW.stopAndGetMillis () +
+                 " ms");
+  }
+
+  /**
+   * Call {@link #indexAll()} in a separate daemon thread.
+   */
+  public void startIndexAllInBackground ()
+  {
+    final Thread aThread = new Thread ( () -> {
+      // Required for the SQL version
+      try (final WebScoped aWS = new WebScoped ())
+      {
+        indexAll ();
+      }
+      catch (final RuntimeException ex)
+      {
+        if (!m_bClosed)
+          LOGGER.error ("Failed to index the business cards", ex);
+      }
+    }, "smp-business-card-search-index");
+    aThread.setDaemon (true);
+    aThread.start ();
+  }
+
+  /**
+   * Stop a running {@link #indexAll()} as soon as possible. Afterwards the
+   * index may be incomplete.
+   */
+  public void close ()
+  {
+    m_bClosed = true;
+  }
+
+  /**
+   * @return <code>true</code> if all existing business cards were indexed,
+   *         <code>false</code> if the initial indexing is still running and the
+   *         search results may be incomplete.
+   */
+  public boolean isInitialized ()
+  {
+    return m_bInitialized;
+  }
+
+  /**
+   * @return The number of indexed business cards. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getBusinessCardCount ()
+  {
+    return m_aRWLock.readLockedInt (m_aEntries::size);
+  }
+
+  /**
+   * @return The number of distinct indexed words. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getTokenCount ()
+  {
+    return m_aRWLock.readLockedInt (m_aPostings::size);
+  }
+
+  /**
+   * Get the participant identifier of an indexed business card.
+   *
+   * @param sServiceGroupID
+   *        The service group ID to resolve. May be <code>null</code>.
+   * @return <code>null</code> if no such business card is indexed.
+   */
+  @Nullable
+  public IParticipantIdentifier getParticipantID (@Nullable final String sServiceGroupID)
+  {
+    if (sServiceGroupID == null)
+      return null;
+    return m_aRWLock.readLockedGet ( () -> {
+      final Entry aEntry = m_aEntries.get (sServiceGroupID);
+      return aEntry == null ? null : aEntry.m_aParticipantID;
+    });
+  }
+
+  @GuardedBy ("m_aRWLock")
+  @Nonnull
+  private Collection <ICommonsSet <String>> _getPostings (@Nonnull final String sTerm)
+  {
+    // All words starting with the term
+    return m_aPostings.subMap (sTerm, true, sTerm + Character.MAX_VALUE, false).values ();
+  }
+
+  private static long _getPostingSize (@Nonnull final Collection <ICommonsSet <String>> aPostings, final long nMax)
+  {
+    // Stop counting as early as possible
+    long ret = 0;
+    for (final ICommonsSet <String> aIDs : aPostings)
+    {
+      ret += aIDs.size ();
+      if (ret >= nMax)
+        return nMax;
+    }
+    return ret;
+  }
+
+  /**
+   * Get the IDs of all business cards matching the provided query.
+   *
+   * @param sQuery
+   *        The search query. Each word of the query must be the prefix of a
+   *        word of the business card. May be <code>null</code> or empty to
+   *        match all business cards.
+   * @return The matching service group IDs, sorted ascending. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <String> getAllMatchingIDs (@Nullable final String sQuery)
+  {
+    final ICommonsOrderedSet <String> aTerms = getAllQueryTerms (sQuery);
+    final ICommonsList <String> ret = m_aRWLock.readLockedGet ( () -> {
+      if (aTerms.isEmpty ())
+        return new CommonsArrayList <> (m_aEntries.keySet ());
+
+      // Start with the most selective term
+      final ICommonsList <String> aSortedTerms = aTerms.getCopyAsList ();
+      int nBestIndex = 0;
+      long nBestSize = Long.MAX_VALUE;
+      for (int i = 0; i < aSortedTerms.size (); ++i)
+      {
+        final long nSize = _getPostingSize (_getPostings (aSortedTerms.get (i)), nBestSize);
+        if (nSize < nBestSize)
+        {
+          nBestIndex = i;
+          nBestSize = nSize;
+        }
+      }
+      aSortedTerms.add (0, aSortedTerms.remove (nBestIndex));
+
+      ICommonsSet <String> aMatches = null;
+      for (final String sTerm : aSortedTerms)
+      {
+        final Collection <ICommonsSet <String>> aPostings = _getPostings (sTerm);
+        final ICommonsSet <String> aTermMatches = new CommonsHashSet <> ();
+        if (aMatches == null)
+        {
+          for (final ICommonsSet <String> aIDs : aPostings)
+            aTermMatches.addAll (aIDs);
+        }
+        else
+          if (_getPostingSize (aPostings, aMatches.size ()) >= aMatches.size ())
+          {
+            // Check the words of the few remaining candidates
+            for (final String sID : aMatches)
+              if (m_aEntries.get (sID).m_aTokens.containsAny (x -> x.startsWith (sTerm)))
+                aTermMatches.add (sID);
+          }
+          else
+          {
+            // Intersect with the previous terms
+            for (final ICommonsSet <String> aIDs : aPostings)
+              for (final String sID : aIDs)
+                if (aMatches.contains (sID))
+                  aTermMatches.add (sID);
+          }
+        aMatches = aTermMatches;
+        if (aMatches.isEmpty ())
+          break;
+      }
+      return new CommonsArrayList <> (aMatches);
+    });
+    ret.sort (Comparator.naturalOrder ());
+    return ret;
+  }
+
+  /**
+   * Search the business cards and load a single page of the results from the
+   * business card manager.
+   *
+   * @param sQuery
+   *        The search query. May be <code>null</code> or empty to match all
+   *        business cards.
+   * @param nOffset
+   *        The 0-based index of the first result to return. Must be &ge; 0.
+   * @param nMaxCount
+   *        The maximum number of results to return. Must be &ge; 0.
+   * @return The search result and never <code>null</code>.
+   * @see #getAllMatchingIDs(String)
+   */
+  @Nonnull
+  public SMPBusinessCardSearchResult search (@Nullable final String sQuery,
+                                             @Nonnegative final int nOffset,
+                                             @Nonnegative final int nMaxCount)
+  {
+    ValueEnforcer.isGE0 (nOffset, "Offset");
+    ValueEnforcer.isGE0 (nMaxCount, "MaxCount");
+
+    final ICommonsList <String> aIDs = getAllMatchingIDs (sQuery);
+    final ICommonsList <ISMPBusinessCard> aBusinessCards = new CommonsArrayList <> ();
+    final int nEnd = (int) Math.min ((long) nOffset + nMaxCount, aIDs.size ());
+    for (int i = nOffset; i < nEnd; ++i)
+    {
+      final IParticipantIdentifier aParticipantID = getParticipantID (aIDs.get (i));
+      // May have been deleted in the meantime
+      final ISMPBusinessCard aBusinessCard = aParticipantID == null ? null
+                                                                    : m_aBusinessCardMgr.getSMPBusinessCardOfID (aParticipantID);
+      if (aBusinessCard != null)
+        aBusinessCards.add (aBusinessCard);
+    }
+    return new SMPBusinessCardSearchResult (aBusinessCards, aIDs.size ());
+  }
+
+  public void onSMPBusinessCardCreatedOrUpdated (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    _setBusinessCard (aBusinessCard, false);
+  }
+
+  public void onSMPBusinessCardDeleted (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    _removeBusinessCard (aBusinessCard.getID ());
+  }
+
+  public void onSMPClusterEvent (@Nonnull final SMPClusterEvent aEvent)
+  {
+    if (aEvent.getObjectType () == ESMPClusterObjectType.BUSINESS_CARD)
+      reindexBusinessCard (aEvent.getServiceGroupID ());
+  }
+}
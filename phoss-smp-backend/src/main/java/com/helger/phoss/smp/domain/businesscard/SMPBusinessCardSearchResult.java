@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A single page of business cards as the result of
+ * {@link ISMPBusinessCardManager#searchSMPBusinessCards(String, int, int)}.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPBusinessCardSearchResult
+{
+  private final ICommonsList <ISMPBusinessCard> m_aBusinessCards;
+  private final int m_nMatchCount;
+
+  /**
+   * Constructor
+   *
+   * @param aBusinessCards
+   *        The business cards of this page. May not be <code>null</code>.
+   * @param nMatchCount
+   *        The total number of business cards matching the query, ignoring the
+   *        paging. Must be &ge; 0.
+   */
+  public SMPBusinessCardSearchResult (@Nonnull final ICommonsList <ISMPBusinessCard> aBusinessCards,
+                                      @Nonnegative final int nMatchCount)
+  {
+    ValueEnforcer.notNull (aBusinessCards, "BusinessCards");
+    ValueEnforcer.isGE0 (nMatchCount, "MatchCount");
+    m_aBusinessCards = aBusinessCards.getClone ();
+    m_nMatchCount = nMatchCount;
+  }
+
+  /**
+   * @return The business cards of this page, sorted by their ID. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPBusinessCard> getAllBusinessCards ()
+  {
+    return m_aBusinessCards.getClone ();
+  }
+
+  /**
+   * @return The number of business cards on this page. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getBusinessCardCount ()
+  {
+    return m_aBusinessCards.size ();
+  }
+
+  /**
+   * @return The total number of business cards matching the query, ignoring
+   *         the paging. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getMatchCount ()
+  {
+    return m_nMatchCount;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("BusinessCards", m_aBusinessCards)
+                                       .append ("MatchCount", m_nMatchCount)
+                                       .getToString ();
+  }
+}
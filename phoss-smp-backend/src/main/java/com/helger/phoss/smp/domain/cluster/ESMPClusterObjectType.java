@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.cluster;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * Defines the types of objects that are contained in an
+ * {@link SMPClusterEvent}.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public enum ESMPClusterObjectType implements IHasID <String>
+{
+  /** A service group was changed. */
+  SERVICE_GROUP ("sg"),
+  /** A service information was changed. */
+  SERVICE_INFORMATION ("si"),
+  /** A redirect was changed. */
+  REDIRECT ("redirect"),
+  /** A business card was changed. */
+  BUSINESS_CARD ("bc");
+
+  private final String m_sID;
+
+  ESMPClusterObjectType (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static ESMPClusterObjectType getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (ESMPClusterObjectType.class, sID);
+  }
+}
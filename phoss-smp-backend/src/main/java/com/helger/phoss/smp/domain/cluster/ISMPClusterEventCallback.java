@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.cluster;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.callback.ICallback;
+
+/**
+ * Callback interface for objects that need to react on changes performed by
+ * other SMP nodes - usually to drop cached objects.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public interface ISMPClusterEventCallback extends ICallback
+{
+  /**
+   * Invoked for each change event that was created by another SMP node. The
+   * same event may be delivered more than once, so the handling must be
+   * idempotent.
+   *
+   * @param aEvent
+   *        The event that was received. Never <code>null</code>.
+   */
+  void onSMPClusterEvent (@Nonnull SMPClusterEvent aEvent);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.cluster;
+
+import java.time.LocalDateTime;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+
+/**
+ * Persistent store for {@link SMPClusterEvent} objects that is shared by all
+ * SMP nodes. It is implemented by the backends that support being used by
+ * multiple SMP nodes at the same time.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public interface ISMPClusterEventStore
+{
+  /**
+   * Append a new event to the store.
+   *
+   * @param aEvent
+   *        The event to append. May not be <code>null</code>.
+   * @return {@link ESuccess} and never <code>null</code>.
+   */
+  @Nonnull
+  ESuccess appendEvent (@Nonnull SMPClusterEvent aEvent);
+
+  /**
+   * Get all events that were created at or after the provided date and time.
+   *
+   * @param aSince
+   *        The inclusive lower bound. May not be <code>null</code>.
+   * @return All matching events ordered by date and time. May be empty.
+   *         <code>null</code> if reading the events failed.
+   */
+  @Nullable
+  @ReturnsMutableCopy
+  ICommonsList <SMPClusterEvent> getAllEventsSince (@Nonnull LocalDateTime aSince);
+
+  /**
+   * Delete all events that were created before the provided date and time.
+   *
+   * @param aBefore
+   *        The exclusive upper bound. May not be <code>null</code>.
+   * @return The number of deleted events. Always &ge; 0.
+   */
+  @Nonnegative
+  long deleteAllEventsBefore (@Nonnull LocalDateTime aBefore);
+}
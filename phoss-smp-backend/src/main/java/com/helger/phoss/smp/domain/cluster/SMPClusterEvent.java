@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.cluster;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A single change event that is exchanged between all SMP nodes working on the
+ * same database, so that each node can drop cached objects that were modified
+ * by another node.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPClusterEvent implements IHasID <String>
+{
+  private final String m_sID;
+  private final LocalDateTime m_aDateTime;
+  private final String m_sNodeID;
+  private final ESMPClusterObjectType m_eObjectType;
+  private final ESMPClusterChangeType m_eChangeType;
+  private final String m_sServiceGroupID;
+  private final String m_sObjectID;
+
+  /**
+   * Constructor
+   *
+   * @param sID
+   *        The unique event ID. May neither be <code>null</code> nor empty.
+   * @param aDateTime
+   *        The date and time when the event was created. May not be
+   *        <code>null</code>.
+   * @param sNodeID
+   *        The ID of the node that created the event. May neither be
+   *        <code>null</code> nor empty.
+   * @param eObjectType
+   *        The type of the changed object. May not be <code>null</code>.
+   * @param eChangeType
+   *        The kind of change. May not be <code>null</code>.
+   * @param sServiceGroupID
+   *        The ID of the affected service group (the URI encoded participant
+   *        identifier). May neither be <code>null</code> nor empty.
+   * @param sObjectID
+   *        The ID of the changed object within the service group (the URI
+   *        encoded document type identifier). May be <code>null</code> for
+   *        service group events.
+   */
+  public SMPClusterEvent (@Nonnull @Nonempty final String sID,
+                          @Nonnull final LocalDateTime aDateTime,
+                          @Nonnull @Nonempty final String sNodeID,
+                          @Nonnull final ESMPClusterObjectType eObjectType,
+                          @Nonnull final ESMPClusterChangeType eChangeType,
+                          @Nonnull @Nonempty final String sServiceGroupID,
+                          @Nullable final String sObjectID)
+  {
+    ValueEnforcer.notEmpty (sID, "ID");
+    ValueEnforcer.notNull (aDateTime, "DateTime");
+    ValueEnforcer.notEmpty (sNodeID, "NodeID");
+    ValueEnforcer.notNull (eObjectType, "ObjectType");
+    ValueEnforcer.notNull (eChangeType, "ChangeType");
+    ValueEnforcer.notEmpty (sServiceGroupID, "ServiceGroupID");
+    m_sID = sID;
+    m_aDateTime = aDateTime;
+    m_sNodeID = sNodeID;
+    m_eObjectType = eObjectType;
+    m_eChangeType = eChangeType;
+    m_sServiceGroupID = sServiceGroupID;
+    m_sObjectID = sObjectID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nonnull
+  public LocalDateTime getDateTime ()
+  {
+    return m_aDateTime;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getNodeID ()
+  {
+    return m_sNodeID;
+  }
+
+  @Nonnull
+  public ESMPClusterObjectType getObjectType ()
+  {
+    return m_eObjectType;
+  }
+
+  @Nonnull
+  public ESMPClusterChangeType getChangeType ()
+  {
+    return m_eChangeType;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getServiceGroupID ()
+  {
+    return m_sServiceGroupID;
+  }
+
+  @Nullable
+  public String getObjectID ()
+  {
+    return m_sObjectID;
+  }
+
+  public boolean hasObjectID ()
+  {
+    return StringHelper.hasText (m_sObjectID);
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final SMPClusterEvent rhs = (SMPClusterEvent) o;
+    return m_sID.equals (rhs.m_sID);
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_sID).getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ID", m_sID)
+                                       .append ("DateTime", m_aDateTime)
+                                       .append ("NodeID", m_sNodeID)
+                                       .append ("ObjectType", m_eObjectType)
+                                       .append ("ChangeType", m_eChangeType)
+                                       .append ("ServiceGroupID", m_sServiceGroupID)
+                                       .appendIfNotNull ("ObjectID", m_sObjectID)
+                                       .getToString ();
+  }
+
+  /**
+   * Create a new event with a random ID and the current date and time.
+   *
+   * @param sNodeID
+   *        The ID of the node that created the event. May neither be
+   *        <code>null</code> nor empty.
+   * @param eObjectType
+   *        The type of the changed object. May not be <code>null</code>.
+   * @param eChangeType
+   *        The kind of change. May not be <code>null</code>.
+   * @param sServiceGroupID
+   *        The ID of the affected service group. May neither be
+   *        <code>null</code> nor empty.
+   * @param sObjectID
+   *        The ID of the changed object within the service group. May be
+   *        <code>null</code>.
+   * @return The new event and never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPClusterEvent createNew (@Nonnull @Nonempty final String sNodeID,
+                                           @Nonnull final ESMPClusterObjectType eObjectType,
+                                           @Nonnull final ESMPClusterChangeType eChangeType,
+                                           @Nonnull @Nonempty final String sServiceGroupID,
+                                           @Nullable final String sObjectID)
+  {
+    // The ID must be unique across all nodes
+    return new SMPClusterEvent (UUID.randomUUID ().toString (),
+                                PDTFactory.getCurrentLocalDateTime (),
+                                sNodeID,
+                                eObjectType,
+                                eChangeType,
+                                sServiceGroupID,
+                                sObjectID);
+  }
+}
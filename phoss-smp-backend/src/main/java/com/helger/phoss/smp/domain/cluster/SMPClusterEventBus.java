@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.cluster;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Cache invalidation bus between all SMP nodes that share the same database.
+ * Local changes are written as {@link SMPClusterEvent} to the shared
+ * {@link ISMPClusterEventStore} and the store is polled regularly for the
+ * events of the other nodes. Each received event is forwarded to all
+ * registered {@link ISMPClusterEventCallback} objects.<br>
+ * Each poll re-reads a small overlapping time window, so that events that are
+ * committed slightly out of order or with a small clock skew between the nodes
+ * are not lost. Events already delivered are skipped based on their ID. Events
+ * older than the retention period are deleted from the store.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPClusterEventBus implements AutoCloseable
+{
+  public static final Duration DEFAULT_OVERLAP = Duration.ofSeconds (30);
+  private static final Duration CLEANUP_INTERVAL = Duration.ofMinutes (5);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPClusterEventBus.class);
+
+  private final String m_sNodeID = UUID.randomUUID ().toString ();
+  private final ISMPClusterEventStore m_aStore;
+  private final Duration m_aPollInterval;
+  private final Duration m_aRetention;
+  private final Duration m_aOverlap;
+  private final CallbackList <ISMPClusterEventCallback> m_aCBs = new CallbackList <> ();
+  private final AtomicLong m_aReceivedCount = new AtomicLong (0);
+
+  private final SimpleLock m_aPollLock = new SimpleLock ();
+  @GuardedBy ("m_aPollLock")
+  private LocalDateTime m_aLastPollDT;
+  @GuardedBy ("m_aPollLock")
+  private LocalDateTime m_aNextCleanupDT;
+  @GuardedBy ("m_aPollLock")
+  private final ICommonsMap <String, LocalDateTime> m_aDeliveredIDs = new CommonsHashMap <> ();
+  @GuardedBy ("m_aPollLock")
+  private ScheduledExecutorService m_aExecutor;
+
+  /**
+   * Constructor
+   *
+   * @param aStore
+   *        The shared event store to use. May not be <code>null</code>.
+   * @param aPollInterval
+   *        The duration between two polls. Must be positive.
+   * @param aRetention
+   *        The duration after which events are deleted from the store. Must be
+   *        longer than the overlap.
+   * @param aOverlap
+   *        The duration to re-read on each poll. May not be negative.
+   */
+  public SMPClusterEventBus (@Nonnull final ISMPClusterEventStore aStore,
+                             @Nonnull final Duration aPollInterval,
+                             @Nonnull final Duration aRetention,
+                             @Nonnull final Duration aOverlap)
+  {
+    ValueEnforcer.notNull (aStore, "Store");
+    ValueEnforcer.notNull (aPollInterval, "PollInterval");
+    ValueEnforcer.isTrue ( () -> !aPollInterval.isNegative () && !aPollInterval.isZero (),
+                           "PollInterval must be positive");
+    ValueEnforcer.notNull (aRetention, "Retention");
+    ValueEnforcer.notNull (aOverlap, "Overlap");
+    ValueEnforcer.isFalse (aOverlap::isNegative, "Overlap may not be negative");
+    ValueEnforcer.isTrue ( () -> aRetention.compareTo (aOverlap) > 0, "Retention must be longer than the overlap");
+    m_aStore = aStore;
+    m_aPollInterval = aPollInterval;
+    m_aRetention = aRetention;
+    m_aOverlap = aOverlap;
+    final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+    m_aLastPollDT = aNow;
+    m_aNextCleanupDT = aNow;
+  }
+
+  /**
+   * @return The random ID of this node. It is created once per instance.
+   *         Neither <code>null</code> nor empty.
+   */
+  @Nonnull
+  @Nonempty
+  public String getNodeID ()
+  {
+    return m_sNodeID;
+  }
+
+  /**
+   * @return The callbacks to be invoked for events of other nodes. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public CallbackList <ISMPClusterEventCallback> clusterEventCallbacks ()
+  {
+    return m_aCBs;
+  }
+
+  /**
+   * @return The number of events of other nodes that were delivered so far.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public long getReceivedEventCount ()
+  {
+    return m_aReceivedCount.get ();
+  }
+
+  /**
+   * Publish a local change to all other nodes. Errors are only logged, as the
+   * change itself was already performed.
+   *
+   * @param eObjectType
+   *        The type of the changed object. May not be <code>null</code>.
+   * @param eChangeType
+   *        The kind of change. May not be <code>null</code>.
+   * @param sServiceGroupID
+   *        The ID of the affected service group. May neither be
+   *        <code>null</code> nor empty.
+   * @param sObjectID
+   *        The ID of the changed object within the service group. May be
+   *        <code>null</code>.
+   */
+  public void publish (@Nonnull final ESMPClusterObjectType eObjectType,
+                       @Nonnull final ESMPClusterChangeType eChangeType,
+                       @Nonnull @Nonempty final String sServiceGroupID,
+                       @Nullable final String sObjectID)
+  {
+    final SMPClusterEvent aEvent = SMPClusterEvent.createNew (m_sNodeID,
+                                                              eObjectType,
+                                                              eChangeType,
+                                                              sServiceGroupID,
+                                                              sObjectID);
+    try
+    {
+      if (m_aStore.appendEvent (aEvent).isFailure ())
+        LOGGER.warn ("Failed to publish cluster event " + aEvent);
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.warn ("Error publishing cluster event " + aEvent, ex);
+    }
+  }
+
+  @Nonnegative
+  private int _poll ()
+  {
+    final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+    final LocalDateTime aSince = m_aLastPollDT.minus (m_aOverlap);
+    final ICommonsList <SMPClusterEvent> aEvents = m_aStore.getAllEventsSince (aSince);
+    if (aEvents == null)
+    {
+      // Read the same time window again upon the next call
+      LOGGER.warn ("Failed to read the cluster events since " + aSince);
+      return 0;
+    }
+
+    int nDelivered = 0;
+    for (final SMPClusterEvent aEvent : aEvents)
+      if (m_aDeliveredIDs.put (aEvent.getID (), aEvent.getDateTime ()) == null &&
+          !m_sNodeID.equals (aEvent.getNodeID ()))
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Received cluster event " + aEvent);
+        m_aCBs.forEach (x -> x.onSMPClusterEvent (aEvent));
+        nDelivered++;
+      }
+    m_aReceivedCount.addAndGet (nDelivered);
+
+    // Events before the next lower bound will not be read again
+    final LocalDateTime aNextSince = aNow.minus (m_aOverlap);
+    m_aDeliveredIDs.removeIf (x -> x.getValue ().isBefore (aNextSince));
+    m_aLastPollDT = aNow;
+
+    if (!aNow.isBefore (m_aNextCleanupDT))
+    {
+      final long nDeleted = m_aStore.deleteAllEventsBefore (aNow.minus (m_aRetention));
+      if (nDeleted > 0)
+        LOGGER.info ("Deleted " + nDeleted + " outdated cluster event(s)");
+      m_aNextCleanupDT = aNow.plus (CLEANUP_INTERVAL);
+    }
+    return nDelivered;
+  }
+
+  /**
+   * Read all new events from the store and deliver the ones from other nodes
+   * to the registered callbacks. This is called regularly after
+   * {@link #start()} was called. If reading fails, the same time window is
+   * read again upon the next call.
+   *
+   * @return The number of delivered events. Always &ge; 0.
+   */
+  @Nonnegative
+  public int poll ()
+  {
+    return m_aPollLock.lockedInt (this::_poll);
+  }
+
+  /**
+   * Start polling the store in the background. Calling this method more than
+   * once has no effect.
+   */
+  public void start ()
+  {
+    m_aPollLock.locked ( () -> {
+      if (m_aExecutor == null)
+      {
+        final BasicThreadFactory aThreadFactory = new BasicThreadFactory.Builder ().namingPattern ("smp-cluster-event-bus-%d")
+                                                                                   .daemon (true)
+                                                                                   .build ();
+        m_aExecutor = Executors.newSingleThreadScheduledExecutor (aThreadFactory);
+        final long nMillis = m_aPollInterval.toMillis ();
+        m_aExecutor.scheduleWithFixedDelay ( () -> {
+          try
+          {
+            poll ();
+          }
+          catch (final RuntimeException ex)
+          {
+            // Never let an exception stop the polling
+            LOGGER.warn ("Error polling cluster events", ex);
+          }
+        }, nMillis, nMillis, TimeUnit.MILLISECONDS);
+        LOGGER.info ("Started cluster event bus for node '" + m_sNodeID + "' polling every " + nMillis + " ms");
+      }
+    });
+  }
+
+  /**
+   * Stop polling the store. Calling this method more than once has no effect.
+   */
+  public void close ()
+  {
+    final ScheduledExecutorService aExecutor = m_aPollLock.lockedGet ( () -> {
+      final ScheduledExecutorService ret = m_aExecutor;
+      m_aExecutor = null;
+      return ret;
+    });
+    if (aExecutor != null)
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+      LOGGER.info ("Stopped cluster event bus for node '" + m_sNodeID + "'");
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("NodeID", m_sNodeID)
+                                       .append ("Store", m_aStore)
+                                       .append ("PollInterval", m_aPollInterval)
+                                       .append ("Retention", m_aRetention)
+                                       .append ("Overlap", m_aOverlap)
+                                       .getToString ();
+  }
+}
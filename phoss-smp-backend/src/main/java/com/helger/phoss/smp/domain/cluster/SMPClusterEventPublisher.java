@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.cluster;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectCallback;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationCallback;
+
+/**
+ * Special callback that publishes all local service group, service
+ * information, redirect and business card changes via the
+ * {@link SMPClusterEventBus} to the other nodes.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public class SMPClusterEventPublisher implements
+                                      ISMPServiceGroupCallback,
+                                      ISMPServiceInformationCallback,
+                                      ISMPRedirectCallback,
+                                      ISMPBusinessCardCallback
+{
+  private final SMPClusterEventBus m_aBus;
+
+  public SMPClusterEventPublisher (@Nonnull final SMPClusterEventBus aBus)
+  {
+    ValueEnforcer.notNull (aBus, "Bus");
+    m_aBus = aBus;
+  }
+
+  public void onSMPServiceGroupCreated (@Nonnull final ISMPServiceGroup aServiceGroup, final boolean bCreateInSML)
+  {
+    m_aBus.publish (ESMPClusterObjectType.SERVICE_GROUP, ESMPClusterChangeType.CREATED, aServiceGroup.getID (), null);
+  }
+
+  public void onSMPServiceGroupUpdated (@Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    m_aBus.publish (ESMPClusterObjectType.SERVICE_GROUP,
+                    ESMPClusterChangeType.UPDATED,
+                    aParticipantID.getURIEncoded (),
+                    null);
+  }
+
+  public void onSMPServiceGroupDeleted (@Nonnull final IParticipantIdentifier aParticipantID,
+                                        final boolean bDeleteInSML)
+  {
+    m_aBus.publish (ESMPClusterObjectType.SERVICE_GROUP,
+                    ESMPClusterChangeType.DELETED,
+                    aParticipantID.getURIEncoded (),
+                    null);
+  }
+
+  private void _publish (@Nonnull final ISMPServiceInformation aSI, @Nonnull final ESMPClusterChangeType eChangeType)
+  {
+    m_aBus.publish (ESMPClusterObjectType.SERVICE_INFORMATION,
+                    eChangeType,
+                    aSI.getServiceGroupID (),
+                    aSI.getDocumentTypeIdentifier ().getURIEncoded ());
+  }
+
+  @Override
+  public void onSMPServiceInformationCreated (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    _publish (aServiceInformation, ESMPClusterChangeType.CREATED);
+  }
+
+  @Override
+  public void onSMPServiceInformationUpdated (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    _publish (aServiceInformation, ESMPClusterChangeType.UPDATED);
+  }
+
+  @Override
+  public void onSMPServiceInformationDeleted (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    _publish (aServiceInformation, ESMPClusterChangeType.DELETED);
+  }
+
+  private void _publish (@Nonnull final ISMPRedirect aRedirect, @Nonnull final ESMPClusterChangeType eChangeType)
+  {
+    m_aBus.publish (ESMPClusterObjectType.REDIRECT,
+                    eChangeType,
+                    aRedirect.getServiceGroupID (),
+                    aRedirect.getDocumentTypeIdentifier ().getURIEncoded ());
+  }
+
+  @Override
+  public void onSMPRedirectCreated (@Nonnull final ISMPRedirect aRedirect)
+  {
+    _publish (aRedirect, ESMPClusterChangeType.CREATED);
+  }
+
+  @Override
+  public void onSMPRedirectUpdated (@Nonnull final ISMPRedirect aRedirect)
+  {
+    _publish (aRedirect, ESMPClusterChangeType.UPDATED);
+  }
+
+  @Override
+  public void onSMPRedirectDeleted (@Nonnull final ISMPRedirect aRedirect)
+  {
+    _publish (aRedirect, ESMPClusterChangeType.DELETED);
+  }
+
+  public void onSMPBusinessCardCreatedOrUpdated (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    m_aBus.publish (ESMPClusterObjectType.BUSINESS_CARD, ESMPClusterChangeType.UPDATED, aBusinessCard.getID (), null);
+  }
+
+  public void onSMPBusinessCardDeleted (@Nonnull final ISMPBusinessCard aBusinessCard)
+  {
+    m_aBus.publish (ESMPClusterObjectType.BUSINESS_CARD, ESMPClusterChangeType.DELETED, aBusinessCard.getID (), null);
+  }
+}
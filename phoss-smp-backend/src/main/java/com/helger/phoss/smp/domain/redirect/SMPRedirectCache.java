@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.redirect;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventCallback;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+
+/**
+ * A bounded per service group cache of the redirects of an
+ * {@link ISMPRedirectManager}. For each service group all redirects are read
+ * at once, so that the lookup of all document types of that service group is
+ * answered from memory. As most service groups have no redirects at all, the
+ * absence of redirects is cached as well. This avoids a backend query for the
+ * redirect on every service metadata request.<br>
+ * The cache must be registered as {@link ISMPRedirectCallback} at the manager,
+ * so that the service groups of changed redirects are removed. It should also
+ * be registered as {@link ISMPServiceGroupCallback}, because some backends
+ * delete the redirects of a deleted service group without invoking the
+ * redirect callbacks. Changes on other nodes are received via
+ * {@link ISMPClusterEventCallback}. Redirects that are loaded while a change
+ * happens are not added to the cache, so that no outdated version remains in
+ * it.<br>
+ * Like {@link com.helger.phoss.smp.domain.SMPIdentifierCache} the cache uses
+ * two generations of concurrent maps, so that reading is lock free. If the
+ * current generation is full, it becomes the old generation and the previous
+ * old generation is dropped. Entries of the old generation that are used again
+ * are moved to the current generation. The lock is only taken if an entry is
+ * added or removed.<br>
+ * If multiple SMP nodes share the same backend without exchanging change
+ * events, the cached redirects are read again after a configurable time to
+ * live, so that the changes of the other nodes become visible.<br>
+ * The returned objects are shared and must not be modified.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPRedirectCache implements
+                                    ISMPRedirectCallback,
+                                    ISMPServiceGroupCallback,
+                                    ISMPClusterEventCallback
+{
+  private static final class Entry
+  {
+    // URI encoded document type ID to redirect. An empty map means that the
+    // service group has no redirects.
+    private final ICommonsMap <String, ISMPRedirect> m_aRedirects;
+    private final long m_nLoadedMillis;
+
+    Entry (@Nonnull final ICommonsMap <String, ISMPRedirect> aRedirects, final long nLoadedMillis)
+    {
+      m_aRedirects = aRedirects;
+      m_nLoadedMillis = nLoadedMillis;
+    }
+  }
+
+  private final ISMPRedirectManager m_aRedirectMgr;
+  private final int m_nMaxSize;
+  private final int m_nMaxSizePerGeneration;
+  private final long m_nTTLMillis;
+  private final LongSupplier m_aClock;
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  // Service group ID to entry. Read without lock, modified only in the write
+  // lock.
+  private volatile ConcurrentHashMap <String, Entry> m_aCurrent = new ConcurrentHashMap <> ();
+  private volatile ConcurrentHashMap <String, Entry> m_aOld = new ConcurrentHashMap <> ();
+  @GuardedBy ("m_aRWLock")
+  private long m_nInvalidationCount = 0;
+  private final AtomicLong m_aHitCount = new AtomicLong (0);
+  private final AtomicLong m_aMissCount = new AtomicLong (0);
+
+  /**
+   * Constructor
+   *
+   * @param aRedirectMgr
+   *        The redirect manager to read from. May not be <code>null</code>.
+   * @param nMaxSize
+   *        The maximum number of service groups to cache. A value of 0 disables
+   *        the cache.
+   * @param nTTLMillis
+   *        The number of milliseconds after which cached redirects are read
+   *        again. A value of 0 keeps them until they are invalidated.
+   */
+  public SMPRedirectCache (@Nonnull final ISMPRedirectManager aRedirectMgr,
+                           @Nonnegative final int nMaxSize,
+                           @Nonnegative final long nTTLMillis)
+  {
+    this (aRedirectMgr, nMaxSize, nTTLMillis, System::currentTimeMillis);
+  }
+
+  SMPRedirectCache (@Nonnull final ISMPRedirectManager aRedirectMgr,
+                    @Nonnegative final int nMaxSize,
+                    @Nonnegative final long nTTLMillis,
+                    @Nonnull final LongSupplier aClock)
+  {
+    ValueEnforcer.notNull (aRedirectMgr, "RedirectMgr");
+    ValueEnforcer.isGE0 (nMaxSize, "MaxSize");
+    ValueEnforcer.isGE0 (nTTLMillis, "TTLMillis");
+    ValueEnforcer.notNull (aClock, "Clock");
+    m_aRedirectMgr = aRedirectMgr;
+    m_nMaxSize = nMaxSize;
+    m_nMaxSizePerGeneration = Math.max (1, nMaxSize / 2);
+    m_nTTLMillis = nTTLMillis;
+    m_aClock = aClock;
+  }
+
+  /**
+   * @return <code>true</code> if the cache is enabled, <code>false</code> if
+   *         each call is passed directly to the redirect manager.
+   */
+  public boolean isEnabled ()
+  {
+    return m_nMaxSize > 0;
+  }
+
+  /**
+   * @return The maximum number of cached service groups. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getMaxSize ()
+  {
+    return m_nMaxSize;
+  }
+
+  /**
+   * @return The number of milliseconds after which cached redirects are read
+   *         again. 0 means they are kept until they are invalidated.
+   */
+  @Nonnegative
+  public long getTTLMillis ()
+  {
+    return m_nTTLMillis;
+  }
+
+  /**
+   * @return The number of cached service groups, including the ones without
+   *         redirects. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aCurrent.size () + m_aOld.size ();
+  }
+
+  /**
+   * @return The number of lookups that were answered from the cache. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public long getHitCount ()
+  {
+    return m_aHitCount.get ();
+  }
+
+  /**
+   * @return The number of lookups that needed to read from the redirect
+   *         manager. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getMissCount ()
+  {
+    return m_aMissCount.get ();
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _put (@Nonnull final String sKey, @Nonnull final Entry aEntry)
+  {
+    if (m_aCurrent.size () >= m_nMaxSizePerGeneration)
+    {
+      m_aOld = m_aCurrent;
+      m_aCurrent = new ConcurrentHashMap <> ();
+    }
+    m_aCurrent.put (sKey, aEntry);
+  }
+
+  private boolean _isValid (@Nullable final Entry aEntry, final long nNow)
+  {
+    return aEntry != null && (m_nTTLMillis == 0 || nNow - aEntry.m_nLoadedMillis < m_nTTLMillis);
+  }
+
+  @Nonnull
+  private ICommonsMap <String, ISMPRedirect> _getRedirects (@Nonnull final ISMPServiceGroup aServiceGroup)
+  {
+    final String sKey = aServiceGroup.getID ();
+    final long nNow = m_aClock.getAsLong ();
+    final Entry aCached = m_aCurrent.get (sKey);
+    if (_isValid (aCached, nNow))
+    {
+      m_aHitCount.incrementAndGet ();
+      return aCached.m_aRedirects;
+    }
+
+    final Entry aOldCached = m_aOld.get (sKey);
+    if (_isValid (aOldCached, nNow))
+    {
+      m_aHitCount.incrementAndGet ();
+      m_aRWLock.writeLocked ( () -> {
+        // Only if it was not removed in the meantime
+        if (m_aOld.remove (sKey, aOldCached))
+          _put (sKey, aOldCached);
+      });
+      return aOldCached.m_aRedirects;
+    }
+
+    m_aMissCount.incrementAndGet ();
+    final long nInvalidationCount = m_aRWLock.readLockedLong ( () -> m_nInvalidationCount);
+    final ICommonsMap <String, ISMPRedirect> ret = new CommonsHashMap <> ();
+    for (final ISMPRedirect aRedirect : m_aRedirectMgr.getAllSMPRedirectsOfServiceGroup (aServiceGroup))
+      ret.put (aRedirect.getDocumentTypeIdentifier ().getURIEncoded (), aRedirect);
+
+    final Entry aEntry = new Entry (ret, nNow);
+    m_aRWLock.writeLocked ( () -> {
+      // Only if nothing changed in the meantime; replaces an expired entry
+      if (m_nInvalidationCount == nInvalidationCount)
+      {
+        m_aOld.remove (sKey);
+        _put (sKey, aEntry);
+      }
+    });
+    return ret;
+  }
+
+  /**
+   * Find the redirect of the passed service group and document type.
+   *
+   * @param aServiceGroup
+   *        The service group to query. May be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type to query. May be <code>null</code>.
+   * @return <code>null</code> if no such redirect exists.
+   * @see ISMPRedirectManager#getSMPRedirectOfServiceGroupAndDocumentType(ISMPServiceGroup,
+   *      IDocumentTypeIdentifier)
+   */
+  @Nullable
+  public ISMPRedirect getRedirect (@Nullable final ISMPServiceGroup aServiceGroup,
+                                   @Nullable final IDocumentTypeIdentifier aDocTypeID)
+  {
+    if (aServiceGroup == null || aDocTypeID == null)
+      return null;
+
+    if (m_nMaxSize == 0)
+    {
+      // Cache is disabled
+      return m_aRedirectMgr.getSMPRedirectOfServiceGroupAndDocumentType (aServiceGroup, aDocTypeID);
+    }
+
+    final ICommonsMap <String, ISMPRedirect> aRedirects = _getRedirects (aServiceGroup);
+    return aRedirects.isEmpty () ? null : aRedirects.get (aDocTypeID.getURIEncoded ());
+  }
+
+  /**
+   * Remove the redirects of the passed service group from the cache.
+   *
+   * @param sServiceGroupID
+   *        The service group ID. May not be <code>null</code>.
+   */
+  public void remove (@Nonnull final String sServiceGroupID)
+  {
+    ValueEnforcer.notNull (sServiceGroupID, "ServiceGroupID");
+    if (m_nMaxSize > 0)
+      m_aRWLock.writeLocked ( () -> {
+        m_nInvalidationCount++;
+        m_aCurrent.remove (sServiceGroupID);
+        m_aOld.remove (sServiceGroupID);
+      });
+  }
+
+  /**
+   * Remove all cached redirects.
+   */
+  public void clear ()
+  {
+    if (m_nMaxSize > 0)
+      m_aRWLock.writeLocked ( () -> {
+        m_nInvalidationCount++;
+        m_aCurrent = new ConcurrentHashMap <> ();
+        m_aOld = new ConcurrentHashMap <> ();
+      });
+  }
+
+  public void onSMPRedirectCreated (@Nonnull final ISMPRedirect aRedirect)
+  {
+    remove (aRedirect.getServiceGroupID ());
+  }
+
+  public void onSMPRedirectUpdated (@Nonnull final ISMPRedirect aRedirect)
+  {
+    remove (aRedirect.getServiceGroupID ());
+  }
+
+  public void onSMPRedirectDeleted (@Nonnull final ISMPRedirect aRedirect)
+  {
+    remove (aRedirect.getServiceGroupID ());
+  }
+
+  public void onSMPServiceGroupCreated (@Nonnull final ISMPServiceGroup aServiceGroup, final boolean bCreateInSML)
+  {
+    // The redirects are not affected
+  }
+
+  public void onSMPServiceGroupUpdated (@Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    // The redirects are not affected
+  }
+
+  public void onSMPServiceGroupDeleted (@Nonnull final IParticipantIdentifier aParticipantID,
+                                        final boolean bDeleteInSML)
+  {
+    remove (SMPServiceGroup.createSMPServiceGroupID (aParticipantID));
+  }
+
+  public void onSMPClusterEvent (@Nonnull final SMPClusterEvent aEvent)
+  {
+    if (aEvent.getObjectType () == ESMPClusterObjectType.REDIRECT ||
+        aEvent.getObjectType () == ESMPClusterObjectType.SERVICE_GROUP)
+      remove (aEvent.getServiceGroupID ());
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("MaxSize", m_nMaxSize)
+                                       .append ("TTLMillis", m_nTTLMillis)
+                                       .append ("HitCount", m_aHitCount.get ())
+                                       .append ("MissCount", m_aMissCount.get ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.servicegroup;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * The columns by which a page of service groups can be sorted.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ * @see SMPServiceGroupPageRequest
+ */
+public enum ESMPServiceGroupSortColumn implements IHasID <String>
+{
+  /** Sort by participant identifier */
+  PARTICIPANT_ID ("participant"),
+  /**
+   * Sort by owner ID first and by participant identifier second
+   */
+  OWNER_ID ("owner");
+
+  public static final ESMPServiceGroupSortColumn DEFAULT = PARTICIPANT_ID;
+
+  private final String m_sID;
+
+  ESMPServiceGroupSortColumn (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static ESMPServiceGroupSortColumn getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (ESMPServiceGroupSortColumn.class, sID);
+  }
+}
@@ -18,6 +18,7 @@ import com.helger.commons.annotation.MustImplementEqualsAndHashcode;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.id.IHasID;
 import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
 import com.helger.phoss.smp.domain.extension.ISMPHasExtension;
 
 /**
@@ -26,7 +27,7 @@ import com.helger.phoss.smp.domain.extension.ISMPHasExtension;
  * @author Philip Helger
  */
 @MustImplementEqualsAndHashcode
-public interface ISMPServiceGroup extends IHasID <String>, ISMPHasExtension
+public interface ISMPServiceGroup extends IHasID <String>, ISMPHasExtension, ISMPHasLastModification
 {
   /**
    * @return the URI encoded participant identifier is the ID.
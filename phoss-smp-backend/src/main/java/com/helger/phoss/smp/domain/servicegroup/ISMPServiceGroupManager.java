@@ -173,6 +173,19 @@ public interface ISMPServiceGroupManager extends ISMPServiceGroupProvider
   @ReturnsMutableCopy
   ICommonsSet <String> getAllSMPServiceGroupIDs ();
 
+  /**
+   * Get a single page of service groups, sorted and filtered as requested.
+   * The implementations do the paging natively, so that the effort does not
+   * depend on the total number of service groups.
+   *
+   * @param aRequest
+   *        The page request. May not be <code>null</code>.
+   * @return The page and never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  SMPServiceGroupPage getSMPServiceGroupPage (@Nonnull SMPServiceGroupPageRequest aRequest);
+
   /**
    * Get all service groups that belong to the passed owner ID.
    *
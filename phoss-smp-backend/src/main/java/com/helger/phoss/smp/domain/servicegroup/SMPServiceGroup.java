@@ -10,12 +10,15 @@
  */
 package com.helger.phoss.smp.domain.servicegroup;
 
+import java.time.LocalDateTime;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.equals.EqualsHelper;
 import com.helger.commons.hashcode.HashCodeGenerator;
 import com.helger.commons.state.EChange;
 import com.helger.commons.string.ToStringGenerator;
@@ -25,6 +28,7 @@ import com.helger.peppolid.bdxr.smp1.participant.BDXR1ParticipantIdentifier;
 import com.helger.peppolid.bdxr.smp2.participant.BDXR2ParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.extension.AbstractSMPHasExtension;
 
@@ -40,6 +44,7 @@ public class SMPServiceGroup extends AbstractSMPHasExtension implements ISMPServ
 
   private final String m_sID;
   private String m_sOwnerID;
+  private LocalDateTime m_aLastModificationDT;
 
   // Status member
   private final IParticipantIdentifier m_aParticipantIdentifier;
@@ -83,6 +88,7 @@ public class SMPServiceGroup extends AbstractSMPHasExtension implements ISMPServ
     getExtensions ().setExtensionAsString (sExtension);
     // Make a copy to avoid unwanted changes
     m_aParticipantIdentifier = _createUnifiedParticipantIdentifier (aParticipantIdentifier);
+    m_aLastModificationDT = ISMPHasLastModification.getNextLastModificationDateTime (null);
   }
 
   @Nonnull
@@ -115,6 +121,40 @@ public class SMPServiceGroup extends AbstractSMPHasExtension implements ISMPServ
     return m_aParticipantIdentifier;
   }
 
+  @Nullable
+  public LocalDateTime getLastModificationDateTime ()
+  {
+    return m_aLastModificationDT;
+  }
+
+  /**
+   * Set the last modification date time of this service group. This is
+   * usually only called by the service group managers.
+   *
+   * @param aLastModificationDT
+   *        The last modification date time in UTC. May be <code>null</code>.
+   * @return {@link EChange}
+   * @since 7.1.4
+   */
+  @Nonnull
+  public final EChange setLastModificationDateTime (@Nullable final LocalDateTime aLastModificationDT)
+  {
+    if (EqualsHelper.equals (aLastModificationDT, m_aLastModificationDT))
+      return EChange.UNCHANGED;
+    m_aLastModificationDT = aLastModificationDT;
+    return EChange.CHANGED;
+  }
+
+  /**
+   * Mark this service group as modified now.
+   *
+   * @since 7.1.4
+   */
+  public final void updateLastModificationDateTime ()
+  {
+    m_aLastModificationDT = ISMPHasLastModification.getNextLastModificationDateTime (m_aLastModificationDT);
+  }
+
   @Nonnull
   public com.helger.xsds.peppol.smp1.ServiceGroupType getAsJAXBObjectPeppol ()
   {
@@ -186,6 +226,7 @@ public class SMPServiceGroup extends AbstractSMPHasExtension implements ISMPServ
                             .append ("ID", m_sID)
                             .append ("OwnerID", m_sOwnerID)
                             .append ("ParticipantIdentifier", m_aParticipantIdentifier)
+                            .append ("LastModificationDT", m_aLastModificationDT)
                             .getToString ();
   }
 }
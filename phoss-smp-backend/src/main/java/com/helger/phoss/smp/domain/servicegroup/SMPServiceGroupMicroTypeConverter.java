@@ -10,6 +10,7 @@
  */
 package com.helger.phoss.smp.domain.servicegroup;
 
+import java.time.LocalDateTime;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -34,6 +35,7 @@ import com.helger.xml.microdom.util.MicroHelper;
 public final class SMPServiceGroupMicroTypeConverter implements IMicroTypeConverter <SMPServiceGroup>
 {
   private static final String ATTR_OWNER_ID = "ownerid";
+  private static final String ATTR_LAST_MOD_DT = "lastmoddt";
   private static final String ELEMENT_PARTICIPANT_ID = "participant";
   private static final String ELEMENT_EXTENSION = "extension";
 
@@ -44,6 +46,8 @@ public final class SMPServiceGroupMicroTypeConverter implements IMicroTypeConver
   {
     final IMicroElement aElement = new MicroElement (sNamespaceURI, sTagName);
     aElement.setAttribute (ATTR_OWNER_ID, aValue.getOwnerID ());
+    if (aValue.hasLastModificationDateTime ())
+      aElement.setAttributeWithConversion (ATTR_LAST_MOD_DT, aValue.getLastModificationDateTime ());
     aElement.appendChild (MicroTypeConverter.convertToMicroElement (aValue.getParticipantIdentifier (),
                                                                     sNamespaceURI,
                                                                     ELEMENT_PARTICIPANT_ID));
@@ -71,7 +75,10 @@ public final class SMPServiceGroupMicroTypeConverter implements IMicroTypeConver
     final String sExtension = MicroHelper.getChildTextContentTrimmed (aElement, ELEMENT_EXTENSION);
 
     // Use the new ID in case the ID was changed!
-    return new SMPServiceGroup (aOwner.getID (), aParticipantIdentifier, sExtension);
+    final SMPServiceGroup ret = new SMPServiceGroup (aOwner.getID (), aParticipantIdentifier, sExtension);
+    // May be null for objects stored by older versions
+    ret.setLastModificationDateTime (aElement.getAttributeValueWithConversion (ATTR_LAST_MOD_DT, LocalDateTime.class));
+    return ret;
   }
 
   @Nonnull
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.servicegroup;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppolid.IParticipantIdentifier;
+
+/**
+ * A single page of service groups as the result of
+ * {@link ISMPServiceGroupManager#getSMPServiceGroupPage(SMPServiceGroupPageRequest)}.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPServiceGroupPage
+{
+  private final ICommonsList <ISMPServiceGroup> m_aServiceGroups;
+  private final long m_nFilteredCount;
+
+  /**
+   * Constructor
+   *
+   * @param aServiceGroups
+   *        The service groups of this page. May not be <code>null</code>.
+   * @param nFilteredCount
+   *        The total number of service groups matching the filter, ignoring
+   *        the paging. Must be &ge; 0.
+   */
+  public SMPServiceGroupPage (@Nonnull final ICommonsList <ISMPServiceGroup> aServiceGroups,
+                              @Nonnegative final long nFilteredCount)
+  {
+    ValueEnforcer.notNull (aServiceGroups, "ServiceGroups");
+    ValueEnforcer.isGE0 (nFilteredCount, "FilteredCount");
+    m_aServiceGroups = aServiceGroups.getClone ();
+    m_nFilteredCount = nFilteredCount;
+  }
+
+  /**
+   * @return The service groups of this page in the requested order. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceGroup> getAllServiceGroups ()
+  {
+    return m_aServiceGroups.getClone ();
+  }
+
+  /**
+   * @return The number of service groups on this page. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getServiceGroupCount ()
+  {
+    return m_aServiceGroups.size ();
+  }
+
+  /**
+   * @return The total number of service groups matching the filter, ignoring
+   *         the paging. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getFilteredCount ()
+  {
+    return m_nFilteredCount;
+  }
+
+  /**
+   * @return The participant identifier of the last service group of this
+   *         page, to be used for keyset based paging of the next page. May be
+   *         <code>null</code> if this page is empty.
+   */
+  @Nullable
+  public IParticipantIdentifier getLastParticipantID ()
+  {
+    final ISMPServiceGroup aLast = m_aServiceGroups.getLastOrNull ();
+    return aLast == null ? null : aLast.getParticipantIdentifier ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ServiceGroups", m_aServiceGroups)
+                                       .append ("FilteredCount", m_nFilteredCount)
+                                       .getToString ();
+  }
+
+  /**
+   * Create a page from an in-memory collection of service groups. This is
+   * meant for backends that keep all service groups in memory anyway.
+   *
+   * @param aAllServiceGroups
+   *        All service groups to choose from. May not be <code>null</code>.
+   * @param aRequest
+   *        The page request. May not be <code>null</code>.
+   * @return The page and never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPServiceGroupPage createInMemory (@Nonnull final Iterable <? extends ISMPServiceGroup> aAllServiceGroups,
+                                                    @Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    ValueEnforcer.notNull (aAllServiceGroups, "AllServiceGroups");
+    ValueEnforcer.notNull (aRequest, "Request");
+
+    final ICommonsList <ISMPServiceGroup> aMatching = new CommonsArrayList <> ();
+    for (final ISMPServiceGroup aSG : aAllServiceGroups)
+      if (aRequest.matchesFilter (aSG))
+        aMatching.add (aSG);
+    final long nFilteredCount = aMatching.size ();
+    aMatching.sort (aRequest.getComparator ());
+
+    int nStart = aRequest.getOffset ();
+    final IParticipantIdentifier aAfterPI = aRequest.getAfterParticipantID ();
+    if (aAfterPI != null)
+    {
+      // Skip everything up to and including the "after" ID
+      final String sAfterID = SMPServiceGroup.createSMPServiceGroupID (aAfterPI);
+      while (nStart < aMatching.size ())
+      {
+        final int nCmp = aMatching.get (nStart).getID ().compareTo (sAfterID);
+        if (aRequest.isAscending () ? nCmp > 0 : nCmp < 0)
+          break;
+        nStart++;
+      }
+    }
+
+    final int nEnd = (int) Math.min ((long) nStart + aRequest.getMaxCount (), aMatching.size ());
+    final ICommonsList <ISMPServiceGroup> aPage = nStart >= nEnd ? new CommonsArrayList <> ()
+                                                                 : new CommonsArrayList <> (aMatching.subList (nStart,
+                                                                                                               nEnd));
+    return new SMPServiceGroupPage (aPage, nFilteredCount);
+  }
+}
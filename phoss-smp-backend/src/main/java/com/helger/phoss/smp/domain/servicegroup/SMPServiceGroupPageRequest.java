@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.servicegroup;
+
+import java.util.Comparator;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppolid.CIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+
+/**
+ * The parameters to retrieve a single page of service groups. Either offset
+ * based paging or keyset based paging (starting after a certain participant
+ * identifier) can be used. Keyset based paging is only supported when sorting
+ * by participant identifier.<br>
+ * The filter is a prefix of the participant identifier value (e.g.
+ * <code>9915:</code>). If it contains the scheme separator <code>::</code>
+ * the part before it must match the participant identifier scheme exactly and
+ * the part after it is used as the value prefix.<br>
+ * The exact order of participant identifiers may differ between the backends,
+ * but it is stable for a backend.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPServiceGroupPageRequest
+{
+  private final int m_nOffset;
+  private final int m_nMaxCount;
+  private final ESMPServiceGroupSortColumn m_eSortColumn;
+  private final boolean m_bAscending;
+  private final String m_sFilterScheme;
+  private final String m_sFilterValuePrefix;
+  private final IParticipantIdentifier m_aAfterParticipantID;
+
+  /**
+   * Constructor
+   *
+   * @param nOffset
+   *        The number of matching service groups to skip. Must be &ge; 0. Must
+   *        be 0 if an "after participant ID" is provided.
+   * @param nMaxCount
+   *        The maximum number of service groups to return. Must be &gt; 0.
+   * @param eSortColumn
+   *        The column to sort by. May not be <code>null</code>.
+   * @param bAscending
+   *        <code>true</code> to sort ascending, <code>false</code> to sort
+   *        descending.
+   * @param sFilter
+   *        The optional participant identifier prefix filter. May be
+   *        <code>null</code>.
+   * @param aAfterParticipantID
+   *        The participant identifier of the last service group of the
+   *        previous page for keyset based paging. May be <code>null</code>.
+   *        Only supported if sorted by participant identifier.
+   */
+  public SMPServiceGroupPageRequest (@Nonnegative final int nOffset,
+                                     @Nonnegative final int nMaxCount,
+                                     @Nonnull final ESMPServiceGroupSortColumn eSortColumn,
+                                     final boolean bAscending,
+                                     @Nullable final String sFilter,
+                                     @Nullable final IParticipantIdentifier aAfterParticipantID)
+  {
+    ValueEnforcer.isGE0 (nOffset, "Offset");
+    ValueEnforcer.isGT0 (nMaxCount, "MaxCount");
+    ValueEnforcer.notNull (eSortColumn, "SortColumn");
+    if (aAfterParticipantID != null)
+    {
+      ValueEnforcer.isTrue (eSortColumn == ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                            "Keyset paging is only supported when sorting by participant ID");
+      ValueEnforcer.isTrue (nOffset == 0, "Offset and keyset paging cannot be combined");
+    }
+    m_nOffset = nOffset;
+    m_nMaxCount = nMaxCount;
+    m_eSortColumn = eSortColumn;
+    m_bAscending = bAscending;
+
+    final String sRealFilter = StringHelper.trim (sFilter);
+    if (StringHelper.hasNoText (sRealFilter))
+    {
+      m_sFilterScheme = null;
+      m_sFilterValuePrefix = null;
+    }
+    else
+    {
+      final int nIndex = sRealFilter.indexOf (CIdentifier.URL_SCHEME_VALUE_SEPARATOR);
+      if (nIndex >= 0)
+      {
+        m_sFilterScheme = sRealFilter.substring (0, nIndex);
+        final String sValuePrefix = sRealFilter.substring (nIndex + CIdentifier.URL_SCHEME_VALUE_SEPARATOR.length ());
+        m_sFilterValuePrefix = StringHelper.hasText (sValuePrefix) ? sValuePrefix : null;
+      }
+      else
+      {
+        m_sFilterScheme = null;
+        m_sFilterValuePrefix = sRealFilter;
+      }
+    }
+    m_aAfterParticipantID = aAfterParticipantID;
+  }
+
+  /**
+   * @return The number of matching service groups to skip. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getOffset ()
+  {
+    return m_nOffset;
+  }
+
+  /**
+   * @return The maximum number of service groups to return. Always &gt; 0.
+   */
+  @Nonnegative
+  public int getMaxCount ()
+  {
+    return m_nMaxCount;
+  }
+
+  @Nonnull
+  public ESMPServiceGroupSortColumn getSortColumn ()
+  {
+    return m_eSortColumn;
+  }
+
+  public boolean isAscending ()
+  {
+    return m_bAscending;
+  }
+
+  /**
+   * @return <code>true</code> if a scheme or a value prefix filter is
+   *         present.
+   */
+  public boolean hasFilter ()
+  {
+    return m_sFilterScheme != null || m_sFilterValuePrefix != null;
+  }
+
+  /**
+   * @return The participant identifier scheme that must match exactly. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public String getFilterScheme ()
+  {
+    return m_sFilterScheme;
+  }
+
+  /**
+   * @return The prefix the participant identifier value must start with. May
+   *         be <code>null</code>.
+   */
+  @Nullable
+  public String getFilterValuePrefix ()
+  {
+    return m_sFilterValuePrefix;
+  }
+
+  /**
+   * @return The participant identifier after which the page starts for keyset
+   *         based paging. May be <code>null</code>.
+   */
+  @Nullable
+  public IParticipantIdentifier getAfterParticipantID ()
+  {
+    return m_aAfterParticipantID;
+  }
+
+  /**
+   * Check if the passed service group matches the filter of this request. The
+   * keyset is not considered.
+   *
+   * @param aServiceGroup
+   *        The service group to check. May not be <code>null</code>.
+   * @return <code>true</code> if it matches, <code>false</code> if not.
+   */
+  public boolean matchesFilter (@Nonnull final ISMPServiceGroup aServiceGroup)
+  {
+    final IParticipantIdentifier aPI = aServiceGroup.getParticipantIdentifier ();
+    if (m_sFilterScheme != null && !m_sFilterScheme.equals (aPI.getScheme ()))
+      return false;
+    if (m_sFilterValuePrefix != null && !StringHelper.startsWith (aPI.getValue (), m_sFilterValuePrefix))
+      return false;
+    return true;
+  }
+
+  /**
+   * @return The comparator for in-memory sorting of service groups according
+   *         to the sort column and direction of this request. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Comparator <ISMPServiceGroup> getComparator ()
+  {
+    Comparator <ISMPServiceGroup> ret = Comparator.comparing (ISMPServiceGroup::getID);
+    if (m_eSortColumn == ESMPServiceGroupSortColumn.OWNER_ID)
+      ret = Comparator.comparing (ISMPServiceGroup::getOwnerID).thenComparing (ret);
+    return m_bAscending ? ret : ret.reversed ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Offset", m_nOffset)
+                                       .append ("MaxCount", m_nMaxCount)
+                                       .append ("SortColumn", m_eSortColumn)
+                                       .append ("Ascending", m_bAscending)
+                                       .appendIfNotNull ("FilterScheme", m_sFilterScheme)
+                                       .appendIfNotNull ("FilterValuePrefix", m_sFilterValuePrefix)
+                                       .appendIfNotNull ("AfterParticipantID", m_aAfterParticipantID)
+                                       .getToString ();
+  }
+}
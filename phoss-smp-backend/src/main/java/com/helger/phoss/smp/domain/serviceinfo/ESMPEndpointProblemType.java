@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * The different kind of endpoint problems contained in the
+ * {@link SMPEndpointProblemIndex}.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public enum ESMPEndpointProblemType implements IHasID <String>
+{
+  /** The endpoint uses a transport profile that is not predefined */
+  NON_STANDARD_TRANSPORT_PROFILE ("non-standard-transport-profile", false),
+  /** The service activation date time of the endpoint */
+  ENDPOINT_ACTIVATION ("endpoint-activation", true),
+  /** The service expiration date time of the endpoint */
+  ENDPOINT_EXPIRATION ("endpoint-expiration", true),
+  /** The endpoint certificate cannot be parsed */
+  CERTIFICATE_INVALID ("certificate-invalid", false),
+  /** The "not before" date time of the endpoint certificate */
+  CERTIFICATE_NOT_BEFORE ("certificate-not-before", true),
+  /** The "not after" date time of the endpoint certificate */
+  CERTIFICATE_NOT_AFTER ("certificate-not-after", true);
+
+  private final String m_sID;
+  private final boolean m_bDated;
+
+  ESMPEndpointProblemType (@Nonnull @Nonempty final String sID, final boolean bDated)
+  {
+    m_sID = sID;
+    m_bDated = bDated;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return <code>true</code> if problems of this type always have a date
+   *         time and are therefore only a problem in a certain time range,
+   *         <code>false</code> if they are always a problem.
+   */
+  public boolean isDated ()
+  {
+    return m_bDated;
+  }
+
+  @Nullable
+  public static ESMPEndpointProblemType getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (ESMPEndpointProblemType.class, sID);
+  }
+}
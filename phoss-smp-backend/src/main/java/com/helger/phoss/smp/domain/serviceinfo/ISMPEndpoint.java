@@ -10,6 +10,7 @@
  */
 package com.helger.phoss.smp.domain.serviceinfo;
 
+import java.security.cert.X509Certificate;
 import java.time.LocalDate;
 
 import javax.annotation.Nonnull;
@@ -159,6 +160,19 @@ public interface ISMPEndpoint extends ISMPHasExtension
     return StringHelper.hasText (getCertificate ());
   }
 
+  /**
+   * @return The parsed certificate or <code>null</code> if no certificate is
+   *         present or if it cannot be parsed. Each distinct certificate is
+   *         only parsed once.
+   * @see #getCertificate()
+   * @since 7.1.4
+   */
+  @Nullable
+  default X509Certificate getCertificateX509 ()
+  {
+    return SMPCertificateCache.getX509Certificate (getCertificate ());
+  }
+
   /**
    * @return A human readable description of the service
    */
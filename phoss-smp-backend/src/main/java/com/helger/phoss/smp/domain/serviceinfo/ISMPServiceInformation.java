@@ -22,6 +22,7 @@ import com.helger.commons.id.IHasID;
 import com.helger.commons.state.EChange;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
 import com.helger.phoss.smp.domain.extension.ISMPHasExtension;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 
@@ -33,7 +34,7 @@ import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
  *
  * @author Philip Helger
  */
-public interface ISMPServiceInformation extends ISMPHasExtension, IHasID <String>
+public interface ISMPServiceInformation extends ISMPHasExtension, ISMPHasLastModification, IHasID <String>
 {
   /**
    * @return The service group to which this service information belongs. Never
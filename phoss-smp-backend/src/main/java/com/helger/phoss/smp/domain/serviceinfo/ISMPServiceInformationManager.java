@@ -10,20 +10,31 @@
  */
 package com.helger.phoss.smp.domain.serviceinfo;
 
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.state.EChange;
 import com.helger.commons.state.ESuccess;
+import com.helger.commons.string.StringHelper;
 import com.helger.peppol.smp.ISMPTransportProfile;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 
 /**
  * Manager for {@link ISMPServiceInformation} objects. Service information
@@ -53,6 +64,46 @@ public interface ISMPServiceInformationManager
   @Nonnull
   ESuccess mergeSMPServiceInformation (@Nonnull ISMPServiceInformation aServiceInformation);
 
+  /**
+   * Create or update multiple SMP service information objects at once, e.g.
+   * for an import. The default implementation merges each service information
+   * separately - backends should override it with a more efficient
+   * implementation. A failure of one service information does not prevent the
+   * others from being stored.
+   *
+   * @param aServiceInformations
+   *        The service information objects to handle. May not be
+   *        <code>null</code>.
+   * @return A list with the result of each service information object, in the
+   *         order of the passed collection. Never <code>null</code>.
+   * @see #mergeSMPServiceInformation(ISMPServiceInformation)
+   * @since 7.1.4
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsList <ESuccess> mergeAllSMPServiceInformation (@Nonnull final Collection <? extends ISMPServiceInformation> aServiceInformations)
+  {
+    ValueEnforcer.notNull (aServiceInformations, "ServiceInformations");
+
+    final ICommonsList <ESuccess> ret = new CommonsArrayList <> (aServiceInformations.size ());
+    for (final ISMPServiceInformation aServiceInformation : aServiceInformations)
+    {
+      ESuccess eSuccess;
+      try
+      {
+        eSuccess = mergeSMPServiceInformation (aServiceInformation);
+      }
+      catch (final RuntimeException ex)
+      {
+        LoggerFactory.getLogger (ISMPServiceInformationManager.class)
+                     .error ("Failed to merge service information '" + aServiceInformation.getID () + "'", ex);
+        eSuccess = ESuccess.FAILURE;
+      }
+      ret.add (eSuccess);
+    }
+    return ret;
+  }
+
   /**
    * Find the service information matching the passed quadruple of parameters.
    * If one of the parameters is <code>null</code> no match should be found and
@@ -131,12 +182,53 @@ public interface ISMPServiceInformationManager
   @ReturnsMutableCopy
   ICommonsList <ISMPServiceInformation> getAllSMPServiceInformation ();
 
+  /**
+   * Iterate all service information objects without keeping all of them in
+   * memory at the same time. All service information objects of the same
+   * service group are passed to the consumer directly after each other, so
+   * that callers can group them without a global map. Use this instead of
+   * {@link #getAllSMPServiceInformation()} for full scans.
+   *
+   * @param aConsumer
+   *        The consumer to be invoked for each service information object. May
+   *        not be <code>null</code>.
+   * @since 7.1.4
+   */
+  void forEachSMPServiceInformation (@Nonnull Consumer <? super ISMPServiceInformation> aConsumer);
+
   /**
    * @return The count of all service information objects. Always &ge; 0.
    */
   @Nonnegative
   long getSMPServiceInformationCount ();
 
+  /**
+   * Get a single page of endpoints, sorted by participant, document type,
+   * process and transport profile. The filter of the request is applied to the
+   * participant identifier. Only offset based paging and sorting by participant
+   * identifier are supported (see
+   * {@link SMPEndpointPage#checkRequest(SMPServiceGroupPageRequest)}). The
+   * default implementation iterates all service information - backends should
+   * override it with a native implementation.
+   *
+   * @param aRequest
+   *        The page request. May not be <code>null</code>.
+   * @return The page and never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  default SMPEndpointPage getSMPEndpointPage (@Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    SMPEndpointPage.checkRequest (aRequest);
+
+    final ICommonsList <ISMPServiceInformation> aMatching = new CommonsArrayList <> ();
+    forEachSMPServiceInformation (x -> {
+      if (aRequest.matchesFilter (x.getServiceGroup ()))
+        aMatching.add (x);
+    });
+    return SMPEndpointPage.createInMemory (aMatching, aRequest);
+  }
+
   /**
    * Get all service information objects that belong to the provided service
    * group.
@@ -196,4 +288,64 @@ public interface ISMPServiceInformationManager
    *         transport profile ID, <code>false</code> if not.
    */
   boolean containsAnyEndpointWithTransportProfile (@Nullable String sTransportProfileID);
+
+  /**
+   * Change the endpoint reference of all endpoints using the provided old
+   * endpoint reference. All matching service information objects are saved and
+   * {@link ISMPServiceInformationCallback#onSMPServiceInformationUpdated(ISMPServiceInformation)}
+   * is invoked for each of them. The default implementation merges each
+   * service information separately - backends should override it with a more
+   * efficient implementation.
+   *
+   * @param aServiceGroup
+   *        The service group to restrict the change to. May be
+   *        <code>null</code> to change the endpoints of all service groups.
+   * @param sOldURL
+   *        The old endpoint reference. May neither be <code>null</code> nor
+   *        empty.
+   * @param sNewURL
+   *        The new endpoint reference. May neither be <code>null</code> nor
+   *        empty.
+   * @return The result of the change and never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  default SMPEndpointBulkChangeResult changeAllEndpointURLs (@Nullable final ISMPServiceGroup aServiceGroup,
+                                                             @Nonnull @Nonempty final String sOldURL,
+                                                             @Nonnull @Nonempty final String sNewURL)
+  {
+    return SMPEndpointBulkChangeHelper.changeViaMerge (this,
+                                                       aServiceGroup,
+                                                       x -> sOldURL.equals (x.getEndpointReference ()),
+                                                       x -> x.setEndpointReference (sNewURL));
+  }
+
+  /**
+   * Change the certificate of all endpoints that use a certificate matching
+   * the provided predicate. All matching service information objects are saved
+   * and
+   * {@link ISMPServiceInformationCallback#onSMPServiceInformationUpdated(ISMPServiceInformation)}
+   * is invoked for each of them. The default implementation merges each
+   * service information separately - backends should override it with a more
+   * efficient implementation.
+   *
+   * @param aOldCertificateMatcher
+   *        The predicate to identify the certificates to be replaced. It is
+   *        only invoked with non-empty certificates. May not be
+   *        <code>null</code>.
+   * @param sNewCertificate
+   *        The new certificate. May neither be <code>null</code> nor empty.
+   * @return The result of the change and never <code>null</code>.
+   * @since 7.1.4
+   */
+  @Nonnull
+  default SMPEndpointBulkChangeResult changeAllEndpointCertificates (@Nonnull final Predicate <String> aOldCertificateMatcher,
+                                                                     @Nonnull @Nonempty final String sNewCertificate)
+  {
+    return SMPEndpointBulkChangeHelper.changeViaMerge (this,
+                                                       null,
+                                                       x -> StringHelper.hasText (x.getCertificate ()) &&
+                                                            aOldCertificateMatcher.test (x.getCertificate ()),
+                                                       x -> x.setCertificate (sNewCertificate));
+  }
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.StringHelper;
+import com.helger.security.certificate.CertificateHelper;
+
+/**
+ * In-memory store for endpoint certificates. In practice the same certificate
+ * is used by a lot of endpoints. This class ensures that each distinct
+ * certificate string is kept only once in memory, that it is identified by a
+ * content hash (which is used as the reference in the persistent certificate
+ * stores of the backends) and that it is parsed to an {@link X509Certificate}
+ * only once.<br>
+ * Lookups don't require a lock. If the maximum size is exceeded, arbitrary
+ * entries are evicted, so the size limit is only approximate.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPCertificateCache
+{
+  /** The maximum number of distinct certificates kept in memory */
+  public static final int MAX_SIZE = 10_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPCertificateCache.class);
+
+  @Immutable
+  private static final class Entry
+  {
+    private final String m_sCertificate;
+    private final String m_sHash;
+    private final X509Certificate m_aX509Cert;
+
+    Entry (@Nonnull final String sCertificate, @Nonnull final String sHash, @Nullable final X509Certificate aX509Cert)
+    {
+      m_sCertificate = sCertificate;
+      m_sHash = sHash;
+      m_aX509Cert = aX509Cert;
+    }
+  }
+
+  private static final ConcurrentHashMap <String, Entry> BY_CERT = new ConcurrentHashMap <> ();
+  private static final ConcurrentHashMap <String, Entry> BY_HASH = new ConcurrentHashMap <> ();
+
+  private SMPCertificateCache ()
+  {}
+
+  @Nonnull
+  @Nonempty
+  private static String _createHash (@Nonnull final byte [] aBytes)
+  {
+    try
+    {
+      final MessageDigest aMD = MessageDigest.getInstance ("SHA-256");
+      return StringHelper.getHexEncoded (aMD.digest (aBytes));
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      throw new IllegalStateException ("SHA-256 is not supported", ex);
+    }
+  }
+
+  @Nonnull
+  @Nonempty
+  private static String _createHash (@Nonnull final String sCertificate, @Nullable final X509Certificate aX509Cert)
+  {
+    if (aX509Cert != null)
+      try
+      {
+        // Independent of the textual representation (PEM headers, line
+        // breaks etc.)
+        return _createHash (aX509Cert.getEncoded ());
+      }
+      catch (final CertificateEncodingException ex)
+      {
+        LOGGER.warn ("Failed to get the encoded certificate - hashing the string instead", ex);
+      }
+    return _createHash (sCertificate.getBytes (StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Create the hash of the provided certificate string. This is the SHA-256
+   * hash of the DER encoded certificate, encoded as lowercase hex string. So
+   * the result has always a length of 64 characters and different textual
+   * representations of the same certificate have the same hash. If the string
+   * cannot be parsed as a certificate, the UTF-8 bytes of the string are
+   * hashed instead.
+   *
+   * @param sCertificate
+   *        The certificate string to hash. May not be <code>null</code>.
+   * @return The hex encoded hash. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public static String createHash (@Nonnull final String sCertificate)
+  {
+    ValueEnforcer.notNull (sCertificate, "Certificate");
+    return _createHash (sCertificate, CertificateHelper.convertStringToCertficateOrNull (sCertificate));
+  }
+
+  private static void _evictIfNecessary (@Nonnull final ConcurrentHashMap <String, Entry> aMap)
+  {
+    if (aMap.size () > MAX_SIZE)
+    {
+      // Remove arbitrary 10% - they are simply recreated upon next access
+      final Iterator <String> aIt = aMap.keySet ().iterator ();
+      while (aMap.size () > MAX_SIZE * 9 / 10 && aIt.hasNext ())
+      {
+        aIt.next ();
+        aIt.remove ();
+      }
+    }
+  }
+
+  @Nonnull
+  private static Entry _getOrCreateEntry (@Nonnull final String sCertificate)
+  {
+    final Entry ret = BY_CERT.get (sCertificate);
+    if (ret != null)
+      return ret;
+
+    // Parse and hash outside of any lock
+    final X509Certificate aX509Cert = CertificateHelper.convertStringToCertficateOrNull (sCertificate);
+    final Entry aNewEntry = new Entry (sCertificate, _createHash (sCertificate, aX509Cert), aX509Cert);
+
+    // Reuse an existing entry with the same hash, if the same certificate is
+    // already known in a different representation or was evicted from the
+    // other map only
+    Entry aEntry = BY_HASH.putIfAbsent (aNewEntry.m_sHash, aNewEntry);
+    if (aEntry == null)
+    {
+      aEntry = aNewEntry;
+      _evictIfNecessary (BY_HASH);
+    }
+
+    final Entry aOld = BY_CERT.putIfAbsent (sCertificate, aEntry);
+    if (aOld != null)
+      return aOld;
+    _evictIfNecessary (BY_CERT);
+    return aEntry;
+  }
+
+  /**
+   * Get the shared instance of the provided certificate string.
+   *
+   * @param sCertificate
+   *        The certificate string. May be <code>null</code>.
+   * @return The shared instance of an equal certificate (potentially in a
+   *         different textual representation), or the parameter as is if it
+   *         has no text.
+   */
+  @Nullable
+  public static String intern (@Nullable final String sCertificate)
+  {
+    if (StringHelper.hasNoText (sCertificate))
+      return sCertificate;
+    return _getOrCreateEntry (sCertificate).m_sCertificate;
+  }
+
+  /**
+   * Get the hash of the provided certificate string. The hash is only
+   * calculated once per distinct certificate string.
+   *
+   * @param sCertificate
+   *        The certificate string. May be <code>null</code>.
+   * @return <code>null</code> if the certificate has no text.
+   * @see #createHash(String)
+   */
+  @Nullable
+  public static String getHash (@Nullable final String sCertificate)
+  {
+    if (StringHelper.hasNoText (sCertificate))
+      return null;
+    return _getOrCreateEntry (sCertificate).m_sHash;
+  }
+
+  /**
+   * Get the parsed X.509 certificate of the provided certificate string. Each
+   * distinct certificate string is only parsed once.
+   *
+   * @param sCertificate
+   *        The certificate string. May be <code>null</code>.
+   * @return <code>null</code> if the certificate has no text or cannot be
+   *         parsed.
+   */
+  @Nullable
+  public static X509Certificate getX509Certificate (@Nullable final String sCertificate)
+  {
+    if (StringHelper.hasNoText (sCertificate))
+      return null;
+    return _getOrCreateEntry (sCertificate).m_aX509Cert;
+  }
+
+  /**
+   * Get the certificate string with the provided hash, if it is contained in
+   * this cache.
+   *
+   * @param sHash
+   *        The hash as created by {@link #createHash(String)}. May be
+   *        <code>null</code>.
+   * @return <code>null</code> if no such certificate is cached.
+   */
+  @Nullable
+  public static String getCertificateOfHash (@Nullable final String sHash)
+  {
+    if (StringHelper.hasNoText (sHash))
+      return null;
+    final Entry aEntry = BY_HASH.get (sHash);
+    return aEntry == null ? null : aEntry.m_sCertificate;
+  }
+
+  /**
+   * @return The number of distinct certificates in the cache. Always &ge; 0.
+   */
+  @Nonnegative
+  public static int size ()
+  {
+    return BY_HASH.size ();
+  }
+
+  /**
+   * Remove all cached certificates.
+   */
+  public static void clear ()
+  {
+    BY_CERT.clear ();
+    BY_HASH.clear ();
+  }
+}
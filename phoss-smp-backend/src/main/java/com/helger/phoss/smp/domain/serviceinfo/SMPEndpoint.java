@@ -152,7 +152,8 @@ public class SMPEndpoint extends AbstractSMPHasExtension implements ISMPEndpoint
 
   public final void setCertificate (@Nullable final String sCertificate)
   {
-    m_sCertificate = sCertificate;
+    // Share the instance with all other endpoints using the same certificate
+    m_sCertificate = SMPCertificateCache.intern (sCertificate);
   }
 
   @Nullable
@@ -246,7 +247,7 @@ public class SMPEndpoint extends AbstractSMPHasExtension implements ISMPEndpoint
       ret.setActivationDate (m_aServiceActivationDT.toLocalDate ());
     if (m_aServiceExpirationDT != null)
       ret.setExpirationDate (m_aServiceExpirationDT.toLocalDate ());
-    final X509Certificate aX509Cert = CertificateHelper.convertStringToCertficateOrNull (m_sCertificate);
+    final X509Certificate aX509Cert = getCertificateX509 ();
     if (aX509Cert != null)
     {
       final com.helger.xsds.bdxr.smp2.ac.CertificateType aCert = new com.helger.xsds.bdxr.smp2.ac.CertificateType ();
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSortedSet;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.mutable.MutableInt;
+import com.helger.commons.mutable.MutableLong;
+import com.helger.commons.timing.StopWatch;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.web.scope.mgr.WebScoped;
+
+/**
+ * Helper methods for the bulk change of endpoints, shared by all
+ * {@link ISMPServiceInformationManager} implementations.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPEndpointBulkChangeHelper
+{
+  /** The number of service information objects changed per transaction */
+  public static final int CHUNK_SIZE = 500;
+  /** The number of threads used to invoke the callbacks */
+  public static final int PARALLEL_WORKERS = Math.max (2, Math.min (8, Runtime.getRuntime ().availableProcessors ()));
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPEndpointBulkChangeHelper.class);
+
+  private SMPEndpointBulkChangeHelper ()
+  {}
+
+  /**
+   * Modify all matching endpoints of the provided service information in
+   * memory.
+   *
+   * @param aSI
+   *        The service information to modify. May not be <code>null</code>.
+   * @param aFilter
+   *        The filter for the endpoints to modify. May not be
+   *        <code>null</code>.
+   * @param aModifier
+   *        The modification to apply. May not be <code>null</code>.
+   * @return The number of modified endpoints. Always &ge; 0.
+   */
+  @Nonnegative
+  public static int modifyEndpoints (@Nonnull final ISMPServiceInformation aSI,
+                                     @Nonnull final Predicate <? super ISMPEndpoint> aFilter,
+                                     @Nonnull final Consumer <? super SMPEndpoint> aModifier)
+  {
+    int ret = 0;
+    for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+      for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+        if (aFilter.test (aEndpoint))
+        {
+          aModifier.accept ((SMPEndpoint) aEndpoint);
+          ret++;
+        }
+    return ret;
+  }
+
+  /**
+   * Split the provided list into chunks.
+   *
+   * @param <T>
+   *        The element type
+   * @param aList
+   *        The list to split. May not be <code>null</code>.
+   * @param nChunkSize
+   *        The maximum size of each chunk. Must be &gt; 0.
+   * @return A list of chunks and never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static <T> ICommonsList <ICommonsList <T>> getChunks (@Nonnull final List <T> aList,
+                                                               @Nonnegative final int nChunkSize)
+  {
+    ValueEnforcer.notNull (aList, "List");
+    ValueEnforcer.isGT0 (nChunkSize, "ChunkSize");
+
+    final ICommonsList <ICommonsList <T>> ret = new CommonsArrayList <> ();
+    for (int i = 0; i < aList.size (); i += nChunkSize)
+      ret.add (new CommonsArrayList <> (aList.subList (i, Math.min (i + nChunkSize, aList.size ()))));
+    return ret;
+  }
+
+  /**
+   * Invoke the provided consumer for all items, using
+   * {@link #PARALLEL_WORKERS} threads. The progress including the estimated
+   * remaining time is logged in steps of 10%. Exceptions of the consumer are
+   * logged and counted. Each invocation runs in its own request scope, because
+   * the callbacks may access request scoped singletons (e.g. the settings of
+   * the SQL backend).
+   *
+   * @param <T>
+   *        The item type
+   * @param sJobName
+   *        The job name for logging. May neither be <code>null</code> nor
+   *        empty.
+   * @param aItems
+   *        The items to handle. May not be <code>null</code>.
+   * @param aConsumer
+   *        The consumer to invoke. Must be thread-safe. May not be
+   *        <code>null</code>.
+   * @return The number of items for which the consumer failed. Always &ge; 0.
+   */
+  @Nonnegative
+  public static <T> int forEachParallel (@Nonnull @Nonempty final String sJobName,
+                                         @Nonnull final List <T> aItems,
+                                         @Nonnull final Consumer <? super T> aConsumer)
+  {
+    ValueEnforcer.notEmpty (sJobName, "JobName");
+    ValueEnforcer.notNull (aItems, "Items");
+    ValueEnforcer.notNull (aConsumer, "Consumer");
+
+    final int nTotal = aItems.size ();
+    if (nTotal == 0)
+      return 0;
+
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final AtomicLong aDone = new AtomicLong (0);
+    final AtomicInteger aErrors = new AtomicInteger (0);
+    final BasicThreadFactory aThreadFactory = new BasicThreadFactory.Builder ().namingPattern ("smp-bulk-change-%d")
+                                                                               .daemon (true)
+                                                                               .build ();
+    final ExecutorService aExecutor = Executors.newFixedThreadPool (Math.min (PARALLEL_WORKERS, nTotal),
+                                                                    aThreadFactory);
+    for (final T aItem : aItems)
+      aExecutor.submit ( () -> {
+        try (final WebScoped aWS = new WebScoped ())
+        {
+          aConsumer.accept (aItem);
+        }
+        catch (final RuntimeException ex)
+        {
+          aErrors.incrementAndGet ();
+          LOGGER.error (sJobName + ": failed to handle " + aItem, ex);
+        }
+
+        // Log progress in steps of 10%
+        final long nDone = aDone.incrementAndGet ();
+        if (nDone * 10 / nTotal != (nDone - 1) * 10 / nTotal)
+        {
+          final long nElapsedMillis = aSW.getMillis ();
+          final long nETAMillis = nElapsedMillis * (nTotal - nDone) / nDone;
+          LOGGER.info (sJobName +
+                       ": " +
+                       nDone +
+                       "/" +
+                       nTotal +
+                       " (" +
+                       (nDone * 100 / nTotal) +
+                       "%) done after " +
+                       nElapsedMillis +
+                       " ms - estimated remaining time " +
+                       nETAMillis +
+                       " ms");
+        }
+      });
+    ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+    return aErrors.get ();
+  }
+
+  /**
+   * The generic implementation of a bulk change, that modifies the matching
+   * service information objects one by one via
+   * {@link ISMPServiceInformationManager#mergeSMPServiceInformation(ISMPServiceInformation)}.
+   *
+   * @param aMgr
+   *        The service information manager to use. May not be
+   *        <code>null</code>.
+   * @param aServiceGroup
+   *        The service group to restrict the change to. May be
+   *        <code>null</code> to change all service groups.
+   * @param aFilter
+   *        The filter for the endpoints to modify. May not be
+   *        <code>null</code>.
+   * @param aModifier
+   *        The modification to apply. May not be <code>null</code>.
+   * @return The result of the change and never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPEndpointBulkChangeResult changeViaMerge (@Nonnull final ISMPServiceInformationManager aMgr,
+                                                            @Nullable final ISMPServiceGroup aServiceGroup,
+                                                            @Nonnull final Predicate <? super ISMPEndpoint> aFilter,
+                                                            @Nonnull final Consumer <? super SMPEndpoint> aModifier)
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final MutableLong aChangedEndpoints = new MutableLong (0);
+    final MutableInt aErrors = new MutableInt (0);
+    final ICommonsSortedSet <String> aChangedServiceGroupIDs = new CommonsTreeSet <> ();
+    final Consumer <ISMPServiceInformation> aHandler = aSI -> {
+      final int nChanged = modifyEndpoints (aSI, aFilter, aModifier);
+      if (nChanged > 0)
+      {
+        if (aMgr.mergeSMPServiceInformation (aSI).isFailure ())
+          aErrors.inc ();
+        aChangedEndpoints.inc (nChanged);
+        aChangedServiceGroupIDs.add (aSI.getServiceGroupID ());
+      }
+    };
+    if (aServiceGroup != null)
+      aMgr.getAllSMPServiceInformationOfServiceGroup (aServiceGroup).forEach (aHandler);
+    else
+      aMgr.forEachSMPServiceInformation (aHandler);
+    return new SMPEndpointBulkChangeResult (aChangedEndpoints.longValue (),
+                                            aErrors.intValue (),
+                                            aChangedServiceGroupIDs,
+                                            Duration.ofMillis (aSW.stopAndGetMillis ()));
+  }
+}
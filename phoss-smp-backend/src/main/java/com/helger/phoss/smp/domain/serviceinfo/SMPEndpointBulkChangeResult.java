@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsTreeSet;
+import com.helger.commons.collection.impl.ICommonsSortedSet;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The result of a bulk change of endpoints.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPEndpointBulkChangeResult
+{
+  private final long m_nChangedEndpoints;
+  private final int m_nErrors;
+  private final ICommonsSortedSet <String> m_aChangedServiceGroupIDs;
+  private final Duration m_aDuration;
+
+  public SMPEndpointBulkChangeResult (@Nonnegative final long nChangedEndpoints,
+                                      @Nonnegative final int nErrors,
+                                      @Nonnull final ICommonsSortedSet <String> aChangedServiceGroupIDs,
+                                      @Nonnull final Duration aDuration)
+  {
+    ValueEnforcer.isGE0 (nChangedEndpoints, "ChangedEndpoints");
+    ValueEnforcer.isGE0 (nErrors, "Errors");
+    ValueEnforcer.notNull (aChangedServiceGroupIDs, "ChangedServiceGroupIDs");
+    ValueEnforcer.notNull (aDuration, "Duration");
+    m_nChangedEndpoints = nChangedEndpoints;
+    m_nErrors = nErrors;
+    m_aChangedServiceGroupIDs = new CommonsTreeSet <> (aChangedServiceGroupIDs);
+    m_aDuration = aDuration;
+  }
+
+  /**
+   * @return The number of changed endpoints. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getChangedEndpointCount ()
+  {
+    return m_nChangedEndpoints;
+  }
+
+  /**
+   * @return The number of service information objects that could not be
+   *         saved. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getErrorCount ()
+  {
+    return m_nErrors;
+  }
+
+  /**
+   * @return The IDs of all service groups containing at least one changed
+   *         endpoint. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsSortedSet <String> getAllChangedServiceGroupIDs ()
+  {
+    return m_aChangedServiceGroupIDs.getClone ();
+  }
+
+  /**
+   * @return The time it took to perform the change, including the callbacks.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public Duration getDuration ()
+  {
+    return m_aDuration;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ChangedEndpoints", m_nChangedEndpoints)
+                                       .append ("Errors", m_nErrors)
+                                       .append ("ChangedServiceGroupIDs", m_aChangedServiceGroupIDs.size ())
+                                       .append ("Duration", m_aDuration)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import java.util.Comparator;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
+
+/**
+ * A single page of endpoints as the result of
+ * {@link ISMPServiceInformationManager#getSMPEndpointPage(SMPServiceGroupPageRequest)}.
+ * Each entry is a single endpoint together with the process and service
+ * information it belongs to.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPEndpointPage
+{
+  /**
+   * A single endpoint of a page.
+   *
+   * @author Philip Helger
+   */
+  @Immutable
+  public static final class Entry
+  {
+    private final ISMPServiceInformation m_aServiceInfo;
+    private final ISMPProcess m_aProcess;
+    private final ISMPEndpoint m_aEndpoint;
+
+    public Entry (@Nonnull final ISMPServiceInformation aServiceInfo,
+                  @Nonnull final ISMPProcess aProcess,
+                  @Nonnull final ISMPEndpoint aEndpoint)
+    {
+      ValueEnforcer.notNull (aServiceInfo, "ServiceInfo");
+      ValueEnforcer.notNull (aProcess, "Process");
+      ValueEnforcer.notNull (aEndpoint, "Endpoint");
+      m_aServiceInfo = aServiceInfo;
+      m_aProcess = aProcess;
+      m_aEndpoint = aEndpoint;
+    }
+
+    /**
+     * @return The service information the endpoint belongs to. Depending on
+     *         the backend it may only contain the processes and endpoints of
+     *         the current page. Never <code>null</code>.
+     */
+    @Nonnull
+    public ISMPServiceInformation getServiceInformation ()
+    {
+      return m_aServiceInfo;
+    }
+
+    @Nonnull
+    public ISMPProcess getProcess ()
+    {
+      return m_aProcess;
+    }
+
+    @Nonnull
+    public ISMPEndpoint getEndpoint ()
+    {
+      return m_aEndpoint;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return new ToStringGenerator (null).append ("ServiceInfo", m_aServiceInfo.getID ())
+                                         .append ("Process", m_aProcess.getProcessIdentifier ())
+                                         .append ("Endpoint", m_aEndpoint.getTransportProfile ())
+                                         .getToString ();
+    }
+  }
+
+  private final ICommonsList <Entry> m_aEntries;
+  private final long m_nFilteredCount;
+
+  /**
+   * Constructor
+   *
+   * @param aEntries
+   *        The endpoints of this page. May not be <code>null</code>.
+   * @param nFilteredCount
+   *        The total number of endpoints matching the filter, ignoring the
+   *        paging. Must be &ge; 0.
+   */
+  public SMPEndpointPage (@Nonnull final ICommonsList <Entry> aEntries, @Nonnegative final long nFilteredCount)
+  {
+    ValueEnforcer.notNull (aEntries, "Entries");
+    ValueEnforcer.isGE0 (nFilteredCount, "FilteredCount");
+    m_aEntries = aEntries.getClone ();
+    m_nFilteredCount = nFilteredCount;
+  }
+
+  /**
+   * @return The endpoints of this page in the requested order. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <Entry> getAllEntries ()
+  {
+    return m_aEntries.getClone ();
+  }
+
+  /**
+   * @return The number of endpoints on this page. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getEntryCount ()
+  {
+    return m_aEntries.size ();
+  }
+
+  /**
+   * @return The total number of endpoints matching the filter, ignoring the
+   *         paging. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getFilteredCount ()
+  {
+    return m_nFilteredCount;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Entries", m_aEntries)
+                                       .append ("FilteredCount", m_nFilteredCount)
+                                       .getToString ();
+  }
+
+  /**
+   * Check that the provided request can be used for endpoint pages. Endpoints
+   * can only be sorted by participant identifier and only offset based paging
+   * is supported.
+   *
+   * @param aRequest
+   *        The request to check. May not be <code>null</code>.
+   * @throws IllegalArgumentException
+   *         If the request is not supported
+   */
+  public static void checkRequest (@Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    ValueEnforcer.notNull (aRequest, "Request");
+    ValueEnforcer.isTrue (aRequest.getSortColumn () == ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                          "Endpoints can only be sorted by participant ID");
+    ValueEnforcer.isTrue (aRequest.getAfterParticipantID () == null,
+                          "Keyset paging is not supported for endpoints");
+  }
+
+  /**
+   * Get the comparator for in-memory sorting of endpoints. Sorting is by
+   * participant, document type, process and transport profile.
+   *
+   * @param bAscending
+   *        <code>true</code> to sort ascending, <code>false</code> to sort
+   *        descending.
+   * @return The comparator and never <code>null</code>.
+   */
+  @Nonnull
+  public static Comparator <Entry> getComparator (final boolean bAscending)
+  {
+    final Comparator <Entry> ret = Comparator.comparing ((final Entry x) -> x.getServiceInformation ()
+                                                                               .getServiceGroupID ())
+                                             .thenComparing (x -> x.getServiceInformation ()
+                                                                   .getDocumentTypeIdentifier ()
+                                                                   .getURIEncoded ())
+                                             .thenComparing (x -> x.getProcess ()
+                                                                   .getProcessIdentifier ()
+                                                                   .getURIEncoded ())
+                                             .thenComparing (x -> x.getEndpoint ().getTransportProfile ());
+    return bAscending ? ret : ret.reversed ();
+  }
+
+  /**
+   * Create a page from an in-memory collection of service information. This
+   * is meant for backends that keep all service information in memory anyway.
+   *
+   * @param aAllServiceInfos
+   *        All service information to choose from. May not be
+   *        <code>null</code>.
+   * @param aRequest
+   *        The page request. May not be <code>null</code>.
+   * @return The page and never <code>null</code>.
+   */
+  @Nonnull
+  public static SMPEndpointPage createInMemory (@Nonnull final Iterable <? extends ISMPServiceInformation> aAllServiceInfos,
+                                                @Nonnull final SMPServiceGroupPageRequest aRequest)
+  {
+    ValueEnforcer.notNull (aAllServiceInfos, "AllServiceInfos");
+    checkRequest (aRequest);
+
+    final ICommonsList <Entry> aMatching = new CommonsArrayList <> ();
+    for (final ISMPServiceInformation aSI : aAllServiceInfos)
+      if (aRequest.matchesFilter (aSI.getServiceGroup ()))
+        for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+          for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+            aMatching.add (new Entry (aSI, aProcess, aEndpoint));
+    final long nFilteredCount = aMatching.size ();
+    aMatching.sort (getComparator (aRequest.isAscending ()));
+
+    final int nStart = aRequest.getOffset ();
+    final int nEnd = (int) Math.min ((long) nStart + aRequest.getMaxCount (), aMatching.size ());
+    final ICommonsList <Entry> aPage = nStart >= nEnd ? new CommonsArrayList <> ()
+                                                      : new CommonsArrayList <> (aMatching.subList (nStart, nEnd));
+    return new SMPEndpointPage (aPage, nFilteredCount);
+  }
+}
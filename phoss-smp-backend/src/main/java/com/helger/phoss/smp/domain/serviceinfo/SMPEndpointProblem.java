@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import java.time.OffsetDateTime;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+
+/**
+ * A single potential problem of an endpoint, as contained in the
+ * {@link SMPEndpointProblemIndex}.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPEndpointProblem
+{
+  private final ESMPEndpointProblemType m_eType;
+  private final String m_sServiceGroupID;
+  private final IDocumentTypeIdentifier m_aDocTypeID;
+  private final IProcessIdentifier m_aProcessID;
+  private final String m_sTransportProfile;
+  private final OffsetDateTime m_aDateTime;
+
+  public SMPEndpointProblem (@Nonnull final ESMPEndpointProblemType eType,
+                             @Nonnull @Nonempty final String sServiceGroupID,
+                             @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                             @Nonnull final IProcessIdentifier aProcessID,
+                             @Nonnull @Nonempty final String sTransportProfile,
+                             @Nullable final OffsetDateTime aDateTime)
+  {
+    ValueEnforcer.notNull (eType, "Type");
+    ValueEnforcer.notEmpty (sServiceGroupID, "ServiceGroupID");
+    ValueEnforcer.notNull (aDocTypeID, "DocTypeID");
+    ValueEnforcer.notNull (aProcessID, "ProcessID");
+    ValueEnforcer.notEmpty (sTransportProfile, "TransportProfile");
+    if (eType.isDated ())
+      ValueEnforcer.notNull (aDateTime, "DateTime");
+    m_eType = eType;
+    m_sServiceGroupID = sServiceGroupID;
+    m_aDocTypeID = aDocTypeID;
+    m_aProcessID = aProcessID;
+    m_sTransportProfile = sTransportProfile;
+    m_aDateTime = aDateTime;
+  }
+
+  @Nonnull
+  public ESMPEndpointProblemType getType ()
+  {
+    return m_eType;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getServiceGroupID ()
+  {
+    return m_sServiceGroupID;
+  }
+
+  @Nonnull
+  public IDocumentTypeIdentifier getDocumentTypeIdentifier ()
+  {
+    return m_aDocTypeID;
+  }
+
+  @Nonnull
+  public IProcessIdentifier getProcessIdentifier ()
+  {
+    return m_aProcessID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getTransportProfile ()
+  {
+    return m_sTransportProfile;
+  }
+
+  /**
+   * @return The relevant date time of the problem. Never <code>null</code> for
+   *         dated problem types, always <code>null</code> otherwise.
+   */
+  @Nullable
+  public OffsetDateTime getDateTime ()
+  {
+    return m_aDateTime;
+  }
+
+  /**
+   * @return The relevant date time in milliseconds since the epoch or 0 if
+   *         this problem has no date time.
+   */
+  public long getMillis ()
+  {
+    return m_aDateTime == null ? 0 : m_aDateTime.toInstant ().toEpochMilli ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Type", m_eType)
+                                       .append ("ServiceGroupID", m_sServiceGroupID)
+                                       .append ("DocTypeID", m_aDocTypeID)
+                                       .append ("ProcessID", m_aProcessID)
+                                       .append ("TransportProfile", m_sTransportProfile)
+                                       .appendIfNotNull ("DateTime", m_aDateTime)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import java.security.cert.X509Certificate;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsNavigableMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.mutable.MutableLong;
+import com.helger.commons.timing.StopWatch;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.ISMPClusterEventCallback;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.web.scope.mgr.WebScoped;
+
+/**
+ * An in-memory index of all potential endpoint problems (expiration dates,
+ * certificate validity etc.), sorted by their date time. It is built once in
+ * the background on startup and afterwards maintained via the service
+ * information and service group callbacks, as well as the cluster events of
+ * other SMP nodes. This avoids iterating all endpoints and parsing all
+ * certificates, each time the problems are needed.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPEndpointProblemIndex implements
+                                           ISMPServiceInformationCallback,
+                                           ISMPServiceGroupCallback,
+                                           ISMPClusterEventCallback
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPEndpointProblemIndex.class);
+
+  private final IIdentifierFactory m_aIdentifierFactory;
+  private final ISMPServiceGroupManager m_aServiceGroupMgr;
+  private final ISMPServiceInformationManager m_aServiceInfoMgr;
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  // Service group ID to service information ID to problems
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsMap <String, ICommonsMap <String, ICommonsList <SMPEndpointProblem>>> m_aPerSG = new CommonsHashMap <> ();
+  // Milliseconds to dated problems
+  @GuardedBy ("m_aRWLock")
+  private final ICommonsNavigableMap <Long, ICommonsList <SMPEndpointProblem>> m_aByDate = new CommonsTreeMap <> ();
+  @GuardedBy ("m_aRWLock")
+  private int m_nProblemCount = 0;
+  // The IDs of the service information objects and service groups that were
+  // changed by callbacks while indexAll is running - null otherwise
+  @GuardedBy ("m_aRWLock")
+  private ICommonsSet <String> m_aChangedSIIDs;
+  @GuardedBy ("m_aRWLock")
+  private ICommonsSet <String> m_aChangedSGIDs;
+  private volatile boolean m_bInitialized = false;
+  private volatile boolean m_bClosed = false;
+
+  public SMPEndpointProblemIndex (@Nonnull final IIdentifierFactory aIdentifierFactory,
+                                  @Nonnull final ISMPServiceGroupManager aServiceGroupMgr,
+                                  @Nonnull final ISMPServiceInformationManager aServiceInfoMgr)
+  {
+    ValueEnforcer.notNull (aIdentifierFactory, "IdentifierFactory");
+    ValueEnforcer.notNull (aServiceGroupMgr, "ServiceGroupMgr");
+    ValueEnforcer.notNull (aServiceInfoMgr, "ServiceInfoMgr");
+    m_aIdentifierFactory = aIdentifierFactory;
+    m_aServiceGroupMgr = aServiceGroupMgr;
+    m_aServiceInfoMgr = aServiceInfoMgr;
+  }
+
+  /**
+   * Determine all potential problems of the endpoints of the provided service
+   * information. Certificates are parsed only once per distinct certificate.
+   *
+   * @param aSI
+   *        The service information to check. May not be <code>null</code>.
+   * @return A list with all problems and never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <SMPEndpointProblem> createProblems (@Nonnull final ISMPServiceInformation aSI)
+  {
+    final ICommonsList <SMPEndpointProblem> ret = new CommonsArrayList <> ();
+    final String sServiceGroupID = aSI.getServiceGroupID ();
+    for (final ISMPProcess aProcess : aSI.getAllProcesses ())
+      for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+      {
+        final String sTransportProfile = aEndpoint.getTransportProfile ();
+        if (ESMPTransportProfile.getFromIDOrNull (sTransportProfile) == null)
+          ret.add (new SMPEndpointProblem (ESMPEndpointProblemType.NON_STANDARD_TRANSPORT_PROFILE,
+                                           sServiceGroupID,
+                                           aSI.getDocumentTypeIdentifier (),
+                                           aProcess.getProcessIdentifier (),
+                                           sTransportProfile,
+                                           null));
+
+        if (aEndpoint.hasServiceActivationDateTime ())
+          ret.add (new SMPEndpointProblem (ESMPEndpointProblemType.ENDPOINT_ACTIVATION,
+                                           sServiceGroupID,
+                                           aSI.getDocumentTypeIdentifier (),
+                                           aProcess.getProcessIdentifier (),
+                                           sTransportProfile,
+                                           aEndpoint.getServiceActivationDateTime ().toOffsetDateTime ()));
+
+        if (aEndpoint.hasServiceExpirationDateTime ())
+          ret.add (new SMPEndpointProblem (ESMPEndpointProblemType.ENDPOINT_EXPIRATION,
+                                           sServiceGroupID,
+                                           aSI.getDocumentTypeIdentifier (),
+                                           aProcess.getProcessIdentifier (),
+                                           sTransportProfile,
+                                           aEndpoint.getServiceExpirationDateTime ().toOffsetDateTime ()));
+
+        final X509Certificate aX509Cert = aEndpoint.getCertificateX509 ();
+        if (aX509Cert == null)
+          ret.add (new SMPEndpointProblem (ESMPEndpointProblemType.CERTIFICATE_INVALID,
+                                           sServiceGroupID,
+                                           aSI.getDocumentTypeIdentifier (),
+                                           aProcess.getProcessIdentifier (),
+                                           sTransportProfile,
+                                           null));
+        else
+        {
+          ret.add (new SMPEndpointProblem (ESMPEndpointProblemType.CERTIFICATE_NOT_BEFORE,
+                                           sServiceGroupID,
+                                           aSI.getDocumentTypeIdentifier (),
+                                           aProcess.getProcessIdentifier (),
+                                           sTransportProfile,
+                                           PDTFactory.createOffsetDateTime (aX509Cert.getNotBefore ())));
+          ret.add (new SMPEndpointProblem (ESMPEndpointProblemType.CERTIFICATE_NOT_AFTER,
+                                           sServiceGroupID,
+                                           aSI.getDocumentTypeIdentifier (),
+                                           aProcess.getProcessIdentifier (),
+                                           sTransportProfile,
+                                           PDTFactory.createOffsetDateTime (aX509Cert.getNotAfter ())));
+        }
+      }
+    return ret;
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _removeProblems (@Nullable final ICommonsList <SMPEndpointProblem> aProblems)
+  {
+    if (aProblems != null)
+      for (final SMPEndpointProblem aProblem : aProblems)
+      {
+        if (aProblem.getType ().isDated ())
+        {
+          final Long aKey = Long.valueOf (aProblem.getMillis ());
+          final ICommonsList <SMPEndpointProblem> aList = m_aByDate.get (aKey);
+          if (aList != null)
+          {
+            // Identity based
+            aList.remove (aProblem);
+            if (aList.isEmpty ())
+              m_aByDate.remove (aKey);
+          }
+        }
+        m_nProblemCount--;
+      }
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _addProblems (@Nonnull final ICommonsList <SMPEndpointProblem> aProblems)
+  {
+    for (final SMPEndpointProblem aProblem : aProblems)
+    {
+      if (aProblem.getType ().isDated ())
+        m_aByDate.computeIfAbsent (Long.valueOf (aProblem.getMillis ()), k -> new CommonsArrayList <> ())
+                 .add (aProblem);
+      m_nProblemCount++;
+    }
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _onChange (@Nonnull final String sServiceGroupID, @Nullable final String sServiceInformationID)
+  {
+    if (m_aChangedSGIDs != null)
+    {
+      if (sServiceInformationID == null)
+        m_aChangedSGIDs.add (sServiceGroupID);
+      else
+        m_aChangedSIIDs.add (sServiceInformationID);
+    }
+  }
+
+  private void _setServiceInformation (@Nonnull final ISMPServiceInformation aSI, final boolean bFromIndexAll)
+  {
+    // Determine the problems outside of the lock
+    final ICommonsList <SMPEndpointProblem> aProblems = createProblems (aSI);
+    m_aRWLock.writeLocked ( () -> {
+      if (bFromIndexAll)
+      {
+        // A callback was faster and its state is newer than the snapshot
+        if (m_aChangedSIIDs.contains (aSI.getID ()) || m_aChangedSGIDs.contains (aSI.getServiceGroupID ()))
+          return;
+      }
+      else
+        _onChange (aSI.getServiceGroupID (), aSI.getID ());
+
+      final ICommonsList <SMPEndpointProblem> aOld = m_aPerSG.computeIfAbsent (aSI.getServiceGroupID (),
+                                                                               k -> new CommonsHashMap <> ())
+                                                             .put (aSI.getID (), aProblems);
+      _removeProblems (aOld);
+      _addProblems (aProblems);
+    });
+  }
+
+  private void _removeServiceInformation (@Nonnull final ISMPServiceInformation aSI)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      _onChange (aSI.getServiceGroupID (), aSI.getID ());
+      final ICommonsMap <String, ICommonsList <SMPEndpointProblem>> aPerSI = m_aPerSG.get (aSI.getServiceGroupID ());
+      if (aPerSI != null)
+      {
+        _removeProblems (aPerSI.remove (aSI.getID ()));
+        if (aPerSI.isEmpty ())
+          m_aPerSG.remove (aSI.getServiceGroupID ());
+      }
+    });
+  }
+
+  private void _setServiceGroup (@Nonnull final String sServiceGroupID,
+                                 @Nullable final ICommonsMap <String, ICommonsList <SMPEndpointProblem>> aPerSI)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      _onChange (sServiceGroupID, null);
+      final ICommonsMap <String, ICommonsList <SMPEndpointProblem>> aOld = aPerSI == null || aPerSI.isEmpty () ? m_aPerSG.remove (sServiceGroupID)
+                                                                                                                : m_aPerSG.put (sServiceGroupID,
+                                                                                                                                aPerSI);
+      if (aOld != null)
+        aOld.forEach ( (k, v) -> _removeProblems (v));
+      if (aPerSI != null)
+        aPerSI.forEach ( (k, v) -> _addProblems (v));
+    });
+  }
+
+  /**
+   * Re-read all service information objects of a single service group from
+   * the backend and replace the existing index entries.
+   *
+   * @param sServiceGroupID
+   *        The ID of the service group to re-index. May not be
+   *        <code>null</code>.
+   */
+  public void reindexServiceGroup (@Nonnull final String sServiceGroupID)
+  {
+    ValueEnforcer.notNull (sServiceGroupID, "ServiceGroupID");
+
+    final IParticipantIdentifier aParticipantID = m_aIdentifierFactory.parseParticipantIdentifier (sServiceGroupID);
+    final ISMPServiceGroup aServiceGroup = aParticipantID == null ? null
+                                                                  : m_aServiceGroupMgr.getSMPServiceGroupOfID (aParticipantID);
+    final ICommonsMap <String, ICommonsList <SMPEndpointProblem>> aPerSI = new CommonsHashMap <> ();
+    if (aServiceGroup != null)
+      for (final ISMPServiceInformation aSI : m_aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aServiceGroup))
+        aPerSI.put (aSI.getID (), createProblems (aSI));
+    _setServiceGroup (sServiceGroupID, aPerSI);
+  }
+
+  /**
+   * Index all existing service information objects. This is meant to be
+   * called once on startup, while the callbacks are already active. The
+   * objects read by this method may be older than the ones provided by
+   * concurrent callbacks. Therefore all service information objects and
+   * service groups changed by callbacks while this method is running are
+   * remembered, and the (potentially outdated) versions read by this method
+   * are not indexed for them.
+   */
+  public void indexAll ()
+  {
+    final StopWatch aSW = StopWatch.createdStarted ();
+    final MutableLong aCount = new MutableLong (0);
+    m_aRWLock.writeLocked ( () -> {
+      m_aChangedSIIDs = new CommonsHashSet <> ();
+      m_aChangedSGIDs = new CommonsHashSet <> ();
+    });
+    try
+    {
+      m_aServiceInfoMgr.forEachSMPServiceInformation (aSI -> {
+        if (!m_bClosed)
+        {
+          _setServiceInformation (aSI, true);
+          aCount.inc ();
+        }
+      });
+    }
+    finally
+    {
+      m_aRWLock.writeLocked ( () -> {
+        m_aChangedSIIDs = null;
+        m_aChangedSGIDs = null;
+      });
+    }
+    m_bInitialized = true;
+    LOGGER.info ("Indexed " +
+                 aCount.longValue () +
+                 " service information objects with " +
+                 getProblemCount () +
+                 " potential endpoint problems in " +
+                 aSW.stopAndGetMillis () +
+                 " ms");
+  }
+
+  /**
+   * Call {@link #indexAll()} in a separate daemon thread.
+   */
+  public void startIndexAllInBackground ()
+  {
+    final Thread aThread = new Thread ( () -> {
+      // Required for the SQL version
+      try (final WebScoped aWS = new WebScoped ())
+      {
+        indexAll ();
+      }
+      catch (final RuntimeException ex)
+      {
+        if (!m_bClosed)
+          LOGGER.error ("Failed to index the endpoint problems", ex);
+      }
+    }, "smp-endpoint-problem-index");
+    aThread.setDaemon (true);
+    aThread.start ();
+  }
+
+  /**
+   * Stop a running {@link #indexAll()} as soon as possible. Afterwards the
+   * index may be incomplete.
+   */
+  public void close ()
+  {
+    m_bClosed = true;
+  }
+
+  /**
+   * @return <code>true</code> if all existing service information objects
+   *         were indexed, <code>false</code> if the initial indexing is still
+   *         running and the results may be incomplete.
+   */
+  public boolean isInitialized ()
+  {
+    return m_bInitialized;
+  }
+
+  /**
+   * @return The number of contained problems. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getProblemCount ()
+  {
+    return m_aRWLock.readLockedInt ( () -> m_nProblemCount);
+  }
+
+  /**
+   * Check if the service group with the provided ID has at least one service
+   * information.
+   *
+   * @param sServiceGroupID
+   *        The service group ID to check. May be <code>null</code>.
+   * @return <code>true</code> if at least one service information of this
+   *         service group is indexed.
+   */
+  public boolean containsAnyServiceInformation (@Nullable final String sServiceGroupID)
+  {
+    return m_aRWLock.readLockedBoolean ( () -> m_aPerSG.containsKey (sServiceGroupID));
+  }
+
+  /**
+   * Get all dated problems in the provided date range, sorted ascending by
+   * date time.
+   *
+   * @param nFromMillis
+   *        The start of the range in milliseconds since the epoch, inclusive.
+   * @param nToMillis
+   *        The end of the range in milliseconds since the epoch, exclusive.
+   * @param aFilter
+   *        An optional additional filter. May be <code>null</code>.
+   * @return A list with all matching problems and never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <SMPEndpointProblem> getAllProblemsInRange (final long nFromMillis,
+                                                                  final long nToMillis,
+                                                                  @Nullable final Predicate <? super SMPEndpointProblem> aFilter)
+  {
+    final ICommonsList <SMPEndpointProblem> ret = new CommonsArrayList <> ();
+    if (nFromMillis < nToMillis)
+      m_aRWLock.readLocked ( () -> {
+        for (final ICommonsList <SMPEndpointProblem> aList : m_aByDate.subMap (Long.valueOf (nFromMillis),
+                                                                               true,
+                                                                               Long.valueOf (nToMillis),
+                                                                               false)
+                                                                      .values ())
+          ret.addAll (aList, aFilter);
+      });
+    return ret;
+  }
+
+  /**
+   * Get a page of the dated problems in the provided date range, sorted
+   * ascending by date time. Only the problems of the requested page are
+   * copied.
+   *
+   * @param nFromMillis
+   *        The start of the range in milliseconds since the epoch, inclusive.
+   * @param nToMillis
+   *        The end of the range in milliseconds since the epoch, exclusive.
+   * @param aFilter
+   *        An optional additional filter. May be <code>null</code>.
+   * @param nOffset
+   *        The number of matching problems to skip. Must be &ge; 0.
+   * @param nMaxCount
+   *        The maximum number of problems to return. Must be &gt; 0.
+   * @return A list with at most <code>nMaxCount</code> matching problems and
+   *         never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <SMPEndpointProblem> getProblemsInRange (final long nFromMillis,
+                                                               final long nToMillis,
+                                                               @Nullable final Predicate <? super SMPEndpointProblem> aFilter,
+                                                               @Nonnegative final int nOffset,
+                                                               @Nonnegative final int nMaxCount)
+  {
+    ValueEnforcer.isGE0 (nOffset, "Offset");
+    ValueEnforcer.isGT0 (nMaxCount, "MaxCount");
+
+    final ICommonsList <SMPEndpointProblem> ret = new CommonsArrayList <> ();
+    if (nFromMillis < nToMillis)
+      m_aRWLock.readLocked ( () -> {
+        int nSkip = nOffset;
+        for (final ICommonsList <SMPEndpointProblem> aList : m_aByDate.subMap (Long.valueOf (nFromMillis),
+                                                                               true,
+                                                                               Long.valueOf (nToMillis),
+                                                                               false)
+                                                                      .values ())
+          for (final SMPEndpointProblem aProblem : aList)
+            if (aFilter == null || aFilter.test (aProblem))
+            {
+              if (nSkip > 0)
+                nSkip--;
+              else
+              {
+                ret.add (aProblem);
+                if (ret.size () >= nMaxCount)
+                  return;
+              }
+            }
+      });
+    return ret;
+  }
+
+  /**
+   * @return A list with all problems without a date time (see
+   *         {@link ESMPEndpointProblemType#isDated()}). Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <SMPEndpointProblem> getAllUndatedProblems ()
+  {
+    final ICommonsList <SMPEndpointProblem> ret = new CommonsArrayList <> ();
+    m_aRWLock.readLocked ( () -> {
+      for (final ICommonsMap <String, ICommonsList <SMPEndpointProblem>> aPerSI : m_aPerSG.values ())
+        for (final ICommonsList <SMPEndpointProblem> aList : aPerSI.values ())
+          ret.addAll (aList, x -> !x.getType ().isDated ());
+    });
+    return ret;
+  }
+
+  public void onSMPServiceInformationCreated (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    _setServiceInformation (aServiceInformation, false);
+  }
+
+  public void onSMPServiceInformationUpdated (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    _setServiceInformation (aServiceInformation, false);
+  }
+
+  public void onSMPServiceInformationDeleted (@Nonnull final ISMPServiceInformation aServiceInformation)
+  {
+    _removeServiceInformation (aServiceInformation);
+  }
+
+  public void onSMPServiceGroupCreated (@Nonnull final ISMPServiceGroup aServiceGroup, final boolean bCreateInSML)
+  {
+    // Nothing to index yet
+  }
+
+  public void onSMPServiceGroupUpdated (@Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    // The endpoints are not affected
+  }
+
+  public void onSMPServiceGroupDeleted (@Nonnull final IParticipantIdentifier aParticipantID,
+                                        final boolean bDeleteInSML)
+  {
+    _setServiceGroup (SMPServiceGroup.createSMPServiceGroupID (aParticipantID), null);
+  }
+
+  public void onSMPClusterEvent (@Nonnull final SMPClusterEvent aEvent)
+  {
+    // Redirects and business cards have no endpoints
+    if (aEvent.getObjectType () == ESMPClusterObjectType.SERVICE_GROUP ||
+        aEvent.getObjectType () == ESMPClusterObjectType.SERVICE_INFORMATION)
+      reindexServiceGroup (aEvent.getServiceGroupID ());
+  }
+}
@@ -10,6 +10,7 @@
  */
 package com.helger.phoss.smp.domain.serviceinfo;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +25,7 @@ import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.equals.EqualsHelper;
 import com.helger.commons.hashcode.HashCodeGenerator;
 import com.helger.commons.state.EChange;
 import com.helger.commons.string.StringHelper;
@@ -37,6 +39,7 @@ import com.helger.peppolid.bdxr.smp2.doctype.BDXR2DocumentTypeIdentifier;
 import com.helger.peppolid.bdxr.smp2.participant.BDXR2ParticipantIdentifier;
 import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
 import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.phoss.smp.domain.ISMPHasLastModification;
 import com.helger.phoss.smp.domain.extension.AbstractSMPHasExtension;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.smpclient.peppol.utils.SMPExtensionConverter;
@@ -55,6 +58,7 @@ public class SMPServiceInformation extends AbstractSMPHasExtension implements IS
   private final ISMPServiceGroup m_aServiceGroup;
   private IDocumentTypeIdentifier m_aDocumentTypeIdentifier;
   private final ICommonsOrderedMap <String, SMPProcess> m_aProcesses = new CommonsLinkedHashMap <> ();
+  private LocalDateTime m_aLastModificationDT;
 
   /**
    * Constructor for new service information
@@ -80,6 +84,7 @@ public class SMPServiceInformation extends AbstractSMPHasExtension implements IS
         addProcess (aProcess);
     getExtensions ().setExtensionAsString (sExtension);
     m_sID = aServiceGroup.getID () + "-" + aDocumentTypeIdentifier.getURIEncoded ();
+    m_aLastModificationDT = ISMPHasLastModification.getNextLastModificationDateTime (null);
   }
 
   @Nonnull
@@ -107,6 +112,40 @@ public class SMPServiceInformation extends AbstractSMPHasExtension implements IS
     m_aDocumentTypeIdentifier = aDocumentTypeIdentifier;
   }
 
+  @Nullable
+  public LocalDateTime getLastModificationDateTime ()
+  {
+    return m_aLastModificationDT;
+  }
+
+  /**
+   * Set the last modification date time of this service information. This is
+   * usually only called by the service information managers.
+   *
+   * @param aLastModificationDT
+   *        The last modification date time in UTC. May be <code>null</code>.
+   * @return {@link EChange}
+   * @since 7.1.4
+   */
+  @Nonnull
+  public final EChange setLastModificationDateTime (@Nullable final LocalDateTime aLastModificationDT)
+  {
+    if (EqualsHelper.equals (aLastModificationDT, m_aLastModificationDT))
+      return EChange.UNCHANGED;
+    m_aLastModificationDT = aLastModificationDT;
+    return EChange.CHANGED;
+  }
+
+  /**
+   * Mark this service information as modified now.
+   *
+   * @since 7.1.4
+   */
+  public final void updateLastModificationDateTime ()
+  {
+    m_aLastModificationDT = ISMPHasLastModification.getNextLastModificationDateTime (m_aLastModificationDT);
+  }
+
   @Nonnegative
   public int getProcessCount ()
   {
@@ -307,6 +346,7 @@ public class SMPServiceInformation extends AbstractSMPHasExtension implements IS
                             .append ("ServiceGroup", m_aServiceGroup)
                             .append ("DocumentTypeIdentifier", m_aDocumentTypeIdentifier)
                             .append ("Processes", m_aProcesses)
+                            .append ("LastModificationDT", m_aLastModificationDT)
                             .getToString ();
   }
 
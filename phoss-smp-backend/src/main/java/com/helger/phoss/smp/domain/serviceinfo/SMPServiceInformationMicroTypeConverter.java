@@ -10,6 +10,8 @@
  */
 package com.helger.phoss.smp.domain.serviceinfo;
 
+import java.time.LocalDateTime;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -36,6 +38,7 @@ import com.helger.xml.microdom.util.MicroHelper;
 public final class SMPServiceInformationMicroTypeConverter implements IMicroTypeConverter <SMPServiceInformation>
 {
   private static final String ATTR_SERVICE_GROUP_ID = "servicegroupid";
+  private static final String ATTR_LAST_MOD_DT = "lastmoddt";
   private static final String ELEMENT_DOCUMENT_TYPE_IDENTIFIER = "doctypeidentifier";
   private static final String ELEMENT_PROCESS = "process";
   private static final String ELEMENT_EXTENSION = "extension";
@@ -47,6 +50,8 @@ public final class SMPServiceInformationMicroTypeConverter implements IMicroType
   {
     final IMicroElement aElement = new MicroElement (sNamespaceURI, sTagName);
     aElement.setAttribute (ATTR_SERVICE_GROUP_ID, aValue.getServiceGroupID ());
+    if (aValue.hasLastModificationDateTime ())
+      aElement.setAttributeWithConversion (ATTR_LAST_MOD_DT, aValue.getLastModificationDateTime ());
     aElement.appendChild (MicroTypeConverter.convertToMicroElement (aValue.getDocumentTypeIdentifier (),
                                                                     sNamespaceURI,
                                                                     ELEMENT_DOCUMENT_TYPE_IDENTIFIER));
@@ -75,7 +80,13 @@ public final class SMPServiceInformationMicroTypeConverter implements IMicroType
       aProcesses.add (MicroTypeConverter.convertToNative (aProcess, SMPProcess.class));
     final String sExtension = MicroHelper.getChildTextContentTrimmed (aElement, ELEMENT_EXTENSION);
 
-    return new SMPServiceInformation (aServiceGroup, aDocTypeIdentifier, aProcesses, sExtension);
+    final SMPServiceInformation ret = new SMPServiceInformation (aServiceGroup,
+                                                                 aDocTypeIdentifier,
+                                                                 aProcesses,
+                                                                 sExtension);
+    // May be null for objects stored by older versions
+    ret.setLastModificationDateTime (aElement.getAttributeValueWithConversion (ATTR_LAST_MOD_DT, LocalDateTime.class));
+    return ret;
   }
 
   @Nonnull
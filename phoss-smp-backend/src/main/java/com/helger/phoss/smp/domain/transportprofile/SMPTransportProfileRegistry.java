@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.transportprofile;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.SimpleLock;
+import com.helger.commons.string.StringHelper;
+import com.helger.peppol.smp.ISMPTransportProfile;
+
+/**
+ * An in-memory registry of all transport profiles of a database backed
+ * {@link ISMPTransportProfileManager}. All transport profiles are read once
+ * from the database and kept in an immutable map. Each change creates a new
+ * map (copy-on-write), so that reading threads never need a lock and never
+ * access the database. Optionally the map is read again after a configurable
+ * interval, to see the changes of other nodes sharing the same database.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPTransportProfileRegistry
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPTransportProfileRegistry.class);
+
+  private final Supplier <? extends ICommonsList <? extends ISMPTransportProfile>> m_aLoader;
+  private final long m_nReloadIntervalMillis;
+  private final LongSupplier m_aClock;
+  // Serializes all writers
+  private final SimpleLock m_aLock = new SimpleLock ();
+  // Never modified after publication; null if not yet loaded
+  private volatile ICommonsMap <String, ISMPTransportProfile> m_aMap;
+  private final AtomicLong m_aNextReloadMillis = new AtomicLong (0);
+  private final AtomicInteger m_aLoadCount = new AtomicInteger (0);
+
+  /**
+   * Constructor
+   *
+   * @param aLoader
+   *        The supplier that reads all transport profiles from the database.
+   *        It may return <code>null</code> in case of an error, in which case
+   *        the previously read transport profiles are kept. May not be
+   *        <code>null</code>.
+   * @param nReloadIntervalMillis
+   *        The number of milliseconds after which the transport profiles are
+   *        read again. Values &le; 0 disable the reload.
+   */
+  public SMPTransportProfileRegistry (@Nonnull final Supplier <? extends ICommonsList <? extends ISMPTransportProfile>> aLoader,
+                                      final long nReloadIntervalMillis)
+  {
+    this (aLoader, nReloadIntervalMillis, System::currentTimeMillis);
+  }
+
+  SMPTransportProfileRegistry (@Nonnull final Supplier <? extends ICommonsList <? extends ISMPTransportProfile>> aLoader,
+                               final long nReloadIntervalMillis,
+                               @Nonnull final LongSupplier aClock)
+  {
+    ValueEnforcer.notNull (aLoader, "Loader");
+    ValueEnforcer.notNull (aClock, "Clock");
+    m_aLoader = aLoader;
+    m_nReloadIntervalMillis = nReloadIntervalMillis;
+    m_aClock = aClock;
+  }
+
+  /**
+   * @return The number of milliseconds after which the transport profiles are
+   *         read again. Values &le; 0 mean that there is no reload.
+   */
+  public long getReloadIntervalMillis ()
+  {
+    return m_nReloadIntervalMillis;
+  }
+
+  /**
+   * @return The number of times the transport profiles were successfully read
+   *         via the loader. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getLoadCount ()
+  {
+    return m_aLoadCount.get ();
+  }
+
+  private void _setMap (@Nonnull final ICommonsMap <String, ISMPTransportProfile> aMap)
+  {
+    m_aMap = aMap;
+    m_aNextReloadMillis.set (m_aClock.getAsLong () + m_nReloadIntervalMillis);
+  }
+
+  /**
+   * Read all transport profiles via the loader. Must be called while holding
+   * the lock.
+   *
+   * @return <code>true</code> if the transport profiles were read,
+   *         <code>false</code> if the loader failed.
+   */
+  private boolean _load ()
+  {
+    final ICommonsList <? extends ISMPTransportProfile> aProfiles = m_aLoader.get ();
+    if (aProfiles == null)
+    {
+      LOGGER.warn ("Failed to read the transport profiles" +
+                   (m_aMap == null ? "" : " - keeping the " + m_aMap.size () + " known ones"));
+      return false;
+    }
+
+    final ICommonsMap <String, ISMPTransportProfile> aMap = new CommonsHashMap <> (aProfiles.size ());
+    for (final ISMPTransportProfile aProfile : aProfiles)
+      aMap.put (aProfile.getID (), aProfile);
+    _setMap (aMap);
+    m_aLoadCount.incrementAndGet ();
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Read " + aMap.size () + " transport profiles");
+    return true;
+  }
+
+  @Nonnull
+  private ICommonsMap <String, ISMPTransportProfile> _getMap ()
+  {
+    final ICommonsMap <String, ISMPTransportProfile> ret = m_aMap;
+    if (ret == null)
+    {
+      // Initial load - if it fails, the next access tries again
+      return m_aLock.lockedGet ( () -> {
+        if (m_aMap == null && !_load ())
+          return new CommonsHashMap <> ();
+        return m_aMap;
+      });
+    }
+
+    if (m_nReloadIntervalMillis > 0)
+    {
+      // Check if another node changed the transport profiles - only one thread
+      // performs the reload, all others continue with the current map
+      final long nNow = m_aClock.getAsLong ();
+      final long nNextReload = m_aNextReloadMillis.get ();
+      if (nNow >= nNextReload && m_aNextReloadMillis.compareAndSet (nNextReload, nNow + m_nReloadIntervalMillis))
+        return m_aLock.lockedGet ( () -> {
+          _load ();
+          return m_aMap;
+        });
+    }
+    return ret;
+  }
+
+  /**
+   * Read all transport profiles again from the database. In case of an error,
+   * the previously read transport profiles are kept.
+   */
+  public void reload ()
+  {
+    m_aLock.locked ( () -> {
+      _load ();
+    });
+  }
+
+  /**
+   * Remember a created or updated transport profile. Must be called after the
+   * change was successfully persisted.
+   *
+   * @param aProfile
+   *        The transport profile to remember. May not be <code>null</code>.
+   */
+  public void put (@Nonnull final ISMPTransportProfile aProfile)
+  {
+    ValueEnforcer.notNull (aProfile, "Profile");
+    m_aLock.locked ( () -> {
+      // If nothing was read yet, the profile is contained after the initial
+      // load anyway
+      final ICommonsMap <String, ISMPTransportProfile> aOld = m_aMap;
+      if (aOld != null)
+      {
+        final ICommonsMap <String, ISMPTransportProfile> aNew = aOld.getClone ();
+        aNew.put (aProfile.getID (), aProfile);
+        m_aMap = aNew;
+      }
+    });
+  }
+
+  /**
+   * Forget a deleted transport profile. Must be called after the deletion was
+   * successfully persisted.
+   *
+   * @param sID
+   *        The ID of the deleted transport profile. May be <code>null</code>.
+   */
+  public void remove (@Nullable final String sID)
+  {
+    if (StringHelper.hasNoText (sID))
+      return;
+
+    m_aLock.locked ( () -> {
+      final ICommonsMap <String, ISMPTransportProfile> aOld = m_aMap;
+      if (aOld != null && aOld.containsKey (sID))
+      {
+        final ICommonsMap <String, ISMPTransportProfile> aNew = aOld.getClone ();
+        aNew.remove (sID);
+        m_aMap = aNew;
+      }
+    });
+  }
+
+  /**
+   * @return A copy of all transport profiles. Never <code>null</code> but
+   *         maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPTransportProfile> getAll ()
+  {
+    return _getMap ().copyOfValues ();
+  }
+
+  /**
+   * Get the transport profile with the passed ID.
+   *
+   * @param sID
+   *        The ID to be resolved. May be <code>null</code>.
+   * @return <code>null</code> if no such transport profile exists.
+   */
+  @Nullable
+  public ISMPTransportProfile get (@Nullable final String sID)
+  {
+    if (StringHelper.hasNoText (sID))
+      return null;
+    return _getMap ().get (sID);
+  }
+
+  /**
+   * Check if a transport profile with the passed ID is contained.
+   *
+   * @param sID
+   *        The ID to be checked. May be <code>null</code>.
+   * @return <code>true</code> if the ID is contained, <code>false</code>
+   *         otherwise.
+   */
+  public boolean contains (@Nullable final String sID)
+  {
+    if (StringHelper.hasNoText (sID))
+      return false;
+    return _getMap ().containsKey (sID);
+  }
+
+  /**
+   * @return The number of contained transport profiles. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return _getMap ().size ();
+  }
+}
@@ -17,7 +17,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
@@ -46,8 +50,27 @@ public final class ServiceGroupExport
   private ServiceGroupExport ()
   {}
 
+  private static void _appendServiceInfos (@Nonnull final ICommonsMap <String, IMicroElement> aServiceGroupElements,
+                                          @Nonnull final ICommonsList <ISMPServiceInformation> aServiceInfos)
+  {
+    // All service information objects belong to the same service group
+    if (aServiceInfos.isNotEmpty ())
+    {
+      final IMicroElement eServiceGroup = aServiceGroupElements.get (aServiceInfos.get (0).getServiceGroupID ());
+      if (eServiceGroup != null)
+        for (final ISMPServiceInformation aServiceInfo : aServiceInfos.getSortedInline (ISMPServiceInformation.comparator ()))
+        {
+          eServiceGroup.appendChild (MicroTypeConverter.convertToMicroElement (aServiceInfo,
+                                                                               CSMPExchange.ELEMENT_SERVICEINFO));
+        }
+    }
+  }
+
   /**
-   * Create XML export data for the provided service groups.
+   * Create XML export data for the provided service groups. The service
+   * information is read with a single stream, but the returned document
+   * contains all exported objects, so the memory needed grows with the amount
+   * of exported data.
    *
    * @param aServiceGroups
    *        The service groups to export. May not be <code>null</code> but maybe
@@ -78,20 +101,44 @@ public final class ServiceGroupExport
     final ICommonsList <ISMPServiceGroup> aSortedServiceGroups = aServiceGroups.getSorted (ISMPServiceGroup.comparator ());
 
     // Add all service groups
+    final ICommonsOrderedMap <String, IMicroElement> aServiceGroupElements = new CommonsLinkedHashMap <> ();
     for (final ISMPServiceGroup aServiceGroup : aSortedServiceGroups)
     {
       final IMicroElement eServiceGroup = eRoot.appendChild (MicroTypeConverter.convertToMicroElement (aServiceGroup,
                                                                                                        CSMPExchange.ELEMENT_SERVICEGROUP));
+      aServiceGroupElements.put (aServiceGroup.getID (), eServiceGroup);
+    }
 
-      // Add all service information
-      final ICommonsList <ISMPServiceInformation> aAllServiceInfos = aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aServiceGroup);
-      for (final ISMPServiceInformation aServiceInfo : aAllServiceInfos.getSortedInline (ISMPServiceInformation.comparator ()))
-      {
-        eServiceGroup.appendChild (MicroTypeConverter.convertToMicroElement (aServiceInfo,
-                                                                             CSMPExchange.ELEMENT_SERVICEINFO));
-      }
+    // Add all service information
+    if (aServiceGroups.size () * 2L > SMPMetaManager.getServiceGroupMgr ().getSMPServiceGroupCount ())
+    {
+      // Most service groups are exported - iterate all service information
+      // objects once instead of querying them per service group. All service
+      // information objects of a service group are provided in a row.
+      final ICommonsList <ISMPServiceInformation> aCurrentServiceInfos = new CommonsArrayList <> ();
+      aServiceInfoMgr.forEachSMPServiceInformation (aServiceInfo -> {
+        if (aCurrentServiceInfos.isNotEmpty () &&
+            !aCurrentServiceInfos.get (0).getServiceGroupID ().equals (aServiceInfo.getServiceGroupID ()))
+        {
+          _appendServiceInfos (aServiceGroupElements, aCurrentServiceInfos);
+          aCurrentServiceInfos.clear ();
+        }
+        if (aServiceGroupElements.containsKey (aServiceInfo.getServiceGroupID ()))
+          aCurrentServiceInfos.add (aServiceInfo);
+      });
+      _appendServiceInfos (aServiceGroupElements, aCurrentServiceInfos);
+    }
+    else
+    {
+      for (final ISMPServiceGroup aServiceGroup : aSortedServiceGroups)
+        _appendServiceInfos (aServiceGroupElements,
+                             aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aServiceGroup));
+    }
 
-      // Add all redirects
+    // Add all redirects
+    for (final ISMPServiceGroup aServiceGroup : aSortedServiceGroups)
+    {
+      final IMicroElement eServiceGroup = aServiceGroupElements.get (aServiceGroup.getID ());
       final ICommonsList <ISMPRedirect> aAllRedirects = aRedirectMgr.getAllSMPRedirectsOfServiceGroup (aServiceGroup);
       for (final ISMPRedirect aServiceInfo : aAllRedirects.getSortedInline (ISMPRedirect.comparator ()))
       {
@@ -35,6 +35,7 @@ import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.commons.collection.impl.ICommonsOrderedSet;
 import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.functional.ITriConsumer;
+import com.helger.commons.state.ESuccess;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
@@ -46,9 +47,12 @@ import com.helger.phoss.smp.domain.redirect.SMPRedirectMicroTypeConverter;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupMicroTypeConverter;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformationMicroTypeConverter;
+import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
 import com.helger.phoss.smp.exception.SMPServerException;
 import com.helger.phoss.smp.settings.ISMPSettings;
 import com.helger.photon.security.mgr.PhotonSecurityManager;
@@ -325,6 +329,7 @@ public final class ServiceGroupImport
         final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
         final ISMPRedirectManager aRedirectMgr = SMPMetaManager.getRedirectMgr ();
         final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
+        final ISMPTransportProfileManager aTransportProfileMgr = SMPMetaManager.getTransportProfileMgr ();
 
         // 1. delete all existing service groups to be imported (if overwrite);
         // this may implicitly delete business cards
@@ -357,6 +362,7 @@ public final class ServiceGroupImport
         }
 
         // 2. create all service groups
+        final ICommonsList <ISMPServiceInformation> aImportServiceInfos = new CommonsArrayList <> ();
         for (final Map.Entry <ISMPServiceGroup, InternalImportData> aEntry : aImportServiceGroups.entrySet ())
         {
           final ISMPServiceGroup aImportServiceGroup = aEntry.getKey ();
@@ -388,28 +394,9 @@ public final class ServiceGroupImport
 
           if (aNewServiceGroup != null)
           {
-            // 3a. create all endpoints
+            // 3a. remember all endpoints - they are created at once below
             for (final ISMPServiceInformation aImportServiceInfo : aEntry.getValue ().getServiceInfo ())
-            {
-              try
-              {
-                if (aServiceInfoMgr.mergeSMPServiceInformation (aImportServiceInfo).isSuccess ())
-                {
-                  aLoggerSuccess.accept (sServiceGroupID, "Successfully created Service Information");
-                  aSummary.onSuccess (EImportSummaryAction.CREATE_SI);
-                }
-                else
-                {
-                  aLoggerErrorPI.accept (sServiceGroupID, "Error creating the new Service Information");
-                  aSummary.onError (EImportSummaryAction.CREATE_SI);
-                }
-              }
-              catch (final Exception ex)
-              {
-                aLoggerErrorPIEx.accept (sServiceGroupID, "Error creating the new Service Information", ex);
-                aSummary.onError (EImportSummaryAction.CREATE_SI);
-              }
-            }
+              aImportServiceInfos.add (aImportServiceInfo);
 
             // 3b. create all redirects
             for (final ISMPRedirect aImportRedirect : aEntry.getValue ().getRedirects ())
@@ -442,6 +429,58 @@ public final class ServiceGroupImport
           }
         }
 
+        // 3c. create all endpoints of the created service groups at once
+        if (aImportServiceInfos.isNotEmpty ())
+        {
+          // Ensure all used transport profiles exist
+          for (final ISMPServiceInformation aImportServiceInfo : aImportServiceInfos)
+            for (final ISMPProcess aProcess : aImportServiceInfo.getAllProcesses ())
+              for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
+              {
+                final String sTransportProfile = aEndpoint.getTransportProfile ();
+                if (!aTransportProfileMgr.containsSMPTransportProfileWithID (sTransportProfile) &&
+                    aTransportProfileMgr.createSMPTransportProfile (sTransportProfile,
+                                                                    sTransportProfile + " (automatically created)",
+                                                                    false) != null)
+                {
+                  aLoggerInfo.accept (aImportServiceInfo.getServiceGroupID (),
+                                      "Created missing transport profile '" + sTransportProfile + "'");
+                }
+              }
+
+          ICommonsList <ESuccess> aResults = null;
+          Exception aException = null;
+          try
+          {
+            aResults = aServiceInfoMgr.mergeAllSMPServiceInformation (aImportServiceInfos);
+          }
+          catch (final Exception ex)
+          {
+            aException = ex;
+          }
+
+          for (int i = 0; i < aImportServiceInfos.size (); ++i)
+          {
+            final String sServiceGroupID = aImportServiceInfos.get (i).getServiceGroupID ();
+            if (aException != null)
+            {
+              aLoggerErrorPIEx.accept (sServiceGroupID, "Error creating the new Service Information", aException);
+              aSummary.onError (EImportSummaryAction.CREATE_SI);
+            }
+            else
+              if (aResults.get (i).isSuccess ())
+              {
+                aLoggerSuccess.accept (sServiceGroupID, "Successfully created Service Information");
+                aSummary.onSuccess (EImportSummaryAction.CREATE_SI);
+              }
+              else
+              {
+                aLoggerErrorPI.accept (sServiceGroupID, "Error creating the new Service Information");
+                aSummary.onError (EImportSummaryAction.CREATE_SI);
+              }
+          }
+        }
+
         // 4. delete all existing business cards to be imported (if overwrite)
         // Note: if PD integration is disabled, the list is empty
         for (final Map.Entry <String, ISMPBusinessCard> aEntry : aDeleteBusinessCards.entrySet ())
@@ -13,6 +13,9 @@ package com.helger.phoss.smp.mock;
 import java.util.Locale;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
+import com.helger.phoss.smp.domain.ISMPManagerProvider;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.photon.app.mock.PhotonAppWebTestRule;
 import com.helger.photon.security.CSecurity;
@@ -26,15 +29,38 @@ import com.helger.photon.security.mgr.PhotonSecurityManager;
  */
 public class SMPServerTestRule extends PhotonAppWebTestRule
 {
+  private final ISMPManagerProvider m_aManagerProvider;
+
   public SMPServerTestRule ()
-  {}
+  {
+    this (null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aManagerProvider
+   *        The manager provider to use. May be <code>null</code> to use the
+   *        backend from the configuration.
+   * @since 7.1.4
+   */
+  public SMPServerTestRule (@Nullable final ISMPManagerProvider aManagerProvider)
+  {
+    m_aManagerProvider = aManagerProvider;
+  }
 
   @Override
   public void before ()
   {
     super.before ();
 
-    SMPMetaManager.initBackendFromConfiguration ();
+    if (m_aManagerProvider != null)
+    {
+      SMPMetaManager.setManagerProvider (m_aManagerProvider);
+      SMPMetaManager.getInstance ();
+    }
+    else
+      SMPMetaManager.initBackendFromConfiguration ();
 
     PhotonSecurityManager.getUserMgr ()
                          .createPredefinedUser (CSecurity.USER_ADMINISTRATOR_ID,
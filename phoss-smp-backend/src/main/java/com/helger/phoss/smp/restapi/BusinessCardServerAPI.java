@@ -27,14 +27,17 @@ import com.helger.peppol.businesscard.generic.PDBusinessEntity;
 import com.helger.peppol.businesscard.v3.PD3BusinessCardType;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phoss.smp.domain.SMPIdentifierCache;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardCache;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.user.SMPUserManagerPhoton;
 import com.helger.phoss.smp.exception.SMPBadRequestException;
+import com.helger.phoss.smp.exception.SMPInternalErrorException;
 import com.helger.phoss.smp.exception.SMPNotFoundException;
 import com.helger.phoss.smp.exception.SMPServerException;
 import com.helger.photon.security.user.IUser;
@@ -63,6 +66,40 @@ public final class BusinessCardServerAPI
     m_aAPIProvider = ValueEnforcer.notNull (aDataProvider, "DataProvider");
   }
 
+  @Nonnull
+  private ISMPBusinessCard _getBusinessCard (@Nonnull final String sServiceGroupID) throws SMPServerException
+  {
+    final SMPIdentifierCache aIdentifierCache = SMPMetaManager.getIdentifierCache ();
+    final IParticipantIdentifier aServiceGroupID = aIdentifierCache.parseParticipantIdentifier (sServiceGroupID);
+    if (aServiceGroupID == null)
+    {
+      // Invalid identifier
+      throw SMPBadRequestException.failedToParseSG (sServiceGroupID, m_aAPIProvider.getCurrentURI ());
+    }
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceGroup aServiceGroup = aServiceGroupMgr.getSMPServiceGroupOfID (aServiceGroupID);
+    if (aServiceGroup == null)
+    {
+      // No such service group
+      throw new SMPNotFoundException ("Unknown Service Group '" + sServiceGroupID + "'",
+                                      m_aAPIProvider.getCurrentURI ());
+    }
+    final SMPBusinessCardCache aBusinessCardCache = SMPMetaManager.getBusinessCardCache ();
+    if (aBusinessCardCache == null)
+    {
+      throw new SMPBadRequestException ("This SMP server does not support the Business Card API",
+                                        m_aAPIProvider.getCurrentURI ());
+    }
+    final ISMPBusinessCard aBusinessCard = aBusinessCardCache.getBusinessCard (aServiceGroup.getParticipantIdentifier ());
+    if (aBusinessCard == null)
+    {
+      // No such business card
+      throw new SMPNotFoundException ("No Business Card assigned to Service Group '" + sServiceGroupID + "'",
+                                      m_aAPIProvider.getCurrentURI ());
+    }
+    return aBusinessCard;
+  }
+
   @Nonnull
   public PD3BusinessCardType getBusinessCard (final String sServiceGroupID) throws SMPServerException
   {
@@ -73,37 +110,52 @@ public final class BusinessCardServerAPI
     STATS_COUNTER_INVOCATION.increment (sAction);
     try
     {
-      final IIdentifierFactory aIdentifierFactory = SMPMetaManager.getIdentifierFactory ();
-      final IParticipantIdentifier aServiceGroupID = aIdentifierFactory.parseParticipantIdentifier (sServiceGroupID);
-      if (aServiceGroupID == null)
-      {
-        // Invalid identifier
-        throw SMPBadRequestException.failedToParseSG (sServiceGroupID, m_aAPIProvider.getCurrentURI ());
-      }
-      final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
-      final ISMPServiceGroup aServiceGroup = aServiceGroupMgr.getSMPServiceGroupOfID (aServiceGroupID);
-      if (aServiceGroup == null)
-      {
-        // No such service group
-        throw new SMPNotFoundException ("Unknown Service Group '" + sServiceGroupID + "'",
-                                        m_aAPIProvider.getCurrentURI ());
-      }
-      final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
-      if (aBusinessCardMgr == null)
-      {
-        throw new SMPBadRequestException ("This SMP server does not support the Business Card API",
-                                          m_aAPIProvider.getCurrentURI ());
-      }
-      final ISMPBusinessCard aBusinessCard = aBusinessCardMgr.getSMPBusinessCardOfServiceGroup (aServiceGroup);
-      if (aBusinessCard == null)
+      final ISMPBusinessCard aBusinessCard = _getBusinessCard (sServiceGroupID);
+      LOGGER.info (sLog + " SUCCESS");
+      STATS_COUNTER_SUCCESS.increment (sAction);
+      return aBusinessCard.getAsJAXBObject ();
+    }
+    catch (final SMPServerException ex)
+    {
+      LOGGER.warn (sLog + " ERROR - " + ex.getMessage ());
+      STATS_COUNTER_ERROR.increment (sAction);
+      throw ex;
+    }
+  }
+
+  /**
+   * Get the business card as PD3 XML. The XML is cached together with the
+   * business card, so that it is only created once per change.
+   *
+   * @param sServiceGroupID
+   *        The service group (participant) ID.
+   * @return The PD3 XML bytes. Never <code>null</code>. The returned array must
+   *         not be modified.
+   * @throws SMPServerException
+   *         In case of error
+   * @since 7.1.4
+   */
+  @Nonnull
+  public byte [] getBusinessCardAsBytes (final String sServiceGroupID) throws SMPServerException
+  {
+    final String sLog = LOG_PREFIX + "GET /businesscard/" + sServiceGroupID;
+    final String sAction = "getBusinessCard";
+
+    LOGGER.info (sLog);
+    STATS_COUNTER_INVOCATION.increment (sAction);
+    try
+    {
+      final ISMPBusinessCard aBusinessCard = _getBusinessCard (sServiceGroupID);
+      final byte [] ret = SMPMetaManager.getBusinessCardCache ()
+                                        .getBusinessCardPD3Bytes (aBusinessCard.getParticipantIdentifier ());
+      if (ret == null)
       {
-        // No such business card
-        throw new SMPNotFoundException ("No Business Card assigned to Service Group '" + sServiceGroupID + "'",
-                                        m_aAPIProvider.getCurrentURI ());
+        // Internal error serializing the payload
+        throw new SMPInternalErrorException ("Failed to convert the returned BusinessCard to XML");
       }
       LOGGER.info (sLog + " SUCCESS");
       STATS_COUNTER_SUCCESS.increment (sAction);
-      return aBusinessCard.getAsJAXBObject ();
+      return ret;
     }
     catch (final SMPServerException ex)
     {
@@ -127,7 +179,8 @@ public final class BusinessCardServerAPI
     {
       // Parse and validate identifier
       final IIdentifierFactory aIdentifierFactory = SMPMetaManager.getIdentifierFactory ();
-      final IParticipantIdentifier aServiceGroupID = aIdentifierFactory.parseParticipantIdentifier (sServiceGroupID);
+      final SMPIdentifierCache aIdentifierCache = SMPMetaManager.getIdentifierCache ();
+      final IParticipantIdentifier aServiceGroupID = aIdentifierCache.parseParticipantIdentifier (sServiceGroupID);
       if (aServiceGroupID == null)
       {
         // Invalid identifier
@@ -208,8 +261,8 @@ public final class BusinessCardServerAPI
     STATS_COUNTER_INVOCATION.increment (sAction);
     try
     {
-      final IIdentifierFactory aIdentifierFactory = SMPMetaManager.getIdentifierFactory ();
-      final IParticipantIdentifier aServiceGroupID = aIdentifierFactory.parseParticipantIdentifier (sServiceGroupID);
+      final SMPIdentifierCache aIdentifierCache = SMPMetaManager.getIdentifierCache ();
+      final IParticipantIdentifier aServiceGroupID = aIdentifierCache.parseParticipantIdentifier (sServiceGroupID);
       if (aServiceGroupID == null)
       {
         // Invalid identifier
@@ -13,14 +13,26 @@ package com.helger.phoss.smp.restapi;
 import java.net.URI;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 
 /**
  * This interface must be implemented by all real SMP implementations, so that
  * the REST API can easily be used. It provides information only available in
- * the web application.
+ * the web application.<br>
+ * Additionally all domain objects read by the public GET operations are
+ * retrieved via this interface. As a data provider is only used within a
+ * single request, implementations may remember the loaded objects, so that
+ * e.g. the HTTP validators and the response are created from the same objects
+ * without querying the backend twice.
  *
  * @author Philip Helger
  */
@@ -58,4 +70,69 @@ public interface ISMPServerAPIDataProvider
   @Nonnull
   String getServiceMetadataReferenceHref (@Nonnull IParticipantIdentifier aServiceGroupID,
                                           @Nonnull IDocumentTypeIdentifier aDocTypeID);
+
+  /**
+   * Get the service group with the provided ID.
+   *
+   * @param aServiceGroupID
+   *        The service group ID. Never <code>null</code>.
+   * @return <code>null</code> if no such service group exists.
+   * @since 7.1.4
+   */
+  @Nullable
+  default ISMPServiceGroup getServiceGroupOfID (@Nonnull final IParticipantIdentifier aServiceGroupID)
+  {
+    return SMPMetaManager.getServiceGroupMgr ().getSMPServiceGroupOfID (aServiceGroupID);
+  }
+
+  /**
+   * Get all service information of the provided service group.
+   *
+   * @param aServiceGroup
+   *        The service group to query. Never <code>null</code>.
+   * @return A non-<code>null</code> but maybe empty list.
+   * @since 7.1.4
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  default ICommonsList <ISMPServiceInformation> getAllServiceInformationOfServiceGroup (@Nonnull final ISMPServiceGroup aServiceGroup)
+  {
+    return SMPMetaManager.getServiceInformationMgr ().getAllSMPServiceInformationOfServiceGroup (aServiceGroup);
+  }
+
+  /**
+   * Get the service information of the provided service group and document
+   * type.
+   *
+   * @param aServiceGroup
+   *        The service group to query. Never <code>null</code>.
+   * @param aDocTypeID
+   *        The document type ID to query. Never <code>null</code>.
+   * @return <code>null</code> if no such service information exists.
+   * @since 7.1.4
+   */
+  @Nullable
+  default ISMPServiceInformation getServiceInformationOfServiceGroupAndDocumentType (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                                                                     @Nonnull final IDocumentTypeIdentifier aDocTypeID)
+  {
+    return SMPMetaManager.getServiceInformationMgr ()
+                         .getSMPServiceInformationOfServiceGroupAndDocumentType (aServiceGroup, aDocTypeID);
+  }
+
+  /**
+   * Get the redirect of the provided service group and document type.
+   *
+   * @param aServiceGroup
+   *        The service group to query. Never <code>null</code>.
+   * @param aDocTypeID
+   *        The document type ID to query. Never <code>null</code>.
+   * @return <code>null</code> if no such redirect exists.
+   * @since 7.1.4
+   */
+  @Nullable
+  default ISMPRedirect getRedirectOfServiceGroupAndDocumentType (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                                                 @Nonnull final IDocumentTypeIdentifier aDocTypeID)
+  {
+    return SMPMetaManager.getRedirectCache ().getRedirect (aServiceGroup, aDocTypeID);
+  }
 }
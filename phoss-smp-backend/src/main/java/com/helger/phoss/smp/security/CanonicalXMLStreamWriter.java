@@ -0,0 +1,842 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.security;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.collection.impl.ICommonsSortedMap;
+import com.helger.commons.string.StringHelper;
+
+/**
+ * A non-repairing {@link XMLStreamWriter} that directly emits the inclusive
+ * XML canonical form (C14N 1.0 and 1.1 without comments are identical for a
+ * complete document) in UTF-8. This allows to marshal a JAXB object into its
+ * canonical byte representation without building a DOM first. Comments are
+ * omitted, CDATA sections are emitted as escaped text, empty elements are
+ * written as start-end tag pairs and namespace declarations and attributes are
+ * sorted as required by the C14N specification. Processing instructions
+ * outside of the root element are separated by line feeds and entity
+ * references are replaced by their expansion, which requires internal
+ * entities to be declared via {@link #writeDTD(String)}.<br>
+ * Additionally the offset of the end tag of the root element is remembered, so
+ * that an enveloped signature can be injected afterwards.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@NotThreadSafe
+final class CanonicalXMLStreamWriter implements XMLStreamWriter
+{
+  // An internal general entity declaration, e.g. <!ENTITY name "value">
+  private static final Pattern INTERNAL_ENTITY_DECL = Pattern.compile ("<!ENTITY\\s+([^\\s%\"']+)\\s+(?:\"([^\"]*)\"|'([^']*)')\\s*>");
+  private static final Comparator <Attr> ATTR_COMPARATOR = Comparator.comparing ((final Attr x) -> x.m_sNamespaceURI)
+                                                                     .thenComparing (x -> x.m_sLocalName);
+
+  private static final class Attr
+  {
+    private final String m_sNamespaceURI;
+    private final String m_sQName;
+    private final String m_sLocalName;
+    private final String m_sValue;
+
+    Attr (@Nonnull final String sNamespaceURI,
+          @Nonnull final String sQName,
+          @Nonnull final String sLocalName,
+          @Nonnull final String sValue)
+    {
+      m_sNamespaceURI = sNamespaceURI;
+      m_sQName = sQName;
+      m_sLocalName = sLocalName;
+      m_sValue = sValue;
+    }
+  }
+
+  private static final class Scope
+  {
+    private final Scope m_aParent;
+    private final String m_sQName;
+    // Namespace declarations on this element: prefix to URI ("" is the default
+    // namespace)
+    private ICommonsMap <String, String> m_aDecls;
+
+    Scope (@Nullable final Scope aParent, @Nonnull final String sQName)
+    {
+      m_aParent = aParent;
+      m_sQName = sQName;
+    }
+
+    @Nullable
+    String getNamespaceURI (@Nonnull final String sPrefix)
+    {
+      Scope aCur = this;
+      while (aCur != null)
+      {
+        if (aCur.m_aDecls != null)
+        {
+          final String ret = aCur.m_aDecls.get (sPrefix);
+          if (ret != null)
+            return ret;
+        }
+        aCur = aCur.m_aParent;
+      }
+      return null;
+    }
+
+    @Nullable
+    String getPrefix (@Nonnull final String sNamespaceURI)
+    {
+      Scope aCur = this;
+      while (aCur != null)
+      {
+        if (aCur.m_aDecls != null)
+          for (final Map.Entry <String, String> aEntry : aCur.m_aDecls.entrySet ())
+            if (aEntry.getValue ().equals (sNamespaceURI) &&
+                sNamespaceURI.equals (getNamespaceURI (aEntry.getKey ())))
+              return aEntry.getKey ();
+        aCur = aCur.m_aParent;
+      }
+      return null;
+    }
+  }
+
+  private final OutputStream m_aOS;
+  private final byte [] m_aBuf = new byte [8192];
+  private int m_nBufLen;
+  private long m_nBytesWritten;
+
+  private Scope m_aScope;
+  private boolean m_bStartTagOpen;
+  private boolean m_bEmptyElement;
+  private final List <Attr> m_aAttrs = new ArrayList <> ();
+  private long m_nRootEndTagOffset = -1;
+  private ICommonsMap <String, String> m_aRootNamespaces;
+  private ICommonsList <Attr> m_aRootXMLAttrs;
+  private NamespaceContext m_aNamespaceContext;
+  private final ICommonsMap <String, String> m_aEntities = new CommonsHashMap <> ();
+
+  public CanonicalXMLStreamWriter (@Nonnull final OutputStream aOS)
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    m_aOS = aOS;
+  }
+
+  private void _flushBuffer ()
+  {
+    if (m_nBufLen > 0)
+    {
+      try
+      {
+        m_aOS.write (m_aBuf, 0, m_nBufLen);
+      }
+      catch (final IOException ex)
+      {
+        throw new UncheckedIOException (ex);
+      }
+      m_nBufLen = 0;
+    }
+  }
+
+  private void _writeByte (final int n)
+  {
+    if (m_nBufLen == m_aBuf.length)
+      _flushBuffer ();
+    m_aBuf[m_nBufLen++] = (byte) n;
+    m_nBytesWritten++;
+  }
+
+  private void _writeChar (final char c)
+  {
+    if (c < 0x80)
+      _writeByte (c);
+    else
+      if (c < 0x800)
+      {
+        _writeByte (0xc0 | (c >> 6));
+        _writeByte (0x80 | (c & 0x3f));
+      }
+      else
+      {
+        _writeByte (0xe0 | (c >> 12));
+        _writeByte (0x80 | ((c >> 6) & 0x3f));
+        _writeByte (0x80 | (c & 0x3f));
+      }
+  }
+
+  private void _writeCodePoint (final int nCP)
+  {
+    _writeByte (0xf0 | (nCP >> 18));
+    _writeByte (0x80 | ((nCP >> 12) & 0x3f));
+    _writeByte (0x80 | ((nCP >> 6) & 0x3f));
+    _writeByte (0x80 | (nCP & 0x3f));
+  }
+
+  private void _write (@Nonnull final String s)
+  {
+    _write (s, 0, s.length (), EEscape.NONE);
+  }
+
+  private enum EEscape
+  {
+    NONE,
+    TEXT,
+    ATTR;
+  }
+
+  private void _write (@Nonnull final CharSequence s, final int nStart, final int nEnd, @Nonnull final EEscape eEscape)
+  {
+    for (int i = nStart; i < nEnd; ++i)
+    {
+      final char c = s.charAt (i);
+      if (Character.isHighSurrogate (c) && i + 1 < nEnd && Character.isLowSurrogate (s.charAt (i + 1)))
+      {
+        _writeCodePoint (Character.toCodePoint (c, s.charAt (i + 1)));
+        ++i;
+        continue;
+      }
+
+      if (eEscape != EEscape.NONE)
+      {
+        // Escaping according to C14N section 2.3
+        switch (c)
+        {
+          case '&':
+            _write ("&amp;");
+            continue;
+          case '<':
+            _write ("&lt;");
+            continue;
+          case '\r':
+            _write ("&#xD;");
+            continue;
+          case '>':
+            if (eEscape == EEscape.TEXT)
+            {
+              _write ("&gt;");
+              continue;
+            }
+            break;
+          case '"':
+            if (eEscape == EEscape.ATTR)
+            {
+              _write ("&quot;");
+              continue;
+            }
+            break;
+          case '\t':
+            if (eEscape == EEscape.ATTR)
+            {
+              _write ("&#x9;");
+              continue;
+            }
+            break;
+          case '\n':
+            if (eEscape == EEscape.ATTR)
+            {
+              _write ("&#xA;");
+              continue;
+            }
+            break;
+        }
+      }
+      _writeChar (c);
+    }
+  }
+
+  @Nonnull
+  private static String _getQName (@Nullable final String sPrefix, @Nonnull final String sLocalName)
+  {
+    return StringHelper.hasNoText (sPrefix) ? sLocalName : sPrefix + ':' + sLocalName;
+  }
+
+  private void _closeStartTag ()
+  {
+    if (!m_bStartTagOpen)
+      return;
+    m_bStartTagOpen = false;
+
+    final Scope aScope = m_aScope;
+    final Scope aParent = aScope.m_aParent;
+    _writeByte ('<');
+    _write (aScope.m_sQName);
+
+    // Namespace declarations - only the ones that differ from the parent
+    // scope; the default namespace first, followed by the prefixes in
+    // lexicographic order
+    if (aScope.m_aDecls != null)
+    {
+      final ICommonsSortedMap <String, String> aSorted = new CommonsTreeMap <> (aScope.m_aDecls);
+      for (final Map.Entry <String, String> aEntry : aSorted.entrySet ())
+      {
+        final String sPrefix = aEntry.getKey ();
+        final String sURI = aEntry.getValue ();
+        String sParentURI = aParent == null ? null : aParent.getNamespaceURI (sPrefix);
+        if (sParentURI == null)
+          sParentURI = "";
+        if (sParentURI.equals (sURI))
+          continue;
+
+        _write (sPrefix.isEmpty () ? " xmlns=\"" : " xmlns:" + sPrefix + "=\"");
+        _write (sURI, 0, sURI.length (), EEscape.ATTR);
+        _writeByte ('"');
+      }
+    }
+
+    // Attributes, sorted by namespace URI and local name
+    if (!m_aAttrs.isEmpty ())
+    {
+      m_aAttrs.sort (ATTR_COMPARATOR);
+      for (final Attr aAttr : m_aAttrs)
+      {
+        _writeByte (' ');
+        _write (aAttr.m_sQName);
+        _write ("=\"");
+        _write (aAttr.m_sValue, 0, aAttr.m_sValue.length (), EEscape.ATTR);
+        _writeByte ('"');
+      }
+    }
+    _writeByte ('>');
+
+    if (aParent == null)
+    {
+      // Remember the root element information for the signature
+      m_aRootNamespaces = aScope.m_aDecls == null ? new CommonsHashMap <> () : aScope.m_aDecls.getClone ();
+      m_aRootXMLAttrs = new CommonsArrayList <> ();
+      for (final Attr aAttr : m_aAttrs)
+        if (XMLConstants.XML_NS_URI.equals (aAttr.m_sNamespaceURI))
+          m_aRootXMLAttrs.add (aAttr);
+    }
+    m_aAttrs.clear ();
+
+    if (m_bEmptyElement)
+    {
+      m_bEmptyElement = false;
+      writeEndElement ();
+    }
+  }
+
+  private void _startElement (@Nullable final String sPrefix,
+                              @Nonnull final String sLocalName,
+                              @Nullable final String sNamespaceURI,
+                              final boolean bEmpty)
+  {
+    _closeStartTag ();
+    if (m_aScope == null && m_nRootEndTagOffset >= 0)
+      throw new IllegalStateException ("Only a single root element is allowed");
+
+    String sRealPrefix = sPrefix;
+    if (sRealPrefix == null && sNamespaceURI != null && m_aScope != null)
+      sRealPrefix = m_aScope.getPrefix (sNamespaceURI);
+    m_aScope = new Scope (m_aScope, _getQName (sRealPrefix, sLocalName));
+    m_bStartTagOpen = true;
+    m_bEmptyElement = bEmpty;
+  }
+
+  public void writeStartElement (@Nonnull final String sLocalName)
+  {
+    _startElement (null, sLocalName, null, false);
+  }
+
+  public void writeStartElement (@Nullable final String sNamespaceURI, @Nonnull final String sLocalName)
+  {
+    _startElement (null, sLocalName, sNamespaceURI, false);
+  }
+
+  public void writeStartElement (@Nullable final String sPrefix,
+                                 @Nonnull final String sLocalName,
+                                 @Nullable final String sNamespaceURI)
+  {
+    _startElement (sPrefix, sLocalName, sNamespaceURI, false);
+  }
+
+  public void writeEmptyElement (@Nullable final String sNamespaceURI, @Nonnull final String sLocalName)
+  {
+    _startElement (null, sLocalName, sNamespaceURI, true);
+  }
+
+  public void writeEmptyElement (@Nullable final String sPrefix,
+                                 @Nonnull final String sLocalName,
+                                 @Nullable final String sNamespaceURI)
+  {
+    _startElement (sPrefix, sLocalName, sNamespaceURI, true);
+  }
+
+  public void writeEmptyElement (@Nonnull final String sLocalName)
+  {
+    _startElement (null, sLocalName, null, true);
+  }
+
+  public void writeEndElement ()
+  {
+    _closeStartTag ();
+    if (m_aScope == null)
+      throw new IllegalStateException ("No open element");
+
+    if (m_aScope.m_aParent == null)
+      m_nRootEndTagOffset = m_nBytesWritten;
+    _write ("</");
+    _write (m_aScope.m_sQName);
+    _writeByte ('>');
+    m_aScope = m_aScope.m_aParent;
+  }
+
+  public void writeEndDocument ()
+  {
+    while (m_aScope != null)
+      writeEndElement ();
+  }
+
+  public void close ()
+  {
+    flush ();
+  }
+
+  public void flush ()
+  {
+    _flushBuffer ();
+    try
+    {
+      m_aOS.flush ();
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException (ex);
+    }
+  }
+
+  private void _addAttribute (@Nullable final String sPrefix,
+                              @Nullable final String sNamespaceURI,
+                              @Nonnull final String sLocalName,
+                              @Nonnull final String sValue)
+  {
+    if (!m_bStartTagOpen)
+      throw new IllegalStateException ("No start tag is open to add attribute '" + sLocalName + "'");
+
+    String sRealPrefix = sPrefix;
+    if (sRealPrefix == null && StringHelper.hasText (sNamespaceURI))
+    {
+      if (XMLConstants.XML_NS_URI.equals (sNamespaceURI))
+        sRealPrefix = XMLConstants.XML_NS_PREFIX;
+      else
+        sRealPrefix = m_aScope.getPrefix (sNamespaceURI);
+    }
+    m_aAttrs.add (new Attr (StringHelper.getNotNull (sNamespaceURI),
+                            _getQName (sRealPrefix, sLocalName),
+                            sLocalName,
+                            sValue));
+  }
+
+  public void writeAttribute (@Nonnull final String sLocalName, @Nonnull final String sValue)
+  {
+    _addAttribute (null, null, sLocalName, sValue);
+  }
+
+  public void writeAttribute (@Nullable final String sPrefix,
+                              @Nullable final String sNamespaceURI,
+                              @Nonnull final String sLocalName,
+                              @Nonnull final String sValue)
+  {
+    _addAttribute (sPrefix, sNamespaceURI, sLocalName, sValue);
+  }
+
+  public void writeAttribute (@Nullable final String sNamespaceURI,
+                              @Nonnull final String sLocalName,
+                              @Nonnull final String sValue)
+  {
+    _addAttribute (null, sNamespaceURI, sLocalName, sValue);
+  }
+
+  public void writeNamespace (@Nullable final String sPrefix, @Nullable final String sNamespaceURI)
+  {
+    if (!m_bStartTagOpen)
+      throw new IllegalStateException ("No start tag is open to add namespace '" + sNamespaceURI + "'");
+
+    final String sRealPrefix = StringHelper.getNotNull (sPrefix);
+    if (sRealPrefix.equals (XMLConstants.XMLNS_ATTRIBUTE) || sRealPrefix.equals (XMLConstants.XML_NS_PREFIX))
+      return;
+    if (m_aScope.m_aDecls == null)
+      m_aScope.m_aDecls = new CommonsHashMap <> ();
+    m_aScope.m_aDecls.put (sRealPrefix, StringHelper.getNotNull (sNamespaceURI));
+  }
+
+  public void writeDefaultNamespace (@Nullable final String sNamespaceURI)
+  {
+    writeNamespace (XMLConstants.DEFAULT_NS_PREFIX, sNamespaceURI);
+  }
+
+  public void writeComment (@Nullable final String sData)
+  {
+    // Comments are not part of the canonical form
+    _closeStartTag ();
+  }
+
+  public void writeProcessingInstruction (@Nonnull final String sTarget)
+  {
+    writeProcessingInstruction (sTarget, null);
+  }
+
+  public void writeProcessingInstruction (@Nonnull final String sTarget, @Nullable final String sData)
+  {
+    _closeStartTag ();
+    // C14N section 2.3: processing instructions after the root element are
+    // preceded and the ones before the root element are followed by a line
+    // feed
+    final boolean bAfterRoot = m_aScope == null && m_nRootEndTagOffset >= 0;
+    final boolean bBeforeRoot = m_aScope == null && m_nRootEndTagOffset < 0;
+    if (bAfterRoot)
+      _writeByte ('\n');
+    _write ("<?");
+    _write (sTarget);
+    if (StringHelper.hasText (sData))
+    {
+      // The string value of a PI does not contain the leading whitespace
+      final String sRealData = sData.stripLeading ();
+      if (sRealData.length () > 0)
+      {
+        _writeByte (' ');
+        _write (sRealData);
+      }
+    }
+    _write ("?>");
+    if (bBeforeRoot)
+      _writeByte ('\n');
+  }
+
+  public void writeCData (@Nonnull final String sData)
+  {
+    writeCharacters (sData);
+  }
+
+  public void writeDTD (@Nonnull final String sDTD)
+  {
+    // A DTD is not part of the canonical form, but the internal general
+    // entities are needed to expand entity references
+    final Matcher aMatcher = INTERNAL_ENTITY_DECL.matcher (sDTD);
+    while (aMatcher.find ())
+    {
+      final String sName = aMatcher.group (1);
+      final String sValue = aMatcher.group (2) != null ? aMatcher.group (2) : aMatcher.group (3);
+      // The first declaration is binding
+      m_aEntities.putIfAbsent (sName, sValue);
+    }
+  }
+
+  @Nonnull
+  private String _getExpandedEntity (@Nonnull final String sName, @Nonnull final ICommonsSet <String> aOpenEntities) throws XMLStreamException
+  {
+    if (sName.startsWith ("#"))
+    {
+      // Character reference
+      try
+      {
+        final int nCP = sName.startsWith ("#x") ? Integer.parseInt (sName.substring (2), 16)
+                                                : Integer.parseInt (sName.substring (1));
+        return new String (Character.toChars (nCP));
+      }
+      catch (final IllegalArgumentException ex)
+      {
+        throw new XMLStreamException ("Invalid character reference '&" + sName + ";'", ex);
+      }
+    }
+
+    switch (sName)
+    {
+      case "amp":
+        return "&";
+      case "lt":
+        return "<";
+      case "gt":
+        return ">";
+      case "quot":
+        return "\"";
+      case "apos":
+        return "'";
+    }
+
+    final String sValue = m_aEntities.get (sName);
+    if (sValue == null)
+      throw new XMLStreamException ("The entity '" +
+                                    sName +
+                                    "' is not declared as an internal entity and can therefore not be expanded into the canonical form");
+    if (!aOpenEntities.add (sName))
+      throw new XMLStreamException ("The entity '" + sName + "' references itself");
+
+    // Expand nested references
+    final StringBuilder aSB = new StringBuilder (sValue.length ());
+    int nIndex = 0;
+    while (nIndex < sValue.length ())
+    {
+      final char c = sValue.charAt (nIndex);
+      if (c == '<')
+        throw new XMLStreamException ("The entity '" +
+                                      sName +
+                                      "' contains markup which cannot be expanded into the canonical form");
+      if (c == '&')
+      {
+        final int nEnd = sValue.indexOf (';', nIndex);
+        if (nEnd < 0)
+          throw new XMLStreamException ("The entity '" + sName + "' contains an unterminated reference");
+        aSB.append (_getExpandedEntity (sValue.substring (nIndex + 1, nEnd), aOpenEntities));
+        nIndex = nEnd + 1;
+      }
+      else
+      {
+        aSB.append (c);
+        nIndex++;
+      }
+    }
+    aOpenEntities.remove (sName);
+    return aSB.toString ();
+  }
+
+  public void writeEntityRef (@Nonnull final String sName) throws XMLStreamException
+  {
+    ValueEnforcer.notEmpty (sName, "Name");
+    if (m_aScope == null)
+      throw new XMLStreamException ("Entity references are only allowed inside the root element");
+
+    // The canonical form contains entity references replaced by their
+    // expansion (C14N section 1.1)
+    writeCharacters (_getExpandedEntity (sName, new CommonsHashSet <> ()));
+  }
+
+  public void writeStartDocument ()
+  {
+    // The XML declaration is not part of the canonical form
+  }
+
+  public void writeStartDocument (@Nullable final String sVersion)
+  {
+    // The XML declaration is not part of the canonical form
+  }
+
+  public void writeStartDocument (@Nullable final String sEncoding, @Nullable final String sVersion)
+  {
+    // The XML declaration is not part of the canonical form
+  }
+
+  public void writeCharacters (@Nonnull final String sText)
+  {
+    _closeStartTag ();
+    if (m_aScope == null)
+    {
+      // Whitespace outside of the root element is not part of the canonical
+      // form
+      return;
+    }
+    _write (sText, 0, sText.length (), EEscape.TEXT);
+  }
+
+  public void writeCharacters (@Nonnull final char [] aText, final int nStart, final int nLen)
+  {
+    _closeStartTag ();
+    if (m_aScope == null)
+      return;
+    _write (CharBuffer.wrap (aText), nStart, nStart + nLen, EEscape.TEXT);
+  }
+
+  @Nullable
+  public String getPrefix (@Nonnull final String sNamespaceURI)
+  {
+    if (m_aScope != null)
+    {
+      final String ret = m_aScope.getPrefix (sNamespaceURI);
+      if (ret != null)
+        return ret;
+    }
+    return m_aNamespaceContext == null ? null : m_aNamespaceContext.getPrefix (sNamespaceURI);
+  }
+
+  public void setPrefix (@Nullable final String sPrefix, @Nullable final String sNamespaceURI) throws XMLStreamException
+  {
+    // Non-repairing writer: the prefix binding must be written explicitly
+    // via writeNamespace
+  }
+
+  public void setDefaultNamespace (@Nullable final String sNamespaceURI) throws XMLStreamException
+  {
+    // Non-repairing writer: the default namespace must be written explicitly
+    // via writeDefaultNamespace
+  }
+
+  public void setNamespaceContext (@Nullable final NamespaceContext aNamespaceContext)
+  {
+    m_aNamespaceContext = aNamespaceContext;
+  }
+
+  @Nonnull
+  public NamespaceContext getNamespaceContext ()
+  {
+    return new NamespaceContext ()
+    {
+      public String getNamespaceURI (final String sPrefix)
+      {
+        final String ret = m_aScope == null ? null : m_aScope.getNamespaceURI (sPrefix);
+        if (ret == null && m_aNamespaceContext != null)
+          return m_aNamespaceContext.getNamespaceURI (sPrefix);
+        return ret;
+      }
+
+      public String getPrefix (final String sNamespaceURI)
+      {
+        return CanonicalXMLStreamWriter.this.getPrefix (sNamespaceURI);
+      }
+
+      public Iterator <String> getPrefixes (final String sNamespaceURI)
+      {
+        final String sPrefix = getPrefix (sNamespaceURI);
+        return (sPrefix == null ? new CommonsArrayList <String> () : new CommonsArrayList <> (sPrefix)).iterator ();
+      }
+    };
+  }
+
+  @Nullable
+  public Object getProperty (@Nonnull final String sName)
+  {
+    throw new IllegalArgumentException ("Unsupported property '" + sName + "'");
+  }
+
+  /**
+   * @return The number of bytes written so far, including the ones that are
+   *         not yet flushed to the underlying stream.
+   */
+  long getBytesWritten ()
+  {
+    return m_nBytesWritten;
+  }
+
+  /**
+   * @return The byte offset of the end tag of the root element or -1 if the
+   *         root element was not closed yet.
+   */
+  long getRootEndTagOffset ()
+  {
+    return m_nRootEndTagOffset;
+  }
+
+  /**
+   * @return A copy of all namespace declarations of the root element, with
+   *         the prefix as the key (the empty string for the default namespace)
+   *         and the namespace URI as the value. <code>null</code> if no root
+   *         element was written yet.
+   */
+  @Nullable
+  Map <String, String> getRootNamespaces ()
+  {
+    return m_aRootNamespaces == null ? null : new TreeMap <> (m_aRootNamespaces);
+  }
+
+  /**
+   * @return All attributes in the XML namespace of the root element, with the
+   *         qualified name as the key and the attribute value as the value.
+   *         <code>null</code> if no root element was written yet.
+   */
+  @Nullable
+  Map <String, String> getRootXMLAttributes ()
+  {
+    if (m_aRootXMLAttrs == null)
+      return null;
+    final Map <String, String> ret = new TreeMap <> ();
+    for (final Attr aAttr : m_aRootXMLAttrs)
+      ret.put (aAttr.m_sLocalName, aAttr.m_sValue);
+    return ret;
+  }
+
+  /**
+   * Escape the provided text as element content according to the C14N rules.
+   *
+   * @param s
+   *        The text to escape. May not be <code>null</code>.
+   * @return The escaped text.
+   */
+  @Nonnull
+  static String getEscapedText (@Nonnull final String s)
+  {
+    return _getEscaped (s, EEscape.TEXT);
+  }
+
+  /**
+   * Escape the provided text as attribute value according to the C14N rules.
+   *
+   * @param s
+   *        The text to escape. May not be <code>null</code>.
+   * @return The escaped text.
+   */
+  @Nonnull
+  static String getEscapedAttributeValue (@Nonnull final String s)
+  {
+    return _getEscaped (s, EEscape.ATTR);
+  }
+
+  @Nonnull
+  private static String _getEscaped (@Nonnull final String s, @Nonnull final EEscape eEscape)
+  {
+    final StringBuilder aSB = new StringBuilder (s.length () + 16);
+    for (int i = 0; i < s.length (); ++i)
+    {
+      final char c = s.charAt (i);
+      switch (c)
+      {
+        case '&':
+          aSB.append ("&amp;");
+          break;
+        case '<':
+          aSB.append ("&lt;");
+          break;
+        case '\r':
+          aSB.append ("&#xD;");
+          break;
+        case '>':
+          aSB.append (eEscape == EEscape.TEXT ? "&gt;" : ">");
+          break;
+        case '"':
+          aSB.append (eEscape == EEscape.ATTR ? "&quot;" : "\"");
+          break;
+        case '\t':
+          aSB.append (eEscape == EEscape.ATTR ? "&#x9;" : "\t");
+          break;
+        case '\n':
+          aSB.append (eEscape == EEscape.ATTR ? "&#xA;" : "\n");
+          break;
+        default:
+          aSB.append (c);
+          break;
+      }
+    }
+    return aSB.toString ();
+  }
+}
@@ -11,11 +11,14 @@
 package com.helger.phoss.smp.security;
 
 import java.security.GeneralSecurityException;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStore;
-import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
@@ -25,32 +28,16 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.xml.crypto.MarshalException;
-import javax.xml.crypto.dsig.CanonicalizationMethod;
-import javax.xml.crypto.dsig.DigestMethod;
-import javax.xml.crypto.dsig.Reference;
-import javax.xml.crypto.dsig.SignatureMethod;
-import javax.xml.crypto.dsig.SignedInfo;
-import javax.xml.crypto.dsig.Transform;
-import javax.xml.crypto.dsig.XMLSignature;
 import javax.xml.crypto.dsig.XMLSignatureException;
-import javax.xml.crypto.dsig.XMLSignatureFactory;
-import javax.xml.crypto.dsig.dom.DOMSignContext;
-import javax.xml.crypto.dsig.keyinfo.KeyInfo;
-import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
-import javax.xml.crypto.dsig.keyinfo.X509Data;
-import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
-import javax.xml.crypto.dsig.spec.SignatureMethodParameterSpec;
-import javax.xml.crypto.dsig.spec.TransformParameterSpec;
-
-import org.apache.xml.security.c14n.Canonicalizer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.UsedViaReflection;
-import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.exception.InitializationException;
+import com.helger.commons.string.StringHelper;
 import com.helger.commons.ws.TrustManagerTrustAll;
 import com.helger.peppol.utils.PeppolKeyStoreHelper;
 import com.helger.phoss.smp.ESMPRESTType;
@@ -77,6 +64,8 @@ public final class SMPKeyManager extends AbstractGlobalSingleton
 
   private KeyStore m_aKeyStore;
   private KeyStore.PrivateKeyEntry m_aKeyEntry;
+  // Replaced as a whole - never modified
+  private volatile Map <ESMPRESTType, SMPSigningContext> m_aSigningContexts = Collections.emptyMap ();
 
   private static void _setKeyStoreValid (final boolean bValid)
   {
@@ -89,6 +78,23 @@ public final class SMPKeyManager extends AbstractGlobalSingleton
     s_sInitError = sInitError;
   }
 
+  @Nullable
+  private static Provider _getSignatureProvider ()
+  {
+    final String sProviderName = SMPServerConfiguration.getSignatureProviderName ();
+    if (StringHelper.hasNoText (sProviderName))
+      return null;
+
+    final Provider ret = Security.getProvider (sProviderName);
+    if (ret == null)
+      LOGGER.warn ("The configured signature provider '" +
+                   sProviderName +
+                   "' is not installed - using the default provider instead");
+    else
+      LOGGER.info ("Using signature provider '" + ret.getName () + "' for signing responses");
+    return ret;
+  }
+
   private void _loadKeyStore ()
   {
     // Reset every time
@@ -96,6 +102,7 @@ public final class SMPKeyManager extends AbstractGlobalSingleton
     _loadError (null, null);
     m_aKeyStore = null;
     m_aKeyEntry = null;
+    m_aSigningContexts = Collections.emptyMap ();
 
     // Load the key store and get the signing key
     final LoadedKeyStore aLoadedKeyStore = KeyStoreHelper.loadKeyStore (SMPServerConfiguration.getKeyStoreType (),
@@ -119,6 +126,22 @@ public final class SMPKeyManager extends AbstractGlobalSingleton
     }
 
     m_aKeyEntry = aLoadedKey.getKeyEntry ();
+
+    // Precompute the signing contexts, as they only depend on the key
+    final Provider aSignatureProvider = _getSignatureProvider ();
+    final Map <ESMPRESTType, SMPSigningContext> aSigningContexts = new EnumMap <> (ESMPRESTType.class);
+    for (final ESMPRESTType eRESTType : ESMPRESTType.values ())
+      try
+      {
+        aSigningContexts.put (eRESTType, SMPSigningContext.create (eRESTType, m_aKeyEntry, aSignatureProvider));
+      }
+      catch (final GeneralSecurityException ex)
+      {
+        _loadError (null, "Failed to create the signing context for REST type " + eRESTType + ": " + ex.getMessage ());
+        throw new InitializationException (s_sInitError, ex);
+      }
+    m_aSigningContexts = aSigningContexts;
+
     LOGGER.info ("SMPKeyManager successfully initialized with keystore '" +
                  SMPServerConfiguration.getKeyStorePath () +
                  "' and alias '" +
@@ -215,6 +238,28 @@ public final class SMPKeyManager extends AbstractGlobalSingleton
     return aSSLCtx;
   }
 
+  /**
+   * Get the precomputed signing context for the provided REST type. The
+   * contexts are created when the key store is loaded.
+   *
+   * @param eRESTType
+   *        The REST type to get the context for. May not be <code>null</code>.
+   * @return The signing context and never <code>null</code>.
+   * @throws IllegalStateException
+   *         If the key store was not loaded successfully
+   * @since 7.1.4
+   */
+  @Nonnull
+  public SMPSigningContext getSigningContext (@Nonnull final ESMPRESTType eRESTType)
+  {
+    ValueEnforcer.notNull (eRESTType, "RESTType");
+
+    final SMPSigningContext ret = m_aSigningContexts.get (eRESTType);
+    if (ret == null)
+      throw new IllegalStateException ("No signing context is present for REST type " + eRESTType);
+    return ret;
+  }
+
   /**
    * Sign the provided element with the configured certificate using XMLDSig.
    *
@@ -223,89 +268,19 @@ public final class SMPKeyManager extends AbstractGlobalSingleton
    * @param eRESTType
    *        The REST type current configured. This differences are the hash
    *        algorithm as well as the canonicalization algorithms.
-   * @throws NoSuchAlgorithmException
-   *         An algorithm is not supported by the underlying platform.
-   * @throws InvalidAlgorithmParameterException
-   *         Parameters for certain algorithms are invalid.
    * @throws MarshalException
    *         Marshalling the signature failed
    * @throws XMLSignatureException
    *         Some XMLDSig specific stuff failed
+   * @see #getSigningContext(ESMPRESTType)
    */
-  public void signXML (@Nonnull final Element aElementToSign, @Nonnull final ESMPRESTType eRESTType)
-                                                                                                     throws NoSuchAlgorithmException,
-                                                                                                     InvalidAlgorithmParameterException,
-                                                                                                     MarshalException,
-                                                                                                     XMLSignatureException
+  public void signXML (@Nonnull final Element aElementToSign,
+                       @Nonnull final ESMPRESTType eRESTType) throws MarshalException, XMLSignatureException
   {
     ValueEnforcer.notNull (aElementToSign, "ElementToSign");
     ValueEnforcer.notNull (eRESTType, "RESTType");
 
-    // Create a DOM XMLSignatureFactory that will be used to
-    // generate the enveloped signature.
-    final XMLSignatureFactory aSignatureFactory = XMLSignatureFactory.getInstance ("DOM");
-
-    // Create a Reference to the enveloped document (in this case,
-    // you are signing the whole document, so a URI of "" signifies
-    // that, and also specify the SHA1 digest algorithm and
-    // the ENVELOPED Transform)
-    // * Peppol SMP Spec 1.3.0 changed from SHA-1 to SHA-256
-    final String sDigestAlgo = DigestMethod.SHA256;
-    final Reference aReference = aSignatureFactory.newReference ("",
-                                                                 aSignatureFactory.newDigestMethod (sDigestAlgo, null),
-                                                                 new CommonsArrayList <> (aSignatureFactory.newTransform (Transform.ENVELOPED,
-                                                                                                                          (TransformParameterSpec) null)),
-                                                                 (String) null,
-                                                                 (String) null);
-
-    // Create the SignedInfo.
-    // * Before Peppol SMP Spec 1.2.0 this was EXCLUSIVE, since 1.2.0 it is
-    // INCLUSIVE as of May 1st, 2022
-    // * OASIS BDXR always used INCLUSIVE
-    // * CIPA and this server always used INCLUSIVE, but this was changed for
-    // 5.0.1 to EXCLUSIVE
-    // * Peppol SMP Spec 1.3.0 changed from SHA-1 to SHA-256
-    final String sC18N;
-    final String sSignatureMethod;
-    switch (eRESTType)
-    {
-      case PEPPOL:
-        sC18N = CanonicalizationMethod.INCLUSIVE;
-        sSignatureMethod = SignatureMethod.RSA_SHA256;
-        break;
-      case OASIS_BDXR_V1:
-        sC18N = CanonicalizationMethod.INCLUSIVE;
-        sSignatureMethod = SignatureMethod.RSA_SHA256;
-        break;
-      case OASIS_BDXR_V2:
-        sC18N = Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS;
-        sSignatureMethod = SignatureMethod.RSA_SHA256;
-        break;
-      default:
-        throw new IllegalStateException ("Unsupported REST type");
-    }
-    final SignedInfo aSingedInfo = aSignatureFactory.newSignedInfo (aSignatureFactory.newCanonicalizationMethod (sC18N,
-                                                                                                                 (C14NMethodParameterSpec) null),
-                                                                    aSignatureFactory.newSignatureMethod (sSignatureMethod,
-                                                                                                          (SignatureMethodParameterSpec) null),
-                                                                    new CommonsArrayList <> (aReference));
-
-    // Create the KeyInfo containing the X509Data.
-    final KeyInfoFactory aKeyInfoFactory = aSignatureFactory.getKeyInfoFactory ();
-    final X509Certificate aCert = (X509Certificate) m_aKeyEntry.getCertificate ();
-    final X509Data aX509Data = aKeyInfoFactory.newX509Data (new CommonsArrayList <> (aCert.getSubjectX500Principal ()
-                                                                                          .getName (), aCert));
-    final KeyInfo aKeyInfo = aKeyInfoFactory.newKeyInfo (new CommonsArrayList <> (aX509Data));
-
-    // Create a DOMSignContext and specify the RSA PrivateKey and
-    // location of the resulting XMLSignature's parent element.
-    final DOMSignContext aSignContext = new DOMSignContext (m_aKeyEntry.getPrivateKey (), aElementToSign);
-
-    // Create the XMLSignature, but don't sign it yet.
-    final XMLSignature aSignature = aSignatureFactory.newXMLSignature (aSingedInfo, aKeyInfo);
-
-    // Marshal, generate, and sign the enveloped signature.
-    aSignature.sign (aSignContext);
+    getSigningContext (eRESTType).sign (aElementToSign);
   }
 
   /**
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.security;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.SignatureMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phoss.smp.ESMPRESTType;
+
+/**
+ * The precomputed XMLDSig signing context for a single {@link ESMPRESTType}.
+ * All the algorithm objects as well as the {@link KeyInfo} only depend on the
+ * REST type and on the loaded key, so they are created once when the key store
+ * is (re-)loaded and reused for every signature. Only the {@link Reference}
+ * and the {@link SignedInfo} are created per signature, because the reference
+ * stores the calculated digest value.<br>
+ * The algorithm objects and the {@link KeyInfo} are immutable and the DOM
+ * {@link XMLSignatureFactory} is only used to create new, request specific
+ * objects, so an instance of this class can be used concurrently.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPSigningContext
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPSigningContext.class);
+
+  /**
+   * The DOMSignContext property name to define the {@link Provider} to be used
+   * for the {@link java.security.Signature} calculation. This is not part of
+   * the public XMLDSig API but an implementation detail of the XMLDSig
+   * providers accepted by {@link #isSignatureProviderPropertySupported(String)}.
+   */
+  public static final String PROPERTY_SIGNATURE_PROVIDER = "org.jcp.xml.dsig.internal.dom.SignatureProvider";
+
+  /**
+   * The names of the XMLDSig providers that are known to evaluate
+   * {@link #PROPERTY_SIGNATURE_PROVIDER}: the one of the JDK and the one of
+   * Apache Santuario.
+   */
+  private static final ICommonsSet <String> SIGNATURE_PROVIDER_AWARE_XMLDSIG_PROVIDERS = new CommonsHashSet <> ("XMLDSig",
+                                                                                                                "ApacheXMLDSig");
+
+  private final ESMPRESTType m_eRESTType;
+  private final XMLSignatureFactory m_aSignatureFactory;
+  private final DigestMethod m_aDigestMethod;
+  private final List <Transform> m_aTransforms;
+  private final CanonicalizationMethod m_aCanonicalizationMethod;
+  private final SignatureMethod m_aSignatureMethod;
+  private final KeyInfo m_aKeyInfo;
+  private final PrivateKey m_aPrivateKey;
+  private final X509Certificate m_aCertificate;
+  private final Provider m_aSignatureProvider;
+  private final LocalDateTime m_aCreationDT;
+
+  private SMPSigningContext (@Nonnull final ESMPRESTType eRESTType,
+                             @Nonnull final XMLSignatureFactory aSignatureFactory,
+                             @Nonnull final DigestMethod aDigestMethod,
+                             @Nonnull final List <Transform> aTransforms,
+                             @Nonnull final CanonicalizationMethod aCanonicalizationMethod,
+                             @Nonnull final SignatureMethod aSignatureMethod,
+                             @Nonnull final KeyInfo aKeyInfo,
+                             @Nonnull final PrivateKey aPrivateKey,
+                             @Nonnull final X509Certificate aCertificate,
+                             @Nullable final Provider aSignatureProvider)
+  {
+    m_eRESTType = eRESTType;
+    m_aSignatureFactory = aSignatureFactory;
+    m_aDigestMethod = aDigestMethod;
+    m_aTransforms = aTransforms;
+    m_aCanonicalizationMethod = aCanonicalizationMethod;
+    m_aSignatureMethod = aSignatureMethod;
+    m_aKeyInfo = aKeyInfo;
+    m_aPrivateKey = aPrivateKey;
+    m_aCertificate = aCertificate;
+    m_aSignatureProvider = aSignatureProvider;
+    m_aCreationDT = PDTFactory.getCurrentLocalDateTimeMillisOnlyUTC ();
+  }
+
+  /**
+   * @return The date and time in UTC when this context was created, with
+   *         millisecond precision. Responses signed with this context cannot be
+   *         older than this point in time. Never <code>null</code>.
+   */
+  @Nonnull
+  public LocalDateTime getCreationDateTime ()
+  {
+    return m_aCreationDT;
+  }
+
+  /**
+   * @return The REST type this context was created for. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public ESMPRESTType getRESTType ()
+  {
+    return m_eRESTType;
+  }
+
+  /**
+   * @return The algorithm URI of the reference digest method. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getDigestMethodAlgorithm ()
+  {
+    return m_aDigestMethod.getAlgorithm ();
+  }
+
+  /**
+   * @return The algorithm URI of the SignedInfo canonicalization method. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getCanonicalizationMethodAlgorithm ()
+  {
+    return m_aCanonicalizationMethod.getAlgorithm ();
+  }
+
+  /**
+   * @return The algorithm URI of the signature method. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getSignatureMethodAlgorithm ()
+  {
+    return m_aSignatureMethod.getAlgorithm ();
+  }
+
+  /**
+   * @return The private key used for signing. Never <code>null</code>.
+   */
+  @Nonnull
+  public PrivateKey getPrivateKey ()
+  {
+    return m_aPrivateKey;
+  }
+
+  /**
+   * @return The certificate that is emitted in the KeyInfo. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public X509Certificate getCertificate ()
+  {
+    return m_aCertificate;
+  }
+
+  /**
+   * @return The explicit provider to be used for the signature calculation.
+   *         May be <code>null</code> to use the default provider. This is also
+   *         <code>null</code> if a provider was configured, but the used
+   *         XMLDSig provider does not support to define it.
+   */
+  @Nullable
+  public Provider getSignatureProvider ()
+  {
+    return m_aSignatureProvider;
+  }
+
+  /**
+   * Sign the provided element as an enveloped signature. The resulting
+   * Signature element is appended as the last child of the provided element.
+   *
+   * @param aElementToSign
+   *        The XML element to sign. May not be <code>null</code>.
+   * @throws MarshalException
+   *         Marshalling the signature failed
+   * @throws XMLSignatureException
+   *         Some XMLDSig specific stuff failed
+   */
+  public void sign (@Nonnull final Element aElementToSign) throws MarshalException, XMLSignatureException
+  {
+    ValueEnforcer.notNull (aElementToSign, "ElementToSign");
+
+    // Create a Reference to the enveloped document (in this case,
+    // you are signing the whole document, so a URI of "" signifies
+    // that). The Reference carries the digest value and must therefore be
+    // created per signature.
+    final Reference aReference = m_aSignatureFactory.newReference ("",
+                                                                   m_aDigestMethod,
+                                                                   m_aTransforms,
+                                                                   (String) null,
+                                                                   (String) null);
+    final SignedInfo aSignedInfo = m_aSignatureFactory.newSignedInfo (m_aCanonicalizationMethod,
+                                                                      m_aSignatureMethod,
+                                                                      new CommonsArrayList <> (aReference));
+
+    // Create a DOMSignContext and specify the RSA PrivateKey and
+    // location of the resulting XMLSignature's parent element.
+    final DOMSignContext aSignContext = new DOMSignContext (m_aPrivateKey, aElementToSign);
+    if (m_aSignatureProvider != null)
+      aSignContext.setProperty (PROPERTY_SIGNATURE_PROVIDER, m_aSignatureProvider);
+
+    // Create the XMLSignature, but don't sign it yet.
+    final XMLSignature aSignature = m_aSignatureFactory.newXMLSignature (aSignedInfo, m_aKeyInfo);
+
+    // Marshal, generate, and sign the enveloped signature.
+    aSignature.sign (aSignContext);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("RESTType", m_eRESTType)
+                                       .append ("DigestMethod", getDigestMethodAlgorithm ())
+                                       .append ("CanonicalizationMethod", getCanonicalizationMethodAlgorithm ())
+                                       .append ("SignatureMethod", getSignatureMethodAlgorithm ())
+                                       .appendIfNotNull ("SignatureProvider", m_aSignatureProvider)
+                                       .getToString ();
+  }
+
+  /**
+   * Check if the XMLDSig provider with the passed name is known to support the
+   * definition of the signature provider via
+   * {@link #PROPERTY_SIGNATURE_PROVIDER}.
+   *
+   * @param sXMLDSigProviderName
+   *        The name of the XMLDSig provider. May be <code>null</code>.
+   * @return <code>true</code> if it is supported, <code>false</code> if not.
+   */
+  public static boolean isSignatureProviderPropertySupported (@Nullable final String sXMLDSigProviderName)
+  {
+    return sXMLDSigProviderName != null && SIGNATURE_PROVIDER_AWARE_XMLDSIG_PROVIDERS.contains (sXMLDSigProviderName);
+  }
+
+  /**
+   * Create a new signing context for the provided REST type.
+   *
+   * @param eRESTType
+   *        The REST type to create the context for. The differences are the
+   *        hash algorithm as well as the canonicalization algorithms. May not
+   *        be <code>null</code>.
+   * @param aKeyEntry
+   *        The private key entry to sign with. May not be <code>null</code>.
+   * @param aSignatureProvider
+   *        The explicit provider to be used for the signature calculation. May
+   *        be <code>null</code> to use the default provider. If the XMLDSig
+   *        provider does not support this, a warning is logged and the default
+   *        provider is used.
+   * @return The new signing context and never <code>null</code>.
+   * @throws NoSuchAlgorithmException
+   *         An algorithm is not supported by the underlying platform.
+   * @throws InvalidAlgorithmParameterException
+   *         Parameters for certain algorithms are invalid.
+   */
+  @Nonnull
+  public static SMPSigningContext create (@Nonnull final ESMPRESTType eRESTType,
+                                          @Nonnull final KeyStore.PrivateKeyEntry aKeyEntry,
+                                          @Nullable final Provider aSignatureProvider) throws NoSuchAlgorithmException,
+                                                                                       InvalidAlgorithmParameterException
+  {
+    ValueEnforcer.notNull (eRESTType, "RESTType");
+    ValueEnforcer.notNull (aKeyEntry, "KeyEntry");
+
+    // Create a DOM XMLSignatureFactory that will be used to
+    // generate the enveloped signature.
+    final XMLSignatureFactory aSignatureFactory = XMLSignatureFactory.getInstance ("DOM");
+
+    Provider aEffectiveSignatureProvider = aSignatureProvider;
+    if (aSignatureProvider != null &&
+        !isSignatureProviderPropertySupported (aSignatureFactory.getProvider ().getName ()))
+    {
+      LOGGER.warn ("The XMLDSig provider '" +
+                   aSignatureFactory.getProvider ().getName () +
+                   "' does not support to define the signature provider. Ignoring the configured signature provider '" +
+                   aSignatureProvider.getName () +
+                   "' and using the default one.");
+      aEffectiveSignatureProvider = null;
+    }
+
+    // Specify the digest algorithm and the ENVELOPED Transform of the
+    // Reference
+    // * Peppol SMP Spec 1.3.0 changed from SHA-1 to SHA-256
+    final DigestMethod aDigestMethod = aSignatureFactory.newDigestMethod (DigestMethod.SHA256, null);
+    final Transform aTransform = aSignatureFactory.newTransform (Transform.ENVELOPED, (TransformParameterSpec) null);
+    final List <Transform> aTransforms = new CommonsArrayList <> (aTransform).getAsUnmodifiable ();
+
+    // Create the SignedInfo parts.
+    // * Before Peppol SMP Spec 1.2.0 this was EXCLUSIVE, since 1.2.0 it is
+    // INCLUSIVE as of May 1st, 2022
+    // * OASIS BDXR always used INCLUSIVE
+    // * CIPA and this server always used INCLUSIVE, but this was changed for
+    // 5.0.1 to EXCLUSIVE
+    // * Peppol SMP Spec 1.3.0 changed from SHA-1 to SHA-256
+    final String sC18N;
+    final String sSignatureMethod;
+    switch (eRESTType)
+    {
+      case PEPPOL:
+        sC18N = CanonicalizationMethod.INCLUSIVE;
+        sSignatureMethod = SignatureMethod.RSA_SHA256;
+        break;
+      case OASIS_BDXR_V1:
+        sC18N = CanonicalizationMethod.INCLUSIVE;
+        sSignatureMethod = SignatureMethod.RSA_SHA256;
+        break;
+      case OASIS_BDXR_V2:
+        sC18N = Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS;
+        sSignatureMethod = SignatureMethod.RSA_SHA256;
+        break;
+      default:
+        throw new IllegalStateException ("Unsupported REST type");
+    }
+    final CanonicalizationMethod aC14NMethod = aSignatureFactory.newCanonicalizationMethod (sC18N,
+                                                                                           (C14NMethodParameterSpec) null);
+    final SignatureMethod aSignatureMethod = aSignatureFactory.newSignatureMethod (sSignatureMethod,
+                                                                                   (SignatureMethodParameterSpec) null);
+
+    // Create the KeyInfo containing the X509Data.
+    final KeyInfoFactory aKeyInfoFactory = aSignatureFactory.getKeyInfoFactory ();
+    final X509Certificate aCert = (X509Certificate) aKeyEntry.getCertificate ();
+    final X509Data aX509Data = aKeyInfoFactory.newX509Data (new CommonsArrayList <> (aCert.getSubjectX500Principal ()
+                                                                                          .getName (), aCert));
+    final KeyInfo aKeyInfo = aKeyInfoFactory.newKeyInfo (new CommonsArrayList <> (aX509Data));
+
+    return new SMPSigningContext (eRESTType,
+                                  aSignatureFactory,
+                                  aDigestMethod,
+                                  aTransforms,
+                                  aC14NMethod,
+                                  aSignatureMethod,
+                                  aKeyInfo,
+                                  aKeyEntry.getPrivateKey (),
+                                  aCert,
+                                  aEffectiveSignatureProvider);
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.XMLConstants;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.jaxb.GenericJAXBMarshaller;
+
+/**
+ * Create enveloped XMLDSig signed responses without a DOM round trip. The JAXB
+ * object is marshalled once into its canonical form (see
+ * {@link CanonicalXMLStreamWriter}), the reference digest is calculated over
+ * these bytes and the Signature element is injected as the last child of the
+ * root element. The resulting bytes are exactly the ones a verifier
+ * canonicalizes, so the digest and signature values are identical to the ones
+ * created by {@link SMPSigningContext#sign(org.w3c.dom.Element)} for the same
+ * JAXB object.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPXMLStreamSigner
+{
+  private static final String DSIG_NS = XMLSignature.XMLNS;
+
+  private SMPXMLStreamSigner ()
+  {}
+
+  @Nonnull
+  private static String _getDigestAlgorithm (@Nonnull final String sDigestMethod) throws NoSuchAlgorithmException
+  {
+    switch (sDigestMethod)
+    {
+      case DigestMethod.SHA1:
+        return "SHA-1";
+      case DigestMethod.SHA256:
+        return "SHA-256";
+      case DigestMethod.SHA512:
+        return "SHA-512";
+      default:
+        throw new NoSuchAlgorithmException ("Unsupported digest method '" + sDigestMethod + "'");
+    }
+  }
+
+  @Nonnull
+  private static String _getSignatureAlgorithm (@Nonnull final String sSignatureMethod) throws NoSuchAlgorithmException
+  {
+    switch (sSignatureMethod)
+    {
+      case SignatureMethod.RSA_SHA1:
+        return "SHA1withRSA";
+      case SignatureMethod.RSA_SHA256:
+        return "SHA256withRSA";
+      case SignatureMethod.RSA_SHA512:
+        return "SHA512withRSA";
+      default:
+        throw new NoSuchAlgorithmException ("Unsupported signature method '" + sSignatureMethod + "'");
+    }
+  }
+
+  /**
+   * Get the canonical form of the SignedInfo element, as it is seen by a
+   * verifier. Inclusive canonicalization of the SignedInfo element as a
+   * document subset renders all namespace declarations that are in scope, and
+   * inherits the attributes in the XML namespace from the ancestors.
+   */
+  @Nonnull
+  private static String _getCanonicalSignedInfo (@Nonnull final String sSignedInfoContent,
+                                                 @Nonnull final String sC14NMethod,
+                                                 @Nonnull final Map <String, String> aRootNamespaces,
+                                                 @Nonnull final Map <String, String> aRootXMLAttrs)
+  {
+    // The Signature element declares the XMLDSig namespace as the default
+    // namespace
+    aRootNamespaces.put (XMLConstants.DEFAULT_NS_PREFIX, DSIG_NS);
+
+    final StringBuilder aSB = new StringBuilder (sSignedInfoContent.length () + 512);
+    aSB.append ("<SignedInfo");
+    // Default namespace first, followed by the prefixes in lexicographic order
+    for (final Map.Entry <String, String> aEntry : aRootNamespaces.entrySet ())
+    {
+      final String sPrefix = aEntry.getKey ();
+      aSB.append (sPrefix.isEmpty () ? " xmlns=\"" : " xmlns:" + sPrefix + "=\"")
+         .append (CanonicalXMLStreamWriter.getEscapedAttributeValue (aEntry.getValue ()))
+         .append ('"');
+    }
+    // Inherited xml:* attributes. C14N 1.0 inherits all of them, C14N 1.1 only
+    // the "simple inheritable" ones. As the Signature element itself has no
+    // xml:base, the xml:base fix-up is the value of the root element
+    for (final Map.Entry <String, String> aEntry : aRootXMLAttrs.entrySet ())
+    {
+      final String sLocalName = aEntry.getKey ();
+      if (sC14NMethod.equals (Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS) && sLocalName.equals ("id"))
+        continue;
+      aSB.append (" xml:")
+         .append (sLocalName)
+         .append ("=\"")
+         .append (CanonicalXMLStreamWriter.getEscapedAttributeValue (aEntry.getValue ()))
+         .append ('"');
+    }
+    aSB.append ('>').append (sSignedInfoContent).append ("</SignedInfo>");
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  private static String _getAlgorithmElement (@Nonnull final String sElementName, @Nonnull final String sAlgorithm)
+  {
+    return "<" +
+           sElementName +
+           " Algorithm=\"" +
+           CanonicalXMLStreamWriter.getEscapedAttributeValue (sAlgorithm) +
+           "\"></" +
+           sElementName +
+           ">";
+  }
+
+  /**
+   * Marshal the provided JAXB object and create the signed XML bytes.
+   *
+   * @param <T>
+   *        The JAXB type to be signed
+   * @param aMarshaller
+   *        The marshaller to be used. Should not use an XML Schema, as the
+   *        Signature element is added later. May not be <code>null</code>.
+   * @param aObject
+   *        The JAXB object to be marshalled and signed. May not be
+   *        <code>null</code>.
+   * @param aSigningContext
+   *        The signing context to be used. May not be <code>null</code>.
+   * @return The UTF-8 encoded bytes of the signed XML. Never
+   *         <code>null</code>.
+   * @throws GeneralSecurityException
+   *         In case the digest or the signature could not be created
+   * @throws IllegalStateException
+   *         If the JAXB object could not be marshalled
+   */
+  @Nonnull
+  public static <T> byte [] getSignedXML (@Nonnull final GenericJAXBMarshaller <T> aMarshaller,
+                                          @Nonnull final T aObject,
+                                          @Nonnull final SMPSigningContext aSigningContext) throws GeneralSecurityException
+  {
+    ValueEnforcer.notNull (aMarshaller, "Marshaller");
+    ValueEnforcer.notNull (aObject, "Object");
+    ValueEnforcer.notNull (aSigningContext, "SigningContext");
+
+    final String sC14NMethod = aSigningContext.getCanonicalizationMethodAlgorithm ();
+    if (!sC14NMethod.equals (CanonicalizationMethod.INCLUSIVE) &&
+        !sC14NMethod.equals (Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS))
+      throw new NoSuchAlgorithmException ("Unsupported canonicalization method '" + sC14NMethod + "'");
+
+    // Marshal the object once in its canonical form
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (16 * 1024);
+    final CanonicalXMLStreamWriter aWriter = new CanonicalXMLStreamWriter (aBAOS);
+    if (aMarshaller.write (aObject, aWriter).isFailure ())
+      throw new IllegalStateException ("Failed to marshal the object to sign");
+    aWriter.close ();
+
+    final int nRootEndTagOffset = (int) aWriter.getRootEndTagOffset ();
+    if (nRootEndTagOffset < 0)
+      throw new IllegalStateException ("The marshalled object has no root element");
+    final byte [] aCanonicalBytes = aBAOS.directGetBuffer ();
+    final int nCanonicalLen = aBAOS.size ();
+
+    // The enveloped Signature is not yet contained, so the reference digest
+    // is the digest over the complete canonical document
+    final MessageDigest aMD = MessageDigest.getInstance (_getDigestAlgorithm (aSigningContext.getDigestMethodAlgorithm ()));
+    aMD.update (aCanonicalBytes, 0, nCanonicalLen);
+    final String sDigestValue = Base64.getEncoder ().encodeToString (aMD.digest ());
+
+    final String sSignedInfoContent = _getAlgorithmElement ("CanonicalizationMethod", sC14NMethod) +
+                                      _getAlgorithmElement ("SignatureMethod",
+                                                            aSigningContext.getSignatureMethodAlgorithm ()) +
+                                      "<Reference URI=\"\"><Transforms>" +
+                                      _getAlgorithmElement ("Transform", Transform.ENVELOPED) +
+                                      "</Transforms>" +
+                                      _getAlgorithmElement ("DigestMethod",
+                                                            aSigningContext.getDigestMethodAlgorithm ()) +
+                                      "<DigestValue>" +
+                                      sDigestValue +
+                                      "</DigestValue></Reference>";
+
+    // Sign the canonical SignedInfo
+    final Provider aSignatureProvider = aSigningContext.getSignatureProvider ();
+    final String sSignatureAlgorithm = _getSignatureAlgorithm (aSigningContext.getSignatureMethodAlgorithm ());
+    final Signature aSignature = aSignatureProvider != null ? Signature.getInstance (sSignatureAlgorithm,
+                                                                                    aSignatureProvider)
+                                                            : Signature.getInstance (sSignatureAlgorithm);
+    aSignature.initSign (aSigningContext.getPrivateKey ());
+    aSignature.update (_getCanonicalSignedInfo (sSignedInfoContent,
+                                                sC14NMethod,
+                                                aWriter.getRootNamespaces (),
+                                                aWriter.getRootXMLAttributes ()).getBytes (StandardCharsets.UTF_8));
+    final String sSignatureValue = Base64.getEncoder ().encodeToString (aSignature.sign ());
+
+    // Build the Signature element as it is embedded in the document. The
+    // namespace declarations of the root element are inherited.
+    final String sRootDefaultNS = aWriter.getRootNamespaces ().get (XMLConstants.DEFAULT_NS_PREFIX);
+    final StringBuilder aSB = new StringBuilder (sSignedInfoContent.length () + 4096);
+    aSB.append ("<Signature");
+    if (!DSIG_NS.equals (sRootDefaultNS))
+      aSB.append (" xmlns=\"").append (DSIG_NS).append ('"');
+    aSB.append ("><SignedInfo>")
+       .append (sSignedInfoContent)
+       .append ("</SignedInfo><SignatureValue>")
+       .append (sSignatureValue)
+       .append ("</SignatureValue><KeyInfo><X509Data><X509SubjectName>")
+       .append (CanonicalXMLStreamWriter.getEscapedText (aSigningContext.getCertificate ()
+                                                                        .getSubjectX500Principal ()
+                                                                        .getName ()))
+       .append ("</X509SubjectName><X509Certificate>")
+       .append (Base64.getEncoder ().encodeToString (aSigningContext.getCertificate ().getEncoded ()))
+       .append ("</X509Certificate></X509Data></KeyInfo></Signature>");
+    final byte [] aSignatureBytes = aSB.toString ().getBytes (StandardCharsets.UTF_8);
+
+    // Inject the Signature before the end tag of the root element
+    final byte [] ret = new byte [nCanonicalLen + aSignatureBytes.length];
+    System.arraycopy (aCanonicalBytes, 0, ret, 0, nRootEndTagOffset);
+    System.arraycopy (aSignatureBytes, 0, ret, nRootEndTagOffset, aSignatureBytes.length);
+    System.arraycopy (aCanonicalBytes,
+                      nRootEndTagOffset,
+                      ret,
+                      nRootEndTagOffset + aSignatureBytes.length,
+                      nCanonicalLen - nRootEndTagOffset);
+    return ret;
+  }
+}
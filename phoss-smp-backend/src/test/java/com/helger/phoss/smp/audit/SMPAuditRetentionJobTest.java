@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.audit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.state.ESuccess;
+import com.helger.photon.audit.AuditItem;
+import com.helger.photon.audit.EAuditActionType;
+import com.helger.photon.audit.IAuditItem;
+
+/**
+ * Test class for class {@link SMPAuditRetentionJob}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPAuditRetentionJobTest
+{
+  private static final class MockStore implements ISMPAuditStore
+  {
+    private final ICommonsList <IAuditItem> m_aItems = new CommonsArrayList <> ();
+
+    @Nonnull
+    public ICommonsList <IAuditItem> getAllAuditItemsInRange (@Nullable final LocalDateTime aFrom,
+                                                              @Nullable final LocalDateTime aTo,
+                                                              final int nMaxItems)
+    {
+      return m_aItems.getAll (x -> (aFrom == null || !x.getDateTime ().isBefore (aFrom)) &&
+                                   (aTo == null || x.getDateTime ().isBefore (aTo)));
+    }
+
+    public long deleteAllAuditItemsBefore (@Nonnull final LocalDateTime aDT)
+    {
+      final int nOld = m_aItems.size ();
+      m_aItems.removeIf (x -> x.getDateTime ().isBefore (aDT));
+      return nOld - m_aItems.size ();
+    }
+  }
+
+  @Test
+  public void testBasic ()
+  {
+    final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ();
+    final MockStore aStore = new MockStore ();
+    aStore.m_aItems.add (new AuditItem (aNow.minusDays (40), "u", EAuditActionType.CREATE, ESuccess.SUCCESS, "a"));
+    aStore.m_aItems.add (new AuditItem (aNow.minusDays (10), "u", EAuditActionType.MODIFY, ESuccess.SUCCESS, "b"));
+    aStore.m_aItems.add (new AuditItem (aNow, "u", EAuditActionType.DELETE, ESuccess.SUCCESS, "c"));
+
+    try (final SMPAuditRetentionJob aJob = new SMPAuditRetentionJob (aStore, Duration.ofDays (30)))
+    {
+      assertEquals (1, aJob.deleteExpiredAuditItems ());
+      assertEquals (1, aJob.getDeletedCount ());
+      assertEquals (2, aStore.m_aItems.size ());
+
+      // Nothing more to delete
+      assertEquals (0, aJob.deleteExpiredAuditItems ());
+      assertEquals (1, aStore.getAllAuditItemsInRange (aNow.minusDays (20), aNow, 10).size ());
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsCopyOnWriteArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.state.EChange;
+import com.helger.commons.state.ESuccess;
+import com.helger.photon.audit.EAuditActionType;
+import com.helger.photon.audit.IAuditItem;
+
+/**
+ * Test class for class {@link SMPBatchingAuditor}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPBatchingAuditorTest
+{
+  private static void _audit (final SMPBatchingAuditor aAuditor, final int nCount)
+  {
+    for (int i = 0; i < nCount; ++i)
+      aAuditor.createAuditItem (EAuditActionType.CREATE, ESuccess.SUCCESS, null, "item", Integer.valueOf (i));
+  }
+
+  @Test
+  public void testAsynchronous ()
+  {
+    final ICommonsList <Integer> aBatchSizes = new CommonsCopyOnWriteArrayList <> ();
+    final ICommonsList <IAuditItem> aWritten = new CommonsCopyOnWriteArrayList <> ();
+    final SMPBatchingAuditor aAuditor = new SMPBatchingAuditor ( () -> "user",
+                                                                x -> {
+                                                                  aBatchSizes.add (Integer.valueOf (x.size ()));
+                                                                  aWritten.addAll (x);
+                                                                  return ESuccess.SUCCESS;
+                                                                },
+                                                                ESMPAuditDurability.ASYNCHRONOUS,
+                                                                100,
+                                                                10,
+                                                                Duration.ofSeconds (10));
+    _audit (aAuditor, 95);
+    assertEquals (EChange.CHANGED, aAuditor.stop ());
+    assertEquals (EChange.UNCHANGED, aAuditor.stop ());
+
+    // Everything was written on stop
+    assertEquals (95, aWritten.size ());
+    assertEquals (95, aAuditor.getWrittenCount ());
+    assertEquals (0, aAuditor.getQueueLength ());
+    assertEquals (0, aAuditor.getDroppedCount ());
+    assertEquals (0, aAuditor.getFailedCount ());
+    assertTrue (aBatchSizes.containsNone (x -> x.intValue () > 10));
+    assertTrue (aAuditor.getBatchCount () >= 10);
+    assertEquals ("user", aWritten.getFirstOrNull ().getUserID ());
+
+    // Written synchronously after stop
+    _audit (aAuditor, 1);
+    assertEquals (96, aWritten.size ());
+  }
+
+  @Test
+  public void testStopWhileAuditing () throws Exception
+  {
+    final AtomicInteger aWritten = new AtomicInteger (0);
+    final SMPBatchingAuditor aAuditor = new SMPBatchingAuditor ( () -> "user", x -> {
+      aWritten.addAndGet (x.size ());
+      return ESuccess.SUCCESS;
+    }, ESMPAuditDurability.ASYNCHRONOUS, 10, 5, Duration.ofMillis (5));
+
+    final int nThreads = 4;
+    final int nPerThread = 500;
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    for (int i = 0; i < nThreads; ++i)
+      aES.submit ( () -> _audit (aAuditor, nPerThread));
+    // Stop while the other threads are still auditing
+    Thread.sleep (5);
+    aAuditor.stop ();
+    ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+
+    // Nothing was lost - neither queued nor written synchronously after stop
+    assertEquals (nThreads * nPerThread, aWritten.get ());
+    assertEquals (nThreads * nPerThread, aAuditor.getWrittenCount ());
+    assertEquals (0, aAuditor.getQueueLength ());
+  }
+
+  @Test
+  public void testSynchronous ()
+  {
+    final ICommonsList <IAuditItem> aWritten = new CommonsArrayList <> ();
+    final SMPBatchingAuditor aAuditor = new SMPBatchingAuditor ( () -> "user", x -> {
+      aWritten.addAll (x);
+      return ESuccess.SUCCESS;
+    }, ESMPAuditDurability.SYNCHRONOUS, 10, 10, Duration.ofSeconds (1));
+    _audit (aAuditor, 5);
+    // Written immediately
+    assertEquals (5, aWritten.size ());
+    assertEquals (5, aAuditor.getBatchCount ());
+    aAuditor.stop ();
+  }
+
+  @Test
+  public void testFailure ()
+  {
+    final SMPBatchingAuditor aAuditor = new SMPBatchingAuditor ( () -> "user",
+                                                                x -> ESuccess.FAILURE,
+                                                                ESMPAuditDurability.BEST_EFFORT,
+                                                                10,
+                                                                5,
+                                                                Duration.ofMillis (10));
+    _audit (aAuditor, 8);
+    aAuditor.stop ();
+    assertEquals (0, aAuditor.getWrittenCount ());
+    assertEquals (8, aAuditor.getFailedCount () + aAuditor.getDroppedCount ());
+  }
+
+  @Test
+  public void testWriterSurvivesError () throws Exception
+  {
+    final AtomicBoolean aThrown = new AtomicBoolean (false);
+    final SMPBatchingAuditor aAuditor = new SMPBatchingAuditor ( () -> "user", x -> {
+      if (aThrown.compareAndSet (false, true))
+        throw new AssertionError ("Writer failure");
+      return ESuccess.SUCCESS;
+    }, ESMPAuditDurability.ASYNCHRONOUS, 100, 1, Duration.ofMillis (5));
+    _audit (aAuditor, 1);
+
+    // Wait until the first batch failed
+    final long nDeadline = System.currentTimeMillis () + 10_000;
+    while (aAuditor.getFailedCount () == 0 && System.currentTimeMillis () < nDeadline)
+      Thread.sleep (1);
+    assertEquals (1, aAuditor.getFailedCount ());
+
+    // The background writer is still running
+    _audit (aAuditor, 5);
+    while (aAuditor.getWrittenCount () < 5 && System.currentTimeMillis () < nDeadline)
+      Thread.sleep (1);
+    assertEquals (5, aAuditor.getWrittenCount ());
+    assertEquals (EChange.CHANGED, aAuditor.stop ());
+  }
+
+  @Test
+  public void testStuckWriter ()
+  {
+    final Thread aAuditingThread = Thread.currentThread ();
+    final CountDownLatch aRelease = new CountDownLatch (1);
+    final AtomicInteger aSynchronous = new AtomicInteger (0);
+    final SMPBatchingAuditor aAuditor = new SMPBatchingAuditor ( () -> "user", x -> {
+      if (Thread.currentThread () == aAuditingThread)
+        aSynchronous.addAndGet (x.size ());
+      else
+      {
+        // The background writer hangs
+        try
+        {
+          aRelease.await ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+      }
+      return ESuccess.SUCCESS;
+    }, ESMPAuditDurability.ASYNCHRONOUS, 2, 1, Duration.ofMillis (10));
+
+    // Does not block forever, although the queue is full
+    _audit (aAuditor, 10);
+    assertTrue (aSynchronous.get () > 0);
+    assertTrue (aAuditor.getBlockedCount () > 0);
+
+    aRelease.countDown ();
+    aAuditor.stop ();
+    assertEquals (10, aAuditor.getWrittenCount ());
+    assertEquals (0, aAuditor.getQueueLength ());
+  }
+}
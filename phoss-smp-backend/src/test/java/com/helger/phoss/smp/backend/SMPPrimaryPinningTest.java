@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.helger.scope.mgr.ScopeManager;
+import com.helger.servlet.mock.MockHttpServletRequest;
+import com.helger.servlet.mock.MockServletContext;
+import com.helger.web.scope.mgr.WebScopeManager;
+import com.helger.web.scope.mgr.WebScoped;
+
+/**
+ * Test class for class {@link SMPPrimaryPinning}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPPrimaryPinningTest
+{
+  private static final long PIN_MILLIS = 1_000;
+
+  @BeforeClass
+  public static void beforeClass ()
+  {
+    WebScopeManager.onGlobalBegin (MockServletContext.create ());
+  }
+
+  @AfterClass
+  public static void afterClass ()
+  {
+    WebScopeManager.onGlobalEnd ();
+  }
+
+  @Nonnull
+  private static WebScoped _request (@Nonnull final String sRemoteAddr)
+  {
+    final MockHttpServletRequest aRequest = new MockHttpServletRequest ();
+    aRequest.setRemoteAddr (sRemoteAddr);
+    return new WebScoped (aRequest);
+  }
+
+  @Test
+  public void testRouting ()
+  {
+    final AtomicLong aNow = new AtomicLong (1_000_000);
+    final SMPPrimaryPinning aPinning = new SMPPrimaryPinning ("test", PIN_MILLIS, aNow::get);
+
+    // No request - nothing to remember
+    assertNull (ScopeManager.getRequestScopeOrNull ());
+    aPinning.onWrite ();
+    assertFalse (aPinning.isPrimaryRequired ());
+    assertEquals (0, aPinning.getPinnedClientCount ());
+
+    try (final WebScoped aWS = _request ("10.0.0.1"))
+    {
+      assertFalse (aPinning.isPrimaryRequired ());
+      aPinning.onWrite ();
+      // Same request
+      assertTrue (aPinning.isPrimaryRequired ());
+    }
+
+    // Next request of the same client within the pinning duration
+    aNow.addAndGet (PIN_MILLIS - 1);
+    try (final WebScoped aWS = _request ("10.0.0.1"))
+    {
+      assertTrue (aPinning.isPrimaryRequired ());
+    }
+
+    // Other clients are not affected
+    try (final WebScoped aWS = _request ("10.0.0.2"))
+    {
+      assertFalse (aPinning.isPrimaryRequired ());
+    }
+
+    // Expired
+    aNow.addAndGet (1);
+    try (final WebScoped aWS = _request ("10.0.0.1"))
+    {
+      assertFalse (aPinning.isPrimaryRequired ());
+    }
+    assertEquals (0, aPinning.getPinnedClientCount ());
+  }
+
+  @Test
+  public void testPinningDisabled ()
+  {
+    final SMPPrimaryPinning aPinning = new SMPPrimaryPinning ("test", 0);
+    try (final WebScoped aWS = _request ("10.0.0.1"))
+    {
+      aPinning.onWrite ();
+      // The same request still reads its own writes
+      assertTrue (aPinning.isPrimaryRequired ());
+    }
+    try (final WebScoped aWS = _request ("10.0.0.1"))
+    {
+      assertFalse (aPinning.isPrimaryRequired ());
+    }
+  }
+
+  @Test
+  public void testCleanup ()
+  {
+    final AtomicLong aNow = new AtomicLong (1_000_000);
+    final SMPPrimaryPinning aPinning = new SMPPrimaryPinning ("test", PIN_MILLIS, aNow::get);
+    for (int i = 0; i < SMPPrimaryPinning.CLEANUP_THRESHOLD; ++i)
+      aPinning.onWrite ("client" + i);
+    assertEquals (SMPPrimaryPinning.CLEANUP_THRESHOLD, aPinning.getPinnedClientCount ());
+
+    aNow.addAndGet (PIN_MILLIS);
+    aPinning.onWrite ("new");
+    // Only the new entry is left
+    assertEquals (1, aPinning.getPinnedClientCount ());
+    assertTrue (aPinning.isPinned ("new"));
+    assertFalse (aPinning.isPinned ("client0"));
+    assertFalse (aPinning.isPinned (null));
+  }
+}
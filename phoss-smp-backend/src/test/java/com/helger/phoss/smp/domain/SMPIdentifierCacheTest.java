@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.timing.StopWatch;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+
+/**
+ * Test class for class {@link SMPIdentifierCache}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPIdentifierCacheTest
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPIdentifierCacheTest.class);
+
+  @Test
+  public void testBasic ()
+  {
+    final SMPIdentifierCache aCache = new SMPIdentifierCache (PeppolIdentifierFactory.INSTANCE, 100);
+    assertTrue (aCache.isEnabled ());
+    assertNull (aCache.parseParticipantIdentifier (null));
+    assertNull (aCache.parseParticipantIdentifier (""));
+    assertNull (aCache.parseParticipantIdentifier ("invalid"));
+    assertNull (aCache.parseParticipantIdentifier ("foo::9915:test"));
+    assertEquals (0, aCache.getParticipantIdentifierCount ());
+
+    final IParticipantIdentifier aPI = aCache.parseParticipantIdentifier ("iso6523-actorid-upis::9915:test");
+    assertNotNull (aPI);
+    assertEquals ("iso6523-actorid-upis::9915:test", aPI.getURIEncoded ());
+    assertSame (aPI, aCache.parseParticipantIdentifier ("iso6523-actorid-upis::9915:test"));
+    // Case insensitive - same canonical object
+    assertSame (aPI, aCache.parseParticipantIdentifier ("iso6523-actorid-upis::9915:TEST"));
+
+    final IDocumentTypeIdentifier aDT = aCache.parseDocumentTypeIdentifier ("busdox-docid-qns::urn:oasis:names:specification:ubl:schema:xsd:Invoice-2::Invoice##urn:cen.eu:en16931:2017::2.1");
+    assertNotNull (aDT);
+    assertSame (aDT, aCache.parseDocumentTypeIdentifier (aDT.getURIEncoded ()));
+
+    aCache.clear ();
+    assertEquals (0, aCache.getParticipantIdentifierCount ());
+    assertEquals (0, aCache.getDocumentTypeIdentifierCount ());
+  }
+
+  @Test
+  public void testBounded ()
+  {
+    final SMPIdentifierCache aCache = new SMPIdentifierCache (PeppolIdentifierFactory.INSTANCE, 10);
+    for (int i = 0; i < 1000; ++i)
+      assertNotNull (aCache.parseParticipantIdentifier ("iso6523-actorid-upis::9915:test" + i));
+    assertTrue (aCache.getParticipantIdentifierCount () <= 10);
+
+    // Disabled
+    final SMPIdentifierCache aDisabled = new SMPIdentifierCache (PeppolIdentifierFactory.INSTANCE, 0);
+    assertNotNull (aDisabled.parseParticipantIdentifier ("iso6523-actorid-upis::9915:test"));
+    assertEquals (0, aDisabled.getParticipantIdentifierCount ());
+  }
+
+  /**
+   * Compare the cached and uncached parsing for a Zipf distributed workload,
+   * where a few participants are queried very often.
+   */
+  @Test
+  public void testZipfWorkload ()
+  {
+    final int nDistinct = 5_000;
+    final int nOperations = 200_000;
+    final String [] aIDs = new String [nDistinct];
+    final double [] aCumulative = new double [nDistinct];
+    double dSum = 0;
+    for (int i = 0; i < nDistinct; ++i)
+    {
+      aIDs[i] = "iso6523-actorid-upis::9915:participant" + i;
+      dSum += 1d / (i + 1);
+      aCumulative[i] = dSum;
+    }
+    final Random aRandom = new Random (42);
+    final String [] aWorkload = new String [nOperations];
+    for (int i = 0; i < nOperations; ++i)
+    {
+      final int nIndex = Arrays.binarySearch (aCumulative, aRandom.nextDouble () * dSum);
+      aWorkload[i] = aIDs[nIndex >= 0 ? nIndex : Math.min (-nIndex - 1, nDistinct - 1)];
+    }
+
+    final SMPIdentifierCache aUncached = new SMPIdentifierCache (PeppolIdentifierFactory.INSTANCE, 0);
+    final SMPIdentifierCache aCached = new SMPIdentifierCache (PeppolIdentifierFactory.INSTANCE, 10_000);
+
+    // Warm up
+    for (final String s : aWorkload)
+    {
+      final IParticipantIdentifier aExpected = aUncached.parseParticipantIdentifier (s);
+      assertTrue (aExpected.hasSameContent (aCached.parseParticipantIdentifier (s)));
+    }
+
+    StopWatch aSW = StopWatch.createdStarted ();
+    for (final String s : aWorkload)
+      aUncached.parseParticipantIdentifier (s);
+    aSW.stop ();
+    final long nUncachedNanos = aSW.getNanos ();
+
+    aSW = StopWatch.createdStarted ();
+    for (final String s : aWorkload)
+      aCached.parseParticipantIdentifier (s);
+    aSW.stop ();
+    final long nCachedNanos = aSW.getNanos ();
+
+    LOGGER.info ("Parsing " +
+                 nOperations +
+                 " Zipf distributed participant identifiers: uncached " +
+                 (nUncachedNanos / nOperations) +
+                 " ns/op, cached " +
+                 (nCachedNanos / nOperations) +
+                 " ns/op");
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.state.EChange;
+import com.helger.commons.timing.StopWatch;
+import com.helger.peppol.businesscard.v3.PD3BusinessCardMarshaller;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterChangeType;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.convert.MicroTypeConverter;
+
+/**
+ * Test class for class {@link SMPBusinessCardCache}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPBusinessCardCacheTest
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPBusinessCardCacheTest.class);
+
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  /**
+   * Stores the business cards serialized and creates new objects on each read,
+   * like the database backends do.
+   */
+  private static final class SerializingBusinessCardManager implements ISMPBusinessCardManager
+  {
+    private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+    private final ICommonsMap <String, IMicroElement> m_aMap = new CommonsHashMap <> ();
+    private final AtomicInteger m_aReadCount = new AtomicInteger ();
+    private final AtomicInteger m_aLatestReadCount = new AtomicInteger ();
+    private final SMPBusinessCardSearchIndex m_aSearchIndex = new SMPBusinessCardSearchIndex (this);
+
+    public CallbackList <ISMPBusinessCardCallback> bcCallbacks ()
+    {
+      return m_aCBs;
+    }
+
+    public ISMPBusinessCard createOrUpdateSMPBusinessCard (@Nonnull final IParticipantIdentifier aParticipantID,
+                                                           @Nonnull final Collection <SMPBusinessCardEntity> aEntities)
+    {
+      final SMPBusinessCard ret = new SMPBusinessCard (aParticipantID, aEntities);
+      m_aMap.put (ret.getID (), MicroTypeConverter.convertToMicroElement (ret, "bc"));
+      m_aCBs.forEach (x -> x.onSMPBusinessCardCreatedOrUpdated (ret));
+      return ret;
+    }
+
+    public EChange deleteSMPBusinessCard (final ISMPBusinessCard aSMPBusinessCard)
+    {
+      if (m_aMap.remove (aSMPBusinessCard.getID ()) == null)
+        return EChange.UNCHANGED;
+      m_aCBs.forEach (x -> x.onSMPBusinessCardDeleted (aSMPBusinessCard));
+      return EChange.CHANGED;
+    }
+
+    public ICommonsList <ISMPBusinessCard> getAllSMPBusinessCards ()
+    {
+      throw new UnsupportedOperationException ();
+    }
+
+    public ICommonsSet <String> getAllSMPBusinessCardIDs ()
+    {
+      return m_aMap.copyOfKeySet ();
+    }
+
+    public ISMPBusinessCard getSMPBusinessCardOfID (final IParticipantIdentifier aID)
+    {
+      m_aReadCount.incrementAndGet ();
+      final IMicroElement e = aID == null ? null : m_aMap.get (SMPServiceGroup.createSMPServiceGroupID (aID));
+      return e == null ? null : MicroTypeConverter.convertToNative (e, SMPBusinessCard.class);
+    }
+
+    @Override
+    public ISMPBusinessCard getLatestSMPBusinessCardOfID (final IParticipantIdentifier aID)
+    {
+      m_aLatestReadCount.incrementAndGet ();
+      return getSMPBusinessCardOfID (aID);
+    }
+
+    public long getSMPBusinessCardCount ()
+    {
+      return m_aMap.size ();
+    }
+
+    public SMPBusinessCardSearchIndex getSearchIndex ()
+    {
+      return m_aSearchIndex;
+    }
+  }
+
+  @Nonnull
+  private static IParticipantIdentifier _createPI (final int nIndex)
+  {
+    return new SimpleParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME, "9915:bc" + nIndex);
+  }
+
+  @Nonnull
+  private static ICommonsList <SMPBusinessCardEntity> _createEntities (final int nCount)
+  {
+    final ICommonsList <SMPBusinessCardEntity> ret = new CommonsArrayList <> ();
+    for (int i = 0; i < nCount; ++i)
+    {
+      final SMPBusinessCardEntity aEntity = new SMPBusinessCardEntity ();
+      aEntity.names ().add (new SMPBusinessCardName ("Entity " + i, "en"));
+      aEntity.names ().add (new SMPBusinessCardName ("Entität " + i, "de"));
+      aEntity.setCountryCode ("AT");
+      aEntity.setGeographicalInformation ("Vienna\nStreet " + i);
+      aEntity.identifiers ().add (new SMPBusinessCardIdentifier ("VAT", "ATU" + i));
+      aEntity.identifiers ().add (new SMPBusinessCardIdentifier ("GLN", "9" + i));
+      aEntity.websiteURIs ().add ("https://www.example.org/" + i);
+      aEntity.contacts ().add (new SMPBusinessCardContact ("Sales", "Name " + i, "+43 1 " + i, "x@example.org"));
+      aEntity.setAdditionalInformation ("Additional information " + i);
+      aEntity.setRegistrationDate (LocalDate.of (2024, 1, 1));
+      ret.add (aEntity);
+    }
+    return ret;
+  }
+
+  @Test
+  public void testBasic ()
+  {
+    final SerializingBusinessCardManager aMgr = new SerializingBusinessCardManager ();
+    final SMPBusinessCardCache aCache = new SMPBusinessCardCache (aMgr, 10, 0);
+    aMgr.bcCallbacks ().add (aCache);
+    assertTrue (aCache.isEnabled ());
+    assertEquals (0, aCache.size ());
+
+    final IParticipantIdentifier aPI = _createPI (0);
+    assertNull (aCache.getBusinessCard (null));
+    assertNull (aCache.getBusinessCard (aPI));
+    // Not existing business cards are not cached
+    assertEquals (0, aCache.size ());
+    assertNull (aCache.getBusinessCardPD3Bytes (aPI));
+
+    final ISMPBusinessCard aCreated = aMgr.createOrUpdateSMPBusinessCard (aPI, _createEntities (3));
+    final ISMPBusinessCard aBC = aCache.getBusinessCard (aPI);
+    assertNotNull (aBC);
+    assertEquals (aCreated, aBC);
+    assertEquals (1, aCache.size ());
+    assertSame (aBC, aCache.getBusinessCard (aPI));
+
+    final byte [] aBytes = aCache.getBusinessCardPD3Bytes (aPI);
+    assertNotNull (aBytes);
+    assertArrayEquals (new PD3BusinessCardMarshaller ().getAsBytes (aCreated.getAsJAXBObject ()), aBytes);
+    assertSame (aBytes, aCache.getBusinessCardPD3Bytes (aPI));
+    assertEquals (3, aMgr.m_aReadCount.get ());
+
+    // Update invalidates
+    final ISMPBusinessCard aUpdated = aMgr.createOrUpdateSMPBusinessCard (aPI, _createEntities (2));
+    assertEquals (0, aCache.size ());
+    assertEquals (aUpdated, aCache.getBusinessCard (aPI));
+    assertNotSame (aBytes, aCache.getBusinessCardPD3Bytes (aPI));
+    assertEquals (4, aMgr.m_aReadCount.get ());
+    // The cache is always filled with the latest version
+    assertEquals (4, aMgr.m_aLatestReadCount.get ());
+
+    // Cluster event of another node invalidates
+    aCache.onSMPClusterEvent (SMPClusterEvent.createNew ("other",
+                                                         ESMPClusterObjectType.SERVICE_GROUP,
+                                                         ESMPClusterChangeType.UPDATED,
+                                                         aUpdated.getID (),
+                                                         null));
+    assertEquals (1, aCache.size ());
+    aCache.onSMPClusterEvent (SMPClusterEvent.createNew ("other",
+                                                         ESMPClusterObjectType.BUSINESS_CARD,
+                                                         ESMPClusterChangeType.UPDATED,
+                                                         aUpdated.getID (),
+                                                         null));
+    assertEquals (0, aCache.size ());
+
+    // Delete invalidates
+    assertNotNull (aCache.getBusinessCard (aPI));
+    assertTrue (aMgr.deleteSMPBusinessCard (aUpdated).isChanged ());
+    assertEquals (0, aCache.size ());
+    assertNull (aCache.getBusinessCard (aPI));
+    assertEquals (4, aCache.getHitCount ());
+  }
+
+  @Test
+  public void testDisabled ()
+  {
+    final SerializingBusinessCardManager aMgr = new SerializingBusinessCardManager ();
+    final SMPBusinessCardCache aCache = new SMPBusinessCardCache (aMgr, 0, 0);
+    aMgr.bcCallbacks ().add (aCache);
+    assertFalse (aCache.isEnabled ());
+
+    final IParticipantIdentifier aPI = _createPI (0);
+    aMgr.createOrUpdateSMPBusinessCard (aPI, _createEntities (1));
+    assertNotNull (aCache.getBusinessCard (aPI));
+    assertNotNull (aCache.getBusinessCardPD3Bytes (aPI));
+    assertEquals (0, aCache.size ());
+    assertEquals (2, aMgr.m_aReadCount.get ());
+    assertEquals (0, aMgr.m_aLatestReadCount.get ());
+  }
+
+  @Test
+  public void testTTL ()
+  {
+    // No callbacks registered - all changes are done by another node
+    final SerializingBusinessCardManager aMgr = new SerializingBusinessCardManager ();
+    final AtomicLong aNow = new AtomicLong (1_000_000);
+    final SMPBusinessCardCache aCache = new SMPBusinessCardCache (aMgr, 10, 60_000, aNow::get);
+
+    final IParticipantIdentifier aPI = _createPI (0);
+    aMgr.createOrUpdateSMPBusinessCard (aPI, _createEntities (1));
+    assertEquals (1, aCache.getBusinessCard (aPI).getEntityCount ());
+
+    aMgr.createOrUpdateSMPBusinessCard (aPI, _createEntities (2));
+    aNow.addAndGet (60_000 - 1);
+    assertEquals (1, aCache.getBusinessCard (aPI).getEntityCount ());
+    assertEquals (1, aMgr.m_aLatestReadCount.get ());
+
+    // Read again after the time to live
+    aNow.addAndGet (1);
+    assertEquals (2, aCache.getBusinessCard (aPI).getEntityCount ());
+    assertEquals (2, aCache.getBusinessCard (aPI).getEntityCount ());
+    assertEquals (2, aMgr.m_aLatestReadCount.get ());
+    assertEquals (1, aCache.size ());
+
+    // Deleted business cards are removed after the time to live
+    aMgr.deleteSMPBusinessCard (aCache.getBusinessCard (aPI));
+    aNow.addAndGet (60_000);
+    assertNull (aCache.getBusinessCard (aPI));
+    assertEquals (0, aCache.size ());
+  }
+
+  @Test
+  public void testEviction ()
+  {
+    final SerializingBusinessCardManager aMgr = new SerializingBusinessCardManager ();
+    final SMPBusinessCardCache aCache = new SMPBusinessCardCache (aMgr, 4, 0);
+    aMgr.bcCallbacks ().add (aCache);
+    for (int i = 0; i < 10; ++i)
+      aMgr.createOrUpdateSMPBusinessCard (_createPI (i), _createEntities (1));
+
+    final IParticipantIdentifier aHotPI = _createPI (0);
+    assertNotNull (aCache.getBusinessCard (aHotPI));
+    for (int i = 1; i < 10; ++i)
+    {
+      assertNotNull (aCache.getBusinessCard (_createPI (i)));
+      // Frequently used business cards stay in the cache
+      assertNotNull (aCache.getBusinessCard (aHotPI));
+      assertTrue (aCache.size () <= 4);
+    }
+    assertEquals (10, aMgr.m_aReadCount.get ());
+    assertEquals (9, aCache.getHitCount ());
+
+    // Removal also affects the old generation
+    aMgr.deleteSMPBusinessCard (aCache.getBusinessCard (_createPI (8)));
+    assertNull (aCache.getBusinessCard (_createPI (8)));
+    aCache.clear ();
+    assertEquals (0, aCache.size ());
+  }
+
+  @Test
+  public void testGetLoad ()
+  {
+    final int nCards = 20;
+    final int nEntities = 200;
+    final int nRequests = 100;
+
+    final SerializingBusinessCardManager aMgr = new SerializingBusinessCardManager ();
+    for (int i = 0; i < nCards; ++i)
+      aMgr.createOrUpdateSMPBusinessCard (_createPI (i), _createEntities (nEntities));
+
+    final SMPBusinessCardCache aUncached = new SMPBusinessCardCache (aMgr, 0, 0);
+    final SMPBusinessCardCache aCached = new SMPBusinessCardCache (aMgr, 100, 0);
+
+    // Warm up
+    for (int i = 0; i < nCards; ++i)
+      assertArrayEquals (aUncached.getBusinessCardPD3Bytes (_createPI (i)),
+                         aCached.getBusinessCardPD3Bytes (_createPI (i)));
+
+    // Each request reads the business card twice (ETag and response body)
+    StopWatch aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < nRequests; ++i)
+    {
+      final IParticipantIdentifier aPI = _createPI (i % nCards);
+      assertNotNull (aUncached.getBusinessCard (aPI));
+      assertNotNull (aUncached.getBusinessCardPD3Bytes (aPI));
+    }
+    aSW.stop ();
+    final long nUncachedNanos = aSW.getNanos ();
+
+    aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < nRequests; ++i)
+    {
+      final IParticipantIdentifier aPI = _createPI (i % nCards);
+      assertNotNull (aCached.getBusinessCard (aPI));
+      assertNotNull (aCached.getBusinessCardPD3Bytes (aPI));
+    }
+    aSW.stop ();
+    final long nCachedNanos = aSW.getNanos ();
+    assertEquals (nRequests * 2, aCached.getHitCount ());
+
+    LOGGER.info (nRequests +
+                 " business card GETs with " +
+                 nEntities +
+                 " entities each: uncached " +
+                 (nUncachedNanos / nRequests / 1_000) +
+                 " microseconds/request, cached " +
+                 (nCachedNanos / nRequests / 1_000) +
+                 " microseconds/request");
+  }
+}
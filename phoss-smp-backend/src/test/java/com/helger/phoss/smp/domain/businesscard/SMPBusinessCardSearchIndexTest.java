@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.businesscard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsNavigableMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.state.EChange;
+import com.helger.commons.timing.StopWatch;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterChangeType;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+
+/**
+ * Test class for class {@link SMPBusinessCardSearchIndex}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPBusinessCardSearchIndexTest
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPBusinessCardSearchIndexTest.class);
+  private static final String [] CITIES = { "Vienna", "Graz", "Linz", "Salzburg", "Innsbruck" };
+
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  private static final class InMemoryBusinessCardManager implements ISMPBusinessCardManager
+  {
+    private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+    private final ICommonsNavigableMap <String, ISMPBusinessCard> m_aMap = new CommonsTreeMap <> ();
+    private final SMPBusinessCardSearchIndex m_aSearchIndex;
+    // Called after getAllSMPBusinessCards took its snapshot
+    private Runnable m_aAfterGetAll;
+
+    InMemoryBusinessCardManager ()
+    {
+      this (true);
+    }
+
+    InMemoryBusinessCardManager (final boolean bSearchIndex)
+    {
+      m_aSearchIndex = bSearchIndex ? new SMPBusinessCardSearchIndex (this) : null;
+      if (m_aSearchIndex != null)
+        m_aCBs.add (m_aSearchIndex);
+    }
+
+    public CallbackList <ISMPBusinessCardCallback> bcCallbacks ()
+    {
+      return m_aCBs;
+    }
+
+    public ISMPBusinessCard createOrUpdateSMPBusinessCard (@Nonnull final IParticipantIdentifier aParticipantID,
+                                                           @Nonnull final Collection <SMPBusinessCardEntity> aEntities)
+    {
+      final SMPBusinessCard ret = new SMPBusinessCard (aParticipantID, aEntities);
+      m_aMap.put (ret.getID (), ret);
+      m_aCBs.forEach (x -> x.onSMPBusinessCardCreatedOrUpdated (ret));
+      return ret;
+    }
+
+    public EChange deleteSMPBusinessCard (final ISMPBusinessCard aSMPBusinessCard)
+    {
+      if (m_aMap.remove (aSMPBusinessCard.getID ()) == null)
+        return EChange.UNCHANGED;
+      m_aCBs.forEach (x -> x.onSMPBusinessCardDeleted (aSMPBusinessCard));
+      return EChange.CHANGED;
+    }
+
+    public ICommonsList <ISMPBusinessCard> getAllSMPBusinessCards ()
+    {
+      final ICommonsList <ISMPBusinessCard> ret = m_aMap.copyOfValues ();
+      if (m_aAfterGetAll != null)
+        m_aAfterGetAll.run ();
+      return ret;
+    }
+
+    public ICommonsSet <String> getAllSMPBusinessCardIDs ()
+    {
+      return m_aMap.copyOfKeySet ();
+    }
+
+    public ISMPBusinessCard getSMPBusinessCardOfID (final IParticipantIdentifier aID)
+    {
+      return aID == null ? null : m_aMap.get (SMPServiceGroup.createSMPServiceGroupID (aID));
+    }
+
+    public long getSMPBusinessCardCount ()
+    {
+      return m_aMap.size ();
+    }
+
+    public SMPBusinessCardSearchIndex getSearchIndex ()
+    {
+      return m_aSearchIndex;
+    }
+  }
+
+  @Nonnull
+  private static IParticipantIdentifier _createPI (final int nIndex)
+  {
+    return new SimpleParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME,
+                                            "9915:bc" + nIndex);
+  }
+
+  @Nonnull
+  private static SMPBusinessCardEntity _createEntity (final int nIndex)
+  {
+    final SMPBusinessCardEntity ret = new SMPBusinessCardEntity ();
+    ret.names ().add (new SMPBusinessCardName ("Company " + nIndex + " GmbH", "de"));
+    ret.setCountryCode (nIndex % 2 == 0 ? "AT" : "DE");
+    ret.setGeographicalInformation (CITIES[nIndex % CITIES.length] + "\nStreet " + nIndex);
+    ret.identifiers ().add (new SMPBusinessCardIdentifier ("VAT", "ATU" + nIndex));
+    return ret;
+  }
+
+  @Nonnull
+  private static ICommonsList <String> _getIDs (@Nonnull final int... aIndices)
+  {
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    for (final int n : aIndices)
+      ret.add (SMPServiceGroup.createSMPServiceGroupID (_createPI (n)));
+    ret.sort (String::compareTo);
+    return ret;
+  }
+
+  @Test
+  public void testQueryTerms ()
+  {
+    assertTrue (SMPBusinessCardSearchIndex.getAllQueryTerms (null).isEmpty ());
+    assertTrue (SMPBusinessCardSearchIndex.getAllQueryTerms (" ,.- ").isEmpty ());
+    final ICommonsOrderedSet <String> aTerms = SMPBusinessCardSearchIndex.getAllQueryTerms ("Wien, Straße 7 wien");
+    assertEquals (new CommonsArrayList <> ("wien", "straße", "7"), aTerms.getCopyAsList ());
+
+    final SMPBusinessCard aBC = new SMPBusinessCard (_createPI (3), new CommonsArrayList <> (_createEntity (3)));
+    final ICommonsSet <String> aTokens = SMPBusinessCardSearchIndex.getAllTokens (aBC);
+    for (final String s : new String [] { "9915", "bc3", "company", "3", "gmbh", "de", "salzburg", "street", "vat", "atu3" })
+      assertTrue (s, aTokens.contains (s));
+    assertEquals (10, aTokens.size ());
+  }
+
+  @Test
+  public void testSearch ()
+  {
+    final InMemoryBusinessCardManager aMgr = new InMemoryBusinessCardManager ();
+    final SMPBusinessCardSearchIndex aIndex = aMgr.getSearchIndex ();
+    for (int i = 0; i < 10; ++i)
+      aMgr.createOrUpdateSMPBusinessCard (_createPI (i), new CommonsArrayList <> (_createEntity (i)));
+    assertEquals (10, aIndex.getBusinessCardCount ());
+
+    // Everything
+    assertEquals (_getIDs (0, 1, 2, 3, 4, 5, 6, 7, 8, 9), aIndex.getAllMatchingIDs (null));
+    assertEquals (_getIDs (0, 1, 2, 3, 4, 5, 6, 7, 8, 9), aIndex.getAllMatchingIDs ("company"));
+    // Case insensitive prefixes
+    assertEquals (_getIDs (0, 5), aIndex.getAllMatchingIDs ("VIEN"));
+    assertEquals (_getIDs (1, 3, 5, 7, 9), aIndex.getAllMatchingIDs ("de"));
+    // All terms must match
+    assertEquals (_getIDs (5), aIndex.getAllMatchingIDs ("vie de"));
+    assertEquals (_getIDs (1), aIndex.getAllMatchingIDs ("Graz, DE"));
+    assertEquals (_getIDs (7), aIndex.getAllMatchingIDs ("company atu7"));
+    assertTrue (aIndex.getAllMatchingIDs ("vienna graz").isEmpty ());
+    assertTrue (aIndex.getAllMatchingIDs ("paris").isEmpty ());
+    // Participant identifier
+    assertEquals (_getIDs (1), aIndex.getAllMatchingIDs ("9915:bc1"));
+
+    // Paging
+    SMPBusinessCardSearchResult aResult = aMgr.searchSMPBusinessCards ("company", 0, 3);
+    assertEquals (10, aResult.getMatchCount ());
+    assertEquals (3, aResult.getBusinessCardCount ());
+    assertEquals (_getIDs (0, 1, 2, 3, 4, 5, 6, 7, 8, 9).subList (0, 3),
+                  aResult.getAllBusinessCards ().getAllMapped (ISMPBusinessCard::getID));
+    aResult = aMgr.searchSMPBusinessCards ("company", 9, 3);
+    assertEquals (10, aResult.getMatchCount ());
+    assertEquals (1, aResult.getBusinessCardCount ());
+    aResult = aMgr.searchSMPBusinessCards ("company", 20, 3);
+    assertEquals (10, aResult.getMatchCount ());
+    assertEquals (0, aResult.getBusinessCardCount ());
+
+    // Update
+    final SMPBusinessCardEntity aEntity = _createEntity (0);
+    aEntity.setGeographicalInformation ("Paris");
+    aMgr.createOrUpdateSMPBusinessCard (_createPI (0), new CommonsArrayList <> (aEntity));
+    assertEquals (_getIDs (5), aIndex.getAllMatchingIDs ("vienna"));
+    assertEquals (_getIDs (0), aIndex.getAllMatchingIDs ("paris"));
+
+    // Delete
+    assertTrue (aMgr.deleteSMPBusinessCard (aMgr.getSMPBusinessCardOfID (_createPI (0))).isChanged ());
+    assertTrue (aIndex.getAllMatchingIDs ("paris").isEmpty ());
+    assertEquals (9, aIndex.getBusinessCardCount ());
+    assertNull (aIndex.getParticipantID (SMPServiceGroup.createSMPServiceGroupID (_createPI (0))));
+
+    // Rebuild from scratch
+    final SMPBusinessCardSearchIndex aNewIndex = new SMPBusinessCardSearchIndex (aMgr);
+    assertFalse (aNewIndex.isInitialized ());
+    aNewIndex.indexAll ();
+    assertTrue (aNewIndex.isInitialized ());
+    assertEquals (aIndex.getTokenCount (), aNewIndex.getTokenCount ());
+    assertEquals (aIndex.getAllMatchingIDs ("company"), aNewIndex.getAllMatchingIDs ("company"));
+  }
+
+  @Test
+  public void testSearchWithoutIndex ()
+  {
+    final InMemoryBusinessCardManager aMgr = new InMemoryBusinessCardManager (false);
+    final InMemoryBusinessCardManager aIndexedMgr = new InMemoryBusinessCardManager ();
+    assertNull (aMgr.getSearchIndex ());
+    for (int i = 0; i < 10; ++i)
+    {
+      aMgr.createOrUpdateSMPBusinessCard (_createPI (i), new CommonsArrayList <> (_createEntity (i)));
+      aIndexedMgr.createOrUpdateSMPBusinessCard (_createPI (i), new CommonsArrayList <> (_createEntity (i)));
+    }
+
+    // Same results as with the search index
+    for (final String sQuery : new String [] { null, "", "company", "VIEN", "vie de", "Graz, DE", "vienna graz", "9915:bc1" })
+      for (final int nOffset : new int [] { 0, 3, 9, 20 })
+      {
+        final SMPBusinessCardSearchResult aResult = aMgr.searchSMPBusinessCards (sQuery, nOffset, 3);
+        final SMPBusinessCardSearchResult aExpected = aIndexedMgr.searchSMPBusinessCards (sQuery, nOffset, 3);
+        assertEquals (sQuery, aExpected.getMatchCount (), aResult.getMatchCount ());
+        assertEquals (sQuery,
+                      aExpected.getAllBusinessCards ().getAllMapped (ISMPBusinessCard::getID),
+                      aResult.getAllBusinessCards ().getAllMapped (ISMPBusinessCard::getID));
+      }
+  }
+
+  @Test
+  public void testIndexAllWithConcurrentChanges ()
+  {
+    final InMemoryBusinessCardManager aMgr = new InMemoryBusinessCardManager ();
+    for (int i = 1; i <= 3; ++i)
+      aMgr.createOrUpdateSMPBusinessCard (_createPI (i), new CommonsArrayList <> (_createEntity (i)));
+
+    final SMPBusinessCardSearchIndex aIndex = new SMPBusinessCardSearchIndex (aMgr);
+    aMgr.bcCallbacks ().add (aIndex);
+    aMgr.m_aAfterGetAll = () -> {
+      // Changed by callbacks after the snapshot was read
+      final SMPBusinessCardEntity aEntity = _createEntity (1);
+      aEntity.setGeographicalInformation ("Paris");
+      aMgr.createOrUpdateSMPBusinessCard (_createPI (1), new CommonsArrayList <> (aEntity));
+      aMgr.deleteSMPBusinessCard (aMgr.getSMPBusinessCardOfID (_createPI (2)));
+    };
+    aIndex.indexAll ();
+    assertTrue (aIndex.isInitialized ());
+
+    // The outdated snapshots are ignored
+    assertEquals (_getIDs (1), aIndex.getAllMatchingIDs ("paris"));
+    assertTrue (aIndex.getAllMatchingIDs ("graz").isEmpty ());
+    assertNull (aIndex.getParticipantID (SMPServiceGroup.createSMPServiceGroupID (_createPI (2))));
+    assertEquals (_getIDs (1, 3), aIndex.getAllMatchingIDs ("company"));
+
+    // Afterwards callbacks are applied as usual
+    aMgr.createOrUpdateSMPBusinessCard (_createPI (1), new CommonsArrayList <> (_createEntity (1)));
+    assertEquals (_getIDs (1), aIndex.getAllMatchingIDs ("graz"));
+  }
+
+  @Test
+  public void testClusterEvent ()
+  {
+    final InMemoryBusinessCardManager aMgr = new InMemoryBusinessCardManager ();
+    final IParticipantIdentifier aPI = _createPI (1);
+    final String sID = SMPServiceGroup.createSMPServiceGroupID (aPI);
+
+    // Simulate a change on another node, without callbacks
+    final SMPBusinessCardSearchIndex aIndex = new SMPBusinessCardSearchIndex (aMgr);
+    aMgr.createOrUpdateSMPBusinessCard (aPI, new CommonsArrayList <> (_createEntity (1)));
+    assertTrue (aIndex.getAllMatchingIDs ("company").isEmpty ());
+
+    // Other object types are ignored
+    aIndex.onSMPClusterEvent (SMPClusterEvent.createNew ("other",
+                                                         ESMPClusterObjectType.SERVICE_GROUP,
+                                                         ESMPClusterChangeType.UPDATED,
+                                                         sID,
+                                                         null));
+    assertTrue (aIndex.getAllMatchingIDs ("company").isEmpty ());
+
+    aIndex.onSMPClusterEvent (SMPClusterEvent.createNew ("other",
+                                                         ESMPClusterObjectType.BUSINESS_CARD,
+                                                         ESMPClusterChangeType.UPDATED,
+                                                         sID,
+                                                         null));
+    assertEquals (new CommonsArrayList <> (sID), aIndex.getAllMatchingIDs ("company"));
+
+    aMgr.m_aMap.remove (sID);
+    aIndex.onSMPClusterEvent (SMPClusterEvent.createNew ("other",
+                                                         ESMPClusterObjectType.BUSINESS_CARD,
+                                                         ESMPClusterChangeType.DELETED,
+                                                         sID,
+                                                         null));
+    assertTrue (aIndex.getAllMatchingIDs ("company").isEmpty ());
+    assertEquals (0, aIndex.getBusinessCardCount ());
+  }
+
+  @Test
+  public void testQueryLatency ()
+  {
+    final int nEntities = 100_000;
+    final int nQueries = 20;
+    final String [] aQueries = { "vienna", "company 4711", "atu99", "graz de", "gmbh", "salz at 123" };
+
+    final InMemoryBusinessCardManager aMgr = new InMemoryBusinessCardManager ();
+    // One entity per business card
+    StopWatch aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < nEntities; ++i)
+      aMgr.createOrUpdateSMPBusinessCard (_createPI (i), new CommonsArrayList <> (_createEntity (i)));
+    final SMPBusinessCardSearchIndex aIndex = aMgr.getSearchIndex ();
+    LOGGER.info ("Indexed " +
+                 nEntities +
+                 " entities with " +
+                 aIndex.getTokenCount () +
+                 " distinct words in " +
+                 aSW.stopAndGetMillis () +
+                 " ms");
+    assertEquals (nEntities, aIndex.getBusinessCardCount ());
+
+    for (final String sQuery : aQueries)
+    {
+      final ICommonsOrderedSet <String> aTerms = SMPBusinessCardSearchIndex.getAllQueryTerms (sQuery);
+
+      // Previous way: check all business cards
+      aSW = StopWatch.createdStarted ();
+      final ICommonsList <String> aScanned = new CommonsArrayList <> ();
+      for (final ISMPBusinessCard aBC : aMgr.getAllSMPBusinessCards ())
+      {
+        final ICommonsSet <String> aTokens = SMPBusinessCardSearchIndex.getAllTokens (aBC);
+        if (aTerms.containsOnly (x -> aTokens.containsAny (t -> t.startsWith (x))))
+          aScanned.add (aBC.getID ());
+      }
+      aSW.stop ();
+      final long nScanNanos = aSW.getNanos ();
+
+      aSW = StopWatch.createdStarted ();
+      ICommonsList <String> aIndexed = null;
+      for (int i = 0; i < nQueries; ++i)
+        aIndexed = aIndex.getAllMatchingIDs (sQuery);
+      aSW.stop ();
+      final long nIndexNanos = aSW.getNanos () / nQueries;
+
+      // Same result
+      aScanned.sort (String::compareTo);
+      assertEquals (aScanned, aIndexed);
+
+      LOGGER.info ("Query '" +
+                   sQuery +
+                   "' with " +
+                   aIndexed.size () +
+                   " matches in " +
+                   nEntities +
+                   " entities: scan " +
+                   (nScanNanos / 1_000) +
+                   " microseconds, index " +
+                   (nIndexNanos / 1_000) +
+                   " microseconds");
+    }
+  }
+}
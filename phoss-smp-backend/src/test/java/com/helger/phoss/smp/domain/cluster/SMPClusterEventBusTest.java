@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ESuccess;
+
+/**
+ * Test class for class {@link SMPClusterEventBus}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPClusterEventBusTest
+{
+  private static final class MockStore implements ISMPClusterEventStore
+  {
+    private final ICommonsList <SMPClusterEvent> m_aEvents = new CommonsArrayList <> ();
+    private boolean m_bFail = false;
+
+    @Nonnull
+    public synchronized ESuccess appendEvent (@Nonnull final SMPClusterEvent aEvent)
+    {
+      m_aEvents.add (aEvent);
+      return ESuccess.SUCCESS;
+    }
+
+    @Nullable
+    public synchronized ICommonsList <SMPClusterEvent> getAllEventsSince (@Nonnull final LocalDateTime aSince)
+    {
+      if (m_bFail)
+        return null;
+      return m_aEvents.getAll (x -> !x.getDateTime ().isBefore (aSince));
+    }
+
+    public synchronized long deleteAllEventsBefore (@Nonnull final LocalDateTime aBefore)
+    {
+      final int nOld = m_aEvents.size ();
+      m_aEvents.removeIf (x -> x.getDateTime ().isBefore (aBefore));
+      return nOld - m_aEvents.size ();
+    }
+  }
+
+  @Nonnull
+  private static SMPClusterEventBus _createBus (@Nonnull final ISMPClusterEventStore aStore)
+  {
+    return new SMPClusterEventBus (aStore,
+                                   Duration.ofSeconds (1),
+                                   Duration.ofMinutes (5),
+                                   SMPClusterEventBus.DEFAULT_OVERLAP);
+  }
+
+  @Test
+  public void testDeliverToOtherNodes ()
+  {
+    final MockStore aStore = new MockStore ();
+    try (final SMPClusterEventBus aBus1 = _createBus (aStore); final SMPClusterEventBus aBus2 = _createBus (aStore))
+    {
+      assertNotEquals (aBus1.getNodeID (), aBus2.getNodeID ());
+
+      final ICommonsList <SMPClusterEvent> aReceived1 = new CommonsArrayList <> ();
+      final ICommonsList <SMPClusterEvent> aReceived2 = new CommonsArrayList <> ();
+      aBus1.clusterEventCallbacks ().add (aReceived1::add);
+      aBus2.clusterEventCallbacks ().add (aReceived2::add);
+
+      aBus1.publish (ESMPClusterObjectType.SERVICE_GROUP,
+                     ESMPClusterChangeType.UPDATED,
+                     "iso6523-actorid-upis::0088:1",
+                     null);
+      aBus2.publish (ESMPClusterObjectType.REDIRECT,
+                     ESMPClusterChangeType.DELETED,
+                     "iso6523-actorid-upis::0088:2",
+                     "doc");
+
+      // Own events are never delivered
+      assertEquals (1, aBus1.poll ());
+      assertEquals (1, aBus2.poll ());
+      assertEquals (1, aReceived1.size ());
+      assertEquals (ESMPClusterObjectType.REDIRECT, aReceived1.getFirstOrNull ().getObjectType ());
+      assertEquals ("doc", aReceived1.getFirstOrNull ().getObjectID ());
+      assertEquals (1, aReceived2.size ());
+      assertEquals ("iso6523-actorid-upis::0088:1", aReceived2.getFirstOrNull ().getServiceGroupID ());
+      assertNull (aReceived2.getFirstOrNull ().getObjectID ());
+
+      // Events are read again due to the overlap, but delivered only once
+      assertEquals (0, aBus1.poll ());
+      assertEquals (0, aBus2.poll ());
+      assertEquals (1, aReceived1.size ());
+      assertEquals (1, aReceived2.size ());
+      assertEquals (1, aBus1.getReceivedEventCount ());
+      assertEquals (1, aBus2.getReceivedEventCount ());
+    }
+  }
+
+  @Test
+  public void testFailedReadIsRepeated ()
+  {
+    final MockStore aStore = new MockStore ();
+    // No overlap, so that only the not advanced time window finds the event
+    try (final SMPClusterEventBus aBus1 = new SMPClusterEventBus (aStore,
+                                                                 Duration.ofSeconds (1),
+                                                                 Duration.ofMinutes (5),
+                                                                 Duration.ZERO);
+        final SMPClusterEventBus aBus2 = _createBus (aStore))
+    {
+      final ICommonsList <SMPClusterEvent> aReceived1 = new CommonsArrayList <> ();
+      aBus1.clusterEventCallbacks ().add (aReceived1::add);
+
+      aBus2.publish (ESMPClusterObjectType.SERVICE_GROUP,
+                     ESMPClusterChangeType.CREATED,
+                     "iso6523-actorid-upis::0088:1",
+                     null);
+
+      // Reading fails
+      synchronized (aStore)
+      {
+        aStore.m_bFail = true;
+      }
+      assertEquals (0, aBus1.poll ());
+      assertEquals (0, aReceived1.size ());
+
+      // The same time window is read again
+      synchronized (aStore)
+      {
+        aStore.m_bFail = false;
+      }
+      assertEquals (1, aBus1.poll ());
+      assertEquals (1, aReceived1.size ());
+      assertEquals (1, aBus1.getReceivedEventCount ());
+    }
+  }
+}
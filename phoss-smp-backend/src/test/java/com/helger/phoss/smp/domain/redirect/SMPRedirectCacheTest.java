@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.redirect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.EChange;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterChangeType;
+import com.helger.phoss.smp.domain.cluster.ESMPClusterObjectType;
+import com.helger.phoss.smp.domain.cluster.SMPClusterEvent;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.security.CSecurity;
+
+/**
+ * Test class for class {@link SMPRedirectCache}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPRedirectCacheTest
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPRedirectCacheTest.class);
+
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  /**
+   * Keeps the redirects in memory and counts the read queries, like the
+   * database backends would execute them.
+   */
+  private static final class CountingRedirectManager implements ISMPRedirectManager
+  {
+    private final CallbackList <ISMPRedirectCallback> m_aCBs = new CallbackList <> ();
+    private final ICommonsList <ISMPRedirect> m_aList = new CommonsArrayList <> ();
+    private final AtomicInteger m_aQueryCount = new AtomicInteger ();
+
+    public CallbackList <ISMPRedirectCallback> redirectCallbacks ()
+    {
+      return m_aCBs;
+    }
+
+    public ISMPRedirect createOrUpdateSMPRedirect (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                                   @Nonnull final IDocumentTypeIdentifier aDocumentTypeIdentifier,
+                                                   @Nonnull final String sTargetHref,
+                                                   @Nonnull final String sSubjectUniqueIdentifier,
+                                                   final X509Certificate aCertificate,
+                                                   final String sExtension)
+    {
+      final SMPRedirect ret = new SMPRedirect (aServiceGroup,
+                                               aDocumentTypeIdentifier,
+                                               sTargetHref,
+                                               sSubjectUniqueIdentifier,
+                                               aCertificate,
+                                               sExtension);
+      final boolean bUpdate = m_aList.removeIf (x -> x.getID ().equals (ret.getID ()));
+      m_aList.add (ret);
+      if (bUpdate)
+        m_aCBs.forEach (x -> x.onSMPRedirectUpdated (ret));
+      else
+        m_aCBs.forEach (x -> x.onSMPRedirectCreated (ret));
+      return ret;
+    }
+
+    public EChange deleteSMPRedirect (final ISMPRedirect aSMPRedirect)
+    {
+      if (!m_aList.remove (aSMPRedirect))
+        return EChange.UNCHANGED;
+      m_aCBs.forEach (x -> x.onSMPRedirectDeleted (aSMPRedirect));
+      return EChange.CHANGED;
+    }
+
+    public EChange deleteAllSMPRedirectsOfServiceGroup (final ISMPServiceGroup aServiceGroup)
+    {
+      throw new UnsupportedOperationException ();
+    }
+
+    public ICommonsList <ISMPRedirect> getAllSMPRedirects ()
+    {
+      throw new UnsupportedOperationException ();
+    }
+
+    public ICommonsList <ISMPRedirect> getAllSMPRedirectsOfServiceGroup (final ISMPServiceGroup aServiceGroup)
+    {
+      m_aQueryCount.incrementAndGet ();
+      return m_aList.getAll (x -> x.getServiceGroupID ().equals (aServiceGroup.getID ()));
+    }
+
+    public long getSMPRedirectCount ()
+    {
+      return m_aList.size ();
+    }
+
+    public ISMPRedirect getSMPRedirectOfServiceGroupAndDocumentType (final ISMPServiceGroup aServiceGroup,
+                                                                     final IDocumentTypeIdentifier aDocTypeID)
+    {
+      m_aQueryCount.incrementAndGet ();
+      return m_aList.findFirst (x -> x.getServiceGroupID ().equals (aServiceGroup.getID ()) &&
+                                     aDocTypeID.hasSameContent (x.getDocumentTypeIdentifier ()));
+    }
+  }
+
+  @Nonnull
+  private static ISMPServiceGroup _createSG (final int nIndex)
+  {
+    return new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID,
+                                new SimpleParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME,
+                                                                 "9915:red" + nIndex),
+                                null);
+  }
+
+  @Nonnull
+  private static IDocumentTypeIdentifier _createDT (final int nIndex)
+  {
+    return new SimpleDocumentTypeIdentifier (PeppolIdentifierHelper.DOCUMENT_TYPE_SCHEME_BUSDOX_DOCID_QNS,
+                                             "doctype" + nIndex);
+  }
+
+  @Test
+  public void testBasic ()
+  {
+    final CountingRedirectManager aMgr = new CountingRedirectManager ();
+    final SMPRedirectCache aCache = new SMPRedirectCache (aMgr, 10, 0);
+    aMgr.redirectCallbacks ().add (aCache);
+    assertTrue (aCache.isEnabled ());
+    assertEquals (0, aCache.size ());
+
+    final ISMPServiceGroup aSG = _createSG (0);
+    assertNull (aCache.getRedirect (null, _createDT (0)));
+    assertNull (aCache.getRedirect (aSG, null));
+
+    // The absence of redirects is cached
+    assertNull (aCache.getRedirect (aSG, _createDT (0)));
+    assertNull (aCache.getRedirect (aSG, _createDT (1)));
+    assertEquals (1, aCache.size ());
+    assertEquals (1, aMgr.m_aQueryCount.get ());
+
+    // Create invalidates
+    final ISMPRedirect aCreated = aMgr.createOrUpdateSMPRedirect (aSG, _createDT (0), "target", "suid", null, null);
+    assertEquals (0, aCache.size ());
+    assertEquals (aCreated, aCache.getRedirect (aSG, _createDT (0)));
+    assertNull (aCache.getRedirect (aSG, _createDT (1)));
+    assertEquals (2, aMgr.m_aQueryCount.get ());
+
+    // Update invalidates
+    aMgr.createOrUpdateSMPRedirect (aSG, _createDT (0), "target2", "suid", null, null);
+    assertEquals ("target2", aCache.getRedirect (aSG, _createDT (0)).getTargetHref ());
+    assertEquals (3, aMgr.m_aQueryCount.get ());
+
+    // Cluster event of another node invalidates
+    aCache.onSMPClusterEvent (SMPClusterEvent.createNew ("other",
+                                                         ESMPClusterObjectType.BUSINESS_CARD,
+                                                         ESMPClusterChangeType.UPDATED,
+                                                         aSG.getID (),
+                                                         null));
+    assertEquals (1, aCache.size ());
+    aCache.onSMPClusterEvent (SMPClusterEvent.createNew ("other",
+                                                         ESMPClusterObjectType.REDIRECT,
+                                                         ESMPClusterChangeType.CREATED,
+                                                         aSG.getID (),
+                                                         _createDT (1).getURIEncoded ()));
+    assertEquals (0, aCache.size ());
+
+    // Deleting the service group invalidates
+    assertNotNull (aCache.getRedirect (aSG, _createDT (0)));
+    aCache.onSMPServiceGroupDeleted (aSG.getParticipantIdentifier (), false);
+    assertEquals (0, aCache.size ());
+
+    // Delete invalidates
+    assertNotNull (aCache.getRedirect (aSG, _createDT (0)));
+    assertTrue (aMgr.deleteSMPRedirect (aMgr.m_aList.getFirstOrNull ()).isChanged ());
+    assertEquals (0, aCache.size ());
+    assertNull (aCache.getRedirect (aSG, _createDT (0)));
+    assertEquals (6, aMgr.m_aQueryCount.get ());
+  }
+
+  @Test
+  public void testDisabled ()
+  {
+    final CountingRedirectManager aMgr = new CountingRedirectManager ();
+    final SMPRedirectCache aCache = new SMPRedirectCache (aMgr, 0, 0);
+    aMgr.redirectCallbacks ().add (aCache);
+    assertFalse (aCache.isEnabled ());
+
+    final ISMPServiceGroup aSG = _createSG (0);
+    aMgr.createOrUpdateSMPRedirect (aSG, _createDT (0), "target", "suid", null, null);
+    assertNotNull (aCache.getRedirect (aSG, _createDT (0)));
+    assertNull (aCache.getRedirect (aSG, _createDT (1)));
+    assertEquals (0, aCache.size ());
+    assertEquals (2, aMgr.m_aQueryCount.get ());
+  }
+
+  @Test
+  public void testTTL ()
+  {
+    final CountingRedirectManager aMgr = new CountingRedirectManager ();
+    final AtomicLong aNow = new AtomicLong (1_000_000);
+    final SMPRedirectCache aCache = new SMPRedirectCache (aMgr, 10, 60_000, aNow::get);
+
+    final ISMPServiceGroup aSG = _createSG (0);
+    assertNull (aCache.getRedirect (aSG, _createDT (0)));
+    assertEquals (1, aMgr.m_aQueryCount.get ());
+
+    // Simulate a change of another node, that is not propagated
+    aMgr.m_aList.add (new SMPRedirect (aSG, _createDT (0), "target", "suid", null, null));
+    aNow.addAndGet (60_000 - 1);
+    assertNull (aCache.getRedirect (aSG, _createDT (0)));
+    assertEquals (1, aMgr.m_aQueryCount.get ());
+
+    // Read again after the time to live
+    aNow.addAndGet (1);
+    assertNotNull (aCache.getRedirect (aSG, _createDT (0)));
+    assertEquals (2, aMgr.m_aQueryCount.get ());
+    assertNotNull (aCache.getRedirect (aSG, _createDT (0)));
+    assertEquals (2, aMgr.m_aQueryCount.get ());
+    assertEquals (1, aCache.size ());
+  }
+
+  @Test
+  public void testEviction ()
+  {
+    final CountingRedirectManager aMgr = new CountingRedirectManager ();
+    final SMPRedirectCache aCache = new SMPRedirectCache (aMgr, 4, 0);
+    aMgr.redirectCallbacks ().add (aCache);
+
+    final ISMPServiceGroup aHotSG = _createSG (0);
+    aMgr.createOrUpdateSMPRedirect (aHotSG, _createDT (0), "target", "suid", null, null);
+    assertNotNull (aCache.getRedirect (aHotSG, _createDT (0)));
+    for (int i = 1; i < 10; ++i)
+    {
+      assertNull (aCache.getRedirect (_createSG (i), _createDT (0)));
+      // Frequently used service groups stay in the cache
+      assertNotNull (aCache.getRedirect (aHotSG, _createDT (0)));
+      assertTrue (aCache.size () <= 4);
+    }
+    assertEquals (10, aMgr.m_aQueryCount.get ());
+    assertEquals (9, aCache.getHitCount ());
+
+    // Removal also affects the old generation
+    aCache.onSMPServiceGroupDeleted (_createSG (8).getParticipantIdentifier (), false);
+    assertNull (aCache.getRedirect (_createSG (8), _createDT (0)));
+    assertEquals (11, aMgr.m_aQueryCount.get ());
+    aCache.clear ();
+    assertEquals (0, aCache.size ());
+  }
+
+  @Test
+  public void testMetadataGetRoundTrips ()
+  {
+    final int nServiceGroups = 100;
+    final int nDocTypes = 20;
+    final int nRequests = 10_000;
+
+    // Only every 10th service group has a redirect
+    final CountingRedirectManager aMgr = new CountingRedirectManager ();
+    final ICommonsList <ISMPServiceGroup> aSGs = new CommonsArrayList <> ();
+    for (int i = 0; i < nServiceGroups; ++i)
+    {
+      final ISMPServiceGroup aSG = _createSG (i);
+      aSGs.add (aSG);
+      if (i % 10 == 0)
+        aMgr.createOrUpdateSMPRedirect (aSG, _createDT (0), "target", "suid", null, null);
+    }
+
+    final SMPRedirectCache aUncached = new SMPRedirectCache (aMgr, 0, 0);
+    // All service groups fit into a single generation
+    final SMPRedirectCache aCached = new SMPRedirectCache (aMgr, 2 * nServiceGroups, 0);
+
+    // Each service metadata GET first checks for a redirect
+    int nRedirects = 0;
+    for (int i = 0; i < nRequests; ++i)
+      if (aUncached.getRedirect (aSGs.get (i % nServiceGroups), _createDT (i % nDocTypes)) != null)
+        nRedirects++;
+    final int nUncachedQueries = aMgr.m_aQueryCount.getAndSet (0);
+
+    for (int i = 0; i < nRequests; ++i)
+      if (aCached.getRedirect (aSGs.get (i % nServiceGroups), _createDT (i % nDocTypes)) != null)
+        nRedirects--;
+    final int nCachedQueries = aMgr.m_aQueryCount.get ();
+
+    assertEquals (0, nRedirects);
+    assertEquals (nRequests, nUncachedQueries);
+    // One query per service group, independent of the number of requests
+    assertEquals (nServiceGroups, nCachedQueries);
+    assertEquals (nRequests - nServiceGroups, aCached.getHitCount ());
+
+    LOGGER.info (nRequests +
+                 " service metadata GETs on " +
+                 nServiceGroups +
+                 " service groups: uncached " +
+                 nUncachedQueries +
+                 " redirect queries, cached " +
+                 nCachedQueries +
+                 " redirect queries");
+  }
+}
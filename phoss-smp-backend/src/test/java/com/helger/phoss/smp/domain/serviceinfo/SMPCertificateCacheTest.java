@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Test;
+
+import com.helger.commons.string.StringHelper;
+import com.helger.security.certificate.CertificateHelper;
+
+/**
+ * Test class for class {@link SMPCertificateCache}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPCertificateCacheTest
+{
+  @Test
+  public void testBasic ()
+  {
+    SMPCertificateCache.clear ();
+    assertEquals (0, SMPCertificateCache.size ());
+
+    assertNull (SMPCertificateCache.intern (null));
+    assertEquals ("", SMPCertificateCache.intern (""));
+    assertNull (SMPCertificateCache.getHash (null));
+    assertNull (SMPCertificateCache.getHash (""));
+    assertNull (SMPCertificateCache.getX509Certificate (null));
+    assertEquals (0, SMPCertificateCache.size ());
+
+    // Use new String to ensure distinct instances
+    final String sCert1 = new String ("cert");
+    final String sCert2 = new String ("cert");
+    final String sInterned = SMPCertificateCache.intern (sCert1);
+    assertSame (sInterned, SMPCertificateCache.intern (sCert2));
+    assertEquals (1, SMPCertificateCache.size ());
+
+    final String sHash = SMPCertificateCache.getHash (sCert2);
+    assertEquals (64, sHash.length ());
+    assertEquals (SMPCertificateCache.createHash ("cert"), sHash);
+    assertNotEquals (sHash, SMPCertificateCache.getHash ("cert2"));
+    assertEquals (2, SMPCertificateCache.size ());
+    assertSame (sInterned, SMPCertificateCache.getCertificateOfHash (sHash));
+    assertNull (SMPCertificateCache.getCertificateOfHash ("abc"));
+
+    // Not a valid certificate
+    assertNull (SMPCertificateCache.getX509Certificate (sCert1));
+
+    SMPCertificateCache.clear ();
+    assertEquals (0, SMPCertificateCache.size ());
+    assertNull (SMPCertificateCache.getCertificateOfHash (sHash));
+  }
+
+  @Test
+  public void testHashIsIndependentOfRepresentation () throws Exception
+  {
+    final KeyPairGenerator aKPG = KeyPairGenerator.getInstance ("RSA");
+    aKPG.initialize (2048);
+    final KeyPair aKeyPair = aKPG.generateKeyPair ();
+    final X500Name aSubject = new X500Name ("CN=SMP Certificate Cache Test,O=phoss,C=AT");
+    final Date aNow = new Date ();
+    final X509Certificate aCert = new JcaX509CertificateConverter ().getCertificate (new JcaX509v3CertificateBuilder (aSubject,
+                                                                                                                      BigInteger.ONE,
+                                                                                                                      aNow,
+                                                                                                                      new Date (aNow.getTime () +
+                                                                                                                                86_400_000L),
+                                                                                                                      aSubject,
+                                                                                                                      aKeyPair.getPublic ()).build (new JcaContentSignerBuilder ("SHA256withRSA").build (aKeyPair.getPrivate ())));
+
+    SMPCertificateCache.clear ();
+
+    // Two representations of the same certificate
+    final String sPEM = CertificateHelper.getPEMEncodedCertificate (aCert);
+    final String sBase64 = CertificateHelper.getWithoutPEMHeader (sPEM).replace ("\r", "").replace ("\n", "");
+    assertNotEquals (sPEM, sBase64);
+
+    // The hash is over the DER bytes
+    final String sExpectedHash = StringHelper.getHexEncoded (MessageDigest.getInstance ("SHA-256")
+                                                                          .digest (aCert.getEncoded ()));
+    assertEquals (sExpectedHash, SMPCertificateCache.createHash (sPEM));
+    assertEquals (sExpectedHash, SMPCertificateCache.createHash (sBase64));
+
+    assertEquals (sExpectedHash, SMPCertificateCache.getHash (sPEM));
+    assertEquals (sExpectedHash, SMPCertificateCache.getHash (sBase64));
+    // Only stored once
+    assertEquals (1, SMPCertificateCache.size ());
+    // The first representation is shared
+    assertSame (SMPCertificateCache.intern (sPEM), SMPCertificateCache.intern (sBase64));
+    assertEquals (sPEM, SMPCertificateCache.getCertificateOfHash (sExpectedHash));
+
+    final X509Certificate aParsed = SMPCertificateCache.getX509Certificate (sBase64);
+    assertNotNull (aParsed);
+    assertEquals (aCert, aParsed);
+    assertSame (aParsed, SMPCertificateCache.getX509Certificate (sPEM));
+
+    SMPCertificateCache.clear ();
+  }
+
+  @Test
+  public void testEviction ()
+  {
+    SMPCertificateCache.clear ();
+    for (int i = 0; i < SMPCertificateCache.MAX_SIZE + 100; ++i)
+      assertNotNull (SMPCertificateCache.getHash ("cert" + i));
+    assertTrue (SMPCertificateCache.size () <= SMPCertificateCache.MAX_SIZE);
+
+    // Evicted entries are simply recreated
+    final String sHash = SMPCertificateCache.getHash ("cert0");
+    assertEquals (SMPCertificateCache.createHash ("cert0"), sHash);
+    assertEquals ("cert0", SMPCertificateCache.getCertificateOfHash (sHash));
+    SMPCertificateCache.clear ();
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.serviceinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.datetime.XMLOffsetDateTime;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
+import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.security.CSecurity;
+
+/**
+ * Test class for class {@link SMPEndpointProblemIndex}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPEndpointProblemIndexTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  @Nonnull
+  private static SMPServiceInformation _createSI (@Nonnull final String sParticipantID,
+                                                  @Nonnull final ESMPTransportProfile eTP,
+                                                  @Nullable final XMLOffsetDateTime... aExpirationDTs)
+  {
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme (sParticipantID);
+    // One process per endpoint
+    final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
+    for (final XMLOffsetDateTime aExpirationDT : aExpirationDTs)
+    {
+      final SMPEndpoint aEP = new SMPEndpoint (eTP.getID (),
+                                               "http://localhost/as4",
+                                               false,
+                                               null,
+                                               null,
+                                               aExpirationDT,
+                                               "cert",
+                                               null,
+                                               "tc",
+                                               null,
+                                               null);
+      aProcesses.add (new SMPProcess (new SimpleProcessIdentifier (PeppolIdentifierHelper.DEFAULT_PROCESS_SCHEME,
+                                                                   "testproc" + aProcesses.size ()),
+                                      CollectionHelper.newList (aEP),
+                                      null));
+    }
+    return new SMPServiceInformation (new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI, null),
+                                      new SimpleDocumentTypeIdentifier (PeppolIdentifierHelper.DOCUMENT_TYPE_SCHEME_BUSDOX_DOCID_QNS,
+                                                                        "testdoctype"),
+                                      aProcesses,
+                                      null);
+  }
+
+  @Nonnull
+  private static ISMPServiceInformationManager _createServiceInfoMgr (@Nonnull final Consumer <Consumer <ISMPServiceInformation>> aForEach)
+  {
+    // Only the iteration is needed
+    return (ISMPServiceInformationManager) Proxy.newProxyInstance (ISMPServiceInformationManager.class.getClassLoader (),
+                                                                   new Class <?> [] { ISMPServiceInformationManager.class },
+                                                                   (aProxy, aMethod, aArgs) -> {
+                                                                     if (aMethod.getName ()
+                                                                                .equals ("forEachSMPServiceInformation"))
+                                                                     {
+                                                                       @SuppressWarnings ("unchecked")
+                                                                       final Consumer <ISMPServiceInformation> aConsumer = (Consumer <ISMPServiceInformation>) aArgs[0];
+                                                                       aForEach.accept (aConsumer);
+                                                                       return null;
+                                                                     }
+                                                                     throw new UnsupportedOperationException (aMethod.getName ());
+                                                                   });
+  }
+
+  @Test
+  public void testBasic ()
+  {
+    final SMPEndpointProblemIndex aIndex = new SMPEndpointProblemIndex (PeppolIdentifierFactory.INSTANCE,
+                                                                        SMPMetaManager.getServiceGroupMgr (),
+                                                                        SMPMetaManager.getServiceInformationMgr ());
+    assertFalse (aIndex.isInitialized ());
+    assertEquals (0, aIndex.getProblemCount ());
+
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("0088:dummy");
+    final ISMPServiceGroup aSG = new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI, null);
+    assertFalse (aIndex.containsAnyServiceInformation (aSG.getID ()));
+
+    final XMLOffsetDateTime aStartDT = PDTFactory.getCurrentXMLOffsetDateTime ().withNano (0);
+    final XMLOffsetDateTime aEndDT = aStartDT.plusYears (1);
+    final SMPEndpoint aEP = new SMPEndpoint ("tp",
+                                             "http://localhost/as2",
+                                             false,
+                                             null,
+                                             aStartDT,
+                                             aEndDT,
+                                             "cert",
+                                             null,
+                                             "tc",
+                                             null,
+                                             null);
+    final SMPProcess aProcess = new SMPProcess (new SimpleProcessIdentifier (PeppolIdentifierHelper.DEFAULT_PROCESS_SCHEME,
+                                                                             "testproc"),
+                                                CollectionHelper.newList (aEP),
+                                                null);
+    final SMPServiceInformation aSI = new SMPServiceInformation (aSG,
+                                                                 new SimpleDocumentTypeIdentifier (PeppolIdentifierHelper.DOCUMENT_TYPE_SCHEME_BUSDOX_DOCID_QNS,
+                                                                                                   "testdoctype"),
+                                                                 CollectionHelper.newList (aProcess),
+                                                                 null);
+
+    // Non-standard transport profile, activation, expiration, invalid cert
+    aIndex.onSMPServiceInformationCreated (aSI);
+    assertTrue (aIndex.containsAnyServiceInformation (aSG.getID ()));
+    assertEquals (4, aIndex.getProblemCount ());
+    assertEquals (2, aIndex.getAllUndatedProblems ().size ());
+
+    final long nStart = aStartDT.toInstant ().toEpochMilli ();
+    final long nEnd = aEndDT.toInstant ().toEpochMilli ();
+    ICommonsList <SMPEndpointProblem> aProblems = aIndex.getAllProblemsInRange (Long.MIN_VALUE, Long.MAX_VALUE, null);
+    assertEquals (2, aProblems.size ());
+    assertEquals (ESMPEndpointProblemType.ENDPOINT_ACTIVATION, aProblems.get (0).getType ());
+    assertEquals (nStart, aProblems.get (0).getMillis ());
+    assertEquals (ESMPEndpointProblemType.ENDPOINT_EXPIRATION, aProblems.get (1).getType ());
+    assertEquals (nEnd, aProblems.get (1).getMillis ());
+
+    // From is inclusive, to is exclusive
+    aProblems = aIndex.getAllProblemsInRange (nStart + 1, nEnd, null);
+    assertEquals (0, aProblems.size ());
+    aProblems = aIndex.getAllProblemsInRange (nStart + 1, nEnd + 1, null);
+    assertEquals (1, aProblems.size ());
+    aProblems = aIndex.getAllProblemsInRange (Long.MIN_VALUE,
+                                              Long.MAX_VALUE,
+                                              x -> x.getType () == ESMPEndpointProblemType.ENDPOINT_EXPIRATION);
+    assertEquals (1, aProblems.size ());
+
+    // Update with a standard transport profile and without dates
+    aEP.setTransportProfile (ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2.getID ());
+    aEP.setServiceActivationDateTime (null);
+    aEP.setServiceExpirationDateTime (null);
+    aIndex.onSMPServiceInformationUpdated (aSI);
+    assertEquals (1, aIndex.getProblemCount ());
+    assertEquals (ESMPEndpointProblemType.CERTIFICATE_INVALID, aIndex.getAllUndatedProblems ().getFirstOrNull ().getType ());
+    assertEquals (0, aIndex.getAllProblemsInRange (Long.MIN_VALUE, Long.MAX_VALUE, null).size ());
+
+    // Delete the service group
+    aIndex.onSMPServiceGroupDeleted (aPI, false);
+    assertFalse (aIndex.containsAnyServiceInformation (aSG.getID ()));
+    assertEquals (0, aIndex.getProblemCount ());
+  }
+
+  @Test
+  public void testIndexAllWithConcurrentChanges ()
+  {
+    final XMLOffsetDateTime aDT = PDTFactory.getCurrentXMLOffsetDateTime ().withNano (0);
+    final ESMPTransportProfile eTP = ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2;
+    final SMPServiceInformation aUpdatedOld = _createSI ("0088:updated", eTP, aDT, aDT);
+    final SMPServiceInformation aUpdatedNew = _createSI ("0088:updated", eTP, aDT);
+    final SMPServiceInformation aDeleted = _createSI ("0088:deleted", eTP, aDT);
+    final SMPServiceInformation aUnchanged = _createSI ("0088:unchanged", eTP, aDT);
+
+    final SMPEndpointProblemIndex [] aIndex = new SMPEndpointProblemIndex [1];
+    aIndex[0] = new SMPEndpointProblemIndex (PeppolIdentifierFactory.INSTANCE,
+                                             SMPMetaManager.getServiceGroupMgr (),
+                                             _createServiceInfoMgr (aConsumer -> {
+                                               // Changed by callbacks after the snapshot was read
+                                               aIndex[0].onSMPServiceInformationUpdated (aUpdatedNew);
+                                               aConsumer.accept (aUpdatedOld);
+                                               aIndex[0].onSMPServiceInformationDeleted (aDeleted);
+                                               aConsumer.accept (aDeleted);
+                                               aConsumer.accept (aUnchanged);
+                                             }));
+    aIndex[0].indexAll ();
+    assertTrue (aIndex[0].isInitialized ());
+
+    // Invalid certificate and expiration per endpoint - the outdated
+    // snapshots are ignored
+    assertFalse (aIndex[0].containsAnyServiceInformation (aDeleted.getServiceGroupID ()));
+    assertEquals (4, aIndex[0].getProblemCount ());
+    assertEquals (2, aIndex[0].getAllProblemsInRange (Long.MIN_VALUE, Long.MAX_VALUE, null).size ());
+
+    // Afterwards callbacks are applied as usual
+    aIndex[0].onSMPServiceInformationUpdated (aUpdatedOld);
+    assertEquals (6, aIndex[0].getProblemCount ());
+  }
+
+  @Test
+  public void testPaging ()
+  {
+    final XMLOffsetDateTime aDT = PDTFactory.getCurrentXMLOffsetDateTime ().withNano (0);
+    final SMPEndpointProblemIndex aIndex = new SMPEndpointProblemIndex (PeppolIdentifierFactory.INSTANCE,
+                                                                        SMPMetaManager.getServiceGroupMgr (),
+                                                                        SMPMetaManager.getServiceInformationMgr ());
+    final XMLOffsetDateTime [] aDTs = new XMLOffsetDateTime [10];
+    for (int i = 0; i < aDTs.length; ++i)
+      aDTs[i] = aDT.plusDays (i);
+    aIndex.onSMPServiceInformationCreated (_createSI ("0088:paging",
+                                                      ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2,
+                                                      aDTs));
+    final long nFrom = aDT.toInstant ().toEpochMilli ();
+    final long nTo = aDT.plusDays (8).toInstant ().toEpochMilli ();
+
+    ICommonsList <SMPEndpointProblem> aPage = aIndex.getProblemsInRange (nFrom, nTo, null, 0, 3);
+    assertEquals (3, aPage.size ());
+    assertEquals (nFrom, aPage.getFirstOrNull ().getMillis ());
+    aPage = aIndex.getProblemsInRange (nFrom, nTo, null, 6, 3);
+    assertEquals (2, aPage.size ());
+    assertEquals (aDT.plusDays (7).toInstant ().toEpochMilli (), aPage.getLastOrNull ().getMillis ());
+    assertEquals (0, aIndex.getProblemsInRange (nFrom, nTo, null, 8, 3).size ());
+    assertEquals (1,
+                  aIndex.getProblemsInRange (nFrom,
+                                             nTo,
+                                             x -> x.getMillis () > nFrom,
+                                             6,
+                                             3)
+                        .size ());
+  }
+}
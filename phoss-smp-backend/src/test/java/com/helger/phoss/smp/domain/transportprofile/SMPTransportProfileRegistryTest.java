@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.domain.transportprofile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppol.smp.ESMPTransportProfileState;
+import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppol.smp.SMPTransportProfile;
+
+/**
+ * Test class for class {@link SMPTransportProfileRegistry}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPTransportProfileRegistryTest
+{
+  private static final long RELOAD_MILLIS = 60_000;
+
+  @Test
+  public void testReloadChangesOfOtherNodes ()
+  {
+    final ICommonsList <ISMPTransportProfile> aDB = new CommonsArrayList <> ();
+    for (final ESMPTransportProfile e : ESMPTransportProfile.values ())
+      aDB.add (new SMPTransportProfile (e.getID (), e.getName (), e.getState ()));
+    final AtomicInteger aQueries = new AtomicInteger (0);
+    final AtomicBoolean aFailing = new AtomicBoolean (false);
+    final AtomicLong aNow = new AtomicLong (1_000_000);
+    final SMPTransportProfileRegistry aRegistry = new SMPTransportProfileRegistry ( () -> {
+      aQueries.incrementAndGet ();
+      return aFailing.get () ? null : aDB.getClone ();
+    }, RELOAD_MILLIS, aNow::get);
+
+    assertFalse (aRegistry.contains ("tp1"));
+    assertEquals (1, aQueries.get ());
+
+    // Simulate a change of another node
+    aDB.add (new SMPTransportProfile ("tp1", "Name", ESMPTransportProfileState.ACTIVE));
+
+    // Within the reload interval the old profiles are used
+    aNow.addAndGet (RELOAD_MILLIS - 1);
+    assertFalse (aRegistry.contains ("tp1"));
+    assertEquals (1, aQueries.get ());
+
+    aNow.addAndGet (1);
+    assertTrue (aRegistry.contains ("tp1"));
+    assertEquals (2, aQueries.get ());
+    assertTrue (aRegistry.contains ("tp1"));
+    assertEquals (2, aQueries.get ());
+
+    // A failing reload keeps the known profiles
+    aFailing.set (true);
+    aNow.addAndGet (RELOAD_MILLIS);
+    assertTrue (aRegistry.contains ("tp1"));
+    assertEquals (3, aQueries.get ());
+    assertEquals (2, aRegistry.getLoadCount ());
+
+    // The next attempt is only made after the next interval
+    assertTrue (aRegistry.contains ("tp1"));
+    assertEquals (3, aQueries.get ());
+  }
+
+  @Test
+  public void testNoReload ()
+  {
+    final AtomicInteger aQueries = new AtomicInteger (0);
+    final AtomicLong aNow = new AtomicLong (0);
+    final SMPTransportProfileRegistry aRegistry = new SMPTransportProfileRegistry ( () -> {
+      aQueries.incrementAndGet ();
+      return new CommonsArrayList <> ();
+    }, 0, aNow::get);
+    assertNull (aRegistry.get ("tp1"));
+    aNow.addAndGet (RELOAD_MILLIS * 100);
+    assertNull (aRegistry.get ("tp1"));
+    assertEquals (0, aRegistry.size ());
+    assertEquals (1, aQueries.get ());
+  }
+}
@@ -16,6 +16,7 @@ import javax.annotation.Nonnull;
 
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.callback.CallbackList;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.state.EChange;
@@ -24,6 +25,7 @@ import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardCallback;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
 
 /**
  * Mock implementation of {@link ISMPBusinessCardManager}.
@@ -33,6 +35,7 @@ import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
 final class MockSMPBusinessCardManager implements ISMPBusinessCardManager
 {
   private final CallbackList <ISMPBusinessCardCallback> m_aCBs = new CallbackList <> ();
+  private final SMPBusinessCardSearchIndex m_aSearchIndex = new SMPBusinessCardSearchIndex (this);
 
   @Nonnull
   @ReturnsMutableObject
@@ -54,7 +57,7 @@ final class MockSMPBusinessCardManager implements ISMPBusinessCardManager
 
   public ICommonsList <ISMPBusinessCard> getAllSMPBusinessCards ()
   {
-    throw new UnsupportedOperationException ();
+    return new CommonsArrayList <> ();
   }
 
   public ICommonsSet <String> getAllSMPBusinessCardIDs ()
@@ -71,4 +74,10 @@ final class MockSMPBusinessCardManager implements ISMPBusinessCardManager
   {
     return 0;
   }
+
+  @Nonnull
+  public SMPBusinessCardSearchIndex getSearchIndex ()
+  {
+    return m_aSearchIndex;
+  }
 }
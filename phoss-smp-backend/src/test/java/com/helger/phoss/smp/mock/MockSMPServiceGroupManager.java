@@ -21,6 +21,8 @@ import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupCallback;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPage;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 
 /**
  * Mock implementation of {@link ISMPServiceGroupManager}.
@@ -83,6 +85,11 @@ final class MockSMPServiceGroupManager implements ISMPServiceGroupManager
     throw new UnsupportedOperationException ();
   }
 
+  public SMPServiceGroupPage getSMPServiceGroupPage (final SMPServiceGroupPageRequest aRequest)
+  {
+    throw new UnsupportedOperationException ();
+  }
+
   public ICommonsList <ISMPServiceGroup> getAllSMPServiceGroupsOfOwner (final String sOwnerID)
   {
     throw new UnsupportedOperationException ();
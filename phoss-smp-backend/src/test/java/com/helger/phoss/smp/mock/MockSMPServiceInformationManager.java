@@ -10,6 +10,8 @@
  */
 package com.helger.phoss.smp.mock;
 
+import java.util.function.Consumer;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -74,6 +76,11 @@ final class MockSMPServiceInformationManager implements ISMPServiceInformationMa
     return new CommonsArrayList <> ();
   }
 
+  public void forEachSMPServiceInformation (@Nonnull final Consumer <? super ISMPServiceInformation> aConsumer)
+  {
+    getAllSMPServiceInformation ().forEach (aConsumer);
+  }
+
   public ICommonsList <IDocumentTypeIdentifier> getAllSMPDocumentTypesOfServiceGroup (final ISMPServiceGroup aServiceGroup)
   {
     throw new UnsupportedOperationException ();
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.TransformService;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+
+/**
+ * Test class for class {@link CanonicalXMLStreamWriter}.
+ *
+ * @author Philip Helger
+ */
+public final class CanonicalXMLStreamWriterTest
+{
+  @Nonnull
+  private static String _getJDKCanonicalized (@Nonnull final String sXML) throws Exception
+  {
+    final TransformService aTS = TransformService.getInstance (CanonicalizationMethod.INCLUSIVE, "DOM");
+    aTS.init (null);
+    final OctetStreamData aData = (OctetStreamData) aTS.transform (new OctetStreamData (new NonBlockingByteArrayInputStream (sXML.getBytes (StandardCharsets.UTF_8))),
+                                                                   null);
+    return new String (StreamHelper.getAllBytes (aData.getOctetStream ()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testProcessingInstructionsOutsideOfRoot () throws Exception
+  {
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    final CanonicalXMLStreamWriter aWriter = new CanonicalXMLStreamWriter (aBAOS);
+    aWriter.writeStartDocument ();
+    aWriter.writeProcessingInstruction ("before", "  a=\"1\"");
+    aWriter.writeProcessingInstruction ("empty");
+    aWriter.writeStartElement ("root");
+    aWriter.writeProcessingInstruction ("inside", "x");
+    aWriter.writeCharacters ("text");
+    aWriter.writeEndElement ();
+    aWriter.writeProcessingInstruction ("after", "b");
+    aWriter.writeEndDocument ();
+    aWriter.close ();
+
+    final String sCanonical = aBAOS.getAsString (StandardCharsets.UTF_8);
+    assertEquals ("<?before a=\"1\"?>\n<?empty?>\n<root><?inside x?>text</root>\n<?after b?>", sCanonical);
+    assertEquals (_getJDKCanonicalized ("<?xml version=\"1.0\"?>\n<?before   a=\"1\"?><?empty?><root><?inside x?>text</root><?after b?>\n"),
+                  sCanonical);
+    // The root end tag offset points into the root element
+    assertTrue (sCanonical.startsWith ("</root>", (int) aWriter.getRootEndTagOffset ()));
+  }
+
+  @Test
+  public void testEntityReferences () throws Exception
+  {
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    final CanonicalXMLStreamWriter aWriter = new CanonicalXMLStreamWriter (aBAOS);
+    aWriter.writeStartDocument ();
+    aWriter.writeDTD ("<!DOCTYPE root [<!ENTITY company \"phoss &amp; co\"><!ENTITY product 'SMP by &company;'>]>");
+    aWriter.writeStartElement ("root");
+    aWriter.writeEntityRef ("lt");
+    aWriter.writeEntityRef ("#65");
+    aWriter.writeEntityRef ("#x42");
+    aWriter.writeEntityRef ("#x1F600");
+    aWriter.writeEntityRef ("quot");
+    aWriter.writeEntityRef ("product");
+    aWriter.writeEndElement ();
+    aWriter.writeEndDocument ();
+    aWriter.close ();
+
+    assertEquals ("<root>&lt;AB😀\"SMP by phoss &amp; co</root>", aBAOS.getAsString (StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testInvalidEntityReferences ()
+  {
+    final CanonicalXMLStreamWriter aWriter = new CanonicalXMLStreamWriter (new NonBlockingByteArrayOutputStream ());
+    aWriter.writeDTD ("<!DOCTYPE root [<!ENTITY self \"&self;\"><!ENTITY markup \"<a/>\"><!ENTITY ext SYSTEM \"ext.xml\">]>");
+    try
+    {
+      // Outside of the root element
+      aWriter.writeEntityRef ("amp");
+      fail ();
+    }
+    catch (final XMLStreamException ex)
+    {
+      // expected
+    }
+
+    aWriter.writeStartElement ("root");
+    for (final String sName : new String [] { "undeclared", "ext", "self", "markup", "#xZZ", "#-1" })
+      try
+      {
+        aWriter.writeEntityRef (sName);
+        fail (sName);
+      }
+      catch (final XMLStreamException ex)
+      {
+        // expected
+      }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Provider;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import com.helger.phoss.smp.ESMPRESTType;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link SMPSigningContext}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPSigningContextTest
+{
+  private static KeyStore.PrivateKeyEntry s_aKeyEntry;
+
+  @BeforeClass
+  public static void beforeClass () throws Exception
+  {
+    final KeyPairGenerator aKPG = KeyPairGenerator.getInstance ("RSA");
+    aKPG.initialize (2048);
+    final KeyPair aKeyPair = aKPG.generateKeyPair ();
+    final X500Name aSubject = new X500Name ("CN=SMP Signing Context Test,O=phoss,C=AT");
+    final Date aNow = new Date ();
+    final X509Certificate aCert = new JcaX509CertificateConverter ().getCertificate (new JcaX509v3CertificateBuilder (aSubject,
+                                                                                                                      BigInteger.ONE,
+                                                                                                                      aNow,
+                                                                                                                      new Date (aNow.getTime () +
+                                                                                                                                86_400_000L),
+                                                                                                                      aSubject,
+                                                                                                                      aKeyPair.getPublic ()).build (new JcaContentSignerBuilder ("SHA256withRSA").build (aKeyPair.getPrivate ())));
+    s_aKeyEntry = new KeyStore.PrivateKeyEntry (aKeyPair.getPrivate (), new Certificate [] { aCert });
+  }
+
+  private static void _signAndValidate (final SMPSigningContext aCtx) throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM ("<root xmlns='urn:test'><child a='1'>text</child></root>");
+    assertNotNull (aDoc);
+    aCtx.sign (aDoc.getDocumentElement ());
+
+    final NodeList aNL = aDoc.getElementsByTagNameNS (XMLSignature.XMLNS, "Signature");
+    assertEquals (1, aNL.getLength ());
+    final DOMValidateContext aValidateContext = new DOMValidateContext (s_aKeyEntry.getCertificate ().getPublicKey (),
+                                                                        aNL.item (0));
+    final XMLSignature aSignature = XMLSignatureFactory.getInstance ("DOM").unmarshalXMLSignature (aValidateContext);
+    assertEquals (aCtx.getCanonicalizationMethodAlgorithm (),
+                  aSignature.getSignedInfo ().getCanonicalizationMethod ().getAlgorithm ());
+    assertTrue (aSignature.validate (aValidateContext));
+  }
+
+  @Test
+  public void testDefaultProvider () throws Exception
+  {
+    for (final ESMPRESTType e : ESMPRESTType.values ())
+    {
+      final SMPSigningContext aCtx = SMPSigningContext.create (e, s_aKeyEntry, null);
+      assertSame (e, aCtx.getRESTType ());
+      assertNull (aCtx.getSignatureProvider ());
+      _signAndValidate (aCtx);
+    }
+  }
+
+  @Test
+  public void testExplicitProvider () throws Exception
+  {
+    final Provider aProvider = Security.getProvider ("SunRsaSign");
+    assertNotNull (aProvider);
+
+    // The JDK XMLDSig provider supports the explicit signature provider
+    assertTrue (SMPSigningContext.isSignatureProviderPropertySupported (XMLSignatureFactory.getInstance ("DOM")
+                                                                                           .getProvider ()
+                                                                                           .getName ()));
+    for (final ESMPRESTType e : ESMPRESTType.values ())
+    {
+      final SMPSigningContext aCtx = SMPSigningContext.create (e, s_aKeyEntry, aProvider);
+      assertSame (aProvider, aCtx.getSignatureProvider ());
+      _signAndValidate (aCtx);
+    }
+  }
+
+  @Test
+  public void testIsSignatureProviderPropertySupported ()
+  {
+    assertTrue (SMPSigningContext.isSignatureProviderPropertySupported ("XMLDSig"));
+    assertTrue (SMPSigningContext.isSignatureProviderPropertySupported ("ApacheXMLDSig"));
+    assertFalse (SMPSigningContext.isSignatureProviderPropertySupported ("OtherXMLDSig"));
+    assertFalse (SMPSigningContext.isSignatureProviderPropertySupported (null));
+  }
+}
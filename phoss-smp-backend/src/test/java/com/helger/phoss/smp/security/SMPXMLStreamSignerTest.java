@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * The Original Code is Copyright The Peppol project (http://www.peppol.eu)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.helger.phoss.smp.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Date;
+
+import javax.annotation.Nonnull;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.datetime.XMLOffsetDateTime;
+import com.helger.commons.string.StringHelper;
+import com.helger.jaxb.GenericJAXBMarshaller;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.peppolid.peppol.PeppolIdentifierHelper;
+import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
+import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
+import com.helger.phoss.smp.ESMPRESTType;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.photon.security.CSecurity;
+import com.helger.smpclient.bdxr1.marshal.BDXR1MarshallerSignedServiceMetadataType;
+import com.helger.smpclient.bdxr2.marshal.BDXR2MarshallerServiceMetadata;
+import com.helger.smpclient.peppol.marshal.SMPMarshallerSignedServiceMetadataType;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link SMPXMLStreamSigner}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPXMLStreamSignerTest
+{
+  private static KeyStore.PrivateKeyEntry s_aKeyEntry;
+
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  @BeforeClass
+  public static void beforeClass () throws Exception
+  {
+    final KeyPairGenerator aKPG = KeyPairGenerator.getInstance ("RSA");
+    aKPG.initialize (2048);
+    final KeyPair aKeyPair = aKPG.generateKeyPair ();
+    final X500Name aSubject = new X500Name ("CN=SMP Test & \"Signer\",O=phoss,C=AT");
+    final Date aNow = new Date ();
+    final X509Certificate aCert = new JcaX509CertificateConverter ().getCertificate (new JcaX509v3CertificateBuilder (aSubject,
+                                                                                                                      BigInteger.ONE,
+                                                                                                                      aNow,
+                                                                                                                      new Date (aNow.getTime () +
+                                                                                                                                86_400_000L),
+                                                                                                                      aSubject,
+                                                                                                                      aKeyPair.getPublic ()).build (new JcaContentSignerBuilder ("SHA256withRSA").build (aKeyPair.getPrivate ())));
+    s_aKeyEntry = new KeyStore.PrivateKeyEntry (aKeyPair.getPrivate (), new Certificate [] { aCert });
+  }
+
+  @Nonnull
+  private static SMPServiceInformation _createServiceInformation () throws Exception
+  {
+    final SMPServiceGroup aSG = new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID,
+                                                     PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:test&<>\""),
+                                                     "<ext:sg xmlns:ext=\"urn:ext\" ext:b=\"2\" a=\"x&#9;y&#10;z\">sg</ext:sg>");
+    final XMLOffsetDateTime aStartDT = PDTFactory.getCurrentXMLOffsetDateTime ().withNano (0);
+    final SMPEndpoint aEP = new SMPEndpoint ("peppol-transport-as4-v2_0",
+                                             "https://ap.example.org/as4?a=1&b=2",
+                                             false,
+                                             "minauth",
+                                             aStartDT,
+                                             aStartDT.plusYears (1),
+                                             Base64.getEncoder ()
+                                                   .encodeToString (((X509Certificate) s_aKeyEntry.getCertificate ()).getEncoded ()),
+                                             "Description\r\nwith <special> & \"chars\" äöü 😀",
+                                             "mailto:tech@example.org",
+                                             "https://example.org/info",
+                                             "<extep/>");
+    final SMPProcess aProcess = new SMPProcess (new SimpleProcessIdentifier (PeppolIdentifierHelper.DEFAULT_PROCESS_SCHEME,
+                                                                             "urn:proc"),
+                                                CollectionHelper.newList (aEP),
+                                                "<ext:proc xmlns:ext=\"urn:ext\" xmlns=\"urn:default\"><child/></ext:proc>");
+    return new SMPServiceInformation (aSG,
+                                      new SimpleDocumentTypeIdentifier (PeppolIdentifierHelper.DOCUMENT_TYPE_SCHEME_BUSDOX_DOCID_QNS,
+                                                                        "urn:doc::Invoice##1.0"),
+                                      CollectionHelper.newList (aProcess),
+                                      "<extsi/>");
+  }
+
+  @Nonnull
+  private static Element _getSignature (@Nonnull final Document aDoc)
+  {
+    final NodeList aNL = aDoc.getElementsByTagNameNS (XMLSignature.XMLNS, "Signature");
+    assertEquals (1, aNL.getLength ());
+    return (Element) aNL.item (0);
+  }
+
+  @Nonnull
+  private static String _getDSigText (@Nonnull final Element aSignature, @Nonnull final String sLocalName)
+  {
+    final NodeList aNL = aSignature.getElementsByTagNameNS (XMLSignature.XMLNS, sLocalName);
+    assertEquals (1, aNL.getLength ());
+    return StringHelper.removeMultiple (aNL.item (0).getTextContent (), new char [] { '\r', '\n' });
+  }
+
+  private static <T> void _testSign (@Nonnull final ESMPRESTType eRESTType,
+                                     @Nonnull final GenericJAXBMarshaller <T> aMarshaller,
+                                     @Nonnull final T aObject) throws Exception
+  {
+    final SMPSigningContext aCtx = SMPSigningContext.create (eRESTType, s_aKeyEntry, null);
+    aMarshaller.setUseSchema (false);
+
+    // The streaming version
+    final byte [] aSigned = SMPXMLStreamSigner.getSignedXML (aMarshaller, aObject, aCtx);
+    final Document aStreamDoc = DOMReader.readXMLDOM (aSigned);
+    assertNotNull (aStreamDoc);
+    final Element aStreamSig = _getSignature (aStreamDoc);
+
+    // Signature must be valid
+    final DOMValidateContext aValidateCtx = new DOMValidateContext (s_aKeyEntry.getCertificate ().getPublicKey (),
+                                                                    aStreamSig);
+    final XMLSignature aSignature = XMLSignatureFactory.getInstance ("DOM").unmarshalXMLSignature (aValidateCtx);
+    assertTrue (eRESTType.getID (), aSignature.validate (aValidateCtx));
+
+    // The DOM version
+    final Document aDOMDoc = aMarshaller.getAsDocument (aObject);
+    assertNotNull (aDOMDoc);
+    aCtx.sign (aDOMDoc.getDocumentElement ());
+    final Element aDOMSig = _getSignature (aDOMDoc);
+
+    // Digest and signature value must be identical
+    assertEquals (_getDSigText (aDOMSig, "DigestValue"), _getDSigText (aStreamSig, "DigestValue"));
+    assertEquals (_getDSigText (aDOMSig, "SignatureValue"), _getDSigText (aStreamSig, "SignatureValue"));
+  }
+
+  @Test
+  public void testPeppol () throws Exception
+  {
+    final SMPServiceInformation aSI = _createServiceInformation ();
+    final com.helger.xsds.peppol.smp1.SignedServiceMetadataType aSSM = new com.helger.xsds.peppol.smp1.SignedServiceMetadataType ();
+    aSSM.setServiceMetadata (aSI.getAsJAXBObjectPeppol ());
+    _testSign (ESMPRESTType.PEPPOL, new SMPMarshallerSignedServiceMetadataType (), aSSM);
+  }
+
+  @Test
+  public void testBDXR1 () throws Exception
+  {
+    final SMPServiceInformation aSI = _createServiceInformation ();
+    final com.helger.xsds.bdxr.smp1.SignedServiceMetadataType aSSM = new com.helger.xsds.bdxr.smp1.SignedServiceMetadataType ();
+    aSSM.setServiceMetadata (aSI.getAsJAXBObjectBDXR1 ());
+    _testSign (ESMPRESTType.OASIS_BDXR_V1, new BDXR1MarshallerSignedServiceMetadataType (), aSSM);
+  }
+
+  @Test
+  public void testBDXR2 () throws Exception
+  {
+    final SMPServiceInformation aSI = _createServiceInformation ();
+    _testSign (ESMPRESTType.OASIS_BDXR_V2, new BDXR2MarshallerServiceMetadata (), aSI.getAsJAXBObjectBDXR2 ());
+  }
+}
@@ -34,6 +34,9 @@ import com.helger.db.jdbc.IHasConnection;
 import com.helger.db.jdbc.executor.DBNoConnectionException;
 import com.helger.phoss.smp.backend.sql.SMPDataSourceSingleton;
 import com.helger.phoss.smp.backend.sql.SMPJDBCConfiguration;
+import com.helger.phoss.smp.backend.sql.SMPQueryPlanChecker;
+import com.helger.phoss.smp.backend.sql.SMPQueryPlanChecker.EQueryPlanState;
+import com.helger.phoss.smp.backend.sql.SMPReadReplicaRouter;
 import com.helger.phoss.smp.status.ISMPStatusProviderExtensionSPI;
 
 /**
@@ -100,6 +103,16 @@ public class SMPSQLStatusProviderExtensionSPI implements ISMPStatusProviderExten
         // connection" by default
         ret.put ("smp.sql.db.connection-possible", Boolean.valueOf (_isDBConnectionPossible ()));
       }
+
+      // Since 7.1.4
+      final SMPReadReplicaRouter aReplicaRouter = SMPDataSourceSingleton.getInstance ().getReadReplicaRouter ();
+      ret.put ("smp.sql.replica.count", Integer.valueOf (aReplicaRouter.getReplicaCount ()));
+      ret.put ("smp.sql.replica.healthy-count", Integer.valueOf (aReplicaRouter.getHealthyReplicaCount ()));
+      ret.put ("smp.sql.replica.max-lag-ms", Long.valueOf (aReplicaRouter.getMaxReplicationLagMillis ()));
+
+      final ICommonsOrderedMap <String, EQueryPlanState> aQueryPlans = SMPQueryPlanChecker.getLastResult ();
+      if (aQueryPlans != null)
+        aQueryPlans.forEach ( (k, v) -> ret.put ("smp.sql.query-plan." + k, v.getID ()));
     }
     else
     {
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.resource.FileSystemResource;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.peppolid.peppol.doctype.EPredefinedDocumentTypeIdentifier;
+import com.helger.peppolid.peppol.process.EPredefinedProcessIdentifier;
+import com.helger.phoss.smp.ESMPRESTType;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.phoss.smp.mock.SMPServerRESTTestRule;
+import com.helger.phoss.smp.restapi.SMPServerAPI;
+import com.helger.photon.security.CSecurity;
+import com.helger.servlet.mock.MockHttpServletRequest;
+import com.helger.web.scope.mgr.WebScoped;
+import com.helger.xsds.peppol.smp1.ServiceGroupType;
+
+/**
+ * Test class for class {@link SMPRestDataProvider}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPRestDataProviderTest
+{
+  @Rule
+  public final SMPServerRESTTestRule m_aRule = new SMPServerRESTTestRule (new FileSystemResource ("src/test/resources/test-smp-server-xml-peppol.properties"));
+
+  @Test
+  public void testValidatorsAndResponseUseTheSameObjects () throws Exception
+  {
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:dataprovider");
+    final String sPI = aPI.getURIEncoded ();
+    final IDocumentTypeIdentifier aDocTypeID = EPredefinedDocumentTypeIdentifier.INVOICE_EN16931_PEPPOL_V30.getAsDocumentTypeIdentifier ();
+
+    final ISMPServiceGroupManager aSGMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceInformationManager aSIMgr = SMPMetaManager.getServiceInformationMgr ();
+
+    final ISMPServiceGroup aSG = aSGMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI, null, false);
+    try
+    {
+      final SMPEndpoint aEP = new SMPEndpoint (ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2.getID (),
+                                               "http://test.smpserver/as4",
+                                               false,
+                                               null,
+                                               null,
+                                               null,
+                                               "cert",
+                                               "sd",
+                                               "tc",
+                                               null,
+                                               null);
+      final SMPProcess aProcess = new SMPProcess (EPredefinedProcessIdentifier.BIS3_BILLING.getAsProcessIdentifier (),
+                                                  new CommonsArrayList <> (aEP),
+                                                  null);
+      assertTrue (aSIMgr.mergeSMPServiceInformation (new SMPServiceInformation (aSG,
+                                                                                aDocTypeID,
+                                                                                new CommonsArrayList <> (aProcess),
+                                                                                null))
+                        .isSuccess ());
+
+      try (final WebScoped aWS = new WebScoped (new MockHttpServletRequest ()))
+      {
+        final SMPRestDataProvider aDataProvider = new SMPRestDataProvider (aWS.getRequestScope (), sPI);
+
+        // Load everything while creating the validators
+        final SMPConditionalGetHelper.ResponseValidators aValidators = SMPConditionalGetHelper.getServiceGroupValidators (ESMPRESTType.PEPPOL,
+                                                                                                                         aDataProvider,
+                                                                                                                         sPI,
+                                                                                                                         false);
+        assertNotNull (aValidators);
+        final ISMPServiceGroup aLoadedSG = aDataProvider.getServiceGroupOfID (aPI);
+        assertNotNull (aLoadedSG);
+        assertSame (aLoadedSG, aDataProvider.getServiceGroupOfID (aPI));
+        final ICommonsList <ISMPServiceInformation> aLoadedSIs = aDataProvider.getAllServiceInformationOfServiceGroup (aLoadedSG);
+        assertEquals (1, aLoadedSIs.size ());
+        assertSame (aLoadedSIs.getFirstOrNull (),
+                    aDataProvider.getServiceInformationOfServiceGroupAndDocumentType (aLoadedSG, aDocTypeID));
+        assertNull (aDataProvider.getServiceInformationOfServiceGroupAndDocumentType (aLoadedSG,
+                                                                                      EPredefinedDocumentTypeIdentifier.CREDITNOTE_EN16931_PEPPOL_V30.getAsDocumentTypeIdentifier ()));
+
+        // Remove the service information from the backend: the response must
+        // still be created from the objects the validators were built from
+        assertTrue (aSIMgr.deleteAllSMPServiceInformationOfServiceGroup (aSG).isChanged ());
+        final ServiceGroupType aResponse = new SMPServerAPI (aDataProvider).getServiceGroup (sPI);
+        assertEquals (1, aResponse.getServiceMetadataReferenceCollection ().getServiceMetadataReferenceCount ());
+      }
+
+      // A new request sees the change
+      try (final WebScoped aWS = new WebScoped (new MockHttpServletRequest ()))
+      {
+        final SMPRestDataProvider aDataProvider = new SMPRestDataProvider (aWS.getRequestScope (), sPI);
+        assertFalse (aDataProvider.getAllServiceInformationOfServiceGroup (aSG).isNotEmpty ());
+      }
+    }
+    finally
+    {
+      aSGMgr.deleteSMPServiceGroupNoEx (aPI, false);
+    }
+  }
+}
@@ -16,7 +16,9 @@
  */
 package com.helger.phoss.smp.rest;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -33,15 +35,26 @@ import org.slf4j.LoggerFactory;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.ArrayHelper;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.http.CHttpHeader;
 import com.helger.commons.io.resource.FileSystemResource;
 import com.helger.commons.string.StringHelper;
+import com.helger.commons.timing.StopWatch;
 import com.helger.http.basicauth.BasicAuthClientCredentials;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
 import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.peppolid.peppol.process.EPredefinedProcessIdentifier;
 import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
 import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
 import com.helger.phoss.smp.mock.MockSMPClient;
 import com.helger.phoss.smp.mock.SMPServerRESTTestRule;
 import com.helger.photon.security.CSecurity;
@@ -246,4 +259,120 @@ public final class ServiceGroupInterfaceTest
       assertFalse (aSGMgr.containsSMPServiceGroupWithID (aPI_UC));
     }
   }
+
+  @Test
+  public void testConditionalGetJerseyClient () throws Exception
+  {
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9930:de203827312");
+    final String sPI = aPI.getURIEncoded ();
+
+    final ServiceGroupType aSG = new ServiceGroupType ();
+    aSG.setParticipantIdentifier (new SimpleParticipantIdentifier (aPI));
+    aSG.setServiceMetadataReferenceCollection (new ServiceMetadataReferenceCollectionType ());
+
+    final ISMPServiceGroupManager aSGMgr = SMPMetaManager.getServiceGroupMgr ();
+    final WebTarget aTarget = ClientBuilder.newClient ().target (m_aRule.getFullURL ());
+    Response aResponseMsg;
+
+    try
+    {
+      // PUT - create
+      aResponseMsg = _addCredentials (aTarget.path (sPI)
+                                             .request ()).put (Entity.xml (m_aObjFactory.createServiceGroup (aSG)));
+      _testResponseJerseyClient (aResponseMsg, 200);
+
+      // GET - strong ETag is present
+      aResponseMsg = aTarget.path (sPI).request ().get ();
+      _testResponseJerseyClient (aResponseMsg, 200);
+      final String sETag = aResponseMsg.getHeaderString (CHttpHeader.ETAG);
+      assertNotNull (sETag);
+      assertTrue (sETag, sETag.startsWith ("\""));
+
+      // GET with matching ETag
+      _testResponseJerseyClient (aTarget.path (sPI).request ().header (CHttpHeader.IF_NON_MATCH, sETag).get (), 304);
+      _testResponseJerseyClient (aTarget.path (sPI)
+                                        .request ()
+                                        .header (CHttpHeader.IF_NON_MATCH, "\"other\", W/" + sETag)
+                                        .get (),
+                                 304);
+      _testResponseJerseyClient (aTarget.path (sPI).request ().header (CHttpHeader.IF_NON_MATCH, "\"other\"").get (),
+                                 200);
+
+      // Modify the service group - old ETag must no longer match
+      assertTrue (aSGMgr.updateSMPServiceGroup (aPI, CSecurity.USER_ADMINISTRATOR_ID, "<ext val=\"a\" />").isChanged ());
+      aResponseMsg = aTarget.path (sPI).request ().header (CHttpHeader.IF_NON_MATCH, sETag).get ();
+      _testResponseJerseyClient (aResponseMsg, 200);
+      assertNotEquals (sETag, aResponseMsg.getHeaderString (CHttpHeader.ETAG));
+    }
+    finally
+    {
+      aResponseMsg = _addCredentials (aTarget.path (sPI).request ()).delete ();
+      _testResponseJerseyClient (aResponseMsg, 200, 404);
+      assertFalse (aSGMgr.containsSMPServiceGroupWithID (aPI));
+    }
+  }
+
+  @Test
+  public void testGetServiceGroupWithManyDocumentTypes () throws Exception
+  {
+    final int nDocTypes = 500;
+    final int nRuns = 50;
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:manydoctypes");
+    final IProcessIdentifier aProcID = EPredefinedProcessIdentifier.BIS3_BILLING.getAsProcessIdentifier ();
+
+    final ISMPServiceGroupManager aSGMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceInformationManager aSIMgr = SMPMetaManager.getServiceInformationMgr ();
+    final SMPClient aSMPClient = new MockSMPClient ();
+
+    final ISMPServiceGroup aSG = aSGMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI, null, false);
+    try
+    {
+      for (int i = 0; i < nDocTypes; ++i)
+      {
+        final SMPEndpoint aEP = new SMPEndpoint (ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2.getID (),
+                                                 "http://test.smpserver/as4",
+                                                 false,
+                                                 null,
+                                                 null,
+                                                 null,
+                                                 "cert",
+                                                 "sd",
+                                                 "tc",
+                                                 null,
+                                                 null);
+        final SMPProcess aProcess = new SMPProcess (aProcID, new CommonsArrayList <> (aEP), null);
+        final IDocumentTypeIdentifier aDocTypeID = PeppolIdentifierFactory.INSTANCE.createDocumentTypeIdentifierWithDefaultScheme ("urn:test:doctype" +
+                                                                                                                                    i +
+                                                                                                                                    "::Invoice##urn:test::1.0");
+        assertTrue (aSIMgr.mergeSMPServiceInformation (new SMPServiceInformation (aSG,
+                                                                                  aDocTypeID,
+                                                                                  new CommonsArrayList <> (aProcess),
+                                                                                  null))
+                          .isSuccess ());
+      }
+
+      // Warm up
+      ServiceGroupType aResult = aSMPClient.getServiceGroup (aPI);
+      assertEquals (nDocTypes, aResult.getServiceMetadataReferenceCollection ().getServiceMetadataReferenceCount ());
+
+      final StopWatch aSW = StopWatch.createdStarted ();
+      for (int i = 0; i < nRuns; ++i)
+      {
+        aResult = aSMPClient.getServiceGroup (aPI);
+        assertEquals (nDocTypes, aResult.getServiceMetadataReferenceCollection ().getServiceMetadataReferenceCount ());
+      }
+      final long nMillis = aSW.stopAndGetMillis ();
+      LOGGER.info ("GET of a service group with " +
+                   nDocTypes +
+                   " document types took on average " +
+                   (nMillis * 1000 / nRuns) +
+                   " microseconds");
+    }
+    finally
+    {
+      aSGMgr.deleteSMPServiceGroupNoEx (aPI, false);
+      assertFalse (aSGMgr.containsSMPServiceGroupWithID (aPI));
+    }
+  }
 }
+
@@ -16,13 +16,18 @@
  */
 package com.helger.phoss.smp.rest;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.annotation.Nonnull;
 
@@ -35,6 +40,8 @@ import com.helger.commons.ValueEnforcer;
 import com.helger.commons.collection.ArrayHelper;
 import com.helger.commons.http.CHttpHeader;
 import com.helger.commons.io.resource.FileSystemResource;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.string.StringHelper;
 import com.helger.http.basicauth.BasicAuthClientCredentials;
 import com.helger.peppol.smp.ESMPTransportProfile;
@@ -54,6 +61,7 @@ import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
 import com.helger.phoss.smp.mock.MockSMPClient;
 import com.helger.phoss.smp.mock.SMPServerRESTTestRule;
 import com.helger.photon.security.CSecurity;
+import com.helger.servlet.response.ResponseHelperSettings;
 import com.helger.smpclient.exception.SMPClientException;
 import com.helger.smpclient.exception.SMPClientNotFoundException;
 import com.helger.smpclient.peppol.SMPClient;
@@ -235,6 +243,119 @@ public final class ServiceMetadataInterfaceTest
     }
   }
 
+  @Nonnull
+  private static byte [] _decompress (@Nonnull final byte [] aBytes, final boolean bGzip) throws IOException
+  {
+    try (final InputStream aIS = bGzip ? new GZIPInputStream (new NonBlockingByteArrayInputStream (aBytes))
+                                       : new InflaterInputStream (new NonBlockingByteArrayInputStream (aBytes)))
+    {
+      return StreamHelper.getAllBytes (aIS);
+    }
+  }
+
+  @Test
+  public void testCompressionJerseyClient () throws IOException
+  {
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:xxx");
+    final String sPI = aPI.getURIEncoded ();
+
+    final PeppolDocumentTypeIdentifier aDT = EPredefinedDocumentTypeIdentifier.INVOICE_EN16931_PEPPOL_V30.getAsDocumentTypeIdentifier ();
+    final String sDT = aDT.getURIEncoded ();
+
+    final ServiceGroupType aSG = new ServiceGroupType ();
+    aSG.setParticipantIdentifier (new SimpleParticipantIdentifier (aPI));
+    aSG.setServiceMetadataReferenceCollection (new ServiceMetadataReferenceCollectionType ());
+
+    final ServiceMetadataType aSM = new ServiceMetadataType ();
+    final ServiceInformationType aSI = new ServiceInformationType ();
+    aSI.setParticipantIdentifier (new SimpleParticipantIdentifier (aPI));
+    aSI.setDocumentIdentifier (aDT);
+    {
+      final ProcessListType aPL = new ProcessListType ();
+      final ProcessType aProcess = new ProcessType ();
+      aProcess.setProcessIdentifier (EPredefinedProcessIdentifier.BIS3_BILLING.getAsProcessIdentifier ());
+      final ServiceEndpointList aSEL = new ServiceEndpointList ();
+      final EndpointType aEndpoint = new EndpointType ();
+      aEndpoint.setEndpointReference (W3CEndpointReferenceHelper.createEndpointReference ("http://test.smpserver/as2"));
+      aEndpoint.setRequireBusinessLevelSignature (false);
+      aEndpoint.setCertificate ("blacert");
+      aEndpoint.setServiceDescription ("Unit test service");
+      aEndpoint.setTechnicalContactUrl ("https://github.com/phax/phoss-smp");
+      aEndpoint.setTransportProfile (ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2.getID ());
+      aSEL.addEndpoint (aEndpoint);
+      aProcess.setServiceEndpointList (aSEL);
+      aPL.addProcess (aProcess);
+      aSI.setProcessList (aPL);
+    }
+    aSM.setServiceInformation (aSI);
+
+    final WebTarget aTarget = ClientBuilder.newClient ().target (m_aRule.getFullURL ());
+    Response aResponseMsg;
+
+    try
+    {
+      // PUT ServiceGroup and ServiceInformation
+      aResponseMsg = _addCredentials (aTarget.path (sPI).request ()).put (Entity.xml (m_aObjFactory.createServiceGroup (aSG)));
+      _testResponseJerseyClient (aResponseMsg, 200);
+      aResponseMsg = _addCredentials (aTarget.path (sPI)
+                                             .path ("services")
+                                             .path (sDT)
+                                             .request ()).put (Entity.xml (m_aObjFactory.createServiceMetadata (aSM)));
+      _testResponseJerseyClient (aResponseMsg, 200);
+
+      // The complete service group is large enough to be compressed
+      aResponseMsg = aTarget.path ("complete").path (sPI).request ().header (CHttpHeader.ACCEPT_ENCODING, "identity").get ();
+      assertEquals (200, aResponseMsg.getStatus ());
+      assertNull (aResponseMsg.getHeaderString (CHttpHeader.CONTENT_ENCODING));
+      final String sETag = aResponseMsg.getHeaderString (CHttpHeader.ETAG);
+      assertNotNull (sETag);
+      final byte [] aPlainBytes = aResponseMsg.readEntity (byte [].class);
+      assertTrue (aPlainBytes.length > 0);
+
+      // gzip
+      aResponseMsg = aTarget.path ("complete").path (sPI).request ().header (CHttpHeader.ACCEPT_ENCODING, "gzip").get ();
+      assertEquals (200, aResponseMsg.getStatus ());
+      assertEquals ("gzip", aResponseMsg.getHeaderString (CHttpHeader.CONTENT_ENCODING));
+      final String sGzipETag = aResponseMsg.getHeaderString (CHttpHeader.ETAG);
+      assertNotNull (sGzipETag);
+      assertTrue (sGzipETag.endsWith ("--gzip\""));
+      assertArrayEquals (aPlainBytes, _decompress (aResponseMsg.readEntity (byte [].class), true));
+
+      // deflate
+      aResponseMsg = aTarget.path ("complete").path (sPI).request ().header (CHttpHeader.ACCEPT_ENCODING, "deflate").get ();
+      assertEquals (200, aResponseMsg.getStatus ());
+      assertEquals ("deflate", aResponseMsg.getHeaderString (CHttpHeader.CONTENT_ENCODING));
+      assertArrayEquals (aPlainBytes, _decompress (aResponseMsg.readEntity (byte [].class), false));
+
+      // The ETag of the compressed response is valid for conditional requests
+      aResponseMsg = aTarget.path ("complete")
+                            .path (sPI)
+                            .request ()
+                            .header (CHttpHeader.ACCEPT_ENCODING, "gzip")
+                            .header (CHttpHeader.IF_NON_MATCH, sGzipETag)
+                            .get ();
+      // Same Vary header as the full response
+      assertEquals (CHttpHeader.ACCEPT_ENCODING, aResponseMsg.getHeaderString (CHttpHeader.VARY));
+      _testResponseJerseyClient (aResponseMsg, 304);
+
+      // The generic compression of all other responses is still enabled
+      assertTrue (ResponseHelperSettings.isResponseCompressionEnabled ());
+
+      // Small responses are not compressed
+      aResponseMsg = aTarget.path (sPI).request ().header (CHttpHeader.ACCEPT_ENCODING, "gzip").get ();
+      assertEquals (200, aResponseMsg.getStatus ());
+      assertNull (aResponseMsg.getHeaderString (CHttpHeader.CONTENT_ENCODING));
+      _testResponseJerseyClient (aResponseMsg, 200);
+    }
+    finally
+    {
+      aResponseMsg = _addCredentials (aTarget.path (sPI).path ("services").path (sDT).request ()).delete ();
+      _testResponseJerseyClient (aResponseMsg, 200, 404);
+      aResponseMsg = _addCredentials (aTarget.path (sPI).request ()).delete ();
+      _testResponseJerseyClient (aResponseMsg, 200, 404);
+    }
+  }
+
   @Test
   public void testCreateAndDeleteServiceInformationSMPClient () throws SMPClientException
   {
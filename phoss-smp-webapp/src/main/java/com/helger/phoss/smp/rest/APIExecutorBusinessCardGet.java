@@ -22,8 +22,6 @@ import javax.annotation.Nonnull;
 
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.mime.CMimeType;
-import com.helger.peppol.businesscard.v3.PD3BusinessCardMarshaller;
-import com.helger.peppol.businesscard.v3.PD3BusinessCardType;
 import com.helger.phoss.smp.app.SMPWebAppConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.exception.SMPPreconditionFailedException;
@@ -54,10 +52,21 @@ public final class APIExecutorBusinessCardGet extends AbstractSMPAPIExecutor
                                                 aDataProvider.getCurrentURI ());
     }
 
-    // getBusinessCard throws an exception if non is found
-    final PD3BusinessCardType ret = new BusinessCardServerAPI (aDataProvider).getBusinessCard (sServiceGroupID);
-    final byte [] aBytes = new PD3BusinessCardMarshaller ().getAsBytes (ret);
+    final SMPConditionalGetHelper.ResponseValidators aValidators = SMPConditionalGetHelper.getBusinessCardValidators (sServiceGroupID);
+    if (SMPConditionalGetHelper.handleConditionalGet (aRequestScope.headers (), aUnifiedResponse, aValidators))
+    {
+      // The client already has the current version
+      return;
+    }
+
+    // getBusinessCardAsBytes throws an exception if non is found
+    final byte [] aBytes = new BusinessCardServerAPI (aDataProvider).getBusinessCardAsBytes (sServiceGroupID);
 
-    aUnifiedResponse.setContent (aBytes).setMimeType (CMimeType.TEXT_XML).setCharset (XMLWriterSettings.DEFAULT_XML_CHARSET_OBJ);
+    SMPResponseCompressionHelper.setContent (aRequestScope,
+                                             aUnifiedResponse,
+                                             new SMPResponseContent (aBytes,
+                                                                     CMimeType.TEXT_XML,
+                                                                     XMLWriterSettings.DEFAULT_XML_CHARSET_OBJ),
+                                             aValidators == null ? null : aValidators.getETag ());
   }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.mime.CMimeType;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.StringParser;
+import com.helger.json.IJsonArray;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.json.serialize.JsonWriter;
+import com.helger.json.serialize.JsonWriterSettings;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.serviceinfo.ESMPEndpointProblemType;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointProblem;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointProblemIndex;
+import com.helger.phoss.smp.domain.user.SMPUserManagerPhoton;
+import com.helger.phoss.smp.exception.SMPBadRequestException;
+import com.helger.phoss.smp.restapi.ISMPServerAPIDataProvider;
+import com.helger.phoss.smp.restapi.SMPAPICredentials;
+import com.helger.photon.api.IAPIDescriptor;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * REST API to query the endpoint problems (expiring endpoints and
+ * certificates etc.) from the {@link SMPEndpointProblemIndex}. The optional
+ * query parameters "from" (inclusive, default now) and "to" (exclusive,
+ * default from + 30 days) define the date range in milliseconds since the
+ * epoch. The range may not exceed {@link #MAX_RANGE}. The optional query
+ * parameter "type" restricts the result to a single problem type. The result
+ * is paged with the optional query parameters "offset" and "maxcount". The
+ * problems without a date are only contained in the first page.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public final class APIExecutorEndpointProblemsGet extends AbstractSMPAPIExecutor
+{
+  public static final String PARAM_FROM = "from";
+  public static final String PARAM_TO = "to";
+  public static final String PARAM_TYPE = "type";
+  public static final String PARAM_OFFSET = "offset";
+  public static final String PARAM_MAX_COUNT = "maxcount";
+
+  public static final Duration DEFAULT_RANGE = Duration.ofDays (30);
+  public static final Duration MAX_RANGE = Duration.ofDays (366);
+  public static final int DEFAULT_MAX_COUNT = 1_000;
+  public static final int MAX_MAX_COUNT = 10_000;
+
+  private static long _getMillis (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                                  @Nonnull final ISMPServerAPIDataProvider aDataProvider,
+                                  @Nonnull final String sParamName,
+                                  final long nDefault) throws SMPBadRequestException
+  {
+    final String sValue = aRequestScope.params ().getAsString (sParamName);
+    if (StringHelper.hasNoText (sValue))
+      return nDefault;
+
+    final Long aValue = StringParser.parseLongObj (sValue);
+    if (aValue == null)
+      throw new SMPBadRequestException ("The query parameter '" +
+                                        sParamName +
+                                        "' must be a number of milliseconds, but is '" +
+                                        sValue +
+                                        "'",
+                                        aDataProvider.getCurrentURI ());
+    return aValue.longValue ();
+  }
+
+  private static int _getInt (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                              @Nonnull final ISMPServerAPIDataProvider aDataProvider,
+                              @Nonnull final String sParamName,
+                              final int nDefault,
+                              final int nMin,
+                              final int nMax) throws SMPBadRequestException
+  {
+    final String sValue = aRequestScope.params ().getAsString (sParamName);
+    if (StringHelper.hasNoText (sValue))
+      return nDefault;
+
+    final int nValue = StringParser.parseInt (sValue, nMin - 1);
+    if (nValue < nMin || nValue > nMax)
+      throw new SMPBadRequestException ("The query parameter '" +
+                                        sParamName +
+                                        "' must be a number between " +
+                                        nMin +
+                                        " and " +
+                                        nMax +
+                                        ", but is '" +
+                                        sValue +
+                                        "'",
+                                        aDataProvider.getCurrentURI ());
+    return nValue;
+  }
+
+  @Nonnull
+  private static IJsonObject _getAsJson (@Nonnull final SMPEndpointProblem aProblem)
+  {
+    final IJsonObject ret = new JsonObject ().add ("type", aProblem.getType ().getID ())
+                                             .add ("servicegroup", aProblem.getServiceGroupID ())
+                                             .add ("doctype", aProblem.getDocumentTypeIdentifier ().getURIEncoded ())
+                                             .add ("process", aProblem.getProcessIdentifier ().getURIEncoded ())
+                                             .add ("transportprofile", aProblem.getTransportProfile ());
+    if (aProblem.getDateTime () != null)
+      ret.add ("millis", aProblem.getMillis ())
+         .add ("datetime", DateTimeFormatter.ISO_OFFSET_DATE_TIME.format (aProblem.getDateTime ()));
+    return ret;
+  }
+
+  public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
+                         @Nonnull @Nonempty final String sPath,
+                         @Nonnull final Map <String, String> aPathVariables,
+                         @Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                         @Nonnull final UnifiedResponse aUnifiedResponse) throws Exception
+  {
+    // No service group available
+    final ISMPServerAPIDataProvider aDataProvider = new SMPRestDataProvider (aRequestScope, null);
+
+    // Only authenticated user may do so
+    final SMPAPICredentials aCredentials = getMandatoryAuth (aRequestScope.headers ());
+    SMPUserManagerPhoton.validateUserCredentials (aCredentials);
+
+    final long nFromMillis = _getMillis (aRequestScope, aDataProvider, PARAM_FROM, System.currentTimeMillis ());
+    final long nToMillis = _getMillis (aRequestScope, aDataProvider, PARAM_TO, nFromMillis + DEFAULT_RANGE.toMillis ());
+    if (nToMillis <= nFromMillis || nToMillis - nFromMillis > MAX_RANGE.toMillis ())
+      throw new SMPBadRequestException ("The query parameter '" +
+                                        PARAM_TO +
+                                        "' must be after '" +
+                                        PARAM_FROM +
+                                        "' and the range may not exceed " +
+                                        MAX_RANGE.toDays () +
+                                        " days",
+                                        aDataProvider.getCurrentURI ());
+    final int nOffset = _getInt (aRequestScope, aDataProvider, PARAM_OFFSET, 0, 0, Integer.MAX_VALUE);
+    final int nMaxCount = _getInt (aRequestScope,
+                                   aDataProvider,
+                                   PARAM_MAX_COUNT,
+                                   DEFAULT_MAX_COUNT,
+                                   1,
+                                   MAX_MAX_COUNT);
+
+    final String sType = aRequestScope.params ().getAsString (PARAM_TYPE);
+    final ESMPEndpointProblemType eType = ESMPEndpointProblemType.getFromIDOrNull (sType);
+    if (StringHelper.hasText (sType) && eType == null)
+      throw new SMPBadRequestException ("The query parameter '" +
+                                        PARAM_TYPE +
+                                        "' contains the unknown value '" +
+                                        sType +
+                                        "'",
+                                        aDataProvider.getCurrentURI ());
+
+    final SMPEndpointProblemIndex aIndex = SMPMetaManager.getEndpointProblemIndex ();
+    // Read one more to know if there is another page
+    final ICommonsList <SMPEndpointProblem> aProblems = aIndex.getProblemsInRange (nFromMillis,
+                                                                                   nToMillis,
+                                                                                   eType == null ? null
+                                                                                                 : x -> x.getType () == eType,
+                                                                                   nOffset,
+                                                                                   nMaxCount + 1);
+    final boolean bMore = aProblems.size () > nMaxCount;
+
+    final IJsonObject aJson = new JsonObject ();
+    aJson.add ("initialized", aIndex.isInitialized ());
+    aJson.add (PARAM_FROM, nFromMillis);
+    aJson.add (PARAM_TO, nToMillis);
+    aJson.add (PARAM_OFFSET, nOffset);
+    aJson.add (PARAM_MAX_COUNT, nMaxCount);
+    final IJsonArray aDated = new JsonArray ();
+    for (final SMPEndpointProblem aProblem : aProblems.subList (0, Math.min (aProblems.size (), nMaxCount)))
+      aDated.add (_getAsJson (aProblem));
+    aJson.addJson ("problems", aDated);
+    aJson.add ("more", bMore);
+    if (bMore)
+      aJson.add ("nextoffset", nOffset + nMaxCount);
+
+    // Problems without a date are only contained in the first page
+    if (nOffset == 0)
+    {
+      final IJsonArray aUndated = new JsonArray ();
+      boolean bUndatedMore = false;
+      for (final SMPEndpointProblem aProblem : aIndex.getAllUndatedProblems ())
+        if (eType == null || aProblem.getType () == eType)
+        {
+          if (aUndated.size () >= nMaxCount)
+          {
+            bUndatedMore = true;
+            break;
+          }
+          aUndated.add (_getAsJson (aProblem));
+        }
+      aJson.addJson ("undated", aUndated);
+      aJson.add ("undatedmore", bUndatedMore);
+    }
+
+    final String sRet = new JsonWriter (JsonWriterSettings.DEFAULT_SETTINGS_FORMATTED).writeAsString (aJson);
+    aUnifiedResponse.setContentAndCharset (sRet, StandardCharsets.UTF_8)
+                    .setMimeType (CMimeType.APPLICATION_JSON)
+                    .disableCaching ();
+  }
+}
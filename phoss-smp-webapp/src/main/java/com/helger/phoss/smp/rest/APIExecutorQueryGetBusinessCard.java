@@ -16,6 +16,7 @@
  */
 package com.helger.phoss.smp.rest;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
@@ -24,7 +25,6 @@ import java.util.Map;
 
 import javax.annotation.Nonnull;
 
-import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,8 +34,6 @@ import com.helger.commons.datetime.PDTFactory;
 import com.helger.commons.http.CHttp;
 import com.helger.commons.mime.CMimeType;
 import com.helger.commons.timing.StopWatch;
-import com.helger.httpclient.HttpClientManager;
-import com.helger.httpclient.response.ResponseHandlerByteArray;
 import com.helger.json.IJsonObject;
 import com.helger.json.serialize.JsonWriter;
 import com.helger.json.serialize.JsonWriterSettings;
@@ -47,6 +45,8 @@ import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.exception.SMPBadRequestException;
+import com.helger.phoss.smp.exception.SMPInternalErrorException;
+import com.helger.phoss.smp.exception.SMPNotFoundException;
 import com.helger.phoss.smp.exception.SMPPreconditionFailedException;
 import com.helger.phoss.smp.restapi.ISMPServerAPIDataProvider;
 import com.helger.photon.api.IAPIDescriptor;
@@ -86,6 +86,13 @@ public final class APIExecutorQueryGetBusinessCard extends AbstractSMPAPIExecuto
       throw SMPBadRequestException.failedToParseSG (sPathServiceGroupID, aDataProvider.getCurrentURI ());
     }
     final SMPQueryParams aQueryParams = SMPQueryParams.create (eAPIType, aParticipantID);
+    if (aQueryParams == null)
+    {
+      throw new SMPNotFoundException ("Failed to resolve the SMP of participant '" +
+                                      aParticipantID.getURIEncoded () +
+                                      "'",
+                                      aDataProvider.getCurrentURI ());
+    }
 
     final ZonedDateTime aQueryDT = PDTFactory.getCurrentZonedDateTimeUTC ();
     final StopWatch aSW = StopWatch.createdStarted ();
@@ -102,20 +109,17 @@ public final class APIExecutorQueryGetBusinessCard extends AbstractSMPAPIExecuto
 
     IJsonObject aJson = null;
 
-    final String sBCURL = aQueryParams.getSMPHostURI ().toString () +
-                          "/businesscard/" +
-                          aParticipantID.getURIEncoded ();
-    LOGGER.info (sLogPrefix + "Querying BC from '" + sBCURL + "'");
-
-    byte [] aData;
-    try (HttpClientManager aHttpClientMgr = new HttpClientManager ())
+    final byte [] aData;
+    try
     {
-      final HttpGet aGet = new HttpGet (sBCURL);
-      aData = aHttpClientMgr.execute (aGet, new ResponseHandlerByteArray ());
+      aData = SMPRemoteQueryProvider.getInstance ().getBusinessCardBytes (aQueryParams.getSMPHostURI (), aParticipantID);
     }
-    catch (final Exception ex)
+    catch (final IOException ex)
     {
-      aData = null;
+      throw new SMPInternalErrorException ("Failed to retrieve the Business Card of participant '" +
+                                           aParticipantID.getURIEncoded () +
+                                           "'",
+                                           ex);
     }
     if (aData == null)
     {
@@ -151,9 +155,13 @@ public final class APIExecutorQueryGetBusinessCard extends AbstractSMPAPIExecuto
       aJson.add ("queryDurationMillis", aSW.getMillis ());
 
       final String sRet = new JsonWriter (JsonWriterSettings.DEFAULT_SETTINGS_FORMATTED).writeAsString (aJson);
-      aUnifiedResponse.setContentAndCharset (sRet, StandardCharsets.UTF_8)
-                      .setMimeType (CMimeType.APPLICATION_JSON)
-                      .enableCaching (1 * CGlobal.SECONDS_PER_HOUR);
+      aUnifiedResponse.enableCaching (1 * CGlobal.SECONDS_PER_HOUR);
+      SMPResponseCompressionHelper.setContent (aRequestScope,
+                                               aUnifiedResponse,
+                                               new SMPResponseContent (sRet.getBytes (StandardCharsets.UTF_8),
+                                                                       CMimeType.APPLICATION_JSON,
+                                                                       StandardCharsets.UTF_8),
+                                               null);
     }
   }
 }
@@ -21,23 +21,30 @@ import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nonnull;
 
-import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.helger.commons.CGlobal;
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.commons.collection.impl.ICommonsSortedMap;
 import com.helger.commons.datetime.PDTFactory;
 import com.helger.commons.http.CHttp;
 import com.helger.commons.mime.CMimeType;
 import com.helger.commons.timing.StopWatch;
-import com.helger.httpclient.HttpClientManager;
-import com.helger.httpclient.response.ResponseHandlerByteArray;
+import com.helger.json.IJsonArray;
 import com.helger.json.IJsonObject;
 import com.helger.json.JsonObject;
 import com.helger.json.serialize.JsonWriter;
@@ -46,11 +53,14 @@ import com.helger.peppol.businesscard.generic.PDBusinessCard;
 import com.helger.peppol.businesscard.helper.PDBusinessCardHelper;
 import com.helger.peppol.sml.ESMPAPIType;
 import com.helger.peppolid.CIdentifier;
+import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.exception.SMPBadRequestException;
+import com.helger.phoss.smp.exception.SMPInternalErrorException;
+import com.helger.phoss.smp.exception.SMPNotFoundException;
 import com.helger.phoss.smp.exception.SMPPreconditionFailedException;
 import com.helger.phoss.smp.restapi.ISMPServerAPIDataProvider;
 import com.helger.photon.api.IAPIDescriptor;
@@ -64,6 +74,7 @@ import com.helger.web.scope.IRequestWebScopeWithoutResponse;
 public final class APIExecutorQueryGetDocTypes extends AbstractSMPAPIExecutorQuery
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (APIExecutorQueryGetDocTypes.class);
+  private static final String JSON_SERVICE_METADATA = "serviceMetadata";
 
   public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
                          @Nonnull @Nonempty final String sPath,
@@ -89,12 +100,25 @@ public final class APIExecutorQueryGetDocTypes extends AbstractSMPAPIExecutorQue
       throw SMPBadRequestException.failedToParseSG (sPathServiceGroupID, aDataProvider.getCurrentURI ());
     }
     final SMPQueryParams aQueryParams = SMPQueryParams.create (eAPIType, aParticipantID);
+    if (aQueryParams == null)
+    {
+      throw new SMPNotFoundException ("Failed to resolve the SMP of participant '" +
+                                      aParticipantID.getURIEncoded () +
+                                      "'",
+                                      aDataProvider.getCurrentURI ());
+    }
 
     final boolean bQueryBusinessCard = aRequestScope.params ().getAsBoolean ("businessCard", false);
+    final boolean bQueryServiceMetadata = aRequestScope.params ().getAsBoolean ("serviceMetadata", false);
     final boolean bXMLSchemaValidation = aRequestScope.params ().getAsBoolean ("xmlSchemaValidation", true);
+    final boolean bVerifySignature = aRequestScope.params ().getAsBoolean ("verifySignature", true);
 
     final ZonedDateTime aQueryDT = PDTFactory.getCurrentZonedDateTimeUTC ();
     final StopWatch aSW = StopWatch.createdStarted ();
+    // All parallel requests must be finished by then
+    final long nDeadlineNanos = System.nanoTime () +
+                                SMPServerConfiguration.getRESTRemoteQueryAPITimeout ().toNanoseconds ();
+    final SMPRemoteQueryProvider aQueryProvider = SMPRemoteQueryProvider.getInstance ();
 
     final String sLogPrefix = "[QueryAPI] ";
 
@@ -106,14 +130,32 @@ public final class APIExecutorQueryGetDocTypes extends AbstractSMPAPIExecutorQue
                  "' from '" +
                  aQueryParams.getSMPHostURI () +
                  "'; XSD validation=" +
-                 bXMLSchemaValidation);
+                 bXMLSchemaValidation +
+                 "; service metadata=" +
+                 bQueryServiceMetadata);
+
+    // The Business Card is independent of the service group, so start it
+    // right away
+    Future <byte []> aBCFuture = null;
+    String sBCError = null;
+    if (bQueryBusinessCard)
+      try
+      {
+        aBCFuture = aQueryProvider.submit ( () -> aQueryProvider.getBusinessCardBytes (aQueryParams.getSMPHostURI (),
+                                                                                       aParticipantID));
+      }
+      catch (final RejectedExecutionException ex)
+      {
+        LOGGER.error (sLogPrefix + "The remote query executor is saturated - not querying the Business Card");
+        sBCError = "The Business Card query was rejected because the server is busy";
+      }
 
     ICommonsSortedMap <String, String> aSGHrefs = null;
     switch (eAPIType)
     {
       case PEPPOL:
       {
-        final SMPClientReadOnly aSMPClient = new SMPClientReadOnly (aQueryParams.getSMPHostURI ());
+        final SMPClientReadOnly aSMPClient = aQueryProvider.createPeppolClient (aQueryParams.getSMPHostURI ());
         aSMPClient.setXMLSchemaValidation (bXMLSchemaValidation);
 
         // Get all HRefs and sort them by decoded URL
@@ -136,7 +178,7 @@ public final class APIExecutorQueryGetDocTypes extends AbstractSMPAPIExecutorQue
       case OASIS_BDXR_V1:
       {
         aSGHrefs = new CommonsTreeMap <> ();
-        final BDXRClientReadOnly aBDXR1Client = new BDXRClientReadOnly (aQueryParams.getSMPHostURI ());
+        final BDXRClientReadOnly aBDXR1Client = aQueryProvider.createBDXR1Client (aQueryParams.getSMPHostURI ());
         aBDXR1Client.setXMLSchemaValidation (bXMLSchemaValidation);
 
         // Get all HRefs and sort them by decoded URL
@@ -159,7 +201,7 @@ public final class APIExecutorQueryGetDocTypes extends AbstractSMPAPIExecutorQue
       case OASIS_BDXR_V2:
       {
         aSGHrefs = new CommonsTreeMap <> ();
-        final BDXR2ClientReadOnly aBDXR2Client = new BDXR2ClientReadOnly (aQueryParams.getSMPHostURI ());
+        final BDXR2ClientReadOnly aBDXR2Client = aQueryProvider.createBDXR2Client (aQueryParams.getSMPHostURI ());
         aBDXR2Client.setXMLSchemaValidation (bXMLSchemaValidation);
 
         // Get all HRefs and sort them by decoded URL
@@ -184,26 +226,69 @@ public final class APIExecutorQueryGetDocTypes extends AbstractSMPAPIExecutorQue
     IJsonObject aJson = null;
     if (aSGHrefs != null)
       aJson = SMPJsonResponse.convert (eAPIType, aParticipantID, aSGHrefs, aIF);
-    if (bQueryBusinessCard)
+    if (aJson != null && bQueryServiceMetadata)
     {
-      final String sBCURL = aQueryParams.getSMPHostURI ().toString () +
-                            "/businesscard/" +
-                            aParticipantID.getURIEncoded ();
-      LOGGER.info (sLogPrefix + "Querying BC from '" + sBCURL + "'");
+      // Query all referenced service metadata in parallel
+      final IJsonArray aJsonURLs = aJson.getAsArray (SMPJsonResponse.JSON_URLS);
+      if (aJsonURLs != null)
+      {
+        final ICommonsOrderedMap <String, Callable <IJsonObject>> aTasks = new CommonsLinkedHashMap <> ();
+        for (final IJsonObject aJsonURL : aJsonURLs.iteratorObjects ())
+        {
+          final String sDocTypeID = aJsonURL.getAsString (SMPJsonResponse.JSON_DOCUMENT_TYPE_ID);
+          final IDocumentTypeIdentifier aDocTypeID = sDocTypeID == null ? null
+                                                                        : aIF.parseDocumentTypeIdentifier (sDocTypeID);
+          if (aDocTypeID != null)
+            aTasks.put (sDocTypeID,
+                        () -> APIExecutorQueryGetServiceMetadata.getServiceMetadataJson (eAPIType,
+                                                                                         aQueryParams.getSMPHostURI (),
+                                                                                         aParticipantID,
+                                                                                         aDocTypeID,
+                                                                                         bXMLSchemaValidation,
+                                                                                         bVerifySignature));
+        }
 
+        final ICommonsMap <String, IJsonObject> aSMs = aQueryProvider.invokeAll (aTasks,
+                                                                                 SMPServerConfiguration.getRESTRemoteQueryAPIParallelMax (),
+                                                                                 nDeadlineNanos);
+        for (final IJsonObject aJsonURL : aJsonURLs.iteratorObjects ())
+        {
+          final String sDocTypeID = aJsonURL.getAsString (SMPJsonResponse.JSON_DOCUMENT_TYPE_ID);
+          if (aTasks.containsKey (sDocTypeID))
+          {
+            final IJsonObject aJsonSM = aSMs.get (sDocTypeID);
+            if (aJsonSM != null)
+              aJsonURL.addJson (JSON_SERVICE_METADATA, aJsonSM);
+            else
+              aJsonURL.add (SMPJsonResponse.JSON_ERROR, "Failed to retrieve the service metadata");
+          }
+        }
+      }
+    }
+
+    if (aBCFuture != null)
+    {
       byte [] aData;
-      try (HttpClientManager aHttpClientMgr = new HttpClientManager ())
+      try
       {
-        final HttpGet aGet = new HttpGet (sBCURL);
-        aData = aHttpClientMgr.execute (aGet, new ResponseHandlerByteArray ());
+        aData = aBCFuture.get (Math.max (0, nDeadlineNanos - System.nanoTime ()), TimeUnit.NANOSECONDS);
       }
-      catch (final Exception ex)
+      catch (final TimeoutException ex)
       {
+        LOGGER.warn (sLogPrefix + "The Business Card query did not finish in time");
+        aBCFuture.cancel (true);
+        aData = null;
+      }
+      catch (final ExecutionException ex)
+      {
+        LOGGER.error (sLogPrefix + "Failed to retrieve the Business Card", ex.getCause ());
+        sBCError = "Failed to retrieve the Business Card";
         aData = null;
       }
       if (aData == null)
       {
-        LOGGER.warn (sLogPrefix + "No Business Card is available for that participant.");
+        if (sBCError == null)
+          LOGGER.warn (sLogPrefix + "No Business Card is available for that participant.");
       }
       else
       {
@@ -221,6 +306,15 @@ public final class APIExecutorQueryGetDocTypes extends AbstractSMPAPIExecutorQue
         }
       }
     }
+    if (sBCError != null)
+    {
+      if (aJson == null)
+      {
+        // Nothing else to report
+        throw new SMPInternalErrorException (sBCError);
+      }
+      aJson.add ("businessCardError", sBCError);
+    }
     aSW.stop ();
     if (aJson == null)
     {
@@ -235,9 +329,13 @@ public final class APIExecutorQueryGetDocTypes extends AbstractSMPAPIExecutorQue
       aJson.add ("queryDurationMillis", aSW.getMillis ());
 
       final String sRet = new JsonWriter (JsonWriterSettings.DEFAULT_SETTINGS_FORMATTED).writeAsString (aJson);
-      aUnifiedResponse.setContentAndCharset (sRet, StandardCharsets.UTF_8)
-                      .setMimeType (CMimeType.APPLICATION_JSON)
-                      .enableCaching (1 * CGlobal.SECONDS_PER_HOUR);
+      aUnifiedResponse.enableCaching (1 * CGlobal.SECONDS_PER_HOUR);
+      SMPResponseCompressionHelper.setContent (aRequestScope,
+                                               aUnifiedResponse,
+                                               new SMPResponseContent (sRet.getBytes (StandardCharsets.UTF_8),
+                                                                       CMimeType.APPLICATION_JSON,
+                                                                       StandardCharsets.UTF_8),
+                                               null);
     }
   }
 }
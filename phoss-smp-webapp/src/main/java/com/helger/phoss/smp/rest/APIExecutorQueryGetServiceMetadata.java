@@ -16,6 +16,7 @@
  */
 package com.helger.phoss.smp.rest;
 
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -52,12 +53,14 @@ import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.exception.SMPBadRequestException;
+import com.helger.phoss.smp.exception.SMPNotFoundException;
 import com.helger.phoss.smp.exception.SMPPreconditionFailedException;
 import com.helger.phoss.smp.restapi.ISMPServerAPIDataProvider;
 import com.helger.photon.api.IAPIDescriptor;
 import com.helger.servlet.response.UnifiedResponse;
 import com.helger.smpclient.bdxr1.BDXRClientReadOnly;
 import com.helger.smpclient.bdxr2.BDXR2ClientReadOnly;
+import com.helger.smpclient.exception.SMPClientException;
 import com.helger.smpclient.extension.SMPExtensionList;
 import com.helger.smpclient.json.SMPJsonResponse;
 import com.helger.smpclient.peppol.SMPClientReadOnly;
@@ -209,6 +212,86 @@ public final class APIExecutorQueryGetServiceMetadata extends AbstractSMPAPIExec
     return ret;
   }
 
+  /**
+   * Query the service metadata from a remote SMP and convert it to JSON.
+   *
+   * @param eAPIType
+   *        The API type of the remote SMP. May not be <code>null</code>.
+   * @param aSMPHostURI
+   *        The remote SMP host. May not be <code>null</code>.
+   * @param aParticipantID
+   *        The participant to query. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type to query. May not be <code>null</code>.
+   * @param bXMLSchemaValidation
+   *        <code>true</code> to validate the response against the XML Schema
+   * @param bVerifySignature
+   *        <code>true</code> to verify the signature of the response
+   * @return <code>null</code> if no such service metadata exists.
+   * @throws SMPClientException
+   *         In case the remote query failed
+   * @since 7.1.4
+   */
+  @Nullable
+  static IJsonObject getServiceMetadataJson (@Nonnull final ESMPAPIType eAPIType,
+                                             @Nonnull final URI aSMPHostURI,
+                                             @Nonnull final IParticipantIdentifier aParticipantID,
+                                             @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                             final boolean bXMLSchemaValidation,
+                                             final boolean bVerifySignature) throws SMPClientException
+  {
+    final SMPRemoteQueryProvider aQueryProvider = SMPRemoteQueryProvider.getInstance ();
+    IJsonObject ret = null;
+    switch (eAPIType)
+    {
+      case PEPPOL:
+      {
+        final SMPClientReadOnly aSMPClient = aQueryProvider.createPeppolClient (aSMPHostURI);
+        aSMPClient.setXMLSchemaValidation (bXMLSchemaValidation);
+        aSMPClient.setVerifySignature (bVerifySignature);
+
+        final com.helger.xsds.peppol.smp1.SignedServiceMetadataType aSSM = aSMPClient.getServiceMetadataOrNull (aParticipantID,
+                                                                                                                aDocTypeID);
+        if (aSSM != null)
+        {
+          final com.helger.xsds.peppol.smp1.ServiceMetadataType aSM = aSSM.getServiceMetadata ();
+          ret = SMPJsonResponse.convert (aParticipantID, aDocTypeID, aSM);
+        }
+        break;
+      }
+      case OASIS_BDXR_V1:
+      {
+        final BDXRClientReadOnly aBDXR1Client = aQueryProvider.createBDXR1Client (aSMPHostURI);
+        aBDXR1Client.setXMLSchemaValidation (bXMLSchemaValidation);
+        aBDXR1Client.setVerifySignature (bVerifySignature);
+
+        final com.helger.xsds.bdxr.smp1.SignedServiceMetadataType aSSM = aBDXR1Client.getServiceMetadataOrNull (aParticipantID,
+                                                                                                                aDocTypeID);
+        if (aSSM != null)
+        {
+          final com.helger.xsds.bdxr.smp1.ServiceMetadataType aSM = aSSM.getServiceMetadata ();
+          ret = SMPJsonResponse.convert (aParticipantID, aDocTypeID, aSM);
+        }
+        break;
+      }
+      case OASIS_BDXR_V2:
+      {
+        final BDXR2ClientReadOnly aBDXR2Client = aQueryProvider.createBDXR2Client (aSMPHostURI);
+        aBDXR2Client.setXMLSchemaValidation (bXMLSchemaValidation);
+        aBDXR2Client.setVerifySignature (bVerifySignature);
+
+        final com.helger.xsds.bdxr.smp2.ServiceMetadataType aSM = aBDXR2Client.getServiceMetadataOrNull (aParticipantID,
+                                                                                                         aDocTypeID);
+        if (aSM != null)
+        {
+          ret = convert (aParticipantID, aDocTypeID, aSM);
+        }
+        break;
+      }
+    }
+    return ret;
+  }
+
   public void invokeAPI (@Nonnull final IAPIDescriptor aAPIDescriptor,
                          @Nonnull @Nonempty final String sPath,
                          @Nonnull final Map <String, String> aPathVariables,
@@ -235,6 +318,13 @@ public final class APIExecutorQueryGetServiceMetadata extends AbstractSMPAPIExec
     }
 
     final SMPQueryParams aQueryParams = SMPQueryParams.create (eAPIType, aParticipantID);
+    if (aQueryParams == null)
+    {
+      throw new SMPNotFoundException ("Failed to resolve the SMP of participant '" +
+                                      aParticipantID.getURIEncoded () +
+                                      "'",
+                                      aDataProvider.getCurrentURI ());
+    }
 
     final String sDocTypeID = aPathVariables.get (SMPRestFilter.PARAM_DOCUMENT_TYPE_ID);
     final IDocumentTypeIdentifier aDocTypeID = aIF.parseDocumentTypeIdentifier (sDocTypeID);
@@ -262,54 +352,12 @@ public final class APIExecutorQueryGetServiceMetadata extends AbstractSMPAPIExec
                  "; signature verification=" +
                  bVerifySignature);
 
-    IJsonObject aJson = null;
-    switch (eAPIType)
-    {
-      case PEPPOL:
-      {
-        final SMPClientReadOnly aSMPClient = new SMPClientReadOnly (aQueryParams.getSMPHostURI ());
-        aSMPClient.setXMLSchemaValidation (bXMLSchemaValidation);
-        aSMPClient.setVerifySignature (bVerifySignature);
-
-        final com.helger.xsds.peppol.smp1.SignedServiceMetadataType aSSM = aSMPClient.getServiceMetadataOrNull (aParticipantID,
-                                                                                                                aDocTypeID);
-        if (aSSM != null)
-        {
-          final com.helger.xsds.peppol.smp1.ServiceMetadataType aSM = aSSM.getServiceMetadata ();
-          aJson = SMPJsonResponse.convert (aParticipantID, aDocTypeID, aSM);
-        }
-        break;
-      }
-      case OASIS_BDXR_V1:
-      {
-        final BDXRClientReadOnly aBDXR1Client = new BDXRClientReadOnly (aQueryParams.getSMPHostURI ());
-        aBDXR1Client.setXMLSchemaValidation (bXMLSchemaValidation);
-        aBDXR1Client.setVerifySignature (bVerifySignature);
-
-        final com.helger.xsds.bdxr.smp1.SignedServiceMetadataType aSSM = aBDXR1Client.getServiceMetadataOrNull (aParticipantID,
-                                                                                                                aDocTypeID);
-        if (aSSM != null)
-        {
-          final com.helger.xsds.bdxr.smp1.ServiceMetadataType aSM = aSSM.getServiceMetadata ();
-          aJson = SMPJsonResponse.convert (aParticipantID, aDocTypeID, aSM);
-        }
-        break;
-      }
-      case OASIS_BDXR_V2:
-      {
-        final BDXR2ClientReadOnly aBDXR2Client = new BDXR2ClientReadOnly (aQueryParams.getSMPHostURI ());
-        aBDXR2Client.setXMLSchemaValidation (bXMLSchemaValidation);
-        aBDXR2Client.setVerifySignature (bVerifySignature);
-
-        final com.helger.xsds.bdxr.smp2.ServiceMetadataType aSM = aBDXR2Client.getServiceMetadataOrNull (aParticipantID,
-                                                                                                         aDocTypeID);
-        if (aSM != null)
-        {
-          aJson = convert (aParticipantID, aDocTypeID, aSM);
-        }
-        break;
-      }
-    }
+    final IJsonObject aJson = getServiceMetadataJson (eAPIType,
+                                                      aQueryParams.getSMPHostURI (),
+                                                      aParticipantID,
+                                                      aDocTypeID,
+                                                      bXMLSchemaValidation,
+                                                      bVerifySignature);
 
     aSW.stop ();
 
@@ -326,9 +374,13 @@ public final class APIExecutorQueryGetServiceMetadata extends AbstractSMPAPIExec
       aJson.add ("queryDurationMillis", aSW.getMillis ());
 
       final String sRet = new JsonWriter (JsonWriterSettings.DEFAULT_SETTINGS_FORMATTED).writeAsString (aJson);
-      aUnifiedResponse.setContentAndCharset (sRet, StandardCharsets.UTF_8)
-                      .setMimeType (CMimeType.APPLICATION_JSON)
-                      .enableCaching (1 * CGlobal.SECONDS_PER_HOUR);
+      aUnifiedResponse.enableCaching (1 * CGlobal.SECONDS_PER_HOUR);
+      SMPResponseCompressionHelper.setContent (aRequestScope,
+                                               aUnifiedResponse,
+                                               new SMPResponseContent (sRet.getBytes (StandardCharsets.UTF_8),
+                                                                       CMimeType.APPLICATION_JSON,
+                                                                       StandardCharsets.UTF_8),
+                                               null);
     }
   }
 }
@@ -22,6 +22,7 @@ import javax.annotation.Nonnull;
 
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.mime.CMimeType;
+import com.helger.phoss.smp.ESMPRESTType;
 import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.exception.SMPInternalErrorException;
 import com.helger.phoss.smp.restapi.BDXR1ServerAPI;
@@ -44,9 +45,20 @@ public final class APIExecutorServiceGroupCompleteGet extends AbstractSMPAPIExec
   {
     final String sPathServiceGroupID = aPathVariables.get (SMPRestFilter.PARAM_SERVICE_GROUP_ID);
     final ISMPServerAPIDataProvider aDataProvider = new SMPRestDataProvider (aRequestScope, sPathServiceGroupID);
+    final ESMPRESTType eRESTType = SMPServerConfiguration.getRESTType ();
+
+    final SMPConditionalGetHelper.ResponseValidators aValidators = SMPConditionalGetHelper.getServiceGroupValidators (eRESTType,
+                                                                                                                     aDataProvider,
+                                                                                                                     sPathServiceGroupID,
+                                                                                                                     true);
+    if (SMPConditionalGetHelper.handleConditionalGet (aRequestScope.headers (), aUnifiedResponse, aValidators))
+    {
+      // The client already has the current version
+      return;
+    }
 
     final byte [] aBytes;
-    switch (SMPServerConfiguration.getRESTType ())
+    switch (eRESTType)
     {
       case PEPPOL:
       {
@@ -73,8 +85,11 @@ public final class APIExecutorServiceGroupCompleteGet extends AbstractSMPAPIExec
       throw new SMPInternalErrorException ("Failed to convert the returned CompleteServiceGroup to XML");
     }
 
-    aUnifiedResponse.setContent (aBytes)
-                    .setMimeType (CMimeType.TEXT_XML)
-                    .setCharset (XMLWriterSettings.DEFAULT_XML_CHARSET_OBJ);
+    SMPResponseCompressionHelper.setContent (aRequestScope,
+                                             aUnifiedResponse,
+                                             new SMPResponseContent (aBytes,
+                                                                     CMimeType.TEXT_XML,
+                                                                     XMLWriterSettings.DEFAULT_XML_CHARSET_OBJ),
+                                             aValidators == null ? null : aValidators.getETag ());
   }
 }
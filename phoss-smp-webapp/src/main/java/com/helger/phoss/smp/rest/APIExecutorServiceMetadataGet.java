@@ -16,38 +16,34 @@
  */
 package com.helger.phoss.smp.rest;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
 import com.helger.commons.annotation.Nonempty;
-import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.mime.CMimeType;
+import com.helger.phoss.smp.ESMPRESTType;
 import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.exception.SMPInternalErrorException;
+import com.helger.phoss.smp.exception.SMPServerException;
 import com.helger.phoss.smp.restapi.BDXR1ServerAPI;
 import com.helger.phoss.smp.restapi.BDXR2ServerAPI;
 import com.helger.phoss.smp.restapi.ISMPServerAPIDataProvider;
 import com.helger.phoss.smp.restapi.SMPServerAPI;
 import com.helger.phoss.smp.security.SMPKeyManager;
+import com.helger.phoss.smp.security.SMPSigningContext;
+import com.helger.phoss.smp.security.SMPXMLStreamSigner;
 import com.helger.photon.api.IAPIDescriptor;
 import com.helger.servlet.response.UnifiedResponse;
 import com.helger.smpclient.bdxr1.marshal.BDXR1MarshallerSignedServiceMetadataType;
 import com.helger.smpclient.bdxr2.marshal.BDXR2MarshallerServiceMetadata;
 import com.helger.smpclient.peppol.marshal.SMPMarshallerSignedServiceMetadataType;
 import com.helger.web.scope.IRequestWebScopeWithoutResponse;
-import com.helger.xml.serialize.write.IXMLWriterSettings;
-import com.helger.xml.serialize.write.XMLWriter;
-import com.helger.xml.serialize.write.XMLWriterSettings;
-import com.helger.xml.transform.XMLTransformerFactory;
 
 public final class APIExecutorServiceMetadataGet extends AbstractSMPAPIExecutor
 {
@@ -63,93 +59,110 @@ public final class APIExecutorServiceMetadataGet extends AbstractSMPAPIExecutor
     final String sPathDocumentTypeID = aPathVariables.get (SMPRestFilter.PARAM_DOCUMENT_TYPE_ID);
     final ISMPServerAPIDataProvider aDataProvider = new SMPRestDataProvider (aRequestScope, sPathServiceGroupID);
 
-    // Create the unsigned response document
-    final Document aDoc;
-    switch (SMPServerConfiguration.getRESTType ())
+    final ESMPRESTType eRESTType = SMPServerConfiguration.getRESTType ();
+    final SMPSigningContext aSigningContext;
+    try
     {
-      case PEPPOL:
-      {
-        final com.helger.xsds.peppol.smp1.SignedServiceMetadataType ret = new SMPServerAPI (aDataProvider).getServiceRegistration (sPathServiceGroupID,
-                                                                                                                                   sPathDocumentTypeID);
-
-        // Convert to DOM document
-        final SMPMarshallerSignedServiceMetadataType aMarshaller = new SMPMarshallerSignedServiceMetadataType ();
-        // Disable XSD check, because Signature is added later
-        aMarshaller.setUseSchema (false);
-        aDoc = aMarshaller.getAsDocument (ret);
-        break;
-      }
-      case OASIS_BDXR_V1:
-      {
-        final com.helger.xsds.bdxr.smp1.SignedServiceMetadataType ret = new BDXR1ServerAPI (aDataProvider).getServiceRegistration (sPathServiceGroupID,
-                                                                                                                                   sPathDocumentTypeID);
-
-        // Convert to DOM document
-        final BDXR1MarshallerSignedServiceMetadataType aMarshaller = new BDXR1MarshallerSignedServiceMetadataType ();
-        // Disable XSD check, because Signature is added later
-        aMarshaller.setUseSchema (false);
-        aDoc = aMarshaller.getAsDocument (ret);
-        break;
-      }
-      case OASIS_BDXR_V2:
-      {
-        final com.helger.xsds.bdxr.smp2.ServiceMetadataType ret = new BDXR2ServerAPI (aDataProvider).getServiceRegistration (sPathServiceGroupID,
-                                                                                                                             sPathDocumentTypeID);
-
-        // Convert to DOM document
-        final BDXR2MarshallerServiceMetadata aMarshaller = new BDXR2MarshallerServiceMetadata ();
-        // Disable XSD check, because Signature is added later
-        aMarshaller.setUseSchema (false);
-        aDoc = aMarshaller.getAsDocument (ret);
-        break;
-      }
-      default:
-        throw new UnsupportedOperationException ("Unsupported REST type specified!");
+      aSigningContext = SMPKeyManager.getInstance ().getSigningContext (eRESTType);
+    }
+    catch (final IllegalStateException ex)
+    {
+      throw new SMPInternalErrorException ("Error in signing the response XML", ex);
     }
-    if (aDoc == null)
-      throw new IllegalStateException ("Failed to serialize unsigned node!");
 
-    // Sign the document
-    try
+    final SMPConditionalGetHelper.ResponseValidators aValidators = SMPConditionalGetHelper.getServiceMetadataValidators (eRESTType,
+                                                                                                                        aDataProvider,
+                                                                                                                        sPathServiceGroupID,
+                                                                                                                        sPathDocumentTypeID,
+                                                                                                                        aSigningContext);
+    if (SMPConditionalGetHelper.handleConditionalGet (aRequestScope.headers (), aUnifiedResponse, aValidators))
     {
-      SMPKeyManager.getInstance ().signXML (aDoc.getDocumentElement (), SMPServerConfiguration.getRESTType ());
-      LOGGER.info ("Successfully signed response XML");
+      // The client already has the current version - no need to sign
+      return;
     }
-    catch (final Exception ex)
+
+    // The entity tag covers all inputs of the signed response
+    final SMPSignedResponseCache aCache = SMPSignedResponseCache.getInstance ();
+    SMPResponseContent aContent = aValidators == null ? null : aCache.get (aValidators.getETag ());
+    if (aContent == null)
     {
-      throw new SMPInternalErrorException ("Error in signing the response XML", ex);
+      // The signed bytes are already in canonical form and can be returned as
+      // they are
+      aContent = new SMPResponseContent (_getSignedResponse (eRESTType,
+                                                             aDataProvider,
+                                                             sPathServiceGroupID,
+                                                             sPathDocumentTypeID,
+                                                             aSigningContext),
+                                         CMimeType.TEXT_XML,
+                                         StandardCharsets.UTF_8);
+      if (aValidators != null)
+        aCache.put (aValidators.getETag (), aContent);
     }
 
-    // Serialize the signed document
-    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    SMPResponseCompressionHelper.setContent (aRequestScope,
+                                             aUnifiedResponse,
+                                             aContent,
+                                             aValidators == null ? null : aValidators.getETag ());
+  }
+
+  /**
+   * Create the response object, marshal it in canonical form and sign it
+   * without building a DOM.
+   */
+  @Nonnull
+  private static byte [] _getSignedResponse (@Nonnull final ESMPRESTType eRESTType,
+                                             @Nonnull final ISMPServerAPIDataProvider aDataProvider,
+                                             @Nonnull final String sPathServiceGroupID,
+                                             @Nonnull final String sPathDocumentTypeID,
+                                             @Nonnull final SMPSigningContext aSigningContext) throws SMPServerException
+  {
+    final byte [] aSignedBytes;
+    try
     {
-      if (false)
+      switch (eRESTType)
       {
-        // IMPORTANT: no indent and no align!
-        final IXMLWriterSettings aSettings = XMLWriterSettings.createForCanonicalization ();
+        case PEPPOL:
+        {
+          final com.helger.xsds.peppol.smp1.SignedServiceMetadataType ret = new SMPServerAPI (aDataProvider).getServiceRegistration (sPathServiceGroupID,
+                                                                                                                                     sPathDocumentTypeID);
 
-        // Write the result to a byte array
-        if (XMLWriter.writeToStream (aDoc, aBAOS, aSettings).isFailure ())
-          throw new IllegalStateException ("Failed to serialize signed node!");
-      }
-      else
-      {
-        // Use this because it correctly serializes &#13; which is important
-        // for validating the signature!
-        try
+          final SMPMarshallerSignedServiceMetadataType aMarshaller = new SMPMarshallerSignedServiceMetadataType ();
+          // Disable XSD check, because Signature is added later
+          aMarshaller.setUseSchema (false);
+          aSignedBytes = SMPXMLStreamSigner.getSignedXML (aMarshaller, ret, aSigningContext);
+          break;
+        }
+        case OASIS_BDXR_V1:
         {
-          final Transformer aTransformer = XMLTransformerFactory.newTransformer ();
-          aTransformer.transform (new DOMSource (aDoc), new StreamResult (aBAOS));
+          final com.helger.xsds.bdxr.smp1.SignedServiceMetadataType ret = new BDXR1ServerAPI (aDataProvider).getServiceRegistration (sPathServiceGroupID,
+                                                                                                                                     sPathDocumentTypeID);
+
+          final BDXR1MarshallerSignedServiceMetadataType aMarshaller = new BDXR1MarshallerSignedServiceMetadataType ();
+          // Disable XSD check, because Signature is added later
+          aMarshaller.setUseSchema (false);
+          aSignedBytes = SMPXMLStreamSigner.getSignedXML (aMarshaller, ret, aSigningContext);
+          break;
         }
-        catch (final TransformerException ex)
+        case OASIS_BDXR_V2:
         {
-          throw new IllegalStateException ("Failed to serialized signed node", ex);
+          final com.helger.xsds.bdxr.smp2.ServiceMetadataType ret = new BDXR2ServerAPI (aDataProvider).getServiceRegistration (sPathServiceGroupID,
+                                                                                                                               sPathDocumentTypeID);
+
+          final BDXR2MarshallerServiceMetadata aMarshaller = new BDXR2MarshallerServiceMetadata ();
+          // Disable XSD check, because Signature is added later
+          aMarshaller.setUseSchema (false);
+          aSignedBytes = SMPXMLStreamSigner.getSignedXML (aMarshaller, ret, aSigningContext);
+          break;
         }
+        default:
+          throw new UnsupportedOperationException ("Unsupported REST type specified!");
       }
-
-      aUnifiedResponse.setContent (aBAOS.toByteArray ())
-                      .setMimeType (CMimeType.TEXT_XML)
-                      .setCharset (XMLWriterSettings.DEFAULT_XML_CHARSET_OBJ);
+      LOGGER.info ("Successfully signed response XML");
+    }
+    catch (final GeneralSecurityException ex)
+    {
+      throw new SMPInternalErrorException ("Error in signing the response XML", ex);
     }
+    return aSignedBytes;
   }
 }
@@ -23,11 +23,6 @@ import javax.annotation.Nullable;
 
 import com.helger.peppol.sml.ESMPAPIType;
 import com.helger.peppolid.IParticipantIdentifier;
-import com.helger.phoss.smp.domain.SMPMetaManager;
-import com.helger.smpclient.url.BDXLURLProvider;
-import com.helger.smpclient.url.ISMPURLProvider;
-import com.helger.smpclient.url.PeppolURLProvider;
-import com.helger.smpclient.url.SMPDNSResolutionException;
 
 abstract class AbstractSMPAPIExecutorQuery extends AbstractSMPAPIExecutor
 {
@@ -44,22 +39,12 @@ abstract class AbstractSMPAPIExecutorQuery extends AbstractSMPAPIExecutor
       return m_aSMPHostURI;
     }
 
-    @Nonnull
-    private static ISMPURLProvider _getURLProvider (@Nonnull final ESMPAPIType eAPIType)
-    {
-      return eAPIType == ESMPAPIType.PEPPOL ? PeppolURLProvider.INSTANCE : BDXLURLProvider.INSTANCE;
-    }
-
     @Nullable
-    public static SMPQueryParams create (@Nonnull final ESMPAPIType eAPIType, @Nullable final IParticipantIdentifier aParticipantID)
+    public static SMPQueryParams create (@Nonnull final ESMPAPIType eAPIType, @Nonnull final IParticipantIdentifier aParticipantID)
     {
       final SMPQueryParams ret = new SMPQueryParams ();
-      try
-      {
-        ret.m_aSMPHostURI = _getURLProvider (eAPIType).getSMPURIOfParticipant (aParticipantID,
-                                                                               SMPMetaManager.getSettings ().getSMLDNSZone ());
-      }
-      catch (final SMPDNSResolutionException ex)
+      ret.m_aSMPHostURI = SMPRemoteQueryProvider.getInstance ().getSMPHostURI (eAPIType, aParticipantID);
+      if (ret.m_aSMPHostURI == null)
       {
         // For BDXL lookup -> no such participant
         return null;
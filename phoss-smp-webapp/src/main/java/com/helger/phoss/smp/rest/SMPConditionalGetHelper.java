@@ -0,0 +1,523 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.datetime.PDTWebDateHelper;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.string.StringHelper;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.ESMPRESTType;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardCache;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirect;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
+import com.helger.phoss.smp.restapi.ISMPServerAPIDataProvider;
+import com.helger.phoss.smp.security.SMPSigningContext;
+import com.helger.servlet.response.UnifiedResponse;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Helper class for HTTP conditional GET requests (RFC 7232) on the public read
+ * endpoints. The validators are derived from the last modification of the
+ * domain objects, so that a matching request can be answered with
+ * <code>304 Not Modified</code> without creating, marshalling or signing the
+ * response.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPConditionalGetHelper
+{
+  /** The separator between the entity tag and the content coding */
+  private static final String CONTENT_CODING_SEPARATOR = "--";
+
+  /**
+   * Builder for strong entity tags. All relevant input values are hashed with
+   * SHA-256.
+   *
+   * @author Philip Helger
+   */
+  @NotThreadSafe
+  public static final class ETagBuilder
+  {
+    private static final byte SEPARATOR = 0;
+    private static final byte NULL_VALUE = 1;
+
+    private final MessageDigest m_aMD;
+
+    ETagBuilder (@Nonnull final String sResourceType, @Nonnull final ESMPRESTType eRESTType)
+    {
+      try
+      {
+        m_aMD = MessageDigest.getInstance ("SHA-256");
+      }
+      catch (final NoSuchAlgorithmException ex)
+      {
+        throw new IllegalStateException ("SHA-256 is not supported", ex);
+      }
+      add (sResourceType).add (eRESTType.getID ());
+    }
+
+    @Nonnull
+    public ETagBuilder add (@Nullable final byte [] aBytes)
+    {
+      if (aBytes == null)
+        m_aMD.update (NULL_VALUE);
+      else
+        m_aMD.update (aBytes);
+      m_aMD.update (SEPARATOR);
+      return this;
+    }
+
+    @Nonnull
+    public ETagBuilder add (@Nullable final String s)
+    {
+      return add (s == null ? null : s.getBytes (StandardCharsets.UTF_8));
+    }
+
+    @Nonnull
+    public ETagBuilder add (@Nullable final LocalDateTime aDT)
+    {
+      return add (aDT == null ? null : aDT.toString ());
+    }
+
+    @Nonnull
+    public ETagBuilder add (final long n)
+    {
+      return add (Long.toString (n));
+    }
+
+    @Nonnull
+    public ETagBuilder add (@Nullable final X509Certificate aCert)
+    {
+      try
+      {
+        return add (aCert == null ? null : aCert.getEncoded ());
+      }
+      catch (final CertificateEncodingException ex)
+      {
+        throw new IllegalStateException ("Failed to encode certificate", ex);
+      }
+    }
+
+    /**
+     * @return The strong entity tag including the surrounding quotes. Never
+     *         <code>null</code>.
+     */
+    @Nonnull
+    public String getETag ()
+    {
+      return '"' + StringHelper.getHexEncoded (m_aMD.digest ()) + '"';
+    }
+  }
+
+  /**
+   * The validators of a single response.
+   *
+   * @author Philip Helger
+   */
+  @Immutable
+  public static final class ResponseValidators
+  {
+    private final String m_sETag;
+    private final LocalDateTime m_aLastModDT;
+
+    ResponseValidators (@Nonnull final String sETag, @Nullable final LocalDateTime aLastModDT)
+    {
+      m_sETag = sETag;
+      m_aLastModDT = aLastModDT;
+    }
+
+    /**
+     * @return The strong entity tag of the uncompressed representation. Never
+     *         <code>null</code>.
+     */
+    @Nonnull
+    public String getETag ()
+    {
+      return m_sETag;
+    }
+
+    /**
+     * @return The last modification date time in UTC. May be
+     *         <code>null</code> if it is not known, in which case no
+     *         Last-Modified header is emitted.
+     */
+    @Nullable
+    public LocalDateTime getLastModificationDateTime ()
+    {
+      return m_aLastModDT;
+    }
+  }
+
+  private SMPConditionalGetHelper ()
+  {}
+
+  /**
+   * Create a new entity tag builder.
+   *
+   * @param sResourceType
+   *        The resource type, to differentiate responses of different
+   *        endpoints. May not be <code>null</code>.
+   * @param eRESTType
+   *        The REST type of the response. May not be <code>null</code>.
+   * @return A new builder. Never <code>null</code>.
+   */
+  @Nonnull
+  public static ETagBuilder createETagBuilder (@Nonnull final String sResourceType,
+                                               @Nonnull final ESMPRESTType eRESTType)
+  {
+    return new ETagBuilder (sResourceType, eRESTType);
+  }
+
+  @Nullable
+  private static ISMPServiceGroup _getServiceGroup (@Nullable final ISMPServerAPIDataProvider aDataProvider,
+                                                    @Nullable final String sPathServiceGroupID)
+  {
+    final IParticipantIdentifier aServiceGroupID = SMPMetaManager.getIdentifierCache ()
+                                                                 .parseParticipantIdentifier (sPathServiceGroupID);
+    if (aServiceGroupID == null)
+      return null;
+    // Use the data provider, so that the response uses the same objects
+    return aDataProvider != null ? aDataProvider.getServiceGroupOfID (aServiceGroupID)
+                                 : SMPMetaManager.getServiceGroupMgr ().getSMPServiceGroupOfID (aServiceGroupID);
+  }
+
+  /**
+   * Get the entity tag of a compressed representation. A strong entity tag
+   * must differ between different content codings of the same resource.
+   *
+   * @param sETag
+   *        The entity tag of the uncompressed representation. May not be
+   *        <code>null</code>.
+   * @param sContentCoding
+   *        The content coding used. May not be <code>null</code>.
+   * @return The entity tag of the compressed representation. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static String getETagWithContentCoding (@Nonnull final String sETag, @Nonnull final String sContentCoding)
+  {
+    // Insert before the closing quote
+    return sETag.substring (0, sETag.length () - 1) + CONTENT_CODING_SEPARATOR + sContentCoding + '"';
+  }
+
+  @Nullable
+  private static String _getMatchingETag (@Nonnull final ICommonsList <String> aHeaderValues,
+                                          @Nonnull final String sETag)
+  {
+    for (final String sHeaderValue : aHeaderValues)
+      for (final String sPart : StringHelper.getExploded (',', sHeaderValue))
+      {
+        String sCandidate = sPart.trim ();
+        if (sCandidate.equals ("*"))
+          return sETag;
+        // Weak comparison as required for If-None-Match
+        if (sCandidate.startsWith ("W/"))
+          sCandidate = sCandidate.substring (2);
+        // All content codings of the same representation match
+        String sUncompressed = sCandidate;
+        final int nIndex = sCandidate.indexOf (CONTENT_CODING_SEPARATOR);
+        if (nIndex > 0 && sCandidate.endsWith ("\""))
+          sUncompressed = sCandidate.substring (0, nIndex) + '"';
+        if (sUncompressed.equals (sETag))
+          return sCandidate;
+      }
+    return null;
+  }
+
+  private static boolean _isNotModifiedSince (@Nonnull final String sHeaderValue,
+                                              @Nonnull final LocalDateTime aLastModDT)
+  {
+    final ZonedDateTime aIfModifiedSince = PDTWebDateHelper.getDateTimeFromRFC822 (sHeaderValue);
+    if (aIfModifiedSince == null)
+    {
+      // Invalid header values must be ignored
+      return false;
+    }
+    // The HTTP date has only second precision
+    final LocalDateTime aIMS = aIfModifiedSince.withZoneSameInstant (ZoneOffset.UTC).toLocalDateTime ();
+    return !aLastModDT.truncatedTo (ChronoUnit.SECONDS).isAfter (aIMS);
+  }
+
+  /**
+   * Set the validators on the response and check if the request is a
+   * conditional GET request, for which the client already has the current
+   * representation. In that case the status code 304 is set on the response,
+   * and the caller must not add any content. If-None-Match takes precedence
+   * over If-Modified-Since.
+   *
+   * @param aRequestHeaders
+   *        The HTTP request headers. May not be <code>null</code>.
+   * @param aUnifiedResponse
+   *        The response to set the validators on. May not be
+   *        <code>null</code>.
+   * @param aValidators
+   *        The validators of the current representation. May be
+   *        <code>null</code> if the requested object is unknown, in which case
+   *        nothing happens.
+   * @return <code>true</code> if the response is "Not Modified" and nothing
+   *         else needs to be done, <code>false</code> if the full response
+   *         needs to be created.
+   */
+  public static boolean handleConditionalGet (@Nonnull final HttpHeaderMap aRequestHeaders,
+                                              @Nonnull final UnifiedResponse aUnifiedResponse,
+                                              @Nullable final ResponseValidators aValidators)
+  {
+    if (aValidators == null)
+      return false;
+
+    final String sETag = aValidators.getETag ();
+    final LocalDateTime aLastModDT = aValidators.getLastModificationDateTime ();
+    aUnifiedResponse.setETag (sETag);
+    if (aLastModDT != null)
+      aUnifiedResponse.setLastModified (aLastModDT);
+    // Caches may store the response but need to revalidate it
+    aUnifiedResponse.cacheControl ().setNoCache (true);
+
+    final boolean bNotModified;
+    final ICommonsList <String> aIfNoneMatch = aRequestHeaders.getAllHeaderValues (CHttpHeader.IF_NON_MATCH);
+    if (aIfNoneMatch.isNotEmpty ())
+    {
+      final String sMatchingETag = _getMatchingETag (aIfNoneMatch, sETag);
+      bNotModified = sMatchingETag != null;
+      if (bNotModified)
+      {
+        // Return the entity tag of the representation the client has
+        aUnifiedResponse.setETag (sMatchingETag);
+      }
+    }
+    else
+    {
+      final String sIfModifiedSince = aRequestHeaders.getFirstHeaderValue (CHttpHeader.IF_MODIFIED_SINCE);
+      bNotModified = aLastModDT != null &&
+                     StringHelper.hasText (sIfModifiedSince) &&
+                     _isNotModifiedSince (sIfModifiedSince, aLastModDT);
+    }
+
+    if (bNotModified)
+    {
+      // Same as for the full response
+      SMPResponseCompressionHelper.setVaryHeader (aUnifiedResponse);
+      aUnifiedResponse.setStatus (HttpServletResponse.SC_NOT_MODIFIED);
+    }
+    return bNotModified;
+  }
+
+  /**
+   * Get the validators for a service group or a complete service group. The
+   * entity tag covers the service group, the document types and last
+   * modifications of all contained service information as well as the created
+   * references.
+   *
+   * @param eRESTType
+   *        The REST type to be used. May not be <code>null</code>.
+   * @param aDataProvider
+   *        The data provider of the request, that is also used to create the
+   *        response. May not be <code>null</code>.
+   * @param sPathServiceGroupID
+   *        The service group ID from the path. May be <code>null</code>.
+   * @param bComplete
+   *        <code>true</code> for the complete service group,
+   *        <code>false</code> for the service group.
+   * @return <code>null</code> if the service group is unknown, so that the
+   *         regular error handling applies.
+   */
+  @Nullable
+  public static ResponseValidators getServiceGroupValidators (@Nonnull final ESMPRESTType eRESTType,
+                                                              @Nonnull final ISMPServerAPIDataProvider aDataProvider,
+                                                              @Nullable final String sPathServiceGroupID,
+                                                              final boolean bComplete)
+  {
+    final ISMPServiceGroup aServiceGroup = _getServiceGroup (aDataProvider, sPathServiceGroupID);
+    if (aServiceGroup == null)
+      return null;
+
+    final ETagBuilder aETag = createETagBuilder (bComplete ? "complete" : "servicegroup", eRESTType);
+    aETag.add (aServiceGroup.getID ()).add (aServiceGroup.getLastModificationDateTime ());
+    for (final ISMPServiceInformation aServiceInfo : aDataProvider.getAllServiceInformationOfServiceGroup (aServiceGroup))
+    {
+      final IDocumentTypeIdentifier aDocTypeID = aServiceInfo.getDocumentTypeIdentifier ();
+      aETag.add (aDocTypeID.getURIEncoded ())
+           .add (aServiceInfo.getLastModificationDateTime ())
+           .add (aDataProvider.getServiceMetadataReferenceHref (aServiceGroup.getParticipantIdentifier (), aDocTypeID));
+    }
+
+    // No Last-Modified, because deleting a service information is not
+    // reflected in a date time
+    return new ResponseValidators (aETag.getETag (), null);
+  }
+
+  /**
+   * Get the validators for a signed service metadata. If a redirect is present,
+   * the entity tag is built from the redirect content. Otherwise it is built
+   * from the last modification of the service information and in that case a
+   * last modification is provided as well. The signing certificate is always
+   * part of the entity tag. As the entity tag covers all inputs of the signed
+   * response, it may also be used as a cache key.
+   *
+   * @param eRESTType
+   *        The REST type to be used. May not be <code>null</code>.
+   * @param aDataProvider
+   *        The data provider of the request, that is also used to create the
+   *        response. May not be <code>null</code>.
+   * @param sPathServiceGroupID
+   *        The service group ID from the path. May be <code>null</code>.
+   * @param sPathDocTypeID
+   *        The document type ID from the path. May be <code>null</code>.
+   * @param aSigningContext
+   *        The signing context used to sign the response. May not be
+   *        <code>null</code>.
+   * @return <code>null</code> if an object is unknown, so that the regular
+   *         error handling applies.
+   */
+  @Nullable
+  public static ResponseValidators getServiceMetadataValidators (@Nonnull final ESMPRESTType eRESTType,
+                                                                 @Nonnull final ISMPServerAPIDataProvider aDataProvider,
+                                                                 @Nullable final String sPathServiceGroupID,
+                                                                 @Nullable final String sPathDocTypeID,
+                                                                 @Nonnull final SMPSigningContext aSigningContext)
+  {
+    final ISMPServiceGroup aServiceGroup = _getServiceGroup (aDataProvider, sPathServiceGroupID);
+    if (aServiceGroup == null)
+      return null;
+
+    final IDocumentTypeIdentifier aDocTypeID = SMPMetaManager.getIdentifierCache ()
+                                                             .parseDocumentTypeIdentifier (sPathDocTypeID);
+    if (aDocTypeID == null)
+      return null;
+
+    final ETagBuilder aETag = createETagBuilder ("servicemetadata", eRESTType);
+    aETag.add (aServiceGroup.getID ()).add (aDocTypeID.getURIEncoded ()).add (aSigningContext.getCertificate ());
+
+    final LocalDateTime aLastModDT;
+    // Redirects take precedence
+    final ISMPRedirect aRedirect = aDataProvider.getRedirectOfServiceGroupAndDocumentType (aServiceGroup, aDocTypeID);
+    if (aRedirect != null)
+    {
+      aETag.add ("redirect")
+           .add (aRedirect.getTargetHref ())
+           .add (aRedirect.getSubjectUniqueIdentifier ())
+           .add (aRedirect.getCertificate ())
+           .add (aRedirect.getExtensions ().getExtensionsAsJsonString ());
+      // Redirects have no last modification
+      aLastModDT = null;
+    }
+    else
+    {
+      final ISMPServiceInformation aServiceInfo = aDataProvider.getServiceInformationOfServiceGroupAndDocumentType (aServiceGroup,
+                                                                                                                    aDocTypeID);
+      if (aServiceInfo == null || aServiceInfo.getTotalEndpointCount () == 0)
+        return null;
+
+      aETag.add ("serviceinfo").add (aServiceInfo.getLastModificationDateTime ());
+      if (aServiceInfo.hasLastModificationDateTime ())
+      {
+        // The response cannot be older than the signing context
+        final LocalDateTime aSIDT = aServiceInfo.getLastModificationDateTime ();
+        final LocalDateTime aSigningDT = aSigningContext.getCreationDateTime ();
+        aLastModDT = aSIDT.isAfter (aSigningDT) ? aSIDT : aSigningDT;
+      }
+      else
+        aLastModDT = null;
+    }
+
+    return new ResponseValidators (aETag.getETag (), aLastModDT);
+  }
+
+  /**
+   * Get the validators for a business card. Business cards have no last
+   * modification, so the entity tag is built from the business card content
+   * and no last modification is provided.
+   *
+   * @param sPathServiceGroupID
+   *        The service group ID from the path. May be <code>null</code>.
+   * @return <code>null</code> if an object is unknown, so that the regular
+   *         error handling applies.
+   */
+  @Nullable
+  public static ResponseValidators getBusinessCardValidators (@Nullable final String sPathServiceGroupID)
+  {
+    final SMPBusinessCardCache aBusinessCardCache = SMPMetaManager.getBusinessCardCache ();
+    final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
+    if (aBusinessCardCache == null && aBusinessCardMgr == null)
+      return null;
+
+    final ISMPServiceGroup aServiceGroup = _getServiceGroup (null, sPathServiceGroupID);
+    if (aServiceGroup == null)
+      return null;
+
+    // Read from the manager if no cache is present
+    final IParticipantIdentifier aParticipantID = aServiceGroup.getParticipantIdentifier ();
+    final ISMPBusinessCard aBusinessCard = aBusinessCardCache != null ? aBusinessCardCache.getBusinessCard (aParticipantID)
+                                                                      : aBusinessCardMgr.getSMPBusinessCardOfID (aParticipantID);
+    if (aBusinessCard == null)
+      return null;
+
+    // The business card response is the same for all REST types
+    final ETagBuilder aETag = createETagBuilder ("businesscard", ESMPRESTType.PEPPOL);
+    aETag.add (aBusinessCard.getID ());
+    for (final SMPBusinessCardEntity aEntity : aBusinessCard.getAllEntities ())
+    {
+      aETag.add ("entity").add (aEntity.getID ());
+      for (final SMPBusinessCardName aName : aEntity.names ())
+        aETag.add (aName.getName ()).add (aName.getLanguageCode ());
+      aETag.add (aEntity.getCountryCode ()).add (aEntity.getGeographicalInformation ());
+      for (final SMPBusinessCardIdentifier aIdentifier : aEntity.identifiers ())
+        aETag.add (aIdentifier.getID ()).add (aIdentifier.getScheme ()).add (aIdentifier.getValue ());
+      for (final String sWebsiteURI : aEntity.websiteURIs ())
+        aETag.add (sWebsiteURI);
+      for (final SMPBusinessCardContact aContact : aEntity.contacts ())
+        aETag.add (aContact.getID ())
+             .add (aContact.getType ())
+             .add (aContact.getName ())
+             .add (aContact.getPhoneNumber ())
+             .add (aContact.getEmail ());
+      aETag.add (aEntity.getAdditionalInformation ())
+           .add (aEntity.hasRegistrationDate () ? aEntity.getRegistrationDate ().toString () : null);
+    }
+
+    return new ResponseValidators (aETag.getETag (), null);
+  }
+}
@@ -0,0 +1,553 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.map.LRUMap;
+import com.helger.commons.concurrent.BasicThreadFactory;
+import com.helger.commons.http.CHttp;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.httpclient.HttpClientManager;
+import com.helger.httpclient.response.ResponseHandlerByteArray;
+import com.helger.peppol.sml.ESMPAPIType;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.scope.IScope;
+import com.helger.smpclient.bdxr1.BDXRClientReadOnly;
+import com.helger.smpclient.bdxr2.BDXR2ClientReadOnly;
+import com.helger.smpclient.httpclient.SMPHttpClientSettings;
+import com.helger.smpclient.peppol.SMPClientReadOnly;
+import com.helger.smpclient.url.BDXLURLProvider;
+import com.helger.smpclient.url.ISMPURLProvider;
+import com.helger.smpclient.url.PeppolURLProvider;
+import com.helger.smpclient.url.SMPDNSResolutionException;
+import com.helger.web.scope.singleton.AbstractGlobalWebSingleton;
+
+/**
+ * A singleton that contains the shared resources of the remote query API: a
+ * pooled HTTP client used for all outgoing requests, a cache for the resolved
+ * SMP host of participants and a bounded executor for parallel requests. All
+ * resources are released upon shutdown.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPRemoteQueryProvider extends AbstractGlobalWebSingleton
+{
+  /** The maximum number of participants for which the SMP host is cached */
+  public static final int MAX_HOST_CACHE_SIZE = 10_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SMPRemoteQueryProvider.class);
+
+  @Immutable
+  private static final class HostCacheEntry
+  {
+    private final URI m_aSMPHostURI;
+    private final long m_nExpirationNanos;
+
+    HostCacheEntry (@Nonnull final URI aSMPHostURI, final long nExpirationNanos)
+    {
+      m_aSMPHostURI = aSMPHostURI;
+      m_nExpirationNanos = nExpirationNanos;
+    }
+
+    boolean isExpired (final long nNowNanos)
+    {
+      return nNowNanos - m_nExpirationNanos >= 0;
+    }
+  }
+
+  private final BDXLURLProvider m_aBDXLURLProvider;
+  @GuardedBy ("m_aRWLock")
+  private final LRUMap <String, HostCacheEntry> m_aHostCache = new LRUMap <> (MAX_HOST_CACHE_SIZE);
+  @GuardedBy ("m_aRWLock")
+  private HttpClientManager m_aHttpClientMgr;
+  @GuardedBy ("m_aRWLock")
+  private ExecutorService m_aExecutor;
+
+  /**
+   * @deprecated Only called via reflection
+   */
+  @Deprecated
+  @UsedViaReflection
+  public SMPRemoteQueryProvider ()
+  {
+    // Use an own instance, because the internal DNS cache of the shared
+    // instance never expires - the host cache of this class is used instead
+    m_aBDXLURLProvider = new BDXLURLProvider ();
+    m_aBDXLURLProvider.setUseDNSCache (false);
+  }
+
+  @Nonnull
+  public static SMPRemoteQueryProvider getInstance ()
+  {
+    return getGlobalSingleton (SMPRemoteQueryProvider.class);
+  }
+
+  @Override
+  protected void onDestroy (@Nonnull final IScope aScopeInDestruction)
+  {
+    m_aRWLock.writeLocked ( () -> {
+      StreamHelper.close (m_aHttpClientMgr);
+      m_aHttpClientMgr = null;
+      if (m_aExecutor != null)
+      {
+        m_aExecutor.shutdownNow ();
+        m_aExecutor = null;
+      }
+      m_aHostCache.clear ();
+    });
+  }
+
+  @Nonnull
+  private ISMPURLProvider _getURLProvider (@Nonnull final ESMPAPIType eAPIType)
+  {
+    return eAPIType == ESMPAPIType.PEPPOL ? PeppolURLProvider.INSTANCE : m_aBDXLURLProvider;
+  }
+
+  /**
+   * Resolve the SMP host of the provided participant via DNS. Successful
+   * resolutions are cached for the configured duration.
+   *
+   * @param eAPIType
+   *        The API type that determines the resolution mechanism. May not be
+   *        <code>null</code>.
+   * @param aParticipantID
+   *        The participant to resolve. May not be <code>null</code>.
+   * @return <code>null</code> if the participant could not be resolved.
+   * @see SMPServerConfiguration#getRESTRemoteQueryAPIDNSCacheTTL()
+   */
+  @Nullable
+  public URI getSMPHostURI (@Nonnull final ESMPAPIType eAPIType, @Nonnull final IParticipantIdentifier aParticipantID)
+  {
+    ValueEnforcer.notNull (eAPIType, "APIType");
+    ValueEnforcer.notNull (aParticipantID, "ParticipantID");
+
+    final String sDNSZone = SMPMetaManager.getSettings ().getSMLDNSZone ();
+    final Duration aTTL = SMPServerConfiguration.getRESTRemoteQueryAPIDNSCacheTTL ();
+    final boolean bUseCache = !aTTL.isZero () && !aTTL.isNegative ();
+    final String sCacheKey = eAPIType.getID () + '|' + sDNSZone + '|' + aParticipantID.getURIEncoded ();
+
+    if (bUseCache)
+    {
+      // Write lock, because the access order is modified
+      final HostCacheEntry aEntry = m_aRWLock.writeLockedGet ( () -> m_aHostCache.get (sCacheKey));
+      if (aEntry != null && !aEntry.isExpired (System.nanoTime ()))
+        return aEntry.m_aSMPHostURI;
+    }
+
+    final URI ret;
+    try
+    {
+      ret = _getURLProvider (eAPIType).getSMPURIOfParticipant (aParticipantID, sDNSZone);
+    }
+    catch (final SMPDNSResolutionException ex)
+    {
+      // For BDXL lookup -> no such participant
+      return null;
+    }
+
+    if (bUseCache && ret != null)
+    {
+      final HostCacheEntry aEntry = new HostCacheEntry (ret, System.nanoTime () + aTTL.toNanos ());
+      m_aRWLock.writeLocked ( () -> m_aHostCache.put (sCacheKey, aEntry));
+    }
+    return ret;
+  }
+
+  /**
+   * @return The number of cached SMP hosts, including expired ones. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int getHostCacheSize ()
+  {
+    return m_aRWLock.readLockedInt (m_aHostCache::size);
+  }
+
+  /**
+   * Remove all cached SMP hosts, e.g. because the SML settings changed.
+   */
+  public void clearHostCache ()
+  {
+    m_aRWLock.writeLocked (m_aHostCache::clear);
+  }
+
+  /**
+   * @return The shared HTTP client manager with a connection pool, configured
+   *         from the SMP client configuration. Never <code>null</code>.
+   */
+  @Nonnull
+  public HttpClientManager getHttpClientManager ()
+  {
+    HttpClientManager ret = m_aRWLock.readLockedGet ( () -> m_aHttpClientMgr);
+    if (ret == null)
+    {
+      m_aRWLock.writeLock ().lock ();
+      try
+      {
+        // Try again in write lock
+        ret = m_aHttpClientMgr;
+        if (ret == null)
+          ret = m_aHttpClientMgr = HttpClientManager.create (new SMPHttpClientSettings ());
+      }
+      finally
+      {
+        m_aRWLock.writeLock ().unlock ();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Create a bounded executor. Threads are only created on demand and
+   * terminate after being idle for a while. If all threads are busy and the
+   * queue is full, additional tasks are rejected with a
+   * {@link RejectedExecutionException} instead of creating more threads.
+   *
+   * @param nMaxThreads
+   *        The maximum number of threads. Must be &gt; 0.
+   * @param nQueueSize
+   *        The maximum number of waiting tasks. Must be &ge; 0.
+   * @return A new executor and never <code>null</code>.
+   */
+  @Nonnull
+  static ThreadPoolExecutor createExecutor (@Nonnegative final int nMaxThreads, @Nonnegative final int nQueueSize)
+  {
+    ValueEnforcer.isGT0 (nMaxThreads, "MaxThreads");
+    ValueEnforcer.isGE0 (nQueueSize, "QueueSize");
+
+    final BlockingQueue <Runnable> aQueue = nQueueSize == 0 ? new SynchronousQueue <> ()
+                                                            : new ArrayBlockingQueue <> (nQueueSize);
+    final ThreadPoolExecutor ret = new ThreadPoolExecutor (nMaxThreads,
+                                                           nMaxThreads,
+                                                           60,
+                                                           TimeUnit.SECONDS,
+                                                           aQueue,
+                                                           new BasicThreadFactory.Builder ().namingPattern ("smp-remote-query-%d")
+                                                                                            .daemon (true)
+                                                                                            .build (),
+                                                           new ThreadPoolExecutor.AbortPolicy ());
+    ret.allowCoreThreadTimeOut (true);
+    return ret;
+  }
+
+  @Nonnull
+  private ExecutorService _getExecutor ()
+  {
+    ExecutorService ret = m_aRWLock.readLockedGet ( () -> m_aExecutor);
+    if (ret == null)
+    {
+      m_aRWLock.writeLock ().lock ();
+      try
+      {
+        // Try again in write lock
+        ret = m_aExecutor;
+        if (ret == null)
+          ret = m_aExecutor = createExecutor (SMPServerConfiguration.getRESTRemoteQueryAPIThreadsMax (),
+                                              SMPServerConfiguration.getRESTRemoteQueryAPIQueueSize ());
+      }
+      finally
+      {
+        m_aRWLock.writeLock ().unlock ();
+      }
+    }
+    return ret;
+  }
+
+  static <T> T executeShared (@Nonnull final HttpClientManager aHttpClientMgr,
+                              @Nonnull final HttpUriRequestBase aRequest,
+                              @Nullable final HttpContext aHttpContext,
+                              @Nonnull final HttpClientResponseHandler <T> aResponseHandler) throws IOException
+  {
+    aRequest.setAbsoluteRequestUri (true);
+    return aHttpClientMgr.execute (aRequest, aHttpContext, aResponseHandler);
+  }
+
+  /**
+   * Create a new Peppol SMP client that uses the shared HTTP client manager.
+   *
+   * @param aSMPHostURI
+   *        The SMP host to query. May not be <code>null</code>.
+   * @return A new client and never <code>null</code>.
+   */
+  @Nonnull
+  public SMPClientReadOnly createPeppolClient (@Nonnull final URI aSMPHostURI)
+  {
+    final HttpClientManager aHttpClientMgr = getHttpClientManager ();
+    return new SMPClientReadOnly (aSMPHostURI)
+    {
+      @Override
+      public <T> T executeRequest (@Nonnull final HttpUriRequestBase aRequest,
+                                   @Nonnull final HttpClientResponseHandler <T> aResponseHandler) throws IOException
+      {
+        return executeShared (aHttpClientMgr, aRequest, createHttpContext (), aResponseHandler);
+      }
+    };
+  }
+
+  /**
+   * Create a new OASIS BDXR SMP v1 client that uses the shared HTTP client
+   * manager.
+   *
+   * @param aSMPHostURI
+   *        The SMP host to query. May not be <code>null</code>.
+   * @return A new client and never <code>null</code>.
+   */
+  @Nonnull
+  public BDXRClientReadOnly createBDXR1Client (@Nonnull final URI aSMPHostURI)
+  {
+    final HttpClientManager aHttpClientMgr = getHttpClientManager ();
+    return new BDXRClientReadOnly (aSMPHostURI)
+    {
+      @Override
+      public <T> T executeRequest (@Nonnull final HttpUriRequestBase aRequest,
+                                   @Nonnull final HttpClientResponseHandler <T> aResponseHandler) throws IOException
+      {
+        return executeShared (aHttpClientMgr, aRequest, createHttpContext (), aResponseHandler);
+      }
+    };
+  }
+
+  /**
+   * Create a new OASIS BDXR SMP v2 client that uses the shared HTTP client
+   * manager.
+   *
+   * @param aSMPHostURI
+   *        The SMP host to query. May not be <code>null</code>.
+   * @return A new client and never <code>null</code>.
+   */
+  @Nonnull
+  public BDXR2ClientReadOnly createBDXR2Client (@Nonnull final URI aSMPHostURI)
+  {
+    final HttpClientManager aHttpClientMgr = getHttpClientManager ();
+    return new BDXR2ClientReadOnly (aSMPHostURI)
+    {
+      @Override
+      public <T> T executeRequest (@Nonnull final HttpUriRequestBase aRequest,
+                                   @Nonnull final HttpClientResponseHandler <T> aResponseHandler) throws IOException
+      {
+        return executeShared (aHttpClientMgr, aRequest, createHttpContext (), aResponseHandler);
+      }
+    };
+  }
+
+  /**
+   * Get the Business Card of a participant from the provided SMP.
+   *
+   * @param aSMPHostURI
+   *        The SMP host to query. May not be <code>null</code>.
+   * @param aParticipantID
+   *        The participant to query. May not be <code>null</code>.
+   * @return <code>null</code> if the SMP has no Business Card for the
+   *         participant.
+   * @throws IOException
+   *         If the request failed for any other reason
+   */
+  @Nullable
+  public byte [] getBusinessCardBytes (@Nonnull final URI aSMPHostURI,
+                                       @Nonnull final IParticipantIdentifier aParticipantID) throws IOException
+  {
+    final String sBCURL = aSMPHostURI.toString () + "/businesscard/" + aParticipantID.getURIEncoded ();
+    LOGGER.info ("[QueryAPI] Querying BC from '" + sBCURL + "'");
+    try
+    {
+      return executeShared (getHttpClientManager (), new HttpGet (sBCURL), null, new ResponseHandlerByteArray ());
+    }
+    catch (final HttpResponseException ex)
+    {
+      if (ex.getStatusCode () == CHttp.HTTP_NOT_FOUND)
+      {
+        // No Business Card present
+        return null;
+      }
+      LOGGER.error ("[QueryAPI] Failed to query BC from '" + sBCURL + "': " + ex.getMessage ());
+      throw ex;
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.error ("[QueryAPI] Failed to query BC from '" + sBCURL + "'", ex);
+      throw ex;
+    }
+  }
+
+  /**
+   * Start the provided task in the background.
+   *
+   * @param <V>
+   *        The result type
+   * @param aTask
+   *        The task to execute. May not be <code>null</code>.
+   * @return The future to wait for the result. Never <code>null</code>.
+   * @throws RejectedExecutionException
+   *         If all threads are busy and the queue is full
+   */
+  @Nonnull
+  public <V> Future <V> submit (@Nonnull final Callable <V> aTask)
+  {
+    ValueEnforcer.notNull (aTask, "Task");
+    return _getExecutor ().submit (aTask);
+  }
+
+  /**
+   * Execute all provided tasks in parallel, with at most the provided number of
+   * tasks running at the same time. Tasks not finished at the deadline are
+   * cancelled.
+   *
+   * @param <K>
+   *        The key type
+   * @param <V>
+   *        The result type
+   * @param aTasks
+   *        The tasks to execute. May not be <code>null</code>.
+   * @param nMaxParallel
+   *        The maximum number of tasks running at the same time. Must be &gt;
+   *        0.
+   * @param nDeadlineNanos
+   *        The deadline in terms of {@link System#nanoTime()}.
+   * @return A map with the results of all tasks that finished successfully
+   *         with a non-<code>null</code> result before the deadline. Tasks
+   *         rejected because the shared executor is saturated are missing as
+   *         well. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public <K, V> ICommonsMap <K, V> invokeAll (@Nonnull final Map <K, ? extends Callable <V>> aTasks,
+                                              @Nonnegative final int nMaxParallel,
+                                              final long nDeadlineNanos)
+  {
+    return invokeAll (_getExecutor (), aTasks, nMaxParallel, nDeadlineNanos);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  static <K, V> ICommonsMap <K, V> invokeAll (@Nonnull final ExecutorService aExecutor,
+                                              @Nonnull final Map <K, ? extends Callable <V>> aTasks,
+                                              @Nonnegative final int nMaxParallel,
+                                              final long nDeadlineNanos)
+  {
+    ValueEnforcer.notNull (aTasks, "Tasks");
+    ValueEnforcer.isGT0 (nMaxParallel, "MaxParallel");
+
+    final ICommonsMap <K, V> ret = new CommonsHashMap <> ();
+    final CompletionService <V> aCS = new ExecutorCompletionService <> (aExecutor);
+    final ICommonsMap <Future <V>, K> aRunning = new CommonsHashMap <> ();
+    final Iterator <? extends Map.Entry <K, ? extends Callable <V>>> aIt = aTasks.entrySet ().iterator ();
+    boolean bRejected = false;
+    try
+    {
+      while ((!bRejected && aIt.hasNext ()) || aRunning.isNotEmpty ())
+      {
+        // Fill up to the maximum
+        while (!bRejected && aIt.hasNext () && aRunning.size () < nMaxParallel)
+        {
+          final Map.Entry <K, ? extends Callable <V>> aEntry = aIt.next ();
+          try
+          {
+            aRunning.put (aCS.submit (aEntry.getValue ()), aEntry.getKey ());
+          }
+          catch (final RejectedExecutionException ex)
+          {
+            // Don't try the remaining ones either
+            LOGGER.error ("[QueryAPI] The remote query executor is saturated - not executing the request for '" +
+                          aEntry.getKey () +
+                          "' and all remaining ones");
+            bRejected = true;
+          }
+        }
+        if (aRunning.isEmpty ())
+          break;
+
+        final long nRemainingNanos = nDeadlineNanos - System.nanoTime ();
+        if (nRemainingNanos <= 0)
+          break;
+
+        final Future <V> aFuture = aCS.poll (nRemainingNanos, TimeUnit.NANOSECONDS);
+        if (aFuture == null)
+        {
+          // Deadline reached
+          break;
+        }
+
+        final K aKey = aRunning.remove (aFuture);
+        try
+        {
+          final V aResult = aFuture.get ();
+          if (aResult != null)
+            ret.put (aKey, aResult);
+        }
+        catch (final ExecutionException ex)
+        {
+          LOGGER.warn ("[QueryAPI] Parallel request for '" + aKey + "' failed", ex.getCause ());
+        }
+      }
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    finally
+    {
+      if (aRunning.isNotEmpty ())
+      {
+        LOGGER.warn ("[QueryAPI] Cancelling " + aRunning.size () + " parallel request(s) that did not finish in time");
+        for (final Future <V> aFuture : aRunning.keySet ())
+          aFuture.cancel (true);
+      }
+    }
+    return ret;
+  }
+}
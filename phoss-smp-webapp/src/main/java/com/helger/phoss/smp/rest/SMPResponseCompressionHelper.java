@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.streamprovider.ByteArrayInputStreamProvider;
+import com.helger.http.AcceptEncodingList;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
+import com.helger.servlet.request.RequestHelper;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.IRequestWebScopeWithoutResponse;
+
+/**
+ * Helper class to set the content of REST API responses with negotiated
+ * compression. Compared to the generic compression of {@link UnifiedResponse}
+ * this considers the configured minimum size, sends a correct zlib stream for
+ * "deflate" and allows to reuse already compressed content. If the REST
+ * compression is enabled, the content is passed as a stream, for which
+ * {@link UnifiedResponse} never applies the generic compression. All other
+ * responses are not affected.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@Immutable
+public final class SMPResponseCompressionHelper
+{
+  private SMPResponseCompressionHelper ()
+  {}
+
+  @Nullable
+  private static String _getContentCoding (@Nonnull final AcceptEncodingList aAcceptEncodings)
+  {
+    // gzip is preferred, as it is the most widely supported one
+    if (aAcceptEncodings.getUsedGZIPEncoding () != null)
+      return SMPResponseContent.CONTENT_CODING_GZIP;
+    if (aAcceptEncodings.getUsedDeflateEncoding () != null)
+      return SMPResponseContent.CONTENT_CODING_DEFLATE;
+    return null;
+  }
+
+  /**
+   * Set the "Vary" header if the REST compression is enabled. This must be
+   * done for all responses of a resource, including "304 Not Modified"
+   * responses, even if a specific response is not compressed.
+   *
+   * @param aUnifiedResponse
+   *        The response to set the header on. May not be <code>null</code>.
+   */
+  public static void setVaryHeader (@Nonnull final UnifiedResponse aUnifiedResponse)
+  {
+    if (SMPServerConfiguration.isRESTCompressionEnabled ())
+      aUnifiedResponse.setCustomResponseHeader (CHttpHeader.VARY, CHttpHeader.ACCEPT_ENCODING);
+  }
+
+  /**
+   * Set the provided content on the response. If compression is enabled, the
+   * content is large enough and the client accepts a supported content coding,
+   * the compressed content is used.
+   *
+   * @param aRequestScope
+   *        The current request scope. May not be <code>null</code>.
+   * @param aUnifiedResponse
+   *        The response to set the content on. May not be <code>null</code>.
+   * @param aContent
+   *        The content to be set. May not be <code>null</code>.
+   * @param sETag
+   *        The entity tag of the uncompressed content as already set on the
+   *        response. May be <code>null</code>. If present, it is adapted to the
+   *        content coding used.
+   */
+  public static void setContent (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                                 @Nonnull final UnifiedResponse aUnifiedResponse,
+                                 @Nonnull final SMPResponseContent aContent,
+                                 @Nullable final String sETag)
+  {
+    if (!SMPServerConfiguration.isRESTCompressionEnabled ())
+      aUnifiedResponse.setContent (aContent.getBytes ());
+    else
+    {
+      setVaryHeader (aUnifiedResponse);
+
+      String sContentCoding = null;
+      if (aContent.getLength () >= SMPServerConfiguration.getRESTCompressionMinSize ())
+        sContentCoding = _getContentCoding (RequestHelper.getAcceptEncodings (aRequestScope.getRequest ()));
+
+      final byte [] aBytes;
+      if (sContentCoding == null)
+        aBytes = aContent.getBytes ();
+      else
+      {
+        aBytes = aContent.getCompressedBytes (sContentCoding);
+        aUnifiedResponse.setCustomResponseHeader (CHttpHeader.CONTENT_ENCODING, sContentCoding);
+        if (sETag != null)
+          aUnifiedResponse.setETag (SMPConditionalGetHelper.getETagWithContentCoding (sETag, sContentCoding));
+      }
+      // Streamed content is never compressed again by UnifiedResponse
+      aUnifiedResponse.setContent (new ByteArrayInputStreamProvider (aBytes));
+      aUnifiedResponse.setCustomResponseHeader (CHttpHeader.CONTENT_LENGTH, Integer.toString (aBytes.length));
+    }
+    aUnifiedResponse.setMimeType (aContent.getMimeType ()).setCharset (aContent.getCharset ());
+  }
+}
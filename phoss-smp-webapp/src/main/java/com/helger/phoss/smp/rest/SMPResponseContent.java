@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.mime.IMimeType;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The content of a REST API response together with its compressed versions.
+ * The compressed versions are only created on demand, but at most once per
+ * object, so that responses that are cached are not compressed again on every
+ * request.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPResponseContent
+{
+  /** Content coding for gzip */
+  public static final String CONTENT_CODING_GZIP = "gzip";
+  /** Content coding for deflate - the zlib format as defined in RFC 1950 */
+  public static final String CONTENT_CODING_DEFLATE = "deflate";
+
+  private final byte [] m_aBytes;
+  private final IMimeType m_aMimeType;
+  private final Charset m_aCharset;
+  private volatile byte [] m_aGzipBytes;
+  private volatile byte [] m_aDeflateBytes;
+
+  public SMPResponseContent (@Nonnull final byte [] aBytes,
+                             @Nonnull final IMimeType aMimeType,
+                             @Nonnull final Charset aCharset)
+  {
+    ValueEnforcer.notNull (aBytes, "Bytes");
+    ValueEnforcer.notNull (aMimeType, "MimeType");
+    ValueEnforcer.notNull (aCharset, "Charset");
+    m_aBytes = aBytes;
+    m_aMimeType = aMimeType;
+    m_aCharset = aCharset;
+  }
+
+  /**
+   * @return The uncompressed bytes. Never <code>null</code>. Must not be
+   *         modified.
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public byte [] getBytes ()
+  {
+    return m_aBytes;
+  }
+
+  @Nonnegative
+  public int getLength ()
+  {
+    return m_aBytes.length;
+  }
+
+  @Nonnull
+  public IMimeType getMimeType ()
+  {
+    return m_aMimeType;
+  }
+
+  @Nonnull
+  public Charset getCharset ()
+  {
+    return m_aCharset;
+  }
+
+  @Nonnull
+  private byte [] _compress (final boolean bGzip)
+  {
+    final int nInitialSize = Math.max (64, m_aBytes.length / 4);
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (nInitialSize);
+    try (final OutputStream aOS = bGzip ? new GZIPOutputStream (aBAOS) : new DeflaterOutputStream (aBAOS))
+    {
+      aOS.write (m_aBytes);
+    }
+    catch (final IOException ex)
+    {
+      // Cannot happen, as everything is in memory
+      throw new UncheckedIOException (ex);
+    }
+    return aBAOS.getBufferOrCopy ();
+  }
+
+  /**
+   * Get the content in the provided content coding. The compressed version is
+   * created on the first call only.
+   *
+   * @param sContentCoding
+   *        The content coding to use. Must be one of
+   *        {@link #CONTENT_CODING_GZIP} or {@link #CONTENT_CODING_DEFLATE}.
+   * @return The compressed bytes or <code>null</code> if the content coding is
+   *         not supported. Must not be modified.
+   */
+  @Nullable
+  @ReturnsMutableObject
+  public byte [] getCompressedBytes (@Nonnull final String sContentCoding)
+  {
+    // Two threads may compress in parallel, but the results are identical
+    switch (sContentCoding)
+    {
+      case CONTENT_CODING_GZIP:
+      {
+        byte [] ret = m_aGzipBytes;
+        if (ret == null)
+        {
+          ret = _compress (true);
+          m_aGzipBytes = ret;
+        }
+        return ret;
+      }
+      case CONTENT_CODING_DEFLATE:
+      {
+        byte [] ret = m_aDeflateBytes;
+        if (ret == null)
+        {
+          ret = _compress (false);
+          m_aDeflateBytes = ret;
+        }
+        return ret;
+      }
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Length", m_aBytes.length)
+                                       .append ("MimeType", m_aMimeType)
+                                       .append ("Charset", m_aCharset)
+                                       .append ("GzipCreated", m_aGzipBytes != null)
+                                       .append ("DeflateCreated", m_aDeflateBytes != null)
+                                       .getToString ();
+  }
+}
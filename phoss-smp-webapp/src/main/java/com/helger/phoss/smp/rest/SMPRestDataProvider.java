@@ -20,9 +20,14 @@ import java.net.URI;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.id.IHasID;
 import com.helger.commons.lang.EnumHelper;
 import com.helger.commons.string.StringHelper;
@@ -31,6 +36,8 @@ import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.restapi.ISMPServerAPIDataProvider;
 import com.helger.servlet.StaticServerInfo;
 import com.helger.smpclient.url.IBDXLURLProvider;
@@ -41,10 +48,13 @@ import com.helger.web.scope.IRequestWebScopeWithoutResponse;
 
 /**
  * {@link ISMPServerAPIDataProvider} implementation based on
- * {@link IRequestWebScopeWithoutResponse} data.
+ * {@link IRequestWebScopeWithoutResponse} data. The domain objects loaded
+ * during the request are remembered, so that the HTTP validators and the
+ * response are built without querying the backend twice.
  *
  * @author Philip Helger
  */
+@NotThreadSafe
 public class SMPRestDataProvider implements ISMPServerAPIDataProvider
 {
   enum EServerNameMode implements IHasID <String>
@@ -82,6 +92,14 @@ public class SMPRestDataProvider implements ISMPServerAPIDataProvider
   private final IParticipantIdentifier m_aParticipantID;
   private final String m_sSMLZoneName;
   private final String m_sQueryPathPrefix;
+  // Status vars - the data provider is only used within a single request
+  private String m_sBaseURI;
+  private IParticipantIdentifier m_aLastServiceGroupID;
+  private String m_sLastServiceGroupHref;
+  // Loaded domain objects - the values may be null
+  private final ICommonsMap <String, ISMPServiceGroup> m_aServiceGroups = new CommonsHashMap <> ();
+  private final ICommonsMap <String, ICommonsList <ISMPServiceInformation>> m_aAllServiceInfos = new CommonsHashMap <> ();
+  private final ICommonsMap <String, ISMPServiceInformation> m_aServiceInfos = new CommonsHashMap <> ();
 
   public SMPRestDataProvider (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
                               @Nullable final String sServiceGroupID)
@@ -89,7 +107,7 @@ public class SMPRestDataProvider implements ISMPServerAPIDataProvider
     ValueEnforcer.notNull (aRequestScope, "RequestScope");
     m_eServerNameMode = EServerNameMode.getFromIDOrDefault (SMPServerConfiguration.getPublicServerURLMode ());
     m_aRequestScope = aRequestScope;
-    m_aParticipantID = SMPMetaManager.getIdentifierFactory ().parseParticipantIdentifier (sServiceGroupID);
+    m_aParticipantID = SMPMetaManager.getIdentifierCache ().parseParticipantIdentifier (sServiceGroupID);
     m_sSMLZoneName = SMPMetaManager.getSettings ().getSMLDNSZone ();
     m_sQueryPathPrefix = SMPServerConfiguration.getRESTType ().getQueryPathPrefix ();
   }
@@ -207,21 +225,83 @@ public class SMPRestDataProvider implements ISMPServerAPIDataProvider
     return ret;
   }
 
+  @Nonnull
+  private String _getBaseURI ()
+  {
+    // The base URI does not change within a request
+    String ret = m_sBaseURI;
+    if (ret == null)
+    {
+      ret = getBaseUriBuilder () + "/" + m_sQueryPathPrefix;
+      m_sBaseURI = ret;
+    }
+    return ret;
+  }
+
   @Nonnull
   public String getServiceGroupHref (@Nonnull final IParticipantIdentifier aServiceGroupID)
   {
-    return getBaseUriBuilder () + "/" + m_sQueryPathPrefix + aServiceGroupID.getURIPercentEncoded ();
+    // A service group with many document types results in many calls with the
+    // same participant
+    final IParticipantIdentifier aLastServiceGroupID = m_aLastServiceGroupID;
+    if (aLastServiceGroupID != null &&
+        (aLastServiceGroupID == aServiceGroupID || aLastServiceGroupID.hasSameContent (aServiceGroupID)))
+      return m_sLastServiceGroupHref;
+
+    final String ret = _getBaseURI () + aServiceGroupID.getURIPercentEncoded ();
+    m_sLastServiceGroupHref = ret;
+    m_aLastServiceGroupID = aServiceGroupID;
+    return ret;
   }
 
   @Nonnull
   public String getServiceMetadataReferenceHref (@Nonnull final IParticipantIdentifier aServiceGroupID,
                                                  @Nonnull final IDocumentTypeIdentifier aDocTypeID)
   {
-    return getBaseUriBuilder () +
-           "/" +
-           m_sQueryPathPrefix +
-           aServiceGroupID.getURIPercentEncoded () +
-           SMPRestFilter.PATH_SERVICES +
-           aDocTypeID.getURIPercentEncoded ();
+    return getServiceGroupHref (aServiceGroupID) + SMPRestFilter.PATH_SERVICES + aDocTypeID.getURIPercentEncoded ();
+  }
+
+  @Override
+  @Nullable
+  public ISMPServiceGroup getServiceGroupOfID (@Nonnull final IParticipantIdentifier aServiceGroupID)
+  {
+    // The validators and the response need the same service group
+    final String sKey = aServiceGroupID.getURIEncoded ();
+    if (m_aServiceGroups.containsKey (sKey))
+      return m_aServiceGroups.get (sKey);
+
+    final ISMPServiceGroup ret = ISMPServerAPIDataProvider.super.getServiceGroupOfID (aServiceGroupID);
+    m_aServiceGroups.put (sKey, ret);
+    return ret;
+  }
+
+  @Override
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISMPServiceInformation> getAllServiceInformationOfServiceGroup (@Nonnull final ISMPServiceGroup aServiceGroup)
+  {
+    final ICommonsList <ISMPServiceInformation> ret = m_aAllServiceInfos.computeIfAbsent (aServiceGroup.getID (),
+                                                                                         k -> ISMPServerAPIDataProvider.super.getAllServiceInformationOfServiceGroup (aServiceGroup));
+    return ret.getClone ();
+  }
+
+  @Override
+  @Nullable
+  public ISMPServiceInformation getServiceInformationOfServiceGroupAndDocumentType (@Nonnull final ISMPServiceGroup aServiceGroup,
+                                                                                    @Nonnull final IDocumentTypeIdentifier aDocTypeID)
+  {
+    // If all service information are already loaded, use them
+    final ICommonsList <ISMPServiceInformation> aAllServiceInfos = m_aAllServiceInfos.get (aServiceGroup.getID ());
+    if (aAllServiceInfos != null)
+      return aAllServiceInfos.findFirst (x -> x.getDocumentTypeIdentifier ().hasSameContent (aDocTypeID));
+
+    final String sKey = aServiceGroup.getID () + ' ' + aDocTypeID.getURIEncoded ();
+    if (m_aServiceInfos.containsKey (sKey))
+      return m_aServiceInfos.get (sKey);
+
+    final ISMPServiceInformation ret = ISMPServerAPIDataProvider.super.getServiceInformationOfServiceGroupAndDocumentType (aServiceGroup,
+                                                                                                                         aDocTypeID);
+    m_aServiceInfos.put (sKey, ret);
+    return ret;
   }
 }
@@ -237,6 +237,14 @@ public class SMPRestFilter extends AbstractXFilterUnifiedResponse
       aAPIRegistry.registerAPI (aSMPQueryBusinessCard);
     }
 
+    // Endpoint problems since 7.1.4
+    {
+      final APIDescriptor aGetEndpointProblems = new APIDescriptor (APIPath.get ("/problems/endpoints"),
+                                                                    new APIExecutorEndpointProblemsGet ());
+      aGetEndpointProblems.setExceptionMapper (aExceptionMapper);
+      aAPIRegistry.registerAPI (aGetEndpointProblems);
+    }
+
     // Exchange API since 5.6.0
     {
       final APIDescriptor aSMPExportAll = new APIDescriptor (APIPath.get ("/exchange/export/all/xml/v1"),
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.UsedViaReflection;
+import com.helger.commons.collection.map.LRUMap;
+import com.helger.phoss.smp.config.SMPServerConfiguration;
+import com.helger.scope.singleton.AbstractGlobalSingleton;
+
+/**
+ * A bounded in-memory cache for signed service metadata responses. The key is
+ * the entity tag of the response, which covers all inputs of the signed
+ * response. Changed objects therefore automatically result in a different key
+ * and outdated entries are evicted in least recently used order. The cached
+ * {@link SMPResponseContent} objects keep their compressed versions, so that
+ * neither signing nor compression is repeated for cached responses.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+@ThreadSafe
+public final class SMPSignedResponseCache extends AbstractGlobalSingleton
+{
+  private final int m_nMaxSize;
+  @GuardedBy ("m_aRWLock")
+  private final LRUMap <String, SMPResponseContent> m_aMap;
+
+  /**
+   * @deprecated Only called via reflection
+   */
+  @Deprecated
+  @UsedViaReflection
+  public SMPSignedResponseCache ()
+  {
+    m_nMaxSize = SMPServerConfiguration.getRESTSignedResponseCacheSize ();
+    m_aMap = m_nMaxSize > 0 ? new LRUMap <> (m_nMaxSize) : null;
+  }
+
+  @Nonnull
+  public static SMPSignedResponseCache getInstance ()
+  {
+    return getGlobalSingleton (SMPSignedResponseCache.class);
+  }
+
+  /**
+   * @return <code>true</code> if the cache is enabled, <code>false</code> if
+   *         the configured size is 0.
+   */
+  public boolean isEnabled ()
+  {
+    return m_aMap != null;
+  }
+
+  /**
+   * @return The maximum number of cached responses. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getMaxSize ()
+  {
+    return m_nMaxSize;
+  }
+
+  /**
+   * @return The number of cached responses. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    if (m_aMap == null)
+      return 0;
+    return m_aRWLock.readLockedInt (m_aMap::size);
+  }
+
+  /**
+   * Get the cached response.
+   *
+   * @param sETag
+   *        The entity tag of the response. May not be <code>null</code>.
+   * @return <code>null</code> if no such response is cached.
+   */
+  @Nullable
+  public SMPResponseContent get (@Nonnull final String sETag)
+  {
+    ValueEnforcer.notNull (sETag, "ETag");
+    if (m_aMap == null)
+      return null;
+    // Write lock, because the access order is modified
+    return m_aRWLock.writeLockedGet ( () -> m_aMap.get (sETag));
+  }
+
+  /**
+   * Add a response to the cache. Does nothing if the cache is disabled.
+   *
+   * @param sETag
+   *        The entity tag of the response. May not be <code>null</code>.
+   * @param aContent
+   *        The response content. May not be <code>null</code>.
+   */
+  public void put (@Nonnull final String sETag, @Nonnull final SMPResponseContent aContent)
+  {
+    ValueEnforcer.notNull (sETag, "ETag");
+    ValueEnforcer.notNull (aContent, "Content");
+    if (m_aMap != null)
+      m_aRWLock.writeLocked ( () -> m_aMap.put (sETag, aContent));
+  }
+
+  /**
+   * Remove all cached responses.
+   */
+  public void clear ()
+  {
+    if (m_aMap != null)
+      m_aRWLock.writeLocked (m_aMap::clear);
+  }
+}
@@ -45,12 +45,14 @@ import com.helger.peppol.sml.ISMLInfo;
 import com.helger.phoss.smp.CSMPServer;
 import com.helger.phoss.smp.app.CSMP;
 import com.helger.phoss.smp.app.SMPWebAppConfiguration;
+import com.helger.phoss.smp.audit.SMPBatchingAuditor;
 import com.helger.phoss.smp.config.SMPHttpConfiguration;
 import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.security.SMPKeyManager;
 import com.helger.phoss.smp.servlet.SMPWebAppListener;
 import com.helger.phoss.smp.settings.ISMPSettings;
+import com.helger.photon.audit.AuditHelper;
 
 /**
  * The main class to provide the SMP status content.
@@ -176,6 +178,19 @@ public final class SMPStatusProvider
     aStatusData.add ("csp.reporting.only", SMPWebAppConfiguration.isCSPReportingOnly ());
     aStatusData.add ("csp.reporting.enabled", SMPWebAppConfiguration.isCSPReportingEnabled ());
 
+    // Audit writer (since 7.1.4)
+    if (AuditHelper.getAuditor () instanceof SMPBatchingAuditor)
+    {
+      final SMPBatchingAuditor aAuditor = (SMPBatchingAuditor) AuditHelper.getAuditor ();
+      aStatusData.add ("smp.audit.durability", aAuditor.getDurability ().getID ());
+      aStatusData.add ("smp.audit.queue.length", aAuditor.getQueueLength ());
+      aStatusData.add ("smp.audit.queue.capacity", aAuditor.getQueueCapacity ());
+      aStatusData.add ("smp.audit.written", aAuditor.getWrittenCount ());
+      aStatusData.add ("smp.audit.failed", aAuditor.getFailedCount ());
+      aStatusData.add ("smp.audit.dropped", aAuditor.getDroppedCount ());
+      aStatusData.add ("smp.audit.blocked", aAuditor.getBlockedCount ());
+    }
+
     // Add SPI data as well
     for (final ISMPStatusProviderExtensionSPI aImpl : LIST)
     {
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.ui.ajax;
+
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.compare.ESortOrder;
+import com.helger.commons.string.StringHelper;
+import com.helger.html.hc.html.tabular.HCRow;
+import com.helger.html.hc.special.HCSpecialNodes;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonObject;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
+import com.helger.photon.app.PhotonUnifiedResponse;
+import com.helger.photon.core.execcontext.LayoutExecutionContext;
+import com.helger.photon.uictrls.datatables.ajax.AjaxExecutorDataTables;
+import com.helger.photon.uictrls.datatables.ajax.DTSSRequestData;
+import com.helger.photon.uictrls.datatables.ajax.DTSSRequestDataOrderColumn;
+import com.helger.photon.uictrls.datatables.ajax.DTSSResponseData;
+import com.helger.photon.uictrls.datatables.ajax.DataTablesServerDataCell;
+import com.helger.photon.uictrls.datatables.ajax.DataTablesServerDataRow;
+
+/**
+ * Base class for AJAX executors that serve a DataTables table in server side
+ * processing mode. Only the rows of the requested page are read from the
+ * backend and rendered. The DataTables search text is used as a participant
+ * identifier prefix filter (see {@link SMPServiceGroupPageRequest}).
+ *
+ * @author Philip Helger
+ * @param <T>
+ *        The type of a single row
+ * @since 7.1.4
+ */
+public abstract class AbstractSMPAjaxExecutorDataTablesPage <T> extends AbstractSMPAjaxExecutor
+{
+  /**
+   * Get the sort column of the page for the provided DataTables column index.
+   *
+   * @param nColumnIndex
+   *        The 0-based column index of the table.
+   * @return <code>null</code> if the column cannot be sorted on the server
+   *         side. In that case the default sort column is used.
+   */
+  @Nullable
+  protected abstract ESMPServiceGroupSortColumn getSortColumn (int nColumnIndex);
+
+  /**
+   * Read a single page from the backend.
+   *
+   * @param aPageRequest
+   *        The page request. Never <code>null</code>.
+   * @param aConsumer
+   *        The consumer to be invoked for each row of the page in the
+   *        requested order. Never <code>null</code>.
+   * @return The total number of rows matching the filter, ignoring the paging.
+   */
+  @Nonnegative
+  protected abstract long readPage (@Nonnull SMPServiceGroupPageRequest aPageRequest,
+                                    @Nonnull Consumer <? super T> aConsumer);
+
+  /**
+   * @return The total number of rows without any filter. Only invoked if a
+   *         filter is present.
+   */
+  @Nonnegative
+  protected abstract long getTotalCount ();
+
+  /**
+   * Fill all cells of a single table row. The number and order of the cells
+   * must match the table columns.
+   *
+   * @param aLEC
+   *        The layout execution context. Never <code>null</code>.
+   * @param aRow
+   *        The row to fill. Never <code>null</code>.
+   * @param aObject
+   *        The object to be displayed. Never <code>null</code>.
+   */
+  protected abstract void fillRow (@Nonnull LayoutExecutionContext aLEC, @Nonnull HCRow aRow, @Nonnull T aObject);
+
+  @Nonnull
+  private SMPServiceGroupPageRequest _createPageRequest (@Nonnull final DTSSRequestData aRequestData)
+  {
+    ESMPServiceGroupSortColumn eSortColumn = ESMPServiceGroupSortColumn.DEFAULT;
+    boolean bAscending = true;
+    final DTSSRequestDataOrderColumn aOrderColumn = aRequestData.directGetAllOrderColumns ().getFirstOrNull ();
+    if (aOrderColumn != null)
+    {
+      final ESMPServiceGroupSortColumn eColumn = getSortColumn (aOrderColumn.getColumnIndex ());
+      if (eColumn != null)
+      {
+        eSortColumn = eColumn;
+        bAscending = aOrderColumn.getSortDirectionOrDefault () != ESortOrder.DESCENDING;
+      }
+    }
+
+    final String [] aSearchTexts = aRequestData.getSearch ().getSearchTexts ();
+    final String sFilter = aSearchTexts == null || aSearchTexts.length == 0 ? null
+                                                                            : StringHelper.getImploded (' ',
+                                                                                                        aSearchTexts);
+
+    final int nMaxCount = aRequestData.showAllEntries () || aRequestData.getDisplayLength () <= 0 ? Integer.MAX_VALUE
+                                                                                                  : aRequestData.getDisplayLength ();
+    return new SMPServiceGroupPageRequest (Math.max (0, aRequestData.getDisplayStart ()),
+                                           nMaxCount,
+                                           eSortColumn,
+                                           bAscending,
+                                           sFilter,
+                                           null);
+  }
+
+  @Override
+  protected final void mainHandleRequest (@Nonnull final LayoutExecutionContext aLEC,
+                                          @Nonnull final PhotonUnifiedResponse aAjaxResponse) throws Exception
+  {
+    final DTSSRequestData aRequestData = AjaxExecutorDataTables.extractDTSRequestData (aLEC.getRequestScope ());
+    final SMPServiceGroupPageRequest aPageRequest = _createPageRequest (aRequestData);
+
+    final ICommonsList <T> aObjects = new CommonsArrayList <> ();
+    final long nFilteredCount = readPage (aPageRequest, aObjects::add);
+    final long nTotalCount = aPageRequest.hasFilter () ? getTotalCount () : nFilteredCount;
+
+    // Render only the rows of the current page
+    final HCSpecialNodes aSpecialNodes = new HCSpecialNodes ();
+    final ICommonsList <IJsonObject> aData = new CommonsArrayList <> ();
+    for (final T aObject : aObjects)
+    {
+      final HCRow aRow = new HCRow ();
+      fillRow (aLEC, aRow, aObject);
+
+      final DataTablesServerDataRow aServerRow = new DataTablesServerDataRow (aRow);
+      final IJsonObject aRowData = new JsonObject ();
+      int nCellIndex = 0;
+      for (final DataTablesServerDataCell aCell : aServerRow.directGetAllCells ())
+      {
+        aRowData.add (Integer.toString (nCellIndex++), aCell.getHTMLString ());
+        if (aCell.getSpecialNodes () != null)
+          aSpecialNodes.addAll (aCell.getSpecialNodes ());
+      }
+      aData.add (aRowData);
+    }
+
+    final DTSSResponseData aResponseData = new DTSSResponseData (aRequestData.getDraw (),
+                                                                 (int) Math.min (Math.max (nTotalCount, nFilteredCount),
+                                                                                 Integer.MAX_VALUE),
+                                                                 (int) Math.min (nFilteredCount, Integer.MAX_VALUE),
+                                                                 aData,
+                                                                 null,
+                                                                 aSpecialNodes);
+    aAjaxResponse.json (PhotonUnifiedResponse.HtmlHelper.getResponseAsJSON (aResponseData.getAsJson (),
+                                                                            aResponseData.getSpecialNodes ()));
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.ui.ajax;
+
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPage;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
+
+/**
+ * Base class for AJAX executors that serve a DataTables table of service
+ * groups in server side processing mode. Only the service groups of the
+ * requested page are read from the backend and rendered.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public abstract class AbstractSMPAjaxExecutorServiceGroupPage extends
+                                                              AbstractSMPAjaxExecutorDataTablesPage <ISMPServiceGroup>
+{
+  @Override
+  @Nonnegative
+  protected final long readPage (@Nonnull final SMPServiceGroupPageRequest aPageRequest,
+                                 @Nonnull final Consumer <? super ISMPServiceGroup> aConsumer)
+  {
+    final SMPServiceGroupPage aPage = SMPMetaManager.getServiceGroupMgr ().getSMPServiceGroupPage (aPageRequest);
+    aPage.getAllServiceGroups ().forEach (aConsumer);
+    return aPage.getFilteredCount ();
+  }
+
+  @Override
+  @Nonnegative
+  protected final long getTotalCount ()
+  {
+    return SMPMetaManager.getServiceGroupMgr ().getSMPServiceGroupCount ();
+  }
+}
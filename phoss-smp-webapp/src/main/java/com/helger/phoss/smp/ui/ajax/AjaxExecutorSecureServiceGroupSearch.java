@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.ui.ajax;
+
+import javax.annotation.Nonnull;
+
+import com.helger.json.IJsonArray;
+import com.helger.json.JsonArray;
+import com.helger.json.JsonObject;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPage;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
+import com.helger.phoss.smp.ui.secure.hc.HCServiceGroupSelect;
+import com.helger.photon.app.PhotonUnifiedResponse;
+import com.helger.photon.core.execcontext.LayoutExecutionContext;
+
+/**
+ * Search service groups for the service group select box. The search term is
+ * used as a participant identifier prefix filter (see
+ * {@link SMPServiceGroupPageRequest}) and the result is paged. The response
+ * has the format expected by the select2 AJAX data source.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public final class AjaxExecutorSecureServiceGroupSearch extends AbstractSMPAjaxExecutor
+{
+  public static final String PARAM_TERM = "term";
+  public static final String PARAM_PAGE = "page";
+  public static final int PAGE_SIZE = 50;
+
+  @Override
+  protected void mainHandleRequest (@Nonnull final LayoutExecutionContext aLEC,
+                                    @Nonnull final PhotonUnifiedResponse aAjaxResponse) throws Exception
+  {
+    final String sTerm = aLEC.params ().getAsString (PARAM_TERM);
+    // 1-based
+    final int nPage = Math.max (1, aLEC.params ().getAsInt (PARAM_PAGE, 1));
+    final int nOffset = (int) Math.min ((long) (nPage - 1) * PAGE_SIZE, Integer.MAX_VALUE);
+
+    final SMPServiceGroupPage aPage = SMPMetaManager.getServiceGroupMgr ()
+                                                    .getSMPServiceGroupPage (new SMPServiceGroupPageRequest (nOffset,
+                                                                                                             PAGE_SIZE,
+                                                                                                             ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                                                             true,
+                                                                                                             sTerm,
+                                                                                                             null));
+    final IJsonArray aResults = new JsonArray ();
+    for (final ISMPServiceGroup aServiceGroup : aPage.getAllServiceGroups ())
+      aResults.add (new JsonObject ().add ("id", aServiceGroup.getID ())
+                                     .add ("text", HCServiceGroupSelect.getDisplayName (aServiceGroup)));
+
+    final boolean bMore = (long) nOffset + aPage.getServiceGroupCount () < aPage.getFilteredCount ();
+    aAjaxResponse.json (new JsonObject ().add ("results", aResults)
+                                         .add ("pagination", new JsonObject ().add ("more", bMore)));
+  }
+}
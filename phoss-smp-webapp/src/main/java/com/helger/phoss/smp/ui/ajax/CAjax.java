@@ -65,6 +65,11 @@ public final class CAjax
                                                                                                           .filter (FILTER_IS_USER_LOGGED_IN)
                                                                                                           .build ();
 
+  public static final IAjaxFunctionDeclaration FUNCTION_SERVICE_GROUP_SEARCH = AjaxFunctionDeclaration.builder ("serviceGroupSearch")
+                                                                                                      .executor (AjaxExecutorSecureServiceGroupSearch.class)
+                                                                                                      .filter (FILTER_IS_USER_LOGGED_IN)
+                                                                                                      .build ();
+
   private static final Logger LOGGER = LoggerFactory.getLogger (CAjax.class);
 
   private CAjax ()
@@ -76,6 +81,7 @@ public final class CAjax
     aAjaxRegistry.registerFunction (DATATABLES_I18N);
     aAjaxRegistry.registerFunction (LOGIN);
     aAjaxRegistry.registerFunction (FUNCTION_BACKEND_CONNECTION_RESET);
+    aAjaxRegistry.registerFunction (FUNCTION_SERVICE_GROUP_SEARCH);
     LOGGER.info ("Successfully registered the Ajax functions");
   }
 
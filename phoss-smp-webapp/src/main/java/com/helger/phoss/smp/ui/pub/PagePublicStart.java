@@ -16,32 +16,39 @@
  */
 package com.helger.phoss.smp.ui.pub;
 
-import java.util.Comparator;
 import java.util.Locale;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.helger.commons.annotation.Nonempty;
-import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.compare.ESortOrder;
 import com.helger.commons.url.SimpleURL;
 import com.helger.html.hc.ext.HCExtHelper;
-import com.helger.html.hc.html.tabular.AbstractHCTable;
+import com.helger.html.hc.html.grouping.HCDiv;
 import com.helger.html.hc.html.tabular.HCRow;
 import com.helger.html.hc.html.tabular.HCTable;
 import com.helger.html.hc.html.textlevel.HCA;
+import com.helger.html.hc.html.textlevel.HCCode;
 import com.helger.html.hc.impl.HCNodeList;
+import com.helger.html.jquery.JQueryAjaxBuilder;
 import com.helger.phoss.smp.app.SMPWebAppConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPage;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 import com.helger.phoss.smp.rest.SMPRestDataProvider;
 import com.helger.phoss.smp.ui.AbstractSMPWebPage;
+import com.helger.phoss.smp.ui.ajax.AbstractSMPAjaxExecutorServiceGroupPage;
+import com.helger.photon.ajax.GlobalAjaxInvoker;
+import com.helger.photon.ajax.decl.AjaxFunctionDeclaration;
 import com.helger.photon.bootstrap4.table.BootstrapTable;
 import com.helger.photon.bootstrap4.uictrls.datatables.BootstrapDTColAction;
 import com.helger.photon.bootstrap4.uictrls.datatables.BootstrapDataTables;
 import com.helger.photon.core.EPhotonCoreText;
+import com.helger.photon.core.execcontext.LayoutExecutionContext;
 import com.helger.photon.uicore.page.WebPageExecutionContext;
 import com.helger.photon.uictrls.datatables.column.DTCol;
 import com.helger.photon.uictrls.famfam.EFamFamIcon;
@@ -55,6 +62,44 @@ import com.helger.web.scope.IRequestWebScopeWithoutResponse;
  */
 public final class PagePublicStart extends AbstractSMPWebPage
 {
+  /** The 1-based page of the static table */
+  public static final String PARAM_PAGE = "page";
+  /** The number of participants per page of the static table */
+  public static final int STATIC_PAGE_SIZE = 500;
+
+  private static final AjaxFunctionDeclaration AJAX_SERVICE_GROUP_LIST;
+
+  static
+  {
+    // Public list - only available if the participants are shown
+    AJAX_SERVICE_GROUP_LIST = AjaxFunctionDeclaration.builder ()
+                                                     .executor (new AbstractSMPAjaxExecutorServiceGroupPage ()
+                                                     {
+                                                       @Override
+                                                       @Nullable
+                                                       protected ESMPServiceGroupSortColumn getSortColumn (final int nColumnIndex)
+                                                       {
+                                                         return nColumnIndex == 0 ? ESMPServiceGroupSortColumn.PARTICIPANT_ID
+                                                                                  : null;
+                                                       }
+
+                                                       @Override
+                                                       protected void fillRow (@Nonnull final LayoutExecutionContext aLEC,
+                                                                               @Nonnull final HCRow aRow,
+                                                                               @Nonnull final ISMPServiceGroup aServiceGroup)
+                                                       {
+                                                         _fillRow (aLEC.getRequestScope (),
+                                                                   aLEC.getDisplayLocale (),
+                                                                   aRow,
+                                                                   aServiceGroup);
+                                                       }
+                                                     })
+                                                     .filter (x -> !SMPWebAppConfiguration.isStartPageParticipantsNone () &&
+                                                                   SMPWebAppConfiguration.isStartPageDynamicTable ())
+                                                     .build ();
+    GlobalAjaxInvoker.getInstance ().getRegistry ().registerFunction (AJAX_SERVICE_GROUP_LIST);
+  }
+
   public PagePublicStart (@Nonnull @Nonempty final String sID)
   {
     super (sID, "Start page");
@@ -67,6 +112,35 @@ public final class PagePublicStart extends AbstractSMPWebPage
     return "Managed participants on this SMP";
   }
 
+  private static void _fillRow (@Nonnull final IRequestWebScopeWithoutResponse aRequestScope,
+                                @Nonnull final Locale aDisplayLocale,
+                                @Nonnull final HCRow aRow,
+                                @Nonnull final ISMPServiceGroup aServiceGroup)
+  {
+    final boolean bShowExtensionDetails = SMPWebAppConfiguration.isStartPageExtensionsShow ();
+    final String sDisplayName = aServiceGroup.getParticipantIdentifier ().getURIEncoded ();
+
+    aRow.addCell (sDisplayName);
+    if (bShowExtensionDetails)
+    {
+      if (aServiceGroup.getExtensions ().extensions ().isNotEmpty ())
+        aRow.addCell (new HCCode ().addChildren (HCExtHelper.nl2divList (aServiceGroup.getExtensions ()
+                                                                                      .getFirstExtensionXMLString ())));
+      else
+        aRow.addCell ();
+    }
+    else
+    {
+      aRow.addCell (EPhotonCoreText.getYesOrNo (aServiceGroup.getExtensions ().extensions ().isNotEmpty (),
+                                                aDisplayLocale));
+    }
+    final SMPRestDataProvider aDP = new SMPRestDataProvider (aRequestScope, sDisplayName);
+    aRow.addCell (new HCA (new SimpleURL (aDP.getServiceGroupHref (aServiceGroup.getParticipantIdentifier ()))).setTitle ("Perform SMP query on " +
+                                                                                                                          sDisplayName)
+                                                                                                               .setTargetBlank ()
+                                                                                                               .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
+  }
+
   @Override
   protected void fillContent (final WebPageExecutionContext aWPEC)
   {
@@ -82,77 +156,68 @@ public final class PagePublicStart extends AbstractSMPWebPage
     else
     {
       final ISMPServiceGroupManager aSMPServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
-      final ICommonsList <ISMPServiceGroup> aServiceGroups = aSMPServiceGroupMgr.getAllSMPServiceGroups ();
 
       // Use dynamic or static table?
       final boolean bUseDataTables = SMPWebAppConfiguration.isStartPageDynamicTable ();
       final boolean bShowExtensionDetails = SMPWebAppConfiguration.isStartPageExtensionsShow ();
 
-      AbstractHCTable <?> aFinalTable;
-      if (bUseDataTables)
-      {
-        // Dynamic
-        final HCTable aTable = new HCTable (new DTCol ("Participant ID").setInitialSorting (ESortOrder.ASCENDING),
-                                            new DTCol (bShowExtensionDetails ? "Extension"
-                                                                             : "Extension?").setDataSort (1, 0),
-                                            new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-        aFinalTable = aTable;
-      }
+      if (aSMPServiceGroupMgr.getSMPServiceGroupCount () == 0)
+        aNodeList.addChild (info ("This SMP does not manage any participant yet."));
       else
-      {
-        // Static
-        final BootstrapTable aTable = new BootstrapTable ();
-        aTable.setBordered (true);
-        aTable.setCondensed (true);
-        aTable.setStriped (true);
-        aTable.addHeaderRow ()
-              .addCell ("Participant ID")
-              .addCell (bShowExtensionDetails ? "Extension" : "Extension?")
-              .addCell (EPhotonCoreText.ACTIONS.getDisplayText (aDisplayLocale));
-        aFinalTable = aTable;
-
-        // Sort manually
-        aServiceGroups.sort (Comparator.comparing (x -> x.getParticipantIdentifier ().getURIEncoded ()));
-      }
-
-      for (final ISMPServiceGroup aServiceGroup : aServiceGroups)
-      {
-        final String sDisplayName = aServiceGroup.getParticipantIdentifier ().getURIEncoded ();
-
-        final HCRow aRow = aFinalTable.addBodyRow ();
-        aRow.addCell (sDisplayName);
-        if (bShowExtensionDetails)
+        if (bUseDataTables)
         {
-          if (aServiceGroup.getExtensions ().extensions ().isNotEmpty ())
-            aRow.addCell (code (HCExtHelper.nl2divList (aServiceGroup.getExtensions ().getFirstExtensionXMLString ())));
-          else
-            aRow.addCell ();
+          // Dynamic - the rows are rendered page by page in the AJAX handler
+          final HCTable aTable = new HCTable (new DTCol ("Participant ID").setInitialSorting (ESortOrder.ASCENDING),
+                                              new DTCol (bShowExtensionDetails ? "Extension"
+                                                                               : "Extension?").setOrderable (false),
+                                              new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
+          final BootstrapDataTables aDataTables = BootstrapDataTables.createDefaultDataTables (aWPEC, aTable);
+          aDataTables.setAjaxBuilder (new JQueryAjaxBuilder ().url (AJAX_SERVICE_GROUP_LIST.getInvocationURL (aRequestScope)));
+          aNodeList.addChild (aTable).addChild (aDataTables);
+          aNodeList.addChild (new HCDiv ().addChild ("The search matches the beginning of the participant identifier value (e.g. '9915:'). " +
+                                                     "To restrict the identifier scheme, search for 'scheme::value' - the scheme must then match exactly."));
         }
         else
         {
-          aRow.addCell (EPhotonCoreText.getYesOrNo (aServiceGroup.getExtensions ().extensions ().isNotEmpty (),
-                                                    aDisplayLocale));
-        }
-        final SMPRestDataProvider aDP = new SMPRestDataProvider (aRequestScope,
-                                                                 aServiceGroup.getParticipantIdentifier ()
-                                                                              .getURIEncoded ());
-        aRow.addCell (new HCA (new SimpleURL (aDP.getServiceGroupHref (aServiceGroup.getParticipantIdentifier ()))).setTitle ("Perform SMP query on " +
-                                                                                                                              sDisplayName)
-                                                                                                                   .setTargetBlank ()
-                                                                                                                   .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
-      }
-      if (aFinalTable.hasBodyRows ())
-      {
-        aNodeList.addChild (aFinalTable);
+          // Static
+          final BootstrapTable aTable = new BootstrapTable ();
+          aTable.setBordered (true);
+          aTable.setCondensed (true);
+          aTable.setStriped (true);
+          aTable.addHeaderRow ()
+                .addCell ("Participant ID")
+                .addCell (bShowExtensionDetails ? "Extension" : "Extension?")
+                .addCell (EPhotonCoreText.ACTIONS.getDisplayText (aDisplayLocale));
 
-        if (bUseDataTables)
-        {
-          final BootstrapDataTables aDataTables = BootstrapDataTables.createDefaultDataTables (aWPEC, aFinalTable);
-          aNodeList.addChild (aDataTables);
+          // Only a single page is read and rendered
+          final long nPageCount = Math.max (1,
+                                            (aSMPServiceGroupMgr.getSMPServiceGroupCount () + STATIC_PAGE_SIZE - 1) /
+                                               STATIC_PAGE_SIZE);
+          final int nPage = (int) Math.min (Math.max (1, aWPEC.params ().getAsInt (PARAM_PAGE, 1)), nPageCount);
+          final int nOffset = (nPage - 1) * STATIC_PAGE_SIZE;
+
+          // Sorted by the backend
+          final SMPServiceGroupPage aPage = aSMPServiceGroupMgr.getSMPServiceGroupPage (new SMPServiceGroupPageRequest (nOffset,
+                                                                                                                          STATIC_PAGE_SIZE,
+                                                                                                                          ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                                                                          true,
+                                                                                                                          null,
+                                                                                                                          null));
+          for (final ISMPServiceGroup aServiceGroup : aPage.getAllServiceGroups ())
+            _fillRow (aRequestScope, aDisplayLocale, aTable.addBodyRow (), aServiceGroup);
+          aNodeList.addChild (aTable);
+
+          if (nPageCount > 1)
+          {
+            final HCDiv aPaging = aNodeList.addAndReturnChild (new HCDiv ());
+            if (nPage > 1)
+              aPaging.addChild (new HCA (aWPEC.getSelfHref ().add (PARAM_PAGE, nPage - 1)).addChild ("Previous page"))
+                     .addChild (" ");
+            aPaging.addChild ("Page " + nPage + " of " + nPageCount);
+            if (nPage < nPageCount)
+              aPaging.addChild (" ").addChild (new HCA (aWPEC.getSelfHref ().add (PARAM_PAGE, nPage + 1)).addChild ("Next page"));
+          }
         }
-      }
-      else
-        aNodeList.addChild (info ("This SMP does not manage any participant yet."));
     }
   }
 }
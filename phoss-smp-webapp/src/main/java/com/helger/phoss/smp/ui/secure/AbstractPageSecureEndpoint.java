@@ -477,7 +477,7 @@ public abstract class AbstractPageSecureEndpoint extends AbstractSMPWebPageForm
     }
     if (aSelectedEndpoint.hasCertificate ())
     {
-      final X509Certificate aEndpointCert = CertificateHelper.convertStringToCertficateOrNull (aSelectedEndpoint.getCertificate ());
+      final X509Certificate aEndpointCert = aSelectedEndpoint.getCertificateX509 ();
       aForm.addFormGroup (new BootstrapFormGroup ().setLabel ("Certificate")
                                                    .setCtrl (aEndpointCert == null ? strong (
                                                                                              "!!!FAILED TO INTERPRETE!!!")
@@ -32,6 +32,7 @@ import com.helger.photon.core.menu.IMenuItemPage;
 import com.helger.photon.core.menu.IMenuObjectFilter;
 import com.helger.photon.core.menu.IMenuTree;
 import com.helger.photon.core.menu.filter.MenuObjectFilterUserAssignedToUserGroup;
+import com.helger.photon.security.mgr.PhotonSecurityManager;
 import com.helger.photon.uicore.page.system.BasePageShowChildren;
 
 @Immutable
@@ -105,6 +106,9 @@ public final class MenuSecure
       aMenuTree.createItem (aAdmin, new PageSecureTransportProfiles (CMenuSecure.MENU_TRANSPORT_PROFILES));
       aMenuTree.createItem (aAdmin, new BasePageSecurityChangePassword <> (CMenuSecure.MENU_CHANGE_PASSWORD));
       BootstrapPagesMenuConfigurator.addAllItems (aMenuTree, aAdmin, aFilterAdministrators, CSMPServer.DEFAULT_LOCALE);
+      // Supports time ranges for the SQL and MongoDB backends
+      aMenuTree.replaceMenuItem (new PageSecureAudit (PhotonSecurityManager.getAuditMgr ()))
+               .setDisplayFilter (aFilterAdministrators);
 
       if (SMPWebAppConfiguration.isWebAppPageSessionManagmentDisabled ())
       {
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.ui.secure;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.compare.ESortOrder;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.datetime.PDTFromString;
+import com.helger.commons.datetime.PDTToString;
+import com.helger.commons.string.StringHelper;
+import com.helger.html.hc.html.forms.HCEdit;
+import com.helger.html.hc.html.tabular.HCTable;
+import com.helger.html.hc.impl.HCNodeList;
+import com.helger.phoss.smp.audit.ISMPAuditStore;
+import com.helger.photon.audit.IAuditItem;
+import com.helger.photon.audit.IAuditManager;
+import com.helger.photon.bootstrap4.buttongroup.BootstrapButtonToolbar;
+import com.helger.photon.bootstrap4.form.BootstrapForm;
+import com.helger.photon.bootstrap4.form.BootstrapFormGroup;
+import com.helger.photon.bootstrap4.pages.BootstrapPagesMenuConfigurator;
+import com.helger.photon.bootstrap4.pages.monitoring.BasePageMonitoringAudit;
+import com.helger.photon.bootstrap4.uictrls.datatables.BootstrapDataTables;
+import com.helger.photon.core.EPhotonCoreText;
+import com.helger.photon.core.form.RequestField;
+import com.helger.photon.security.util.SecurityHelper;
+import com.helger.photon.uicore.icon.EDefaultIcon;
+import com.helger.photon.uicore.page.WebPageExecutionContext;
+import com.helger.photon.uictrls.datatables.column.DTCol;
+import com.helger.photon.uictrls.datatables.column.EDTColType;
+
+/**
+ * The audit page. If the audit manager supports range queries (SQL and
+ * MongoDB backends), the audit items of a selectable time range are shown.
+ * Otherwise only the latest audit items are shown.
+ *
+ * @author Philip Helger
+ * @since 7.1.4
+ */
+public class PageSecureAudit extends BasePageMonitoringAudit <WebPageExecutionContext>
+{
+  private static final String FIELD_FROM = "from";
+  private static final String FIELD_TO = "to";
+  private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+  public PageSecureAudit (@Nonnull final IAuditManager aAuditMgr)
+  {
+    // Same ID, so that it can replace the default page
+    super (BootstrapPagesMenuConfigurator.MENU_ADMIN_MONITORING_AUDIT, aAuditMgr);
+  }
+
+  @Nullable
+  private static LocalDateTime _parse (@Nullable final String sValue)
+  {
+    return StringHelper.hasNoText (sValue) ? null
+                                           : PDTFromString.getLocalDateTimeFromString (sValue.trim (), FORMATTER);
+  }
+
+  @Override
+  protected void fillContent (@Nonnull final WebPageExecutionContext aWPEC)
+  {
+    if (!(getAuditMgr () instanceof ISMPAuditStore))
+    {
+      // No range queries supported
+      super.fillContent (aWPEC);
+      return;
+    }
+
+    final HCNodeList aNodeList = aWPEC.getNodeList ();
+    final Locale aDisplayLocale = aWPEC.getDisplayLocale ();
+    final ISMPAuditStore aAuditStore = (ISMPAuditStore) getAuditMgr ();
+
+    // Default: the last 24 hours
+    final LocalDateTime aNow = PDTFactory.getCurrentLocalDateTime ().truncatedTo (ChronoUnit.MINUTES);
+    final String sFrom = aWPEC.params ().getAsString (FIELD_FROM);
+    final String sTo = aWPEC.params ().getAsString (FIELD_TO);
+    LocalDateTime aFrom = StringHelper.hasText (sFrom) ? _parse (sFrom) : aNow.minusDays (1);
+    LocalDateTime aTo = _parse (sTo);
+    if (aFrom == null && StringHelper.hasText (sFrom))
+    {
+      aNodeList.addChild (warn ("The start date time '" + sFrom + "' is invalid and was ignored."));
+      aFrom = aNow.minusDays (1);
+    }
+    if (aTo == null && StringHelper.hasText (sTo))
+      aNodeList.addChild (warn ("The end date time '" + sTo + "' is invalid and was ignored."));
+    int nMaxItems = aWPEC.params ().getAsInt (PARAM_MAX_ITEMS, DEFAULT_MAX_ITEMS);
+    if (nMaxItems <= 0)
+      nMaxItems = DEFAULT_MAX_ITEMS;
+
+    {
+      final BootstrapForm aForm = aNodeList.addAndReturnChild (getUIHandler ().createFormSelf (aWPEC));
+      aForm.addFormGroup (new BootstrapFormGroup ().setLabel ("From")
+                                                   .setCtrl (new HCEdit (new RequestField (FIELD_FROM,
+                                                                                           aFrom.format (FORMATTER))))
+                                                   .setHelpText ("Inclusive, in the format yyyy-MM-ddTHH:mm"));
+      aForm.addFormGroup (new BootstrapFormGroup ().setLabel ("To")
+                                                   .setCtrl (new HCEdit (new RequestField (FIELD_TO,
+                                                                                           aTo == null ? null
+                                                                                                       : aTo.format (FORMATTER))))
+                                                   .setHelpText ("Exclusive, in the format yyyy-MM-ddTHH:mm. Leave empty for no upper bound."));
+      aForm.addFormGroup (new BootstrapFormGroup ().setLabel ("Maximum number of items")
+                                                   .setCtrl (new HCEdit (new RequestField (PARAM_MAX_ITEMS,
+                                                                                           Integer.toString (nMaxItems)))));
+      final BootstrapButtonToolbar aToolbar = aForm.addAndReturnChild (new BootstrapButtonToolbar (aWPEC));
+      aToolbar.addSubmitButton (EPhotonCoreText.BUTTON_REFRESH.getDisplayText (aDisplayLocale), EDefaultIcon.REFRESH);
+    }
+
+    final HCTable aTable = new HCTable (new DTCol ("Date time").setDisplayType (EDTColType.DATETIME, aDisplayLocale)
+                                                              .setInitialSorting (ESortOrder.DESCENDING),
+                                        new DTCol ("User"),
+                                        new DTCol ("Type"),
+                                        new DTCol ("Success"),
+                                        new DTCol ("Action")).setID (getID ());
+    // Uses the index on the date time
+    for (final IAuditItem aItem : aAuditStore.getAllAuditItemsInRange (aFrom, aTo, nMaxItems))
+    {
+      aTable.addBodyRow ()
+            .addCell (PDTToString.getAsString (aItem.getDateTime (), aDisplayLocale))
+            .addCell (SecurityHelper.getUserDisplayName (aItem.getUserID (), aDisplayLocale))
+            .addCell (aItem.getType ().getID ())
+            .addCell (EPhotonCoreText.getYesOrNo (aItem.getSuccess ().isSuccess (), aDisplayLocale))
+            .addCell (getActionString (aItem));
+    }
+    aNodeList.addChild (aTable);
+    aNodeList.addChild (BootstrapDataTables.createDefaultDataTables (aWPEC, aTable));
+  }
+}
@@ -28,7 +28,6 @@ import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.compare.CompareHelper;
-import com.helger.commons.compare.ESortOrder;
 import com.helger.commons.datetime.PDTFromString;
 import com.helger.commons.datetime.PDTToString;
 import com.helger.commons.id.factory.GlobalIDFactory;
@@ -49,16 +48,18 @@ import com.helger.html.hc.html.grouping.HCDiv;
 import com.helger.html.hc.html.tabular.HCCol;
 import com.helger.html.hc.html.tabular.HCRow;
 import com.helger.html.hc.html.tabular.HCTable;
-import com.helger.html.hc.html.tabular.IHCCell;
 import com.helger.html.hc.html.textlevel.HCA;
 import com.helger.html.hc.impl.HCNodeList;
 import com.helger.html.hc.impl.HCTextNode;
+import com.helger.html.hc.special.HCSpecialNodes;
 import com.helger.html.jquery.JQuery;
 import com.helger.html.jquery.JQueryAjaxBuilder;
 import com.helger.html.jscode.JSAnonymousFunction;
 import com.helger.html.jscode.JSAssocArray;
 import com.helger.html.jscode.JSPackage;
 import com.helger.html.jscode.JSVar;
+import com.helger.json.IJsonObject;
+import com.helger.json.JsonObject;
 import com.helger.pd.client.PDClient;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
@@ -71,11 +72,14 @@ import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardContact;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardIdentifier;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardName;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchIndex;
+import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardSearchResult;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.settings.ISMPSettings;
 import com.helger.phoss.smp.ui.AbstractSMPWebPageForm;
 import com.helger.phoss.smp.ui.SMPCommonUI;
+import com.helger.phoss.smp.ui.ajax.AbstractSMPAjaxExecutor;
 import com.helger.phoss.smp.ui.ajax.CAjax;
 import com.helger.phoss.smp.ui.secure.hc.HCServiceGroupSelect;
 import com.helger.photon.ajax.decl.IAjaxFunctionDeclaration;
@@ -103,15 +107,21 @@ import com.helger.photon.core.execcontext.ILayoutExecutionContext;
 import com.helger.photon.core.execcontext.LayoutExecutionContext;
 import com.helger.photon.core.form.FormErrorList;
 import com.helger.photon.core.form.RequestField;
+import com.helger.photon.core.menu.IMenuItemPage;
 import com.helger.photon.uicore.css.CPageParam;
-import com.helger.photon.uicore.html.select.HCCountrySelect;
 import com.helger.photon.uicore.html.select.HCCountrySelect.EWithDeprecated;
+import com.helger.photon.uicore.html.select.HCCountrySelect;
 import com.helger.photon.uicore.icon.EDefaultIcon;
 import com.helger.photon.uicore.js.JSJQueryHelper;
 import com.helger.photon.uicore.page.EShowList;
 import com.helger.photon.uicore.page.EWebPageFormAction;
 import com.helger.photon.uicore.page.WebPageExecutionContext;
 import com.helger.photon.uictrls.datatables.DataTables;
+import com.helger.photon.uictrls.datatables.ajax.AjaxExecutorDataTables;
+import com.helger.photon.uictrls.datatables.ajax.DTSSRequestData;
+import com.helger.photon.uictrls.datatables.ajax.DTSSResponseData;
+import com.helger.photon.uictrls.datatables.ajax.DataTablesServerDataCell;
+import com.helger.photon.uictrls.datatables.ajax.DataTablesServerDataRow;
 import com.helger.photon.uictrls.datatables.column.DTCol;
 import com.helger.photon.uictrls.famfam.EFamFamFlagIcon;
 import com.helger.photon.uictrls.famfam.EFamFamIcon;
@@ -147,6 +157,7 @@ public final class PageSecureBusinessCard extends AbstractSMPWebPageForm <ISMPBu
   private static final IAjaxFunctionDeclaration AJAX_CREATE_ENTITY;
   private static final IAjaxFunctionDeclaration AJAX_CREATE_CONTACT;
   private static final IAjaxFunctionDeclaration AJAX_CREATE_IDENTIFIER;
+  private static final IAjaxFunctionDeclaration AJAX_BUSINESS_CARD_LIST;
 
   static
   {
@@ -187,6 +198,67 @@ public final class PageSecureBusinessCard extends AbstractSMPWebPageForm <ISMPBu
       // Build the HTML response
       aAjaxResponse.html (aNode);
     });
+    AJAX_BUSINESS_CARD_LIST = CAjax.addAjaxWithLogin (new AbstractSMPAjaxExecutor ()
+    {
+      @Override
+      protected void mainHandleRequest (@Nonnull final LayoutExecutionContext aLEC,
+                                        @Nonnull final PhotonUnifiedResponse aAjaxResponse) throws Exception
+      {
+        final DTSSRequestData aRequestData = AjaxExecutorDataTables.extractDTSRequestData (aLEC.getRequestScope ());
+        final String [] aSearchTexts = aRequestData.getSearch ().getSearchTexts ();
+        final String sQuery = aSearchTexts == null ? null : StringHelper.getImploded (' ', aSearchTexts);
+        final int nMaxCount = aRequestData.showAllEntries () || aRequestData.getDisplayLength () <= 0 ? Integer.MAX_VALUE
+                                                                                                      : aRequestData.getDisplayLength ();
+
+        final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
+        final SMPBusinessCardSearchResult aResult = aBusinessCardMgr.searchSMPBusinessCards (sQuery,
+                                                                                             Math.max (0,
+                                                                                                       aRequestData.getDisplayStart ()),
+                                                                                             nMaxCount);
+
+        // Links must be created relative to this page and not to the AJAX
+        // servlet
+        final IMenuItemPage aMenuItem = (IMenuItemPage) aLEC.getMenuTree ()
+                                                            .getItemDataWithID (CMenuSecure.MENU_BUSINESS_CARDS);
+        final PageSecureBusinessCard aPage = (PageSecureBusinessCard) aMenuItem.getPage ();
+        final WebPageExecutionContext aWPEC = new WebPageExecutionContext (new LayoutExecutionContext (aLEC, aMenuItem),
+                                                                           aPage);
+
+        // Render only the business cards of the current page - one row per
+        // business card, so that the row counts match the match count
+        final ICommonsList <HCRow> aRows = new CommonsArrayList <> ();
+        for (final ISMPBusinessCard aBusinessCard : aResult.getAllBusinessCards ())
+          aRows.add (aPage._createRow (aWPEC, aBusinessCard));
+
+        final HCSpecialNodes aSpecialNodes = new HCSpecialNodes ();
+        final ICommonsList <IJsonObject> aData = new CommonsArrayList <> ();
+        for (final HCRow aRow : aRows)
+        {
+          final DataTablesServerDataRow aServerRow = new DataTablesServerDataRow (aRow);
+          final IJsonObject aRowData = new JsonObject ();
+          int nCellIndex = 0;
+          for (final DataTablesServerDataCell aCell : aServerRow.directGetAllCells ())
+          {
+            aRowData.add (Integer.toString (nCellIndex++), aCell.getHTMLString ());
+            if (aCell.getSpecialNodes () != null)
+              aSpecialNodes.addAll (aCell.getSpecialNodes ());
+          }
+          aData.add (aRowData);
+        }
+
+        final SMPBusinessCardSearchIndex aSearchIndex = aBusinessCardMgr.getSearchIndex ();
+        final int nTotalCount = aSearchIndex != null ? aSearchIndex.getBusinessCardCount ()
+                                                     : (int) aBusinessCardMgr.getSMPBusinessCardCount ();
+        final DTSSResponseData aResponseData = new DTSSResponseData (aRequestData.getDraw (),
+                                                                     nTotalCount,
+                                                                     aResult.getMatchCount (),
+                                                                     aData,
+                                                                     null,
+                                                                     aSpecialNodes);
+        aAjaxResponse.json (PhotonUnifiedResponse.HtmlHelper.getResponseAsJSON (aResponseData.getAsJson (),
+                                                                                aResponseData.getSpecialNodes ()));
+      }
+    });
   }
 
   public PageSecureBusinessCard (@Nonnull @Nonempty final String sID)
@@ -1147,13 +1219,55 @@ public final class PageSecureBusinessCard extends AbstractSMPWebPageForm <ISMPBu
     return ret;
   }
 
+  @Nonnull
+  private HCRow _createRow (@Nonnull final WebPageExecutionContext aWPEC, @Nonnull final ISMPBusinessCard aCurObject)
+  {
+    final Locale aDisplayLocale = aWPEC.getDisplayLocale ();
+    final ISimpleURL aViewLink = createViewURL (aWPEC, aCurObject);
+    final String sDisplayName = aCurObject.getID ();
+
+    // One line per entity in each cell
+    final HCNodeList aNames = new HCNodeList ();
+    final HCNodeList aCountries = new HCNodeList ();
+    final HCNodeList aGeoInfos = new HCNodeList ();
+    final HCNodeList aIdentifiers = new HCNodeList ();
+    for (final SMPBusinessCardEntity aEntity : aCurObject.getAllEntities ())
+    {
+      final SMPBusinessCardName aName = aEntity.names ().getFirstOrNull ();
+      aNames.addChild (div (aName == null ? "" : aName.getName ()));
+
+      final Locale aCountry = CountryCache.getInstance ().getCountry (aEntity.getCountryCode ());
+      final HCDiv aCountryDiv = div ();
+      final EFamFamFlagIcon eIcon = aCountry == null ? null : EFamFamFlagIcon.getFromIDOrNull (aCountry.getCountry ());
+      if (eIcon != null)
+        aCountryDiv.addChild (eIcon.getAsNode ()).addChild (" ");
+      aCountryDiv.addChild (aCountry == null ? aEntity.getCountryCode () : aCountry.getDisplayCountry (aDisplayLocale));
+      aCountries.addChild (aCountryDiv);
+
+      aGeoInfos.addChild (div (HCExtHelper.nl2divList (aEntity.getGeographicalInformation ())));
+
+      final HCDiv aIdentifierDiv = div ();
+      for (final SMPBusinessCardIdentifier aIdentifier : aEntity.identifiers ())
+        aIdentifierDiv.addChild (div (aIdentifier.getScheme ()).addChild (" - ").addChild (aIdentifier.getValue ()));
+      aIdentifiers.addChild (aIdentifierDiv);
+    }
+
+    final HCRow aRow = new HCRow ();
+    aRow.addCell (new HCA (aViewLink).addChild (sDisplayName));
+    aRow.addCell (aNames);
+    aRow.addCell (aCountries);
+    aRow.addCell (aGeoInfos);
+    aRow.addCell (aIdentifiers);
+    aRow.addCell (_createActionCell (aWPEC, aCurObject));
+    return aRow;
+  }
+
   @Override
   protected void showListOfExistingObjects (@Nonnull final WebPageExecutionContext aWPEC)
   {
     final Locale aDisplayLocale = aWPEC.getDisplayLocale ();
     final HCNodeList aNodeList = aWPEC.getNodeList ();
     final ISMPBusinessCardManager aBusinessCardMgr = SMPMetaManager.getBusinessCardMgr ();
-    final ICommonsList <ISMPBusinessCard> aAllBusinessCards = aBusinessCardMgr.getAllSMPBusinessCards ();
 
     final BootstrapButtonToolbar aToolbar = new BootstrapButtonToolbar (aWPEC);
     aToolbar.addButton ("Create new Business Card", createCreateURL (aWPEC), EDefaultIcon.NEW);
@@ -1163,60 +1277,25 @@ public final class PageSecureBusinessCard extends AbstractSMPWebPageForm <ISMPBu
                                              .setIcon (EFamFamIcon.ARROW_REDO)
                                              .addChild ("Update all Business Cards in " +
                                                         SMPWebAppConfiguration.getDirectoryName ())
-                                             .setDisabled (aAllBusinessCards.isEmpty ()));
+                                             .setDisabled (aBusinessCardMgr.getSMPBusinessCardCount () <= 0));
     aNodeList.addChild (aToolbar);
 
-    final HCTable aTable = new HCTable (new DTCol ("Service Group").setDataSort (0, 1)
-                                                                   .setInitialSorting (ESortOrder.ASCENDING),
-                                        new DTCol ("Name"),
-                                        new DTCol ("Country"),
-                                        new DTCol ("GeoInfo"),
-                                        new DTCol ("Identifiers"),
+    final SMPBusinessCardSearchIndex aSearchIndex = aBusinessCardMgr.getSearchIndex ();
+    if (aSearchIndex != null && !aSearchIndex.isInitialized ())
+      aNodeList.addChild (warn ("The search index is still being built. The list of Business Cards may be incomplete."));
+
+    // The search and paging happens on the server side, sorted by the Service
+    // Group ID
+    final HCTable aTable = new HCTable (new DTCol ("Service Group").setOrderable (false),
+                                        new DTCol ("Name").setOrderable (false),
+                                        new DTCol ("Country").setOrderable (false),
+                                        new DTCol ("GeoInfo").setOrderable (false),
+                                        new DTCol ("Identifiers").setOrderable (false),
                                         new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-    for (final ISMPBusinessCard aCurObject : aAllBusinessCards)
-    {
-      final ISimpleURL aViewLink = createViewURL (aWPEC, aCurObject);
-      final String sDisplayName = aCurObject.getID ();
-
-      if (aCurObject.getEntityCount () == 0)
-      {
-        final HCRow aRow = aTable.addBodyRow ();
-        aRow.addCell (new HCA (aViewLink).addChild (sDisplayName));
-        for (int i = 1; i < aTable.getColumnCount () - 1; ++i)
-          aRow.addCell ();
-        aRow.addCell (_createActionCell (aWPEC, aCurObject));
-      }
-      else
-      {
-        for (final SMPBusinessCardEntity aEntity : aCurObject.getAllEntities ())
-        {
-          final HCRow aRow = aTable.addBodyRow ();
-          aRow.addCell (new HCA (aViewLink).addChild (sDisplayName));
-          aRow.addCell (aEntity.names ().getFirstOrNull ().getName ());
-
-          final Locale aCountry = CountryCache.getInstance ().getCountry (aEntity.getCountryCode ());
-          final IHCCell <?> aCountryCell = aRow.addCell ();
-          final EFamFamFlagIcon eIcon = aCountry == null ? null
-                                                         : EFamFamFlagIcon.getFromIDOrNull (aCountry.getCountry ());
-          if (eIcon != null)
-            aCountryCell.addChild (eIcon.getAsNode ()).addChild (" ");
-          aCountryCell.addChild (aCountry.getDisplayCountry (aDisplayLocale));
-
-          aRow.addCell (HCExtHelper.nl2divList (aEntity.getGeographicalInformation ()));
-          {
-            final HCNodeList aIdentifiers = new HCNodeList ();
-            for (final SMPBusinessCardIdentifier aIdentifier : aEntity.identifiers ())
-              aIdentifiers.addChild (div (aIdentifier.getScheme ()).addChild (" - ")
-                                                                   .addChild (aIdentifier.getValue ()));
-            aRow.addCell (aIdentifiers);
-          }
-          aRow.addCell (_createActionCell (aWPEC, aCurObject));
-        }
-      }
-    }
 
+    // The rows are rendered page by page in the AJAX handler
     final DataTables aDataTables = BootstrapDataTables.createDefaultDataTables (aWPEC, aTable);
-
+    aDataTables.setAjaxBuilder (new JQueryAjaxBuilder ().url (AJAX_BUSINESS_CARD_LIST.getInvocationURL (aWPEC.getRequestScope ())));
     aNodeList.addChild (aTable).addChild (aDataTables);
   }
 }
@@ -27,16 +27,13 @@ import javax.annotation.Nullable;
 
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.CollectionHelper;
-import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
 import com.helger.commons.collection.impl.CommonsHashSet;
-import com.helger.commons.collection.impl.CommonsTreeSet;
-import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.collection.impl.ICommonsSet;
-import com.helger.commons.collection.impl.ICommonsSortedSet;
 import com.helger.commons.compare.ESortOrder;
 import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.mutable.MutableInt;
 import com.helger.commons.state.EValidity;
 import com.helger.commons.state.IValidityIndicator;
 import com.helger.commons.string.StringHelper;
@@ -59,9 +56,9 @@ import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
-import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPCertificateCache;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeResult;
 import com.helger.phoss.smp.ui.AbstractSMPWebPage;
 import com.helger.phoss.smp.ui.SMPCommonUI;
 import com.helger.photon.bootstrap4.button.BootstrapButton;
@@ -97,19 +94,16 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
   {
     private static final AtomicInteger RUNNING_JOBS = new AtomicInteger (0);
 
-    private final ICommonsList <ISMPServiceInformation> m_aAllSIs;
     private final Locale m_aDisplayLocale;
     private final String m_sOldUnifiedCert;
     private final String m_sNewCert;
 
-    public BulkChangeCertificate (@Nonnull final ICommonsList <ISMPServiceInformation> aAllSIs,
-                                  @Nonnull final Locale aDisplayLocale,
+    public BulkChangeCertificate (@Nonnull final Locale aDisplayLocale,
                                   @Nonnull final String sOldUnifiedCert,
                                   @Nonnull final String sNewCert)
     {
       super ("BulkChangeCertificate",
              new ReadOnlyMultilingualText (CSMPServer.DEFAULT_LOCALE, "Bulk change certificate"));
-      m_aAllSIs = aAllSIs;
       m_aDisplayLocale = aDisplayLocale;
       m_sOldUnifiedCert = sOldUnifiedCert;
       m_sNewCert = sNewCert;
@@ -123,39 +117,24 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
       {
         final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
 
-        // Modify all endpoints
-        int nChangedEndpoints = 0;
-        int nSaveErrors = 0;
-        final ICommonsSortedSet <String> aChangedServiceGroup = new CommonsTreeSet <> ();
-        for (final ISMPServiceInformation aSI : m_aAllSIs)
-        {
-          boolean bChanged = false;
-          for (final ISMPProcess aProcess : aSI.getAllProcesses ())
-            for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
-              if (m_sOldUnifiedCert.equals (_getUnifiedCert (aEndpoint.getCertificate ())))
-              {
-                bChanged = true;
-                ((SMPEndpoint) aEndpoint).setCertificate (m_sNewCert);
-                ++nChangedEndpoints;
-              }
-          if (bChanged)
-          {
-            if (aServiceInfoMgr.mergeSMPServiceInformation (aSI).isFailure ())
-              nSaveErrors++;
-            aChangedServiceGroup.add (aSI.getServiceGroupID ());
-          }
-        }
+        // Modify all endpoints in the backend
+        final SMPEndpointBulkChangeResult aResult = aServiceInfoMgr.changeAllEndpointCertificates (x -> m_sOldUnifiedCert.equals (_getUnifiedCert (x)),
+                                                                                                    m_sNewCert);
+        final long nChangedEndpoints = aResult.getChangedEndpointCount ();
+        final int nSaveErrors = aResult.getErrorCount ();
 
         final IHCNode aRes;
         if (nChangedEndpoints > 0)
         {
           final HCUL aUL = new HCUL ();
-          for (final String sChangedServiceGroupID : aChangedServiceGroup)
+          for (final String sChangedServiceGroupID : aResult.getAllChangedServiceGroupIDs ())
             aUL.addItem (sChangedServiceGroupID);
 
           final HCNodeList aNodes = new HCNodeList ().addChildren (div ("The old certificate was changed in " +
                                                                         nChangedEndpoints +
-                                                                        " endpoints to the new certificate:"),
+                                                                        " endpoints in " +
+                                                                        aResult.getDuration ().toMillis () +
+                                                                        " milliseconds to the new certificate:"),
                                                                    _getCertificateDisplay (m_sNewCert,
                                                                                            m_aDisplayLocale),
                                                                    div ("Effected service groups are:"),
@@ -230,15 +209,8 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
   @Nonnull
   private static IHCNode _getCertificateDisplay (@Nullable final String sCert, @Nonnull final Locale aDisplayLocale)
   {
-    X509Certificate aEndpointCert = null;
-    try
-    {
-      aEndpointCert = CertificateHelper.convertStringToCertficate (sCert);
-    }
-    catch (final Exception ex)
-    {
-      // Ignore
-    }
+    // Parsed only once per distinct certificate
+    final X509Certificate aEndpointCert = SMPCertificateCache.getX509Certificate (sCert);
     if (aEndpointCert == null)
     {
       final int nDisplayLen = 20;
@@ -286,23 +258,22 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
     final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
     boolean bShowList = true;
 
-    final ICommonsMap <String, ICommonsList <ISMPEndpoint>> aEndpointsGroupedPerURL = new CommonsHashMap <> ();
+    // Only remember the counts, so that not all endpoints are in memory
+    final ICommonsMap <String, MutableInt> aEndpointCountPerCert = new CommonsHashMap <> ();
     final ICommonsMap <String, ICommonsSet <ISMPServiceGroup>> aServiceGroupsGroupedPerURL = new CommonsHashMap <> ();
-    final ICommonsList <ISMPServiceInformation> aAllSIs = aServiceInfoMgr.getAllSMPServiceInformation ();
-    int nTotalEndpointCount = 0;
-    for (final ISMPServiceInformation aSI : aAllSIs)
-    {
+    final MutableInt aTotalEndpointCount = new MutableInt (0);
+    aServiceInfoMgr.forEachSMPServiceInformation (aSI -> {
       final ISMPServiceGroup aSG = aSI.getServiceGroup ();
       for (final ISMPProcess aProcess : aSI.getAllProcesses ())
         for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
         {
           final String sUnifiedCertificate = _getUnifiedCert (aEndpoint.getCertificate ());
-          aEndpointsGroupedPerURL.computeIfAbsent (sUnifiedCertificate, k -> new CommonsArrayList <> ())
-                                 .add (aEndpoint);
+          aEndpointCountPerCert.computeIfAbsent (sUnifiedCertificate, k -> new MutableInt (0)).inc ();
           aServiceGroupsGroupedPerURL.computeIfAbsent (sUnifiedCertificate, k -> new CommonsHashSet <> ()).add (aSG);
-          ++nTotalEndpointCount;
+          aTotalEndpointCount.inc ();
         }
-    }
+    });
+    final int nTotalEndpointCount = aTotalEndpointCount.intValue ();
 
     {
       final BootstrapButtonToolbar aToolbar = new BootstrapButtonToolbar (aWPEC);
@@ -356,7 +327,7 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
         {
           PhotonWorkerPool.getInstance ()
                           .run ("BulkChangeCertificate",
-                                new BulkChangeCertificate (aAllSIs, aDisplayLocale, sOldUnifiedCert, sNewCert));
+                                new BulkChangeCertificate (aDisplayLocale, sOldUnifiedCert, sNewCert));
 
           aWPEC.postRedirectGetInternal (success ().addChildren (div ("The bulk change of the endpoint certificate to"),
                                                                  _getCertificateDisplay (sNewUnifiedCert,
@@ -367,7 +338,8 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
 
       final ICommonsSet <ISMPServiceGroup> aServiceGroups = aServiceGroupsGroupedPerURL.get (sOldUnifiedCert);
       final int nSGCount = CollectionHelper.getSize (aServiceGroups);
-      final int nEPCount = CollectionHelper.getSize (aEndpointsGroupedPerURL.get (sOldUnifiedCert));
+      final MutableInt aEPCount = aEndpointCountPerCert.get (sOldUnifiedCert);
+      final int nEPCount = aEPCount == null ? 0 : aEPCount.intValue ();
       aNodeList.addChild (info ("The selected old certificate is currently used in " +
                                 nEPCount +
                                 " " +
@@ -414,14 +386,14 @@ public final class PageSecureEndpointChangeCertificate extends AbstractSMPWebPag
                                                                                             aDisplayLocale),
                                           new DTCol ("Endpoint Count").setDisplayType (EDTColType.INT, aDisplayLocale),
                                           new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-      aEndpointsGroupedPerURL.forEach ( (sCert, aEndpoints) -> {
+      aEndpointCountPerCert.forEach ( (sCert, aEPCount) -> {
         final HCRow aRow = aTable.addBodyRow ();
         aRow.addCell (_getCertificateDisplay (sCert, aDisplayLocale));
 
         final int nSGCount = CollectionHelper.getSize (aServiceGroupsGroupedPerURL.get (sCert));
         aRow.addCell (Integer.toString (nSGCount));
 
-        aRow.addCell (Integer.toString (aEndpoints.size ()));
+        aRow.addCell (Integer.toString (aEPCount.intValue ()));
 
         final ISimpleURL aEditURL = aWPEC.getSelfHref ()
                                          .add (CPageParam.PARAM_ACTION, CPageParam.ACTION_EDIT)
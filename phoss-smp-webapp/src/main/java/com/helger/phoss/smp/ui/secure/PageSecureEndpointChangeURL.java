@@ -24,15 +24,12 @@ import javax.annotation.Nonnull;
 
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.CollectionHelper;
-import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
 import com.helger.commons.collection.impl.CommonsHashSet;
-import com.helger.commons.collection.impl.CommonsTreeSet;
-import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.collection.impl.ICommonsSet;
-import com.helger.commons.collection.impl.ICommonsSortedSet;
 import com.helger.commons.compare.ESortOrder;
+import com.helger.commons.mutable.MutableInt;
 import com.helger.commons.state.EValidity;
 import com.helger.commons.state.IValidityIndicator;
 import com.helger.commons.string.StringHelper;
@@ -56,9 +53,8 @@ import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
-import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointBulkChangeResult;
 import com.helger.phoss.smp.ui.AbstractSMPWebPage;
 import com.helger.photon.bootstrap4.button.BootstrapButton;
 import com.helger.photon.bootstrap4.buttongroup.BootstrapButtonToolbar;
@@ -92,18 +88,15 @@ public final class PageSecureEndpointChangeURL extends AbstractSMPWebPage
   {
     private static final AtomicInteger RUNNING_JOBS = new AtomicInteger (0);
 
-    private final ICommonsList <ISMPServiceInformation> m_aAllSIs;
     private final ISMPServiceGroup m_aServiceGroup;
     private final String m_sOldURL;
     private final String m_sNewURL;
 
-    public BulkChangeEndpointURL (final ICommonsList <ISMPServiceInformation> aAllSIs,
-                                  final ISMPServiceGroup aServiceGroup,
+    public BulkChangeEndpointURL (final ISMPServiceGroup aServiceGroup,
                                   final String sOldURL,
                                   final String sNewURL)
     {
       super ("BulkChangeEndpointURL", new ReadOnlyMultilingualText (CSMPServer.DEFAULT_LOCALE, "Bulk change endpoint URL"));
-      m_aAllSIs = aAllSIs;
       m_aServiceGroup = aServiceGroup;
       m_sOldURL = sOldURL;
       m_sNewURL = sNewURL;
@@ -117,47 +110,27 @@ public final class PageSecureEndpointChangeURL extends AbstractSMPWebPage
       {
         final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
 
-        // Modify all endpoints
-        int nChangedEndpoints = 0;
-        int nSaveErrors = 0;
-        final ICommonsSortedSet <String> aChangedServiceGroup = new CommonsTreeSet <> ();
-        for (final ISMPServiceInformation aSI : m_aAllSIs)
-        {
-          if (m_aServiceGroup != null && !aSI.getServiceGroup ().equals (m_aServiceGroup))
-          {
-            // Wrong service group
-            continue;
-          }
-
-          boolean bChanged = false;
-          for (final ISMPProcess aProcess : aSI.getAllProcesses ())
-            for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
-              if (m_sOldURL.equals (aEndpoint.getEndpointReference ()))
-              {
-                ((SMPEndpoint) aEndpoint).setEndpointReference (m_sNewURL);
-                bChanged = true;
-                ++nChangedEndpoints;
-              }
-          if (bChanged)
-          {
-            if (aServiceInfoMgr.mergeSMPServiceInformation (aSI).isFailure ())
-              nSaveErrors++;
-            aChangedServiceGroup.add (aSI.getServiceGroupID ());
-          }
-        }
+        // Modify all endpoints in the backend
+        final SMPEndpointBulkChangeResult aResult = aServiceInfoMgr.changeAllEndpointURLs (m_aServiceGroup,
+                                                                                            m_sOldURL,
+                                                                                            m_sNewURL);
+        final long nChangedEndpoints = aResult.getChangedEndpointCount ();
+        final int nSaveErrors = aResult.getErrorCount ();
 
         final IHCNode aRes;
         if (nChangedEndpoints > 0)
         {
           final HCUL aUL = new HCUL ();
-          for (final String sChangedServiceGroupID : aChangedServiceGroup)
+          for (final String sChangedServiceGroupID : aResult.getAllChangedServiceGroupIDs ())
             aUL.addItem (sChangedServiceGroupID);
 
           final HCNodeList aNodes = new HCNodeList ().addChildren (div ("The old URL '" +
                                                                         m_sOldURL +
                                                                         "' was changed in " +
                                                                         nChangedEndpoints +
-                                                                        " endpoints. Effected service groups are:"),
+                                                                        " endpoints in " +
+                                                                        aResult.getDuration ().toMillis () +
+                                                                        " milliseconds. Effected service groups are:"),
                                                                    aUL);
           if (nSaveErrors == 0)
             aRes = success (aNodes);
@@ -222,26 +195,27 @@ public final class PageSecureEndpointChangeURL extends AbstractSMPWebPage
     final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
     boolean bShowList = true;
 
-    final ICommonsMap <String, ICommonsList <ISMPEndpoint>> aEndpointsGroupedPerURL = new CommonsHashMap <> ();
+    // Only remember the counts, so that not all endpoints are in memory
+    final ICommonsMap <String, MutableInt> aEndpointCountPerURL = new CommonsHashMap <> ();
     final ICommonsMap <String, ICommonsSet <ISMPServiceGroup>> aServiceGroupsGroupedPerURL = new CommonsHashMap <> ();
-    final ICommonsList <ISMPServiceInformation> aAllSIs = aServiceInfoMgr.getAllSMPServiceInformation ();
-    int nTotalEndpointCount = 0;
-    int nTotalEndpointCountWithURL = 0;
-    for (final ISMPServiceInformation aSI : aAllSIs)
-    {
+    final MutableInt aTotalEndpointCount = new MutableInt (0);
+    final MutableInt aTotalEndpointCountWithURL = new MutableInt (0);
+    aServiceInfoMgr.forEachSMPServiceInformation (aSI -> {
       final ISMPServiceGroup aSG = aSI.getServiceGroup ();
       for (final ISMPProcess aProcess : aSI.getAllProcesses ())
         for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
         {
-          ++nTotalEndpointCount;
+          aTotalEndpointCount.inc ();
           if (aEndpoint.hasEndpointReference ())
           {
-            aEndpointsGroupedPerURL.computeIfAbsent (aEndpoint.getEndpointReference (), k -> new CommonsArrayList <> ()).add (aEndpoint);
+            aEndpointCountPerURL.computeIfAbsent (aEndpoint.getEndpointReference (), k -> new MutableInt (0)).inc ();
             aServiceGroupsGroupedPerURL.computeIfAbsent (aEndpoint.getEndpointReference (), k -> new CommonsHashSet <> ()).add (aSG);
-            ++nTotalEndpointCountWithURL;
+            aTotalEndpointCountWithURL.inc ();
           }
         }
-    }
+    });
+    final int nTotalEndpointCount = aTotalEndpointCount.intValue ();
+    final int nTotalEndpointCountWithURL = aTotalEndpointCountWithURL.intValue ();
 
     {
       final BootstrapButtonToolbar aToolbar = new BootstrapButtonToolbar (aWPEC);
@@ -296,7 +270,7 @@ public final class PageSecureEndpointChangeURL extends AbstractSMPWebPage
         if (aFormErrors.isEmpty ())
         {
           PhotonWorkerPool.getInstance ()
-                          .run ("BulkChangeEndpointURL", new BulkChangeEndpointURL (aAllSIs, aServiceGroup, sOldURL, sNewURL));
+                          .run ("BulkChangeEndpointURL", new BulkChangeEndpointURL (aServiceGroup, sOldURL, sNewURL));
 
           aWPEC.postRedirectGetInternal (success ("The bulk change of the endpoint URL from '" +
                                                   sOldURL +
@@ -308,7 +282,8 @@ public final class PageSecureEndpointChangeURL extends AbstractSMPWebPage
 
       final ICommonsSet <ISMPServiceGroup> aServiceGroups = aServiceGroupsGroupedPerURL.get (sOldURL);
       final int nSGCount = CollectionHelper.getSize (aServiceGroups);
-      final int nEPCount = CollectionHelper.getSize (aEndpointsGroupedPerURL.get (sOldURL));
+      final MutableInt aEPCount = aEndpointCountPerURL.get (sOldURL);
+      final int nEPCount = aEPCount == null ? 0 : aEPCount.intValue ();
       aNodeList.addChild (info ("The selected old URL '" +
                                 sOldURL +
                                 "' is currently used in " +
@@ -377,14 +352,14 @@ public final class PageSecureEndpointChangeURL extends AbstractSMPWebPage
                                           new DTCol ("Service Group Count").setDisplayType (EDTColType.INT, aDisplayLocale),
                                           new DTCol ("Endpoint Count").setDisplayType (EDTColType.INT, aDisplayLocale),
                                           new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-      aEndpointsGroupedPerURL.forEach ( (sURL, aEndpoints) -> {
+      aEndpointCountPerURL.forEach ( (sURL, aEPCount) -> {
         final HCRow aRow = aTable.addBodyRow ();
         aRow.addCell (sURL);
 
         final int nSGCount = CollectionHelper.getSize (aServiceGroupsGroupedPerURL.get (sURL));
         aRow.addCell (Integer.toString (nSGCount));
 
-        aRow.addCell (Integer.toString (aEndpoints.size ()));
+        aRow.addCell (Integer.toString (aEPCount.intValue ()));
 
         final ISimpleURL aEditURL = aWPEC.getSelfHref ().add (CPageParam.PARAM_ACTION, CPageParam.ACTION_EDIT).add (FIELD_OLD_URL, sURL);
         aRow.addCell (new HCA (aEditURL).setTitle ("Change all endpoints pointing to " + sURL).addChild (EDefaultIcon.EDIT.getAsNode ()));
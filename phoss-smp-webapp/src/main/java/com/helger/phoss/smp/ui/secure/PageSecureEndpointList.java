@@ -17,14 +17,14 @@
 package com.helger.phoss.smp.ui.secure;
 
 import java.util.Locale;
+import java.util.function.Consumer;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.attr.StringMap;
-import com.helger.commons.collection.impl.CommonsHashSet;
-import com.helger.commons.collection.impl.ICommonsList;
-import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.compare.ESortOrder;
 import com.helger.commons.url.ISimpleURL;
 import com.helger.commons.url.SimpleURL;
@@ -33,26 +33,32 @@ import com.helger.html.hc.html.tabular.HCTable;
 import com.helger.html.hc.html.textlevel.HCA;
 import com.helger.html.hc.impl.HCNodeList;
 import com.helger.html.hc.impl.HCTextNode;
+import com.helger.html.jquery.JQueryAjaxBuilder;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
-import com.helger.peppolid.IProcessIdentifier;
 import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointPage;
 import com.helger.phoss.smp.nicename.NiceNameUI;
 import com.helger.phoss.smp.rest.SMPRestDataProvider;
+import com.helger.phoss.smp.ui.ajax.AbstractSMPAjaxExecutorDataTablesPage;
+import com.helger.phoss.smp.ui.ajax.CAjax;
+import com.helger.photon.ajax.decl.IAjaxFunctionDeclaration;
 import com.helger.photon.bootstrap4.buttongroup.BootstrapButtonToolbar;
 import com.helger.photon.bootstrap4.uictrls.datatables.BootstrapDTColAction;
 import com.helger.photon.bootstrap4.uictrls.datatables.BootstrapDataTables;
+import com.helger.photon.core.execcontext.LayoutExecutionContext;
+import com.helger.photon.core.menu.IMenuItemPage;
 import com.helger.photon.uicore.icon.EDefaultIcon;
 import com.helger.photon.uicore.page.WebPageExecutionContext;
 import com.helger.photon.uictrls.datatables.DataTables;
 import com.helger.photon.uictrls.datatables.column.DTCol;
 import com.helger.photon.uictrls.famfam.EFamFamIcon;
-import com.helger.web.scope.IRequestWebScopeWithoutResponse;
 
 /**
  * Class to manage endpoints that belong to a service group. To use this page at
@@ -62,25 +68,115 @@ import com.helger.web.scope.IRequestWebScopeWithoutResponse;
  */
 public final class PageSecureEndpointList extends AbstractPageSecureEndpoint
 {
+  private static final IAjaxFunctionDeclaration AJAX_ENDPOINT_LIST;
+
+  static
+  {
+    AJAX_ENDPOINT_LIST = CAjax.addAjaxWithLogin (new AbstractSMPAjaxExecutorDataTablesPage <SMPEndpointPage.Entry> ()
+    {
+      @Override
+      @Nullable
+      protected ESMPServiceGroupSortColumn getSortColumn (final int nColumnIndex)
+      {
+        // Endpoints can only be sorted by participant
+        return nColumnIndex == 0 ? ESMPServiceGroupSortColumn.PARTICIPANT_ID : null;
+      }
+
+      @Override
+      @Nonnegative
+      protected long readPage (@Nonnull final SMPServiceGroupPageRequest aPageRequest,
+                               @Nonnull final Consumer <? super SMPEndpointPage.Entry> aConsumer)
+      {
+        final SMPEndpointPage aPage = SMPMetaManager.getServiceInformationMgr ().getSMPEndpointPage (aPageRequest);
+        aPage.getAllEntries ().forEach (aConsumer);
+        return aPage.getFilteredCount ();
+      }
+
+      @Override
+      @Nonnegative
+      protected long getTotalCount ()
+      {
+        return SMPMetaManager.getServiceInformationMgr ()
+                             .getSMPEndpointPage (new SMPServiceGroupPageRequest (0,
+                                                                                  1,
+                                                                                  ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                                  true,
+                                                                                  null,
+                                                                                  null))
+                             .getFilteredCount ();
+      }
+
+      @Override
+      protected void fillRow (@Nonnull final LayoutExecutionContext aLEC,
+                              @Nonnull final HCRow aRow,
+                              @Nonnull final SMPEndpointPage.Entry aEntry)
+      {
+        // Links must be created relative to this page and not to the AJAX
+        // servlet
+        final IMenuItemPage aMenuItem = (IMenuItemPage) aLEC.getMenuTree ()
+                                                            .getItemDataWithID (CMenuSecure.MENU_ENDPOINT_LIST);
+        final PageSecureEndpointList aPage = (PageSecureEndpointList) aMenuItem.getPage ();
+        final WebPageExecutionContext aWPEC = new WebPageExecutionContext (new LayoutExecutionContext (aLEC,
+                                                                                                       aMenuItem),
+                                                                           aPage);
+        aPage._fillRow (aWPEC, aRow, aEntry.getServiceInformation (), aEntry.getProcess (), aEntry.getEndpoint ());
+      }
+    });
+  }
+
   public PageSecureEndpointList (@Nonnull @Nonempty final String sID)
   {
     super (sID, "Endpoint List");
   }
 
+  private void _fillRow (@Nonnull final WebPageExecutionContext aWPEC,
+                         @Nonnull final HCRow aRow,
+                         @Nonnull final ISMPServiceInformation aServiceInfo,
+                         @Nonnull final ISMPProcess aProcess,
+                         @Nonnull final ISMPEndpoint aEndpoint)
+  {
+    final ISMPServiceGroup aServiceGroup = aServiceInfo.getServiceGroup ();
+    final IParticipantIdentifier aParticipantID = aServiceGroup.getParticipantIdentifier ();
+    final IDocumentTypeIdentifier aDocTypeID = aServiceInfo.getDocumentTypeIdentifier ();
+    final SMPRestDataProvider aDP = new SMPRestDataProvider (aWPEC.getRequestScope (),
+                                                             aParticipantID.getURIEncoded ());
+    final StringMap aParams = createParamMap (aServiceInfo, aProcess, aEndpoint);
+
+    final ISimpleURL aViewURL = createViewURL (aWPEC, aServiceInfo, aParams);
+    aRow.addCell (new HCA (aViewURL).addChild (aServiceGroup.getID ()));
+    aRow.addCell (NiceNameUI.getDocumentTypeID (aDocTypeID, false));
+    aRow.addCell (NiceNameUI.getProcessID (aDocTypeID, aProcess.getProcessIdentifier (), false));
+
+    final String sTransportProfile = aEndpoint.getTransportProfile ();
+    aRow.addCell (new HCA (createViewURL (aWPEC,
+                                          CMenuSecure.MENU_TRANSPORT_PROFILES,
+                                          sTransportProfile)).addChild (NiceNameUI.getTransportProfile (sTransportProfile,
+                                                                                                        false)));
+
+    final ISimpleURL aEditURL = createEditURL (aWPEC, aServiceInfo).addAll (aParams);
+    final ISimpleURL aCopyURL = createCopyURL (aWPEC, aServiceInfo).addAll (aParams);
+    final ISimpleURL aDeleteURL = createDeleteURL (aWPEC, aServiceInfo).addAll (aParams);
+    final ISimpleURL aPreviewURL = new SimpleURL (aDP.getServiceMetadataReferenceHref (aParticipantID, aDocTypeID));
+    aRow.addCell (new HCA (aViewURL).setTitle ("View endpoint").addChild (EDefaultIcon.MAGNIFIER.getAsNode ()),
+                  new HCTextNode (" "),
+                  new HCA (aEditURL).setTitle ("Edit endpoint").addChild (EDefaultIcon.EDIT.getAsNode ()),
+                  new HCTextNode (" "),
+                  new HCA (aCopyURL).setTitle ("Copy endpoint").addChild (EDefaultIcon.COPY.getAsNode ()),
+                  new HCTextNode (" "),
+                  new HCA (aDeleteURL).setTitle ("Delete endpoint").addChild (EDefaultIcon.DELETE.getAsNode ()),
+                  new HCTextNode (" "),
+                  new HCA (aPreviewURL).setTitle ("Perform SMP query on endpoint")
+                                       .setTargetBlank ()
+                                       .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
+  }
+
   @Override
   protected void showListOfExistingObjects (@Nonnull final WebPageExecutionContext aWPEC)
   {
-    final IRequestWebScopeWithoutResponse aRequestScope = aWPEC.getRequestScope ();
     final Locale aDisplayLocale = aWPEC.getDisplayLocale ();
     final HCNodeList aNodeList = aWPEC.getNodeList ();
-    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
-
-    final ICommonsList <ISMPServiceInformation> aAllServiceInfos = aServiceInfoMgr.getAllSMPServiceInformation ();
 
-    // Count unique service groups
-    final ICommonsSet <String> aServiceGroupIDs = new CommonsHashSet <> ();
-    aAllServiceInfos.findAllMapped (ISMPServiceInformation::getServiceGroupID, aServiceGroupIDs::add);
-    final boolean bHideDetails = aServiceGroupIDs.size () > 1000;
+    final boolean bHideDetails = SMPMetaManager.getServiceGroupMgr ().getSMPServiceGroupCount () > 1000;
 
     final BootstrapButtonToolbar aToolbar = new BootstrapButtonToolbar (aWPEC);
     aToolbar.addButton ("Create new Endpoint", createCreateURL (aWPEC), EDefaultIcon.NEW);
@@ -91,59 +187,16 @@ public final class PageSecureEndpointList extends AbstractPageSecureEndpoint
                           EDefaultIcon.MAGNIFIER);
     aNodeList.addChild (aToolbar);
 
-    final HCTable aTable = new HCTable (new DTCol ("Service Group").setInitialSorting (ESortOrder.ASCENDING)
-                                                                   .setDataSort (0, 1, 2, 3),
-                                        new DTCol ("Document Type ID").setDataSort (1, 0, 2, 3),
-                                        new DTCol ("Process ID").setDataSort (2, 0, 1, 3),
-                                        new DTCol ("Transport Profile").setDataSort (3, 0, 1, 2),
+    // Only the service group column can be sorted on the server side
+    final HCTable aTable = new HCTable (new DTCol ("Service Group").setInitialSorting (ESortOrder.ASCENDING),
+                                        new DTCol ("Document Type ID").setOrderable (false),
+                                        new DTCol ("Process ID").setOrderable (false),
+                                        new DTCol ("Transport Profile").setOrderable (false),
                                         new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-    for (final ISMPServiceInformation aServiceInfo : aAllServiceInfos)
-    {
-      final ISMPServiceGroup aServiceGroup = aServiceInfo.getServiceGroup ();
-      final IParticipantIdentifier aParticipantID = aServiceGroup.getParticipantIdentifier ();
-      final IDocumentTypeIdentifier aDocTypeID = aServiceInfo.getDocumentTypeIdentifier ();
-      final SMPRestDataProvider aDP = new SMPRestDataProvider (aRequestScope, aParticipantID.getURIEncoded ());
-
-      for (final ISMPProcess aProcess : aServiceInfo.getAllProcesses ())
-      {
-        final IProcessIdentifier aProcessID = aProcess.getProcessIdentifier ();
-        for (final ISMPEndpoint aEndpoint : aProcess.getAllEndpoints ())
-        {
-          final StringMap aParams = createParamMap (aServiceInfo, aProcess, aEndpoint);
-
-          final HCRow aRow = aTable.addBodyRow ();
-          final ISimpleURL aViewURL = createViewURL (aWPEC, aServiceInfo, aParams);
-          aRow.addCell (new HCA (aViewURL).addChild (aServiceGroup.getID ()));
-          aRow.addCell (NiceNameUI.getDocumentTypeID (aDocTypeID, false));
-          aRow.addCell (NiceNameUI.getProcessID (aDocTypeID, aProcessID, false));
-
-          final String sTransportProfile = aEndpoint.getTransportProfile ();
-          aRow.addCell (new HCA (createViewURL (aWPEC,
-                                                CMenuSecure.MENU_TRANSPORT_PROFILES,
-                                                sTransportProfile)).addChild (NiceNameUI.getTransportProfile (sTransportProfile,
-                                                                                                              false)));
-
-          final ISimpleURL aEditURL = createEditURL (aWPEC, aServiceInfo).addAll (aParams);
-          final ISimpleURL aCopyURL = createCopyURL (aWPEC, aServiceInfo).addAll (aParams);
-          final ISimpleURL aDeleteURL = createDeleteURL (aWPEC, aServiceInfo).addAll (aParams);
-          final ISimpleURL aPreviewURL = new SimpleURL (aDP.getServiceMetadataReferenceHref (aParticipantID,
-                                                                                             aDocTypeID));
-          aRow.addCell (new HCA (aViewURL).setTitle ("View endpoint").addChild (EDefaultIcon.MAGNIFIER.getAsNode ()),
-                        new HCTextNode (" "),
-                        new HCA (aEditURL).setTitle ("Edit endpoint").addChild (EDefaultIcon.EDIT.getAsNode ()),
-                        new HCTextNode (" "),
-                        new HCA (aCopyURL).setTitle ("Copy endpoint").addChild (EDefaultIcon.COPY.getAsNode ()),
-                        new HCTextNode (" "),
-                        new HCA (aDeleteURL).setTitle ("Delete endpoint").addChild (EDefaultIcon.DELETE.getAsNode ()),
-                        new HCTextNode (" "),
-                        new HCA (aPreviewURL).setTitle ("Perform SMP query on endpoint")
-                                             .setTargetBlank ()
-                                             .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
-        }
-      }
-    }
 
+    // The rows are rendered page by page in the AJAX handler
     final DataTables aDataTables = BootstrapDataTables.createDefaultDataTables (aWPEC, aTable);
+    aDataTables.setAjaxBuilder (new JQueryAjaxBuilder ().url (AJAX_ENDPOINT_LIST.getInvocationURL (aWPEC.getRequestScope ())));
     aNodeList.addChild (aTable).addChild (aDataTables);
   }
 }
@@ -50,6 +50,7 @@ import com.helger.html.hc.html.textlevel.HCCode;
 import com.helger.html.hc.html.textlevel.HCEM;
 import com.helger.html.hc.impl.HCNodeList;
 import com.helger.html.hc.impl.HCTextNode;
+import com.helger.html.jquery.JQueryAjaxBuilder;
 import com.helger.network.port.NetworkOnlineStatusDeterminator;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
@@ -61,6 +62,7 @@ import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCard;
 import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
 import com.helger.phoss.smp.domain.businesscard.SMPBusinessCardEntity;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
@@ -72,7 +74,10 @@ import com.helger.phoss.smp.smlhook.RegistrationHookException;
 import com.helger.phoss.smp.smlhook.RegistrationHookFactory;
 import com.helger.phoss.smp.ui.AbstractSMPWebPageForm;
 import com.helger.phoss.smp.ui.SMPCommonUI;
+import com.helger.phoss.smp.ui.ajax.AbstractSMPAjaxExecutorServiceGroupPage;
+import com.helger.phoss.smp.ui.ajax.CAjax;
 import com.helger.phoss.smp.ui.secure.hc.HCUserSelect;
+import com.helger.photon.ajax.decl.IAjaxFunctionDeclaration;
 import com.helger.photon.app.url.LinkHelper;
 import com.helger.photon.bootstrap4.alert.BootstrapQuestionBox;
 import com.helger.photon.bootstrap4.badge.BootstrapBadge;
@@ -91,8 +96,10 @@ import com.helger.photon.bootstrap4.pages.handler.AbstractBootstrapWebPageAction
 import com.helger.photon.bootstrap4.uictrls.datatables.BootstrapDTColAction;
 import com.helger.photon.bootstrap4.uictrls.datatables.BootstrapDataTables;
 import com.helger.photon.core.EPhotonCoreText;
+import com.helger.photon.core.execcontext.LayoutExecutionContext;
 import com.helger.photon.core.form.FormErrorList;
 import com.helger.photon.core.form.RequestField;
+import com.helger.photon.core.menu.IMenuItemPage;
 import com.helger.photon.security.login.LoggedInUserManager;
 import com.helger.photon.security.mgr.PhotonSecurityManager;
 import com.helger.photon.security.user.IUser;
@@ -127,6 +134,50 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
   private static final String ACTION_REGISTER_TO_SML = "register-to-sml";
   private static final String ACTION_UNREGISTER_FROM_SML = "unregister-from-sml";
 
+  private static final String PARAM_SHOW_DETAILS = "showdetails";
+
+  private static final IAjaxFunctionDeclaration AJAX_SERVICE_GROUP_LIST;
+
+  static
+  {
+    AJAX_SERVICE_GROUP_LIST = CAjax.addAjaxWithLogin (new AbstractSMPAjaxExecutorServiceGroupPage ()
+    {
+      @Override
+      @Nullable
+      protected ESMPServiceGroupSortColumn getSortColumn (final int nColumnIndex)
+      {
+        switch (nColumnIndex)
+        {
+          case 0:
+            return ESMPServiceGroupSortColumn.PARTICIPANT_ID;
+          case 1:
+            return ESMPServiceGroupSortColumn.OWNER_ID;
+          default:
+            return null;
+        }
+      }
+
+      @Override
+      protected void fillRow (@Nonnull final LayoutExecutionContext aLEC,
+                              @Nonnull final HCRow aRow,
+                              @Nonnull final ISMPServiceGroup aServiceGroup)
+      {
+        // Links must be created relative to this page and not to the AJAX
+        // servlet
+        final IMenuItemPage aMenuItem = (IMenuItemPage) aLEC.getMenuTree ()
+                                                            .getItemDataWithID (CMenuSecure.MENU_SERVICE_GROUPS);
+        final PageSecureServiceGroup aPage = (PageSecureServiceGroup) aMenuItem.getPage ();
+        final WebPageExecutionContext aWPEC = new WebPageExecutionContext (new LayoutExecutionContext (aLEC,
+                                                                                                       aMenuItem),
+                                                                           aPage);
+        aPage._fillRow (aWPEC,
+                        aRow,
+                        aServiceGroup,
+                        aLEC.getRequestScope ().params ().getAsBoolean (PARAM_SHOW_DETAILS, false));
+      }
+    });
+  }
+
   public PageSecureServiceGroup (@Nonnull @Nonempty final String sID)
   {
     super (sID, "Service Groups");
@@ -654,20 +705,102 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
     }
   }
 
+  private void _fillRow (@Nonnull final WebPageExecutionContext aWPEC,
+                         @Nonnull final HCRow aRow,
+                         @Nonnull final ISMPServiceGroup aCurObject,
+                         final boolean bShowDetails)
+  {
+    final Locale aDisplayLocale = aWPEC.getDisplayLocale ();
+    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
+    final ISMPBusinessCardManager aBCMgr = SMPMetaManager.getBusinessCardMgr ();
+    final ISMPSettings aSettings = SMPMetaManager.getSettings ();
+    final ESMPRESTType eRESTType = SMPServerConfiguration.getRESTType ();
+    final boolean bShowExtensionDetails = SMPWebAppConfiguration.isServiceGroupsExtensionsShow ();
+    final boolean bShowBusinessCardName = CSMP.ENABLE_ISSUE_56 && aSettings.isDirectoryIntegrationEnabled ();
+
+    final ISimpleURL aViewLink = createViewURL (aWPEC, aCurObject);
+    final String sDisplayName = aCurObject.getParticipantIdentifier ().getURIEncoded ();
+
+    aRow.addCell (new HCA (aViewLink).addChild (sDisplayName));
+    aRow.addCell (SMPCommonUI.getOwnerName (aCurObject.getOwnerID ()));
+    if (bShowBusinessCardName)
+    {
+      IHCNode aName = null;
+      final ISMPBusinessCard aBC = aBCMgr.getSMPBusinessCardOfServiceGroup (aCurObject);
+      if (aBC != null)
+      {
+        final SMPBusinessCardEntity aEntity = aBC.getEntityAtIndex (0);
+        if (aEntity != null && aEntity.names ().isNotEmpty ())
+          aName = HCTextNode.createOnDemand (aEntity.names ().getFirstOrNull ().getName ());
+      }
+      aRow.addCell (aName);
+    }
+    if (bShowExtensionDetails)
+    {
+      if (aCurObject.getExtensions ().extensions ().isNotEmpty ())
+        aRow.addCell (new HCCode ().addChildren (HCExtHelper.nl2divList (aCurObject.getExtensions ()
+                                                                                   .getFirstExtensionXMLString ())));
+      else
+        aRow.addCell ();
+    }
+    else
+    {
+      aRow.addCell (EPhotonCoreText.getYesOrNo (aCurObject.getExtensions ().extensions ().isNotEmpty (),
+                                                aDisplayLocale));
+    }
+
+    if (bShowDetails)
+    {
+      int nProcesses = 0;
+      int nEndpoints = 0;
+      final ICommonsList <ISMPServiceInformation> aSIs = aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aCurObject);
+      for (final ISMPServiceInformation aSI : aSIs)
+      {
+        nProcesses += aSI.getProcessCount ();
+        nEndpoints += aSI.getTotalEndpointCount ();
+      }
+
+      aRow.addCell (Integer.toString (aSIs.size ()));
+      aRow.addCell (Integer.toString (nProcesses));
+      aRow.addCell (Integer.toString (nEndpoints));
+    }
+
+    final HCNodeList aActions = new HCNodeList ();
+    aActions.addChildren (createEditLink (aWPEC, aCurObject, "Edit " + sDisplayName),
+                          new HCTextNode (" "),
+                          createCopyLink (aWPEC, aCurObject, "Copy " + sDisplayName),
+                          new HCTextNode (" "),
+                          createDeleteLink (aWPEC, aCurObject, "Delete " + sDisplayName),
+                          new HCTextNode (" "),
+                          new HCA (LinkHelper.getURLWithServerAndContext (aCurObject.getParticipantIdentifier ()
+                                                                                    .getURIPercentEncoded ())).setTitle ("Perform SMP query on " +
+                                                                                                                         sDisplayName)
+                                                                                                              .setTargetBlank ()
+                                                                                                              .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
+    if (eRESTType.isCompleteServiceGroupSupported ())
+    {
+      aActions.addChildren (new HCTextNode (" "),
+                            new HCA (LinkHelper.getURLWithServerAndContext ("complete/" +
+                                                                            aCurObject.getParticipantIdentifier ()
+                                                                                      .getURIPercentEncoded ())).setTitle ("Perform complete SMP query on " +
+                                                                                                                           sDisplayName)
+                                                                                                                .setTargetBlank ()
+                                                                                                                .addChild (EFamFamIcon.SCRIPT_LINK.getAsNode ()));
+    }
+    aRow.addCell (aActions);
+  }
+
   @Override
   protected void showListOfExistingObjects (@Nonnull final WebPageExecutionContext aWPEC)
   {
     final Locale aDisplayLocale = aWPEC.getDisplayLocale ();
     final HCNodeList aNodeList = aWPEC.getNodeList ();
     final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
-    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
-    final ISMPBusinessCardManager aBCMgr = SMPMetaManager.getBusinessCardMgr ();
     final ISMPSettings aSettings = SMPMetaManager.getSettings ();
-    final ESMPRESTType eRESTType = SMPServerConfiguration.getRESTType ();
     final boolean bShowExtensionDetails = SMPWebAppConfiguration.isServiceGroupsExtensionsShow ();
     final boolean bShowBusinessCardName = CSMP.ENABLE_ISSUE_56 && aSettings.isDirectoryIntegrationEnabled ();
 
-    final ICommonsList <ISMPServiceGroup> aAllServiceGroups = aServiceGroupMgr.getAllSMPServiceGroups ();
+    final long nServiceGroupCount = aServiceGroupMgr.getSMPServiceGroupCount ();
 
     final BootstrapButtonToolbar aToolbar = new BootstrapButtonToolbar (aWPEC);
     aToolbar.addButton ("Create new Service group", createCreateURL (aWPEC), EDefaultIcon.NEW);
@@ -679,105 +812,38 @@ public final class PageSecureServiceGroup extends AbstractSMPWebPageForm <ISMPSe
       aToolbar.addAndReturnButton ("Check DNS state",
                                    aWPEC.getSelfHref ().add (CPageParam.PARAM_ACTION, ACTION_CHECK_DNS),
                                    EDefaultIcon.MAGNIFIER)
-              .setDisabled (aSettings.getSMLDNSZone () == null ||
-                            aAllServiceGroups.isEmpty () ||
-                            !aSettings.isSMLEnabled ());
+              .setDisabled (aSettings.getSMLDNSZone () == null || nServiceGroupCount <= 0 || !aSettings.isSMLEnabled ());
     }
     aNodeList.addChild (aToolbar);
 
-    final boolean bShowDetails = aAllServiceGroups.size () <= 1000;
+    final boolean bShowDetails = nServiceGroupCount <= 1000;
 
+    // Only the columns supported by the service group manager can be sorted
     final HCTable aTable = new HCTable (new DTCol ("Participant ID").setInitialSorting (ESortOrder.ASCENDING),
                                         new DTCol ("Owner"),
-                                        bShowBusinessCardName ? new DTCol ("Business Card Name") : null,
+                                        bShowBusinessCardName ? new DTCol ("Business Card Name").setOrderable (false)
+                                                              : null,
                                         new DTCol (span (bShowExtensionDetails ? "Ext"
-                                                                               : "Ext?").setTitle ("Is an Extension present?")),
+                                                                               : "Ext?").setTitle ("Is an Extension present?")).setOrderable (false),
                                         bShowDetails ? new DTCol (span ("Docs").setTitle ("Number of assigned document types")).setDisplayType (EDTColType.INT,
                                                                                                                                                 aDisplayLocale)
+                                                                                                                                .setOrderable (false)
                                                      : null,
                                         bShowDetails ? new DTCol (span ("Procs").setTitle ("Number of assigned processes")).setDisplayType (EDTColType.INT,
                                                                                                                                             aDisplayLocale)
+                                                                                                                            .setOrderable (false)
                                                      : null,
                                         bShowDetails ? new DTCol (span ("EPs").setTitle ("Number of assigned endpoints")).setDisplayType (EDTColType.INT,
                                                                                                                                           aDisplayLocale)
+                                                                                                                          .setOrderable (false)
                                                      : null,
                                         new BootstrapDTColAction (aDisplayLocale)).setID (getID ());
-    for (final ISMPServiceGroup aCurObject : aAllServiceGroups)
-    {
-      final ISimpleURL aViewLink = createViewURL (aWPEC, aCurObject);
-      final String sDisplayName = aCurObject.getParticipantIdentifier ().getURIEncoded ();
-
-      final HCRow aRow = aTable.addBodyRow ();
-      aRow.addCell (new HCA (aViewLink).addChild (sDisplayName));
-      aRow.addCell (SMPCommonUI.getOwnerName (aCurObject.getOwnerID ()));
-      if (bShowBusinessCardName)
-      {
-        IHCNode aName = null;
-        final ISMPBusinessCard aBC = aBCMgr.getSMPBusinessCardOfServiceGroup (aCurObject);
-        if (aBC != null)
-        {
-          final SMPBusinessCardEntity aEntity = aBC.getEntityAtIndex (0);
-          if (aEntity != null && aEntity.names ().isNotEmpty ())
-            aName = HCTextNode.createOnDemand (aEntity.names ().getFirstOrNull ().getName ());
-        }
-        aRow.addCell (aName);
-      }
-      if (bShowExtensionDetails)
-      {
-        if (aCurObject.getExtensions ().extensions ().isNotEmpty ())
-          aRow.addCell (new HCCode ().addChildren (HCExtHelper.nl2divList (aCurObject.getExtensions ()
-                                                                                     .getFirstExtensionXMLString ())));
-        else
-          aRow.addCell ();
-      }
-      else
-      {
-        aRow.addCell (EPhotonCoreText.getYesOrNo (aCurObject.getExtensions ().extensions ().isNotEmpty (),
-                                                  aDisplayLocale));
-      }
-
-      if (bShowDetails)
-      {
-        int nProcesses = 0;
-        int nEndpoints = 0;
-        final ICommonsList <ISMPServiceInformation> aSIs = aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aCurObject);
-        for (final ISMPServiceInformation aSI : aSIs)
-        {
-          nProcesses += aSI.getProcessCount ();
-          nEndpoints += aSI.getTotalEndpointCount ();
-        }
-
-        aRow.addCell (Integer.toString (aSIs.size ()));
-        aRow.addCell (Integer.toString (nProcesses));
-        aRow.addCell (Integer.toString (nEndpoints));
-      }
-
-      final HCNodeList aActions = new HCNodeList ();
-      aActions.addChildren (createEditLink (aWPEC, aCurObject, "Edit " + sDisplayName),
-                            new HCTextNode (" "),
-                            createCopyLink (aWPEC, aCurObject, "Copy " + sDisplayName),
-                            new HCTextNode (" "),
-                            createDeleteLink (aWPEC, aCurObject, "Delete " + sDisplayName),
-                            new HCTextNode (" "),
-                            new HCA (LinkHelper.getURLWithServerAndContext (aCurObject.getParticipantIdentifier ()
-                                                                                      .getURIPercentEncoded ())).setTitle ("Perform SMP query on " +
-                                                                                                                           sDisplayName)
-                                                                                                                .setTargetBlank ()
-                                                                                                                .addChild (EFamFamIcon.SCRIPT_GO.getAsNode ()));
-      if (eRESTType.isCompleteServiceGroupSupported ())
-      {
-        aActions.addChildren (new HCTextNode (" "),
-                              new HCA (LinkHelper.getURLWithServerAndContext ("complete/" +
-                                                                              aCurObject.getParticipantIdentifier ()
-                                                                                        .getURIPercentEncoded ())).setTitle ("Perform complete SMP query on " +
-                                                                                                                             sDisplayName)
-                                                                                                                  .setTargetBlank ()
-                                                                                                                  .addChild (EFamFamIcon.SCRIPT_LINK.getAsNode ()));
-      }
-      aRow.addCell (aActions);
-    }
 
+    // The rows are rendered page by page in the AJAX handler
     final DataTables aDataTables = BootstrapDataTables.createDefaultDataTables (aWPEC, aTable);
+    aDataTables.setAjaxBuilder (new JQueryAjaxBuilder ().url (AJAX_SERVICE_GROUP_LIST.getInvocationURL (aWPEC.getRequestScope ())
+                                                                                     .add (PARAM_SHOW_DETAILS,
+                                                                                           bShowDetails)));
     aNodeList.addChild (aTable).addChild (aDataTables);
   }
 }
@@ -21,19 +21,21 @@ import java.net.UnknownHostException;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.time.OffsetDateTime;
+import java.util.Comparator;
 import java.util.Locale;
 
 import javax.annotation.Nonnull;
 
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.CollectionHelper;
+import com.helger.commons.collection.impl.CommonsHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.datetime.PDTFactory;
 import com.helger.commons.datetime.PDTToString;
-import com.helger.commons.datetime.XMLOffsetDateTime;
 import com.helger.commons.debug.GlobalDebug;
 import com.helger.commons.lang.ClassHelper;
 import com.helger.commons.string.StringHelper;
@@ -46,7 +48,6 @@ import com.helger.html.hc.html.textlevel.HCA;
 import com.helger.html.hc.impl.HCNodeList;
 import com.helger.pd.client.PDClientConfiguration;
 import com.helger.peppol.sml.ISMLInfo;
-import com.helger.peppol.smp.ESMPTransportProfile;
 import com.helger.peppol.utils.PeppolKeyStoreHelper;
 import com.helger.phoss.smp.ESMPRESTType;
 import com.helger.phoss.smp.app.SMPWebAppConfiguration;
@@ -54,10 +55,9 @@ import com.helger.phoss.smp.config.SMPServerConfiguration;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPEndpoint;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPProcess;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformation;
-import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.ESMPEndpointProblemType;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointProblem;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpointProblemIndex;
 import com.helger.phoss.smp.security.SMPKeyManager;
 import com.helger.phoss.smp.security.SMPTrustManager;
 import com.helger.phoss.smp.settings.ISMPSettings;
@@ -67,7 +67,6 @@ import com.helger.photon.security.CSecurity;
 import com.helger.photon.security.mgr.PhotonSecurityManager;
 import com.helger.photon.uicore.css.CUICoreCSS;
 import com.helger.photon.uicore.page.WebPageExecutionContext;
-import com.helger.security.certificate.CertificateHelper;
 import com.helger.security.keystore.EKeyStoreLoadError;
 import com.helger.security.keystore.LoadedKey;
 import com.helger.security.keystore.LoadedKeyStore;
@@ -404,13 +403,134 @@ public class PageSecureTasksProblems extends AbstractSMPWebPage
     }
   }
 
+  private void _addEndpointProblem (@Nonnull final HCUL aULPerEndpoint,
+                                    @Nonnull final SMPEndpointProblem aProblem,
+                                    final long nNowMillis,
+                                    @Nonnull final Locale aDisplayLocale)
+  {
+    final String sDateTime = aProblem.getDateTime () == null ? null
+                                                             : PDTToString.getAsString (aProblem.getDateTime (),
+                                                                                        aDisplayLocale);
+    switch (aProblem.getType ())
+    {
+      case NON_STANDARD_TRANSPORT_PROFILE:
+        aULPerEndpoint.addItem (_createWarning ("The endpoint uses the non-standard transport profile '" +
+                                                aProblem.getTransportProfile () +
+                                                "'."));
+        break;
+      case ENDPOINT_ACTIVATION:
+        aULPerEndpoint.addItem (_createWarning ("The endpoint is not yet active."),
+                                div ("It will be active from " + sDateTime + "."));
+        break;
+      case ENDPOINT_EXPIRATION:
+        if (aProblem.getMillis () < nNowMillis)
+          aULPerEndpoint.addItem (_createError ("The endpoint is no longer active."),
+                                  div ("It was valid until " + sDateTime + "."));
+        else
+          aULPerEndpoint.addItem (_createWarning ("The endpoint will be inactive soon."),
+                                  div ("It is only valid until " + sDateTime + "."));
+        break;
+      case CERTIFICATE_INVALID:
+        aULPerEndpoint.addItem (_createError ("The X.509 certificate configured at the endpoint is invalid and could not be interpreted as a certificate."));
+        break;
+      case CERTIFICATE_NOT_BEFORE:
+        aULPerEndpoint.addItem (_createError ("The endpoint certificate is not yet active."),
+                                div ("It will be valid from " + sDateTime + "."));
+        break;
+      case CERTIFICATE_NOT_AFTER:
+        if (aProblem.getMillis () < nNowMillis)
+          aULPerEndpoint.addItem (_createError ("The endpoint certificate is already expired."),
+                                  div ("It was valid until " + sDateTime + "."));
+        else
+          aULPerEndpoint.addItem (_createWarning ("The endpoint certificate will expire soon."),
+                                  div ("It is only valid until " + sDateTime + "."));
+        break;
+      default:
+        throw new IllegalStateException ("Unsupported problem type " + aProblem.getType ());
+    }
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  private ICommonsMap <String, HCUL> _checkEndpoints (@Nonnull final Locale aDisplayLocale,
+                                                      @Nonnull final OffsetDateTime aNowDT,
+                                                      @Nonnull final OffsetDateTime aNowPlusDT)
+  {
+    final SMPEndpointProblemIndex aIndex = SMPMetaManager.getEndpointProblemIndex ();
+    final long nNowMillis = aNowDT.toInstant ().toEpochMilli ();
+    final long nNowPlusMillis = aNowPlusDT.toInstant ().toEpochMilli ();
+
+    // Only query the relevant date ranges
+    final ICommonsList <SMPEndpointProblem> aProblems = aIndex.getAllUndatedProblems ();
+    aProblems.addAll (aIndex.getAllProblemsInRange (Long.MIN_VALUE,
+                                                    nNowPlusMillis,
+                                                    x -> x.getType () == ESMPEndpointProblemType.ENDPOINT_EXPIRATION ||
+                                                         x.getType () == ESMPEndpointProblemType.CERTIFICATE_NOT_AFTER));
+    aProblems.addAll (aIndex.getAllProblemsInRange (nNowMillis + 1,
+                                                    Long.MAX_VALUE,
+                                                    x -> x.getType () == ESMPEndpointProblemType.ENDPOINT_ACTIVATION ||
+                                                         x.getType () == ESMPEndpointProblemType.CERTIFICATE_NOT_BEFORE));
+    aProblems.sort (Comparator.comparing (SMPEndpointProblem::getServiceGroupID)
+                              .thenComparing (x -> x.getDocumentTypeIdentifier ().getURIEncoded ())
+                              .thenComparing (x -> x.getProcessIdentifier ().getURIEncoded ())
+                              .thenComparing (SMPEndpointProblem::getTransportProfile)
+                              .thenComparing (SMPEndpointProblem::getType)
+                              .thenComparingLong (SMPEndpointProblem::getMillis));
+
+    // Build the nested lists from the sorted problems
+    final ICommonsMap <String, HCUL> ret = new CommonsHashMap <> ();
+    HCUL aULPerSG = null;
+    HCUL aULPerDocType = null;
+    HCUL aULPerProcess = null;
+    HCUL aULPerEndpoint = null;
+    SMPEndpointProblem aLast = null;
+    for (final SMPEndpointProblem aProblem : aProblems)
+    {
+      boolean bNew = aLast == null || !aLast.getServiceGroupID ().equals (aProblem.getServiceGroupID ());
+      if (bNew)
+      {
+        aULPerSG = new HCUL ();
+        ret.put (aProblem.getServiceGroupID (), aULPerSG);
+      }
+
+      bNew = bNew || !aLast.getDocumentTypeIdentifier ().hasSameContent (aProblem.getDocumentTypeIdentifier ());
+      if (bNew)
+      {
+        aULPerDocType = new HCUL ();
+        aULPerSG.addItem (div ("Document type ").addChild (code (aProblem.getDocumentTypeIdentifier ()
+                                                                         .getURIEncoded ()).addClass (CUICoreCSS.CSS_CLASS_NOWRAP)),
+                          aULPerDocType);
+      }
+
+      bNew = bNew || !aLast.getProcessIdentifier ().hasSameContent (aProblem.getProcessIdentifier ());
+      if (bNew)
+      {
+        aULPerProcess = new HCUL ();
+        aULPerDocType.addItem (div ("Process ").addChild (code (aProblem.getProcessIdentifier ()
+                                                                        .getURIEncoded ()).addClass (CUICoreCSS.CSS_CLASS_NOWRAP)),
+                               aULPerProcess);
+      }
+
+      bNew = bNew || !aLast.getTransportProfile ().equals (aProblem.getTransportProfile ());
+      if (bNew)
+      {
+        aULPerEndpoint = new HCUL ();
+        aULPerProcess.addItem (div ("Transport profile ").addChild (code (aProblem.getTransportProfile ())),
+                               aULPerEndpoint);
+      }
+
+      _addEndpointProblem (aULPerEndpoint, aProblem, nNowMillis, aDisplayLocale);
+      aLast = aProblem;
+    }
+    return ret;
+  }
+
   @Override
   protected void fillContent (@Nonnull final WebPageExecutionContext aWPEC)
   {
     final HCNodeList aNodeList = aWPEC.getNodeList ();
     final Locale aDisplayLocale = aWPEC.getDisplayLocale ();
     final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
-    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
     final OffsetDateTime aNowDT = PDTFactory.getCurrentOffsetDateTime ();
     final OffsetDateTime aNowPlusDT = aNowDT.plusMonths (3);
 
@@ -452,119 +572,29 @@ public class PageSecureTasksProblems extends AbstractSMPWebPage
       }
       else
       {
+        final SMPEndpointProblemIndex aIndex = SMPMetaManager.getEndpointProblemIndex ();
+        if (!aIndex.isInitialized ())
+          aOL.addItem (_createInfo ("The endpoint problems are still being determined in the background. The list may be incomplete."));
+
+        // Use the index instead of iterating all endpoints
+        final ICommonsMap <String, HCUL> aProblemsPerSG = _checkEndpoints (aDisplayLocale, aNowDT, aNowPlusDT);
+
         // For all service groups
         for (final ISMPServiceGroup aServiceGroup : CollectionHelper.getSorted (aServiceGroups,
                                                                                 ISMPServiceGroup.comparator ()))
         {
-          final HCUL aULPerSG = new HCUL ();
-          final ICommonsList <ISMPServiceInformation> aServiceInfos = aServiceInfoMgr.getAllSMPServiceInformationOfServiceGroup (aServiceGroup);
-          if (aServiceInfos.isEmpty ())
+          final HCUL aULPerSG;
+          if (!aIndex.containsAnyServiceInformation (aServiceGroup.getID ()))
           {
             // This is merely a warning or an error
+            aULPerSG = new HCUL ();
             aULPerSG.addItem (_createInfo ("No endpoint is configured for this service group."));
           }
           else
-          {
-            for (final ISMPServiceInformation aServiceInfo : aServiceInfos)
-            {
-              final HCUL aULPerDocType = new HCUL ();
-              final ICommonsList <ISMPProcess> aProcesses = aServiceInfo.getAllProcesses ();
-              for (final ISMPProcess aProcess : aProcesses)
-              {
-                final HCUL aULPerProcess = new HCUL ();
-                final ICommonsList <ISMPEndpoint> aEndpoints = aProcess.getAllEndpoints ();
-                for (final ISMPEndpoint aEndpoint : aEndpoints)
-                {
-                  final HCUL aULPerEndpoint = new HCUL ();
-
-                  final ESMPTransportProfile eTransportProfile = ESMPTransportProfile.getFromIDOrNull (aEndpoint.getTransportProfile ());
-                  if (eTransportProfile == null)
-                    aULPerEndpoint.addItem (_createWarning ("The endpoint uses the non-standard transport profile '" +
-                                                            aEndpoint.getTransportProfile () +
-                                                            "'."));
-
-                  if (aEndpoint.getServiceActivationDateTime () != null)
-                  {
-                    if (aEndpoint.getServiceActivationDateTime ().isAfter (XMLOffsetDateTime.of (aNowDT)))
-                      aULPerEndpoint.addItem (_createWarning ("The endpoint is not yet active."),
-                                              div ("It will be active from " +
-                                                   PDTToString.getAsString (aEndpoint.getServiceActivationDateTime (),
-                                                                            aDisplayLocale) +
-                                                   "."));
-                  }
-
-                  if (aEndpoint.getServiceExpirationDateTime () != null)
-                  {
-                    if (aEndpoint.getServiceExpirationDateTime ().isBefore (XMLOffsetDateTime.of (aNowDT)))
-                      aULPerEndpoint.addItem (_createError ("The endpoint is no longer active."),
-                                              div ("It was valid until " +
-                                                   PDTToString.getAsString (aEndpoint.getServiceExpirationDateTime (),
-                                                                            aDisplayLocale) +
-                                                   "."));
-                    else
-                      if (aEndpoint.getServiceExpirationDateTime ().isBefore (XMLOffsetDateTime.of (aNowPlusDT)))
-                        aULPerEndpoint.addItem (_createWarning ("The endpoint will be inactive soon."),
-                                                div ("It is only valid until " +
-                                                     PDTToString.getAsString (aEndpoint.getServiceExpirationDateTime (),
-                                                                              aDisplayLocale) +
-                                                     "."));
-                  }
-
-                  X509Certificate aX509Cert = null;
-                  try
-                  {
-                    aX509Cert = CertificateHelper.convertStringToCertficate (aEndpoint.getCertificate ());
-                  }
-                  catch (final CertificateException ex)
-                  {
-                    // Ignore
-                  }
-                  if (aX509Cert == null)
-                    aULPerEndpoint.addItem (_createError ("The X.509 certificate configured at the endpoint is invalid and could not be interpreted as a certificate."));
-                  else
-                  {
-                    final OffsetDateTime aNotBefore = PDTFactory.createOffsetDateTime (aX509Cert.getNotBefore ());
-                    if (aNowDT.isBefore (aNotBefore))
-                      aULPerEndpoint.addItem (_createError ("The endpoint certificate is not yet active."),
-                                              div ("It will be valid from " +
-                                                   PDTToString.getAsString (aNotBefore, aDisplayLocale) +
-                                                   "."));
-
-                    final OffsetDateTime aNotAfter = PDTFactory.createOffsetDateTime (aX509Cert.getNotAfter ());
-                    if (aNowDT.isAfter (aNotAfter))
-                      aULPerEndpoint.addItem (_createError ("The endpoint certificate is already expired."),
-                                              div ("It was valid until " +
-                                                   PDTToString.getAsString (aNotAfter, aDisplayLocale) +
-                                                   "."));
-                    else
-                      if (aNowPlusDT.isAfter (aNotAfter))
-                        aULPerEndpoint.addItem (_createWarning ("The endpoint certificate will expire soon."),
-                                                div ("It is only valid until " +
-                                                     PDTToString.getAsString (aNotAfter, aDisplayLocale) +
-                                                     "."));
-                  }
-
-                  // Show per endpoint errors
-                  if (aULPerEndpoint.hasChildren ())
-                    aULPerProcess.addItem (div ("Transport profile ").addChild (code (aEndpoint.getTransportProfile ())),
-                                           aULPerEndpoint);
-                }
-                // Show per process errors
-                if (aULPerProcess.hasChildren ())
-                  aULPerDocType.addItem (div ("Process ").addChild (code (aProcess.getProcessIdentifier ()
-                                                                                  .getURIEncoded ()).addClass (CUICoreCSS.CSS_CLASS_NOWRAP)),
-                                         aULPerProcess);
-              }
-              // Show per document type errors
-              if (aULPerDocType.hasChildren ())
-                aULPerSG.addItem (div ("Document type ").addChild (code (aServiceInfo.getDocumentTypeIdentifier ()
-                                                                                     .getURIEncoded ()).addClass (CUICoreCSS.CSS_CLASS_NOWRAP)),
-                                  aULPerDocType);
-            }
-          }
+            aULPerSG = aProblemsPerSG.get (aServiceGroup.getID ());
 
           // Show per service group errors
-          if (aULPerSG.hasChildren ())
+          if (aULPerSG != null && aULPerSG.hasChildren ())
             aOL.addItem (div ("Service group ").addChild (code (aServiceGroup.getParticipantIdentifier ()
                                                                              .getURIEncoded ())),
                          aULPerSG);
@@ -23,19 +23,41 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.helger.commons.annotation.Nonempty;
+import com.helger.html.jscode.JSAnonymousFunction;
+import com.helger.html.jscode.JSAssocArray;
+import com.helger.html.jscode.JSVar;
+import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.phoss.smp.domain.SMPMetaManager;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
 import com.helger.phoss.smp.ui.SMPCommonUI;
+import com.helger.phoss.smp.ui.ajax.AjaxExecutorSecureServiceGroupSearch;
+import com.helger.phoss.smp.ui.ajax.CAjax;
+import com.helger.photon.bootstrap4.uictrls.select2.BootstrapSelect2;
 import com.helger.photon.core.form.RequestField;
-import com.helger.photon.uicore.html.select.HCExtSelect;
+import com.helger.web.scope.mgr.WebScopeManager;
 
 /**
- * Select box for existing service groups.
+ * Select box for existing service groups. If there are more than
+ * {@link #MAX_INLINE_SERVICE_GROUPS} service groups, only the selected service
+ * group is contained as an option and all others are searched on the server
+ * side while typing. In that case the optional filter can only be applied to
+ * the selected service group, so the chosen service group must be validated
+ * when the form is submitted.
  *
  * @author Philip Helger
  */
-public class HCServiceGroupSelect extends HCExtSelect
+public class HCServiceGroupSelect extends BootstrapSelect2
 {
+  /**
+   * The maximum number of service groups that are contained as options.
+   *
+   * @since 7.1.4
+   */
+  public static final int MAX_INLINE_SERVICE_GROUPS = 500;
+
+  private final String m_sSearchURI;
+
   @Nonnull
   @Nonempty
   public static String getDisplayName (@Nonnull final ISMPServiceGroup aServiceGroup)
@@ -55,18 +77,69 @@ public class HCServiceGroupSelect extends HCExtSelect
   {
     super (aRF);
 
-    for (final ISMPServiceGroup aServiceGroup : SMPMetaManager.getServiceGroupMgr ()
-                                                              .getAllSMPServiceGroups ()
-                                                              .getSortedInline (ISMPServiceGroup.comparator ()))
-      if (aFilter == null || aFilter.test (aServiceGroup))
-        addOption (aServiceGroup.getID (), getDisplayName (aServiceGroup));
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    if (aServiceGroupMgr.getSMPServiceGroupCount () <= MAX_INLINE_SERVICE_GROUPS)
+    {
+      m_sSearchURI = null;
+      for (final ISMPServiceGroup aServiceGroup : aServiceGroupMgr.getAllSMPServiceGroups ()
+                                                                  .getSortedInline (ISMPServiceGroup.comparator ()))
+        if (aFilter == null || aFilter.test (aServiceGroup))
+          addOption (aServiceGroup.getID (), getDisplayName (aServiceGroup));
+    }
+    else
+    {
+      m_sSearchURI = CAjax.FUNCTION_SERVICE_GROUP_SEARCH.getInvocationURI (WebScopeManager.getRequestScope ());
+      // Only the selected service group is an option
+      for (final String sServiceGroupID : getAllPreselectedValues ())
+      {
+        final IParticipantIdentifier aParticipantID = SMPMetaManager.getIdentifierFactory ()
+                                                                    .parseParticipantIdentifier (sServiceGroupID);
+        final ISMPServiceGroup aServiceGroup = aParticipantID == null ? null
+                                                                      : aServiceGroupMgr.getSMPServiceGroupOfID (aParticipantID);
+        if (aServiceGroup != null && (aFilter == null || aFilter.test (aServiceGroup)))
+          addOption (aServiceGroup.getID (), getDisplayName (aServiceGroup));
+      }
+    }
 
     if (!hasSelectedOption ())
       addOptionPleaseSelect (aDisplayLocale);
   }
 
+  /**
+   * @return <code>true</code> if the service groups are searched on the server
+   *         side, <code>false</code> if all service groups are contained as
+   *         options.
+   * @since 7.1.4
+   */
+  public boolean isServerSideSearch ()
+  {
+    return m_sSearchURI != null;
+  }
+
   public boolean containsAnyServiceGroup ()
   {
-    return containsEffectiveOption ();
+    // With the server side search the filter cannot be evaluated in advance
+    return isServerSideSearch () || containsEffectiveOption ();
+  }
+
+  @Override
+  @Nonnull
+  protected JSAssocArray getSelect2InvocationOptions ()
+  {
+    final JSAssocArray ret = super.getSelect2InvocationOptions ();
+    if (m_sSearchURI != null)
+    {
+      final JSAnonymousFunction aData = new JSAnonymousFunction ();
+      final JSVar aParams = aData.param ("params");
+      aData.body ()
+           ._return (new JSAssocArray ().add (AjaxExecutorSecureServiceGroupSearch.PARAM_TERM, aParams.ref ("term"))
+                                        .add (AjaxExecutorSecureServiceGroupSearch.PARAM_PAGE, aParams.ref ("page")));
+      ret.add ("ajax",
+               new JSAssocArray ().add ("url", m_sSearchURI)
+                                  .add ("dataType", "json")
+                                  .add ("delay", 250)
+                                  .add ("data", aData));
+    }
+    return ret;
   }
 }
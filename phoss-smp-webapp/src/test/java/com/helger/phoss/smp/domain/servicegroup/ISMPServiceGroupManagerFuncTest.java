@@ -26,6 +26,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestRule;
 
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.StringHelper;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
 import com.helger.peppolid.peppol.PeppolIdentifierHelper;
@@ -173,4 +176,90 @@ public final class ISMPServiceGroupManagerFuncTest
       aSGMgr.deleteSMPServiceGroupNoEx (aPI2, true);
     }
   }
+
+  @Test
+  public void testPaging () throws SMPServerException
+  {
+    final IIdentifierFactory aIDFactory = SMPMetaManager.getIdentifierFactory ();
+    final ISMPServiceGroupManager aSGMgr = SMPMetaManager.getServiceGroupMgr ();
+    final String sOwnerID = CSecurity.USER_ADMINISTRATOR_ID;
+    final int nCount = 25;
+    final ICommonsList <IParticipantIdentifier> aPIs = new CommonsArrayList <> ();
+    for (int i = 0; i < nCount; ++i)
+      aPIs.add (aIDFactory.createParticipantIdentifier (PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME,
+                                                        "9999:junitpage" + StringHelper.getLeadingZero (i, 2)));
+    try
+    {
+      for (final IParticipantIdentifier aPI : aPIs)
+        aSGMgr.createSMPServiceGroup (sOwnerID, aPI, null, false);
+
+      // Offset based paging
+      SMPServiceGroupPage aPage = aSGMgr.getSMPServiceGroupPage (new SMPServiceGroupPageRequest (0,
+                                                                                                 10,
+                                                                                                 ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                                                 true,
+                                                                                                 "9999:junitpage",
+                                                                                                 null));
+      assertEquals (nCount, aPage.getFilteredCount ());
+      assertEquals (10, aPage.getServiceGroupCount ());
+      assertEquals (aPIs.get (0), aPage.getAllServiceGroups ().getFirstOrNull ().getParticipantIdentifier ());
+      assertEquals (aPIs.get (9), aPage.getLastParticipantID ());
+
+      aPage = aSGMgr.getSMPServiceGroupPage (new SMPServiceGroupPageRequest (20,
+                                                                             10,
+                                                                             ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                             true,
+                                                                             "9999:junitpage",
+                                                                             null));
+      assertEquals (nCount, aPage.getFilteredCount ());
+      assertEquals (5, aPage.getServiceGroupCount ());
+      assertEquals (aPIs.get (24), aPage.getLastParticipantID ());
+
+      // Descending
+      aPage = aSGMgr.getSMPServiceGroupPage (new SMPServiceGroupPageRequest (0,
+                                                                             3,
+                                                                             ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                             false,
+                                                                             PeppolIdentifierHelper.DEFAULT_PARTICIPANT_SCHEME +
+                                                                                    "::9999:junitpage",
+                                                                             null));
+      assertEquals (nCount, aPage.getFilteredCount ());
+      assertEquals (aPIs.get (24), aPage.getAllServiceGroups ().getFirstOrNull ().getParticipantIdentifier ());
+      assertEquals (aPIs.get (22), aPage.getLastParticipantID ());
+
+      // Keyset based paging
+      aPage = aSGMgr.getSMPServiceGroupPage (new SMPServiceGroupPageRequest (0,
+                                                                             10,
+                                                                             ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                             true,
+                                                                             "9999:junitpage",
+                                                                             aPIs.get (17)));
+      assertEquals (nCount, aPage.getFilteredCount ());
+      assertEquals (7, aPage.getServiceGroupCount ());
+      assertEquals (aPIs.get (18), aPage.getAllServiceGroups ().getFirstOrNull ().getParticipantIdentifier ());
+
+      // Filter
+      aPage = aSGMgr.getSMPServiceGroupPage (new SMPServiceGroupPageRequest (0,
+                                                                             100,
+                                                                             ESMPServiceGroupSortColumn.OWNER_ID,
+                                                                             true,
+                                                                             "9999:junitpage1",
+                                                                             null));
+      assertEquals (10, aPage.getFilteredCount ());
+      assertEquals (10, aPage.getServiceGroupCount ());
+      aPage = aSGMgr.getSMPServiceGroupPage (new SMPServiceGroupPageRequest (0,
+                                                                             100,
+                                                                             ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                             true,
+                                                                             "foo::9999:junitpage",
+                                                                             null));
+      assertEquals (0, aPage.getFilteredCount ());
+      assertEquals (0, aPage.getServiceGroupCount ());
+    }
+    finally
+    {
+      for (final IParticipantIdentifier aPI : aPIs)
+        aSGMgr.deleteSMPServiceGroupNoEx (aPI, false);
+    }
+  }
 }
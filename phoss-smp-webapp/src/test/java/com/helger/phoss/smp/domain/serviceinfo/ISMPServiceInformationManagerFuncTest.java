@@ -16,6 +16,7 @@
  */
 package com.helger.phoss.smp.domain.serviceinfo;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -23,6 +24,7 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.datetime.PDTFactory;
 import com.helger.commons.datetime.XMLOffsetDateTime;
 import com.helger.peppolid.IDocumentTypeIdentifier;
@@ -30,8 +32,10 @@ import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
 import com.helger.peppolid.factory.PeppolIdentifierFactory;
 import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.servicegroup.ESMPServiceGroupSortColumn;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroup;
 import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroupPageRequest;
 import com.helger.phoss.smp.exception.SMPServerException;
 import com.helger.phoss.smp.mock.SMPServerTestRule;
 import com.helger.photon.security.CSecurity;
@@ -93,6 +97,12 @@ public final class ISMPServiceInformationManagerFuncTest
                                                                                    new CommonsArrayList <> (aProcess),
                                                                                    "<extsi/>");
       assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (aServiceInformation).isSuccess ());
+
+      // Iterate all
+      final ICommonsList <ISMPServiceInformation> aAll = new CommonsArrayList <> ();
+      aServiceInfoMgr.forEachSMPServiceInformation (aAll::add);
+      assertEquals (aServiceInfoMgr.getSMPServiceInformationCount (), aAll.size ());
+      assertTrue (aAll.containsAny (x -> x.getID ().equals (aServiceInformation.getID ())));
     }
     finally
     {
@@ -100,4 +110,105 @@ public final class ISMPServiceInformationManagerFuncTest
       aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI1, true);
     }
   }
+
+  @Test
+  public void testEndpointPaging () throws SMPServerException
+  {
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final ISMPServiceInformationManager aServiceInfoMgr = SMPMetaManager.getServiceInformationMgr ();
+    if (SMPMetaManager.getInstance ().getBackendConnectionState ().isFalse ())
+    {
+      // Failed to get DB connection. E.g. MySQL down or misconfigured.
+      return;
+    }
+
+    final IDocumentTypeIdentifier aDocTypeID = PeppolIdentifierFactory.INSTANCE.createDocumentTypeIdentifierWithDefaultScheme ("junit::testdoc##ext::1.0");
+    final int nCount = 3;
+    final ICommonsList <IParticipantIdentifier> aPIs = new CommonsArrayList <> ();
+    for (int i = 0; i < nCount; ++i)
+      aPIs.add (PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9999:junitpage" + i));
+    try
+    {
+      for (final IParticipantIdentifier aPI : aPIs)
+      {
+        aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI, true);
+        final ISMPServiceGroup aSG = aServiceGroupMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID,
+                                                                             aPI,
+                                                                             null,
+                                                                             true);
+        // Two processes with one endpoint each
+        final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
+        for (int j = 0; j < 2; ++j)
+          aProcesses.add (new SMPProcess (PeppolIdentifierFactory.INSTANCE.createProcessIdentifierWithDefaultScheme ("junit-proc" +
+                                                                                                                     j),
+                                          new CommonsArrayList <> (new SMPEndpoint ("tp",
+                                                                                    "http://localhost/as2",
+                                                                                    false,
+                                                                                    null,
+                                                                                    null,
+                                                                                    null,
+                                                                                    null,
+                                                                                    "sd",
+                                                                                    "tc",
+                                                                                    null,
+                                                                                    null)),
+                                          null));
+        assertTrue (aServiceInfoMgr.mergeSMPServiceInformation (new SMPServiceInformation (aSG,
+                                                                                           aDocTypeID,
+                                                                                           aProcesses,
+                                                                                           null))
+                                   .isSuccess ());
+      }
+
+      SMPEndpointPage aPage = aServiceInfoMgr.getSMPEndpointPage (new SMPServiceGroupPageRequest (0,
+                                                                                                  4,
+                                                                                                  ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                                                  true,
+                                                                                                  "9999:junitpage",
+                                                                                                  null));
+      assertEquals (nCount * 2, aPage.getFilteredCount ());
+      assertEquals (4, aPage.getEntryCount ());
+      SMPEndpointPage.Entry aEntry = aPage.getAllEntries ().getFirstOrNull ();
+      assertEquals (aPIs.get (0), aEntry.getServiceInformation ().getServiceGroup ().getParticipantIdentifier ());
+      assertEquals ("junit-proc0", aEntry.getProcess ().getProcessIdentifier ().getValue ());
+      aEntry = aPage.getAllEntries ().getLastOrNull ();
+      assertEquals (aPIs.get (1), aEntry.getServiceInformation ().getServiceGroup ().getParticipantIdentifier ());
+      assertEquals ("junit-proc1", aEntry.getProcess ().getProcessIdentifier ().getValue ());
+
+      aPage = aServiceInfoMgr.getSMPEndpointPage (new SMPServiceGroupPageRequest (4,
+                                                                                  4,
+                                                                                  ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                                  true,
+                                                                                  "9999:junitpage",
+                                                                                  null));
+      assertEquals (nCount * 2, aPage.getFilteredCount ());
+      assertEquals (2, aPage.getEntryCount ());
+
+      // Descending
+      aPage = aServiceInfoMgr.getSMPEndpointPage (new SMPServiceGroupPageRequest (0,
+                                                                                  1,
+                                                                                  ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                                  false,
+                                                                                  "9999:junitpage",
+                                                                                  null));
+      aEntry = aPage.getAllEntries ().getFirstOrNull ();
+      assertEquals (aPIs.get (2), aEntry.getServiceInformation ().getServiceGroup ().getParticipantIdentifier ());
+      assertEquals ("junit-proc1", aEntry.getProcess ().getProcessIdentifier ().getValue ());
+
+      // Filter with scheme
+      aPage = aServiceInfoMgr.getSMPEndpointPage (new SMPServiceGroupPageRequest (0,
+                                                                                  100,
+                                                                                  ESMPServiceGroupSortColumn.PARTICIPANT_ID,
+                                                                                  true,
+                                                                                  aPIs.get (1).getURIEncoded (),
+                                                                                  null));
+      assertEquals (2, aPage.getFilteredCount ());
+      assertEquals (2, aPage.getEntryCount ());
+    }
+    finally
+    {
+      for (final IParticipantIdentifier aPI : aPIs)
+        aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI, true);
+    }
+  }
 }
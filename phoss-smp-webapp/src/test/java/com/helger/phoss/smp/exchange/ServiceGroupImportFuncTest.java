@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsVector;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.ETriState;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppol.smp.ESMPTransportProfileState;
+import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppol.smp.SMPTransportProfile;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.phoss.smp.backend.sql.mgr.SMPTransportProfileManagerJDBC;
+import com.helger.phoss.smp.backend.xml.mgr.SMPManagerProviderXML;
+import com.helger.phoss.smp.domain.ISMPManagerProvider;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.pmigration.ISMPParticipantMigrationManager;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.servicegroup.SMPServiceGroup;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.serviceinfo.SMPEndpoint;
+import com.helger.phoss.smp.domain.serviceinfo.SMPProcess;
+import com.helger.phoss.smp.domain.serviceinfo.SMPServiceInformation;
+import com.helger.phoss.smp.domain.sml.ISMLInfoManager;
+import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.phoss.smp.settings.ISMPSettingsManager;
+import com.helger.photon.security.CSecurity;
+import com.helger.photon.security.mgr.PhotonSecurityManager;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.MicroDocument;
+import com.helger.xml.microdom.convert.MicroTypeConverter;
+
+/**
+ * Test class for class {@link ServiceGroupImport}.
+ *
+ * @author Philip Helger
+ */
+public final class ServiceGroupImportFuncTest
+{
+  /**
+   * Transport profile manager that simulates the database and counts the
+   * queries.
+   */
+  private static final class CountingTransportProfileManager extends SMPTransportProfileManagerJDBC
+  {
+    private final ICommonsList <ISMPTransportProfile> m_aDB = new CommonsVector <> ();
+    private final AtomicInteger m_aQueries = new AtomicInteger (0);
+
+    CountingTransportProfileManager ()
+    {
+      // Never reload
+      super ( () -> {
+        throw new IllegalStateException ("No DB access expected");
+      }, 0);
+      for (final ESMPTransportProfile e : ESMPTransportProfile.values ())
+        m_aDB.add (new SMPTransportProfile (e.getID (), e.getName (), e.getState ()));
+    }
+
+    @Override
+    @Nullable
+    public ICommonsList <ISMPTransportProfile> getAllSMPTransportProfilesFromDB ()
+    {
+      m_aQueries.incrementAndGet ();
+      return m_aDB.getClone ();
+    }
+
+    @Override
+    @Nullable
+    public ISMPTransportProfile createSMPTransportProfile (@Nonnull final String sID,
+                                                           @Nonnull final String sName,
+                                                           final boolean bIsDeprecated)
+    {
+      final ISMPTransportProfile ret = new SMPTransportProfile (sID,
+                                                                sName,
+                                                                bIsDeprecated ? ESMPTransportProfileState.DEPRECATED
+                                                                              : ESMPTransportProfileState.ACTIVE);
+      m_aDB.add (ret);
+      getRegistry ().put (ret);
+      return ret;
+    }
+  }
+
+  /**
+   * XML backend with the counting transport profile manager.
+   */
+  private static final class TestManagerProvider implements ISMPManagerProvider
+  {
+    private final SMPManagerProviderXML m_aXML = new SMPManagerProviderXML ();
+    private final CountingTransportProfileManager m_aTransportProfileMgr = new CountingTransportProfileManager ();
+
+    @Nonnull
+    public ETriState getBackendConnectionEstablishedDefaultState ()
+    {
+      return m_aXML.getBackendConnectionEstablishedDefaultState ();
+    }
+
+    @Nonnull
+    public ISMLInfoManager createSMLInfoMgr ()
+    {
+      return m_aXML.createSMLInfoMgr ();
+    }
+
+    @Nonnull
+    public ISMPSettingsManager createSettingsMgr ()
+    {
+      return m_aXML.createSettingsMgr ();
+    }
+
+    @Nonnull
+    public ISMPTransportProfileManager createTransportProfileMgr ()
+    {
+      return m_aTransportProfileMgr;
+    }
+
+    @Nonnull
+    public ISMPServiceGroupManager createServiceGroupMgr ()
+    {
+      return m_aXML.createServiceGroupMgr ();
+    }
+
+    @Nonnull
+    public ISMPRedirectManager createRedirectMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
+                                                  @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
+    {
+      return m_aXML.createRedirectMgr (aIdentifierFactory, aServiceGroupMgr);
+    }
+
+    @Nonnull
+    public ISMPServiceInformationManager createServiceInformationMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
+                                                                      @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
+    {
+      return m_aXML.createServiceInformationMgr (aIdentifierFactory, aServiceGroupMgr);
+    }
+
+    @Nonnull
+    public ISMPParticipantMigrationManager createParticipantMigrationMgr ()
+    {
+      return m_aXML.createParticipantMigrationMgr ();
+    }
+
+    @Nullable
+    public ISMPBusinessCardManager createBusinessCardMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
+                                                          @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
+    {
+      return m_aXML.createBusinessCardMgr (aIdentifierFactory, aServiceGroupMgr);
+    }
+  }
+
+  private static final String UNKNOWN_TRANSPORT_PROFILE = "junit-import-tp";
+
+  private final TestManagerProvider m_aProvider = new TestManagerProvider ();
+
+  @Rule
+  public final SMPServerTestRule m_aTestRule = new SMPServerTestRule (m_aProvider);
+
+  @Nonnull
+  private static IMicroDocument _createImportXML (@Nonnull final IParticipantIdentifier aPI,
+                                                  final int nServiceInfoCount,
+                                                  final int nProcessCount)
+  {
+    final IIdentifierFactory aIF = PeppolIdentifierFactory.INSTANCE;
+    final ESMPTransportProfile [] aProfiles = ESMPTransportProfile.values ();
+    final SMPServiceGroup aSG = new SMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI, null);
+
+    final IMicroDocument aDoc = new MicroDocument ();
+    final IMicroElement eRoot = aDoc.appendElement (CSMPExchange.ELEMENT_SMP_DATA);
+    eRoot.setAttribute (CSMPExchange.ATTR_VERSION, CSMPExchange.VERSION_10);
+    final IMicroElement eServiceGroup = eRoot.appendChild (MicroTypeConverter.convertToMicroElement (aSG,
+                                                                                                     CSMPExchange.ELEMENT_SERVICEGROUP));
+    int nEndpoint = 0;
+    for (int i = 0; i < nServiceInfoCount; ++i)
+    {
+      // One endpoint per process
+      final ICommonsList <SMPProcess> aProcesses = new CommonsArrayList <> ();
+      for (int j = 0; j < nProcessCount; ++j)
+      {
+        final String sTransportProfile = nEndpoint == 0 ? UNKNOWN_TRANSPORT_PROFILE
+                                                        : aProfiles[nEndpoint % aProfiles.length].getID ();
+        aProcesses.add (new SMPProcess (aIF.createProcessIdentifierWithDefaultScheme ("junit-proc" + j),
+                                        new CommonsArrayList <> (new SMPEndpoint (sTransportProfile,
+                                                                                  "http://localhost/as4",
+                                                                                  false,
+                                                                                  null,
+                                                                                  null,
+                                                                                  null,
+                                                                                  null,
+                                                                                  "sd",
+                                                                                  "tc",
+                                                                                  null,
+                                                                                  null)),
+                                        null));
+        nEndpoint++;
+      }
+      final SMPServiceInformation aSI = new SMPServiceInformation (aSG,
+                                                                   aIF.createDocumentTypeIdentifierWithDefaultScheme ("junit::import" +
+                                                                                                                      i +
+                                                                                                                      "##ext::1.0"),
+                                                                   aProcesses,
+                                                                   null);
+      eServiceGroup.appendChild (MicroTypeConverter.convertToMicroElement (aSI, CSMPExchange.ELEMENT_SERVICEINFO));
+    }
+    return aDoc;
+  }
+
+  @Test
+  public void testImportWithoutTransportProfileQueries ()
+  {
+    final ISMPServiceGroupManager aServiceGroupMgr = SMPMetaManager.getServiceGroupMgr ();
+    final CountingTransportProfileManager aTransportProfileMgr = m_aProvider.m_aTransportProfileMgr;
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9999:junitimport");
+    aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI, true);
+
+    // 10 service information with 1000 endpoints each
+    final int nServiceInfoCount = 10;
+    final int nProcessCount = 1_000;
+    final IMicroDocument aDoc = _createImportXML (aPI, nServiceInfoCount, nProcessCount);
+
+    // Warm-up
+    assertEquals (ESMPTransportProfile.values ().length, aTransportProfileMgr.getSMPTransportProfileCount ());
+    assertEquals (1, aTransportProfileMgr.m_aQueries.get ());
+
+    try
+    {
+      final ICommonsList <ImportActionItem> aActionList = new CommonsArrayList <> ();
+      final ImportSummary aSummary = new ImportSummary ();
+      ServiceGroupImport.importXMLVer10 (aDoc.getDocumentElement (),
+                                         false,
+                                         PhotonSecurityManager.getUserMgr ()
+                                                              .getUserOfID (CSecurity.USER_ADMINISTRATOR_ID),
+                                         new CommonsHashSet <> (),
+                                         new CommonsHashSet <> (),
+                                         aActionList,
+                                         aSummary);
+      assertTrue (aActionList.toString (), aActionList.containsNone (x -> x.getErrorLevel ().isError ()));
+      aSummary.forEach ( (eAction, nSuccess, nError) -> {
+        assertEquals (0, nError);
+        if (eAction == EImportSummaryAction.CREATE_SI)
+          assertEquals (nServiceInfoCount, nSuccess);
+      });
+      assertEquals (nServiceInfoCount,
+                    SMPMetaManager.getServiceInformationMgr ()
+                                  .getAllSMPServiceInformationOfServiceGroup (aServiceGroupMgr.getSMPServiceGroupOfID (aPI))
+                                  .size ());
+
+      // The unknown transport profile was created on the fly
+      assertNotNull (aTransportProfileMgr.getSMPTransportProfileOfID (UNKNOWN_TRANSPORT_PROFILE));
+
+      // No further query for the transport profiles of 10k endpoints
+      assertEquals (1, aTransportProfileMgr.m_aQueries.get ());
+      assertEquals (1, aTransportProfileMgr.getRegistry ().getLoadCount ());
+    }
+    finally
+    {
+      aServiceGroupMgr.deleteSMPServiceGroupNoEx (aPI, true);
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.http.EHttpMethod;
+import com.helger.commons.state.ETriState;
+import com.helger.http.EHttpVersion;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.phoss.smp.backend.sql.mgr.SMPSettingsManagerJDBC;
+import com.helger.phoss.smp.backend.xml.mgr.SMPManagerProviderXML;
+import com.helger.phoss.smp.domain.ISMPManagerProvider;
+import com.helger.phoss.smp.domain.SMPMetaManager;
+import com.helger.phoss.smp.domain.businesscard.ISMPBusinessCardManager;
+import com.helger.phoss.smp.domain.pmigration.ISMPParticipantMigrationManager;
+import com.helger.phoss.smp.domain.redirect.ISMPRedirectManager;
+import com.helger.phoss.smp.domain.servicegroup.ISMPServiceGroupManager;
+import com.helger.phoss.smp.domain.serviceinfo.ISMPServiceInformationManager;
+import com.helger.phoss.smp.domain.sml.ISMLInfoManager;
+import com.helger.phoss.smp.domain.transportprofile.ISMPTransportProfileManager;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.helger.phoss.smp.settings.ISMPSettingsManager;
+import com.helger.photon.security.CSecurity;
+import com.helger.servlet.mock.MockHttpServletRequest;
+import com.helger.servlet.response.UnifiedResponse;
+import com.helger.web.scope.mgr.WebScoped;
+
+/**
+ * Test class for class {@link APIExecutorServiceGroupGet}.
+ *
+ * @author Philip Helger
+ */
+public final class APIExecutorServiceGroupGetTest
+{
+  /**
+   * Settings manager that simulates the database and counts the queries.
+   */
+  private static final class CountingSettingsManager extends SMPSettingsManagerJDBC
+  {
+    private final AtomicInteger m_aQueries = new AtomicInteger (0);
+
+    CountingSettingsManager ()
+    {
+      // Poll like in production
+      super ( () -> {
+        throw new IllegalStateException ("No DB access expected");
+      }, 60_000);
+    }
+
+    @Override
+    public ICommonsMap <String, String> getAllSettingsValuesFromDB ()
+    {
+      m_aQueries.incrementAndGet ();
+      return new CommonsHashMap <> ();
+    }
+
+    @Override
+    @Nullable
+    public Long getSettingsVersionFromDB ()
+    {
+      m_aQueries.incrementAndGet ();
+      return Long.valueOf (0);
+    }
+  }
+
+  /**
+   * XML backend with the counting settings manager.
+   */
+  private static final class TestManagerProvider implements ISMPManagerProvider
+  {
+    private final SMPManagerProviderXML m_aXML = new SMPManagerProviderXML ();
+    private final CountingSettingsManager m_aSettingsMgr = new CountingSettingsManager ();
+
+    @Nonnull
+    public ETriState getBackendConnectionEstablishedDefaultState ()
+    {
+      return m_aXML.getBackendConnectionEstablishedDefaultState ();
+    }
+
+    @Nonnull
+    public ISMLInfoManager createSMLInfoMgr ()
+    {
+      return m_aXML.createSMLInfoMgr ();
+    }
+
+    @Nonnull
+    public ISMPSettingsManager createSettingsMgr ()
+    {
+      return m_aSettingsMgr;
+    }
+
+    @Nonnull
+    public ISMPTransportProfileManager createTransportProfileMgr ()
+    {
+      return m_aXML.createTransportProfileMgr ();
+    }
+
+    @Nonnull
+    public ISMPServiceGroupManager createServiceGroupMgr ()
+    {
+      return m_aXML.createServiceGroupMgr ();
+    }
+
+    @Nonnull
+    public ISMPRedirectManager createRedirectMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
+                                                  @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
+    {
+      return m_aXML.createRedirectMgr (aIdentifierFactory, aServiceGroupMgr);
+    }
+
+    @Nonnull
+    public ISMPServiceInformationManager createServiceInformationMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
+                                                                      @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
+    {
+      return m_aXML.createServiceInformationMgr (aIdentifierFactory, aServiceGroupMgr);
+    }
+
+    @Nonnull
+    public ISMPParticipantMigrationManager createParticipantMigrationMgr ()
+    {
+      return m_aXML.createParticipantMigrationMgr ();
+    }
+
+    @Nullable
+    public ISMPBusinessCardManager createBusinessCardMgr (@Nonnull final IIdentifierFactory aIdentifierFactory,
+                                                          @Nonnull final ISMPServiceGroupManager aServiceGroupMgr)
+    {
+      return m_aXML.createBusinessCardMgr (aIdentifierFactory, aServiceGroupMgr);
+    }
+  }
+
+  private final TestManagerProvider m_aProvider = new TestManagerProvider ();
+
+  @Rule
+  public final SMPServerTestRule m_aTestRule = new SMPServerTestRule (m_aProvider);
+
+  private static void _get (@Nonnull final String sPathServiceGroupID) throws Exception
+  {
+    final MockHttpServletRequest aHttpRequest = new MockHttpServletRequest ();
+    try (final WebScoped aWS = new WebScoped (aHttpRequest))
+    {
+      final ICommonsMap <String, String> aPathVariables = new CommonsHashMap <> ();
+      aPathVariables.put (SMPRestFilter.PARAM_SERVICE_GROUP_ID, sPathServiceGroupID);
+      final UnifiedResponse aUnifiedResponse = new UnifiedResponse (EHttpVersion.HTTP_11,
+                                                                    EHttpMethod.GET,
+                                                                    aHttpRequest);
+      // Like the API servlet
+      aUnifiedResponse.disableCaching ();
+      new APIExecutorServiceGroupGet ().invokeAPI (null,
+                                                   "/" + sPathServiceGroupID,
+                                                   aPathVariables,
+                                                   aWS.getRequestScope (),
+                                                   aUnifiedResponse);
+      assertTrue (aUnifiedResponse.hasContent ());
+    }
+  }
+
+  @Test
+  public void testNoSettingsQueriesPerRequest () throws Exception
+  {
+    final IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:settings");
+    final String sPI = aPI.getURIEncoded ();
+    final ISMPServiceGroupManager aSGMgr = SMPMetaManager.getServiceGroupMgr ();
+    aSGMgr.createSMPServiceGroup (CSecurity.USER_ADMINISTRATOR_ID, aPI, null, false);
+    try
+    {
+      // Loads the settings if not yet done
+      _get (sPI);
+      final int nQueries = m_aProvider.m_aSettingsMgr.m_aQueries.get ();
+      assertTrue (nQueries > 0);
+
+      // Reading the settings and building the hrefs doesn't query the DB
+      for (int i = 0; i < 100; ++i)
+        _get (sPI);
+      assertEquals (nQueries, m_aProvider.m_aSettingsMgr.m_aQueries.get ());
+    }
+    finally
+    {
+      aSGMgr.deleteSMPServiceGroupNoEx (aPI, false);
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2014-2024 Philip Helger and contributors
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phoss.smp.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.http.CHttp;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.factory.PeppolIdentifierFactory;
+import com.helger.phoss.smp.mock.SMPServerTestRule;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for class {@link SMPRemoteQueryProvider}.
+ *
+ * @author Philip Helger
+ */
+public final class SMPRemoteQueryProviderTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new SMPServerTestRule ();
+
+  @Test
+  public void testExecutorIsBounded () throws Exception
+  {
+    final ThreadPoolExecutor aExecutor = SMPRemoteQueryProvider.createExecutor (2, 1);
+    final CountDownLatch aBlock = new CountDownLatch (1);
+    try
+    {
+      final Runnable aTask = () -> {
+        try
+        {
+          aBlock.await ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+      };
+      // 2 running, 1 queued
+      aExecutor.execute (aTask);
+      aExecutor.execute (aTask);
+      aExecutor.execute (aTask);
+      try
+      {
+        aExecutor.execute (aTask);
+        fail ();
+      }
+      catch (final RejectedExecutionException ex)
+      {
+        // expected
+      }
+      assertEquals (2, aExecutor.getPoolSize ());
+    }
+    finally
+    {
+      aBlock.countDown ();
+      aExecutor.shutdown ();
+      assertTrue (aExecutor.awaitTermination (10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testInvokeAll () throws Exception
+  {
+    final ExecutorService aExecutor = SMPRemoteQueryProvider.createExecutor (4, 16);
+    try
+    {
+      final AtomicInteger aRunning = new AtomicInteger (0);
+      final AtomicInteger aMaxRunning = new AtomicInteger (0);
+      final ICommonsMap <String, Callable <String>> aTasks = new CommonsLinkedHashMap <> ();
+      for (int i = 0; i < 10; ++i)
+      {
+        final String sKey = "k" + i;
+        aTasks.put (sKey, () -> {
+          aMaxRunning.accumulateAndGet (aRunning.incrementAndGet (), Math::max);
+          try
+          {
+            Thread.sleep (10);
+          }
+          finally
+          {
+            aRunning.decrementAndGet ();
+          }
+          if ("k3".equals (sKey))
+            throw new IOException ("Failed");
+          return "k5".equals (sKey) ? null : sKey.toUpperCase ();
+        });
+      }
+      final ICommonsMap <String, String> aResults = SMPRemoteQueryProvider.invokeAll (aExecutor,
+                                                                                       aTasks,
+                                                                                       2,
+                                                                                       System.nanoTime () +
+                                                                                                    TimeUnit.SECONDS.toNanos (30));
+      // Failures and null results are not contained
+      assertEquals (8, aResults.size ());
+      assertEquals ("K0", aResults.get ("k0"));
+      assertNull (aResults.get ("k3"));
+      assertNull (aResults.get ("k5"));
+      assertTrue (aMaxRunning.get () <= 2);
+    }
+    finally
+    {
+      aExecutor.shutdownNow ();
+    }
+  }
+
+  @Test
+  public void testInvokeAllDeadline () throws Exception
+  {
+    final ExecutorService aExecutor = SMPRemoteQueryProvider.createExecutor (2, 16);
+    try
+    {
+      final ICommonsMap <String, Callable <String>> aTasks = new CommonsLinkedHashMap <> ();
+      aTasks.put ("fast", () -> "fast");
+      aTasks.put ("slow", () -> {
+        Thread.sleep (30_000);
+        return "slow";
+      });
+      final ICommonsMap <String, String> aResults = SMPRemoteQueryProvider.invokeAll (aExecutor,
+                                                                                       aTasks,
+                                                                                       2,
+                                                                                       System.nanoTime () +
+                                                                                                    TimeUnit.MILLISECONDS.toNanos (500));
+      assertEquals (1, aResults.size ());
+      assertEquals ("fast", aResults.get ("fast"));
+    }
+    finally
+    {
+      aExecutor.shutdownNow ();
+    }
+  }
+
+  @Test
+  public void testInvokeAllRejected () throws Exception
+  {
+    // No queue and a single thread that is busy
+    final ThreadPoolExecutor aExecutor = SMPRemoteQueryProvider.createExecutor (1, 0);
+    final CountDownLatch aBlock = new CountDownLatch (1);
+    try
+    {
+      aExecutor.execute ( () -> {
+        try
+        {
+          aBlock.await ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+      });
+
+      final ICommonsMap <String, Callable <String>> aTasks = new CommonsLinkedHashMap <> ();
+      aTasks.put ("a", () -> "a");
+      aTasks.put ("b", () -> "b");
+      final ICommonsMap <String, String> aResults = SMPRemoteQueryProvider.invokeAll (aExecutor,
+                                                                                       aTasks,
+                                                                                       2,
+                                                                                       System.nanoTime () +
+                                                                                                    TimeUnit.SECONDS.toNanos (5));
+      assertTrue (aResults.isEmpty ());
+    }
+    finally
+    {
+      aBlock.countDown ();
+      aExecutor.shutdownNow ();
+    }
+  }
+
+  @Test
+  public void testGetBusinessCardBytes () throws Exception
+  {
+    final byte [] aBC = "<BusinessCard/>".getBytes (StandardCharsets.UTF_8);
+    final HttpServer aServer = HttpServer.create (new InetSocketAddress ("localhost", 0), 0);
+    aServer.createContext ("/", aExchange -> {
+      final String sPath = aExchange.getRequestURI ().getRawPath ();
+      final int nStatus = sPath.contains ("found") ? CHttp.HTTP_OK
+                                                   : sPath.contains ("missing") ? CHttp.HTTP_NOT_FOUND
+                                                                                : CHttp.HTTP_INTERNAL_SERVER_ERROR;
+      final byte [] aBody = nStatus == CHttp.HTTP_OK ? aBC : new byte [0];
+      aExchange.sendResponseHeaders (nStatus, aBody.length > 0 ? aBody.length : -1);
+      try (final OutputStream aOS = aExchange.getResponseBody ())
+      {
+        aOS.write (aBody);
+      }
+    });
+    aServer.start ();
+    try
+    {
+      final URI aHostURI = new URI ("http://localhost:" + aServer.getAddress ().getPort ());
+      final SMPRemoteQueryProvider aProvider = SMPRemoteQueryProvider.getInstance ();
+
+      IParticipantIdentifier aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:found");
+      assertArrayEquals (aBC, aProvider.getBusinessCardBytes (aHostURI, aPI));
+
+      // 404 means "no Business Card"
+      aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:missing");
+      assertNull (aProvider.getBusinessCardBytes (aHostURI, aPI));
+
+      // All other errors are propagated
+      aPI = PeppolIdentifierFactory.INSTANCE.createParticipantIdentifierWithDefaultScheme ("9915:error");
+      try
+      {
+        aProvider.getBusinessCardBytes (aHostURI, aPI);
+        fail ();
+      }
+      catch (final IOException ex)
+      {
+        // expected
+      }
+    }
+    finally
+    {
+      aServer.stop (0);
+    }
+  }
+}